@@ -61,12 +61,25 @@ public final class ConfigConstants {
 	 */
 	public static final String JOB_EXECUTION_RETRIES_KEY = "job.execution.retries";
 
+	/**
+	 * The key for the config parameter defining the maximum time (in milliseconds) a record may wait in a partially
+	 * filled output buffer before the buffer is shipped. A value of <code>0</code> ships buffers only when they are
+	 * full or the channel is flushed.
+	 */
+	public static final String JOB_OUTPUT_MAX_LATENCY_KEY = "job.output.maxlatency";
+
 	/**
 	 * The key for the config parameter defining the amount of memory available for the task manager's
 	 * memory manager (in megabytes).
 	 */
 	public static final String MEMORY_MANAGER_AVAILABLE_MEMORY_SIZE_KEY = "taskmanager.memory.size";
 
+	/**
+	 * The key for the config parameter defining whether the task manager's memory manager allocates its
+	 * memory as direct (off-heap) memory.
+	 */
+	public static final String MEMORY_MANAGER_OFF_HEAP_KEY = "taskmanager.memory.offheap";
+
 	/**
 	 * The key for the config parameter defining flag to terminate a job at job-client shutdown.
 	 */
@@ -101,11 +114,21 @@ public final class ConfigConstants {
 	 */
 	public static final int DEFAULT_MEMORY_MANAGER_AVAILABLE_MEMORY = 512;
 
+	/**
+	 * The default setting for the memory manager's off-heap allocation.
+	 */
+	public static final boolean DEFAULT_MEMORY_MANAGER_OFF_HEAP = false;
+
 	/**
 	 * The default number of retries for failed tasks.
 	 */
 	public static final int DEFAULT_JOB_EXECUTION_RETRIES = 3;
 
+	/**
+	 * The default maximum time (in milliseconds) a record may wait in a partially filled output buffer.
+	 */
+	public static final long DEFAULT_JOB_OUTPUT_MAX_LATENCY = 0L;
+
 	/**
 	 * The default minimal amount of memory that the memory manager does not occupy (in megabytes).
 	 */
@@ -125,7 +125,7 @@ public final class FileChannelWrapper extends FileChannel {
 			return -1;
 		}
 
-		dst.put(this.buf, 0, length);
+		dst.put(this.buf, 0, bytesRead);
 
 		this.nextExpectedReadPosition += bytesRead;
 
@@ -147,7 +147,7 @@ public final class FileChannelWrapper extends FileChannel {
 	@Override
 	public long size() throws IOException {
 
-		throw new UnsupportedOperationException("Method size is not implemented");
+		return this.fs.getFileStatus(this.checkpointFile).getLen();
 	}
 
 	/**
@@ -16,9 +16,12 @@
 package eu.stratosphere.nephele.services.iomanager;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
@@ -42,6 +45,17 @@ import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
  */
 public abstract class BlockChannelAccess<R extends IORequest, C extends Collection<MemorySegment>> extends ChannelAccess<MemorySegment, R>
 {	
+	/**
+	 * The maximum time in milliseconds that a segment is held back in a partially filled bundle of requests,
+	 * if the channel is created with a timer.
+	 */
+	public static final long MAX_BUNDLE_DELAY = 10;
+	
+	/**
+	 * The maximum number of bytes that are bundled into one request.
+	 */
+	public static final long MAX_BUNDLE_BYTES = 16 * 1024 * 1024;
+	
 	/**
 	 * The lock that is used during closing to synchronize the thread that waits for all
 	 * requests to be handled with the asynchronous I/O thread.
@@ -201,7 +215,7 @@ public abstract class BlockChannelAccess<R extends IORequest, C extends Collecti
 /**
  * Special read request that reads an entire memory segment from a block reader.
  */
-final class SegmentReadRequest implements ReadRequest
+final class SegmentReadRequest implements ReadRequest, SizedRequest
 {
 	private final BlockChannelAccess<ReadRequest, ?> channel;
 	
@@ -223,7 +237,7 @@ final class SegmentReadRequest implements ReadRequest
 		if (c.size() - c.position() > 0) {
 			try {
 				final ByteBuffer wrapper = this.segment.wrap(0, this.segment.size());
-				this.channel.fileChannel.read(wrapper);
+				while (wrapper.hasRemaining() && c.read(wrapper) > 0);
 			} catch (NullPointerException npex) {
 				// the memory has been cleared asynchronouosly through task failing or canceling
 				// ignore the request, since the result cannot be read
@@ -239,6 +253,15 @@ final class SegmentReadRequest implements ReadRequest
 	{
 		this.channel.handleProcessedBuffer(this.segment, ioex);
 	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.SizedRequest#getNumBytes()
+	 */
+	@Override
+	public long getNumBytes()
+	{
+		return this.segment.size();
+	}
 }
 
 //--------------------------------------------------------------------------------------------
@@ -246,7 +269,7 @@ final class SegmentReadRequest implements ReadRequest
 /**
  * Special write request that writes an entire memory segment to the block writer.
  */
-final class SegmentWriteRequest implements WriteRequest
+final class SegmentWriteRequest implements WriteRequest, SizedRequest
 {
 	private final BlockChannelAccess<WriteRequest, ?> channel;
 	
@@ -265,7 +288,10 @@ final class SegmentWriteRequest implements WriteRequest
 	public void write() throws IOException
 	{
 		try {
-			this.channel.fileChannel.write(this.segment.wrap(0, this.segment.size()));
+			final ByteBuffer wrapper = this.segment.wrap(0, this.segment.size());
+			while (wrapper.hasRemaining()) {
+				this.channel.fileChannel.write(wrapper);
+			}
 		} catch (NullPointerException npex) {
 			// the memory has been cleared asynchronouosly through task failing or canceling
 			// ignore the request, since there is nothing to write.
@@ -280,4 +306,267 @@ final class SegmentWriteRequest implements WriteRequest
 	{
 		this.channel.handleProcessedBuffer(this.segment, ioex);
 	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.SizedRequest#getNumBytes()
+	 */
+	@Override
+	public long getNumBytes()
+	{
+		return this.segment.size();
+	}
+}
+
+//--------------------------------------------------------------------------------------------
+
+/**
+ * Read request that reads consecutive blocks into multiple memory segments with a single scattering read.
+ */
+final class SegmentsReadRequest implements ReadRequest, SizedRequest
+{
+	private final BlockChannelAccess<ReadRequest, ?> channel;
+	
+	private final MemorySegment[] segments;
+	
+	protected SegmentsReadRequest(BlockChannelAccess<ReadRequest, ?> targetChannel, List<MemorySegment> segments)
+	{
+		this.channel = targetChannel;
+		this.segments = segments.toArray(new MemorySegment[segments.size()]);
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.ReadRequest#read()
+	 */
+	@Override
+	public void read() throws IOException
+	{
+		final FileChannel c = this.channel.fileChannel;
+		if (c.size() - c.position() > 0) {
+			try {
+				final ByteBuffer[] wrappers = new ByteBuffer[this.segments.length];
+				for (int i = 0; i < wrappers.length; i++) {
+					wrappers[i] = this.segments[i].wrap(0, this.segments[i].size());
+				}
+				final ByteBuffer last = wrappers[wrappers.length - 1];
+				while (last.hasRemaining() && c.read(wrappers) > 0);
+			} catch (NullPointerException npex) {
+				// the memory has been cleared asynchronouosly through task failing or canceling
+				// ignore the request, since the result cannot be read
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.IORequest#requestDone(java.io.IOException)
+	 */
+	@Override
+	public void requestDone(IOException ioex)
+	{
+		for (int i = 0; i < this.segments.length; i++) {
+			this.channel.handleProcessedBuffer(this.segments[i], ioex);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.SizedRequest#getNumBytes()
+	 */
+	@Override
+	public long getNumBytes()
+	{
+		long numBytes = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			numBytes += this.segments[i].size();
+		}
+		return numBytes;
+	}
+}
+
+//--------------------------------------------------------------------------------------------
+
+/**
+ * Write request that writes multiple memory segments as consecutive blocks with a single gathering write.
+ */
+final class SegmentsWriteRequest implements WriteRequest, SizedRequest
+{
+	private final BlockChannelAccess<WriteRequest, ?> channel;
+	
+	private final MemorySegment[] segments;
+	
+	protected SegmentsWriteRequest(BlockChannelAccess<WriteRequest, ?> targetChannel, List<MemorySegment> segments)
+	{
+		this.channel = targetChannel;
+		this.segments = segments.toArray(new MemorySegment[segments.size()]);
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.WriteRequest#write()
+	 */
+	@Override
+	public void write() throws IOException
+	{
+		try {
+			final ByteBuffer[] wrappers = new ByteBuffer[this.segments.length];
+			for (int i = 0; i < wrappers.length; i++) {
+				wrappers[i] = this.segments[i].wrap(0, this.segments[i].size());
+			}
+			final ByteBuffer last = wrappers[wrappers.length - 1];
+			while (last.hasRemaining()) {
+				this.channel.fileChannel.write(wrappers);
+			}
+		} catch (NullPointerException npex) {
+			// the memory has been cleared asynchronouosly through task failing or canceling
+			// ignore the request, since there is nothing to write.
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.IORequest#requestDone(java.io.IOException)
+	 */
+	@Override
+	public void requestDone(IOException ioex)
+	{
+		for (int i = 0; i < this.segments.length; i++) {
+			this.channel.handleProcessedBuffer(this.segments[i], ioex);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.SizedRequest#getNumBytes()
+	 */
+	@Override
+	public long getNumBytes()
+	{
+		long numBytes = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			numBytes += this.segments[i].size();
+		}
+		return numBytes;
+	}
+}
+
+//--------------------------------------------------------------------------------------------
+
+/**
+ * Read request that maps the channel's file into memory and copies the consecutive blocks from the
+ * mapped regions into the memory segments. The file is mapped in chunks of at most a given size, each of which
+ * is unmapped as soon as its blocks are copied, so the request neither depends on the 2 GB limit of a single
+ * mapping, nor keeps large parts of the file mapped.
+ * <p>
+ * The copy into the segments remains, since the segments belong to the memory manager. For segments on the heap,
+ * this is still one copy less than a regular read, which goes through a temporary direct buffer.
+ */
+final class MappedSegmentsReadRequest implements ReadRequest, SizedRequest
+{
+	/**
+	 * The default maximum size of a single mapped region.
+	 */
+	static final int DEFAULT_MAX_MAPPING_SIZE = 64 * 1024 * 1024;
+	
+	private final BlockChannelAccess<ReadRequest, ?> channel;
+	
+	private final MemorySegment[] segments;
+	
+	private final int maxMappingSize;
+	
+	protected MappedSegmentsReadRequest(BlockChannelAccess<ReadRequest, ?> targetChannel, List<MemorySegment> segments)
+	{
+		this(targetChannel, segments, DEFAULT_MAX_MAPPING_SIZE);
+	}
+	
+	MappedSegmentsReadRequest(BlockChannelAccess<ReadRequest, ?> targetChannel, List<MemorySegment> segments,
+			int maxMappingSize)
+	{
+		this.channel = targetChannel;
+		this.segments = segments.toArray(new MemorySegment[segments.size()]);
+		this.maxMappingSize = maxMappingSize;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.ReadRequest#read()
+	 */
+	@Override
+	public void read() throws IOException
+	{
+		final FileChannel c = this.channel.fileChannel;
+		final long end = c.size();
+		long position = c.position();
+		
+		try {
+			int next = 0;
+			while (next < this.segments.length && position < end) {
+				// map as many whole segments as fit into one region, but at least one
+				int last = next;
+				long regionSize = 0;
+				do {
+					regionSize += this.segments[last++].size();
+				}
+				while (last < this.segments.length && regionSize + this.segments[last].size() <= this.maxMappingSize);
+				regionSize = Math.min(regionSize, end - position);
+				
+				final MappedByteBuffer mapped = c.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+				try {
+					for (; next < last && mapped.hasRemaining(); next++) {
+						final MemorySegment seg = this.segments[next];
+						mapped.limit(Math.min(mapped.capacity(), mapped.position() + seg.size()));
+						seg.put(0, mapped);
+						mapped.limit(mapped.capacity());
+					}
+				}
+				finally {
+					unmap(mapped);
+				}
+				position += regionSize;
+			}
+		} catch (NullPointerException npex) {
+			// the memory has been cleared asynchronouosly through task failing or canceling
+			// ignore the request, since the result cannot be read
+		} finally {
+			c.position(position);
+		}
+	}
+	
+	/**
+	 * Releases the given mapping right away, rather than when the buffer is garbage collected. The JDK offers
+	 * no public way to do this, so the buffer's cleaner is invoked reflectively. If that is not possible on this
+	 * JVM, the mapping is released by the garbage collector, which the bounded mapping size keeps harmless.
+	 * 
+	 * @param mapped The mapped buffer to release. It must not be accessed afterwards.
+	 */
+	private static void unmap(MappedByteBuffer mapped)
+	{
+		try {
+			final Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			final Object cleaner = cleanerMethod.invoke(mapped);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Throwable t) {
+			// not supported by this JVM
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.IORequest#requestDone(java.io.IOException)
+	 */
+	@Override
+	public void requestDone(IOException ioex)
+	{
+		for (int i = 0; i < this.segments.length; i++) {
+			this.channel.handleProcessedBuffer(this.segments[i], ioex);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.SizedRequest#getNumBytes()
+	 */
+	@Override
+	public long getNumBytes()
+	{
+		long numBytes = 0;
+		for (int i = 0; i < this.segments.length; i++) {
+			numBytes += this.segments[i].size();
+		}
+		return numBytes;
+	}
 }
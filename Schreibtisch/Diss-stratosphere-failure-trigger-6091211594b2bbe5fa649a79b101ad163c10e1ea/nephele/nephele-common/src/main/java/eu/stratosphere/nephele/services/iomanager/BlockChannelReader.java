@@ -16,6 +16,9 @@
 package eu.stratosphere.nephele.services.iomanager;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -37,9 +40,41 @@ import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
  * The reader has no notion whether the size of the memory segments is actually the size of the blocks on disk,
  * or even whether the file was written in blocks of the same size, or in blocks at all. Ensuring that the
  * writing and reading is consistent with each other (same blocks sizes) is up to the programmer.  
+ * <p>
+ * If the reader is created to bundle multiple requests, it collects that many segments and fills them with a
+ * single scattering read. A bundle is also issued once it holds {@link BlockChannelAccess#MAX_BUNDLE_BYTES} bytes,
+ * when the worker thread waits for a returned segment, and when the reader is closed. If the reader is created
+ * with a timer, a partially filled bundle is issued at the latest after
+ * {@link BlockChannelAccess#MAX_BUNDLE_DELAY} milliseconds, so that segments also return to callers that
+ * take them from the return queue directly.
  */
 public class BlockChannelReader extends BlockChannelAccess<ReadRequest, LinkedBlockingQueue<MemorySegment>>
 {
+	/**
+	 * The segments collected for the next bundled request, or <code>null</code>, if requests are not bundled.
+	 */
+	private final ArrayList<MemorySegment> pendingBundle;
+	
+	/**
+	 * The number of segments that are collected before they are read in one request.
+	 */
+	private final int numRequestsToBundle;
+	
+	/**
+	 * The timer that issues partially filled bundles after the maximum delay, or <code>null</code>.
+	 */
+	private final Timer bundleTimer;
+	
+	/**
+	 * The task that issues the pending bundle once its first segment has waited for the maximum delay.
+	 */
+	private TimerTask bundleDeadline;
+	
+	/**
+	 * The number of bytes in the segments of the pending bundle.
+	 */
+	private long pendingBytes;
+	
 	/**
 	 * Creates a new block channel reader for the given channel.
 	 *  
@@ -47,13 +82,41 @@ public class BlockChannelReader extends BlockChannelAccess<ReadRequest, LinkedBl
 	 * @param requestQueue The request queue of the asynchronous reader thread, to which the I/O requests
 	 *                     are added.
 	 * @param returnSegments The return queue, to which the full Memory Segments are added.
+	 * @param numRequestsToBundle The number of requests to bundle into one I/O request.
 	 * @throws IOException Thrown, if the underlying file channel could not be opened.
 	 */
 	protected BlockChannelReader(Channel.ID channelID, RequestQueue<ReadRequest> requestQueue,
 			LinkedBlockingQueue<MemorySegment> returnSegments, int numRequestsToBundle)
 	throws IOException
+	{
+		this(channelID, requestQueue, returnSegments, numRequestsToBundle, null);
+	}
+	
+	/**
+	 * Creates a new block channel reader for the given channel.
+	 *  
+	 * @param channelID The ID of the channel to read.
+	 * @param requestQueue The request queue of the asynchronous reader thread, to which the I/O requests
+	 *                     are added.
+	 * @param returnSegments The return queue, to which the full Memory Segments are added.
+	 * @param numRequestsToBundle The number of requests to bundle into one I/O request.
+	 * @param bundleTimer The timer that issues partially filled bundles after the maximum delay, or
+	 *                    <code>null</code>, if bundles are only issued when they are full or waited for.
+	 * @throws IOException Thrown, if the underlying file channel could not be opened.
+	 */
+	protected BlockChannelReader(Channel.ID channelID, RequestQueue<ReadRequest> requestQueue,
+			LinkedBlockingQueue<MemorySegment> returnSegments, int numRequestsToBundle,
+			Timer bundleTimer)
+	throws IOException
 	{
 		super(channelID, requestQueue, returnSegments, false);
+		
+		if (numRequestsToBundle < 1) {
+			throw new IllegalArgumentException("The number of requests to bundle must be at least one.");
+		}
+		this.numRequestsToBundle = numRequestsToBundle;
+		this.pendingBundle = numRequestsToBundle > 1 ? new ArrayList<MemorySegment>(numRequestsToBundle) : null;
+		this.bundleTimer = bundleTimer;
 	}	
 
 	/**
@@ -80,7 +143,20 @@ public class BlockChannelReader extends BlockChannelAccess<ReadRequest, LinkedBl
 			this.requestsNotReturned.decrementAndGet();
 			throw new IOException("The reader has been closed.");
 		}
-		this.requestQueue.add(new SegmentReadRequest(this, segment));
+		
+		if (this.pendingBundle == null) {
+			this.requestQueue.add(new SegmentReadRequest(this, segment));
+		} else {
+			synchronized (this.pendingBundle) {
+				this.pendingBundle.add(segment);
+				this.pendingBytes += segment.size();
+				if (this.pendingBundle.size() >= this.numRequestsToBundle || this.pendingBytes >= MAX_BUNDLE_BYTES) {
+					issuePendingRequests();
+				} else if (this.pendingBundle.size() == 1) {
+					scheduleBundleDeadline();
+				}
+			}
+		}
 	}
 	
 	/**
@@ -96,6 +172,14 @@ public class BlockChannelReader extends BlockChannelAccess<ReadRequest, LinkedBl
 	 */
 	public MemorySegment getNextReturnedSegment() throws IOException
 	{
+		// unless a segment is available right away, make sure that no segment is held back in a partially
+		// filled bundle. the queue may be shared, so other segments in it do not mean that ours returns.
+		final MemorySegment available = this.returnBuffers.poll();
+		if (available != null) {
+			return available;
+		}
+		flushPendingBundle();
+		
 		try {
 			while (true) {
 				final MemorySegment next = this.returnBuffers.poll(2000, TimeUnit.MILLISECONDS);
@@ -112,4 +196,82 @@ public class BlockChannelReader extends BlockChannelAccess<ReadRequest, LinkedBl
 			throw new IOException("Reader was interrupted while waiting for the next returning segment.");
 		}
 	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelAccess#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		flushPendingBundle();
+		super.close();
+	}
+	
+	/**
+	 * Issues the segments of a partially filled bundle right away, rather than waiting for the bundle to fill up.
+	 */
+	void flushPendingBundle()
+	{
+		if (this.pendingBundle != null) {
+			synchronized (this.pendingBundle) {
+				issuePendingRequests();
+			}
+		}
+	}
+	
+	/**
+	 * Issues the segments collected for the next bundled request. If the request queue has been closed in
+	 * the meantime, the segments are returned right away, marking the channel as erroneous.
+	 * <p>
+	 * This method must be called while holding the lock on the pending bundle.
+	 */
+	private void issuePendingRequests()
+	{
+		if (this.pendingBundle.isEmpty()) {
+			return;
+		}
+		
+		if (this.requestQueue.isClosed()) {
+			final IOException ioex = new IOException("The reader has been closed.");
+			for (int i = 0; i < this.pendingBundle.size(); i++) {
+				handleProcessedBuffer(this.pendingBundle.get(i), ioex);
+			}
+		} else {
+			this.requestQueue.add(new SegmentsReadRequest(this, this.pendingBundle));
+		}
+		this.pendingBundle.clear();
+		this.pendingBytes = 0;
+		
+		if (this.bundleDeadline != null) {
+			this.bundleDeadline.cancel();
+			this.bundleDeadline = null;
+		}
+	}
+	
+	/**
+	 * Schedules the pending bundle to be issued once its first segment has waited for the maximum delay.
+	 * <p>
+	 * This method must be called while holding the lock on the pending bundle.
+	 */
+	private void scheduleBundleDeadline()
+	{
+		if (this.bundleTimer == null) {
+			return;
+		}
+		
+		this.bundleDeadline = new TimerTask() {
+			@Override
+			public void run() {
+				flushPendingBundle();
+			}
+		};
+		try {
+			this.bundleTimer.schedule(this.bundleDeadline, MAX_BUNDLE_DELAY);
+		}
+		catch (IllegalStateException isex) {
+			// the I/O manager has been shut down and cancelled the timer. do not hold the segment back.
+			this.bundleDeadline = null;
+			issuePendingRequests();
+		}
+	}
 }
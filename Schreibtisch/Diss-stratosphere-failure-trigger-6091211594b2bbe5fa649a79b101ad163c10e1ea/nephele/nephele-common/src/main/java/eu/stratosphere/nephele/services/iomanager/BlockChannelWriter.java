@@ -17,6 +17,9 @@ package eu.stratosphere.nephele.services.iomanager;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -37,9 +40,41 @@ import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
  * memory segment must be written, the request is issued to the writer and a new segment is immediately popped from
  * the return queue. Once too many requests have been issued and the I/O thread cannot keep up, the working thread
  * naturally blocks until another segment is available again.
+ * <p>
+ * If the writer is created to bundle multiple requests, it collects that many segments and writes them with a
+ * single gathering write. A bundle is also issued once it holds {@link BlockChannelAccess#MAX_BUNDLE_BYTES} bytes,
+ * when the worker thread waits for a returned segment, and when the writer is closed. If the writer is created
+ * with a timer, a partially filled bundle is issued at the latest after
+ * {@link BlockChannelAccess#MAX_BUNDLE_DELAY} milliseconds, so that segments also return to callers that
+ * take them from the return queue directly.
  */
 public class BlockChannelWriter extends BlockChannelAccess<WriteRequest, LinkedBlockingQueue<MemorySegment>>
 {
+	/**
+	 * The segments collected for the next bundled request, or <code>null</code>, if requests are not bundled.
+	 */
+	private final ArrayList<MemorySegment> pendingBundle;
+	
+	/**
+	 * The number of segments that are collected before they are written in one request.
+	 */
+	private final int numRequestsToBundle;
+	
+	/**
+	 * The timer that issues partially filled bundles after the maximum delay, or <code>null</code>.
+	 */
+	private final Timer bundleTimer;
+	
+	/**
+	 * The task that issues the pending bundle once its first segment has waited for the maximum delay.
+	 */
+	private TimerTask bundleDeadline;
+	
+	/**
+	 * The number of bytes in the segments of the pending bundle.
+	 */
+	private long pendingBytes;
+	
 	/**
 	 * Creates a new block channel writer for the given channel.
 	 *  
@@ -47,13 +82,41 @@ public class BlockChannelWriter extends BlockChannelAccess<WriteRequest, LinkedB
 	 * @param requestQueue The request queue of the asynchronous writer thread, to which the I/O requests
 	 *                     are added.
 	 * @param returnSegments The return queue, to which the processed Memory Segments are added.
+	 * @param numRequestsToBundle The number of requests to bundle into one I/O request.
 	 * @throws IOException Thrown, if the underlying file channel could not be opened exclusively.
 	 */
 	protected BlockChannelWriter(Channel.ID channelID, RequestQueue<WriteRequest> requestQueue,
 			LinkedBlockingQueue<MemorySegment> returnSegments, int numRequestsToBundle)
 	throws IOException
+	{
+		this(channelID, requestQueue, returnSegments, numRequestsToBundle, null);
+	}
+	
+	/**
+	 * Creates a new block channel writer for the given channel.
+	 *  
+	 * @param channelID The ID of the channel to write to.
+	 * @param requestQueue The request queue of the asynchronous writer thread, to which the I/O requests
+	 *                     are added.
+	 * @param returnSegments The return queue, to which the processed Memory Segments are added.
+	 * @param numRequestsToBundle The number of requests to bundle into one I/O request.
+	 * @param bundleTimer The timer that issues partially filled bundles after the maximum delay, or
+	 *                    <code>null</code>, if bundles are only issued when they are full or waited for.
+	 * @throws IOException Thrown, if the underlying file channel could not be opened exclusively.
+	 */
+	protected BlockChannelWriter(Channel.ID channelID, RequestQueue<WriteRequest> requestQueue,
+			LinkedBlockingQueue<MemorySegment> returnSegments, int numRequestsToBundle,
+			Timer bundleTimer)
+	throws IOException
 	{
 		super(channelID, requestQueue, returnSegments, true);
+		
+		if (numRequestsToBundle < 1) {
+			throw new IllegalArgumentException("The number of requests to bundle must be at least one.");
+		}
+		this.numRequestsToBundle = numRequestsToBundle;
+		this.pendingBundle = numRequestsToBundle > 1 ? new ArrayList<MemorySegment>(numRequestsToBundle) : null;
+		this.bundleTimer = bundleTimer;
 	}
 
 	/**
@@ -76,7 +139,20 @@ public class BlockChannelWriter extends BlockChannelAccess<WriteRequest, LinkedB
 			this.requestsNotReturned.decrementAndGet();
 			throw new IOException("The writer has been closed.");
 		}
-		this.requestQueue.add(new SegmentWriteRequest(this, segment));
+		
+		if (this.pendingBundle == null) {
+			this.requestQueue.add(new SegmentWriteRequest(this, segment));
+		} else {
+			synchronized (this.pendingBundle) {
+				this.pendingBundle.add(segment);
+				this.pendingBytes += segment.size();
+				if (this.pendingBundle.size() >= this.numRequestsToBundle || this.pendingBytes >= MAX_BUNDLE_BYTES) {
+					issuePendingRequests();
+				} else if (this.pendingBundle.size() == 1) {
+					scheduleBundleDeadline();
+				}
+			}
+		}
 	}
 	
 	/**
@@ -93,6 +169,14 @@ public class BlockChannelWriter extends BlockChannelAccess<WriteRequest, LinkedB
 	 */
 	public MemorySegment getNextReturnedSegment() throws IOException
 	{
+		// unless a segment is available right away, make sure that no segment is held back in a partially
+		// filled bundle. the queue may be shared, so other segments in it do not mean that ours returns.
+		final MemorySegment available = this.returnBuffers.poll();
+		if (available != null) {
+			return available;
+		}
+		flushPendingBundle();
+		
 		try {
 			while (true) {
 				final MemorySegment next = this.returnBuffers.poll(2000, TimeUnit.MILLISECONDS);
@@ -109,4 +193,82 @@ public class BlockChannelWriter extends BlockChannelAccess<WriteRequest, LinkedB
 			throw new IOException("Writer was interrupted while waiting for the next returning segment.");
 		}
 	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelAccess#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		flushPendingBundle();
+		super.close();
+	}
+	
+	/**
+	 * Issues the segments of a partially filled bundle right away, rather than waiting for the bundle to fill up.
+	 */
+	void flushPendingBundle()
+	{
+		if (this.pendingBundle != null) {
+			synchronized (this.pendingBundle) {
+				issuePendingRequests();
+			}
+		}
+	}
+	
+	/**
+	 * Issues the segments collected for the next bundled request. If the request queue has been closed in
+	 * the meantime, the segments are returned right away, marking the channel as erroneous.
+	 * <p>
+	 * This method must be called while holding the lock on the pending bundle.
+	 */
+	private void issuePendingRequests()
+	{
+		if (this.pendingBundle.isEmpty()) {
+			return;
+		}
+		
+		if (this.requestQueue.isClosed()) {
+			final IOException ioex = new IOException("The writer has been closed.");
+			for (int i = 0; i < this.pendingBundle.size(); i++) {
+				handleProcessedBuffer(this.pendingBundle.get(i), ioex);
+			}
+		} else {
+			this.requestQueue.add(new SegmentsWriteRequest(this, this.pendingBundle));
+		}
+		this.pendingBundle.clear();
+		this.pendingBytes = 0;
+		
+		if (this.bundleDeadline != null) {
+			this.bundleDeadline.cancel();
+			this.bundleDeadline = null;
+		}
+	}
+	
+	/**
+	 * Schedules the pending bundle to be issued once its first segment has waited for the maximum delay.
+	 * <p>
+	 * This method must be called while holding the lock on the pending bundle.
+	 */
+	private void scheduleBundleDeadline()
+	{
+		if (this.bundleTimer == null) {
+			return;
+		}
+		
+		this.bundleDeadline = new TimerTask() {
+			@Override
+			public void run() {
+				flushPendingBundle();
+			}
+		};
+		try {
+			this.bundleTimer.schedule(this.bundleDeadline, MAX_BUNDLE_DELAY);
+		}
+		catch (IllegalStateException isex) {
+			// the I/O manager has been shut down and cancelled the timer. do not hold the segment back.
+			this.bundleDeadline = null;
+			issuePendingRequests();
+		}
+	}
 }
@@ -0,0 +1,66 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+import java.io.IOException;
+
+
+/**
+ * A codec that compresses and decompresses the data of single blocks that are spilled through a
+ * {@link ChannelWriterOutputView} and re-read through a {@link ChannelReaderInputView}. Codecs may keep
+ * state between calls (such as hash tables or native streams), so a codec instance must only be used by one
+ * view at a time.
+ * 
+ * @see BlockCompressionCodecs
+ */
+public interface BlockCompressionCodec
+{
+	/**
+	 * Gets the number of bytes that the compressed form of the given number of bytes may take in the worst case.
+	 * 
+	 * @param length The number of uncompressed bytes.
+	 * @return The maximal number of compressed bytes.
+	 */
+	int getMaxCompressedLength(int length);
+	
+	/**
+	 * Compresses the given bytes.
+	 * 
+	 * @param source The array holding the bytes to compress.
+	 * @param sourceOffset The offset of the first byte to compress.
+	 * @param length The number of bytes to compress.
+	 * @param target The array to write the compressed bytes to. It must have at least
+	 *               {@link #getMaxCompressedLength(int)} bytes available after the target offset.
+	 * @param targetOffset The offset at which the compressed bytes are written.
+	 * @return The number of compressed bytes.
+	 * @throws IOException Thrown, if the codec failed to compress the data.
+	 */
+	int compress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset) throws IOException;
+	
+	/**
+	 * Decompresses the given bytes that were compressed by a codec of the same type.
+	 * 
+	 * @param source The array holding the compressed bytes.
+	 * @param sourceOffset The offset of the first compressed byte.
+	 * @param length The number of compressed bytes.
+	 * @param target The array to write the uncompressed bytes to.
+	 * @param targetOffset The offset at which the uncompressed bytes are written.
+	 * @param uncompressedLength The number of bytes that the data has in uncompressed form.
+	 * @throws IOException Thrown, if the compressed data is corrupt.
+	 */
+	void decompress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset, int uncompressedLength)
+	throws IOException;
+}
@@ -0,0 +1,87 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+
+/**
+ * Utility to create block compression codecs by name.
+ */
+public final class BlockCompressionCodecs
+{
+	/**
+	 * The name that disables block compression.
+	 */
+	public static final String NONE = "none";
+	
+	/**
+	 * The name of the {@link LZBlockCompressionCodec}.
+	 */
+	public static final String LZ = "lz";
+	
+	/**
+	 * The name of the {@link DeflateBlockCompressionCodec}.
+	 */
+	public static final String DEFLATE = "deflate";
+	
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private BlockCompressionCodecs() {}
+	
+	/**
+	 * Creates a new instance of the codec with the given name. The name is one of {@link #LZ} and {@link #DEFLATE},
+	 * or the fully qualified name of a class that implements {@link BlockCompressionCodec} and has a public
+	 * nullary constructor. For {@link #NONE}, <code>null</code> or an empty name, this method returns
+	 * <code>null</code>.
+	 * 
+	 * @param name The name of the codec.
+	 * @return A new codec instance, or <code>null</code>, if compression is disabled.
+	 * @throws IllegalArgumentException Thrown, if no codec with the given name could be created.
+	 */
+	public static BlockCompressionCodec createCodec(String name)
+	{
+		if (name == null) {
+			return null;
+		}
+		name = name.trim();
+		
+		if (name.length() == 0 || NONE.equalsIgnoreCase(name)) {
+			return null;
+		}
+		if (LZ.equalsIgnoreCase(name)) {
+			return new LZBlockCompressionCodec();
+		}
+		if (DEFLATE.equalsIgnoreCase(name)) {
+			return new DeflateBlockCompressionCodec();
+		}
+		
+		try {
+			final Class<? extends BlockCompressionCodec> clazz = 
+				Class.forName(name).asSubclass(BlockCompressionCodec.class);
+			return clazz.newInstance();
+		}
+		catch (ClassNotFoundException cnfex) {
+			throw new IllegalArgumentException("Unknown block compression codec '" + name + "'.");
+		}
+		catch (ClassCastException ccex) {
+			throw new IllegalArgumentException("Class '" + name + "' is no block compression codec.");
+		}
+		catch (Exception ex) {
+			throw new IllegalArgumentException("Block compression codec '" + name + "' could not be instantiated: " +
+				ex.getMessage(), ex);
+		}
+	}
+}
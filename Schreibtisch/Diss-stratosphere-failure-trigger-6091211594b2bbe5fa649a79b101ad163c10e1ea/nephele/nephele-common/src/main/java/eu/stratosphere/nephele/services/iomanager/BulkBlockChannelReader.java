@@ -33,6 +33,27 @@ public class BulkBlockChannelReader extends BlockChannelAccess<ReadRequest, Arra
 	protected BulkBlockChannelReader(Channel.ID channelID, RequestQueue<ReadRequest> requestQueue, 
 			List<MemorySegment> sourceSegments, int numBlocks)
 	throws IOException
+	{
+		this(channelID, requestQueue, sourceSegments, numBlocks, false);
+	}
+	
+	/**
+	 * Creates a new bulk reader that reads all blocks of the given channel into segments taken from the
+	 * given list. If memory mapping is requested, the reader maps the channel's file and copies the blocks
+	 * from the mapped regions, rather than issuing one read request per block. Off-heap segments are always
+	 * read directly, because the file channel then reads into them without an intermediate copy, which the
+	 * mapping could not improve on.
+	 * 
+	 * @param channelID The ID of the channel to read.
+	 * @param requestQueue The request queue of the asynchronous reader thread.
+	 * @param sourceSegments The list to take the segments from into which to read the data.
+	 * @param numBlocks The number of blocks in the channel to read.
+	 * @param memoryMapped True, if the file is to be read through memory mapping, false otherwise.
+	 * @throws IOException Thrown, if the underlying file channel could not be opened.
+	 */
+	protected BulkBlockChannelReader(Channel.ID channelID, RequestQueue<ReadRequest> requestQueue, 
+			List<MemorySegment> sourceSegments, int numBlocks, boolean memoryMapped)
+	throws IOException
 	{
 		super(channelID, requestQueue, new ArrayList<MemorySegment>(numBlocks), false);
 		
@@ -42,9 +63,26 @@ public class BulkBlockChannelReader extends BlockChannelAccess<ReadRequest, Arra
 					" as many segments as the number of blocks to read.");
 		}
 		
-		// send read requests for all blocks
-		for (int i = 0; i < numBlocks; i++) {
-			readBlock(sourceSegments.remove(sourceSegments.size() - 1));
+		if (memoryMapped && numBlocks > 0 && !sourceSegments.get(sourceSegments.size() - 1).isOffHeap()) {
+			// read all blocks with one request from the mapped file
+			final List<MemorySegment> targets = new ArrayList<MemorySegment>(numBlocks);
+			for (int i = 0; i < numBlocks; i++) {
+				targets.add(sourceSegments.remove(sourceSegments.size() - 1));
+			}
+			checkErroneous();
+			this.requestsNotReturned.addAndGet(numBlocks);
+			if (this.closed || this.requestQueue.isClosed()) {
+				this.requestsNotReturned.addAndGet(-numBlocks);
+				sourceSegments.addAll(targets);
+				throw new IOException("The reader has been closed.");
+			}
+			this.requestQueue.add(new MappedSegmentsReadRequest(this, targets));
+		}
+		else {
+			// send read requests for all blocks
+			for (int i = 0; i < numBlocks; i++) {
+				readBlock(sourceSegments.remove(sourceSegments.size() - 1));
+			}
 		}
 	}
 	
@@ -69,6 +69,59 @@ public final class Channel
 			return path;
 		}
 	}
+	
+	/**
+	 * An ID of a channel whose blocks are striped across several files, typically in different temp directories.
+	 * The blocks are distributed round-robin in units of a fixed number of blocks, such that a sequential
+	 * pass over the channel keeps the disks of all stripes busy. Readers and writers created by the
+	 * {@link IOManager} for such an ID take care of the striping transparently.
+	 */
+	public static final class StripedID extends ID
+	{
+		private final ID[] stripes;
+		
+		private final int blocksPerStripe;
+		
+		protected StripedID(final ID[] stripes, final int blocksPerStripe)
+		{
+			super(stripes[0].getPath(), stripes[0].getThreadNum());
+			
+			if (blocksPerStripe < 1) {
+				throw new IllegalArgumentException("The number of blocks per stripe must be at least one.");
+			}
+			this.stripes = stripes;
+			this.blocksPerStripe = blocksPerStripe;
+		}
+		
+		/**
+		 * Gets the number of files that the channel's blocks are striped across.
+		 * 
+		 * @return The number of stripes.
+		 */
+		public int getNumStripes() {
+			return this.stripes.length;
+		}
+		
+		/**
+		 * Gets the ID of the file that holds the given stripe. The first stripe's file has the path of
+		 * this ID.
+		 * 
+		 * @param stripe The number of the stripe.
+		 * @return The ID of the stripe's file.
+		 */
+		public ID getStripe(int stripe) {
+			return this.stripes[stripe];
+		}
+		
+		/**
+		 * Gets the number of consecutive blocks that go to the same stripe.
+		 * 
+		 * @return The number of blocks per stripe.
+		 */
+		public int getBlocksPerStripe() {
+			return this.blocksPerStripe;
+		}
+	}
 
 	public static final class Enumerator
 	{
@@ -78,18 +131,30 @@ public final class Channel
 		
 		private final String namePrefix;
 
+		private final IOManager ioManager;
+
 		private int counter;
 
 		protected Enumerator(final String[] basePaths, final Random random)
+		{
+			this(basePaths, random, null);
+		}
+
+		/**
+		 * Creates an enumerator that asks the given I/O manager for the directory of each new channel,
+		 * rather than cycling through the directories.
+		 */
+		Enumerator(final String[] basePaths, final Random random, final IOManager ioManager)
 		{
 			this.paths = basePaths;
 			this.namePrefix = randomString(random);
+			this.ioManager = ioManager;
 			this.counter = 0;
 		}
 
 		public ID next()
 		{
-			final int threadNum = counter % paths.length;
+			final int threadNum = this.ioManager == null ? counter % paths.length : this.ioManager.getLeastLoadedPathNum();
 			return new ID(String.format(FORMAT, this.paths[threadNum], File.separator, namePrefix, (counter++)), threadNum);
 		}
 	}
@@ -29,6 +29,13 @@ import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
  * A {@link DataInputView} that is backed by a {@link BlockChannelReader}, making it effectively a data input
  * stream. The view reads it data in blocks from the underlying channel. The view can only read data that
  * has been written by a {@link ChannelWriterOutputView}, due to block formatting.
+ * <p>
+ * Data that has been written with a {@link BlockCompressionCodec} must be read with a codec of the same type.
+ * The view then decompresses the frames from the blocks into a separate page, from which the data is read.
+ * That page is one of the supplied memory segments, so it counts towards the memory that the caller obtained
+ * from the memory manager. Only if the view has a single segment or off-heap segments, it allocates the page
+ * on the heap. Frames that lie within one block are decompressed directly from the block. Frames that span
+ * two blocks are gathered in a buffer on the heap first, which is allocated once and holds at most one page.
  *
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -46,6 +53,24 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 	
 	private boolean closed;							// flag indicating whether the reader is closed
 	
+	private final BlockCompressionCodec codec;		// the codec decompressing the frames, or null
+	
+	private final MemorySegment uncompressedPage;	// the page that the frames are decompressed into
+	
+	private final boolean pageFromMemory;			// flag indicating whether the page is one of the supplied segments
+	
+	private byte[] compressionBuffer;				// the buffer gathering frames that span blocks, created lazily
+	
+	private final byte[] frameHeader;				// the buffer to read the frame headers into
+	
+	private MemorySegment currentBlock;				// the block from which the compressed frames are read
+	
+	private int positionInBlock;					// the read position in the current block
+	
+	private int limitInBlock;						// the end of the data in the current block
+	
+	private int limitInPage;						// the end of the data in the uncompressed page
+	
 	// --------------------------------------------------------------------------------------------
 
 	/**
@@ -92,7 +117,32 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 														int numBlocks, boolean waitForFirstBlock)
 	throws IOException
 	{
-		this(reader, memory, numBlocks, ChannelWriterOutputView.HEADER_LENGTH, waitForFirstBlock);
+		this(reader, memory, numBlocks, ChannelWriterOutputView.HEADER_LENGTH, null, waitForFirstBlock);
+	}
+	
+	/**
+	 * Creates a new channel reader that reads from the given channel, which has been written with the
+	 * given compression codec. Decompression takes one of the memory segments to hold the uncompressed
+	 * data, so the view should be given at least two segments.
+	 * 
+	 * @param reader The reader that reads the data from disk back into memory.
+	 * @param memory A list of memory segments that the reader uses for reading the data in. If the
+	 *               list contains more than one segment, the reader will asynchronously pre-fetch
+	 *               blocks ahead.
+	 * @param numBlocks The number of blocks this channel will read, as reported by the writing view,
+	 *                  or -1, if unknown.
+	 * @param codec The codec to decompress the data with, or null, if the data is not compressed.
+	 * @param waitForFirstBlock A flag indicating weather this constructor call should block
+	 *                          until the first block has returned from the asynchronous I/O reader.
+	 * 
+	 * @throws IOException Thrown, if the read requests for the first blocks fail to be
+	 *                     served by the reader.
+	 */
+	public ChannelReaderInputView(BlockChannelReader reader, List<MemorySegment> memory, 
+			int numBlocks, BlockCompressionCodec codec, boolean waitForFirstBlock)
+	throws IOException
+	{
+		this(reader, memory, numBlocks, ChannelWriterOutputView.HEADER_LENGTH, codec, waitForFirstBlock);
 	}
 		
 	/**
@@ -119,6 +169,13 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 	ChannelReaderInputView(BlockChannelReader reader, List<MemorySegment> memory, 
 				int numBlocks, int headerLen, boolean waitForFirstBlock)
 	throws IOException
+	{
+		this(reader, memory, numBlocks, headerLen, null, waitForFirstBlock);
+	}
+	
+	private ChannelReaderInputView(BlockChannelReader reader, List<MemorySegment> memory, 
+				int numBlocks, int headerLen, BlockCompressionCodec codec, boolean waitForFirstBlock)
+	throws IOException
 	{
 		super(headerLen);
 		
@@ -135,7 +192,27 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 		this.numSegments = memory.size();
 		this.freeMem = new ArrayList<MemorySegment>(this.numSegments);
 		
-		for (int i = 0; i < memory.size(); i++) {
+		this.codec = codec;
+		int numBlockSegments = memory.size();
+		if (codec == null) {
+			this.uncompressedPage = null;
+			this.pageFromMemory = false;
+			this.frameHeader = null;
+		} else {
+			// the page can only be taken from the memory if at least one segment remains for the blocks
+			final MemorySegment last = memory.get(memory.size() - 1);
+			if (memory.size() > 1 && !last.isOffHeap()) {
+				this.uncompressedPage = last;
+				this.pageFromMemory = true;
+				numBlockSegments--;
+			} else {
+				this.uncompressedPage = new MemorySegment(new byte[last.size()], 0, last.size());
+				this.pageFromMemory = false;
+			}
+			this.frameHeader = new byte[ChannelWriterOutputView.FRAME_HEADER_LENGTH];
+		}
+		
+		for (int i = 0; i < numBlockSegments; i++) {
 			sendReadRequest(memory.get(i));
 		}
 		
@@ -170,10 +247,14 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 		
 		// re-collect all memory segments
 		ArrayList<MemorySegment> list = this.freeMem;
-		final MemorySegment current = getCurrentSegment();
+		if (this.pageFromMemory) {
+			list.add(this.uncompressedPage);
+		}
+		final MemorySegment current = this.codec == null ? getCurrentSegment() : this.currentBlock;
 		if (current != null) {
 			list.add(current);
 		}
+		this.currentBlock = null;
 		clear();
 
 		// close the writer and gather all segments
@@ -211,6 +292,21 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 	 */
 	@Override
 	protected MemorySegment nextSegment(MemorySegment current) throws IOException
+	{
+		return this.codec == null ? nextBlock(current) : decompressNextFrame();
+	}
+	
+	/**
+	 * Gets the next block from the asynchronous block reader, after issuing a new request with the given
+	 * segment.
+	 * 
+	 * @param current The memory segment used for the next request.
+	 * @return The next block.
+	 * 
+	 * @throws EOFException Thrown, if no further blocks are available.
+	 * @throws IOException Thrown, if an I/O error occurred while reading 
+	 */
+	private final MemorySegment nextBlock(MemorySegment current) throws IOException
 	{
 		// check if we are at our end
 		if (this.inLastBlock) {
@@ -246,7 +342,7 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 	@Override
 	protected int getLimitForSegment(MemorySegment segment)
 	{
-		return segment.getInt(ChannelWriterOutputView.HEAD_BLOCK_LENGTH_OFFSET);
+		return this.codec == null ? segment.getInt(ChannelWriterOutputView.HEAD_BLOCK_LENGTH_OFFSET) : this.limitInPage;
 	}
 	
 	/**
@@ -268,4 +364,86 @@ public class ChannelReaderInputView extends AbstractPagedInputView
 			this.freeMem.add(seg);
 		}
 	}
+	
+	// --------------------------------------------------------------------------------------------
+	//                                      Decompression
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Reads the next frame from the blocks and decompresses it into the uncompressed page.
+	 * 
+	 * @return The uncompressed page.
+	 * 
+	 * @throws EOFException Thrown, if no further frames are available.
+	 * @throws IOException Thrown, if an I/O error occurred while reading, or if the frame is corrupt.
+	 */
+	private final MemorySegment decompressNextFrame() throws IOException
+	{
+		final byte[] header = this.frameHeader;
+		readFromBlocks(header, 0, ChannelWriterOutputView.FRAME_HEADER_LENGTH);
+		final int length = getInt(header, 0);
+		final int compressedLength = getInt(header, 4);
+		
+		final MemorySegment page = this.uncompressedPage;
+		if (length <= 0 || length > page.size() - this.headerLength || compressedLength <= 0 || compressedLength > length) {
+			throw new IOException("The current block does not belong to a compressing ChannelWriterOutputView: " +
+					"Invalid frame header.");
+		}
+		
+		final byte[] target = page.getBackingArray();
+		final int targetOffset = page.translateOffset(this.headerLength);
+		if (compressedLength == length) {
+			// the frame is stored uncompressed
+			readFromBlocks(target, targetOffset, length);
+		} else {
+			if (this.positionInBlock == this.limitInBlock) {
+				nextBlockForFrame();
+			}
+			
+			final MemorySegment block = this.currentBlock;
+			if (!block.isOffHeap() && this.limitInBlock - this.positionInBlock >= compressedLength) {
+				// the frame lies within the current block, so it is decompressed in place
+				this.codec.decompress(block.getBackingArray(), block.translateOffset(this.positionInBlock),
+					compressedLength, target, targetOffset, length);
+				this.positionInBlock += compressedLength;
+			} else {
+				if (this.compressionBuffer == null) {
+					this.compressionBuffer = new byte[page.size()];
+				}
+				readFromBlocks(this.compressionBuffer, 0, compressedLength);
+				this.codec.decompress(this.compressionBuffer, 0, compressedLength, target, targetOffset, length);
+			}
+		}
+		
+		this.limitInPage = this.headerLength + length;
+		return page;
+	}
+	
+	private final void readFromBlocks(byte[] target, int offset, int length) throws IOException
+	{
+		while (length > 0) {
+			if (this.currentBlock == null || this.positionInBlock == this.limitInBlock) {
+				nextBlockForFrame();
+			}
+			
+			final int toCopy = Math.min(length, this.limitInBlock - this.positionInBlock);
+			this.currentBlock.get(this.positionInBlock, target, offset, toCopy);
+			this.positionInBlock += toCopy;
+			offset += toCopy;
+			length -= toCopy;
+		}
+	}
+	
+	private final void nextBlockForFrame() throws IOException
+	{
+		this.currentBlock = nextBlock(this.currentBlock);
+		this.positionInBlock = this.headerLength;
+		this.limitInBlock = this.currentBlock.getInt(ChannelWriterOutputView.HEAD_BLOCK_LENGTH_OFFSET);
+	}
+	
+	private static final int getInt(byte[] source, int offset)
+	{
+		return ((source[offset] & 0xff) << 24) | ((source[offset + 1] & 0xff) << 16) | 
+			((source[offset + 2] & 0xff) << 8) | (source[offset + 3] & 0xff);
+	}
 }
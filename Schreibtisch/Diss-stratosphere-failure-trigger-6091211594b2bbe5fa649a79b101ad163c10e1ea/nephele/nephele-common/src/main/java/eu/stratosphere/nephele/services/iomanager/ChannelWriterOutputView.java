@@ -28,6 +28,18 @@ import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
  * A {@link DataOutputView} that is backed by a {@link BlockChannelWriter}, making it effectively a data output
  * stream. The view writes it data in blocks to the underlying channel, adding a minimal header to each block.
  * The data can be re-read by a {@link ChannelReaderInputView}, if it uses the same block size.
+ * <p>
+ * If the view is created with a {@link BlockCompressionCodec}, the data is written to a separate page. Each
+ * full page is compressed into a frame that holds the page's uncompressed and compressed length and the
+ * compressed bytes. The frames are written back to back into the blocks of the channel, so the channel needs
+ * fewer blocks than the uncompressed data. The {@link #getBlockCount() block count} then refers to the
+ * blocks of compressed data. Such a channel must be read by a {@link ChannelReaderInputView} that uses a
+ * codec of the same type.
+ * <p>
+ * The page for the uncompressed data is one of the supplied memory segments, so it counts towards the memory
+ * that the caller obtained from the memory manager. Only if the view has a single segment or off-heap segments,
+ * it allocates the page on the heap. Apart from that, compression needs one buffer on the heap for the
+ * compressed data of a page, which is slightly larger than a page.
  *
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -58,6 +70,11 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 	 */
 	protected static final short FLAG_LAST_BLOCK = (short) 0x1;
 	
+	/**
+	 * The length of the header of a compressed frame, holding the uncompressed and the compressed length.
+	 */
+	protected static final int FRAME_HEADER_LENGTH = 8;
+	
 	// --------------------------------------------------------------------------------------------
 	
 	private final BlockChannelWriter writer;		// the writer to the channel
@@ -68,6 +85,20 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 	
 	private final int numSegments;					// the number of memory segments used by this view
 	
+	private final BlockCompressionCodec codec;		// the codec compressing the pages, or null
+	
+	private final MemorySegment uncompressedPage;	// the page holding the data to be compressed
+	
+	private final boolean pageFromMemory;			// flag indicating whether the page is one of the supplied segments
+	
+	private final byte[] compressionBuffer;			// the buffer receiving the compressed data
+	
+	private final byte[] frameHeader;				// the buffer to assemble the frame headers in
+	
+	private MemorySegment currentBlock;				// the block receiving the compressed frames
+	
+	private int positionInBlock;					// the write position in the current block
+	
 	// --------------------------------------------------------------------------------------------
 	
 	/**
@@ -81,6 +112,23 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 	 * @param segmentSize The size of the memory segments.
 	 */
 	public ChannelWriterOutputView(BlockChannelWriter writer, List<MemorySegment> memory, int segmentSize)
+	{
+		this(writer, memory, segmentSize, null);
+	}
+	
+	/**
+	 * Creates an new ChannelWriterOutputView that writes to the given channel and buffers data
+	 * in the given memory segments, compressing the data with the given codec. Compression takes one of the
+	 * memory segments to hold the uncompressed data, so the view should be given at least two segments. It further
+	 * needs a buffer of slightly more than a page on the heap for the compressed data.
+	 * 
+	 * @param writer The writer to write to.
+	 * @param memory The memory used to buffer data, or null, to utilize solely the return queue.
+	 * @param segmentSize The size of the memory segments.
+	 * @param codec The codec to compress the blocks with, or null, to write the data uncompressed.
+	 */
+	public ChannelWriterOutputView(BlockChannelWriter writer, List<MemorySegment> memory, int segmentSize,
+			BlockCompressionCodec codec)
 	{
 		super(segmentSize, HEADER_LENGTH);
 		
@@ -88,11 +136,31 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 			throw new NullPointerException();
 		
 		this.writer = writer;
+		this.codec = codec;
+		if (codec == null) {
+			this.uncompressedPage = null;
+			this.pageFromMemory = false;
+			this.compressionBuffer = null;
+			this.frameHeader = null;
+		} else {
+			// the compressed data needs a block of its own, so the page can only be taken from the memory if
+			// at least one more segment remains
+			if (memory != null && memory.size() > 1 && !memory.get(0).isOffHeap()) {
+				this.uncompressedPage = memory.get(0);
+				this.pageFromMemory = true;
+			} else {
+				this.uncompressedPage = new MemorySegment(new byte[segmentSize], 0, segmentSize);
+				this.pageFromMemory = false;
+			}
+			this.compressionBuffer = new byte[codec.getMaxCompressedLength(segmentSize - HEADER_LENGTH)];
+			this.frameHeader = new byte[FRAME_HEADER_LENGTH];
+		}
 		
 		if (memory == null) {
 			this.numSegments = 0;
 		} else {
-			this.numSegments = memory.size();
+			final int firstBlock = this.pageFromMemory ? 1 : 0;
+			this.numSegments = memory.size() - firstBlock;
 			// load the segments into the queue
 			final LinkedBlockingQueue<MemorySegment> queue = writer.getReturnQueue();
 			for (int i = memory.size() - 1; i >= 0; --i) {
@@ -100,7 +168,9 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 				if (seg.size() != segmentSize) {
 					throw new IllegalArgumentException("The supplied memory segments are not of the specified size.");
 				}
-				queue.add(seg);
+				if (i >= firstBlock) {
+					queue.add(seg);
+				}
 			}
 		}
 		
@@ -138,7 +208,13 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 	public List<MemorySegment> close() throws IOException
 	{
 		// send off set last segment
-		writeSegment(getCurrentSegment(), getCurrentPositionInSegment(), true);
+		if (this.codec == null) {
+			writeSegment(getCurrentSegment(), getCurrentPositionInSegment(), true);
+		} else {
+			compressPage(getCurrentSegment(), getCurrentPositionInSegment());
+			writeBlock(this.currentBlock, this.positionInBlock, true);
+			this.currentBlock = null;
+		}
 		clear();
 		
 		// close the writer and gather all segments
@@ -146,7 +222,10 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 		this.writer.close();
 		
 		// re-collect all memory segments
-		ArrayList<MemorySegment> list = new ArrayList<MemorySegment>(this.numSegments);	
+		ArrayList<MemorySegment> list = new ArrayList<MemorySegment>(this.numSegments + 1);
+		if (this.pageFromMemory) {
+			list.add(this.uncompressedPage);
+		}
 		for (int i = 0; i < this.numSegments; i++) {
 			final MemorySegment m = queue.poll();
 			if (m == null) {
@@ -189,7 +268,8 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 	 */
 	public long getBytesMemoryUsed()
 	{
-		return (this.blockCount - 1) * getSegmentSize() + getCurrentPositionInSegment();
+		return (this.blockCount - 1) * getSegmentSize() + 
+			(this.codec == null ? getCurrentPositionInSegment() : this.positionInBlock);
 	}
 
 	// --------------------------------------------------------------------------------------------
@@ -198,6 +278,18 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 	
 	protected final MemorySegment nextSegment(MemorySegment current, int posInSegment) throws IOException
 	{
+		if (this.codec != null) {
+			// the data always goes to the same page, which is compressed into the blocks when full
+			if (current == null) {
+				this.currentBlock = this.writer.getNextReturnedSegment();
+				this.positionInBlock = HEADER_LENGTH;
+				this.blockCount++;
+			} else {
+				compressPage(current, posInSegment);
+			}
+			return this.uncompressedPage;
+		}
+		
 		if (current != null) {
 			writeSegment(current, posInSegment, false);
 		}
@@ -208,12 +300,77 @@ public final class ChannelWriterOutputView extends AbstractPagedOutputView
 	}
 	
 	private final void writeSegment(MemorySegment segment, int writePosition, boolean lastSegment) throws IOException
+	{
+		writeBlock(segment, writePosition, lastSegment);
+		this.bytesBeforeSegment += writePosition - HEADER_LENGTH;
+	}
+	
+	private final void writeBlock(MemorySegment segment, int writePosition, boolean lastSegment) throws IOException
 	{
 		segment.putShort(0, HEADER_MAGIC_NUMBER);
 		segment.putShort(HEADER_FLAGS_OFFSET, lastSegment ? FLAG_LAST_BLOCK : 0);
 		segment.putInt(HEAD_BLOCK_LENGTH_OFFSET, writePosition);
 		
 		this.writer.writeBlock(segment);
-		this.bytesBeforeSegment += writePosition - HEADER_LENGTH;
+	}
+	
+	// --------------------------------------------------------------------------------------------
+	//                                      Compression
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Compresses the data in the given page and appends it as a frame to the blocks. Data that does not
+	 * shrink is stored uncompressed, which the frame marks by equal uncompressed and compressed lengths.
+	 */
+	private final void compressPage(MemorySegment page, int writePosition) throws IOException
+	{
+		final int length = writePosition - HEADER_LENGTH;
+		if (length == 0) {
+			return;
+		}
+		
+		final byte[] data = page.getBackingArray();
+		final int dataOffset = page.translateOffset(HEADER_LENGTH);
+		final int compressedLength = this.codec.compress(data, dataOffset, length, this.compressionBuffer, 0);
+		
+		final byte[] header = this.frameHeader;
+		putInt(header, 0, length);
+		if (compressedLength < length) {
+			putInt(header, 4, compressedLength);
+			writeToBlocks(header, 0, FRAME_HEADER_LENGTH);
+			writeToBlocks(this.compressionBuffer, 0, compressedLength);
+		} else {
+			putInt(header, 4, length);
+			writeToBlocks(header, 0, FRAME_HEADER_LENGTH);
+			writeToBlocks(data, dataOffset, length);
+		}
+		
+		this.bytesBeforeSegment += length;
+	}
+	
+	private final void writeToBlocks(byte[] source, int offset, int length) throws IOException
+	{
+		while (length > 0) {
+			if (this.positionInBlock == getSegmentSize()) {
+				writeBlock(this.currentBlock, this.positionInBlock, false);
+				this.currentBlock = this.writer.getNextReturnedSegment();
+				this.positionInBlock = HEADER_LENGTH;
+				this.blockCount++;
+			}
+			
+			final int toCopy = Math.min(length, getSegmentSize() - this.positionInBlock);
+			this.currentBlock.put(this.positionInBlock, source, offset, toCopy);
+			this.positionInBlock += toCopy;
+			offset += toCopy;
+			length -= toCopy;
+		}
+	}
+	
+	private static final void putInt(byte[] target, int offset, int value)
+	{
+		target[offset] = (byte) (value >>> 24);
+		target[offset + 1] = (byte) (value >>> 16);
+		target[offset + 2] = (byte) (value >>> 8);
+		target[offset + 3] = (byte) value;
 	}
 }
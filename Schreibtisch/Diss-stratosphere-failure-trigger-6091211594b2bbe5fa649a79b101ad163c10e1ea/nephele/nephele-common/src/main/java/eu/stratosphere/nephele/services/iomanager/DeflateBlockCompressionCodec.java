@@ -0,0 +1,113 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * A block compression codec that uses the deflate algorithm of {@link java.util.zip}. It compresses better than
+ * the {@link LZBlockCompressionCodec}, but needs considerably more CPU time, so it pays off only on slow disks.
+ */
+public final class DeflateBlockCompressionCodec implements BlockCompressionCodec
+{
+	private final Deflater deflater;
+	
+	private final Inflater inflater;
+	
+	/**
+	 * Creates a new codec that compresses with the fastest compression level.
+	 */
+	public DeflateBlockCompressionCodec()
+	{
+		this(Deflater.BEST_SPEED);
+	}
+	
+	/**
+	 * Creates a new codec that compresses with the given compression level.
+	 * 
+	 * @param level The compression level, between 1 (fastest) and 9 (best compression).
+	 */
+	public DeflateBlockCompressionCodec(int level)
+	{
+		this.deflater = new Deflater(level, true);
+		this.inflater = new Inflater(true);
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockCompressionCodec#getMaxCompressedLength(int)
+	 */
+	@Override
+	public int getMaxCompressedLength(int length)
+	{
+		// stored blocks add five bytes per 16 KiBytes, plus some slack for the block headers
+		return length + (length >>> 11) + 64;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockCompressionCodec#compress(byte[], int, int, byte[], int)
+	 */
+	@Override
+	public int compress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset) throws IOException
+	{
+		final Deflater deflater = this.deflater;
+		deflater.reset();
+		deflater.setInput(source, sourceOffset, length);
+		deflater.finish();
+		
+		final int limit = targetOffset + getMaxCompressedLength(length);
+		int pos = targetOffset;
+		while (!deflater.finished()) {
+			if (pos >= limit) {
+				throw new IOException("Deflated data exceeds the maximal compressed length.");
+			}
+			pos += deflater.deflate(target, pos, limit - pos);
+		}
+		return pos - targetOffset;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockCompressionCodec#decompress(byte[], int, int, byte[], int, int)
+	 */
+	@Override
+	public void decompress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset,
+			int uncompressedLength)
+	throws IOException
+	{
+		final Inflater inflater = this.inflater;
+		inflater.reset();
+		inflater.setInput(source, sourceOffset, length);
+		
+		try {
+			int pos = targetOffset;
+			final int limit = targetOffset + uncompressedLength;
+			while (pos < limit) {
+				final int num = inflater.inflate(target, pos, limit - pos);
+				if (num == 0 && (inflater.finished() || inflater.needsInput())) {
+					throw new IOException("Compressed block is corrupt: Data ends after " + (pos - targetOffset) +
+						" of " + uncompressedLength + " bytes.");
+				}
+				pos += num;
+			}
+		}
+		catch (DataFormatException dfex) {
+			throw new IOException("Compressed block is corrupt: " + dfex.getMessage(), dfex);
+		}
+	}
+}
@@ -15,10 +15,12 @@
 
 package eu.stratosphere.nephele.services.iomanager;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.List;
 import java.util.Random;
+import java.util.Timer;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.logging.Log;
@@ -38,6 +40,11 @@ public final class IOManager implements UncaughtExceptionHandler
 	 * Logging.
 	 */
 	private static final Log LOG = LogFactory.getLog(IOManager.class);
+	
+	/**
+	 * The default number of consecutive blocks of a striped channel that go to the same directory.
+	 */
+	public static final int DEFAULT_BLOCKS_PER_STRIPE = 4;
 
 	/**
 	 * The default temp paths for anonymous Channels.
@@ -59,6 +66,16 @@ public final class IOManager implements UncaughtExceptionHandler
 	 */
 	private final ReaderThread[] readers;
 	
+	/**
+	 * The I/O statistics of the directories.
+	 */
+	private final IOStatistics[] statistics;
+	
+	/**
+	 * The timer that issues partially filled bundles of requests after the maximum delay.
+	 */
+	private final Timer bundleTimer;
+	
 	/**
 	 * The number of the next path to use.
 	 */
@@ -103,26 +120,32 @@ public final class IOManager implements UncaughtExceptionHandler
 		this.random = new Random();
 		this.nextPath = 0;
 		
-		// start a write worker thread for each directory
 		this.writers = new WriterThread[paths.length];
-		for (int i = 0; i < this.writers.length; i++) {
-			final WriterThread t = new WriterThread();
-			this.writers[i] = t;
-			t.setName("IOManager writer thread #" + (i + 1));
-			t.setDaemon(true);
-			t.setUncaughtExceptionHandler(this);
-			t.start();
-		}
-
-		// start a reader worker thread for each directory
 		this.readers = new ReaderThread[paths.length];
-		for (int i = 0; i < this.readers.length; i++) {
-			final ReaderThread t = new ReaderThread();
-			this.readers[i] = t;
-			t.setName("IOManager reader thread #" + (i + 1));
-			t.setDaemon(true);
-			t.setUncaughtExceptionHandler(this);
-			t.start();
+		this.statistics = new IOStatistics[paths.length];
+		this.bundleTimer = new Timer("IOManager bundle timer", true);
+		
+		for (int i = 0; i < paths.length; i++) {
+			final RequestQueue<ReadRequest> readQueue = new RequestQueue<ReadRequest>();
+			final RequestQueue<WriteRequest> writeQueue = new RequestQueue<WriteRequest>();
+			final IOStatistics stats = new IOStatistics(paths[i], readQueue, writeQueue);
+			this.statistics[i] = stats;
+			
+			// start a write worker thread for the directory
+			final WriterThread w = new WriterThread(writeQueue, stats);
+			this.writers[i] = w;
+			w.setName("IOManager writer thread #" + (i + 1));
+			w.setDaemon(true);
+			w.setUncaughtExceptionHandler(this);
+			w.start();
+			
+			// start a reader worker thread for the directory
+			final ReaderThread r = new ReaderThread(readQueue, stats);
+			this.readers[i] = r;
+			r.setName("IOManager reader thread #" + (i + 1));
+			r.setDaemon(true);
+			r.setUncaughtExceptionHandler(this);
+			r.start();
 		}
 	}
 
@@ -158,6 +181,8 @@ public final class IOManager implements UncaughtExceptionHandler
 				}
 			}
 			
+			this.bundleTimer.cancel();
+			
 			// ------------------------ wait until shutdown is complete ---------------------------
 			try {
 				for (int i = 0; i < this.readers.length; i++) {
@@ -168,6 +193,12 @@ public final class IOManager implements UncaughtExceptionHandler
 				}
 			}
 			catch (InterruptedException iex) {}
+			
+			if (LOG.isDebugEnabled()) {
+				for (int i = 0; i < this.statistics.length; i++) {
+					LOG.debug(this.statistics[i].toString());
+				}
+			}
 		}
 	}
 	
@@ -202,31 +233,114 @@ public final class IOManager implements UncaughtExceptionHandler
 		shutdown();	
 	}
 
+	/**
+	 * Gets the number of temp directories that this I/O manager spreads its channels across. Each directory
+	 * is served by its own reader and writer thread.
+	 * 
+	 * @return The number of temp directories.
+	 */
+	public int getNumberOfTempDirectories()
+	{
+		return this.paths.length;
+	}
+	
+	/**
+	 * Gets the I/O statistics of the temp directories, in the order in which the directories were given
+	 * to the constructor. The statistics are live, they continue to be updated as the I/O manager works.
+	 * 
+	 * @return The I/O statistics of the temp directories.
+	 */
+	public IOStatistics[] getStatistics()
+	{
+		return this.statistics.clone();
+	}
+	
 	// ------------------------------------------------------------------------
 	//                          Channel Instantiations
 	// ------------------------------------------------------------------------
 	
 	/**
-	 * Creates a new {@link Channel.ID} in one of the temp directories. Multiple
-	 * invocations of this method spread the channels evenly across the different directories.
+	 * Creates a new {@link Channel.ID} in one of the temp directories. The channel goes to the directory with
+	 * the fewest pending I/O requests. Among equally loaded directories, multiple invocations of this method
+	 * spread the channels evenly across the different directories.
 	 * 
 	 * @return A channel to a temporary directory.
 	 */
 	public Channel.ID createChannel()
 	{
-		final int num = getNextPathNum();
+		final int num = getLeastLoadedPathNum();
 		return new Channel.ID(this.paths[num], num, this.random);
 	}
+	
+	/**
+	 * Creates a new channel whose blocks are striped across all temp directories, using the
+	 * {@link #DEFAULT_BLOCKS_PER_STRIPE default stripe size}. If only one temp directory exists,
+	 * this method returns a regular channel.
+	 * 
+	 * @return A channel that is striped across the temp directories.
+	 * @see #createStripedChannel(int)
+	 */
+	public Channel.ID createStripedChannel()
+	{
+		return createStripedChannel(DEFAULT_BLOCKS_PER_STRIPE);
+	}
+	
+	/**
+	 * Creates a new channel whose blocks are striped across all temp directories. The blocks are distributed
+	 * round-robin across the directories, in units of the given number of blocks, starting with the directory
+	 * with the fewest pending I/O requests. Reading or writing such a channel keeps the disks of all
+	 * directories busy, which is desirable for large channels that are accessed by few readers or writers at
+	 * a time. The readers and writers for the channel are obtained from the regular methods of this I/O
+	 * manager. Striped channels cannot be read by bulk readers.
+	 * <p>
+	 * If only one temp directory exists, this method returns a regular channel.
+	 * 
+	 * @param blocksPerStripe The number of consecutive blocks that go to the same directory.
+	 * @return A channel that is striped across the temp directories.
+	 */
+	public Channel.ID createStripedChannel(int blocksPerStripe)
+	{
+		if (this.paths.length == 1) {
+			return createChannel();
+		}
+		
+		final int first = getLeastLoadedPathNum();
+		final Channel.ID[] stripes = new Channel.ID[this.paths.length];
+		for (int i = 0; i < stripes.length; i++) {
+			final int num = (first + i) % this.paths.length;
+			stripes[i] = new Channel.ID(this.paths[num], num, this.random);
+		}
+		return new Channel.StripedID(stripes, blocksPerStripe);
+	}
 
 	/**
-	 * Creates a new {@link Channel.Enumerator}, spreading the channels in a round-robin fashion
-	 * across the temporary file directories.
+	 * Creates a new {@link Channel.Enumerator}, spreading the channels across the temporary file directories.
+	 * Each channel goes to the directory with the fewest pending I/O requests at the time it is created,
+	 * equally loaded directories are used in a round-robin fashion.
 	 * 
 	 * @return An enumerator for channels.
 	 */
 	public Channel.Enumerator createChannelEnumerator()
 	{
-		return new Channel.Enumerator(this.paths, this.random);
+		return new Channel.Enumerator(this.paths, this.random, this);
+	}
+	
+	/**
+	 * Deletes the files underlying the given channel, making a best effort and not reporting failures.
+	 * Channels that have been opened should rather be deleted through their reader or writer.
+	 * 
+	 * @param channelID The channel to delete.
+	 */
+	public void deleteChannel(Channel.ID channelID)
+	{
+		if (channelID instanceof Channel.StripedID) {
+			final Channel.StripedID striped = (Channel.StripedID) channelID;
+			for (int i = 0; i < striped.getNumStripes(); i++) {
+				deleteFile(striped.getStripe(i));
+			}
+		} else {
+			deleteFile(channelID);
+		}
 	}
 
 	
@@ -252,7 +366,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelWriter(channelID, this.writers[channelID.getThreadNum()].requestQueue, returnQueue, 1);
+		return newBlockChannelWriter(channelID, returnQueue, 1);
 	}
 	
 	/**
@@ -262,8 +376,9 @@ public final class IOManager implements UncaughtExceptionHandler
 	 * <p>
 	 * The writer will collect a specified number of write requests and carry them out
 	 * in one, effectively writing one block in the size of multiple memory pages.
-	 * Note that this means that no memory segment will reach the return queue before
-	 * the given number of requests are collected, so the number of buffers used with
+	 * Note that this means that a memory segment reaches the return queue only after
+	 * the given number of requests are collected, or after a short delay
+	 * (see {@link BlockChannelAccess#MAX_BUNDLE_DELAY}), so the number of buffers used with
 	 * the writer should be greater than the number of requests to combine. Ideally,
 	 * the number of memory segments used is a multiple of the number of requests to
 	 * combine.
@@ -282,7 +397,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelWriter(channelID, this.writers[channelID.getThreadNum()].requestQueue, returnQueue, numRequestsToCombine);
+		return newBlockChannelWriter(channelID, returnQueue, numRequestsToCombine);
 	}
 	
 	/**
@@ -300,7 +415,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelWriter(channelID, this.writers[channelID.getThreadNum()].requestQueue, new LinkedBlockingQueue<MemorySegment>(), 1);
+		return newBlockChannelWriter(channelID, new LinkedBlockingQueue<MemorySegment>(), 1);
 	}
 	
 	/**
@@ -309,8 +424,9 @@ public final class IOManager implements UncaughtExceptionHandler
 	 * <p>
 	 * The writer will collect a specified number of write requests and carry them out
 	 * in one, effectively writing one block in the size of multiple memory pages.
-	 * Note that this means that no memory segment will reach the return queue before
-	 * the given number of requests are collected, so the number of buffers used with
+	 * Note that this means that a memory segment reaches the return queue only after
+	 * the given number of requests are collected, or after a short delay
+	 * (see {@link BlockChannelAccess#MAX_BUNDLE_DELAY}), so the number of buffers used with
 	 * the writer should be greater than the number of requests to combine. Ideally,
 	 * the number of memory segments used is a multiple of the number of requests to
 	 * combine.
@@ -327,7 +443,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelWriter(channelID, this.writers[channelID.getThreadNum()].requestQueue, new LinkedBlockingQueue<MemorySegment>(), numRequestsToCombine);
+		return newBlockChannelWriter(channelID, new LinkedBlockingQueue<MemorySegment>(), numRequestsToCombine);
 	}
 	
 	/**
@@ -348,7 +464,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelReader(channelID, this.readers[channelID.getThreadNum()].requestQueue, returnQueue, 1);
+		return newBlockChannelReader(channelID, returnQueue, 1);
 	}
 	
 	/**
@@ -358,8 +474,9 @@ public final class IOManager implements UncaughtExceptionHandler
 	 * <p>
 	 * The reader will collect a specified number of read requests and carry them out
 	 * in one, effectively reading one block in the size of multiple memory pages.
-	 * Note that this means that no memory segment will reach the return queue before
-	 * the given number of requests are collected, so the number of buffers used with
+	 * Note that this means that a memory segment reaches the return queue only after
+	 * the given number of requests are collected, or after a short delay
+	 * (see {@link BlockChannelAccess#MAX_BUNDLE_DELAY}), so the number of buffers used with
 	 * the reader should be greater than the number of requests to combine. Ideally,
 	 * the number of memory segments used is a multiple of the number of requests to
 	 * combine.
@@ -378,7 +495,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelReader(channelID, this.readers[channelID.getThreadNum()].requestQueue, returnQueue, numRequestsToCombine);
+		return newBlockChannelReader(channelID, returnQueue, numRequestsToCombine);
 	}
 	
 	/**
@@ -397,7 +514,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelReader(channelID, this.readers[channelID.getThreadNum()].requestQueue, new LinkedBlockingQueue<MemorySegment>(), 1);
+		return newBlockChannelReader(channelID, new LinkedBlockingQueue<MemorySegment>(), 1);
 	}
 	
 	/**
@@ -407,8 +524,9 @@ public final class IOManager implements UncaughtExceptionHandler
 	 * <p>
 	 * The reader will collect a specified number of read requests and carry them out
 	 * in one, effectively reading one block in the size of multiple memory pages.
-	 * Note that this means that no memory segment will reach the return queue before
-	 * the given number of requests are collected, so the number of buffers used with
+	 * Note that this means that a memory segment reaches the return queue only after
+	 * the given number of requests are collected, or after a short delay
+	 * (see {@link BlockChannelAccess#MAX_BUNDLE_DELAY}), so the number of buffers used with
 	 * the reader should be greater than the number of requests to combine. Ideally,
 	 * the number of memory segments used is a multiple of the number of requests to
 	 * combine.
@@ -425,8 +543,7 @@ public final class IOManager implements UncaughtExceptionHandler
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
 		
-		return new BlockChannelReader(channelID, this.readers[channelID.getThreadNum()].requestQueue, 
-			new LinkedBlockingQueue<MemorySegment>(), numRequestsToCombine);
+		return newBlockChannelReader(channelID, new LinkedBlockingQueue<MemorySegment>(), numRequestsToCombine);
 	}
 	
 	/**
@@ -451,14 +568,143 @@ public final class IOManager implements UncaughtExceptionHandler
 		if (this.isClosed) {
 			throw new IllegalStateException("I/O-Manger is closed.");
 		}
+		if (channelID instanceof Channel.StripedID) {
+			throw new IllegalArgumentException("Striped channels cannot be read by bulk readers.");
+		}
 		
 		return new BulkBlockChannelReader(channelID, this.readers[channelID.getThreadNum()].requestQueue, targetSegments, numBlocks);
 	}
 	
+	/**
+	 * Creates a block channel reader that reads all blocks from the given channel directly in one bulk,
+	 * optionally by memory mapping the channel's file. With memory mapping, the blocks are copied straight
+	 * from the mapped file region into the target segments, instead of being read block by block.
+	 * 
+	 * @param channelID The descriptor for the channel to write to.
+	 * @param targetSegments The list to take the segments from into which to read the data.
+	 * @param numBlocks The number of blocks in the channel to read.
+	 * @param memoryMapped True, if the channel is to be read through memory mapping.
+	 * @return A block channel reader that reads from the given channel.
+	 * @throws IOException Thrown, if the channel for the reader could not be opened.
+	 * @see #createBulkBlockChannelReader(Channel.ID, List, int)
+	 */
+	public BulkBlockChannelReader createBulkBlockChannelReader(Channel.ID channelID,
+			List<MemorySegment> targetSegments,	int numBlocks, boolean memoryMapped)
+	throws IOException
+	{
+		if (this.isClosed) {
+			throw new IllegalStateException("I/O-Manger is closed.");
+		}
+		if (channelID instanceof Channel.StripedID) {
+			throw new IllegalArgumentException("Striped channels cannot be read by bulk readers.");
+		}
+		
+		return new BulkBlockChannelReader(channelID, this.readers[channelID.getThreadNum()].requestQueue,
+			targetSegments, numBlocks, memoryMapped);
+	}
+	
 	// ========================================================================
 	//                             Utilities
 	// ========================================================================
 	
+	private BlockChannelWriter newBlockChannelWriter(Channel.ID channelID,
+			LinkedBlockingQueue<MemorySegment> returnQueue, int numRequestsToCombine)
+	throws IOException
+	{
+		if (!(channelID instanceof Channel.StripedID)) {
+			return new BlockChannelWriter(channelID, this.writers[channelID.getThreadNum()].requestQueue,
+				returnQueue, numRequestsToCombine, this.bundleTimer);
+		}
+		
+		// the writers of all stripes share the return queue
+		final Channel.StripedID striped = (Channel.StripedID) channelID;
+		final BlockChannelWriter[] stripeWriters = new BlockChannelWriter[striped.getNumStripes() - 1];
+		try {
+			for (int i = 0; i < stripeWriters.length; i++) {
+				final Channel.ID stripe = striped.getStripe(i + 1);
+				stripeWriters[i] = new BlockChannelWriter(stripe, this.writers[stripe.getThreadNum()].requestQueue,
+					returnQueue, numRequestsToCombine, this.bundleTimer);
+			}
+			return new StripedBlockChannelWriter(striped, this.writers[striped.getThreadNum()].requestQueue,
+				returnQueue, numRequestsToCombine, this.bundleTimer, stripeWriters);
+		}
+		catch (IOException ioex) {
+			closeAndDeleteAll(stripeWriters);
+			throw ioex;
+		}
+	}
+	
+	private BlockChannelReader newBlockChannelReader(Channel.ID channelID,
+			LinkedBlockingQueue<MemorySegment> returnQueue, int numRequestsToCombine)
+	throws IOException
+	{
+		if (!(channelID instanceof Channel.StripedID)) {
+			return new BlockChannelReader(channelID, this.readers[channelID.getThreadNum()].requestQueue,
+				returnQueue, numRequestsToCombine, this.bundleTimer);
+		}
+		
+		// the readers of the stripes have their own return queues, to restore the block order
+		final Channel.StripedID striped = (Channel.StripedID) channelID;
+		final BlockChannelReader[] stripeReaders = new BlockChannelReader[striped.getNumStripes() - 1];
+		try {
+			for (int i = 0; i < stripeReaders.length; i++) {
+				final Channel.ID stripe = striped.getStripe(i + 1);
+				stripeReaders[i] = new BlockChannelReader(stripe, this.readers[stripe.getThreadNum()].requestQueue,
+					new LinkedBlockingQueue<MemorySegment>(), numRequestsToCombine, this.bundleTimer);
+			}
+			return new StripedBlockChannelReader(striped, this.readers[striped.getThreadNum()].requestQueue,
+				returnQueue, numRequestsToCombine, this.bundleTimer, stripeReaders);
+		}
+		catch (IOException ioex) {
+			closeAndDeleteAll(stripeReaders);
+			throw ioex;
+		}
+	}
+	
+	private static void closeAndDeleteAll(BlockChannelAccess<?, ?>[] accesses)
+	{
+		for (int i = 0; i < accesses.length; i++) {
+			if (accesses[i] != null) {
+				try {
+					accesses[i].closeAndDelete();
+				} catch (Throwable t) {}
+			}
+		}
+	}
+	
+	private static void deleteFile(Channel.ID channelID)
+	{
+		try {
+			final File f = new File(channelID.getPath());
+			if (f.exists()) {
+				f.delete();
+			}
+		} catch (Throwable t) {}
+	}
+	
+	/**
+	 * Gets the number of the directory with the fewest pending requests. Ties are broken in a round-robin
+	 * fashion, so idle directories are used evenly.
+	 * 
+	 * @return The number of the least loaded directory.
+	 */
+	final int getLeastLoadedPathNum()
+	{
+		final int first = getNextPathNum();
+		int best = first;
+		int bestLoad = this.statistics[first].getNumPendingRequests();
+		
+		for (int i = 1; i < this.paths.length && bestLoad > 0; i++) {
+			final int num = (first + i) % this.paths.length;
+			final int load = this.statistics[num].getNumPendingRequests();
+			if (load < bestLoad) {
+				best = num;
+				bestLoad = load;
+			}
+		}
+		return best;
+	}
+	
 	private final int getNextPathNum()
 	{
 		final int next = this.nextPath;
@@ -481,6 +727,8 @@ public final class IOManager implements UncaughtExceptionHandler
 	private static final class ReaderThread extends Thread
 	{
 		protected final RequestQueue<ReadRequest> requestQueue;
+		
+		private final IOStatistics statistics;
 
 		private volatile boolean alive;
 
@@ -488,9 +736,10 @@ public final class IOManager implements UncaughtExceptionHandler
 		// Constructors / Destructors
 		// ---------------------------------------------------------------------
 		
-		protected ReaderThread()
+		protected ReaderThread(RequestQueue<ReadRequest> requestQueue, IOStatistics statistics)
 		{
-			this.requestQueue = new RequestQueue<ReadRequest>();
+			this.requestQueue = requestQueue;
+			this.statistics = statistics;
 			this.alive = true;
 		}
 		
@@ -546,6 +795,10 @@ public final class IOManager implements UncaughtExceptionHandler
 				
 				// remember any IO exception that occurs, so it can be reported to the writer
 				IOException ioex = null;
+				
+				final long numBytes = request instanceof SizedRequest ? ((SizedRequest) request).getNumBytes() : 0;
+				this.statistics.readStarted();
+				final long startTime = System.nanoTime();
 
 				try {
 					// read buffer from the specified channel
@@ -560,6 +813,8 @@ public final class IOManager implements UncaughtExceptionHandler
 						t.getMessage() == null ? "." : ": ", t);
 				}
 
+				this.statistics.readFinished(numBytes, System.nanoTime() - startTime);
+
 				// invoke the processed buffer handler of the request issuing reader object
 				request.requestDone(ioex);
 			} // end while alive
@@ -573,6 +828,8 @@ public final class IOManager implements UncaughtExceptionHandler
 	private static final class WriterThread extends Thread
 	{
 		protected final RequestQueue<WriteRequest> requestQueue;
+		
+		private final IOStatistics statistics;
 
 		private volatile boolean alive;
 
@@ -580,9 +837,10 @@ public final class IOManager implements UncaughtExceptionHandler
 		// Constructors / Destructors
 		// ---------------------------------------------------------------------
 
-		protected WriterThread()
+		protected WriterThread(RequestQueue<WriteRequest> requestQueue, IOStatistics statistics)
 		{
-			this.requestQueue = new RequestQueue<WriteRequest>();
+			this.requestQueue = requestQueue;
+			this.statistics = statistics;
 			this.alive = true;
 		}
 
@@ -640,6 +898,10 @@ public final class IOManager implements UncaughtExceptionHandler
 				// remember any IO exception that occurs, so it can be reported to the writer
 				IOException ioex = null;
 				
+				final long numBytes = request instanceof SizedRequest ? ((SizedRequest) request).getNumBytes() : 0;
+				this.statistics.writeStarted();
+				final long startTime = System.nanoTime();
+				
 				try {
 					// write buffer to the specified channel
 					request.write();
@@ -653,6 +915,8 @@ public final class IOManager implements UncaughtExceptionHandler
 						t.getMessage() == null ? "." : ": ", t);
 				}
 
+				this.statistics.writeFinished(numBytes, System.nanoTime() - startTime);
+
 				// invoke the processed buffer handler of the request issuing writer object
 				request.requestDone(ioex);
 			} // end while alive
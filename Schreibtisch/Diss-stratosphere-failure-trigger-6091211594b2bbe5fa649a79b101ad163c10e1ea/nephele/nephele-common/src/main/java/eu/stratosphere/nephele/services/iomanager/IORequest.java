@@ -61,3 +61,18 @@ interface WriteRequest extends IORequest
 	 */
 	public void write() throws IOException;
 }
+
+
+/**
+ * Interface for I/O requests that know the number of bytes they transfer. The I/O threads use it to
+ * account the transferred bytes in the {@link IOStatistics} of their directory.
+ */
+interface SizedRequest
+{
+	/**
+	 * Gets the number of bytes that the request reads or writes.
+	 * 
+	 * @return The number of bytes transferred by the request.
+	 */
+	public long getNumBytes();
+}
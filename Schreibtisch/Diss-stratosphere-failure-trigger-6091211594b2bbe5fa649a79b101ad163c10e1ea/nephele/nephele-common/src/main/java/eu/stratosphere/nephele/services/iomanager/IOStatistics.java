@@ -0,0 +1,240 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+/**
+ * Counters describing the I/O activity in one temp directory of the {@link IOManager}. The read counters are
+ * updated only by the directory's reader thread and the write counters only by its writer thread, so the
+ * counters need no synchronization. They are live values, a reading thread sees them grow while the I/O
+ * manager is working.
+ * <p>
+ * The number of pending requests is the measure by which the I/O manager balances new channels across
+ * the directories.
+ */
+public final class IOStatistics
+{
+	private final String path;
+
+	private final RequestQueue<ReadRequest> readQueue;
+
+	private final RequestQueue<WriteRequest> writeQueue;
+
+	private volatile long numReadRequests;
+
+	private volatile long numBytesRead;
+
+	private volatile long readNanos;
+
+	private volatile long numWriteRequests;
+
+	private volatile long numBytesWritten;
+
+	private volatile long writeNanos;
+
+	private volatile boolean readInProgress;
+
+	private volatile boolean writeInProgress;
+
+	/**
+	 * Creates the statistics for the directory served by the given request queues.
+	 *
+	 * @param path The directory's path.
+	 * @param readQueue The request queue of the directory's reader thread.
+	 * @param writeQueue The request queue of the directory's writer thread.
+	 */
+	IOStatistics(String path, RequestQueue<ReadRequest> readQueue, RequestQueue<WriteRequest> writeQueue)
+	{
+		this.path = path;
+		this.readQueue = readQueue;
+		this.writeQueue = writeQueue;
+	}
+
+	// --------------------------------------------------------------------------------------------
+	//                              Updates by the I/O threads
+	// --------------------------------------------------------------------------------------------
+
+	void readStarted()
+	{
+		this.readInProgress = true;
+	}
+
+	void readFinished(long numBytes, long nanos)
+	{
+		this.numReadRequests++;
+		this.numBytesRead += numBytes;
+		this.readNanos += nanos;
+		this.readInProgress = false;
+	}
+
+	void writeStarted()
+	{
+		this.writeInProgress = true;
+	}
+
+	void writeFinished(long numBytes, long nanos)
+	{
+		this.numWriteRequests++;
+		this.numBytesWritten += numBytes;
+		this.writeNanos += nanos;
+		this.writeInProgress = false;
+	}
+
+	// --------------------------------------------------------------------------------------------
+	//                                      Accessors
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets the path of the directory that these statistics describe.
+	 *
+	 * @return The directory's path.
+	 */
+	public String getPath()
+	{
+		return this.path;
+	}
+
+	/**
+	 * Gets the number of requests that currently wait for the directory's reader or writer thread, including
+	 * the requests that the threads are currently processing.
+	 *
+	 * @return The number of pending requests.
+	 */
+	public int getNumPendingRequests()
+	{
+		return this.readQueue.size() + this.writeQueue.size() +
+			(this.readInProgress ? 1 : 0) + (this.writeInProgress ? 1 : 0);
+	}
+
+	/**
+	 * Gets the number of read requests that the reader thread has served.
+	 *
+	 * @return The number of served read requests.
+	 */
+	public long getNumReadRequests()
+	{
+		return this.numReadRequests;
+	}
+
+	/**
+	 * Gets the number of bytes that the reader thread has read.
+	 *
+	 * @return The number of bytes read.
+	 */
+	public long getNumBytesRead()
+	{
+		return this.numBytesRead;
+	}
+
+	/**
+	 * Gets the time that the reader thread has spent serving requests, in nanoseconds.
+	 *
+	 * @return The time spent reading.
+	 */
+	public long getReadTimeNanos()
+	{
+		return this.readNanos;
+	}
+
+	/**
+	 * Gets the average time that the reader thread needed to serve a request, in microseconds.
+	 *
+	 * @return The average read latency, or zero, if no request has been served.
+	 */
+	public double getAverageReadLatencyMicros()
+	{
+		final long num = this.numReadRequests;
+		return num == 0 ? 0.0 : this.readNanos / (num * 1000.0);
+	}
+
+	/**
+	 * Gets the throughput of the reader thread while it was busy, in bytes per second.
+	 *
+	 * @return The read throughput, or zero, if no request has been served.
+	 */
+	public double getReadThroughput()
+	{
+		final long nanos = this.readNanos;
+		return nanos == 0 ? 0.0 : this.numBytesRead * 1000000000.0 / nanos;
+	}
+
+	/**
+	 * Gets the number of write requests that the writer thread has served.
+	 *
+	 * @return The number of served write requests.
+	 */
+	public long getNumWriteRequests()
+	{
+		return this.numWriteRequests;
+	}
+
+	/**
+	 * Gets the number of bytes that the writer thread has written.
+	 *
+	 * @return The number of bytes written.
+	 */
+	public long getNumBytesWritten()
+	{
+		return this.numBytesWritten;
+	}
+
+	/**
+	 * Gets the time that the writer thread has spent serving requests, in nanoseconds.
+	 *
+	 * @return The time spent writing.
+	 */
+	public long getWriteTimeNanos()
+	{
+		return this.writeNanos;
+	}
+
+	/**
+	 * Gets the average time that the writer thread needed to serve a request, in microseconds.
+	 *
+	 * @return The average write latency, or zero, if no request has been served.
+	 */
+	public double getAverageWriteLatencyMicros()
+	{
+		final long num = this.numWriteRequests;
+		return num == 0 ? 0.0 : this.writeNanos / (num * 1000.0);
+	}
+
+	/**
+	 * Gets the throughput of the writer thread while it was busy, in bytes per second.
+	 *
+	 * @return The write throughput, or zero, if no request has been served.
+	 */
+	public double getWriteThroughput()
+	{
+		final long nanos = this.writeNanos;
+		return nanos == 0 ? 0.0 : this.numBytesWritten * 1000000000.0 / nanos;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "I/O statistics for '" + this.path + "': " +
+			this.numReadRequests + " reads (" + this.numBytesRead + " bytes, " +
+			String.format("%.1f", getAverageReadLatencyMicros()) + " us avg. latency, " +
+			String.format("%.1f", getReadThroughput() / (1024 * 1024)) + " MB/s), " +
+			this.numWriteRequests + " writes (" + this.numBytesWritten + " bytes, " +
+			String.format("%.1f", getAverageWriteLatencyMicros()) + " us avg. latency, " +
+			String.format("%.1f", getWriteThroughput() / (1024 * 1024)) + " MB/s), " +
+			getNumPendingRequests() + " pending requests";
+	}
+}
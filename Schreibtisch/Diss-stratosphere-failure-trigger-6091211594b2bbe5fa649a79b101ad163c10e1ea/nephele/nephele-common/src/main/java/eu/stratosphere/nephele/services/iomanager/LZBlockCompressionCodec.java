@@ -0,0 +1,222 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * A fast block compression codec in the spirit of LZ4. The compressor finds repeated sequences of at least four
+ * bytes through a hash table of recently seen positions and encodes the data as a series of sequences, each
+ * consisting of a run of literal bytes followed by a back reference into the already decompressed data:
+ * <pre>
+ *   token (literal length : 4 bits | match length - 4 : 4 bits)
+ *   [additional literal length bytes] literals
+ *   match offset (2 bytes, little endian) [additional match length bytes]
+ * </pre>
+ * Lengths of 15 or more continue in additional bytes, each adding up to 255. The last sequence consists of
+ * literals only. The codec trades compression ratio for speed, which makes it suitable for compressing data
+ * on the way to disk without slowing down the writer.
+ */
+public final class LZBlockCompressionCodec implements BlockCompressionCodec
+{
+	private static final int MIN_MATCH = 4;
+	
+	private static final int MAX_OFFSET = 0xffff;
+	
+	private static final int HASH_LOG = 12;
+	
+	private static final int RUN_MASK = 0xf;
+	
+	/**
+	 * After this many positions without a match, the compressor starts skipping positions, so that
+	 * incompressible data passes quickly.
+	 */
+	private static final int SKIP_TRIGGER = 6;
+	
+	private final int[] hashTable = new int[1 << HASH_LOG];
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockCompressionCodec#getMaxCompressedLength(int)
+	 */
+	@Override
+	public int getMaxCompressedLength(int length)
+	{
+		return length + length / 255 + 16;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockCompressionCodec#compress(byte[], int, int, byte[], int)
+	 */
+	@Override
+	public int compress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset)
+	{
+		final int[] table = this.hashTable;
+		Arrays.fill(table, -1);
+		
+		final int end = sourceOffset + length;
+		final int matchStartLimit = end - MIN_MATCH;
+		
+		int anchor = sourceOffset;
+		int pos = sourceOffset;
+		int out = targetOffset;
+		
+		while (pos <= matchStartLimit) {
+			final int sequence = readInt(source, pos);
+			final int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+			final int ref = table[hash];
+			table[hash] = pos;
+			
+			if (ref < 0 || pos - ref > MAX_OFFSET || readInt(source, ref) != sequence) {
+				pos += 1 + ((pos - anchor) >>> SKIP_TRIGGER);
+				continue;
+			}
+			
+			// extend the match as far as possible
+			int matchLength = MIN_MATCH;
+			while (pos + matchLength < end && source[ref + matchLength] == source[pos + matchLength]) {
+				matchLength++;
+			}
+			
+			// the token, the literals, the offset and the match length
+			final int literalLength = pos - anchor;
+			final int tokenPos = out++;
+			out = writeLength(target, out, literalLength);
+			System.arraycopy(source, anchor, target, out, literalLength);
+			out += literalLength;
+			
+			final int offset = pos - ref;
+			target[out++] = (byte) offset;
+			target[out++] = (byte) (offset >>> 8);
+			out = writeLength(target, out, matchLength - MIN_MATCH);
+			
+			target[tokenPos] = (byte) ((Math.min(literalLength, RUN_MASK) << 4) | Math.min(matchLength - MIN_MATCH, RUN_MASK));
+			
+			pos += matchLength;
+			anchor = pos;
+		}
+		
+		// the last literals
+		final int literalLength = end - anchor;
+		target[out++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+		out = writeLength(target, out, literalLength);
+		System.arraycopy(source, anchor, target, out, literalLength);
+		out += literalLength;
+		
+		return out - targetOffset;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockCompressionCodec#decompress(byte[], int, int, byte[], int, int)
+	 */
+	@Override
+	public void decompress(byte[] source, int sourceOffset, int length, byte[] target, int targetOffset,
+			int uncompressedLength)
+	throws IOException
+	{
+		final int end = sourceOffset + length;
+		final int targetEnd = targetOffset + uncompressedLength;
+		
+		int in = sourceOffset;
+		int out = targetOffset;
+		
+		try {
+			while (in < end) {
+				final int token = source[in++] & 0xff;
+				
+				// the literals
+				int literalLength = token >>> 4;
+				if (literalLength == RUN_MASK) {
+					int b;
+					do {
+						b = source[in++] & 0xff;
+						literalLength += b;
+					} while (b == 0xff);
+				}
+				if (literalLength > end - in || literalLength > targetEnd - out) {
+					throw new IOException("Compressed block is corrupt: Literals exceed the block.");
+				}
+				System.arraycopy(source, in, target, out, literalLength);
+				in += literalLength;
+				out += literalLength;
+				
+				if (in == end) {
+					// the last sequence has no match
+					break;
+				}
+				
+				// the match
+				final int offset = (source[in++] & 0xff) | ((source[in++] & 0xff) << 8);
+				int matchLength = token & RUN_MASK;
+				if (matchLength == RUN_MASK) {
+					int b;
+					do {
+						b = source[in++] & 0xff;
+						matchLength += b;
+					} while (b == 0xff);
+				}
+				matchLength += MIN_MATCH;
+				
+				int ref = out - offset;
+				if (offset == 0 || ref < targetOffset || matchLength > targetEnd - out) {
+					throw new IOException("Compressed block is corrupt: Invalid back reference.");
+				}
+				if (offset >= matchLength) {
+					System.arraycopy(target, ref, target, out, matchLength);
+					out += matchLength;
+				} else {
+					// overlapping match, repeats the last bytes
+					final int matchEnd = out + matchLength;
+					while (out < matchEnd) {
+						target[out++] = target[ref++];
+					}
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException aioobex) {
+			throw new IOException("Compressed block is corrupt: Sequence exceeds the block.");
+		}
+		
+		if (out != targetEnd) {
+			throw new IOException("Compressed block is corrupt: Expected " + uncompressedLength + 
+				" bytes, but found " + (out - targetOffset) + ".");
+		}
+	}
+	
+	// --------------------------------------------------------------------------------------------
+	
+	private static final int readInt(byte[] b, int pos)
+	{
+		return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | (b[pos + 3] << 24);
+	}
+	
+	/**
+	 * Writes the part of a length that does not fit into the token's four bits.
+	 */
+	private static final int writeLength(byte[] target, int out, int length)
+	{
+		if (length >= RUN_MASK) {
+			int remaining = length - RUN_MASK;
+			while (remaining >= 0xff) {
+				target[out++] = (byte) 0xff;
+				remaining -= 0xff;
+			}
+			target[out++] = (byte) remaining;
+		}
+		return out;
+	}
+}
@@ -0,0 +1,163 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+import java.io.IOException;
+import java.util.Timer;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
+
+
+/**
+ * A block channel reader for a {@link Channel.StripedID striped channel}. The reader reads the first stripe itself
+ * and hands the read requests for the other stripes to one reader per stripe, each of which issues its requests to
+ * the reader thread of the stripe's directory. Since the stripes are served by different threads, the blocks may
+ * complete out of order. Every stripe reader therefore has its own return queue, and the blocks are taken from the
+ * queues in the order in which they were requested.
+ * <p>
+ * When the reader is closed, the segments from all stripes are collected in this reader's return queue.
+ */
+final class StripedBlockChannelReader extends BlockChannelReader
+{
+	/**
+	 * The readers for the stripes after the first one.
+	 */
+	private final BlockChannelReader[] stripeReaders;
+
+	private final int blocksPerStripe;
+
+	private int numBlocksRequested;
+
+	private int numBlocksReturned;
+
+	/**
+	 * Creates a new reader for the given striped channel.
+	 *
+	 * @param channelID The ID of the striped channel to read.
+	 * @param requestQueue The request queue of the reader thread for the first stripe.
+	 * @param returnSegments The return queue, to which the full Memory Segments are added.
+	 * @param numRequestsToBundle The number of requests to bundle into one I/O request.
+	 * @param bundleTimer The timer that issues partially filled bundles after the maximum delay, or <code>null</code>.
+	 * @param stripeReaders The readers for the other stripes, in stripe order. Each must have its own return queue.
+	 * @throws IOException Thrown, if the file of the first stripe could not be opened.
+	 */
+	StripedBlockChannelReader(Channel.StripedID channelID, RequestQueue<ReadRequest> requestQueue,
+			LinkedBlockingQueue<MemorySegment> returnSegments, int numRequestsToBundle, Timer bundleTimer,
+			BlockChannelReader[] stripeReaders)
+	throws IOException
+	{
+		super(channelID, requestQueue, returnSegments, numRequestsToBundle, bundleTimer);
+
+		if (stripeReaders.length != channelID.getNumStripes() - 1) {
+			throw new IllegalArgumentException("A reader is needed for every stripe after the first one.");
+		}
+		this.stripeReaders = stripeReaders;
+		this.blocksPerStripe = channelID.getBlocksPerStripe();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelReader#readBlock(eu.stratosphere.nephele.services.memorymanager.MemorySegment)
+	 */
+	@Override
+	public void readBlock(MemorySegment segment) throws IOException
+	{
+		final int stripe = getStripe(this.numBlocksRequested);
+		if (stripe == 0) {
+			super.readBlock(segment);
+		} else {
+			this.stripeReaders[stripe - 1].readBlock(segment);
+		}
+		this.numBlocksRequested++;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelReader#getNextReturnedSegment()
+	 */
+	@Override
+	public MemorySegment getNextReturnedSegment() throws IOException
+	{
+		// once closed, the segments of all stripes have been collected in this reader's queue
+		if (this.closed) {
+			return super.getNextReturnedSegment();
+		}
+		
+		final int stripe = getStripe(this.numBlocksReturned);
+		final BlockChannelReader source = stripe == 0 ? this : this.stripeReaders[stripe - 1];
+		
+		// while we wait for the block, the other stripes should not hold back their read-ahead requests
+		if (source.getReturnQueue().isEmpty()) {
+			super.flushPendingBundle();
+			for (int i = 0; i < this.stripeReaders.length; i++) {
+				this.stripeReaders[i].flushPendingBundle();
+			}
+		}
+		
+		final MemorySegment next = stripe == 0 ? super.getNextReturnedSegment() : source.getNextReturnedSegment();
+		this.numBlocksReturned++;
+		return next;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelReader#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		IOException firstException = null;
+		for (int i = 0; i < this.stripeReaders.length; i++) {
+			try {
+				this.stripeReaders[i].close();
+			}
+			catch (IOException ioex) {
+				if (firstException == null) {
+					firstException = ioex;
+				}
+			}
+		}
+
+		try {
+			super.close();
+		}
+		finally {
+			// hand out all segments through this reader's queue, as callers expect them there
+			for (int i = 0; i < this.stripeReaders.length; i++) {
+				this.stripeReaders[i].getReturnQueue().drainTo(this.returnBuffers);
+			}
+		}
+
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.ChannelAccess#deleteChannel()
+	 */
+	@Override
+	public void deleteChannel()
+	{
+		super.deleteChannel();
+		for (int i = 0; i < this.stripeReaders.length; i++) {
+			this.stripeReaders[i].deleteChannel();
+		}
+	}
+
+	private final int getStripe(int blockNum)
+	{
+		return (blockNum / this.blocksPerStripe) % (this.stripeReaders.length + 1);
+	}
+}
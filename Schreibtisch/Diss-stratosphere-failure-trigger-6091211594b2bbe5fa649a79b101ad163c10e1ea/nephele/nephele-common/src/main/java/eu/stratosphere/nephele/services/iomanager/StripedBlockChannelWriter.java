@@ -0,0 +1,134 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+import java.io.IOException;
+import java.util.Timer;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
+
+
+/**
+ * A block channel writer that distributes the blocks of a {@link Channel.StripedID striped channel} across the
+ * channel's stripes. The writer writes the first stripe itself and hands the blocks of the other stripes to one
+ * writer per stripe, each of which issues its requests to the writer thread of the stripe's directory. All
+ * writers share the same return queue, so the written segments come back regardless of the stripe they went to.
+ */
+final class StripedBlockChannelWriter extends BlockChannelWriter
+{
+	/**
+	 * The writers for the stripes after the first one.
+	 */
+	private final BlockChannelWriter[] stripeWriters;
+
+	private final int blocksPerStripe;
+
+	private int numBlocksWritten;
+
+	/**
+	 * Creates a new writer for the given striped channel.
+	 *
+	 * @param channelID The ID of the striped channel to write to.
+	 * @param requestQueue The request queue of the writer thread for the first stripe.
+	 * @param returnSegments The return queue, to which the processed Memory Segments are added.
+	 * @param numRequestsToBundle The number of requests to bundle into one I/O request.
+	 * @param bundleTimer The timer that issues partially filled bundles after the maximum delay, or <code>null</code>.
+	 * @param stripeWriters The writers for the other stripes, in stripe order. They must use the same return queue.
+	 * @throws IOException Thrown, if the file of the first stripe could not be opened.
+	 */
+	StripedBlockChannelWriter(Channel.StripedID channelID, RequestQueue<WriteRequest> requestQueue,
+			LinkedBlockingQueue<MemorySegment> returnSegments, int numRequestsToBundle, Timer bundleTimer,
+			BlockChannelWriter[] stripeWriters)
+	throws IOException
+	{
+		super(channelID, requestQueue, returnSegments, numRequestsToBundle, bundleTimer);
+
+		if (stripeWriters.length != channelID.getNumStripes() - 1) {
+			throw new IllegalArgumentException("A writer is needed for every stripe after the first one.");
+		}
+		this.stripeWriters = stripeWriters;
+		this.blocksPerStripe = channelID.getBlocksPerStripe();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelWriter#writeBlock(eu.stratosphere.nephele.services.memorymanager.MemorySegment)
+	 */
+	@Override
+	public void writeBlock(MemorySegment segment) throws IOException
+	{
+		final int stripe = (this.numBlocksWritten / this.blocksPerStripe) % (this.stripeWriters.length + 1);
+		if (stripe == 0) {
+			super.writeBlock(segment);
+		} else {
+			this.stripeWriters[stripe - 1].writeBlock(segment);
+		}
+		this.numBlocksWritten++;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelWriter#getNextReturnedSegment()
+	 */
+	@Override
+	public MemorySegment getNextReturnedSegment() throws IOException
+	{
+		// the segment we wait for may be held back by any of the stripes
+		if (this.returnBuffers.isEmpty()) {
+			for (int i = 0; i < this.stripeWriters.length; i++) {
+				this.stripeWriters[i].flushPendingBundle();
+			}
+		}
+		return super.getNextReturnedSegment();
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.BlockChannelWriter#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		IOException firstException = null;
+		for (int i = 0; i < this.stripeWriters.length; i++) {
+			try {
+				this.stripeWriters[i].close();
+				this.stripeWriters[i].checkErroneous();
+			}
+			catch (IOException ioex) {
+				if (firstException == null) {
+					firstException = ioex;
+				}
+			}
+		}
+
+		super.close();
+
+		if (firstException != null) {
+			throw firstException;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.nephele.services.iomanager.ChannelAccess#deleteChannel()
+	 */
+	@Override
+	public void deleteChannel()
+	{
+		super.deleteChannel();
+		for (int i = 0; i < this.stripeWriters.length; i++) {
+			this.stripeWriters[i].deleteChannel();
+		}
+	}
+}
@@ -24,21 +24,32 @@ import java.nio.ByteBuffer;
 
 /**
  * This class represents a piece of memory allocated from the memory manager. The segment is backed
- * by a byte array and features random put and get methods for the basic types that are stored in a byte-wise
- * fashion in the memory.
+ * either by a byte array or by a direct (off-heap) byte buffer and features random put and get methods
+ * for the basic types that are stored in a byte-wise fashion in the memory. Both kinds of segments
+ * store multi-byte values in big-endian order, so their contents are interchangeable.
  *
  * @author Alexander Alexandrov
  * @author Stephan Ewen
  */
 public class MemorySegment
 {
+	/**
+	 * The size of the temporary arrays used to move data between off-heap memory and streams.
+	 */
+	private static final int OFF_HEAP_TRANSFER_CHUNK_SIZE = 4096;
+	
 	/**
 	 * The array in which the data is stored.
 	 */
 	protected byte[] memory;
 	
 	/**
-	 * The offset in the memory array where this segment starts.
+	 * The direct buffer in which the data is stored, if the segment is backed by off-heap memory.
+	 */
+	protected ByteBuffer offHeapMemory;
+	
+	/**
+	 * The offset in the memory array (or off-heap buffer) where this segment starts.
 	 */
 	protected final int offset;
 	
@@ -48,7 +59,7 @@ public class MemorySegment
 	protected final int size;
 	
 	/**
-	 * Wrapper for I/O requests.
+	 * Wrapper for I/O requests on heap segments.
 	 */
 	protected ByteBuffer wrapper;
 	
@@ -69,6 +80,26 @@ public class MemorySegment
 		this.offset = offset;
 		this.size = size;
 	}
+	
+	/**
+	 * Creates a new memory segment of given size that is backed by the given direct byte buffer.
+	 * 
+	 * @param offHeapMemory The direct byte buffer holding the segment's memory.
+	 * @param offset The offset in the buffer where the segment starts.
+	 * @param size The size of the memory segment.
+	 */
+	public MemorySegment(ByteBuffer offHeapMemory, int offset, int size)
+	{
+		if (!offHeapMemory.isDirect()) {
+			throw new IllegalArgumentException("Off-heap memory segments require a direct byte buffer.");
+		}
+		if (offset < 0 || size < 0 || offset > offHeapMemory.capacity() - size) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.offHeapMemory = offHeapMemory;
+		this.offset = offset;
+		this.size = size;
+	}
 
 	// -------------------------------------------------------------------------
 	//                        MemorySegment Accessors
@@ -81,7 +112,17 @@ public class MemorySegment
 	 * @return True, if the segment has been freed, false otherwise.
 	 */
 	public boolean isFreed() {
-		return this.memory == null;
+		return this.memory == null && this.offHeapMemory == null;
+	}
+	
+	/**
+	 * Checks whether this memory segment is backed by off-heap memory. Off-heap segments have no
+	 * backing array, i.e. {@link #getBackingArray()} returns <code>null</code>.
+	 * 
+	 * @return True, if the segment is backed by a direct byte buffer, false otherwise.
+	 */
+	public final boolean isOffHeap() {
+		return this.offHeapMemory != null;
 	}
 	
 	/**
@@ -99,8 +140,12 @@ public class MemorySegment
 	 * Since different regions of the backing array are used by different segments, the logical
 	 * positions in this view do not correspond to the indexes in the backing array and need
 	 * to be translated via the {@link #translateOffset(int)} method.
+	 * <p>
+	 * Segments backed by off-heap memory have no backing array. Code that must work with both kinds of segments
+	 * should use the accessor methods, or {@link #compare(MemorySegment, int, int, int)} and
+	 * {@link #swapBytes(byte[], MemorySegment, int, int, int)}.
 	 * 
-	 * @return The backing byte array.
+	 * @return The backing byte array, or <code>null</code>, if the segment is backed by off-heap memory.
 	 */
 	public final byte[] getBackingArray() {
 		return this.memory;
@@ -124,6 +169,9 @@ public class MemorySegment
 	/**
 	 * Wraps the chunk of the underlying memory located between <tt>offset<tt> and 
 	 * <tt>length</tt> in a NIO ByteBuffer.
+	 * <p>
+	 * For segments backed by off-heap memory, every call returns a new view, so concurrent I/O requests on
+	 * different regions of the same segment do not interfere.
 	 * 
 	 * @param offset The offset in the memory segment.
 	 * @param length The number of bytes to be wrapped as a buffer.
@@ -136,7 +184,10 @@ public class MemorySegment
 			throw new IndexOutOfBoundsException();
 		}
 		
-		if (this.wrapper == null) {
+		if (this.offHeapMemory != null) {
+			return offHeapRegion(offset, length);
+		}
+		else if (this.wrapper == null) {
 			this.wrapper = ByteBuffer.wrap(this.memory, this.offset + offset, length);
 		}
 		else {
@@ -147,6 +198,130 @@ public class MemorySegment
 		return this.wrapper;
 	}
 
+	/**
+	 * Compares two regions of memory byte-wise, interpreting the bytes as unsigned values. The
+	 * regions may be in different segments and the segments may be of different kinds (heap or off-heap).
+	 * 
+	 * @param seg2 The segment holding the second region.
+	 * @param offset1 The offset of the first region in this segment.
+	 * @param offset2 The offset of the second region in the other segment.
+	 * @param len The number of bytes to compare.
+	 * @return A negative number, zero, or a positive number, if the first region is less than, equal to, or
+	 *         greater than the second region.
+	 */
+	public final int compare(MemorySegment seg2, int offset1, int offset2, int len)
+	{
+		final byte[] b1 = this.memory;
+		final byte[] b2 = seg2.memory;
+		
+		if (b1 != null && b2 != null) {
+			int val = 0;
+			for (int pos = 0, pos1 = this.offset + offset1, pos2 = seg2.offset + offset2;
+				pos < len && (val = (b1[pos1] & 0xff) - (b2[pos2] & 0xff)) == 0; pos++, pos1++, pos2++);
+			return val;
+		}
+		else {
+			int val = 0;
+			for (int pos = 0; pos < len && (val = (get(offset1 + pos) & 0xff) - (seg2.get(offset2 + pos) & 0xff)) == 0; pos++);
+			return val;
+		}
+	}
+	
+	/**
+	 * Swaps two regions of memory, which may be in different segments and the segments may be of
+	 * different kinds (heap or off-heap).
+	 * 
+	 * @param tempBuffer A temporary buffer of at least <code>len</code> bytes.
+	 * @param seg2 The segment holding the second region.
+	 * @param offset1 The offset of the first region in this segment.
+	 * @param offset2 The offset of the second region in the other segment.
+	 * @param len The number of bytes to swap.
+	 */
+	public final void swapBytes(byte[] tempBuffer, MemorySegment seg2, int offset1, int offset2, int len)
+	{
+		get(offset1, tempBuffer, 0, len);
+		if (this.memory != null) {
+			seg2.get(offset2, this.memory, this.offset + offset1, len);
+		} else {
+			// copy word-wise, as both regions may lie in this very segment
+			int pos = 0;
+			for (; pos <= len - 8; pos += 8) {
+				putLong(offset1 + pos, seg2.getLong(offset2 + pos));
+			}
+			for (; pos < len; pos++) {
+				put(offset1 + pos, seg2.get(offset2 + pos));
+			}
+		}
+		seg2.put(offset2, tempBuffer, 0, len);
+	}
+	
+	/**
+	 * Bulk get method. Copies the given number of bytes from the given position of this segment into the
+	 * given byte buffer.
+	 * 
+	 * @param index The position at which the first byte will be read.
+	 * @param target The buffer to copy the bytes to, starting at its current position.
+	 * @return This view itself.
+	 * 
+	 * @throws IndexOutOfBoundsException Thrown, if the index is negative, or too large that the number of bytes
+	 *                                   remaining in the target buffer exceeds the amount of memory between the index
+	 *                                   and the memory segment's end.
+	 */
+	public final MemorySegment get(int index, ByteBuffer target) {
+		final int length = target.remaining();
+		if (index >= 0 && index <= this.size - length) {
+			if (this.memory != null) {
+				target.put(this.memory, this.offset + index, length);
+			} else {
+				target.put(offHeapRegion(index, length));
+			}
+			return this;
+		} else {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	/**
+	 * Bulk put method. Copies all bytes remaining in the given byte buffer into this segment, starting
+	 * at the given position.
+	 * 
+	 * @param index The position in the memory segment, where the data is put.
+	 * @param source The buffer to copy the bytes from, starting at its current position.
+	 * @return This view itself.
+	 * 
+	 * @throws IndexOutOfBoundsException Thrown, if the index is negative, or too large such that the bytes remaining
+	 *                                   in the source buffer exceed the amount of memory between the index and
+	 *                                   the memory segment's end.
+	 */
+	public final MemorySegment put(int index, ByteBuffer source) {
+		final int length = source.remaining();
+		if (index >= 0 && index <= this.size - length) {
+			if (this.memory != null) {
+				source.get(this.memory, this.offset + index, length);
+			} else {
+				offHeapRegion(index, length).put(source);
+			}
+			return this;
+		} else {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	/**
+	 * Gets a view on the given region of the off-heap memory. Each call creates a new view, since the position and
+	 * limit of a shared view would be corrupted by concurrent transfers on the same segment.
+	 * 
+	 * @param index The position in the segment where the region starts.
+	 * @param length The length of the region.
+	 * @return A byte buffer whose position and limit mark the region.
+	 */
+	private final ByteBuffer offHeapRegion(int index, int length) {
+		final ByteBuffer view = this.offHeapMemory.duplicate();
+		view.limit(this.offset + index + length);
+		view.position(this.offset + index);
+		return view;
+	}
+
 
 	// --------------------------------------------------------------------
 	//                            Random Access
@@ -173,7 +348,11 @@ public class MemorySegment
 	 */
 	public final byte get(int index) {
 		if (index >= 0 && index < this.size) {
-			return this.memory[this.offset + index];
+			if (this.memory != null) {
+				return this.memory[this.offset + index];
+			} else {
+				return this.offHeapMemory.get(this.offset + index);
+			}
 		} else {
 			throw new IndexOutOfBoundsException();
 		}
@@ -191,7 +370,11 @@ public class MemorySegment
 	 */
 	public final MemorySegment put(int index, byte b) {
 		if (index >= 0 && index < this.size) {
-			this.memory[this.offset + index] = b;
+			if (this.memory != null) {
+				this.memory[this.offset + index] = b;
+			} else {
+				this.offHeapMemory.put(this.offset + index, b);
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -249,7 +432,11 @@ public class MemorySegment
 	 */
 	public final MemorySegment get(int index, byte[] dst, int offset, int length) {
 		if (index >= 0 && index < this.size && index <= this.size - length && offset <= dst.length - length) {
-			System.arraycopy(this.memory, this.offset + index, dst, offset, length);
+			if (this.memory != null) {
+				System.arraycopy(this.memory, this.offset + index, dst, offset, length);
+			} else {
+				offHeapRegion(index, length).get(dst, offset, length);
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -273,7 +460,11 @@ public class MemorySegment
 	 */
 	public final MemorySegment put(int index, byte[] src, int offset, int length) {
 		if (index >= 0 && index < this.size && index <= this.size - length && offset <= src.length - length) {
-			System.arraycopy(src, offset, this.memory, this.offset + index, length);
+			if (this.memory != null) {
+				System.arraycopy(src, offset, this.memory, this.offset + index, length);
+			} else {
+				offHeapRegion(index, length).put(src, offset, length);
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -293,7 +484,17 @@ public class MemorySegment
 	 */
 	public final MemorySegment get(DataOutput out, int offset, int length) throws IOException {
 		if (offset >= 0 && offset < this.size && length >= 0 && offset <= this.size - length) {
-			out.write(this.memory, this.offset + offset, length);
+			if (this.memory != null) {
+				out.write(this.memory, this.offset + offset, length);
+			} else {
+				final byte[] transfer = new byte[Math.min(length, OFF_HEAP_TRANSFER_CHUNK_SIZE)];
+				for (int done = 0; done < length; ) {
+					final int chunk = Math.min(length - done, transfer.length);
+					offHeapRegion(offset + done, chunk).get(transfer, 0, chunk);
+					out.write(transfer, 0, chunk);
+					done += chunk;
+				}
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -314,7 +515,17 @@ public class MemorySegment
 	 */
 	public final MemorySegment put(DataInput in, int offset, int length) throws IOException {
 		if (offset >= 0 && offset < this.size && length >= 0 && offset <= this.size - length) {
-			in.readFully(this.memory, this.offset + offset, length);
+			if (this.memory != null) {
+				in.readFully(this.memory, this.offset + offset, length);
+			} else {
+				final byte[] transfer = new byte[Math.min(length, OFF_HEAP_TRANSFER_CHUNK_SIZE)];
+				for (int done = 0; done < length; ) {
+					final int chunk = Math.min(length - done, transfer.length);
+					in.readFully(transfer, 0, chunk);
+					offHeapRegion(offset + done, chunk).put(transfer, 0, chunk);
+					done += chunk;
+				}
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -333,7 +544,11 @@ public class MemorySegment
 	 */
 	public final boolean getBoolean(int index) {
 		if (index >= 0 && index < this.size) {
-			return this.memory[this.offset + index] != 0;
+			if (this.memory != null) {
+				return this.memory[this.offset + index] != 0;
+			} else {
+				return this.offHeapMemory.get(this.offset + index) != 0;
+			}
 		} else {
 			throw new IndexOutOfBoundsException();
 		}
@@ -352,7 +567,11 @@ public class MemorySegment
 	 */
 	public final MemorySegment putBoolean(int index, boolean value) {
 		if (index >= 0 && index < this.size) {
-			this.memory[this.offset + index] = (byte) (value ? 1 : 0);
+			if (this.memory != null) {
+				this.memory[this.offset + index] = (byte) (value ? 1 : 0);
+			} else {
+				this.offHeapMemory.put(this.offset + index, (byte) (value ? 1 : 0));
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -371,8 +590,12 @@ public class MemorySegment
 	 */
 	public final char getChar(int index) {
 		if (index >= 0 && index < this.size - 1) {
-			return (char) ( ((this.memory[this.offset + index + 0] & 0xff) << 8) | 
-					         (this.memory[this.offset + index + 1] & 0xff) );
+			if (this.memory != null) {
+				return (char) ( ((this.memory[this.offset + index + 0] & 0xff) << 8) | 
+						         (this.memory[this.offset + index + 1] & 0xff) );
+			} else {
+				return this.offHeapMemory.getChar(this.offset + index);
+			}
 		} else {
 			throw new IndexOutOfBoundsException();
 		}
@@ -391,8 +614,12 @@ public class MemorySegment
 	 */
 	public final MemorySegment putChar(int index, char value) {
 		if (index >= 0 && index < this.size - 1) {
-			this.memory[this.offset + index + 0] = (byte) (value >> 8);
-			this.memory[this.offset + index + 1] = (byte) value;
+			if (this.memory != null) {
+				this.memory[this.offset + index + 0] = (byte) (value >> 8);
+				this.memory[this.offset + index + 1] = (byte) value;
+			} else {
+				this.offHeapMemory.putChar(this.offset + index, value);
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -411,9 +638,13 @@ public class MemorySegment
 	 */
 	public final short getShort(int index) {
 		if (index >= 0 && index < this.size - 1) {
-			return (short) (
-					((this.memory[this.offset + index + 0] & 0xff) << 8) |
-					((this.memory[this.offset + index + 1] & 0xff)) );
+			if (this.memory != null) {
+				return (short) (
+						((this.memory[this.offset + index + 0] & 0xff) << 8) |
+						((this.memory[this.offset + index + 1] & 0xff)) );
+			} else {
+				return this.offHeapMemory.getShort(this.offset + index);
+			}
 		} else {
 			throw new IndexOutOfBoundsException();
 		}
@@ -432,8 +663,12 @@ public class MemorySegment
 	 */
 	public final MemorySegment putShort(int index, short value) {
 		if (index >= 0 && index < this.size - 1) {
-			this.memory[this.offset + index + 0] = (byte) (value >> 8);
-			this.memory[this.offset + index + 1] = (byte) value;
+			if (this.memory != null) {
+				this.memory[this.offset + index + 0] = (byte) (value >> 8);
+				this.memory[this.offset + index + 1] = (byte) value;
+			} else {
+				this.offHeapMemory.putShort(this.offset + index, value);
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -452,10 +687,14 @@ public class MemorySegment
 	 */
 	public final int getInt(int index) {
 		if (index >= 0 && index < this.size - 3) {
-			return ((this.memory[this.offset + index + 0] & 0xff) << 24)
-				| ((this.memory[this.offset + index + 1] & 0xff) << 16)
-				| ((this.memory[this.offset + index + 2] & 0xff) << 8)
-				| ((this.memory[this.offset + index + 3] & 0xff) << 0);
+			if (this.memory != null) {
+				return ((this.memory[this.offset + index + 0] & 0xff) << 24)
+					| ((this.memory[this.offset + index + 1] & 0xff) << 16)
+					| ((this.memory[this.offset + index + 2] & 0xff) << 8)
+					| ((this.memory[this.offset + index + 3] & 0xff) << 0);
+			} else {
+				return this.offHeapMemory.getInt(this.offset + index);
+			}
 		} else {
 			throw new IndexOutOfBoundsException();
 		}
@@ -474,10 +713,14 @@ public class MemorySegment
 	 */
 	public final MemorySegment putInt(int index, int value) {
 		if (index >= 0 && index < this.size - 3) {
-			this.memory[this.offset + index + 0] = (byte) (value >> 24);
-			this.memory[this.offset + index + 1] = (byte) (value >> 16);
-			this.memory[this.offset + index + 2] = (byte) (value >> 8);
-			this.memory[this.offset + index + 3] = (byte) value;
+			if (this.memory != null) {
+				this.memory[this.offset + index + 0] = (byte) (value >> 24);
+				this.memory[this.offset + index + 1] = (byte) (value >> 16);
+				this.memory[this.offset + index + 2] = (byte) (value >> 8);
+				this.memory[this.offset + index + 3] = (byte) value;
+			} else {
+				this.offHeapMemory.putInt(this.offset + index, value);
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -496,14 +739,18 @@ public class MemorySegment
 	 */
 	public final long getLong(int index) {
 		if (index >= 0 && index < this.size - 7) {
-			return (((long) this.memory[this.offset + index + 0] & 0xff) << 56)
-				| (((long) this.memory[this.offset + index + 1] & 0xff) << 48)
-				| (((long) this.memory[this.offset + index + 2] & 0xff) << 40)
-				| (((long) this.memory[this.offset + index + 3] & 0xff) << 32)
-				| (((long) this.memory[this.offset + index + 4] & 0xff) << 24)
-				| (((long) this.memory[this.offset + index + 5] & 0xff) << 16)
-				| (((long) this.memory[this.offset + index + 6] & 0xff) << 8)
-				| (((long) this.memory[this.offset + index + 7] & 0xff) << 0);
+			if (this.memory != null) {
+				return (((long) this.memory[this.offset + index + 0] & 0xff) << 56)
+					| (((long) this.memory[this.offset + index + 1] & 0xff) << 48)
+					| (((long) this.memory[this.offset + index + 2] & 0xff) << 40)
+					| (((long) this.memory[this.offset + index + 3] & 0xff) << 32)
+					| (((long) this.memory[this.offset + index + 4] & 0xff) << 24)
+					| (((long) this.memory[this.offset + index + 5] & 0xff) << 16)
+					| (((long) this.memory[this.offset + index + 6] & 0xff) << 8)
+					| (((long) this.memory[this.offset + index + 7] & 0xff) << 0);
+			} else {
+				return this.offHeapMemory.getLong(this.offset + index);
+			}
 		} else {
 			throw new IndexOutOfBoundsException();
 		}
@@ -522,14 +769,18 @@ public class MemorySegment
 	 */
 	public final MemorySegment putLong(int index, long value) {
 		if (index >= 0 && index < this.size - 7) {
-			this.memory[this.offset + index + 0] = (byte) (value >> 56);
-			this.memory[this.offset + index + 1] = (byte) (value >> 48);
-			this.memory[this.offset + index + 2] = (byte) (value >> 40);
-			this.memory[this.offset + index + 3] = (byte) (value >> 32);
-			this.memory[this.offset + index + 4] = (byte) (value >> 24);
-			this.memory[this.offset + index + 5] = (byte) (value >> 16);
-			this.memory[this.offset + index + 6] = (byte) (value >> 8);
-			this.memory[this.offset + index + 7] = (byte) value;
+			if (this.memory != null) {
+				this.memory[this.offset + index + 0] = (byte) (value >> 56);
+				this.memory[this.offset + index + 1] = (byte) (value >> 48);
+				this.memory[this.offset + index + 2] = (byte) (value >> 40);
+				this.memory[this.offset + index + 3] = (byte) (value >> 32);
+				this.memory[this.offset + index + 4] = (byte) (value >> 24);
+				this.memory[this.offset + index + 5] = (byte) (value >> 16);
+				this.memory[this.offset + index + 6] = (byte) (value >> 8);
+				this.memory[this.offset + index + 7] = (byte) value;
+			} else {
+				this.offHeapMemory.putLong(this.offset + index, value);
+			}
 			return this;
 		} else {
 			throw new IndexOutOfBoundsException();
@@ -0,0 +1,294 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.io.compression.CompressionBufferProvider;
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
+import eu.stratosphere.nephele.io.compression.CompressionLoader;
+import eu.stratosphere.nephele.io.compression.Compressor;
+import eu.stratosphere.nephele.io.compression.Decompressor;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferAvailabilityListener;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProvider;
+
+/**
+ * Compresses and decompresses the blocks of checkpoint meta data files with the compression libraries also used for
+ * the channels. The codec provides the memory buffers the libraries work on itself and recycles them internally.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class CheckpointBlockCodec implements BufferProvider, MemoryBufferPoolConnector {
+
+	/**
+	 * The size of the buffers the compression libraries work on in bytes.
+	 */
+	private static final int BLOCK_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The maximum size of a block in bytes which is compressed, leaving room for incompressible data.
+	 */
+	static final int MAXIMUM_COMPRESSIBLE_BLOCK_SIZE = BLOCK_BUFFER_SIZE / 2;
+
+	private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<ByteBuffer>();
+
+	private final Compressor compressor;
+
+	private final Decompressor decompressor;
+
+	private CheckpointBlockCodec(final CompressionLevel compressionLevel, final boolean forCompression)
+			throws IOException {
+
+		final CompressionBufferProvider compressionBufferProvider = new CompressionBufferProvider(this, false);
+
+		if (forCompression) {
+			this.compressor = loadCompressor(compressionLevel, compressionBufferProvider);
+			this.decompressor = null;
+			if (this.compressor == null) {
+				throw new IOException("Cannot load compressor for compression level " + compressionLevel);
+			}
+		} else {
+			this.compressor = null;
+			this.decompressor = loadDecompressor(compressionLevel, compressionBufferProvider);
+			if (this.decompressor == null) {
+				throw new IOException("Cannot load decompressor for compression level " + compressionLevel);
+			}
+		}
+	}
+
+	/**
+	 * Loads the compressor for the given compression level. Failures to load the library, for example because it is
+	 * not configured or its native code is missing, are reported as an {@link IOException}, so the caller can fall
+	 * back to uncompressed blocks.
+	 * 
+	 * @param compressionLevel
+	 *        the compression level to load the compressor for
+	 * @param compressionBufferProvider
+	 *        the provider of the buffers the compressor works on
+	 * @return the compressor or <code>null</code> if no compressor could be created
+	 * @throws IOException
+	 *         thrown if the compression library cannot be loaded
+	 */
+	private static Compressor loadCompressor(final CompressionLevel compressionLevel,
+			final CompressionBufferProvider compressionBufferProvider) throws IOException {
+
+		try {
+			return CompressionLoader.getCompressorByCompressionLevel(compressionLevel, compressionBufferProvider);
+		} catch (RuntimeException e) {
+			throw new IOException("Cannot load compression library for compression level " + compressionLevel, e);
+		} catch (LinkageError e) {
+			throw new IOException("Cannot load compression library for compression level " + compressionLevel, e);
+		}
+	}
+
+	/**
+	 * Loads the decompressor for the given compression level. Failures to load the library are reported as an
+	 * {@link IOException}.
+	 * 
+	 * @param compressionLevel
+	 *        the compression level to load the decompressor for
+	 * @param compressionBufferProvider
+	 *        the provider of the buffers the decompressor works on
+	 * @return the decompressor or <code>null</code> if no decompressor could be created
+	 * @throws IOException
+	 *         thrown if the compression library cannot be loaded
+	 */
+	private static Decompressor loadDecompressor(final CompressionLevel compressionLevel,
+			final CompressionBufferProvider compressionBufferProvider) throws IOException {
+
+		try {
+			return CompressionLoader.getDecompressorByCompressionLevel(compressionLevel, compressionBufferProvider);
+		} catch (RuntimeException e) {
+			throw new IOException("Cannot load compression library for compression level " + compressionLevel, e);
+		} catch (LinkageError e) {
+			throw new IOException("Cannot load compression library for compression level " + compressionLevel, e);
+		}
+	}
+
+	/**
+	 * Creates a codec to compress blocks with the given compression level.
+	 * 
+	 * @param compressionLevel
+	 *        the compression level to use
+	 * @return the codec
+	 * @throws IOException
+	 *         thrown if the compression library for the given level cannot be loaded, in which case the blocks are
+	 *         expected to be written uncompressed
+	 */
+	static CheckpointBlockCodec createCompressingCodec(final CompressionLevel compressionLevel) throws IOException {
+
+		return new CheckpointBlockCodec(compressionLevel, true);
+	}
+
+	/**
+	 * Creates a codec to decompress blocks which have been compressed with the given compression level.
+	 * 
+	 * @param compressionLevel
+	 *        the compression level the blocks have been compressed with
+	 * @return the codec
+	 * @throws IOException
+	 *         thrown if the compression library for the given level cannot be loaded
+	 */
+	static CheckpointBlockCodec createDecompressingCodec(final CompressionLevel compressionLevel) throws IOException {
+
+		return new CheckpointBlockCodec(compressionLevel, false);
+	}
+
+	/**
+	 * Compresses the remaining data of the given block.
+	 * 
+	 * @param block
+	 *        the block to compress
+	 * @return a buffer in read mode containing the compressed block, which must be recycled after use, or
+	 *         <code>null</code> if the block is too large to be compressed
+	 * @throws IOException
+	 *         thrown if an error occurs during the compression
+	 */
+	Buffer compress(final ByteBuffer block) throws IOException {
+
+		if (block.remaining() > MAXIMUM_COMPRESSIBLE_BLOCK_SIZE) {
+			return null;
+		}
+
+		// The compressor keeps the uncompressed buffer for the next call and hands out its previous one instead
+		final Buffer uncompressedBuffer = requestEmptyBuffer(BLOCK_BUFFER_SIZE);
+		uncompressedBuffer.write(block);
+
+		final Buffer compressedBuffer = this.compressor.compress(uncompressedBuffer);
+		compressedBuffer.finishWritePhase();
+
+		return compressedBuffer;
+	}
+
+	/**
+	 * Decompresses the remaining data of the given block.
+	 * 
+	 * @param block
+	 *        the compressed block
+	 * @return a buffer in read mode containing the decompressed block, which must be recycled after use
+	 * @throws IOException
+	 *         thrown if an error occurs during the decompression
+	 */
+	Buffer decompress(final ByteBuffer block) throws IOException {
+
+		if (block.remaining() > BLOCK_BUFFER_SIZE) {
+			throw new IOException("Compressed block of " + block.remaining() + " bytes exceeds the maximum size");
+		}
+
+		final Buffer compressedBuffer = requestEmptyBuffer(BLOCK_BUFFER_SIZE);
+		compressedBuffer.write(block);
+		compressedBuffer.finishWritePhase();
+
+		return this.decompressor.decompress(compressedBuffer);
+	}
+
+	/**
+	 * Releases the compression library's resources.
+	 */
+	void shutdown() {
+
+		if (this.compressor != null) {
+			this.compressor.shutdown();
+		}
+
+		if (this.decompressor != null) {
+			this.decompressor.shutdown();
+		}
+
+		this.freeBuffers.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Buffer requestEmptyBuffer(final int minimumSizeOfBuffer) throws IOException {
+
+		if (minimumSizeOfBuffer > BLOCK_BUFFER_SIZE) {
+			throw new IllegalArgumentException("Requested buffer size " + minimumSizeOfBuffer
+				+ " exceeds the maximum buffer size");
+		}
+
+		ByteBuffer byteBuffer = this.freeBuffers.poll();
+		if (byteBuffer == null) {
+			// The native libraries require direct buffers
+			byteBuffer = ByteBuffer.allocateDirect(BLOCK_BUFFER_SIZE);
+		}
+		byteBuffer.clear();
+
+		return BufferFactory.createFromMemory(BLOCK_BUFFER_SIZE, byteBuffer, this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Buffer requestEmptyBufferBlocking(final int minimumSizeOfBuffer) throws IOException {
+
+		return requestEmptyBuffer(minimumSizeOfBuffer);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getMaximumBufferSize() {
+
+		return BLOCK_BUFFER_SIZE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isShared() {
+
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void reportAsynchronousEvent() {
+
+		// Buffers are never requested asynchronously from the codec
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean registerBufferAvailabilityListener(final BufferAvailabilityListener bufferAvailabilityListener) {
+
+		// Requests are always served immediately, so there is nothing to wait for
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void recycle(final ByteBuffer byteBuffer) {
+
+		this.freeBuffers.add(byteBuffer);
+	}
+}
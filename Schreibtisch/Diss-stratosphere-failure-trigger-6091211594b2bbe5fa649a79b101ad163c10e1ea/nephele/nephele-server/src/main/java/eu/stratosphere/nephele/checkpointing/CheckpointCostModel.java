@@ -0,0 +1,202 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.stratosphere.nephele.executiongraph.CheckpointState;
+import eu.stratosphere.nephele.executiongraph.ExecutionVertex;
+import eu.stratosphere.nephele.taskmanager.TaskCheckpointStatistics;
+
+/**
+ * The cost model the job manager uses to take checkpoint decisions in {@link CheckpointMode#COST_BASED}. A
+ * checkpoint of a vertex is written if the expected recovery time it saves exceeds the time it takes to write it.
+ * <p>
+ * The recovery time a checkpoint saves is the time to recompute the vertex and all of its predecessors up to the
+ * nearest existing checkpoints, minus the time to replay the checkpoint from disk. It is only saved if a successor
+ * fails, so it is weighted with the probability that one of the successors fails while it runs. Successors behind
+ * another checkpoint are not considered, because their failures are recovered from that checkpoint.
+ * <p>
+ * The recomputation time of a task is the CPU time it reported with its last decision request or, for tasks which
+ * have not reported yet, the time it has been running according to the job manager. Read and write times are
+ * derived from the reported amounts of data and the configured disk bandwidth.
+ */
+public final class CheckpointCostModel {
+
+	private static final Log LOG = LogFactory.getLog(CheckpointCostModel.class);
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private CheckpointCostModel() {
+	}
+
+	/**
+	 * Decides whether the given vertex shall write its checkpoint. The vertex is expected to have its latest
+	 * {@link TaskCheckpointStatistics} attached.
+	 * 
+	 * @param vertex
+	 *        the vertex to decide for
+	 * @return <code>true</code> if the vertex shall write its checkpoint, <code>false</code> otherwise
+	 */
+	public static boolean decide(final ExecutionVertex vertex) {
+
+		final double diskBandwidth = CheckpointUtils.getDiskBandwidth();
+		final long meanTimeBetweenFailures = CheckpointUtils.getMeanTimeBetweenFailures();
+
+		final TaskCheckpointStatistics statistics = vertex.getCheckpointStatistics();
+		final long amountOfDataTransmitted = (statistics == null) ? 0L : statistics.getAmountOfDataTransmitted();
+
+		final double recomputationTime = getRecomputationTime(vertex, diskBandwidth);
+		final double ioTime = amountOfDataTransmitted / diskBandwidth;
+		final double failureProbability = getFailureProbability(getExposureTime(vertex), meanTimeBetweenFailures);
+
+		final boolean decision = isCheckpointBeneficial(recomputationTime, ioTime, ioTime, failureProbability);
+
+		LOG.info("Cost-based checkpoint decision for " + vertex.getNameWithIndex() + ": recomputation "
+			+ Math.round(recomputationTime) + " ms, write " + Math.round(ioTime) + " ms, failure probability "
+			+ failureProbability + ", decision " + decision);
+
+		return decision;
+	}
+
+	/**
+	 * Compares the expected recovery time a checkpoint saves with the time it takes to write the checkpoint.
+	 * 
+	 * @param recomputationTime
+	 *        the time to recompute the vertex and its predecessors without the checkpoint in milliseconds
+	 * @param writeTime
+	 *        the time to write the checkpoint in milliseconds
+	 * @param replayTime
+	 *        the time to replay the checkpoint in milliseconds
+	 * @param failureProbability
+	 *        the probability that a recovery from the checkpoint is required
+	 * @return <code>true</code> if the checkpoint is expected to pay off, <code>false</code> otherwise
+	 */
+	static boolean isCheckpointBeneficial(final double recomputationTime, final double writeTime,
+			final double replayTime, final double failureProbability) {
+
+		return failureProbability * (recomputationTime - replayTime) > writeTime;
+	}
+
+	/**
+	 * Returns the probability that at least one failure occurs within the given time, assuming exponentially
+	 * distributed times between failures.
+	 * 
+	 * @param exposureTime
+	 *        the time in which a failure would require a recovery in milliseconds
+	 * @param meanTimeBetweenFailures
+	 *        the mean time between failures in milliseconds
+	 * @return the probability of at least one failure
+	 */
+	static double getFailureProbability(final double exposureTime, final long meanTimeBetweenFailures) {
+
+		return 1.0 - Math.exp(-exposureTime / meanTimeBetweenFailures);
+	}
+
+	/**
+	 * Returns the time to recompute the given vertex and all of its predecessors which have no checkpoint. Each
+	 * predecessor is counted once, even if it is reachable on several paths. Edges from predecessors with a
+	 * checkpoint contribute the time to replay their share of the input.
+	 * 
+	 * @param vertex
+	 *        the vertex to compute the recomputation time for
+	 * @param diskBandwidth
+	 *        the disk bandwidth in bytes per millisecond
+	 * @return the recomputation time in milliseconds
+	 */
+	static double getRecomputationTime(final ExecutionVertex vertex, final double diskBandwidth) {
+
+		final Set<ExecutionVertex> visited = new HashSet<ExecutionVertex>();
+		final Queue<ExecutionVertex> queue = new ArrayDeque<ExecutionVertex>();
+		visited.add(vertex);
+		queue.add(vertex);
+
+		double recomputationTime = 0.0;
+		while (!queue.isEmpty()) {
+
+			final ExecutionVertex v = queue.poll();
+			final TaskCheckpointStatistics statistics = v.getCheckpointStatistics();
+			recomputationTime += (statistics == null) ? v.getRunningTime() : statistics.getRuntime();
+
+			final int numberOfPredecessors = v.getNumberOfPredecessors();
+			for (int i = 0; i < numberOfPredecessors; ++i) {
+
+				final ExecutionVertex predecessor = v.getPredecessor(i);
+				if (hasCheckpoint(predecessor)) {
+					if (statistics != null) {
+						recomputationTime += statistics.getAmountOfDataReceived()
+							/ (numberOfPredecessors * diskBandwidth);
+					}
+				} else if (visited.add(predecessor)) {
+					queue.add(predecessor);
+				}
+			}
+		}
+
+		return recomputationTime;
+	}
+
+	/**
+	 * Returns the accumulated running time of all successors of the given vertex whose failure would be recovered
+	 * from the vertex's checkpoint.
+	 * 
+	 * @param vertex
+	 *        the vertex to compute the exposure time for
+	 * @return the exposure time in milliseconds
+	 */
+	static double getExposureTime(final ExecutionVertex vertex) {
+
+		final Set<ExecutionVertex> visited = new HashSet<ExecutionVertex>();
+		final Queue<ExecutionVertex> queue = new ArrayDeque<ExecutionVertex>();
+		queue.add(vertex);
+
+		double exposureTime = 0.0;
+		while (!queue.isEmpty()) {
+
+			final ExecutionVertex v = queue.poll();
+			for (int i = 0; i < v.getNumberOfSuccessors(); ++i) {
+
+				final ExecutionVertex successor = v.getSuccessor(i);
+				if (!visited.add(successor)) {
+					continue;
+				}
+
+				exposureTime += successor.getRunningTime();
+
+				// Failures behind another checkpoint are recovered from that checkpoint
+				if (!hasCheckpoint(successor)) {
+					queue.add(successor);
+				}
+			}
+		}
+
+		return exposureTime;
+	}
+
+	private static boolean hasCheckpoint(final ExecutionVertex vertex) {
+
+		final CheckpointState checkpointState = vertex.getCheckpointState();
+
+		return (checkpointState == CheckpointState.PARTIAL || checkpointState == CheckpointState.COMPLETE);
+	}
+}
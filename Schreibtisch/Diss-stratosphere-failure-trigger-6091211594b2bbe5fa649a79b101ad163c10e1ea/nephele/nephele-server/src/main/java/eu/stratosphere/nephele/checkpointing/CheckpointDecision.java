@@ -29,6 +29,7 @@ import eu.stratosphere.nephele.io.channels.AbstractInputChannel;
 import eu.stratosphere.nephele.io.channels.ChannelType;
 import eu.stratosphere.nephele.taskmanager.runtime.RuntimeTask;
 import eu.stratosphere.nephele.types.Record;
+import eu.stratosphere.nephele.util.StringUtils;
 
 public final class CheckpointDecision {
 
@@ -45,6 +46,8 @@ public final class CheckpointDecision {
 			return isNetworkTask(task);
 		case DYNAMIC:
 			return getDynamicDecision(task);
+		case COST_BASED:
+			return getCostBasedDecision(task);
 		}
 
 		return false;
@@ -87,6 +90,50 @@ public final class CheckpointDecision {
 		return false;
 	}
 
+	/**
+	 * Reports the measurements of the given task to the job manager, which decides on the checkpoint with the
+	 * {@link CheckpointCostModel}. If the job manager cannot be reached, the dynamic decision is taken instead.
+	 * 
+	 * @param task
+	 *        the task to decide for
+	 * @return <code>true</code> if the task shall write its checkpoint, <code>false</code> otherwise
+	 */
+	private static boolean getCostBasedDecision(final RuntimeTask task) {
+
+		final RuntimeEnvironment environment = task.getRuntimeEnvironment();
+
+		// The CPU time of the task thread is the work a recomputation would have to repeat
+		long runtime = 0L;
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean.isThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled()) {
+			final long cpuTime = threadBean.getThreadCpuTime(environment.getExecutingThread().getId());
+			if (cpuTime > 0L) {
+				runtime = cpuTime / NANO_TO_MILLISECONDS;
+			}
+		}
+
+		long inputDataSize = 0L;
+		for (int i = 0; i < environment.getNumberOfInputGates(); ++i) {
+			final RuntimeInputGate<? extends Record> inputGate = environment.getInputGate(i);
+			for (int j = 0; j < inputGate.getNumberOfInputChannels(); ++j) {
+				inputDataSize += inputGate.getInputChannel(j).getAmountOfDataTransmitted();
+			}
+		}
+
+		final long outputDataSize = (long) getOutputAmount(environment);
+
+		try {
+			return task.requestCostBasedCheckpointDecision(runtime, inputDataSize, outputDataSize);
+		} catch (IOException ioe) {
+			LOG.warn("Cannot obtain cost-based checkpoint decision for " + environment.getTaskNameWithIndex()
+				+ ", falling back to dynamic decision: " + StringUtils.stringifyException(ioe));
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+
+		return getDynamicDecision(task);
+	}
+
 	private static double getOutputAmount(RuntimeEnvironment environment) {
 		//get amount of data OUTput
 		double outputDataSize = 0;
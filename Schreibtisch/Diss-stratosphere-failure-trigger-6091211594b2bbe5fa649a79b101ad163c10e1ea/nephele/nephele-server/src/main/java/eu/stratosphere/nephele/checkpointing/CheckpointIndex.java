@@ -0,0 +1,303 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
+
+/**
+ * The index of a checkpoint meta data file. A meta data file consists of a sequence of blocks, each of which contains
+ * the serialized meta data of consecutive transfer envelopes of one channel, optionally compressed. The index is
+ * appended to the blocks when the file is finished and maps the sequence number of the first envelope of each block
+ * to the block's position in the file. A fixed-size footer at the end of the file locates the index, so a replay can
+ * seek straight to the first block it still needs.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class CheckpointIndex {
+
+	/**
+	 * Magic number marking the end of an indexed meta data file.
+	 */
+	private static final int MAGIC_NUMBER = 0x4e43504b;
+
+	/**
+	 * The size of an index entry in bytes: first sequence number, offset, length and compression flag.
+	 */
+	private static final int ENTRY_SIZE = 4 + 8 + 4 + 1;
+
+	/**
+	 * The size of the footer in bytes: last sequence number, number of blocks, compression level, index offset and
+	 * magic number.
+	 */
+	static final int FOOTER_SIZE = 4 + 4 + 1 + 8 + 4;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The compression level used for the compressed blocks of the file.
+	 */
+	private final CompressionLevel compressionLevel;
+
+	private int numberOfBlocks = 0;
+
+	private int[] firstSequenceNumbers;
+
+	private long[] offsets;
+
+	private int[] lengths;
+
+	private boolean[] compressed;
+
+	private int lastSequenceNumber = -1;
+
+	CheckpointIndex(final CompressionLevel compressionLevel) {
+		this(compressionLevel, INITIAL_CAPACITY);
+	}
+
+	private CheckpointIndex(final CompressionLevel compressionLevel, final int capacity) {
+
+		this.compressionLevel = compressionLevel;
+		this.firstSequenceNumbers = new int[capacity];
+		this.offsets = new long[capacity];
+		this.lengths = new int[capacity];
+		this.compressed = new boolean[capacity];
+	}
+
+	/**
+	 * Adds a block to the index. Blocks must be added in the order of their sequence numbers.
+	 * 
+	 * @param firstSequenceNumber
+	 *        the sequence number of the first envelope in the block
+	 * @param lastSequenceNumber
+	 *        the sequence number of the last envelope in the block
+	 * @param offset
+	 *        the offset of the block in the meta data file
+	 * @param length
+	 *        the number of bytes the block occupies in the meta data file
+	 * @param isCompressed
+	 *        <code>true</code> if the block is compressed, <code>false</code> otherwise
+	 */
+	void addBlock(final int firstSequenceNumber, final int lastSequenceNumber, final long offset, final int length,
+			final boolean isCompressed) {
+
+		if (this.numberOfBlocks == this.offsets.length) {
+			final int newCapacity = this.offsets.length * 2;
+			final int[] newFirstSequenceNumbers = new int[newCapacity];
+			final long[] newOffsets = new long[newCapacity];
+			final int[] newLengths = new int[newCapacity];
+			final boolean[] newCompressed = new boolean[newCapacity];
+			System.arraycopy(this.firstSequenceNumbers, 0, newFirstSequenceNumbers, 0, this.numberOfBlocks);
+			System.arraycopy(this.offsets, 0, newOffsets, 0, this.numberOfBlocks);
+			System.arraycopy(this.lengths, 0, newLengths, 0, this.numberOfBlocks);
+			System.arraycopy(this.compressed, 0, newCompressed, 0, this.numberOfBlocks);
+			this.firstSequenceNumbers = newFirstSequenceNumbers;
+			this.offsets = newOffsets;
+			this.lengths = newLengths;
+			this.compressed = newCompressed;
+		}
+
+		this.firstSequenceNumbers[this.numberOfBlocks] = firstSequenceNumber;
+		this.offsets[this.numberOfBlocks] = offset;
+		this.lengths[this.numberOfBlocks] = length;
+		this.compressed[this.numberOfBlocks] = isCompressed;
+		++this.numberOfBlocks;
+
+		this.lastSequenceNumber = lastSequenceNumber;
+	}
+
+	/**
+	 * Returns the index of the first block which must be replayed to send all envelopes starting with the given
+	 * sequence number.
+	 * 
+	 * @param sequenceNumber
+	 *        the sequence number of the first envelope to replay
+	 * @return the index of the first block to replay
+	 */
+	int getFirstBlockToReplay(final int sequenceNumber) {
+
+		// Find the last block which starts at or before the given sequence number
+		int low = 0;
+		int high = this.numberOfBlocks - 1;
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if (this.firstSequenceNumbers[mid] <= sequenceNumber) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return low;
+	}
+
+	int getNumberOfBlocks() {
+
+		return this.numberOfBlocks;
+	}
+
+	int getLastSequenceNumber() {
+
+		return this.lastSequenceNumber;
+	}
+
+	CompressionLevel getCompressionLevel() {
+
+		return this.compressionLevel;
+	}
+
+	long getOffset(final int block) {
+
+		return this.offsets[block];
+	}
+
+	int getLength(final int block) {
+
+		return this.lengths[block];
+	}
+
+	boolean isCompressed(final int block) {
+
+		return this.compressed[block];
+	}
+
+	/**
+	 * Writes the index followed by the footer to the given channel.
+	 * 
+	 * @param channel
+	 *        the channel to write the index to
+	 * @param indexOffset
+	 *        the offset in the meta data file at which the index is written
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the index
+	 */
+	void write(final WritableByteChannel channel, final long indexOffset) throws IOException {
+
+		final ByteBuffer buffer = ByteBuffer.allocate(this.numberOfBlocks * ENTRY_SIZE + FOOTER_SIZE);
+		for (int i = 0; i < this.numberOfBlocks; ++i) {
+			buffer.putInt(this.firstSequenceNumbers[i]);
+			buffer.putLong(this.offsets[i]);
+			buffer.putInt(this.lengths[i]);
+			buffer.put(this.compressed[i] ? (byte) 1 : (byte) 0);
+		}
+
+		buffer.putInt(this.lastSequenceNumber);
+		buffer.putInt(this.numberOfBlocks);
+		buffer.put((byte) this.compressionLevel.ordinal());
+		buffer.putLong(indexOffset);
+		buffer.putInt(MAGIC_NUMBER);
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Reads the index of the meta data file the given channel belongs to.
+	 * 
+	 * @param fileChannel
+	 *        the channel of the meta data file
+	 * @return the index of the meta data file
+	 * @throws IOException
+	 *         thrown if the file does not end with a valid index or an error occurs while reading it
+	 */
+	static CheckpointIndex read(final FileChannel fileChannel) throws IOException {
+
+		final long fileSize = fileChannel.size();
+		if (fileSize < FOOTER_SIZE) {
+			throw new IOException("Meta data file is too short to contain an index");
+		}
+
+		final ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+		readFully(fileChannel, footer, fileSize - FOOTER_SIZE);
+
+		final int lastSequenceNumber = footer.getInt();
+		final int numberOfBlocks = footer.getInt();
+		final int compressionLevel = footer.get();
+		final long indexOffset = footer.getLong();
+		if (footer.getInt() != MAGIC_NUMBER) {
+			throw new IOException("Meta data file does not end with a valid index");
+		}
+
+		if (numberOfBlocks < 0 || compressionLevel < 0 || compressionLevel >= CompressionLevel.values().length
+			|| indexOffset + (long) numberOfBlocks * ENTRY_SIZE + FOOTER_SIZE != fileSize) {
+			throw new IOException("Meta data file contains a corrupt index");
+		}
+
+		final CheckpointIndex index = new CheckpointIndex(CompressionLevel.values()[compressionLevel], Math.max(
+			numberOfBlocks, 1));
+
+		final ByteBuffer entries = ByteBuffer.allocate(numberOfBlocks * ENTRY_SIZE);
+		readFully(fileChannel, entries, indexOffset);
+		for (int i = 0; i < numberOfBlocks; ++i) {
+			index.firstSequenceNumbers[i] = entries.getInt();
+			index.offsets[i] = entries.getLong();
+			index.lengths[i] = entries.getInt();
+			index.compressed[i] = (entries.get() != 0);
+		}
+		index.numberOfBlocks = numberOfBlocks;
+		index.lastSequenceNumber = lastSequenceNumber;
+
+		return index;
+	}
+
+	/**
+	 * Reads the given block from the meta data file into the given buffer. The buffer is replaced by a larger one if
+	 * it cannot hold the block.
+	 * 
+	 * @param fileChannel
+	 *        the channel of the meta data file
+	 * @param block
+	 *        the index of the block to read
+	 * @param buffer
+	 *        the buffer to read the block into, possibly <code>null</code>
+	 * @return the buffer containing the block, prepared for reading
+	 * @throws IOException
+	 *         thrown if an error occurs while reading the block
+	 */
+	ByteBuffer readBlock(final FileChannel fileChannel, final int block, ByteBuffer buffer) throws IOException {
+
+		final int length = this.lengths[block];
+		if (buffer == null || buffer.capacity() < length) {
+			buffer = ByteBuffer.allocate(length);
+		}
+
+		buffer.clear();
+		buffer.limit(length);
+		readFully(fileChannel, buffer, this.offsets[block]);
+
+		return buffer;
+	}
+
+	private static void readFully(final FileChannel fileChannel, final ByteBuffer buffer, long position)
+			throws IOException {
+
+		while (buffer.hasRemaining()) {
+			final int bytesRead = fileChannel.read(buffer, position);
+			if (bytesRead < 0) {
+				throw new IOException("Unexpected end of meta data file");
+			}
+			position += bytesRead;
+		}
+
+		buffer.flip();
+	}
+}
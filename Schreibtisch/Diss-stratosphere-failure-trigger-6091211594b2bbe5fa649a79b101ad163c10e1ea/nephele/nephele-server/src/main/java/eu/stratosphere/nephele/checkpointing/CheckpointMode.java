@@ -40,5 +40,11 @@ public enum CheckpointMode {
 	/**
 	 * Creates checkpoints according to Nephele's internal strategies.
 	 */
-	DYNAMIC;
+	DYNAMIC,
+
+	/**
+	 * Lets the job manager decide for each task whether the recomputation its checkpoint avoids outweighs the costs
+	 * of writing the checkpoint.
+	 */
+	COST_BASED;
 }
@@ -0,0 +1,103 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.stratosphere.nephele.io.channels.ChannelID;
+
+/**
+ * Notifies replays of partial checkpoints when the write threads of the same task manager have finished another
+ * segment of a channel's checkpoint, so replays do not have to poll the file system for it.
+ * <p>
+ * This class is thread-safe.
+ */
+final class CheckpointSegmentNotifier {
+
+	/**
+	 * The callbacks waiting for the next segment of a channel's checkpoint.
+	 */
+	private static final Map<ChannelID, Runnable> WAITING_CALLBACKS = new HashMap<ChannelID, Runnable>();
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private CheckpointSegmentNotifier() {
+	}
+
+	/**
+	 * Registers a callback which is run once the next segment of the given channel's checkpoint has been finished. At
+	 * most one callback can be registered per channel. Since a segment may have been finished right before the
+	 * registration, the caller must check again afterwards and {@link #unregister(ChannelID, Runnable)} the callback
+	 * if it finds the segment.
+	 * 
+	 * @param channelID
+	 *        the ID of the channel whose checkpoint is replayed
+	 * @param callback
+	 *        the callback to run when the next segment has been finished
+	 */
+	static void register(final ChannelID channelID, final Runnable callback) {
+
+		synchronized (WAITING_CALLBACKS) {
+			if (WAITING_CALLBACKS.containsKey(channelID)) {
+				throw new IllegalStateException("Another replay is already waiting for channel " + channelID);
+			}
+			WAITING_CALLBACKS.put(channelID, callback);
+		}
+	}
+
+	/**
+	 * Removes the given callback unless it has already been run or is about to be run.
+	 * 
+	 * @param channelID
+	 *        the ID of the channel the callback has been registered for
+	 * @param callback
+	 *        the callback to remove
+	 * @return <code>true</code> if the callback has been removed and will not be run, <code>false</code> if it has
+	 *         already been claimed by a notification
+	 */
+	static boolean unregister(final ChannelID channelID, final Runnable callback) {
+
+		synchronized (WAITING_CALLBACKS) {
+			if (WAITING_CALLBACKS.get(channelID) != callback) {
+				return false;
+			}
+			WAITING_CALLBACKS.remove(channelID);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Announces that another segment of the given channel's checkpoint has been finished and runs the callback waiting
+	 * for it, if any.
+	 * 
+	 * @param channelID
+	 *        the ID of the channel whose checkpoint has been extended
+	 */
+	static void announce(final ChannelID channelID) {
+
+		final Runnable callback;
+		synchronized (WAITING_CALLBACKS) {
+			callback = WAITING_CALLBACKS.remove(channelID);
+		}
+
+		if (callback != null) {
+			callback.run();
+		}
+	}
+}
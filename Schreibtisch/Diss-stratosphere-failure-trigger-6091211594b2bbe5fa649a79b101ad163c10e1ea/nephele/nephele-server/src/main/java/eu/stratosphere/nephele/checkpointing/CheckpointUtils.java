@@ -26,6 +26,7 @@ import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
 import eu.stratosphere.nephele.fs.FileSystem;
 import eu.stratosphere.nephele.fs.Path;
 import eu.stratosphere.nephele.io.channels.FileBufferManager;
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
 import eu.stratosphere.nephele.util.StringUtils;
 
 public final class CheckpointUtils {
@@ -43,6 +44,39 @@ public final class CheckpointUtils {
 
 	public static final String COMPLETED_CHECKPOINT_SUFFIX = "_final";
 
+	/**
+	 * The key for the bandwidth in MB/s at which checkpoints are written and read, used by the cost-based mode.
+	 */
+	public static final String DISK_BANDWIDTH_KEY = "checkpoint.costbased.diskbandwidth";
+
+	public static final int DEFAULT_DISK_BANDWIDTH = 100;
+
+	/**
+	 * The key for the mean time between failures of a single task in seconds, used by the cost-based mode.
+	 */
+	public static final String MEAN_TIME_BETWEEN_FAILURES_KEY = "checkpoint.costbased.mtbf";
+
+	public static final int DEFAULT_MEAN_TIME_BETWEEN_FAILURES = 3600;
+
+	/**
+	 * The key for the compression applied to the blocks of the checkpoint meta data files, either <code>none</code>,
+	 * <code>light</code>, <code>medium</code> or <code>heavy</code>.
+	 */
+	public static final String COMPRESSION_KEY = "checkpoint.compression";
+
+	/**
+	 * The key for the maximum number of threads a replay task uses to replay its channels.
+	 */
+	public static final String REPLAY_THREADS_KEY = "checkpoint.replay.threads";
+
+	/**
+	 * The key for the bandwidth in MB/s at which all replays of a task manager may read checkpoints, <code>0</code>
+	 * for no limit.
+	 */
+	public static final String REPLAY_BANDWIDTH_KEY = "checkpoint.replay.bandwidth";
+
+	public static final int DEFAULT_REPLAY_BANDWIDTH = 0;
+
 	private static Path LOCAL_CHECKPOINT_PATH = null;
 
 	private static Path DISTRIBUTED_CHECKPOINT_PATH = null;
@@ -226,6 +260,8 @@ public final class CheckpointUtils {
 				CHECKPOINT_MODE = CheckpointMode.NETWORK;
 			} else if ("dynamic".equals(mode)) {
 				CHECKPOINT_MODE = CheckpointMode.DYNAMIC;
+			} else if ("costbased".equals(mode)) {
+				CHECKPOINT_MODE = CheckpointMode.COST_BASED;
 			} else {
 				CHECKPOINT_MODE = CheckpointMode.NEVER;
 			}
@@ -244,6 +280,76 @@ public final class CheckpointUtils {
 		return Float.parseFloat(mode);
 	}
 	
+	/**
+	 * Returns the bandwidth at which checkpoints are written and read.
+	 * 
+	 * @return the bandwidth at which checkpoints are written and read in bytes per millisecond
+	 */
+	public static double getDiskBandwidth() {
+
+		final int bandwidth = GlobalConfiguration.getInteger(DISK_BANDWIDTH_KEY, DEFAULT_DISK_BANDWIDTH);
+
+		return Math.max(bandwidth, 1) * 1024.0 * 1024.0 / 1000.0;
+	}
+
+	/**
+	 * Returns the mean time between failures of a single task.
+	 * 
+	 * @return the mean time between failures of a single task in milliseconds
+	 */
+	public static long getMeanTimeBetweenFailures() {
+
+		final int mtbf = GlobalConfiguration.getInteger(MEAN_TIME_BETWEEN_FAILURES_KEY,
+			DEFAULT_MEAN_TIME_BETWEEN_FAILURES);
+
+		return Math.max(mtbf, 1) * 1000L;
+	}
+
+	/**
+	 * Returns the compression level applied to the blocks of the checkpoint meta data files.
+	 * 
+	 * @return the compression level applied to the blocks of the checkpoint meta data files
+	 */
+	public static CompressionLevel getCompressionLevel() {
+
+		final String compression = GlobalConfiguration.getString(COMPRESSION_KEY, "none").toLowerCase();
+		if ("light".equals(compression)) {
+			return CompressionLevel.LIGHT_COMPRESSION;
+		} else if ("medium".equals(compression)) {
+			return CompressionLevel.MEDIUM_COMPRESSION;
+		} else if ("heavy".equals(compression)) {
+			return CompressionLevel.HEAVY_COMPRESSION;
+		}
+
+		return CompressionLevel.NO_COMPRESSION;
+	}
+
+	/**
+	 * Returns the maximum number of threads a replay task uses to replay its channels.
+	 * 
+	 * @return the maximum number of threads a replay task uses to replay its channels
+	 */
+	public static int getNumberOfReplayThreads() {
+
+		final int numberOfThreads = GlobalConfiguration.getInteger(REPLAY_THREADS_KEY, Runtime.getRuntime()
+			.availableProcessors());
+
+		return Math.max(numberOfThreads, 1);
+	}
+
+	/**
+	 * Returns the bandwidth at which all replays of a task manager may read checkpoints.
+	 * 
+	 * @return the bandwidth at which all replays of a task manager may read checkpoints in bytes per second or
+	 *         <code>0</code> if the bandwidth is not limited
+	 */
+	public static long getReplayBandwidth() {
+
+		final int bandwidth = GlobalConfiguration.getInteger(REPLAY_BANDWIDTH_KEY, DEFAULT_REPLAY_BANDWIDTH);
+
+		return Math.max(bandwidth, 0) * 1024L * 1024L;
+	}
+
 	public static boolean allowDistributedCheckpoints() {
 
 		return false;
@@ -20,7 +20,6 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -30,6 +29,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import eu.stratosphere.nephele.taskmanager.runtime.RuntimeTask;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.SpillingQueue;
 import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
 import eu.stratosphere.nephele.util.StringUtils;
 import eu.stratosphere.nephele.execution.Environment;
@@ -45,9 +45,12 @@ import eu.stratosphere.nephele.io.channels.FileBufferManager;
  * for each task (more precisely its {@link Environment} object). For file channels
  * an ephemeral checkpoint is always persistent, i.e. data is immediately written to disk.
  * For network channels the ephemeral checkpoint is held into main memory until a checkpoint
- * decision is made. Based on this decision the checkpoint is either made permanent or discarded.
+ * decision is made, unless it grows too large and is spilled to disk. Based on this decision
+ * the checkpoint is either made permanent or discarded.
  * <p>
- * This class is not thread-safe.
+ * The methods that forward envelopes to the checkpoint and decide on it are synchronized, since the output channels
+ * of a task may also forward envelopes from the thread of an output flusher. Apart from that, this class is not
+ * thread-safe.
  * 
  * @author warneke
  */
@@ -59,9 +62,11 @@ public class EphemeralCheckpoint implements CheckpointDecisionRequester {
 	private static final Log LOG = LogFactory.getLog(EphemeralCheckpoint.class);
 
 	/**
-	 * The enveloped which are currently queued until the state of the checkpoint is decided.
+	 * The enveloped which are currently queued until the state of the checkpoint is decided. The queue spills their
+	 * buffers to disk once they exceed its memory watermark, so an undecided checkpoint does not hold on to the
+	 * task's buffers.
 	 */
-	private final Queue<TransferEnvelope> queuedEnvelopes = new ArrayDeque<TransferEnvelope>();
+	private final Queue<TransferEnvelope> queuedEnvelopes = new SpillingQueue();
 
 	/**
 	 * The task this checkpoint is created for.
@@ -207,7 +212,7 @@ public class EphemeralCheckpoint implements CheckpointDecisionRequester {
 		return writeThread;
 	}
 
-	public void setCheckpointDecisionSynchronously(final boolean checkpointDecision) throws IOException,
+	public synchronized void setCheckpointDecisionSynchronously(final boolean checkpointDecision) throws IOException,
 			InterruptedException {
 		LOG.info("Setting the Decision to " + checkpointDecision);
 		if (this.checkpointingDecision != CheckpointingDecisionState.UNDECIDED) {
@@ -229,7 +234,7 @@ public class EphemeralCheckpoint implements CheckpointDecisionRequester {
 		}
 	}
 
-	public void forward(final TransferEnvelope transferEnvelope) throws IOException, InterruptedException {
+	public synchronized void forward(final TransferEnvelope transferEnvelope) throws IOException, InterruptedException {
 
 		if (this.checkpointingDecision == CheckpointingDecisionState.NO_CHECKPOINTING) {
 			return;
@@ -260,10 +265,15 @@ public class EphemeralCheckpoint implements CheckpointDecisionRequester {
 		return (this.checkpointingDecision == CheckpointingDecisionState.UNDECIDED);
 	}
 
-	public boolean hasDataLeft() throws IOException, InterruptedException {
+	public synchronized boolean hasDataLeft() throws IOException, InterruptedException {
 
 		if (isUndecided()) {
-			setCheckpointDecisionSynchronously(true);
+			// In cost-based mode, the job manager also decides on checkpoints of tasks which finish undecided
+			if (CheckpointUtils.getCheckpointMode() == CheckpointMode.COST_BASED) {
+				setCheckpointDecisionSynchronously(CheckpointDecision.getDecision(this.task));
+			} else {
+				setCheckpointDecisionSynchronously(true);
+			}
 		}
 		
 		Iterator<ChannelID> keyIter = this.writeThreads.keySet().iterator();
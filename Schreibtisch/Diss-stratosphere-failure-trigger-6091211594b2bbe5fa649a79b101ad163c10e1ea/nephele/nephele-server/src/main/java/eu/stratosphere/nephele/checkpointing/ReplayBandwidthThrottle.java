@@ -0,0 +1,117 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which all replays of a task manager read checkpoint data, so recovery does not starve the tasks
+ * which are still running of I/O bandwidth. Readers reserve the bandwidth for the data they are about to read and
+ * are delayed until the reservation is due. Bandwidth which has not been used for a short while can be consumed in a
+ * burst.
+ * <p>
+ * This class is thread-safe.
+ */
+final class ReplayBandwidthThrottle {
+
+	/**
+	 * The maximum time in nanoseconds for which unused bandwidth is saved up.
+	 */
+	private static final long MAXIMUM_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+	private static ReplayBandwidthThrottle INSTANCE = null;
+
+	/**
+	 * The time in nanoseconds it takes to read one byte at the permitted bandwidth.
+	 */
+	private final double nanosPerByte;
+
+	/**
+	 * The point in time up to which the bandwidth has been reserved.
+	 */
+	private long reservedUntil;
+
+	/**
+	 * Constructs a new throttle.
+	 * 
+	 * @param bandwidth
+	 *        the permitted bandwidth in bytes per second
+	 */
+	ReplayBandwidthThrottle(final long bandwidth) {
+
+		if (bandwidth <= 0L) {
+			throw new IllegalArgumentException("Argument bandwidth must be positive");
+		}
+
+		this.nanosPerByte = (double) TimeUnit.SECONDS.toNanos(1L) / (double) bandwidth;
+		this.reservedUntil = System.nanoTime();
+	}
+
+	/**
+	 * Returns the throttle shared by all replays of this task manager.
+	 * 
+	 * @return the shared throttle or <code>null</code> if the replay bandwidth is not limited
+	 */
+	static synchronized ReplayBandwidthThrottle getInstance() {
+
+		if (INSTANCE == null) {
+			final long bandwidth = CheckpointUtils.getReplayBandwidth();
+			if (bandwidth <= 0L) {
+				return null;
+			}
+			INSTANCE = new ReplayBandwidthThrottle(bandwidth);
+		}
+
+		return INSTANCE;
+	}
+
+	/**
+	 * Reserves the bandwidth to read the given number of bytes and blocks until the reservation is due.
+	 * 
+	 * @param numberOfBytes
+	 *        the number of bytes about to be read
+	 * @throws InterruptedException
+	 *         thrown if the thread is interrupted while waiting
+	 */
+	void acquire(final int numberOfBytes) throws InterruptedException {
+
+		final long delay = reserve(numberOfBytes, System.nanoTime());
+		if (delay > 0L) {
+			TimeUnit.NANOSECONDS.sleep(delay);
+		}
+	}
+
+	/**
+	 * Reserves the bandwidth to read the given number of bytes.
+	 * 
+	 * @param numberOfBytes
+	 *        the number of bytes about to be read
+	 * @param now
+	 *        the current time in nanoseconds
+	 * @return the time in nanoseconds the reader has to wait before reading the data
+	 */
+	synchronized long reserve(final int numberOfBytes, final long now) {
+
+		// Do not save up more than the maximum burst of unused bandwidth
+		if (this.reservedUntil < now - MAXIMUM_BURST_NANOS) {
+			this.reservedUntil = now - MAXIMUM_BURST_NANOS;
+		}
+
+		this.reservedUntil += (long) (numberOfBytes * this.nanosPerByte);
+
+		return this.reservedUntil - now;
+	}
+}
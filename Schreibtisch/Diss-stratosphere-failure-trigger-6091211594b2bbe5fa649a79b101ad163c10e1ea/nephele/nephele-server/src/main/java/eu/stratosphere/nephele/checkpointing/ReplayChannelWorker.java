@@ -0,0 +1,397 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import eu.stratosphere.nephele.execution.ExecutionObserver;
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.fs.FileChannelWrapper;
+import eu.stratosphere.nephele.fs.FileSystem;
+import eu.stratosphere.nephele.fs.Path;
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.CheckpointDeserializer;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.NoBufferAvailableException;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+
+/**
+ * Replays the checkpoint of a single output channel on behalf of a {@link ReplayThread}. The worker runs on the
+ * replay thread's pool and replays all segments of the checkpoint which are available. If the checkpoint is still
+ * being written, the worker releases its pool thread and is resubmitted as soon as the write thread announces the
+ * next segment through the {@link CheckpointSegmentNotifier}, or after a timeout for segments written by other
+ * processes.
+ * <p>
+ * A worker is never run by more than one thread at a time.
+ */
+final class ReplayChannelWorker implements Runnable {
+
+	/**
+	 * The time in milliseconds after which a waiting worker checks for a new segment itself.
+	 */
+	static final long SEGMENT_POLL_INTERVAL = 1000L;
+
+	/**
+	 * The buffer size in bytes to use for the meta data file channel.
+	 */
+	private static final int BUFFER_SIZE = 4096;
+
+	private final ReplayThread replayThread;
+
+	private final ExecutionVertexID vertexID;
+
+	private final ExecutionObserver executionObserver;
+
+	private final boolean isCheckpointLocal;
+
+	private final boolean isCheckpointComplete;
+
+	private final ChannelID channelID;
+
+	private final ReplayOutputChannelBroker outputBroker;
+
+	/**
+	 * The throttle limiting the bandwidth of the replay, <code>null</code> if the bandwidth is not limited.
+	 */
+	private final ReplayBandwidthThrottle throttle;
+
+	/**
+	 * Resubmits this worker once it has been waiting for the next segment.
+	 */
+	private final Runnable resumption = new Runnable() {
+
+		@Override
+		public void run() {
+
+			replayThread.submit(ReplayChannelWorker.this);
+		}
+	};
+
+	/**
+	 * Resubmits this worker if it is still waiting for the next segment when the poll interval has passed.
+	 */
+	private final Runnable pollTimeout = new Runnable() {
+
+		@Override
+		public void run() {
+
+			if (CheckpointSegmentNotifier.unregister(channelID, resumption)) {
+				resumption.run();
+			}
+		}
+	};
+
+	private CheckpointDeserializer deserializer = null;
+
+	private Path checkpointPath = null;
+
+	/**
+	 * The file system the checkpoint's meta data is stored on.
+	 */
+	private FileSystem fileSystem = null;
+
+	/**
+	 * The index of the next meta data file to replay.
+	 */
+	private int metaDataIndex = 0;
+
+	/**
+	 * The buffer the blocks of the meta data files are read into.
+	 */
+	private ByteBuffer block = null;
+
+	/**
+	 * A duplicate of the first buffer read from the checkpoint, which prevents the underlying file from being closed.
+	 */
+	private Buffer firstDeserializedFileBuffer = null;
+
+	private boolean finished = false;
+
+	ReplayChannelWorker(final ReplayThread replayThread, final ExecutionVertexID vertexID,
+			final ExecutionObserver executionObserver, final boolean isCheckpointLocal,
+			final boolean isCheckpointComplete, final ChannelID channelID, final ReplayOutputChannelBroker outputBroker) {
+
+		this.replayThread = replayThread;
+		this.vertexID = vertexID;
+		this.executionObserver = executionObserver;
+		this.isCheckpointLocal = isCheckpointLocal;
+		this.isCheckpointComplete = isCheckpointComplete;
+		this.channelID = channelID;
+		this.outputBroker = outputBroker;
+		this.throttle = ReplayBandwidthThrottle.getInstance();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+
+		if (this.finished) {
+			return;
+		}
+
+		try {
+			if (!replayAvailableSegments()) {
+				// Waiting for the next segment
+				return;
+			}
+		} catch (Exception e) {
+			finish(e);
+			return;
+		}
+
+		finish(null);
+	}
+
+	/**
+	 * Stops waiting for the next segment. Called by the replay thread when the replay is aborted.
+	 */
+	void cancel() {
+
+		CheckpointSegmentNotifier.unregister(this.channelID, this.resumption);
+	}
+
+	private void finish(final Exception exception) {
+
+		this.finished = true;
+
+		if (this.firstDeserializedFileBuffer != null) {
+			this.firstDeserializedFileBuffer.recycleBuffer();
+			this.firstDeserializedFileBuffer = null;
+		}
+
+		this.replayThread.channelFinished(this.channelID, exception);
+	}
+
+	/**
+	 * Replays all segments of the checkpoint which are currently available.
+	 * 
+	 * @return <code>true</code> if the replay of the channel is finished, <code>false</code> if the worker waits for
+	 *         the next segment and will be resubmitted
+	 * @throws Exception
+	 *         thrown if an error occurs during the replay
+	 */
+	private boolean replayAvailableSegments() throws Exception {
+
+		if (this.deserializer == null) {
+
+			this.checkpointPath = this.isCheckpointLocal ? CheckpointUtils.getLocalCheckpointPath() : CheckpointUtils
+				.getDistributedCheckpointPath();
+
+			if (this.checkpointPath == null) {
+				throw new IOException("Cannot determine checkpoint path for vertex " + this.vertexID);
+			}
+
+			this.fileSystem = this.checkpointPath.getFileSystem();
+			this.deserializer = new CheckpointDeserializer(this.vertexID, !this.isCheckpointLocal);
+		}
+
+		while (true) {
+
+			if (this.executionObserver.isCanceled()) {
+				return true;
+			}
+
+			// Try to locate the meta data file
+			final Path metaDataFile = getMetaDataFile("_" + this.metaDataIndex);
+			if (this.fileSystem.exists(metaDataFile)) {
+				if (!replaySegment(metaDataFile)) {
+					return true;
+				}
+				++this.metaDataIndex;
+				continue;
+			}
+
+			// Try to locate the final meta data file
+			final Path finalMetaDataFile = getMetaDataFile(CheckpointUtils.COMPLETED_CHECKPOINT_SUFFIX);
+			if (this.fileSystem.exists(finalMetaDataFile)) {
+				return true;
+			}
+
+			if (this.isCheckpointComplete) {
+				throw new FileNotFoundException("Cannot find meta data file " + this.metaDataIndex
+					+ " for checkpoint of vertex " + this.vertexID);
+			}
+
+			// Wait for the write thread to announce the next segment, it may have done so in the meantime
+			CheckpointSegmentNotifier.register(this.channelID, this.resumption);
+			if (!this.fileSystem.exists(metaDataFile) && !this.fileSystem.exists(finalMetaDataFile)) {
+				this.replayThread.schedule(this.pollTimeout, SEGMENT_POLL_INTERVAL);
+				return false;
+			}
+
+			if (!CheckpointSegmentNotifier.unregister(this.channelID, this.resumption)) {
+				// The announcement has already resubmitted this worker
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Replays the given meta data file, starting with the first block the consumer has not received yet.
+	 * 
+	 * @param metaDataFile
+	 *        the meta data file to replay
+	 * @return <code>true</code> if the replay shall continue, <code>false</code> if the task has been canceled
+	 * @throws Exception
+	 *         thrown if an error occurs while replaying the file
+	 */
+	private boolean replaySegment(final Path metaDataFile) throws Exception {
+
+		final FileChannel fileChannel = getFileChannel(this.fileSystem, metaDataFile);
+		CheckpointBlockCodec blockCodec = null;
+
+		try {
+			final CheckpointIndex index = CheckpointIndex.read(fileChannel);
+
+			// Skip the blocks the consumer has already received, possibly the entire file
+			final int nextEnvelopeToSend = this.outputBroker.getNextEnvelopeToSend();
+			if (index.getNumberOfBlocks() == 0 || index.getLastSequenceNumber() < nextEnvelopeToSend) {
+				return true;
+			}
+
+			for (int i = index.getFirstBlockToReplay(nextEnvelopeToSend); i < index.getNumberOfBlocks(); ++i) {
+
+				if (this.throttle != null) {
+					this.throttle.acquire(index.getLength(i));
+				}
+				this.block = index.readBlock(fileChannel, i, this.block);
+
+				if (index.isCompressed(i)) {
+					if (blockCodec == null) {
+						blockCodec = CheckpointBlockCodec.createDecompressingCodec(index.getCompressionLevel());
+					}
+					final Buffer decompressedBlock = blockCodec.decompress(this.block);
+					try {
+						if (!replayBlock(decompressedBlock)) {
+							return false;
+						}
+					} finally {
+						decompressedBlock.recycleBuffer();
+					}
+				} else {
+					if (!replayBlock(Channels.newChannel(new ByteArrayInputStream(this.block.array(), this.block
+						.arrayOffset() + this.block.position(), this.block.remaining())))) {
+						return false;
+					}
+				}
+			}
+
+		} finally {
+			if (blockCodec != null) {
+				blockCodec.shutdown();
+			}
+			fileChannel.close();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Deserializes the envelopes contained in a block of a meta data file and passes them to the output broker.
+	 * Envelopes the consumer has already received are skipped.
+	 * 
+	 * @param blockChannel
+	 *        the channel to read the block's data from
+	 * @return <code>true</code> if the replay shall continue, <code>false</code> if the task has been canceled
+	 * @throws IOException
+	 *         thrown if an error occurs while deserializing the block
+	 * @throws InterruptedException
+	 *         thrown if the thread is interrupted while waiting for a buffer
+	 * @throws NoBufferAvailableException
+	 *         thrown if the deserializer cannot obtain a buffer for an envelope
+	 */
+	private boolean replayBlock(final ReadableByteChannel blockChannel) throws IOException, InterruptedException,
+			NoBufferAvailableException {
+
+		while (true) {
+			try {
+				this.deserializer.read(blockChannel);
+			} catch (EOFException eof) {
+				return true;
+			}
+
+			final TransferEnvelope transferEnvelope = this.deserializer.getFullyDeserializedTransferEnvelope();
+			if (transferEnvelope == null) {
+				continue;
+			}
+
+			final Buffer srcBuffer = transferEnvelope.getBuffer();
+			if (srcBuffer != null) {
+
+				// Prevent underlying file from being closed
+				if (this.firstDeserializedFileBuffer == null) {
+					this.firstDeserializedFileBuffer = srcBuffer.duplicate();
+				}
+			}
+
+			// Skip the envelopes of the block the consumer has already received, like the preceding blocks
+			if (transferEnvelope.getSequenceNumber() < this.outputBroker.getNextEnvelopeToSend()) {
+				if (srcBuffer != null) {
+					srcBuffer.recycleBuffer();
+				}
+				continue;
+			}
+
+			if (srcBuffer != null) {
+				// Wait for the bandwidth before taking a buffer, so a throttled replay does not hold buffers idle
+				if (this.throttle != null) {
+					this.throttle.acquire(srcBuffer.size());
+				}
+				final Buffer destBuffer = this.outputBroker.requestEmptyBufferBlocking(srcBuffer.size());
+				srcBuffer.copyToBuffer(destBuffer);
+				transferEnvelope.setBuffer(destBuffer);
+				srcBuffer.recycleBuffer();
+			}
+
+			this.outputBroker.outputEnvelope(transferEnvelope);
+
+			if (this.executionObserver.isCanceled()) {
+				return false;
+			}
+		}
+	}
+
+	private Path getMetaDataFile(final String suffix) {
+
+		return this.checkpointPath.suffix(Path.SEPARATOR + CheckpointUtils.METADATA_PREFIX + "_" + this.vertexID
+			+ "_" + this.channelID + suffix);
+	}
+
+	private FileChannel getFileChannel(final FileSystem fs, final Path p) throws IOException {
+
+		// Bypass FileSystem API for local checkpoints
+		if (this.isCheckpointLocal) {
+
+			final URI uri = p.toUri();
+			@SuppressWarnings("resource")
+			FileInputStream fileInputStream = new FileInputStream(uri.getPath());
+			return fileInputStream.getChannel();
+		}
+
+		return new FileChannelWrapper(fs, p, BUFFER_SIZE, (short) -1);
+	}
+}
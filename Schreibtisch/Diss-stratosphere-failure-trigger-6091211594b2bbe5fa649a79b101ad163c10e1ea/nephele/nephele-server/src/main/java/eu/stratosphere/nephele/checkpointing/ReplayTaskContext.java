@@ -209,6 +209,10 @@ final class ReplayTaskContext implements TaskContext, BufferProvider, Asynchrono
 		return this.localBufferPool.registerBufferAvailabilityListener(bufferAvailabilityListener);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
 	public LocalBufferPool getLocalBufferPool() {
 		return localBufferPool;
 	}
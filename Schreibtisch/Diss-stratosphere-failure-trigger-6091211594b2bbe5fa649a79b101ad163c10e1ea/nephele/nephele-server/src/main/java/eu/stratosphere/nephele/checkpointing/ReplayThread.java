@@ -15,27 +15,21 @@
 
 package eu.stratosphere.nephele.checkpointing;
 
-import java.io.EOFException;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.URI;
-import java.nio.channels.FileChannel;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import eu.stratosphere.nephele.execution.ExecutionObserver;
 import eu.stratosphere.nephele.execution.ExecutionState;
 import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
-import eu.stratosphere.nephele.fs.FileChannelWrapper;
-import eu.stratosphere.nephele.fs.FileSystem;
-import eu.stratosphere.nephele.fs.Path;
-import eu.stratosphere.nephele.io.channels.Buffer;
 import eu.stratosphere.nephele.io.channels.ChannelID;
-import eu.stratosphere.nephele.taskmanager.transferenvelope.CheckpointDeserializer;
-import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
 import eu.stratosphere.nephele.util.StringUtils;
 
 final class ReplayThread extends Thread {
@@ -47,11 +41,6 @@ final class ReplayThread extends Thread {
 	 */
 	private static final int SLEEPINTERVAL = 100;
 
-	/**
-	 * The buffer size in bytes to use for the meta data file channel.
-	 */
-	private static final int BUFFER_SIZE = 4096;
-
 	private final ExecutionVertexID vertexID;
 
 	private final ExecutionObserver executionObserver;
@@ -61,10 +50,21 @@ final class ReplayThread extends Thread {
 	private final boolean isCheckpointComplete;
 
 	private final Map<ChannelID, ReplayOutputChannelBroker> outputBrokerMap;
-	
-	private final Map<ChannelID, ReplayChannelThread> replayChannelMap = new HashMap();
 
-	private int finishedChannels = 0;
+	/**
+	 * The pool the channels are replayed on.
+	 */
+	private ScheduledThreadPoolExecutor replayExecutor = null;
+
+	/**
+	 * Counts down the channels whose replay has not finished yet.
+	 */
+	private CountDownLatch remainingChannels = null;
+
+	/**
+	 * The first exception which occurred while replaying one of the channels.
+	 */
+	private volatile Exception replayException = null;
 
 	ReplayThread(final ExecutionVertexID vertexID, final ExecutionObserver executionObserver, final String taskName,
 			final boolean isCheckpointLocal, final boolean isCheckpointComplete,
@@ -96,20 +96,9 @@ final class ReplayThread extends Thread {
 
 		try {
 
-//			// Replay the actual checkpoint
-//			replayCheckpoint();
-			System.out.println("Staring Replay for " + this.outputBrokerMap.keySet().size() + " channels");
-			
-			Iterator<ChannelID> channelIDIter = this.outputBrokerMap.keySet().iterator();
-			while(channelIDIter.hasNext()){
-				ChannelID channelID = channelIDIter.next();
-				ReplayChannelThread channelReplay = new ReplayChannelThread(this, vertexID, executionObserver, super.getName(), isCheckpointLocal, isCheckpointComplete, channelID, this.outputBrokerMap.get(channelID));
-				this.replayChannelMap.put(channelID, channelReplay);
-				channelReplay.start();
-			}
-			while(this.finishedChannels < this.outputBrokerMap.keySet().size()){
-				Thread.sleep(200);
-			}
+			// Replay the checkpoints of all channels concurrently
+			replayChannels();
+
 			// Make sure, we enter the catch block when the task has been canceled
 			if (this.executionObserver.isCanceled()) {
 				throw new InterruptedException();
@@ -147,163 +136,139 @@ final class ReplayThread extends Thread {
 		changeExecutionState(ExecutionState.FINISHED, null);
 	}
 
-	private void waitForAllOutputBrokerToFinish() throws IOException, InterruptedException {
+	/**
+	 * Replays the checkpoints of all output channels on a bounded pool of threads and waits until all of them have
+	 * been replayed.
+	 * 
+	 * @throws Exception
+	 *         thrown if the replay of a channel fails or the thread is interrupted while waiting
+	 */
+	private void replayChannels() throws Exception {
 
-		while (!this.executionObserver.isCanceled()) {
-			boolean finished = true;
-			final Iterator<ReplayOutputChannelBroker> it = this.outputBrokerMap.values().iterator();
-			while (it.hasNext()) {
+		final int numberOfChannels = this.outputBrokerMap.size();
+		final int numberOfThreads = Math.min(CheckpointUtils.getNumberOfReplayThreads(), Math.max(numberOfChannels, 1));
 
-				if (!it.next().hasFinished()) {
-					finished = false;
-				}
+		this.remainingChannels = new CountDownLatch(numberOfChannels);
+		this.replayExecutor = new ScheduledThreadPoolExecutor(numberOfThreads, new ThreadFactory() {
+
+			private int threadCounter = 0;
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+
+				final Thread thread = new Thread(runnable, getName() + " worker " + (++this.threadCounter));
+				thread.setDaemon(true);
+				return thread;
 			}
+		});
 
-			if (finished) {
-				break;
+		final List<ReplayChannelWorker> workers = new ArrayList<ReplayChannelWorker>(numberOfChannels);
+		try {
+			final Iterator<Map.Entry<ChannelID, ReplayOutputChannelBroker>> it = this.outputBrokerMap.entrySet()
+				.iterator();
+			while (it.hasNext()) {
+				final Map.Entry<ChannelID, ReplayOutputChannelBroker> entry = it.next();
+				final ReplayChannelWorker worker = new ReplayChannelWorker(this, this.vertexID,
+					this.executionObserver, this.isCheckpointLocal, this.isCheckpointComplete, entry.getKey(),
+					entry.getValue());
+				workers.add(worker);
+				this.replayExecutor.execute(worker);
 			}
 
-			Thread.sleep(SLEEPINTERVAL);
-		}
-	}
+			this.remainingChannels.await();
 
-	private void changeExecutionState(final ExecutionState newExecutionState, final String optionalMessage) {
+		} finally {
+			for (final ReplayChannelWorker worker : workers) {
+				worker.cancel();
+			}
+			this.replayExecutor.shutdownNow();
+		}
 
-		if (this.executionObserver != null) {
-			this.executionObserver.executionStateChanged(newExecutionState, optionalMessage);
+		if (this.replayException != null) {
+			throw this.replayException;
 		}
 	}
 
-	private void replayCheckpoint() throws Exception {
-
-		final CheckpointDeserializer deserializer = new CheckpointDeserializer(this.vertexID, !this.isCheckpointLocal);
-
-		final Path checkpointPath = this.isCheckpointLocal ? CheckpointUtils.getLocalCheckpointPath() : CheckpointUtils
-			.getDistributedCheckpointPath();
+	/**
+	 * Submits the given worker to the replay pool.
+	 * 
+	 * @param worker
+	 *        the worker to submit
+	 */
+	void submit(final ReplayChannelWorker worker) {
 
-		if (checkpointPath == null) {
-			throw new IOException("Cannot determine checkpoint path for vertex " + this.vertexID);
+		try {
+			this.replayExecutor.execute(worker);
+		} catch (RejectedExecutionException e) {
+			// The replay has already been aborted
 		}
+	}
 
-		// The file system the checkpoint's meta data is stored on
-		final FileSystem fileSystem = checkpointPath.getFileSystem();
-
-		int metaDataIndex = 0;
-
-		Buffer firstDeserializedFileBuffer = null;
-		FileChannel fileChannel = null;
+	/**
+	 * Runs the given task on the replay pool after the given delay.
+	 * 
+	 * @param task
+	 *        the task to run
+	 * @param delay
+	 *        the delay in milliseconds
+	 */
+	void schedule(final Runnable task, final long delay) {
 
 		try {
+			this.replayExecutor.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// The replay has already been aborted
+		}
+	}
 
-			while (true) {
-
-				// Try to locate the meta data file
-				final Path metaDataFile = checkpointPath.suffix(Path.SEPARATOR + CheckpointUtils.METADATA_PREFIX
-					+ "_" + this.vertexID + "_" + metaDataIndex);
-
-				while (!fileSystem.exists(metaDataFile)) {
-
-					// Try to locate the final meta data file
-					final Path finalMetaDataFile = checkpointPath.suffix(Path.SEPARATOR
-						+ CheckpointUtils.METADATA_PREFIX
-						+ "_" + this.vertexID + "_final");
+	/**
+	 * Called by a worker when it has finished replaying its channel.
+	 * 
+	 * @param channelID
+	 *        the ID of the replayed channel
+	 * @param exception
+	 *        the exception which made the replay fail or <code>null</code> if the replay succeeded
+	 */
+	void channelFinished(final ChannelID channelID, final Exception exception) {
 
-					if (fileSystem.exists(finalMetaDataFile)) {
-				 		return;		
-					}
+		if (exception != null) {
+			if (this.replayException == null) {
+				this.replayException = exception;
+			}
+			// Fail the replay without waiting for the other channels
+			while (this.remainingChannels.getCount() > 0L) {
+				this.remainingChannels.countDown();
+			}
+			return;
+		}
 
-					if (this.isCheckpointComplete) {
-						throw new FileNotFoundException("Cannot find meta data file " + metaDataIndex
-							+ " for checkpoint of vertex " + this.vertexID);
-					}
+		this.remainingChannels.countDown();
+	}
 
-					// Wait for the file to be created
-					Thread.sleep(1000);
+	private void waitForAllOutputBrokerToFinish() throws IOException, InterruptedException {
 
-					if (this.executionObserver.isCanceled()) {
-						return;
-					}
-				}
+		while (!this.executionObserver.isCanceled()) {
+			boolean finished = true;
+			final Iterator<ReplayOutputChannelBroker> it = this.outputBrokerMap.values().iterator();
+			while (it.hasNext()) {
 
-				fileChannel = getFileChannel(fileSystem, metaDataFile);
-
-				while (true) {
-					try {
-						deserializer.read(fileChannel);
-
-						final TransferEnvelope transferEnvelope = deserializer.getFullyDeserializedTransferEnvelope();
-						if (transferEnvelope != null) {
-
-							final ReplayOutputChannelBroker broker = this.outputBrokerMap.get(transferEnvelope
-								.getSource());
-							if (broker == null) {
-								throw new IOException("Cannot find output broker for channel "
-									+ transferEnvelope.getSource());
-							}
-
-							final Buffer srcBuffer = transferEnvelope.getBuffer();
-							if (srcBuffer != null) {
-
-								// Prevent underlying file from being closed
-								if (firstDeserializedFileBuffer == null) {
-									firstDeserializedFileBuffer = srcBuffer.duplicate();
-								}
-
-								if (transferEnvelope.getSequenceNumber() < broker.getNextEnvelopeToSend()) {
-									srcBuffer.recycleBuffer();
-									continue;
-								}
-
-								final Buffer destBuffer = broker.requestEmptyBufferBlocking(srcBuffer.size());
-								srcBuffer.copyToBuffer(destBuffer);
-								transferEnvelope.setBuffer(destBuffer);
-								srcBuffer.recycleBuffer();
-							}
-							
-							broker.outputEnvelope(transferEnvelope);
-
-							if (this.executionObserver.isCanceled()) {
-								return;
-							}
-						}
-					} catch (EOFException eof) {
-						// Close the file channel
-						fileChannel.close();
-						fileChannel = null;
-						// Increase the index of the meta data file
-						++metaDataIndex;
-						break;
-					}
+				if (!it.next().hasFinished()) {
+					finished = false;
 				}
 			}
 
-		} finally {
-			if (firstDeserializedFileBuffer != null) {
-				firstDeserializedFileBuffer.recycleBuffer();
-				firstDeserializedFileBuffer = null;
-			}
-			if (fileChannel != null) {
-				fileChannel.close();
-				fileChannel = null;
+			if (finished) {
+				break;
 			}
+
+			Thread.sleep(SLEEPINTERVAL);
 		}
 	}
 
-	private FileChannel getFileChannel(final FileSystem fs, final Path p) throws IOException {
-
-		// Bypass FileSystem API for local checkpoints
-		if (this.isCheckpointLocal) {
+	private void changeExecutionState(final ExecutionState newExecutionState, final String optionalMessage) {
 
-			final URI uri = p.toUri();
-			@SuppressWarnings("resource")
-			FileInputStream fileInputStream = new FileInputStream(uri.getPath());
-			return fileInputStream.getChannel();
+		if (this.executionObserver != null) {
+			this.executionObserver.executionStateChanged(newExecutionState, optionalMessage);
 		}
-
-		return new FileChannelWrapper(fs, p, BUFFER_SIZE, (short) -1);
-	}
-
-	public void announceFinish(ChannelID channlID) {
-		this.finishedChannels++;
 	}
 }
@@ -16,10 +16,14 @@ package eu.stratosphere.nephele.checkpointing;
 *
 **********************************************************************************************************************/
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -37,22 +41,30 @@ import eu.stratosphere.nephele.io.channels.Buffer;
 import eu.stratosphere.nephele.io.channels.BufferFactory;
 import eu.stratosphere.nephele.io.channels.ChannelCloseEvent;
 import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.FileBuffer;
 import eu.stratosphere.nephele.io.channels.FileBufferManager;
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
 import eu.stratosphere.nephele.taskmanager.transferenvelope.CheckpointSerializer;
 import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+import eu.stratosphere.nephele.util.StringUtils;
 
 public class WriteChannelThread  extends Thread {
 
 	/**
 	 * The log object used to report problems.
 	 */
-	private static final Log LOG = LogFactory.getLog(WriteThread.class);
+	private static final Log LOG = LogFactory.getLog(WriteChannelThread.class);
 
 	/**
 	 * The buffer size in bytes to use for the meta data file channel.
 	 */
 	private static final int BUFFER_SIZE = 4096;
 
+	/**
+	 * The maximum number of queued envelopes which are written to the checkpoint at once.
+	 */
+	private static final int MAXIMUM_BATCH_SIZE = 64;
+
 	private final BlockingQueue<TransferEnvelope> queuedEnvelopes;
 
 	/**
@@ -60,6 +72,21 @@ public class WriteChannelThread  extends Thread {
 	 */
 	private final CheckpointSerializer transferEnvelopeSerializer = new CheckpointSerializer();
 
+	/**
+	 * Collects the serialized meta data of a batch of envelopes, so it can be written to the meta data file at once.
+	 */
+	private final MetaDataBuffer metaDataBuffer = new MetaDataBuffer();
+
+	/**
+	 * The channel view on the meta data buffer the serializer writes to.
+	 */
+	private final WritableByteChannel metaDataBufferChannel = Channels.newChannel(this.metaDataBuffer);
+
+	/**
+	 * The envelopes of the batch which is currently written.
+	 */
+	private final List<TransferEnvelope> batch = new ArrayList<TransferEnvelope>(MAXIMUM_BATCH_SIZE);
+
 	/**
 	 * The current suffix for the name of the file containing the meta data.
 	 */
@@ -104,6 +131,21 @@ public class WriteChannelThread  extends Thread {
 	 */
 	private FileChannel metaDataFileChannel = null;
 
+	/**
+	 * The index of the blocks written to the current meta data file.
+	 */
+	private CheckpointIndex metaDataIndex = null;
+
+	/**
+	 * The number of bytes written to the current meta data file.
+	 */
+	private long metaDataFileOffset = 0L;
+
+	/**
+	 * The codec to compress the meta data blocks, <code>null</code> if the blocks are written uncompressed.
+	 */
+	private final CheckpointBlockCodec blockCodec;
+
 	private ChannelID sourceChannel = null;
 	/**
 	 * A counter for the number of bytes in the checkpoint per meta data file.
@@ -147,6 +189,17 @@ public class WriteChannelThread  extends Thread {
 			this.checkpointPath = CheckpointUtils.getLocalCheckpointPath();
 			this.distributed = false;
 		}
+
+		CheckpointBlockCodec codec = null;
+		final CompressionLevel compressionLevel = CheckpointUtils.getCompressionLevel();
+		if (compressionLevel != CompressionLevel.NO_COMPRESSION) {
+			try {
+				codec = CheckpointBlockCodec.createCompressingCodec(compressionLevel);
+			} catch (IOException ioe) {
+				LOG.error("Writing uncompressed checkpoint meta data: " + StringUtils.stringifyException(ioe));
+			}
+		}
+		this.blockCodec = codec;
 	}
 
 	/**
@@ -157,12 +210,14 @@ public class WriteChannelThread  extends Thread {
 
 		while (!this.isCanceled) {
 
-			TransferEnvelope te = null;
-
 			try {
-				te = this.queuedEnvelopes.take();
+				// Wait for the next envelope and take whatever has been queued in the meantime along with it
+				this.batch.add(this.queuedEnvelopes.take());
+				this.queuedEnvelopes.drainTo(this.batch, MAXIMUM_BATCH_SIZE - 1);
 
-				if (!writeToCheckpointAndRecycle(te)) {
+				final boolean moreDataExpected = writeToCheckpointAndRecycle(this.batch);
+				this.batch.clear();
+				if (!moreDataExpected) {
 					break;
 				}
 
@@ -173,6 +228,10 @@ public class WriteChannelThread  extends Thread {
 			}
 		}
 
+		// Clean up an unfinished batch
+		recycleTransferEnvelopes(this.batch);
+		this.batch.clear();
+
 		if (this.firstSerializedFileBuffer != null) {
 			this.firstSerializedFileBuffer.recycleBuffer();
 			this.firstSerializedFileBuffer = null;
@@ -187,6 +246,10 @@ public class WriteChannelThread  extends Thread {
 			}
 		}
 
+		if (this.blockCodec != null) {
+			this.blockCodec.shutdown();
+		}
+
 		// No more data left to be processed in this write thread
 		this.hasDataLeft = false;
 	}
@@ -220,46 +283,100 @@ public class WriteChannelThread  extends Thread {
 		}
 	}
 
+	private static void recycleTransferEnvelopes(final List<TransferEnvelope> transferEnvelopes) {
+
+		for (int i = 0; i < transferEnvelopes.size(); ++i) {
+			recycleTransferEnvelope(transferEnvelopes.get(i));
+		}
+	}
+
 	/**
-	 * Writes the given transfer envelope to the disk and afterwards recycles its resources. In case of an I/O error,
-	 * the method will save the IOException to ioException, recycle all resources all return <code>false</code>.
+	 * Moves the memory-backed buffers of the given transfer envelopes to file buffers. The data of all buffers is
+	 * appended to one preallocated region of the checkpoint file at once, and the memory buffers are recycled. Buffers
+	 * which reside in a different file, because they have been spilled while the checkpoint was undecided, are copied
+	 * to the checkpoint file, since the meta data only records the offset of a buffer in the checkpoint file.
 	 * 
-	 * @param transferEnvelope
-	 *        the envelope to be written to disk
-	 * @return <code>true</code> if more transfer envelopes are expected to follow, <code>false</code> otherwise
+	 * @param transferEnvelopes
+	 *        the transfer envelopes whose buffers shall be moved to the checkpoint file
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the data to the checkpoint file
 	 */
-	private boolean writeToCheckpointAndRecycle(final TransferEnvelope transferEnvelope) {
+	private void transferBuffersToFile(final List<TransferEnvelope> transferEnvelopes) throws IOException {
+
+		for (int i = 0; i < transferEnvelopes.size(); ++i) {
+			final TransferEnvelope transferEnvelope = transferEnvelopes.get(i);
+			final Buffer buffer = transferEnvelope.getBuffer();
+			if (buffer instanceof FileBuffer && !this.vertexID.equals(((FileBuffer) buffer).getOwnerID())) {
+				final Buffer fileBuffer = BufferFactory.createFromFile(buffer.size(), this.vertexID,
+					this.fileBufferManager, this.distributed, false);
+				buffer.copyToBuffer(fileBuffer);
+				transferEnvelope.setBuffer(fileBuffer);
+				buffer.recycleBuffer();
+			}
+		}
 
-		Buffer buffer = transferEnvelope.getBuffer();
-		if (buffer != null) {
-			if (buffer.isBackedByMemory()) {
+		int numberOfMemoryBuffers = 0;
+		for (int i = 0; i < transferEnvelopes.size(); ++i) {
+			final Buffer buffer = transferEnvelopes.get(i).getBuffer();
+			if (buffer != null && buffer.isBackedByMemory()) {
+				++numberOfMemoryBuffers;
+			}
+		}
 
-				// Make sure we transfer the encapsulated buffer to a file and release the memory buffer again
-				Buffer fileBuffer = null;
-				try {
-					fileBuffer = BufferFactory.createFromFile(buffer.size(), this.vertexID,
-						this.fileBufferManager, this.distributed, false);
-					buffer.copyToBuffer(fileBuffer);
-				} catch (IOException ioe) {
-					this.ioException = ioe;
-					if (fileBuffer != null) {
-						fileBuffer.recycleBuffer();
-					}
-					recycleTransferEnvelope(transferEnvelope);
-					return false;
-				}
+		if (numberOfMemoryBuffers == 0) {
+			return;
+		}
 
-				transferEnvelope.setBuffer(fileBuffer);
+		final Buffer[] memoryBuffers = new Buffer[numberOfMemoryBuffers];
+		int count = 0;
+		for (int i = 0; i < transferEnvelopes.size(); ++i) {
+			final Buffer buffer = transferEnvelopes.get(i).getBuffer();
+			if (buffer != null && buffer.isBackedByMemory()) {
+				memoryBuffers[count++] = buffer;
+			}
+		}
+
+		final Buffer[] fileBuffers = BufferFactory.createFromMemoryBuffers(memoryBuffers, this.vertexID,
+			this.fileBufferManager, this.distributed, false);
+
+		count = 0;
+		for (int i = 0; i < transferEnvelopes.size(); ++i) {
+			final TransferEnvelope transferEnvelope = transferEnvelopes.get(i);
+			final Buffer buffer = transferEnvelope.getBuffer();
+			if (buffer != null && buffer.isBackedByMemory()) {
+				transferEnvelope.setBuffer(fileBuffers[count++]);
 				buffer.recycleBuffer();
 			}
 		}
+	}
+
+	/**
+	 * Writes the given batch of transfer envelopes to the disk and afterwards recycles their resources. The buffer
+	 * data of the batch is written with a single gathering write, the meta data with a single write to the meta data
+	 * file. In case of an I/O error, the method will save the IOException to ioException, recycle all resources and
+	 * return <code>false</code>.
+	 * 
+	 * @param transferEnvelopes
+	 *        the envelopes to be written to disk
+	 * @return <code>true</code> if more transfer envelopes are expected to follow, <code>false</code> otherwise
+	 */
+	private boolean writeToCheckpointAndRecycle(final List<TransferEnvelope> transferEnvelopes) {
+
+		// Make sure we transfer the encapsulated buffers to a file and release the memory buffers again
+		try {
+			transferBuffersToFile(transferEnvelopes);
+		} catch (IOException ioe) {
+			this.ioException = ioe;
+			recycleTransferEnvelopes(transferEnvelopes);
+			return false;
+		}
 
 		if (this.fileSystem == null) {
 			try {
 				this.fileSystem = this.checkpointPath.getFileSystem();
 			} catch (IOException ioe) {
 				this.ioException = ioe;
-				recycleTransferEnvelope(transferEnvelope);
+				recycleTransferEnvelopes(transferEnvelopes);
 				return false;
 			}
 		}
@@ -274,14 +391,14 @@ public class WriteChannelThread  extends Thread {
 			if (this.metaDataFileChannel != null) {
 
 				try {
-					this.metaDataFileChannel.close();
+					finishMetaDataFile();
 					this.metaDataFileChannel = null;
 
 					// Rename file
 					renameCheckpointPart();
 				} catch (IOException ioe) {
 					this.ioException = ioe;
-					recycleTransferEnvelope(transferEnvelope);
+					recycleTransferEnvelopes(transferEnvelopes);
 					return false;
 				}
 
@@ -296,49 +413,68 @@ public class WriteChannelThread  extends Thread {
 		if (this.metaDataFileChannel == null) {
 			try {
 				this.metaDataFileChannel = getMetaDataFileChannel("_part");
+				this.metaDataIndex = new CheckpointIndex(this.blockCodec == null ? CompressionLevel.NO_COMPRESSION
+					: CheckpointUtils.getCompressionLevel());
+				this.metaDataFileOffset = 0L;
 			} catch (IOException ioe) {
 				this.ioException = ioe;
-				recycleTransferEnvelope(transferEnvelope);
+				recycleTransferEnvelopes(transferEnvelopes);
 				return false;
 			}
 		}
 
-		this.transferEnvelopeSerializer.setTransferEnvelope(transferEnvelope);
-	
+		// Serialize the meta data of the entire batch into memory first
+		this.metaDataBuffer.reset();
 		try {
-			while (this.transferEnvelopeSerializer.write(this.metaDataFileChannel)) {
+			for (int i = 0; i < transferEnvelopes.size(); ++i) {
+				this.transferEnvelopeSerializer.setTransferEnvelope(transferEnvelopes.get(i));
+				while (this.transferEnvelopeSerializer.write(this.metaDataBufferChannel)) {
+				}
 			}
 		} catch (IOException ioe) {
 			this.ioException = ioe;
-			recycleTransferEnvelope(transferEnvelope);
+			recycleTransferEnvelopes(transferEnvelopes);
 			return false;
 		}
 
-		// The following code will prevent the underlying file from being closed
-		buffer = transferEnvelope.getBuffer();
-		if (buffer != null) {
-			if (this.firstSerializedFileBuffer == null) {
-				this.firstSerializedFileBuffer = buffer;
-			} else {
-				buffer.recycleBuffer();
+		for (int i = 0; i < transferEnvelopes.size(); ++i) {
+
+			final TransferEnvelope transferEnvelope = transferEnvelopes.get(i);
+
+			// The following code will prevent the underlying file from being closed
+			final Buffer buffer = transferEnvelope.getBuffer();
+			if (buffer != null) {
+				if (this.firstSerializedFileBuffer == null) {
+					this.firstSerializedFileBuffer = buffer;
+				} else {
+					buffer.recycleBuffer();
+				}
+
+				// Increase the number of serialized transfer envelopes
+				this.numberOfBytesPerMetaDataFile += buffer.size();
 			}
 
-			// Increase the number of serialized transfer envelopes
-			this.numberOfBytesPerMetaDataFile += buffer.size();
+			// Look for close event
+			final List<AbstractEvent> eventList = transferEnvelope.getEventList();
+			if (eventList != null) {
+				final Iterator<AbstractEvent> it = eventList.iterator();
+				while (it.hasNext()) {
+					if (it.next() instanceof ChannelCloseEvent) {
+						//++this.numberOfClosedChannels;
+						this.channelClosed = true;
+					}
+				}
+			}
 		}
 
 		// At this point, all resources are either recycled or saved to firstSerializedFileBuffer
 
-		// Look for close event
-		final List<AbstractEvent> eventList = transferEnvelope.getEventList();
-		if (eventList != null) {
-			final Iterator<AbstractEvent> it = eventList.iterator();
-			while (it.hasNext()) {
-				if (it.next() instanceof ChannelCloseEvent) {
-					//++this.numberOfClosedChannels;
-					this.channelClosed = true;
-				}
-			}
+		try {
+			writeMetaDataBlock(transferEnvelopes.get(0).getSequenceNumber(),
+				transferEnvelopes.get(transferEnvelopes.size() - 1).getSequenceNumber());
+		} catch (IOException ioe) {
+			this.ioException = ioe;
+			return false;
 		}
 
 		if (this.channelClosed) {
@@ -346,12 +482,13 @@ public class WriteChannelThread  extends Thread {
 			// Finally, close the underlying file
 			if (this.firstSerializedFileBuffer != null) {
 				this.firstSerializedFileBuffer.recycleBuffer();
+				this.firstSerializedFileBuffer = null;
 			}
 
 			// Finish meta data file
 			try {
 				if (this.metaDataFileChannel != null) {
-					this.metaDataFileChannel.close();
+					finishMetaDataFile();
 
 					// Rename file
 					renameCheckpointPart();
@@ -361,6 +498,7 @@ public class WriteChannelThread  extends Thread {
 				this.metaDataFileChannel = getMetaDataFileChannel(CheckpointUtils.COMPLETED_CHECKPOINT_SUFFIX);
 				this.metaDataFileChannel.write(ByteBuffer.allocate(0));
 				this.metaDataFileChannel.close();
+				CheckpointSegmentNotifier.announce(this.sourceChannel);
 			} catch (IOException ioe) {
 				this.ioException = ioe;
 				return false;
@@ -374,6 +512,63 @@ public class WriteChannelThread  extends Thread {
 		return true;
 	}
 
+	/**
+	 * Writes the serialized meta data of the current batch as a block to the meta data file and adds it to the file's
+	 * index. The block is compressed if a codec is configured and the block is small enough.
+	 * 
+	 * @param firstSequenceNumber
+	 *        the sequence number of the first envelope in the block
+	 * @param lastSequenceNumber
+	 *        the sequence number of the last envelope in the block
+	 * @throws IOException
+	 *         thrown if an error occurs while compressing or writing the block
+	 */
+	private void writeMetaDataBlock(final int firstSequenceNumber, final int lastSequenceNumber) throws IOException {
+
+		final ByteBuffer block = this.metaDataBuffer.toByteBuffer();
+
+		Buffer compressedBlock = null;
+		if (this.blockCodec != null) {
+			compressedBlock = this.blockCodec.compress(block.duplicate());
+		}
+
+		final int length;
+		if (compressedBlock == null) {
+			length = block.remaining();
+			while (block.hasRemaining()) {
+				this.metaDataFileChannel.write(block);
+			}
+		} else {
+			try {
+				length = compressedBlock.size();
+				while (compressedBlock.read(this.metaDataFileChannel) >= 0) {
+				}
+			} finally {
+				compressedBlock.recycleBuffer();
+			}
+		}
+
+		this.metaDataIndex.addBlock(firstSequenceNumber, lastSequenceNumber, this.metaDataFileOffset, length,
+			compressedBlock != null);
+		this.metaDataFileOffset += length;
+	}
+
+	/**
+	 * Appends the index to the current meta data file and closes it.
+	 * 
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the index or closing the file
+	 */
+	private void finishMetaDataFile() throws IOException {
+
+		try {
+			this.metaDataIndex.write(this.metaDataFileChannel, this.metaDataFileOffset);
+		} finally {
+			this.metaDataFileChannel.close();
+			this.metaDataIndex = null;
+		}
+	}
+
 	private boolean renameCheckpointPart() throws IOException {
 
 		final Path oldFile = this.checkpointPath.suffix(Path.SEPARATOR + CheckpointUtils.METADATA_PREFIX + "_"
@@ -387,6 +582,9 @@ public class WriteChannelThread  extends Thread {
 			return false;
 		}
 
+		// Wake up a replay waiting for this segment
+		CheckpointSegmentNotifier.announce(this.sourceChannel);
+
 		return true;
 	}
 
@@ -422,4 +620,25 @@ public class WriteChannelThread  extends Thread {
 	
 		this.numberOfConnectedChannels = numberOfConnectedChannels;
 	}
+
+	/**
+	 * A byte array output stream which exposes its content without copying it first.
+	 */
+	private static final class MetaDataBuffer extends ByteArrayOutputStream {
+
+		private MetaDataBuffer() {
+			super(BUFFER_SIZE);
+		}
+
+		/**
+		 * Returns a byte buffer view on the content of the buffer. The view becomes invalid as soon as more data is
+		 * written to the buffer.
+		 * 
+		 * @return a byte buffer view on the content of the buffer
+		 */
+		private ByteBuffer toByteBuffer() {
+
+			return ByteBuffer.wrap(this.buf, 0, this.count);
+		}
+	}
 }
@@ -42,6 +42,7 @@ import eu.stratosphere.nephele.taskmanager.AbstractTaskResult;
 import eu.stratosphere.nephele.taskmanager.AbstractTaskResult.ReturnCode;
 import eu.stratosphere.nephele.taskmanager.TaskCancelResult;
 import eu.stratosphere.nephele.taskmanager.TaskCheckpointResult;
+import eu.stratosphere.nephele.taskmanager.TaskCheckpointStatistics;
 import eu.stratosphere.nephele.taskmanager.TaskKillResult;
 import eu.stratosphere.nephele.taskmanager.TaskSubmissionResult;
 import eu.stratosphere.nephele.util.AtomicEnum;
@@ -157,6 +158,21 @@ public final class ExecutionVertex {
 
 	private ArrayList<FailureReport> failureReports;
 
+	/**
+	 * The time at which this vertex has switched to state RUNNING or <code>-1</code> if it has not been running yet.
+	 */
+	private volatile long runningSince = -1L;
+
+	/**
+	 * The time at which this vertex has stopped running or <code>-1</code> if it is still running.
+	 */
+	private volatile long runningUntil = -1L;
+
+	/**
+	 * The measurements the task has reported with its last request for a cost-based checkpoint decision.
+	 */
+	private volatile TaskCheckpointStatistics checkpointStatistics = null;
+
 	private String name = "";
 
 	/**
@@ -514,6 +530,14 @@ public final class ExecutionVertex {
 			this.hasAlreadyBeenDeployed = true;
 		}
 
+		// Keep track of the time the task has been running
+		if (newExecutionState == ExecutionState.RUNNING) {
+			this.runningSince = System.currentTimeMillis();
+			this.runningUntil = -1L;
+		} else if (previousState == ExecutionState.RUNNING) {
+			this.runningUntil = System.currentTimeMillis();
+		}
+
 		// Notify the listener objects
 		final Iterator<ExecutionStateListener> it = this.executionStateListeners.values().iterator();
 		while (it.hasNext()) {
@@ -1150,6 +1174,44 @@ public final class ExecutionVertex {
 		this.executionStateListeners.remove(Integer.valueOf(executionStateListener.getPriority()));
 	}
 
+	/**
+	 * Stores the measurements the task has reported with a request for a cost-based checkpoint decision.
+	 * 
+	 * @param checkpointStatistics
+	 *        the measurements reported by the task
+	 */
+	public void setCheckpointStatistics(final TaskCheckpointStatistics checkpointStatistics) {
+
+		this.checkpointStatistics = checkpointStatistics;
+	}
+
+	/**
+	 * Returns the measurements the task has reported with its last request for a cost-based checkpoint decision.
+	 * 
+	 * @return the measurements reported by the task or <code>null</code> if the task has not reported any
+	 */
+	public TaskCheckpointStatistics getCheckpointStatistics() {
+
+		return this.checkpointStatistics;
+	}
+
+	/**
+	 * Returns the time this vertex has been running as observed by the job manager.
+	 * 
+	 * @return the time this vertex has been running in milliseconds or <code>0</code> if it has not been running yet
+	 */
+	public long getRunningTime() {
+
+		final long since = this.runningSince;
+		if (since < 0L) {
+			return 0L;
+		}
+
+		final long until = this.runningUntil;
+
+		return (until < 0L ? System.currentTimeMillis() : until) - since;
+	}
+
 	/**
 	 * Returns the current state of this vertex's checkpoint.
 	 * 
@@ -398,9 +398,16 @@ public class RuntimeInputGate<T extends Record> extends AbstractGate<T> implemen
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
 	@Override
 	public void activateInputChannels() throws IOException, InterruptedException {
-		// TODO Auto-generated method stub
+
+		final Iterator<AbstractInputChannel<T>> it = this.inputChannels.iterator();
+		while (it.hasNext()) {
+			it.next().activate();
+		}
 	}
 
 	/**
@@ -27,7 +27,9 @@ import eu.stratosphere.nephele.io.InputGate;
 import eu.stratosphere.nephele.io.compression.CompressionEvent;
 import eu.stratosphere.nephele.io.compression.CompressionException;
 import eu.stratosphere.nephele.io.compression.CompressionLevel;
+import eu.stratosphere.nephele.io.compression.DecompressionCostEvent;
 import eu.stratosphere.nephele.io.compression.Decompressor;
+import eu.stratosphere.nephele.io.compression.library.dynamic.DynamicDecompressor;
 import eu.stratosphere.nephele.jobgraph.JobID;
 import eu.stratosphere.nephele.types.Record;
 
@@ -49,6 +51,12 @@ public abstract class AbstractInputChannel<T extends Record> extends AbstractCha
 	 */
 	private static final Log LOG = LogFactory.getLog(AbstractInputChannel.class);
 
+	/**
+	 * The number of buffers after which a channel with dynamic compression reports its decompression costs to the
+	 * sender.
+	 */
+	private static final int DECOMPRESSION_COST_REPORT_INTERVAL = 16;
+
 	/**
 	 * The deserializer used to deserialize records.
 	 */
@@ -66,6 +74,11 @@ public abstract class AbstractInputChannel<T extends Record> extends AbstractCha
 	 */
 	private Decompressor decompressor = null;
 
+	/**
+	 * The number of buffers decompressed since the decompression costs have last been reported to the sender.
+	 */
+	private int numberOfUnreportedDecompressions = 0;
+
 	/**
 	 * The exception observed in this channel while processing the buffers. Checked and thrown
 	 * per-buffer.
@@ -265,6 +278,9 @@ public abstract class AbstractInputChannel<T extends Record> extends AbstractCha
 
 			if (this.decompressor != null) {
 				this.dataBuffer = this.decompressor.decompress(this.dataBuffer);
+				if (this.decompressor instanceof DynamicDecompressor) {
+					reportDecompressionCosts((DynamicDecompressor) this.decompressor);
+				}
 			}
 		}
 
@@ -277,6 +293,30 @@ public abstract class AbstractInputChannel<T extends Record> extends AbstractCha
 		return nextRecord;
 	}
 
+	/**
+	 * Periodically sends the decompression costs observed by the given dynamic decompressor to the connected output
+	 * channel, so that the sender's decision model can account for the costs at the receiver.
+	 * 
+	 * @param dynamicDecompressor
+	 *        the dynamic decompressor of this channel
+	 * @throws IOException
+	 *         thrown if an I/O error occurs while transferring the event
+	 */
+	private void reportDecompressionCosts(final DynamicDecompressor dynamicDecompressor) throws IOException {
+
+		if (++this.numberOfUnreportedDecompressions < DECOMPRESSION_COST_REPORT_INTERVAL) {
+			return;
+		}
+
+		this.numberOfUnreportedDecompressions = 0;
+
+		try {
+			transferEvent(new DecompressionCostEvent(dynamicDecompressor.getDecompressionCosts()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	private void releasedConsumedReadBuffer() {
 
 		// Keep track of number of bytes transmitted through this channel
@@ -16,6 +16,7 @@
 package eu.stratosphere.nephele.io.channels;
 
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,6 +28,8 @@ import eu.stratosphere.nephele.io.compression.CompressionEvent;
 import eu.stratosphere.nephele.io.compression.CompressionException;
 import eu.stratosphere.nephele.io.compression.CompressionLevel;
 import eu.stratosphere.nephele.io.compression.Compressor;
+import eu.stratosphere.nephele.io.compression.DecompressionCostEvent;
+import eu.stratosphere.nephele.io.compression.library.dynamic.DynamicCompressor;
 import eu.stratosphere.nephele.jobgraph.JobID;
 import eu.stratosphere.nephele.types.Record;
 
@@ -81,6 +84,29 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	 */
 	private long amountOfDataTransmitted = 0L;
 
+	/**
+	 * The time in milliseconds at which the oldest record data in the current write buffer has been handed to the
+	 * channel or <code>-1</code> if the write buffer does not contain any data yet.
+	 */
+	private long dataBufferTimestamp = -1L;
+
+	/**
+	 * The time in milliseconds at which the record in the record serializer has been handed to the channel.
+	 */
+	private long serializedRecordTimestamp = -1L;
+
+	/**
+	 * The lock guarding the channel's write operations if the channel is latency bounded. Besides the task thread, an
+	 * output flusher then writes to the channel.
+	 */
+	private final ReentrantLock outputLock = new ReentrantLock();
+
+	/**
+	 * Stores whether an output flusher bounds the latency of the channel. Only then the channel takes the time of its
+	 * records and locks its write operations, otherwise the task thread is the only thread writing to the channel.
+	 */
+	private volatile boolean latencyBounded = false;
+
 	/**
 	 * Creates a new abstract output channel.
 	 * 
@@ -127,6 +153,38 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	 */
 	public void writeRecord(T record) throws IOException, InterruptedException {
 
+		if (!this.latencyBounded) {
+			writeRecordUnlocked(record, -1L);
+			return;
+		}
+
+		// Take the time before the channel possibly waits for a write buffer
+		final long recordTimestamp = System.currentTimeMillis();
+
+		this.outputLock.lock();
+		try {
+			writeRecordUnlocked(record, recordTimestamp);
+		} finally {
+			this.outputLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes a record to the channel without locking the channel's write operations.
+	 * 
+	 * @param record
+	 *        the record to be written to the channel
+	 * @param recordTimestamp
+	 *        the time in milliseconds at which the record has been handed to the channel or <code>-1</code> if the
+	 *        channel is not latency bounded
+	 * @throws IOException
+	 *         thrown if an error occurred while transmitting the record
+	 * @throws InterruptedException
+	 *         thrown if the thread is interrupted while waiting for a write buffer
+	 */
+	private void writeRecordUnlocked(final T record, final long recordTimestamp) throws IOException,
+			InterruptedException {
+
 		// Get a write buffer from the broker
 		if (this.dataBuffer == null) {
 			requestWriteBufferFromBroker();
@@ -138,24 +196,11 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 
 		// Check if we can accept new records or if there are still old
 		// records to be transmitted
-		if (this.compressor != null) {
-			while (this.recordSerializer.dataLeftFromPreviousSerialization()) {
-
-				if (!this.recordSerializer.read(this.dataBuffer)) {
-
-					this.dataBuffer = this.compressor.compress(this.dataBuffer);
-					// this.leasedWriteBuffer.flip();
-					releaseWriteBuffer();
-					requestWriteBufferFromBroker();
-				}
-			}
-		} else {
-			while (this.recordSerializer.dataLeftFromPreviousSerialization()) {
+		while (this.recordSerializer.dataLeftFromPreviousSerialization()) {
 
-				if (!this.recordSerializer.read(this.dataBuffer)) {
-					releaseWriteBuffer();
-					requestWriteBufferFromBroker();
-				}
+			if (!readIntoWriteBuffer()) {
+				releaseWriteBuffer();
+				requestWriteBufferFromBroker();
 			}
 		}
 
@@ -164,20 +209,29 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 		}
 
 		this.recordSerializer.serialize(record);
+		this.serializedRecordTimestamp = recordTimestamp;
 
-		if (this.compressor != null) {
-			if (!this.recordSerializer.read(this.dataBuffer)) {
+		if (!readIntoWriteBuffer()) {
+			releaseWriteBuffer();
+		}
+	}
 
-				this.dataBuffer = this.compressor.compress(this.dataBuffer);
-				// this.leasedWriteBuffer.flip();
-				releaseWriteBuffer();
-			}
-		} else {
-			if (!this.recordSerializer.read(this.dataBuffer)) {
-				releaseWriteBuffer();
-			}
+	/**
+	 * Copies data from the record serializer to the current write buffer. If the write buffer does not contain any
+	 * data yet, it takes over the time at which the serialized record has been handed to the channel.
+	 * 
+	 * @return <code>true</code> if the write buffer could take all data of the record serializer, <code>false</code>
+	 *         if the write buffer is full
+	 * @throws IOException
+	 *         thrown if an error occurs while copying the data
+	 */
+	private boolean readIntoWriteBuffer() throws IOException {
+
+		if (this.dataBufferTimestamp < 0L) {
+			this.dataBufferTimestamp = this.serializedRecordTimestamp;
 		}
 
+		return this.recordSerializer.read(this.dataBuffer);
 	}
 
 	/**
@@ -194,7 +248,8 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	}
 
 	/**
-	 * Returns the filled buffer to the framework and triggers further processing.
+	 * Compresses the filled buffer if the channel uses compression, returns it to the framework and triggers further
+	 * processing.
 	 * 
 	 * @throws IOException
 	 *         thrown if an I/O error occurs while releasing the buffers
@@ -203,6 +258,13 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	 */
 	private void releaseWriteBuffer() throws IOException, InterruptedException {
 
+		if (this.compressor != null) {
+			// The compressor is shared by all output channels of the gate
+			synchronized (this.compressor) {
+				this.dataBuffer = this.compressor.compress(this.dataBuffer);
+			}
+		}
+
 		if (getCompressionLevel() == CompressionLevel.DYNAMIC_COMPRESSION) {
 			this.outputChannelBroker.transferEventToInputChannel(new CompressionEvent(this.compressor
 				.getCurrentInternalCompressionLibraryIndex()));
@@ -213,6 +275,7 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 
 		this.outputChannelBroker.releaseWriteBuffer(this.dataBuffer);
 		this.dataBuffer = null;
+		this.dataBufferTimestamp = -1L;
 	}
 
 	/**
@@ -221,6 +284,24 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	@Override
 	public void releaseAllResources() {
 
+		if (!this.latencyBounded) {
+			releaseAllResourcesUnlocked();
+			return;
+		}
+
+		this.outputLock.lock();
+		try {
+			releaseAllResourcesUnlocked();
+		} finally {
+			this.outputLock.unlock();
+		}
+	}
+
+	/**
+	 * Releases all resources of the channel without locking the channel's write operations.
+	 */
+	private void releaseAllResourcesUnlocked() {
+
 		// TODO: Reconsider release of broker's resources here
 		this.closeRequested = true;
 
@@ -229,6 +310,7 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 		if (this.dataBuffer != null) {
 			this.dataBuffer.recycleBuffer();
 			this.dataBuffer = null;
+			this.dataBufferTimestamp = -1L;
 		}
 
 		if (this.compressor != null) {
@@ -257,16 +339,39 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	 */
 	public void requestClose() throws IOException, InterruptedException {
 
+		if (!this.latencyBounded) {
+			requestCloseUnlocked();
+			return;
+		}
+
+		this.outputLock.lock();
+		try {
+			requestCloseUnlocked();
+		} finally {
+			this.outputLock.unlock();
+		}
+	}
+
+	/**
+	 * Requests the output channel to close without locking the channel's write operations.
+	 * 
+	 * @throws InterruptedException
+	 *         thrown if the thread is interrupted while requesting the close operation
+	 * @throws IOException
+	 *         thrown if an I/O error occurs while requesting the close operation
+	 */
+	private void requestCloseUnlocked() throws IOException, InterruptedException {
+
 		if (!this.closeRequested) {
 			this.closeRequested = true;
 			if (this.recordSerializer.dataLeftFromPreviousSerialization()) {
 				// make sure we serialized all data before we send the close event
-				flush();
+				flushUnlocked();
 			}
 
 			if (!isBroadcastChannel() || getChannelIndex() == 0) {
 				transferEvent(new ChannelCloseEvent());
-				flush();
+				flushUnlocked();
 			}
 		}
 	}
@@ -300,6 +405,29 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 
 	public void flush() throws IOException, InterruptedException {
 
+		if (!this.latencyBounded) {
+			flushUnlocked();
+			return;
+		}
+
+		this.outputLock.lock();
+		try {
+			flushUnlocked();
+		} finally {
+			this.outputLock.unlock();
+		}
+	}
+
+	/**
+	 * Hands all remaining data of the channel over to the framework without locking the channel's write operations.
+	 * 
+	 * @throws IOException
+	 *         thrown if an I/O error occurs while handing over the data
+	 * @throws InterruptedException
+	 *         thrown if the thread is interrupted while handing over the data
+	 */
+	private void flushUnlocked() throws IOException, InterruptedException {
+
 		// Get rid of remaining data in the serialization buffer
 		while (this.recordSerializer.dataLeftFromPreviousSerialization()) {
 
@@ -311,31 +439,69 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 					LOG.error(e);
 				}
 			}
-			if (this.compressor != null) {
-				if (!this.recordSerializer.read(this.dataBuffer)) {
-					this.dataBuffer = this.compressor.compress(this.dataBuffer);
-					// this.leasedWriteBuffer.flip();
-					releaseWriteBuffer();
-				}
-			} else {
-				if (!this.recordSerializer.read(this.dataBuffer)) {
-					releaseWriteBuffer();
-				}
+			if (!readIntoWriteBuffer()) {
+				releaseWriteBuffer();
 			}
 		}
 
 		// Get rid of the leased write buffer
-		if (this.compressor != null) {
-			if (this.dataBuffer != null) {
-				this.dataBuffer = this.compressor.compress(this.dataBuffer);
+		if (this.dataBuffer != null) {
+			releaseWriteBuffer();
+		}
+	}
 
-				// this.leasedWriteBuffer.flip();
-				releaseWriteBuffer();
+	/**
+	 * Marks the channel as latency bounded, so it takes the time of its records and locks its write operations
+	 * against an output flusher. The method must be called before the flusher first checks the channel.
+	 * <p>
+	 * Write buffers filled before the call carry no time and are therefore not handed over by
+	 * {@link #flushIfOlderThan(long)}, so a write operation of the task thread which is still running without the
+	 * lock never races with the flusher.
+	 */
+	public void enableLatencyBound() {
+
+		this.latencyBounded = true;
+	}
+
+	/**
+	 * Hands the current write buffer over to the framework if its oldest data has been handed to the channel at least
+	 * the given time ago, even if the buffer is not full yet. In contrast to {@link #flush()}, this method never
+	 * requests a new write buffer, so data that is still left in the record serializer remains there until the next
+	 * write operation. The method may be called by another thread than the task thread.
+	 * <p>
+	 * The method does not wait for the task thread. If the task thread is currently writing to the channel, the method
+	 * returns immediately, since the task thread then either fills the write buffer, waits for a new one or is about to
+	 * hand the current one over. So a caller checking several channels is never held up by a channel that waits for a
+	 * buffer.
+	 * 
+	 * @param maxLatency
+	 *        the time in milliseconds after which a partially filled write buffer shall be handed over
+	 * @return <code>true</code> if a write buffer has been handed over, <code>false</code> otherwise
+	 * @throws IOException
+	 *         thrown if an I/O error occurs while handing over the write buffer
+	 * @throws InterruptedException
+	 *         thrown if the thread is interrupted while handing over the write buffer
+	 */
+	public boolean flushIfOlderThan(final long maxLatency) throws IOException, InterruptedException {
+
+		if (!this.outputLock.tryLock()) {
+			return false;
+		}
+
+		try {
+			if (this.closeRequested || this.dataBuffer == null || this.dataBufferTimestamp < 0L) {
+				return false;
 			}
-		} else {
-			if (this.dataBuffer != null) {
-				releaseWriteBuffer();
+
+			if (System.currentTimeMillis() - this.dataBufferTimestamp < maxLatency) {
+				return false;
 			}
+
+			releaseWriteBuffer();
+
+			return true;
+		} finally {
+			this.outputLock.unlock();
 		}
 	}
 
@@ -375,15 +541,20 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	@Override
 	public boolean isClosed() throws IOException, InterruptedException {
 
-		if (this.closeRequested && this.dataBuffer == null
-			&& !this.recordSerializer.dataLeftFromPreviousSerialization()) {
+		this.outputLock.lock();
+		try {
+			if (this.closeRequested && this.dataBuffer == null
+				&& !this.recordSerializer.dataLeftFromPreviousSerialization()) {
 
-			if (!this.outputChannelBroker.hasDataLeftToTransmit()) {
-				return true;
+				if (!this.outputChannelBroker.hasDataLeftToTransmit()) {
+					return true;
+				}
 			}
-		}
 
-		return false;
+			return false;
+		} finally {
+			this.outputLock.unlock();
+		}
 	}
 
 	/**
@@ -394,6 +565,13 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 
 		if (event instanceof AbstractTaskEvent) {
 			getOutputGate().deliverEvent((AbstractTaskEvent) event);
+		} else if (event instanceof DecompressionCostEvent) {
+			if (this.compressor instanceof DynamicCompressor) {
+				synchronized (this.compressor) {
+					((DynamicCompressor) this.compressor).reportDecompressionCosts(((DecompressionCostEvent) event)
+						.getNanosPerByte());
+				}
+			}
 		} else {
 			LOG.error("Channel " + getID() + " received unknown event " + event);
 		}
@@ -405,7 +583,12 @@ public abstract class AbstractOutputChannel<T extends Record> extends AbstractCh
 	@Override
 	public void transferEvent(final AbstractEvent event) throws IOException, InterruptedException {
 
-		flush();
-		this.outputChannelBroker.transferEventToInputChannel(event);
+		this.outputLock.lock();
+		try {
+			flush();
+			this.outputChannelBroker.transferEventToInputChannel(event);
+		} finally {
+			this.outputLock.unlock();
+		}
 	}
 }
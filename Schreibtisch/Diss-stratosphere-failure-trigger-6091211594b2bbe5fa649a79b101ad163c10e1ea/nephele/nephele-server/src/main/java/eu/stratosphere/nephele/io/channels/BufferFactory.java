@@ -17,6 +17,7 @@ package eu.stratosphere.nephele.io.channels;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import eu.stratosphere.nephele.io.AbstractID;
 
@@ -33,7 +34,112 @@ public final class BufferFactory {
 			final AbstractID ownerID, final FileBufferManager fileBufferManager, final boolean distributed)
 			throws IOException {
 
-		return new FileBuffer(bufferSize, offset, ownerID, fileBufferManager, distributed, false);
+		return new FileBuffer(bufferSize, offset, ownerID, fileBufferManager, distributed, false, true);
+	}
+
+	/**
+	 * Writes the content of the given memory buffers into one contiguous region of the owner's file and creates a file
+	 * buffer for the data of each memory buffer. The file is deleted when it is closed. The memory buffers are not
+	 * recycled.
+	 * 
+	 * @param memoryBuffers
+	 *        the memory buffers in read mode whose content shall be written to the file
+	 * @param ownerID
+	 *        the ID of the file's owner
+	 * @param fileBufferManager
+	 *        the file buffer manager which manages the owner's file
+	 * @return the file buffers in read mode, in the order of the given memory buffers
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the data to the file
+	 */
+	public static FileBuffer[] createFromMemoryBuffers(final Buffer[] memoryBuffers, final AbstractID ownerID,
+			final FileBufferManager fileBufferManager) throws IOException {
+
+		return createFromMemoryBuffers(memoryBuffers, ownerID, fileBufferManager, false, true);
+	}
+
+	/**
+	 * Writes the content of the given memory buffers into one contiguous region of the owner's file and creates a file
+	 * buffer for the data of each memory buffer. For local files, the region is written with a single gathering
+	 * write. The memory buffers are not recycled.
+	 * 
+	 * @param memoryBuffers
+	 *        the memory buffers in read mode whose content shall be written to the file
+	 * @param ownerID
+	 *        the ID of the file's owner
+	 * @param fileBufferManager
+	 *        the file buffer manager which manages the owner's file
+	 * @param distributed
+	 *        <code>true</code> if the owner's file resides in the distributed file system, <code>false</code> otherwise
+	 * @param deleteOnClose
+	 *        <code>true</code> if the file shall be deleted when it is closed, <code>false</code> otherwise
+	 * @return the file buffers in read mode, in the order of the given memory buffers
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the data to the file
+	 */
+	public static FileBuffer[] createFromMemoryBuffers(final Buffer[] memoryBuffers, final AbstractID ownerID,
+			final FileBufferManager fileBufferManager, final boolean distributed, final boolean deleteOnClose)
+			throws IOException {
+
+		int regionSize = 0;
+		final ByteBuffer[] data = new ByteBuffer[memoryBuffers.length];
+		for (int i = 0; i < memoryBuffers.length; ++i) {
+			if (!memoryBuffers[i].isBackedByMemory() || memoryBuffers[i].isInWriteMode()) {
+				throw new IllegalArgumentException("Buffer " + i + " is not a memory buffer in read mode");
+			}
+			final int size = memoryBuffers[i].size();
+			data[i] = ((MemoryBuffer) memoryBuffers[i]).getByteBuffer().duplicate();
+			data[i].position(0);
+			data[i].limit(size);
+			regionSize += size;
+		}
+
+		final FileBuffer[] fileBuffers = new FileBuffer[memoryBuffers.length];
+		final ChannelWithPosition cwp = fileBufferManager.getChannelForWriteAndIncrementReferences(ownerID,
+			regionSize, distributed, deleteOnClose);
+
+		try {
+			final FileChannel fileChannel = cwp.getChannel();
+			final long start = cwp.getOffset();
+
+			if (distributed) {
+				long position = start;
+				for (int i = 0; i < data.length; ++i) {
+					while (data[i].hasRemaining()) {
+						position += fileChannel.write(data[i], position);
+					}
+				}
+			} else {
+				// All other writers use positional writes, so the channel's position is only used here
+				synchronized (fileChannel) {
+					fileChannel.position(start);
+					long bytesLeft = regionSize;
+					while (bytesLeft > 0L) {
+						bytesLeft -= fileChannel.write(data);
+					}
+				}
+			}
+
+			long offset = start;
+			for (int i = 0; i < memoryBuffers.length; ++i) {
+				final int size = memoryBuffers[i].size();
+				fileBuffers[i] = new FileBuffer(size, offset, ownerID, fileBufferManager, distributed, deleteOnClose,
+					false);
+				offset += size;
+			}
+		} catch (IOException ioe) {
+			for (int i = 0; i < fileBuffers.length; ++i) {
+				if (fileBuffers[i] != null) {
+					fileBuffers[i].recycleBuffer();
+				}
+			}
+			throw ioe;
+		} finally {
+			// the file buffers hold their own references to the file
+			fileBufferManager.decrementReferences(ownerID);
+		}
+
+		return fileBuffers;
 	}
 
 	public static Buffer createFromMemory(final int bufferSize, final ByteBuffer byteBuffer,
@@ -43,15 +43,35 @@ public final class FileBuffer extends Buffer {
 	private final AtomicBoolean writeMode = new AtomicBoolean(true);
 
 	/**
-	 * Creates a file buffer for a chunk of data that is already in a file.
+	 * Indicates whether the buffer's data may be read through a memory-mapped region of the file.
+	 */
+	private boolean mappable;
+
+	/**
+	 * The shared mapped chunk of the file which contains the buffer's data, <code>null</code> if the buffer has not
+	 * retained a chunk.
+	 */
+	private MappedChunkPool.Chunk mappedChunk = null;
+
+	/**
+	 * The view on the mapped region of the file from which the buffer's data is read, <code>null</code> if the region
+	 * has not been mapped yet or has already been released.
+	 */
+	private ByteBuffer mappedRegion = null;
+
+	/**
+	 * Creates a file buffer for a chunk of data that is already in a file. If memory-mapped reads are enabled and a
+	 * prefetch is requested, the mapped chunk of the file containing the data is loaded asynchronously, so that it is
+	 * in memory by the time the buffer is consumed. The file buffer manager bounds the number of chunks loaded ahead.
 	 * 
 	 * @param bufferSize
 	 * @param offset
 	 * @param ownerID
+	 * @param prefetch
 	 */
 	FileBuffer(final int bufferSize, final long offset, final AbstractID ownerID,
-			final FileBufferManager fileBufferManager, final boolean distributed, final boolean deleteOnClose)
-			throws IOException {
+			final FileBufferManager fileBufferManager, final boolean distributed, final boolean deleteOnClose,
+			final boolean prefetch) throws IOException {
 
 		this.ownerID = ownerID;
 		this.fileBufferManager = fileBufferManager;
@@ -60,6 +80,11 @@ public final class FileBuffer extends Buffer {
 		this.writeMode.set(false);
 
 		this.fileChannel = fileBufferManager.getChannelAndIncrementReferences(ownerID, distributed, deleteOnClose);
+
+		this.mappable = !distributed && fileBufferManager.isMemoryMappedReadsEnabled();
+		if (this.mappable && bufferSize > 0) {
+			this.mappedChunk = fileBufferManager.retainMappedChunk(this.fileChannel, offset, bufferSize, prefetch);
+		}
 	}
 
 	/**
@@ -83,6 +108,7 @@ public final class FileBuffer extends Buffer {
 
 		this.fileChannel = cwp.getChannel();
 		this.offset = cwp.getOffset();
+		this.mappable = !distributed && fileBufferManager.isMemoryMappedReadsEnabled();
 	}
 
 	private FileBuffer(final FileBuffer toCopy) {
@@ -95,6 +121,14 @@ public final class FileBuffer extends Buffer {
 		this.totalBytesWritten = toCopy.totalBytesWritten;
 		this.totalBytesRead = toCopy.totalBytesRead;
 		this.writeMode.set(toCopy.writeMode.get());
+		this.mappable = toCopy.mappable;
+		this.mappedChunk = toCopy.mappedChunk;
+		if (this.mappedChunk != null) {
+			this.fileBufferManager.retainMappedChunk(this.mappedChunk);
+		}
+		if (toCopy.mappedRegion != null) {
+			this.mappedRegion = toCopy.mappedRegion.duplicate();
+		}
 	}
 
 	/**
@@ -132,6 +166,21 @@ public final class FileBuffer extends Buffer {
 			return -1;
 		}
 
+		final ByteBuffer region = getMappedRegion();
+		if (region != null) {
+			final int bytesRead = Math.min(dst.remaining(), this.bufferSize - this.totalBytesRead);
+			region.limit(this.totalBytesRead + bytesRead);
+			region.position(this.totalBytesRead);
+			dst.put(region);
+
+			this.totalBytesRead += bytesRead;
+			if (this.totalBytesRead >= this.bufferSize) {
+				// the buffer has been consumed, so give back the mapped region right away
+				releaseMappedRegion();
+			}
+			return bytesRead;
+		}
+
 		final int bytesRead = readInternal(dst, this.offset + this.totalBytesRead, remaining());
 		if (bytesRead < 0) {
 			return -1;
@@ -141,6 +190,61 @@ public final class FileBuffer extends Buffer {
 		return bytesRead;
 	}
 
+	/**
+	 * Returns the view on the mapped region of the file which contains the buffer's data. The region is taken from the
+	 * shared mapped chunk which contains it. Only regions which cross the boundary of a chunk are mapped on their own.
+	 * 
+	 * @return the view on the mapped region or <code>null</code> if the buffer's data cannot be read through a mapped
+	 *         region
+	 */
+	private ByteBuffer getMappedRegion() {
+
+		if (this.mappedRegion != null) {
+			return this.mappedRegion;
+		}
+
+		if (!this.mappable) {
+			return null;
+		}
+
+		if (this.mappedChunk == null) {
+			this.mappedChunk = this.fileBufferManager.retainMappedChunk(this.fileChannel, this.offset, this.bufferSize,
+				false);
+		}
+
+		try {
+			if (this.mappedChunk != null) {
+				this.mappedRegion = this.mappedChunk.getRegion(this.offset, this.bufferSize);
+			} else if (this.offset + this.bufferSize <= this.fileChannel.size()) {
+				this.mappedRegion = this.fileChannel.map(FileChannel.MapMode.READ_ONLY, this.offset, this.bufferSize);
+			}
+		} catch (IOException ioe) {
+			this.mappedRegion = null;
+		} catch (UnsupportedOperationException e) {
+			this.mappedRegion = null;
+		}
+
+		if (this.mappedRegion == null) {
+			releaseMappedRegion();
+		}
+
+		return this.mappedRegion;
+	}
+
+	/**
+	 * Releases the buffer's mapped region of the file and gives back its reference to the shared mapped chunk.
+	 */
+	private void releaseMappedRegion() {
+
+		if (this.mappedChunk != null) {
+			this.fileBufferManager.releaseMappedChunk(this.mappedChunk);
+			this.mappedChunk = null;
+		}
+
+		this.mappedRegion = null;
+		this.mappable = false;
+	}
+
 	private final int readInternal(final ByteBuffer dst, final long position, final int numBytes) throws IOException {
 
 		if (dst.remaining() > numBytes) {
@@ -244,6 +348,7 @@ public final class FileBuffer extends Buffer {
 	@Override
 	protected void recycle() {
 
+		releaseMappedRegion();
 		this.fileBufferManager.decrementReferences(this.ownerID);
 	}
 
@@ -310,7 +415,16 @@ public final class FileBuffer extends Buffer {
 			return;
 		}
 
-		throw new UnsupportedOperationException("FileBuffer-to-FileBuffer copy is not yet implemented");
+		// Let the file channel transfer the data into the destination buffer's file
+		final int tbr = this.totalBytesRead;
+		this.totalBytesRead = 0;
+
+		while (remaining() > 0) {
+			read(destinationBuffer);
+		}
+
+		destinationBuffer.finishWritePhase();
+		this.totalBytesRead = tbr;
 	}
 
 	/**
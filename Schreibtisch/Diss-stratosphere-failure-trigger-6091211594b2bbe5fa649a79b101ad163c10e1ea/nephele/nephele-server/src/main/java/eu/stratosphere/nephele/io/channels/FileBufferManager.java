@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,6 +50,36 @@ public final class FileBufferManager {
 	 */
 	public static final String FILE_BUFFER_PREFIX = "fb_";
 
+	/**
+	 * The configuration key to enable or disable reading file buffers through memory-mapped regions of their files.
+	 */
+	public static final String MEMORY_MAPPED_READS_KEY = "channel.file.memoryMappedReads";
+
+	/**
+	 * Memory-mapped reads are enabled by default.
+	 */
+	public static final boolean DEFAULT_MEMORY_MAPPED_READS = true;
+
+	/**
+	 * The configuration key for the size in bytes of the chunks in which files are mapped into memory.
+	 */
+	public static final String MAPPED_CHUNK_SIZE_KEY = "channel.file.mappedChunkSize";
+
+	/**
+	 * The default size of the chunks in which files are mapped into memory.
+	 */
+	public static final int DEFAULT_MAPPED_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * The configuration key for the maximum number of mapped chunks which are prefetched at a time.
+	 */
+	public static final String PREFETCHED_CHUNKS_KEY = "channel.file.prefetchedChunks";
+
+	/**
+	 * The default maximum number of mapped chunks which are prefetched at a time.
+	 */
+	public static final int DEFAULT_PREFETCHED_CHUNKS = 4;
+
 	/**
 	 * The logging object.
 	 */
@@ -85,6 +117,17 @@ public final class FileBufferManager {
 
 	private final FileSystem distributedFileSystem;
 
+	/**
+	 * Indicates whether file buffers read their data through memory-mapped regions of their files.
+	 */
+	private final boolean memoryMappedReads;
+
+	/**
+	 * The pool of mapped file chunks from which file buffers read their data, <code>null</code> if memory-mapped reads
+	 * are disabled.
+	 */
+	private final MappedChunkPool mappedChunkPool;
+
 	/**
 	 * Constructs a new file buffer manager object.
 	 */
@@ -128,6 +171,25 @@ public final class FileBufferManager {
 		}
 
 		this.distributedFileSystem = distFS;
+
+		this.memoryMappedReads = GlobalConfiguration.getBoolean(MEMORY_MAPPED_READS_KEY, DEFAULT_MEMORY_MAPPED_READS);
+		if (this.memoryMappedReads) {
+			final int chunkSize = GlobalConfiguration.getInteger(MAPPED_CHUNK_SIZE_KEY, DEFAULT_MAPPED_CHUNK_SIZE);
+			final int prefetchedChunks = GlobalConfiguration.getInteger(PREFETCHED_CHUNKS_KEY,
+				DEFAULT_PREFETCHED_CHUNKS);
+			this.mappedChunkPool = new MappedChunkPool(chunkSize, prefetchedChunks,
+				Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r, "File buffer prefetcher");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}));
+		} else {
+			this.mappedChunkPool = null;
+		}
 	}
 
 	public static boolean deleteFile(final AbstractID ownerID) {
@@ -259,6 +321,64 @@ public final class FileBufferManager {
 		}
 	}
 
+	/**
+	 * Checks whether file buffers shall read their data through memory-mapped regions of their files.
+	 * 
+	 * @return <code>true</code> if memory-mapped reads are enabled, <code>false</code> otherwise
+	 */
+	boolean isMemoryMappedReadsEnabled() {
+
+		return this.memoryMappedReads;
+	}
+
+	/**
+	 * Returns the mapped chunk which contains the given region of the given file channel and adds a reference to it.
+	 * If requested, a newly mapped chunk is loaded ahead of its consumption, as far as the maximum number of
+	 * prefetched chunks permits.
+	 * 
+	 * @param channel
+	 *        the file channel the region belongs to
+	 * @param offset
+	 *        the offset of the region in bytes
+	 * @param size
+	 *        the size of the region in bytes
+	 * @param prefetch
+	 *        <code>true</code> if the chunk shall be loaded ahead of its consumption, <code>false</code> otherwise
+	 * @return the chunk which contains the region or <code>null</code> if memory-mapped reads are disabled or the
+	 *         region crosses the boundary of a chunk
+	 */
+	MappedChunkPool.Chunk retainMappedChunk(final FileChannel channel, final long offset, final int size,
+			final boolean prefetch) {
+
+		if (this.mappedChunkPool == null) {
+			return null;
+		}
+
+		return this.mappedChunkPool.retain(channel, offset, size, prefetch);
+	}
+
+	/**
+	 * Adds a reference to the given mapped chunk, which must have been retained before.
+	 * 
+	 * @param chunk
+	 *        the chunk to add a reference to
+	 */
+	void retainMappedChunk(final MappedChunkPool.Chunk chunk) {
+
+		this.mappedChunkPool.retain(chunk);
+	}
+
+	/**
+	 * Removes a reference from the given mapped chunk. The chunk is released when its last reference is removed.
+	 * 
+	 * @param chunk
+	 *        the chunk to remove a reference from
+	 */
+	void releaseMappedChunk(final MappedChunkPool.Chunk chunk) {
+
+		this.mappedChunkPool.release(chunk);
+	}
+
 	// --------------------------------------------------------------------------------------------
 
 	private final Path constructDistributedPath(final AbstractID ownerID) {
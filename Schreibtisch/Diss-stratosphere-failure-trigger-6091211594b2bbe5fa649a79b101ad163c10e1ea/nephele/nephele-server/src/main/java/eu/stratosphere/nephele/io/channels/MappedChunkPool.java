@@ -0,0 +1,374 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.channels;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The mapped chunk pool maps the files of {@link FileBuffer} objects into memory in chunks of a fixed size. A chunk
+ * is shared by all buffers whose data lies within it, so reading many small buffers does not require one mapping per
+ * buffer.
+ * <p>
+ * Chunks of buffers which are created ahead of their consumption, as when a checkpoint is replayed, can be
+ * prefetched, i.e. mapped and loaded by a background thread. At most a fixed number of chunks is prefetched at a
+ * time. Further chunks are queued and prefetched in the order they were requested, as soon as prefetched chunks are
+ * released. A chunk is released once the last buffer using it gives it back. A prefetch which is still loading the
+ * chunk at that time stops early.
+ * <p>
+ * Released chunks are not unmapped explicitly, since Java offers no safe way to do so. They are unmapped when their
+ * mapping is garbage collected.
+ * <p>
+ * This class is thread-safe.
+ */
+final class MappedChunkPool {
+
+	/**
+	 * The distance in bytes between two bytes which are touched to load a mapped chunk.
+	 */
+	private static final int PAGE_SIZE = 4096;
+
+	/**
+	 * The size of a chunk in bytes.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * The maximum number of chunks which are prefetched at a time.
+	 */
+	private final int maxPrefetchedChunks;
+
+	/**
+	 * The executor which prefetches the chunks, <code>null</code> if chunks are not prefetched.
+	 */
+	private final ExecutorService prefetchExecutor;
+
+	/**
+	 * The chunks which are currently in use, by file channel and start offset.
+	 */
+	private final Map<FileChannel, Map<Long, Chunk>> chunks = new HashMap<FileChannel, Map<Long, Chunk>>();
+
+	/**
+	 * The chunks which are to be prefetched once the number of prefetched chunks drops below the maximum.
+	 */
+	private final ArrayDeque<Chunk> queuedPrefetches = new ArrayDeque<Chunk>();
+
+	/**
+	 * The number of chunks which have been prefetched or are being prefetched and are still in use.
+	 */
+	private int numberOfPrefetchedChunks = 0;
+
+	/**
+	 * Constructs a new mapped chunk pool.
+	 *
+	 * @param chunkSize
+	 *        the size of a chunk in bytes
+	 * @param maxPrefetchedChunks
+	 *        the maximum number of chunks which are prefetched at a time
+	 * @param prefetchExecutor
+	 *        the executor which prefetches the chunks or <code>null</code> if chunks shall not be prefetched
+	 */
+	MappedChunkPool(final int chunkSize, final int maxPrefetchedChunks, final ExecutorService prefetchExecutor) {
+
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("The chunk size must be positive");
+		}
+
+		this.chunkSize = chunkSize;
+		this.maxPrefetchedChunks = maxPrefetchedChunks;
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
+	/**
+	 * Returns the chunk which contains the given region of the given file channel and adds a reference to it. A chunk
+	 * which is not in use yet is created. If requested, it is prefetched as soon as the number of prefetched chunks
+	 * permits.
+	 *
+	 * @param channel
+	 *        the file channel the region belongs to
+	 * @param offset
+	 *        the offset of the region in bytes
+	 * @param size
+	 *        the size of the region in bytes
+	 * @param prefetch
+	 *        <code>true</code> if a newly created chunk shall be prefetched, <code>false</code> otherwise
+	 * @return the chunk which contains the region or <code>null</code> if the region crosses the boundary of a chunk
+	 */
+	Chunk retain(final FileChannel channel, final long offset, final int size, final boolean prefetch) {
+
+		final long start = offset - (offset % this.chunkSize);
+		if (offset + size > start + this.chunkSize) {
+			return null;
+		}
+
+		synchronized (this) {
+
+			Map<Long, Chunk> channelChunks = this.chunks.get(channel);
+			if (channelChunks == null) {
+				channelChunks = new HashMap<Long, Chunk>();
+				this.chunks.put(channel, channelChunks);
+			}
+
+			Chunk chunk = channelChunks.get(Long.valueOf(start));
+			if (chunk == null) {
+				chunk = new Chunk(channel, start, this.chunkSize);
+				channelChunks.put(Long.valueOf(start), chunk);
+
+				if (prefetch && this.prefetchExecutor != null) {
+					if (this.numberOfPrefetchedChunks < this.maxPrefetchedChunks) {
+						startPrefetch(chunk);
+					} else {
+						this.queuedPrefetches.add(chunk);
+					}
+				}
+			}
+
+			++chunk.references;
+
+			return chunk;
+		}
+	}
+
+	/**
+	 * Adds a reference to the given chunk, which must still be in use.
+	 *
+	 * @param chunk
+	 *        the chunk to add a reference to
+	 */
+	synchronized void retain(final Chunk chunk) {
+
+		if (chunk.references <= 0) {
+			throw new IllegalStateException("Chunk has already been released");
+		}
+
+		++chunk.references;
+	}
+
+	/**
+	 * Removes a reference from the given chunk. The chunk is released when its last reference is removed. If it was
+	 * prefetched, the next queued chunk is prefetched in its place.
+	 *
+	 * @param chunk
+	 *        the chunk to remove a reference from
+	 */
+	synchronized void release(final Chunk chunk) {
+
+		if (--chunk.references > 0) {
+			return;
+		}
+
+		chunk.released = true;
+
+		final Map<Long, Chunk> channelChunks = this.chunks.get(chunk.channel);
+		if (channelChunks != null) {
+			channelChunks.remove(Long.valueOf(chunk.start));
+			if (channelChunks.isEmpty()) {
+				this.chunks.remove(chunk.channel);
+			}
+		}
+
+		if (!chunk.prefetched) {
+			return;
+		}
+
+		--this.numberOfPrefetchedChunks;
+		while (this.numberOfPrefetchedChunks < this.maxPrefetchedChunks && !this.queuedPrefetches.isEmpty()) {
+			final Chunk next = this.queuedPrefetches.poll();
+			if (!next.released) {
+				startPrefetch(next);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of chunks which have been prefetched or are being prefetched and are still in use.
+	 *
+	 * @return the number of prefetched chunks
+	 */
+	synchronized int getNumberOfPrefetchedChunks() {
+
+		return this.numberOfPrefetchedChunks;
+	}
+
+	/**
+	 * Hands the given chunk to the prefetch executor. This method must be called while holding the pool's lock.
+	 *
+	 * @param chunk
+	 *        the chunk to prefetch
+	 */
+	private void startPrefetch(final Chunk chunk) {
+
+		chunk.prefetched = true;
+		++this.numberOfPrefetchedChunks;
+
+		try {
+			this.prefetchExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					chunk.load();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the chunk is mapped when it is read
+			chunk.prefetched = false;
+			--this.numberOfPrefetchedChunks;
+		}
+	}
+
+	/**
+	 * A chunk of a file which is mapped into memory on demand.
+	 */
+	static final class Chunk {
+
+		/**
+		 * The file channel the chunk belongs to.
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * The offset of the chunk in the file in bytes.
+		 */
+		private final long start;
+
+		/**
+		 * The maximum size of the chunk in bytes.
+		 */
+		private final int maxSize;
+
+		/**
+		 * The number of references to the chunk, guarded by the pool's lock.
+		 */
+		private int references = 0;
+
+		/**
+		 * Indicates whether the chunk counts towards the prefetched chunks, guarded by the pool's lock.
+		 */
+		private boolean prefetched = false;
+
+		/**
+		 * Indicates whether the chunk has been released by the pool.
+		 */
+		private volatile boolean released = false;
+
+		/**
+		 * The mapped region of the file, <code>null</code> if the chunk has not been mapped yet.
+		 */
+		private MappedByteBuffer mapping = null;
+
+		/**
+		 * Receives the bytes touched while loading the chunk, so the loading cannot be optimized away.
+		 */
+		@SuppressWarnings("unused")
+		private volatile int loadChecksum;
+
+		private Chunk(final FileChannel channel, final long start, final int maxSize) {
+
+			this.channel = channel;
+			this.start = start;
+			this.maxSize = maxSize;
+		}
+
+		/**
+		 * Returns a view on the given region of the chunk. The view's position 0 marks the region's first byte.
+		 *
+		 * @param offset
+		 *        the offset of the region in the file in bytes
+		 * @param size
+		 *        the size of the region in bytes
+		 * @return the view on the region or <code>null</code> if the region lies beyond the end of the file
+		 * @throws IOException
+		 *         thrown if the chunk could not be mapped
+		 */
+		ByteBuffer getRegion(final long offset, final int size) throws IOException {
+
+			final int position = (int) (offset - this.start);
+			final MappedByteBuffer m = map(position + size);
+			if (m == null) {
+				return null;
+			}
+
+			final ByteBuffer region = m.duplicate();
+			region.limit(position + size);
+			region.position(position);
+
+			return region.slice();
+		}
+
+		/**
+		 * Returns the mapping of the chunk. The chunk is mapped again if the file has grown beyond the current mapping
+		 * and the current mapping does not cover the requested size.
+		 *
+		 * @param minSize
+		 *        the number of bytes from the chunk's start the mapping must cover
+		 * @return the mapping or <code>null</code> if the file does not contain the requested number of bytes
+		 * @throws IOException
+		 *         thrown if the chunk could not be mapped
+		 */
+		private synchronized MappedByteBuffer map(final int minSize) throws IOException {
+
+			if (this.mapping == null || this.mapping.capacity() < minSize) {
+
+				// never map beyond the end of the file, since that would extend a writable file
+				final long size = Math.min(this.maxSize, this.channel.size() - this.start);
+				if (size < minSize || size <= 0) {
+					return null;
+				}
+
+				this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, this.start, size);
+			}
+
+			return this.mapping;
+		}
+
+		/**
+		 * Maps the chunk and loads its content by touching one byte per page, like {@link MappedByteBuffer#load()}.
+		 * Unlike that method, the loading stops as soon as the chunk is released.
+		 */
+		private void load() {
+
+			if (this.released) {
+				return;
+			}
+
+			final MappedByteBuffer m;
+			try {
+				m = map(1);
+			} catch (IOException ioe) {
+				// the chunk is mapped again when it is read
+				return;
+			}
+
+			if (m == null) {
+				return;
+			}
+
+			int checksum = 0;
+			for (int i = 0; i < m.capacity() && !this.released; i += PAGE_SIZE) {
+				checksum += m.get(i);
+			}
+
+			this.loadChecksum = checksum;
+		}
+	}
+}
@@ -48,6 +48,11 @@ final class SpanningRecordDeserializer<T extends Record> implements RecordDeseri
 	 */
 	private final DataInputWrapper deserializationWrapper;
 
+	/**
+	 * The data input used to deserialize records straight from memory buffers.
+	 */
+	private final ByteBufferInputWrapper directWrapper;
+
 	/**
 	 * Buffer to reconstruct the length field.
 	 */
@@ -106,6 +111,8 @@ final class SpanningRecordDeserializer<T extends Record> implements RecordDeseri
 
 		this.deserializationWrapper = new DataInputWrapper();
 		this.deserializationWrapper.setArray(this.tempBuffer.array());
+
+		this.directWrapper = new ByteBufferInputWrapper();
 	}
 
 	// --------------------------------------------------------------------------------------------
@@ -117,6 +124,21 @@ final class SpanningRecordDeserializer<T extends Record> implements RecordDeseri
 	 */
 	@Override
 	public T readData(T target, final ReadableByteChannel readableByteChannel) throws IOException {
+		// records which are entirely contained in a memory buffer are read without copying them first
+		if (this.recordLength < 0 && this.lengthBuf.position() == 0 && readableByteChannel instanceof MemoryBuffer) {
+			final MemoryBuffer memoryBuffer = (MemoryBuffer) readableByteChannel;
+			if (!memoryBuffer.isInWriteMode()) {
+				final ByteBuffer byteBuffer = memoryBuffer.getByteBuffer();
+				if (byteBuffer.remaining() >= SIZEOFINT) {
+					final int start = byteBuffer.position() + SIZEOFINT;
+					final int end = start + byteBuffer.getInt(byteBuffer.position());
+					if (start <= end && end <= byteBuffer.limit()) {
+						return readDirectly(target, byteBuffer, start, end);
+					}
+				}
+			}
+		}
+
 		// check whether the length has already been de-serialized
 		final int len;
 		if (this.recordLength < 0) {
@@ -176,6 +198,44 @@ final class SpanningRecordDeserializer<T extends Record> implements RecordDeseri
 		}
 	}
 
+	/**
+	 * Deserializes a record straight from the given byte buffer.
+	 * 
+	 * @param target
+	 *        the record to deserialize into, or <code>null</code> to deserialize into a new record
+	 * @param byteBuffer
+	 *        the byte buffer containing the record
+	 * @param start
+	 *        the position of the record's first byte, following the length field
+	 * @param end
+	 *        the position after the record's last byte
+	 * @return the deserialized record
+	 * @throws IOException
+	 *         thrown if the record could not be deserialized
+	 */
+	private T readDirectly(T target, final ByteBuffer byteBuffer, final int start, final int end) throws IOException {
+
+		if (target == null) {
+			target = instantiateTarget();
+		}
+
+		final int oldLimit = byteBuffer.limit();
+		byteBuffer.limit(end);
+		byteBuffer.position(start);
+		this.directWrapper.set(byteBuffer);
+
+		try {
+			target.read(this.directWrapper);
+			return target;
+		} catch (BufferUnderflowException buex) {
+			throw new EOFException();
+		} finally {
+			this.directWrapper.set(null);
+			byteBuffer.limit(oldLimit);
+			byteBuffer.position(end);
+		}
+	}
+
 	private final T instantiateTarget() throws IOException {
 		try {
 			return this.recordFactory.createRecord();
@@ -219,252 +279,204 @@ final class SpanningRecordDeserializer<T extends Record> implements RecordDeseri
 
 	// --------------------------------------------------------------------------------------------
 
-	// private static final class DataInputWrapper implements DataInputView
-	// {
-	// private ByteBuffer source;
-	//
-	// private byte[] utfByteBuffer; // reusable byte buffer for utf-8 decoding
-	// private char[] utfCharBuffer; // reusable char buffer for utf-8 decoding
-	//
-	//
-	// void set(ByteBuffer source) {
-	// this.source = source;
-	// }
-	//
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readFully(byte[])
-	// */
-	// @Override
-	// public void readFully(byte[] b) {
-	// this.source.get(b);
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readFully(byte[], int, int)
-	// */
-	// @Override
-	// public void readFully(byte[] b, int off, int len) {
-	// this.source.get(b, off, len);
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#skipBytes(int)
-	// */
-	// @Override
-	// public int skipBytes(int n) {
-	// int newPos = this.source.position() + n;
-	// if (newPos > this.source.limit()) {
-	// newPos = this.source.limit();
-	// n = newPos - this.source.position();
-	// }
-	// this.source.position(newPos);
-	// return n;
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readBoolean()
-	// */
-	// @Override
-	// public boolean readBoolean() {
-	// return this.source.get() != 0;
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readByte()
-	// */
-	// @Override
-	// public byte readByte() {
-	// return this.source.get();
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readUnsignedByte()
-	// */
-	// @Override
-	// public int readUnsignedByte() {
-	// return this.source.get() & 0xff;
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readShort()
-	// */
-	// @Override
-	// public short readShort() {
-	// return this.source.getShort();
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readUnsignedShort()
-	// */
-	// @Override
-	// public int readUnsignedShort() {
-	// return this.source.getShort() & 0xffff;
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readChar()
-	// */
-	// @Override
-	// public char readChar() {
-	// return this.source.getChar();
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readInt()
-	// */
-	// @Override
-	// public int readInt() {
-	// return this.source.getInt();
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readLong()
-	// */
-	// @Override
-	// public long readLong() {
-	// return this.source.getLong();
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readFloat()
-	// */
-	// @Override
-	// public float readFloat() {
-	// return Float.intBitsToFloat(this.source.getInt());
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readDouble()
-	// */
-	// @Override
-	// public double readDouble() {
-	// return Double.longBitsToDouble(this.source.getLong());
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readLine()
-	// */
-	// @Override
-	// public String readLine()
-	// {
-	// if (this.source.hasRemaining()) {
-	// // read until a newline is found
-	// StringBuilder bld = new StringBuilder();
-	// char curr;
-	// while (this.source.hasRemaining() && (curr = (char) readUnsignedByte()) != '\n') {
-	// bld.append(curr);
-	// }
-	// // trim a trailing carriage return
-	// int len = bld.length();
-	// if (len > 0 && bld.charAt(len - 1) == '\r') {
-	// bld.setLength(len - 1);
-	// }
-	// String s = bld.toString();
-	// bld.setLength(0);
-	// return s;
-	// } else {
-	// return null;
-	// }
-	// }
-	//
-	// /* (non-Javadoc)
-	// * @see java.io.DataInput#readUTF()
-	// */
-	// @Override
-	// public String readUTF() throws IOException
-	// {
-	// final int utflen = readUnsignedShort();
-	//
-	// final byte[] bytearr;
-	// final char[] chararr;
-	//
-	// if (this.utfByteBuffer == null || this.utfByteBuffer.length < utflen) {
-	// bytearr = new byte[utflen];
-	// this.utfByteBuffer = bytearr;
-	// } else {
-	// bytearr = this.utfByteBuffer;
-	// }
-	// if (this.utfCharBuffer == null || this.utfCharBuffer.length < utflen) {
-	// chararr = new char[utflen];
-	// this.utfCharBuffer = chararr;
-	// } else {
-	// chararr = this.utfCharBuffer;
-	// }
-	//
-	// int c, char2, char3;
-	// int count = 0;
-	// int chararr_count = 0;
-	//
-	// readFully(bytearr, 0, utflen);
-	//
-	// while (count < utflen) {
-	// c = (int) bytearr[count] & 0xff;
-	// if (c > 127)
-	// break;
-	// count++;
-	// chararr[chararr_count++] = (char) c;
-	// }
-	//
-	// while (count < utflen) {
-	// c = (int) bytearr[count] & 0xff;
-	// switch (c >> 4) {
-	// case 0:
-	// case 1:
-	// case 2:
-	// case 3:
-	// case 4:
-	// case 5:
-	// case 6:
-	// case 7:
-	// /* 0xxxxxxx */
-	// count++;
-	// chararr[chararr_count++] = (char) c;
-	// break;
-	// case 12:
-	// case 13:
-	// /* 110x xxxx 10xx xxxx */
-	// count += 2;
-	// if (count > utflen)
-	// throw new UTFDataFormatException("malformed input: partial character at end");
-	// char2 = (int) bytearr[count - 1];
-	// if ((char2 & 0xC0) != 0x80)
-	// throw new UTFDataFormatException("malformed input around byte " + count);
-	// chararr[chararr_count++] = (char) (((c & 0x1F) << 6) | (char2 & 0x3F));
-	// break;
-	// case 14:
-	// /* 1110 xxxx 10xx xxxx 10xx xxxx */
-	// count += 3;
-	// if (count > utflen)
-	// throw new UTFDataFormatException("malformed input: partial character at end");
-	// char2 = (int) bytearr[count - 2];
-	// char3 = (int) bytearr[count - 1];
-	// if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80))
-	// throw new UTFDataFormatException("malformed input around byte " + (count - 1));
-	// chararr[chararr_count++] = (char) (((c & 0x0F) << 12) | ((char2 & 0x3F) << 6) | ((char3 & 0x3F) << 0));
-	// break;
-	// default:
-	// /* 10xx xxxx, 1111 xxxx */
-	// throw new UTFDataFormatException("malformed input around byte " + count);
-	// }
-	// }
-	// // The number of chars produced may be less than utflen
-	// return new String(chararr, 0, chararr_count);
-	// }
-	//
-	//
-	// /* (non-Javadoc)
-	// * @see eu.stratosphere.nephele.services.memorymanager.DataInputView#skipBytesToRead(int)
-	// */
-	// @Override
-	// public void skipBytesToRead(int numBytes) throws IOException {
-	// if (this.source.remaining() < numBytes) {
-	// throw new EOFException();
-	// } else {
-	// this.source.position(this.source.position() + numBytes);
-	// }
-	// }
-	// }
+	/**
+	 * A {@link DataInputView} which reads a record straight from the byte buffer of a memory buffer. The limit of the
+	 * byte buffer must be set to the end of the record.
+	 */
+	private static final class ByteBufferInputWrapper implements DataInputView {
+		private ByteBuffer source;
+
+		private byte[] utfByteBuffer; // reusable byte buffer for utf-8 decoding
+
+		private final DataInputWrapper utfDecoder = new DataInputWrapper();
+
+		void set(ByteBuffer source) {
+			this.source = source;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readFully(byte[])
+		 */
+		@Override
+		public void readFully(byte[] b) {
+			this.source.get(b);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readFully(byte[], int, int)
+		 */
+		@Override
+		public void readFully(byte[] b, int off, int len) {
+			this.source.get(b, off, len);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#skipBytes(int)
+		 */
+		@Override
+		public int skipBytes(int n) {
+			if (n < 0) {
+				throw new IllegalArgumentException("Number of bytes to skip must not be negative.");
+			}
+
+			final int toSkip = Math.min(this.source.remaining(), n);
+			this.source.position(this.source.position() + toSkip);
+			return toSkip;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readBoolean()
+		 */
+		@Override
+		public boolean readBoolean() {
+			return this.source.get() != 0;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readByte()
+		 */
+		@Override
+		public byte readByte() {
+			return this.source.get();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readUnsignedByte()
+		 */
+		@Override
+		public int readUnsignedByte() {
+			return this.source.get() & 0xff;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readShort()
+		 */
+		@Override
+		public short readShort() {
+			return this.source.getShort();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readUnsignedShort()
+		 */
+		@Override
+		public int readUnsignedShort() {
+			return this.source.getShort() & 0xffff;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readChar()
+		 */
+		@Override
+		public char readChar() {
+			return this.source.getChar();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readInt()
+		 */
+		@Override
+		public int readInt() {
+			return this.source.getInt();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readLong()
+		 */
+		@Override
+		public long readLong() {
+			return this.source.getLong();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readFloat()
+		 */
+		@Override
+		public float readFloat() {
+			return Float.intBitsToFloat(this.source.getInt());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readDouble()
+		 */
+		@Override
+		public double readDouble() {
+			return Double.longBitsToDouble(this.source.getLong());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readLine()
+		 */
+		@Override
+		public String readLine() {
+			if (this.source.hasRemaining()) {
+				// read until a newline is found
+				StringBuilder bld = new StringBuilder();
+				char curr;
+				while (this.source.hasRemaining() && (curr = (char) readUnsignedByte()) != '\n') {
+					bld.append(curr);
+				}
+				// trim a trailing carriage return
+				int len = bld.length();
+				if (len > 0 && bld.charAt(len - 1) == '\r') {
+					bld.setLength(len - 1);
+				}
+				return bld.toString();
+			} else {
+				return null;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataInput#readUTF()
+		 */
+		@Override
+		public String readUTF() throws IOException {
+			final int utflen = readUnsignedShort();
+
+			if (this.utfByteBuffer == null || this.utfByteBuffer.length < utflen + 2) {
+				this.utfByteBuffer = new byte[utflen + 2];
+			}
+
+			// let the array based wrapper decode the string, including its length field
+			this.utfByteBuffer[0] = (byte) (utflen >>> 8);
+			this.utfByteBuffer[1] = (byte) utflen;
+			this.source.get(this.utfByteBuffer, 2, utflen);
+			this.utfDecoder.setArray(this.utfByteBuffer);
+			this.utfDecoder.reset(utflen + 2);
+			return this.utfDecoder.readUTF();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see eu.stratosphere.nephele.services.memorymanager.DataInputView#skipBytesToRead(int)
+		 */
+		@Override
+		public void skipBytesToRead(int numBytes) throws EOFException {
+			if (numBytes < 0) {
+				throw new IllegalArgumentException("Number of bytes to skip must not be negative.");
+			} else if (this.source.remaining() < numBytes) {
+				throw new EOFException();
+			} else {
+				this.source.position(this.source.position() + numBytes);
+			}
+		}
+	}
 
 	private static final class DataInputWrapper implements DataInputView {
 		private byte[] source;
@@ -15,13 +15,28 @@
 
 package eu.stratosphere.nephele.io.channels;
 
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 
 import eu.stratosphere.nephele.io.DataOutputBuffer;
 import eu.stratosphere.nephele.types.Record;
 
+/**
+ * A serializer that writes records as a four byte length field, followed by the record's data, and lets records span
+ * several buffers.
+ * <p>
+ * If the record is written to a {@link MemoryBuffer} that still has enough space for it, the record is serialized
+ * straight into the buffer, and the length field is filled in afterwards. Only if the record does not fit into the
+ * remaining space, it is serialized into an intermediate buffer and copied into the output buffers piece by piece.
+ * The format of the written data is the same in both cases.
+ * 
+ * @param <T>
+ *        the type of record to serialize
+ */
 final class SpanningRecordSerializer<T extends Record> implements RecordSerializer<T> {
 
 	private static final int SIZEOFINT = 4;
@@ -32,6 +47,21 @@ final class SpanningRecordSerializer<T extends Record> implements RecordSerializ
 
 	private int bytesReadFromBuffer = 0;
 
+	/**
+	 * Writes records directly into the byte buffer of a memory buffer.
+	 */
+	private final ByteBufferDataOutput directOutput = new ByteBufferDataOutput();
+
+	/**
+	 * The record passed to {@link #serialize(Record)} which has not been written yet.
+	 */
+	private T pendingRecord = null;
+
+	/**
+	 * The serialized length of the last record, used to skip direct writes which will most likely not fit.
+	 */
+	private int lastRecordLength = 0;
+
 	/**
 	 * Translates an integer into an array of bytes.
 	 * 
@@ -56,7 +86,7 @@ final class SpanningRecordSerializer<T extends Record> implements RecordSerializ
 	 */
 	@Override
 	public boolean dataLeftFromPreviousSerialization() {
-		return leftInSerializationBuffer() > 0;
+		return this.pendingRecord != null || leftInSerializationBuffer() > 0;
 	}
 
 	/**
@@ -65,6 +95,21 @@ final class SpanningRecordSerializer<T extends Record> implements RecordSerializ
 	@Override
 	public boolean read(final WritableByteChannel writableByteChannel) throws IOException {
 
+		if (this.pendingRecord != null) {
+
+			final T record = this.pendingRecord;
+			this.pendingRecord = null;
+
+			if (writableByteChannel instanceof MemoryBuffer && writeDirectly(record, (MemoryBuffer) writableByteChannel)) {
+				return true;
+			}
+
+			// The record does not fit into the buffer, so it must span several buffers
+			record.write(this.serializationBuffer); // serializationBuffer grows dynamically
+			this.lastRecordLength = this.serializationBuffer.getLength();
+			integerToByteBuffer(this.lastRecordLength, this.lengthBuf);
+		}
+
 		// Deal with length buffer first
 		if (this.lengthBuf.hasRemaining()) { // There is data from the length buffer to be written
 			writableByteChannel.write(this.lengthBuf);
@@ -82,6 +127,47 @@ final class SpanningRecordSerializer<T extends Record> implements RecordSerializ
 		return (bytesReadFromSerializationBuf > 0);
 	}
 
+	/**
+	 * Attempts to serialize the given record straight into the byte buffer of the given memory buffer.
+	 * 
+	 * @param record
+	 *        the record to serialize
+	 * @param memoryBuffer
+	 *        the memory buffer to write the record to
+	 * @return <code>true</code> if the record has been written to the buffer entirely, <code>false</code> if the
+	 *         record does not fit into the buffer and the buffer has been left unchanged
+	 * @throws IOException
+	 *         thrown if the record could not be serialized
+	 */
+	private boolean writeDirectly(final T record, final MemoryBuffer memoryBuffer) throws IOException {
+
+		if (!memoryBuffer.isInWriteMode()) {
+			return false;
+		}
+
+		final ByteBuffer byteBuffer = memoryBuffer.getByteBuffer();
+		final int start = byteBuffer.position();
+		if (byteBuffer.remaining() < SIZEOFINT + this.lastRecordLength) {
+			return false;
+		}
+
+		byteBuffer.position(start + SIZEOFINT);
+		this.directOutput.set(byteBuffer);
+		try {
+			record.write(this.directOutput);
+		} catch (BufferOverflowException e) {
+			byteBuffer.position(start);
+			return false;
+		} finally {
+			this.directOutput.set(null);
+		}
+
+		this.lastRecordLength = byteBuffer.position() - start - SIZEOFINT;
+		byteBuffer.putInt(start, this.lastRecordLength);
+
+		return true;
+	}
+
 	/**
 	 * Return the number of bytes that have not been read from the internal serialization
 	 * buffer so far.
@@ -105,10 +191,8 @@ final class SpanningRecordSerializer<T extends Record> implements RecordSerializ
 				+ " bytes still left from previous call");
 		}
 
-		record.write(this.serializationBuffer); // serializationBuffer grows dynamically
-
-		// Now record is completely in serializationBuffer;
-		integerToByteBuffer(this.serializationBuffer.getLength(), this.lengthBuf);
+		// The record is written by the next call to read, either directly or through the serialization buffer
+		this.pendingRecord = record;
 	}
 
 	/**
@@ -116,8 +200,195 @@ final class SpanningRecordSerializer<T extends Record> implements RecordSerializ
 	 */
 	@Override
 	public void clear() {
+		this.pendingRecord = null;
 		this.bytesReadFromBuffer = 0;
 		this.lengthBuf.clear();
 		this.serializationBuffer.reset();
 	}
+
+	/**
+	 * A {@link DataOutput} which writes to a byte buffer, using the same encoding as {@link java.io.DataOutputStream}.
+	 * Writes beyond the buffer's limit cause a {@link BufferOverflowException}.
+	 */
+	private static final class ByteBufferDataOutput implements DataOutput {
+
+		private ByteBuffer target;
+
+		void set(final ByteBuffer target) {
+			this.target = target;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#write(int)
+		 */
+		@Override
+		public void write(final int b) {
+			this.target.put((byte) b);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#write(byte[])
+		 */
+		@Override
+		public void write(final byte[] b) {
+			this.target.put(b);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#write(byte[], int, int)
+		 */
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			this.target.put(b, off, len);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeBoolean(boolean)
+		 */
+		@Override
+		public void writeBoolean(final boolean v) {
+			this.target.put((byte) (v ? 1 : 0));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeByte(int)
+		 */
+		@Override
+		public void writeByte(final int v) {
+			this.target.put((byte) v);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeShort(int)
+		 */
+		@Override
+		public void writeShort(final int v) {
+			this.target.putShort((short) v);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeChar(int)
+		 */
+		@Override
+		public void writeChar(final int v) {
+			this.target.putChar((char) v);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeInt(int)
+		 */
+		@Override
+		public void writeInt(final int v) {
+			this.target.putInt(v);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeLong(long)
+		 */
+		@Override
+		public void writeLong(final long v) {
+			this.target.putLong(v);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeFloat(float)
+		 */
+		@Override
+		public void writeFloat(final float v) {
+			this.target.putInt(Float.floatToIntBits(v));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeDouble(double)
+		 */
+		@Override
+		public void writeDouble(final double v) {
+			this.target.putLong(Double.doubleToLongBits(v));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeBytes(java.lang.String)
+		 */
+		@Override
+		public void writeBytes(final String s) {
+			final int len = s.length();
+			if (len > this.target.remaining()) {
+				throw new BufferOverflowException();
+			}
+			for (int i = 0; i < len; i++) {
+				this.target.put((byte) s.charAt(i));
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeChars(java.lang.String)
+		 */
+		@Override
+		public void writeChars(final String s) {
+			final int len = s.length();
+			if (2 * len > this.target.remaining()) {
+				throw new BufferOverflowException();
+			}
+			for (int i = 0; i < len; i++) {
+				this.target.putChar(s.charAt(i));
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.DataOutput#writeUTF(java.lang.String)
+		 */
+		@Override
+		public void writeUTF(final String str) throws IOException {
+			final int strlen = str.length();
+			int utflen = 0;
+
+			for (int i = 0; i < strlen; i++) {
+				final int c = str.charAt(i);
+				if ((c >= 0x0001) && (c <= 0x007F)) {
+					utflen++;
+				} else if (c > 0x07FF) {
+					utflen += 3;
+				} else {
+					utflen += 2;
+				}
+			}
+
+			if (utflen > 65535) {
+				throw new UTFDataFormatException("Encoded string too long: " + utflen + " bytes");
+			}
+			if (utflen + 2 > this.target.remaining()) {
+				throw new BufferOverflowException();
+			}
+
+			this.target.putShort((short) utflen);
+
+			for (int i = 0; i < strlen; i++) {
+				final int c = str.charAt(i);
+				if ((c >= 0x0001) && (c <= 0x007F)) {
+					this.target.put((byte) c);
+				} else if (c > 0x07FF) {
+					this.target.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+					this.target.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+					this.target.put((byte) (0x80 | (c & 0x3F)));
+				} else {
+					this.target.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+					this.target.put((byte) (0x80 | (c & 0x3F)));
+				}
+			}
+		}
+	}
 }
@@ -90,24 +90,27 @@ public abstract class AbstractCompressor implements Compressor {
 			throw new IllegalStateException("Uncompressed data buffer is not backed by memory");
 		}
 
-		setUncompressedDataBuffer((MemoryBuffer) uncompressedData);
-		setCompressedDataBuffer(this.bufferProvider.lockCompressionBuffer());
-		this.compressedDataBuffer.clear();
-		this.uncompressedDataBufferLength = this.uncompressedDataBuffer.position();
+		// The buffer provider is shared by the compressors of all output gates of the task
+		synchronized (this.bufferProvider) {
+			setUncompressedDataBuffer((MemoryBuffer) uncompressedData);
+			setCompressedDataBuffer(this.bufferProvider.lockCompressionBuffer());
+			this.compressedDataBuffer.clear();
+			this.uncompressedDataBufferLength = this.uncompressedDataBuffer.position();
 
-		final int numberOfCompressedBytes = compressBytesDirect(0);
+			final int numberOfCompressedBytes = compressBytesDirect(0);
 
-		// System.out.println("Compression library " + this.uncompressedDataBuffer.position() + " to " +
-		// numberOfCompressedBytes + " bytes");
+			// System.out.println("Compression library " + this.uncompressedDataBuffer.position() + " to " +
+			// numberOfCompressedBytes + " bytes");
 
-		this.compressedDataBuffer.position(numberOfCompressedBytes + SIZE_LENGTH);
+			this.compressedDataBuffer.position(numberOfCompressedBytes + SIZE_LENGTH);
 
-		final Buffer compressedBuffer = this.compressedBuffer;
-		this.bufferProvider.releaseCompressionBuffer(this.uncompressedBuffer);
-		setUncompressedDataBuffer(null);
-		setCompressedDataBuffer(null);
+			final Buffer compressedBuffer = this.compressedBuffer;
+			this.bufferProvider.releaseCompressionBuffer(this.uncompressedBuffer);
+			setUncompressedDataBuffer(null);
+			setCompressedDataBuffer(null);
 
-		return compressedBuffer;
+			return compressedBuffer;
+		}
 	}
 
 	protected abstract int compressBytesDirect(int offset);
@@ -0,0 +1,60 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.compression;
+
+import eu.stratosphere.nephele.event.task.AbstractEvent;
+
+/**
+ * This event is sent from an input channel with dynamic compression to the connected output channel. It carries the
+ * decompression costs the receiver has observed for each internal compression library, so that the sender can take
+ * them into account when it selects the library for the next buffers.
+ */
+public final class DecompressionCostEvent extends AbstractEvent {
+
+	/**
+	 * The decompression costs in nanoseconds per uncompressed byte, indexed by the internal compression library. A
+	 * negative value indicates that no buffer of the respective library has been decompressed so far.
+	 */
+	private final double[] nanosPerByte;
+
+	/**
+	 * Constructs a new decompression cost event.
+	 * 
+	 * @param nanosPerByte
+	 *        the decompression costs in nanoseconds per uncompressed byte, indexed by the internal compression library
+	 */
+	public DecompressionCostEvent(final double[] nanosPerByte) {
+		this.nanosPerByte = nanosPerByte;
+	}
+
+	/**
+	 * Default constructor required by kryo.
+	 */
+	@SuppressWarnings("unused")
+	private DecompressionCostEvent() {
+		this.nanosPerByte = null;
+	}
+
+	/**
+	 * Returns the decompression costs observed by the receiver.
+	 * 
+	 * @return the decompression costs in nanoseconds per uncompressed byte, indexed by the internal compression
+	 *         library, negative for libraries without observations
+	 */
+	public double[] getNanosPerByte() {
+		return this.nanosPerByte;
+	}
+}
@@ -0,0 +1,228 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.compression.library.dynamic;
+
+/**
+ * A decision model that treats the choice of the compression library as a multi-armed bandit problem. Each
+ * compression library is an arm. Its reward is the effective throughput of a buffer, i.e. the number of uncompressed
+ * bytes divided by the time it takes to compress the buffer, to transfer the compressed bytes over the link and to
+ * decompress them at the receiver.
+ * <p>
+ * The compression time and the compression ratio are measured for every buffer. The link rate is estimated from the
+ * time between two buffer transfers minus the compression time. Since this interval also contains the time spent
+ * producing the records, the estimate is a lower bound of the actual link rate. The decompression costs are reported
+ * by the receivers, which periodically send the costs they observe for each library.
+ * <p>
+ * The library for the next buffer is selected with the discounted upper confidence bound (UCB) policy: Old rewards
+ * lose weight over time, so the model follows changes of the available bandwidth, while every library is tried again
+ * from time to time.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class BanditDecisionModel implements DecisionModel {
+
+	/**
+	 * The factor by which the weights of all previous observations are multiplied with every new observation.
+	 */
+	private static final double DISCOUNT = 0.99;
+
+	/**
+	 * The weight of the exploration term in the upper confidence bound.
+	 */
+	private static final double EXPLORATION = 0.5;
+
+	/**
+	 * The weight of a new observation in the moving average of the link rate.
+	 */
+	private static final double LINK_RATE_SMOOTHING = 0.2;
+
+	private final int numberOfAvailableCompressionLibraries;
+
+	/**
+	 * The discounted sum of the rewards observed for each compression library.
+	 */
+	private final double[] sumOfRewards;
+
+	/**
+	 * The discounted number of observations for each compression library.
+	 */
+	private final double[] numberOfObservations;
+
+	private double totalNumberOfObservations = 0.0;
+
+	/**
+	 * The decompression costs reported by the receivers in nanoseconds per uncompressed byte, indexed by the
+	 * compression library.
+	 */
+	private final double[] decompressionCosts;
+
+	/**
+	 * The estimated link rate in bytes per nanosecond, negative if no estimate is available yet.
+	 */
+	private double linkRate = -1.0;
+
+	private int currentSelection = 0;
+
+	private int lastCompressionLevel = -1;
+
+	private int lastUncompressedSize = 0;
+
+	private int lastCompressedSize = 0;
+
+	private long lastCompressionTime = 0L;
+
+	public BanditDecisionModel(final int numberOfAvailableCompressionLibraries) {
+
+		this.numberOfAvailableCompressionLibraries = numberOfAvailableCompressionLibraries;
+		this.sumOfRewards = new double[numberOfAvailableCompressionLibraries];
+		this.numberOfObservations = new double[numberOfAvailableCompressionLibraries];
+		this.decompressionCosts = new double[numberOfAvailableCompressionLibraries];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void reportCompressionResult(final int compressionLevel, final int uncompressedSize,
+			final int compressedSize, final long compressionTime) {
+
+		this.lastCompressionLevel = compressionLevel;
+		this.lastUncompressedSize = uncompressedSize;
+		this.lastCompressedSize = compressedSize;
+		this.lastCompressionTime = compressionTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void reportDecompressionCosts(final double[] nanosPerByte) {
+
+		final int length = Math.min(nanosPerByte.length, this.decompressionCosts.length);
+		for (int i = 0; i < length; ++i) {
+			if (nanosPerByte[i] >= 0.0) {
+				this.decompressionCosts[i] = nanosPerByte[i];
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCompressionLevelForNextBuffer(final int sizeOfLastUncompressedBuffer,
+			final long durationOfLastBufferTransfer) {
+
+		if (this.lastCompressionLevel < 0 || this.lastUncompressedSize <= 0) {
+			return this.currentSelection;
+		}
+
+		// Update the estimate of the link rate
+		final long transferTime = durationOfLastBufferTransfer - this.lastCompressionTime;
+		if (transferTime > 0L && this.lastCompressedSize > 0) {
+			final double observedLinkRate = (double) this.lastCompressedSize / (double) transferTime;
+			if (this.linkRate < 0.0) {
+				this.linkRate = observedLinkRate;
+			} else {
+				this.linkRate += LINK_RATE_SMOOTHING * (observedLinkRate - this.linkRate);
+			}
+		}
+
+		if (this.linkRate > 0.0) {
+			addObservation(this.lastCompressionLevel, computeReward());
+			this.currentSelection = selectNextCompressionLevel();
+		}
+
+		this.lastCompressionLevel = -1;
+
+		return this.currentSelection;
+	}
+
+	/**
+	 * Computes the effective throughput of the last buffer in uncompressed bytes per nanosecond.
+	 * 
+	 * @return the effective throughput of the last buffer
+	 */
+	private double computeReward() {
+
+		final double decompressionTime = this.decompressionCosts[this.lastCompressionLevel]
+			* this.lastUncompressedSize;
+		final double time = this.lastCompressionTime + this.lastCompressedSize / this.linkRate + decompressionTime;
+
+		return this.lastUncompressedSize / Math.max(time, 1.0);
+	}
+
+	private void addObservation(final int compressionLevel, final double reward) {
+
+		for (int i = 0; i < this.numberOfAvailableCompressionLibraries; ++i) {
+			this.sumOfRewards[i] *= DISCOUNT;
+			this.numberOfObservations[i] *= DISCOUNT;
+		}
+		this.totalNumberOfObservations = this.totalNumberOfObservations * DISCOUNT + 1.0;
+
+		this.sumOfRewards[compressionLevel] += reward;
+		this.numberOfObservations[compressionLevel] += 1.0;
+	}
+
+	private int selectNextCompressionLevel() {
+
+		// Try every library at least once and determine the best average reward for normalization
+		double maximumAverageReward = 0.0;
+		for (int i = 0; i < this.numberOfAvailableCompressionLibraries; ++i) {
+			if (this.numberOfObservations[i] == 0.0) {
+				return i;
+			}
+			maximumAverageReward = Math.max(maximumAverageReward, this.sumOfRewards[i] / this.numberOfObservations[i]);
+		}
+
+		if (maximumAverageReward <= 0.0) {
+			return this.currentSelection;
+		}
+
+		final double logOfTotal = Math.log(Math.max(this.totalNumberOfObservations, 1.0));
+		int nextCompressionLevel = this.currentSelection;
+		double maximumBound = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < this.numberOfAvailableCompressionLibraries; ++i) {
+
+			final double averageReward = this.sumOfRewards[i] / (this.numberOfObservations[i] * maximumAverageReward);
+			final double bound = averageReward + EXPLORATION
+				* Math.sqrt(logOfTotal / this.numberOfObservations[i]);
+			if (bound > maximumBound) {
+				maximumBound = bound;
+				nextCompressionLevel = i;
+			}
+		}
+
+		return nextCompressionLevel;
+	}
+
+	/**
+	 * Returns the average effective throughput observed for the given compression library.
+	 * 
+	 * @param compressionLevel
+	 *        the index of the compression library
+	 * @return the average effective throughput in uncompressed bytes per nanosecond or <code>0</code> if the library
+	 *         has not been used yet
+	 */
+	public double getAverageReward(final int compressionLevel) {
+
+		if (this.numberOfObservations[compressionLevel] == 0.0) {
+			return 0.0;
+		}
+
+		return this.sumOfRewards[compressionLevel] / this.numberOfObservations[compressionLevel];
+	}
+}
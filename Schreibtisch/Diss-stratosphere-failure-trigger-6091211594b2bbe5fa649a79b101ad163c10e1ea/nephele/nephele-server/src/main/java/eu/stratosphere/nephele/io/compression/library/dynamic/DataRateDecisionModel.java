@@ -31,7 +31,7 @@ public final class DataRateDecisionModel implements DecisionModel {
 
 	private final int[] backoff;
 
-	private int sumOfTimeStamps = 0;
+	private long sumOfTimeStamps = 0L;
 
 	private boolean increasedCompressionLevel = true;
 
@@ -41,7 +41,7 @@ public final class DataRateDecisionModel implements DecisionModel {
 
 	private int callCount = 0;
 
-	private int sumOfTransferDurations = 0;
+	private long sumOfTransferDurations = 0L;
 
 	private long sumOfBufferSizes = 0;
 
@@ -61,10 +61,29 @@ public final class DataRateDecisionModel implements DecisionModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public int getCompressionLevelForNextBuffer(int sizeOfLastUncompressedBuffer, int durationOfLastBufferTransfer) {
+	public void reportCompressionResult(final int compressionLevel, final int uncompressedSize,
+			final int compressedSize, final long compressionTime) {
+
+		// The model only considers the observed data rate
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void reportDecompressionCosts(final double[] nanosPerByte) {
+
+		// The model only considers the observed data rate
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCompressionLevelForNextBuffer(int sizeOfLastUncompressedBuffer, long durationOfLastBufferTransfer) {
 
 		this.sumOfTimeStamps += durationOfLastBufferTransfer;
-		if (this.sumOfTimeStamps < GRANULARITY) {
+		if (this.sumOfTimeStamps < GRANULARITY * 1000000L) {
 			this.sumOfBufferSizes += sizeOfLastUncompressedBuffer;
 			this.sumOfTransferDurations += durationOfLastBufferTransfer; // TODO: Remove possible redundancy with
 																			// sumOfTimeStamps
@@ -72,7 +91,7 @@ public final class DataRateDecisionModel implements DecisionModel {
 
 			// Calculate data rate
 			final double currentDataRate = (double) this.sumOfBufferSizes
-				/ ((double) this.sumOfTransferDurations * 128.0f);
+				/ ((double) this.sumOfTransferDurations / 1000000.0 * 128.0f);
 			if (this.lastDataRate < 0.0f) {
 				this.lastDataRate = currentDataRate;
 			}
@@ -15,7 +15,44 @@
 
 package eu.stratosphere.nephele.io.compression.library.dynamic;
 
+/**
+ * A decision model selects the compression library the {@link DynamicCompressor} applies to the next buffer.
+ */
 public interface DecisionModel {
 
-	int getCompressionLevelForNextBuffer(int sizeOfLastUncompressedBuffer, int durationOfLastBufferTransfer);
+	/**
+	 * Reports the result of compressing a single buffer. The method is called by the {@link DynamicCompressor}
+	 * after each compression, before the decision for the next buffer is requested.
+	 * 
+	 * @param compressionLevel
+	 *        the index of the compression library that compressed the buffer
+	 * @param uncompressedSize
+	 *        the number of bytes before the compression
+	 * @param compressedSize
+	 *        the number of bytes after the compression
+	 * @param compressionTime
+	 *        the time spent compressing the buffer in nanoseconds
+	 */
+	void reportCompressionResult(int compressionLevel, int uncompressedSize, int compressedSize,
+			long compressionTime);
+
+	/**
+	 * Reports the decompression costs observed by a receiver.
+	 * 
+	 * @param nanosPerByte
+	 *        the decompression costs in nanoseconds per uncompressed byte, indexed by the compression library, negative
+	 *        for libraries the receiver has no observations for
+	 */
+	void reportDecompressionCosts(double[] nanosPerByte);
+
+	/**
+	 * Returns the index of the compression library to use for the next buffer.
+	 * 
+	 * @param sizeOfLastUncompressedBuffer
+	 *        the number of bytes of the last buffer before the compression
+	 * @param durationOfLastBufferTransfer
+	 *        the time between the transfers of the last two buffers in nanoseconds
+	 * @return the index of the compression library to use for the next buffer
+	 */
+	int getCompressionLevelForNextBuffer(int sizeOfLastUncompressedBuffer, long durationOfLastBufferTransfer);
 }
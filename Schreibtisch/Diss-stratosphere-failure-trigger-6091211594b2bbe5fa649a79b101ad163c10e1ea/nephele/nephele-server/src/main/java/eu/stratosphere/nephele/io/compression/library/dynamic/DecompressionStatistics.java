@@ -0,0 +1,87 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.compression.library.dynamic;
+
+import java.util.Arrays;
+
+/**
+ * Collects the time a {@link DynamicDecompressor} spends decompressing data, separately for each internal compression
+ * library. The input channels periodically send the collected costs to their senders, whose decision models take them
+ * into account.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class DecompressionStatistics {
+
+	/**
+	 * The weight of a new observation in the moving average of the decompression costs.
+	 */
+	private static final double SMOOTHING = 0.1;
+
+	/**
+	 * The moving average of the decompression costs in nanoseconds per uncompressed byte, indexed by the internal
+	 * compression library. A negative value indicates no observations have been made so far.
+	 */
+	private final double[] nanosPerByte;
+
+	/**
+	 * Constructs new decompression statistics.
+	 * 
+	 * @param numberOfCompressionLibraries
+	 *        the number of internal compression libraries
+	 */
+	public DecompressionStatistics(final int numberOfCompressionLibraries) {
+
+		this.nanosPerByte = new double[numberOfCompressionLibraries];
+		Arrays.fill(this.nanosPerByte, -1.0);
+	}
+
+	/**
+	 * Records the time it took to decompress a single buffer.
+	 * 
+	 * @param compressionLevel
+	 *        the index of the compression library that decompressed the buffer
+	 * @param uncompressedSize
+	 *        the number of bytes after the decompression
+	 * @param decompressionTime
+	 *        the time spent decompressing the buffer in nanoseconds
+	 */
+	public synchronized void reportDecompressionTime(final int compressionLevel, final int uncompressedSize,
+			final long decompressionTime) {
+
+		if (uncompressedSize <= 0 || compressionLevel < 0 || compressionLevel >= this.nanosPerByte.length) {
+			return;
+		}
+
+		final double observation = (double) decompressionTime / (double) uncompressedSize;
+		if (this.nanosPerByte[compressionLevel] < 0.0) {
+			this.nanosPerByte[compressionLevel] = observation;
+		} else {
+			this.nanosPerByte[compressionLevel] += SMOOTHING * (observation - this.nanosPerByte[compressionLevel]);
+		}
+	}
+
+	/**
+	 * Returns the average decompression costs of all compression libraries.
+	 * 
+	 * @return a copy of the average decompression costs in nanoseconds per uncompressed byte, indexed by the
+	 *         compression library, negative for libraries which have not decompressed a buffer so far
+	 */
+	public synchronized double[] getNanosPerByte() {
+
+		return this.nanosPerByte.clone();
+	}
+}
@@ -17,7 +17,9 @@ package eu.stratosphere.nephele.io.compression.library.dynamic;
 
 import java.io.IOException;
 
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
 import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.MemoryBuffer;
 import eu.stratosphere.nephele.io.compression.CompressionBufferProvider;
 import eu.stratosphere.nephele.io.compression.CompressionException;
 import eu.stratosphere.nephele.io.compression.CompressionLibrary;
@@ -25,11 +27,25 @@ import eu.stratosphere.nephele.io.compression.Compressor;
 
 public class DynamicCompressor implements Compressor {
 
+	/**
+	 * The key to select the decision model, either <code>datarate</code> or <code>bandit</code>.
+	 */
+	public static final String DECISION_MODEL_KEY = "channel.compression.decisionModel";
+
+	/**
+	 * The default decision model.
+	 */
+	public static final String DEFAULT_DECISION_MODEL = "datarate";
+
 	private final Compressor[] compressors;
 
 	private int selectedCompressor = 0;
 
-	private long lastTimestamp = -1;
+	/**
+	 * The time of the last buffer transfer as returned by {@link System#nanoTime()}, <code>Long.MIN_VALUE</code> if
+	 * no buffer has been transferred so far.
+	 */
+	private long lastTimestamp = Long.MIN_VALUE;
 
 	private int sizeOfLastUncompressedBuffer = -1;
 
@@ -45,7 +61,24 @@ public class DynamicCompressor implements Compressor {
 		}
 
 		// Initialize decision model
-		this.decisionModel = new DataRateDecisionModel(this.compressors.length);
+		this.decisionModel = createDecisionModel(this.compressors.length);
+	}
+
+	/**
+	 * Creates the decision model configured by {@link #DECISION_MODEL_KEY}.
+	 * 
+	 * @param numberOfAvailableCompressionLibraries
+	 *        the number of compression libraries the model can choose from
+	 * @return the configured decision model
+	 */
+	static DecisionModel createDecisionModel(final int numberOfAvailableCompressionLibraries) {
+
+		final String decisionModel = GlobalConfiguration.getString(DECISION_MODEL_KEY, DEFAULT_DECISION_MODEL);
+		if ("bandit".equalsIgnoreCase(decisionModel)) {
+			return new BanditDecisionModel(numberOfAvailableCompressionLibraries);
+		}
+
+		return new DataRateDecisionModel(numberOfAvailableCompressionLibraries);
 	}
 
 	/**
@@ -54,20 +87,60 @@ public class DynamicCompressor implements Compressor {
 	@Override
 	public Buffer compress(final Buffer uncompressedData) throws IOException {
 
-		this.sizeOfLastUncompressedBuffer = uncompressedData.size();
+		this.sizeOfLastUncompressedBuffer = getNumberOfBytes(uncompressedData);
+
+		final long start = System.nanoTime();
+		final Buffer compressedData = this.compressors[this.selectedCompressor].compress(uncompressedData);
+		final long compressionTime = System.nanoTime() - start;
 
-		return this.compressors[this.selectedCompressor].compress(uncompressedData);
+		this.decisionModel.reportCompressionResult(this.selectedCompressor, this.sizeOfLastUncompressedBuffer,
+			getNumberOfBytes(compressedData), compressionTime);
+
+		return compressedData;
+	}
+
+	/**
+	 * Returns the number of bytes written to the given buffer.
+	 * 
+	 * @param buffer
+	 *        the buffer to return the number of bytes for
+	 * @return the number of bytes written to the buffer
+	 */
+	private static int getNumberOfBytes(final Buffer buffer) {
+
+		if (buffer instanceof MemoryBuffer) {
+			final MemoryBuffer memoryBuffer = (MemoryBuffer) buffer;
+			if (memoryBuffer.isInWriteMode()) {
+				return memoryBuffer.getByteBuffer().position();
+			}
+		}
+
+		return buffer.size();
 	}
 
+	/**
+	 * Forwards the decompression costs reported by a receiver to the decision model.
+	 * 
+	 * @param nanosPerByte
+	 *        the decompression costs in nanoseconds per uncompressed byte, indexed by the internal compression library
+	 */
+	public void reportDecompressionCosts(final double[] nanosPerByte) {
+
+		this.decisionModel.reportDecompressionCosts(nanosPerByte);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
 	@Override
 	public int getCurrentInternalCompressionLibraryIndex() {
 
 		int oldVal = this.selectedCompressor;
-		final long timestamp = System.currentTimeMillis();
+		final long timestamp = System.nanoTime();
 
-		if (this.lastTimestamp > 0) {
+		if (this.lastTimestamp != Long.MIN_VALUE) {
 			this.selectedCompressor = this.decisionModel.getCompressionLevelForNextBuffer(
-				this.sizeOfLastUncompressedBuffer, (int) (timestamp - this.lastTimestamp));
+				this.sizeOfLastUncompressedBuffer, timestamp - this.lastTimestamp);
 		}
 
 		this.lastTimestamp = timestamp;
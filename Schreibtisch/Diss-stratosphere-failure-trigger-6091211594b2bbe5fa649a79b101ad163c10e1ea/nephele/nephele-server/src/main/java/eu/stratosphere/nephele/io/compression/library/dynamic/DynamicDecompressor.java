@@ -29,6 +29,11 @@ public class DynamicDecompressor implements Decompressor {
 
 	private int selectedDecompressor = 0;
 
+	/**
+	 * The decompression costs observed for each internal compression library.
+	 */
+	private final DecompressionStatistics statistics;
+
 	public DynamicDecompressor(final CompressionLibrary[] compressionLibraries,
 			final CompressionBufferProvider bufferProvider) throws CompressionException {
 
@@ -37,6 +42,8 @@ public class DynamicDecompressor implements Decompressor {
 		for (int i = 0; i < this.decompressors.length; i++) {
 			this.decompressors[i] = compressionLibraries[i].createNewDecompressor(bufferProvider);
 		}
+
+		this.statistics = new DecompressionStatistics(this.decompressors.length);
 	}
 
 	/**
@@ -45,7 +52,28 @@ public class DynamicDecompressor implements Decompressor {
 	@Override
 	public Buffer decompress(final Buffer compressedData) throws IOException {
 
-		return this.decompressors[this.selectedDecompressor].decompress(compressedData);
+		final long start = System.nanoTime();
+		final Buffer uncompressedData = this.decompressors[this.selectedDecompressor].decompress(compressedData);
+		final long decompressionTime = System.nanoTime() - start;
+
+		// The stub library does not touch the data, so there is nothing to measure
+		if (uncompressedData != compressedData) {
+			this.statistics.reportDecompressionTime(this.selectedDecompressor, uncompressedData.size(),
+				decompressionTime);
+		}
+
+		return uncompressedData;
+	}
+
+	/**
+	 * Returns the average costs this decompressor has observed for each internal compression library.
+	 * 
+	 * @return the decompression costs in nanoseconds per uncompressed byte, indexed by the internal compression
+	 *         library, negative for libraries which have not decompressed a buffer so far
+	 */
+	public double[] getDecompressionCosts() {
+
+		return this.statistics.getNanosPerByte();
 	}
 
 	/**
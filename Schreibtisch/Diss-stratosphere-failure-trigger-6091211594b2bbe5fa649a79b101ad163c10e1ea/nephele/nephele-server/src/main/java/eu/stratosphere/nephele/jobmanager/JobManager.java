@@ -62,6 +62,7 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import eu.stratosphere.nephele.checkpointing.CheckpointCostModel;
 import eu.stratosphere.nephele.client.AbstractJobResult;
 import eu.stratosphere.nephele.client.JobCancelResult;
 import eu.stratosphere.nephele.client.JobProgressResult;
@@ -128,6 +129,7 @@ import eu.stratosphere.nephele.rpc.ServerTypeUtils;
 import eu.stratosphere.nephele.taskmanager.AbstractTaskResult;
 import eu.stratosphere.nephele.taskmanager.TaskCancelResult;
 import eu.stratosphere.nephele.taskmanager.TaskCheckpointState;
+import eu.stratosphere.nephele.taskmanager.TaskCheckpointStatistics;
 import eu.stratosphere.nephele.taskmanager.TaskExecutionState;
 import eu.stratosphere.nephele.taskmanager.TaskKillResult;
 import eu.stratosphere.nephele.taskmanager.TaskSubmissionResult;
@@ -1972,6 +1974,32 @@ public class JobManager implements DeploymentManager, ExtendedManagementProtocol
 		executionGraph.executeCommand(taskStateChangeRunnable);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean requestCheckpointDecision(final TaskCheckpointStatistics taskCheckpointStatistics)
+			throws IOException {
+
+		final JobID jobID = taskCheckpointStatistics.getJobID();
+		final ExecutionGraph executionGraph = this.scheduler.getExecutionGraphByID(jobID);
+		if (executionGraph == null) {
+			LOG.error("Cannot find execution graph for job " + jobID + " to decide on checkpoint");
+			return false;
+		}
+
+		final ExecutionVertex vertex = executionGraph.getVertexByID(taskCheckpointStatistics.getVertexID());
+		if (vertex == null) {
+			LOG.error("Cannot find vertex with ID " + taskCheckpointStatistics.getVertexID()
+				+ " to decide on checkpoint");
+			return false;
+		}
+
+		vertex.setCheckpointStatistics(taskCheckpointStatistics);
+
+		return CheckpointCostModel.decide(vertex);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -21,6 +21,7 @@ import eu.stratosphere.nephele.instance.HardwareDescription;
 import eu.stratosphere.nephele.instance.InstanceConnectionInfo;
 import eu.stratosphere.nephele.rpc.RPCProtocol;
 import eu.stratosphere.nephele.taskmanager.TaskCheckpointState;
+import eu.stratosphere.nephele.taskmanager.TaskCheckpointStatistics;
 import eu.stratosphere.nephele.taskmanager.TaskExecutionState;
 
 /**
@@ -70,4 +71,18 @@ public interface JobManagerProtocol extends RPCProtocol {
 	 *         thrown if the caller is interrupted while waiting for the response of the remote procedure call
 	 */
 	void updateCheckpointState(TaskCheckpointState taskCheckpointState) throws IOException, InterruptedException;
+
+	/**
+	 * Requests a cost-based checkpoint decision for a task from the job manager.
+	 * 
+	 * @param taskCheckpointStatistics
+	 *        the measurements of the task the decision is requested for
+	 * @return <code>true</code> if the task shall write its checkpoint, <code>false</code> otherwise
+	 * @throws IOException
+	 *         thrown if an error occurs during this remote procedure call
+	 * @throws InterruptedException
+	 *         thrown if the caller is interrupted while waiting for the response of the remote procedure call
+	 */
+	boolean requestCheckpointDecision(TaskCheckpointStatistics taskCheckpointStatistics) throws IOException,
+			InterruptedException;
 }
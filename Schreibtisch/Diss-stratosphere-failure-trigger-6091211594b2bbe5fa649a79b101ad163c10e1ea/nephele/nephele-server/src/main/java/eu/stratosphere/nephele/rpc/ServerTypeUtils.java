@@ -34,6 +34,7 @@ import eu.stratosphere.nephele.taskmanager.AbstractTaskResult;
 import eu.stratosphere.nephele.taskmanager.TaskCancelResult;
 import eu.stratosphere.nephele.taskmanager.TaskCheckpointResult;
 import eu.stratosphere.nephele.taskmanager.TaskCheckpointState;
+import eu.stratosphere.nephele.taskmanager.TaskCheckpointStatistics;
 import eu.stratosphere.nephele.taskmanager.TaskExecutionState;
 import eu.stratosphere.nephele.taskmanager.TaskKillResult;
 import eu.stratosphere.nephele.taskmanager.TaskSubmissionResult;
@@ -81,6 +82,7 @@ public class ServerTypeUtils {
 		types.add(RemoteReceiver.class);
 		types.add(TaskCancelResult.class);
 		types.add(TaskCheckpointState.class);
+		types.add(TaskCheckpointStatistics.class);
 		types.add(FailureReport.class);
 		types.add(TaskDeploymentDescriptor.class);
 		types.add(TaskExecutionState.class);
@@ -16,6 +16,7 @@
 package eu.stratosphere.nephele.services.memorymanager.spi;
 
 
+import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -48,6 +49,11 @@ import eu.stratosphere.nephele.template.AbstractInvokable;
  * the manager works 2 dimensional byte array (i.e. with memory chunks). Please be aware that in order to keep the array
  * access methods in the {@link DefaultMemorySegment} fast and simple, the actual allocated memory segments must not
  * exceed 2GB and must be contained in a single memory chunk.
+ * <p>
+ * Optionally, the memory manager allocates its pages as direct (off-heap) memory. The off-heap memory is
+ * allocated in large chunks that are sliced into pages, so that the managed memory is not subject to
+ * garbage collection. The JVM's direct memory limit (<code>-XX:MaxDirectMemorySize</code>) must be large enough
+ * to hold the configured amount of memory.
  * 
  * @author Alexander Alexandrov
  * @author Stephan Ewen
@@ -64,6 +70,11 @@ public class DefaultMemoryManager implements MemoryManager
 	 */
 	public static final int MIN_PAGE_SIZE = 4 * 1024;
 	
+	/**
+	 * The maximal size of a chunk of direct memory that is sliced into pages. Currently set to 1 GiByte.
+	 */
+	private static final int MAX_OFF_HEAP_CHUNK_SIZE = 1024 * 1024 * 1024;
+	
 	/**
 	 * The Log.
 	 */
@@ -75,6 +86,8 @@ public class DefaultMemoryManager implements MemoryManager
 	
 	private final ArrayDeque<byte[]> freeSegments;	// the free memory segments
 	
+	private final ArrayDeque<ByteBuffer> freeOffHeapSegments;	// the free off-heap memory segments
+	
 	private final HashMap<AbstractInvokable, Set<DefaultMemorySegment>> allocatedSegments;
 	
 	private final long roundingMask;		// mask used to round down sizes to multiples of the page size
@@ -85,6 +98,8 @@ public class DefaultMemoryManager implements MemoryManager
 	
 	private final int totalNumPages;		// The initial total size, for verification.
 	
+	private final boolean offHeap;			// flag whether the pages are allocated as direct memory
+	
 	private boolean isShutDown;				// flag whether the close() has already been invoked.
 
 	// ------------------------------------------------------------------------
@@ -106,7 +121,19 @@ public class DefaultMemoryManager implements MemoryManager
 	 * @param memorySize The total size of the memory to be managed by this memory manager.
 	 * @param pageSize The size of the pages handed out by the memory manager.
 	 */
-	public DefaultMemoryManager(long memorySize, int pageSize)
+	public DefaultMemoryManager(long memorySize, int pageSize) {
+		this(memorySize, pageSize, false);
+	}
+	
+	/**
+	 * Creates a memory manager with the given capacity and given page size, allocating its memory either
+	 * on the heap or as direct (off-heap) memory.
+	 * 
+	 * @param memorySize The total size of the memory to be managed by this memory manager.
+	 * @param pageSize The size of the pages handed out by the memory manager.
+	 * @param offHeap True, if the memory is to be allocated off-heap, false, if it is to be allocated on the heap.
+	 */
+	public DefaultMemoryManager(long memorySize, int pageSize, boolean offHeap)
 	{
 		// sanity checks
 		if (memorySize <= 0) {
@@ -134,14 +161,39 @@ public class DefaultMemoryManager implements MemoryManager
 		}
 		
 		// initialize the free segments and allocated segments tracking structures
-		this.freeSegments = new ArrayDeque<byte[]>();
+		this.offHeap = offHeap;
+		this.freeSegments = new ArrayDeque<byte[]>(offHeap ? 0 : this.totalNumPages);
+		this.freeOffHeapSegments = new ArrayDeque<ByteBuffer>(offHeap ? this.totalNumPages : 0);
 		this.allocatedSegments = new HashMap<AbstractInvokable, Set<DefaultMemorySegment>>();
 
-		
-		// add the full chunks
-		for (int i = 0; i < this.totalNumPages; i++) {
-			// allocate memory of the specified size
-			this.freeSegments.add(new byte[this.pageSize]);
+		if (offHeap) {
+			// allocate the direct memory in large chunks and slice them into pages
+			final int pagesPerChunk = MAX_OFF_HEAP_CHUNK_SIZE / this.pageSize;
+			int remainingPages = this.totalNumPages;
+			try {
+				while (remainingPages > 0) {
+					final int numPagesInChunk = Math.min(remainingPages, pagesPerChunk);
+					final ByteBuffer chunk = ByteBuffer.allocateDirect(numPagesInChunk * this.pageSize);
+					for (int i = 0; i < numPagesInChunk; i++) {
+						chunk.limit((i + 1) * this.pageSize);
+						chunk.position(i * this.pageSize);
+						this.freeOffHeapSegments.add(chunk.slice());
+					}
+					remainingPages -= numPagesInChunk;
+				}
+			}
+			catch (OutOfMemoryError oome) {
+				this.freeOffHeapSegments.clear();
+				throw new IllegalArgumentException("Could not allocate " + memorySize + " bytes of off-heap memory. " +
+					"Check the JVM's direct memory limit (-XX:MaxDirectMemorySize).", oome);
+			}
+		}
+		else {
+			// add the full chunks
+			for (int i = 0; i < this.totalNumPages; i++) {
+				// allocate memory of the specified size
+				this.freeSegments.add(new byte[this.pageSize]);
+			}
 		}
 	}
 
@@ -161,6 +213,7 @@ public class DefaultMemoryManager implements MemoryManager
 				// mark as shutdown and release memory
 				this.isShutDown = true;
 				this.freeSegments.clear();
+				this.freeOffHeapSegments.clear();
 				
 				// go over all allocated segments and release them
 				for (Set<DefaultMemorySegment> segments : this.allocatedSegments.values()) {
@@ -179,7 +232,7 @@ public class DefaultMemoryManager implements MemoryManager
 	public boolean verifyEmpty()
 	{
 		synchronized (this.lock) {
-			return this.freeSegments.size() == this.totalNumPages;
+			return getNumberOfFreePages() == this.totalNumPages;
 		}
 	}
 
@@ -221,9 +274,9 @@ public class DefaultMemoryManager implements MemoryManager
 				throw new IllegalStateException("Memory manager has been shut down.");
 			}
 			
-			if (numPages > this.freeSegments.size()) {
+			if (numPages > getNumberOfFreePages()) {
 				throw new MemoryAllocationException("Could not allocate " + numPages + " pages. Only " + 
-					this.freeSegments.size() + " pages are remaining.");
+					getNumberOfFreePages() + " pages are remaining.");
 			}
 			
 			Set<DefaultMemorySegment> segmentsForOwner = this.allocatedSegments.get(owner);
@@ -233,8 +286,9 @@ public class DefaultMemoryManager implements MemoryManager
 			}
 			
 			for (int i = numPages; i > 0; i--) {
-				byte[] buffer = this.freeSegments.poll();
-				final DefaultMemorySegment segment = new DefaultMemorySegment(owner, buffer, 0, this.pageSize);
+				final DefaultMemorySegment segment = this.offHeap ?
+					new DefaultMemorySegment(owner, this.freeOffHeapSegments.poll(), 0, this.pageSize) :
+					new DefaultMemorySegment(owner, this.freeSegments.poll(), 0, this.pageSize);
 				target.add(segment);
 				segmentsForOwner.add(segment);
 			}
@@ -300,8 +354,7 @@ public class DefaultMemoryManager implements MemoryManager
 			}
 			finally {
 				// release the memory in any case
-				byte[] buffer = defSeg.destroy();
-				this.freeSegments.add(buffer);
+				returnMemory(defSeg);
 			}
 		}
 		// -------------------- END CRITICAL SECTION -------------------
@@ -362,8 +415,7 @@ public class DefaultMemoryManager implements MemoryManager
 				}
 				finally {
 					// release the memory in any case
-					byte[] buffer = defSeg.destroy();
-					this.freeSegments.add(buffer);
+					returnMemory(defSeg);
 				}
 			}
 		}
@@ -393,8 +445,7 @@ public class DefaultMemoryManager implements MemoryManager
 			
 			// free each segment
 			for (DefaultMemorySegment seg : segments) {
-				final byte[] buffer = seg.destroy();
-				this.freeSegments.add(buffer);
+				returnMemory(seg);
 			}
 			
 			segments.clear();
@@ -428,8 +479,29 @@ public class DefaultMemoryManager implements MemoryManager
 		return numBytes & this.roundingMask;
 	}
 	
+	/**
+	 * Checks whether this memory manager allocates its pages as direct (off-heap) memory.
+	 * 
+	 * @return True, if the pages are allocated off-heap, false if they are allocated on the heap.
+	 */
+	public boolean isOffHeap() {
+		return this.offHeap;
+	}
+	
 	// ------------------------------------------------------------------------
 	
+	private final int getNumberOfFreePages() {
+		return this.offHeap ? this.freeOffHeapSegments.size() : this.freeSegments.size();
+	}
+	
+	private final void returnMemory(DefaultMemorySegment segment) {
+		if (this.offHeap) {
+			this.freeOffHeapSegments.add(segment.destroyOffHeap());
+		} else {
+			this.freeSegments.add(segment.destroy());
+		}
+	}
+	
 	private final int getNumPages(long numBytes)
 	{
 		if (numBytes < 0)
@@ -453,6 +525,11 @@ public class DefaultMemoryManager implements MemoryManager
 			this.owner = owner;
 		}
 		
+		DefaultMemorySegment(AbstractInvokable owner, ByteBuffer offHeapMemory, int offset, int size) {
+			super(offHeapMemory, offset, size);
+			this.owner = owner;
+		}
+		
 		byte[] destroy()
 		{
 			final byte[] buffer = this.memory;
@@ -460,5 +537,12 @@ public class DefaultMemoryManager implements MemoryManager
 			this.wrapper = null;
 			return buffer;
 		}
+		
+		ByteBuffer destroyOffHeap()
+		{
+			final ByteBuffer buffer = this.offHeapMemory;
+			this.offHeapMemory = null;
+			return buffer;
+		}
 	}
 }
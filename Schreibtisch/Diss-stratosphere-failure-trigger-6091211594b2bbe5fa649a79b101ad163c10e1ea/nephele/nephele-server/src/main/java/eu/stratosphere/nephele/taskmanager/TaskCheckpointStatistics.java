@@ -0,0 +1,126 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager;
+
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.jobgraph.JobID;
+
+/**
+ * This class is used to report the measurements the job manager requires for a cost-based checkpoint decision from
+ * the task manager to the job manager.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class TaskCheckpointStatistics {
+
+	private final JobID jobID;
+
+	private final ExecutionVertexID executionVertexID;
+
+	private final long runtime;
+
+	private final long amountOfDataReceived;
+
+	private final long amountOfDataTransmitted;
+
+	/**
+	 * Creates a new task checkpoint statistics object.
+	 * 
+	 * @param jobID
+	 *        the ID of the job the task belongs to
+	 * @param id
+	 *        the ID of the task the statistics refer to
+	 * @param runtime
+	 *        the CPU time the task has consumed so far in milliseconds
+	 * @param amountOfDataReceived
+	 *        the number of bytes the task has received through its input channels so far
+	 * @param amountOfDataTransmitted
+	 *        the number of bytes the task has transmitted through its output channels so far
+	 */
+	public TaskCheckpointStatistics(final JobID jobID, final ExecutionVertexID id, final long runtime,
+			final long amountOfDataReceived, final long amountOfDataTransmitted) {
+
+		if (jobID == null) {
+			throw new IllegalArgumentException("Argument jobID must not be null");
+		}
+
+		if (id == null) {
+			throw new IllegalArgumentException("Argument id must not be null");
+		}
+
+		this.jobID = jobID;
+		this.executionVertexID = id;
+		this.runtime = runtime;
+		this.amountOfDataReceived = amountOfDataReceived;
+		this.amountOfDataTransmitted = amountOfDataTransmitted;
+	}
+
+	/**
+	 * Creates empty task checkpoint statistics.
+	 */
+	public TaskCheckpointStatistics() {
+		this.jobID = null;
+		this.executionVertexID = null;
+		this.runtime = 0L;
+		this.amountOfDataReceived = 0L;
+		this.amountOfDataTransmitted = 0L;
+	}
+
+	/**
+	 * Returns the ID of the job the statistics belong to.
+	 * 
+	 * @return the ID of the job the statistics belong to
+	 */
+	public JobID getJobID() {
+		return this.jobID;
+	}
+
+	/**
+	 * Returns the ID of the vertex the statistics refer to.
+	 * 
+	 * @return the ID of the vertex the statistics refer to
+	 */
+	public ExecutionVertexID getVertexID() {
+		return this.executionVertexID;
+	}
+
+	/**
+	 * Returns the CPU time the task has consumed so far.
+	 * 
+	 * @return the CPU time the task has consumed so far in milliseconds
+	 */
+	public long getRuntime() {
+		return this.runtime;
+	}
+
+	/**
+	 * Returns the number of bytes the task has received so far.
+	 * 
+	 * @return the number of bytes the task has received so far
+	 */
+	public long getAmountOfDataReceived() {
+		return this.amountOfDataReceived;
+	}
+
+	/**
+	 * Returns the number of bytes the task has transmitted so far.
+	 * 
+	 * @return the number of bytes the task has transmitted so far
+	 */
+	public long getAmountOfDataTransmitted() {
+		return this.amountOfDataTransmitted;
+	}
+}
@@ -295,9 +295,13 @@ public class TaskManager implements TaskOperationProtocol {
 		this.hardwareDescription = hardware;
 
 		// Initialize the memory manager
-		LOG.info("Initializing memory manager with " + (hardware.getSizeOfFreeMemory() >>> 20) + " megabytes of memory");
+		final boolean offHeap = GlobalConfiguration.getBoolean(ConfigConstants.MEMORY_MANAGER_OFF_HEAP_KEY,
+			ConfigConstants.DEFAULT_MEMORY_MANAGER_OFF_HEAP);
+		LOG.info("Initializing memory manager with " + (hardware.getSizeOfFreeMemory() >>> 20) + " megabytes of "
+			+ (offHeap ? "off-heap " : "") + "memory");
 		try {
-			this.memoryManager = new DefaultMemoryManager(hardware.getSizeOfFreeMemory());
+			this.memoryManager = new DefaultMemoryManager(hardware.getSizeOfFreeMemory(),
+				DefaultMemoryManager.DEFAULT_PAGE_SIZE, offHeap);
 		} catch (RuntimeException rte) {
 			LOG.fatal("Unable to initialize memory manager with " + (hardware.getSizeOfFreeMemory() >>> 20)
 				+ " megabytes of memory", rte);
@@ -785,6 +789,23 @@ public class TaskManager implements TaskOperationProtocol {
 		this.jobManager.updateCheckpointState(new TaskCheckpointState(jobID, id, newCheckpointState));
 	}
 
+	/**
+	 * Requests a cost-based checkpoint decision for a task from the job manager.
+	 * 
+	 * @param taskCheckpointStatistics
+	 *        the measurements of the task the decision is requested for
+	 * @return <code>true</code> if the task shall write its checkpoint, <code>false</code> otherwise
+	 * @throws IOException
+	 *         thrown if an error occurs while communicating with the job manager
+	 * @throws InterruptedException
+	 *         thrown if the caller is interrupted while waiting for the job manager's decision
+	 */
+	public boolean requestCheckpointDecision(final TaskCheckpointStatistics taskCheckpointStatistics)
+			throws IOException, InterruptedException {
+
+		return this.jobManager.requestCheckpointDecision(taskCheckpointStatistics);
+	}
+
 	/**
 	 * Shuts the task manager down.
 	 */
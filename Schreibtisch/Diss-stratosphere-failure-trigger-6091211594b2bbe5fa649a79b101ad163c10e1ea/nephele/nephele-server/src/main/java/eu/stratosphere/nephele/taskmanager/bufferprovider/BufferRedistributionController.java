@@ -0,0 +1,395 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.bufferprovider;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.stratosphere.nephele.io.AbstractID;
+
+/**
+ * The buffer redistribution controller periodically shifts designated buffers from local buffer pools which hold
+ * idle buffers to local buffer pools whose requesters have been blocked waiting for buffers.
+ * <p>
+ * In each round, the controller measures for every {@link LocalBufferPoolOwner} how long its requesters have been
+ * blocked since the last round and how many of them are currently waiting. Pools without any waiting donate a
+ * fraction of their cached, unused buffers, but never drop below the owner's minimum number of required buffers.
+ * The donated buffers are distributed among the starving pools in proportion to their wait times. The total
+ * number of designated buffers stays the same, so the controller only refines the static distribution that is
+ * computed whenever a task is registered or unregistered. The controller remembers the buffers it has shifted to or
+ * from each owner, so that the shifts survive a recomputation of the static distribution.
+ * <p>
+ * The controller synchronizes on the map of local buffer pool owners, which must also be held while the static
+ * distribution is computed.
+ */
+public final class BufferRedistributionController extends TimerTask {
+
+	/**
+	 * The log object used to report the redistribution decisions.
+	 */
+	private static final Log LOG = LogFactory.getLog(BufferRedistributionController.class);
+
+	/**
+	 * The fraction of its cached buffers that an idle local buffer pool donates in one round.
+	 */
+	private static final double DONATION_FRACTION = 0.5;
+
+	/**
+	 * The minimum wait time in nanoseconds per round for which a local buffer pool is considered starving.
+	 */
+	private static final long MINIMUM_WAIT_TIME = 1000000L; // 1 ms
+
+	/**
+	 * The number of most recent decisions reported by {@link #logBufferUtilization()}.
+	 */
+	private static final int NUMBER_OF_REPORTED_DECISIONS = 32;
+
+	/**
+	 * The local buffer pool owners to redistribute the buffers among.
+	 */
+	private final Map<? extends AbstractID, LocalBufferPoolOwner> localBufferPoolOwners;
+
+	/**
+	 * The interval between two rounds in milliseconds.
+	 */
+	private final long interval;
+
+	/**
+	 * The accumulated wait times of the owners' local buffer pools at the last round.
+	 */
+	private final Map<LocalBufferPoolOwner, Long> lastWaitTimes = new IdentityHashMap<LocalBufferPoolOwner, Long>();
+
+	/**
+	 * The number of designated buffers the controller has shifted to (positive) or from (negative) each owner.
+	 */
+	private final Map<LocalBufferPoolOwner, Integer> adjustments = new IdentityHashMap<LocalBufferPoolOwner, Integer>();
+
+	/**
+	 * The most recent redistribution decisions.
+	 */
+	private final Deque<String> decisions = new ArrayDeque<String>();
+
+	private Timer timer = null;
+
+	private int round = 0;
+
+	/**
+	 * Constructs a new buffer redistribution controller. The rounds are scheduled once {@link #start()} is called.
+	 * 
+	 * @param localBufferPoolOwners
+	 *        the local buffer pool owners to redistribute the buffers among
+	 * @param interval
+	 *        the interval between two rounds in milliseconds
+	 */
+	public BufferRedistributionController(final Map<? extends AbstractID, LocalBufferPoolOwner> localBufferPoolOwners,
+			final long interval) {
+
+		this.localBufferPoolOwners = localBufferPoolOwners;
+		this.interval = interval;
+	}
+
+	/**
+	 * Starts running the rounds of the controller in the configured interval.
+	 */
+	public void start() {
+
+		this.timer = new Timer("Buffer Redistribution Controller", true);
+		this.timer.schedule(this, this.interval, this.interval);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+
+		try {
+			redistribute();
+		} catch (Throwable t) {
+			LOG.error("Error while redistributing buffers: " + t.getMessage(), t);
+		}
+	}
+
+	/**
+	 * Runs one round of the controller: measures the wait times of all local buffer pools and shifts designated
+	 * buffers from idle to starving pools.
+	 */
+	public void redistribute() {
+
+		synchronized (this.localBufferPoolOwners) {
+
+			++this.round;
+
+			final List<Sample> starving = new ArrayList<Sample>();
+			final List<Sample> donors = new ArrayList<Sample>();
+			final long intervalNanos = this.interval * 1000000L;
+
+			final Map<LocalBufferPoolOwner, Long> waitTimes = new IdentityHashMap<LocalBufferPoolOwner, Long>();
+
+			final Iterator<? extends Map.Entry<? extends AbstractID, LocalBufferPoolOwner>> it = this.localBufferPoolOwners
+				.entrySet().iterator();
+			while (it.hasNext()) {
+
+				final Map.Entry<? extends AbstractID, LocalBufferPoolOwner> entry = it.next();
+				final LocalBufferPoolOwner owner = entry.getValue();
+				final LocalBufferPool pool = owner.getLocalBufferPool();
+				if (pool == null) {
+					continue;
+				}
+
+				final long waitTime = pool.getAccumulatedWaitTime();
+				waitTimes.put(owner, Long.valueOf(waitTime));
+				final Long lastWaitTime = this.lastWaitTimes.get(owner);
+				final long waitTimeInRound = (lastWaitTime == null) ? 0L : waitTime - lastWaitTime.longValue();
+				final int waiters = pool.getNumberOfBufferWaiters();
+
+				final Sample sample = new Sample(entry.getKey(), owner, pool, waitTimeInRound, waiters);
+
+				if (waitTimeInRound >= MINIMUM_WAIT_TIME || waiters > 0) {
+					// Currently waiting requesters count as if they had waited for the entire round
+					sample.weight = waitTimeInRound + waiters * intervalNanos;
+					starving.add(sample);
+				} else {
+					final int minimum = Math.max(1, owner.getMinimumNumberOfRequiredBuffers());
+					final int spare = Math.min(pool.getDesignatedNumberOfBuffers() - minimum,
+						(int) Math.ceil(pool.getNumberOfAvailableBuffers() * DONATION_FRACTION));
+					if (spare > 0) {
+						sample.spare = spare;
+						donors.add(sample);
+					}
+				}
+			}
+
+			// Forget the owners which have been unregistered in the meantime
+			this.lastWaitTimes.clear();
+			this.lastWaitTimes.putAll(waitTimes);
+
+			if (starving.isEmpty() || donors.isEmpty()) {
+				return;
+			}
+
+			// Collect the donations
+			int donated = 0;
+			for (final Sample donor : donors) {
+				changeDesignatedNumberOfBuffers(donor, -donor.spare);
+				donated += donor.spare;
+			}
+
+			// Distribute them in proportion to the wait times, the remainder goes to the pool that waited longest
+			long totalWeight = 0L;
+			Sample longestWaiting = null;
+			for (final Sample sample : starving) {
+				totalWeight += sample.weight;
+				if (longestWaiting == null || sample.weight > longestWaiting.weight) {
+					longestWaiting = sample;
+				}
+			}
+
+			int remaining = donated;
+			for (final Sample sample : starving) {
+				final int share = (int) (donated * sample.weight / totalWeight);
+				sample.share = share;
+				remaining -= share;
+			}
+			longestWaiting.share += remaining;
+
+			for (final Sample sample : starving) {
+				if (sample.share > 0) {
+					changeDesignatedNumberOfBuffers(sample, sample.share);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of buffers to designate to the given owner when the static distribution assigns it the
+	 * given number of buffers. The buffers which the controller has shifted to or from the owner are added to the
+	 * static share, but the owner never drops below its minimum number of required buffers. The caller must hold the
+	 * lock on the map of local buffer pool owners and call {@link #rebalanceAdjustments()} before it computes the
+	 * static distribution.
+	 * 
+	 * @param owner
+	 *        the owner to compute the designated number of buffers for
+	 * @param staticNumberOfBuffers
+	 *        the number of buffers the static distribution assigns to the owner
+	 * @return the number of buffers to designate to the owner
+	 */
+	public int getAdjustedNumberOfBuffers(final LocalBufferPoolOwner owner, final int staticNumberOfBuffers) {
+
+		final Integer adjustment = this.adjustments.get(owner);
+		if (adjustment == null) {
+			return staticNumberOfBuffers;
+		}
+
+		final int minimum = Math.max(1, owner.getMinimumNumberOfRequiredBuffers());
+		final int adjusted = Math.max(minimum, staticNumberOfBuffers + adjustment.intValue());
+		if (adjusted == staticNumberOfBuffers) {
+			this.adjustments.remove(owner);
+		} else {
+			this.adjustments.put(owner, Integer.valueOf(adjusted - staticNumberOfBuffers));
+		}
+
+		return adjusted;
+	}
+
+	/**
+	 * Forgets the shifts of owners which have been unregistered. Since the buffers an unregistered owner has received
+	 * or donated no longer have a counterpart, the shifts of the remaining owners on the same side are scaled down
+	 * until the buffers shifted to owners match the buffers shifted from owners again. The caller must hold the lock
+	 * on the map of local buffer pool owners.
+	 */
+	public void rebalanceAdjustments() {
+
+		final Map<LocalBufferPoolOwner, Boolean> registered = new IdentityHashMap<LocalBufferPoolOwner, Boolean>();
+		for (final LocalBufferPoolOwner owner : this.localBufferPoolOwners.values()) {
+			registered.put(owner, Boolean.TRUE);
+		}
+
+		int gained = 0;
+		int lost = 0;
+		final Iterator<Map.Entry<LocalBufferPoolOwner, Integer>> it = this.adjustments.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<LocalBufferPoolOwner, Integer> entry = it.next();
+			if (!registered.containsKey(entry.getKey())) {
+				it.remove();
+				continue;
+			}
+			final int adjustment = entry.getValue().intValue();
+			if (adjustment > 0) {
+				gained += adjustment;
+			} else {
+				lost -= adjustment;
+			}
+		}
+
+		if (gained == lost) {
+			return;
+		}
+
+		final boolean scaleGains = gained > lost;
+		final long from = scaleGains ? gained : lost;
+		final long to = scaleGains ? lost : gained;
+
+		final Iterator<Map.Entry<LocalBufferPoolOwner, Integer>> scaleIterator = this.adjustments.entrySet().iterator();
+		while (scaleIterator.hasNext()) {
+			final Map.Entry<LocalBufferPoolOwner, Integer> entry = scaleIterator.next();
+			final int adjustment = entry.getValue().intValue();
+			if ((adjustment > 0) != scaleGains) {
+				continue;
+			}
+			final int scaled = (int) (adjustment * to / from);
+			if (scaled == 0) {
+				scaleIterator.remove();
+			} else {
+				entry.setValue(Integer.valueOf(scaled));
+			}
+		}
+	}
+
+	/**
+	 * Stops the controller.
+	 */
+	public void shutdown() {
+
+		if (this.timer != null) {
+			this.timer.cancel();
+		}
+	}
+
+	/**
+	 * Writes the most recent redistribution decisions to the console. This method is primarily for debugging
+	 * purposes.
+	 */
+	public void logBufferUtilization() {
+
+		synchronized (this.localBufferPoolOwners) {
+
+			System.out.println("\tBuffer redistribution decisions (" + this.round + " rounds):");
+
+			final Iterator<String> it = this.decisions.iterator();
+			while (it.hasNext()) {
+				System.out.println("\t\t" + it.next());
+			}
+		}
+	}
+
+	private void changeDesignatedNumberOfBuffers(final Sample sample, final int delta) {
+
+		final int designated = sample.pool.getDesignatedNumberOfBuffers();
+		sample.pool.setDesignatedNumberOfBuffers(designated + delta);
+
+		final Integer adjustment = this.adjustments.get(sample.owner);
+		final int newAdjustment = (adjustment == null ? 0 : adjustment.intValue()) + delta;
+		if (newAdjustment == 0) {
+			this.adjustments.remove(sample.owner);
+		} else {
+			this.adjustments.put(sample.owner, Integer.valueOf(newAdjustment));
+		}
+
+		final String decision = "Round " + this.round + ": " + sample.id + " designated " + designated + " -> "
+			+ (designated + delta) + " (waited " + (sample.waitTime / 1000000L) + " ms, " + sample.waiters
+			+ " waiting)";
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(decision);
+		}
+
+		if (this.decisions.size() == NUMBER_OF_REPORTED_DECISIONS) {
+			this.decisions.removeFirst();
+		}
+		this.decisions.addLast(decision);
+	}
+
+	/**
+	 * The measurements of one local buffer pool in one round.
+	 */
+	private static final class Sample {
+
+		private final AbstractID id;
+
+		private final LocalBufferPoolOwner owner;
+
+		private final LocalBufferPool pool;
+
+		private final long waitTime;
+
+		private final int waiters;
+
+		private long weight;
+
+		private int spare;
+
+		private int share;
+
+		private Sample(final AbstractID id, final LocalBufferPoolOwner owner, final LocalBufferPool pool,
+				final long waitTime, final int waiters) {
+			this.id = id;
+			this.owner = owner;
+			this.pool = pool;
+			this.waitTime = waitTime;
+			this.waiters = waiters;
+		}
+	}
+}
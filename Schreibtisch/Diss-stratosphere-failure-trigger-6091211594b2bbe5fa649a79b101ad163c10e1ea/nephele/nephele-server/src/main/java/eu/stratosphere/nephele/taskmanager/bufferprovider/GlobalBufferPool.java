@@ -17,13 +17,23 @@ package eu.stratosphere.nephele.taskmanager.bufferprovider;
 
 import java.nio.ByteBuffer;
 import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import eu.stratosphere.nephele.configuration.GlobalConfiguration;
 
+/**
+ * The global buffer pool holds the network buffers of a task manager, from which the {@link LocalBufferPool}s lock
+ * their buffers.
+ * <p>
+ * To keep the pool from becoming a point of contention when many threads lock and release buffers at the same
+ * time, the buffers are spread across several stripes, each of which is a lock-free queue. A thread always
+ * releases buffers to its own stripe and locks buffers from its own stripe first. Only if its stripe is empty,
+ * it steals a buffer from the other stripes.
+ */
 public final class GlobalBufferPool {
 
 	private final static Log LOG = LogFactory.getLog(GlobalBufferPool.class);
@@ -31,7 +41,7 @@ public final class GlobalBufferPool {
 	/**
 	 * The singleton instance of the global buffer pool.
 	 */
-	private static GlobalBufferPool instance = null;
+	private static volatile GlobalBufferPool instance = null;
 
 	/**
 	 * The default number of buffers to create at startup.
@@ -43,6 +53,11 @@ public final class GlobalBufferPool {
 	 */
 	public static final int DEFAULT_BUFFER_SIZE_IN_BYTES = 64 * 1024; // 64k
 
+	/**
+	 * The default number of stripes, <code>-1</code> means one stripe per available processor.
+	 */
+	private static final int DEFAULT_NUMBER_OF_STRIPES = -1;
+
 	/**
 	 * The number of buffers created at startup.
 	 */
@@ -53,7 +68,18 @@ public final class GlobalBufferPool {
 	 */
 	private final int bufferSizeInBytes;
 
-	private final Queue<ByteBuffer> buffers;
+	/**
+	 * The stripes holding the available buffers. The number of stripes is a power of two.
+	 */
+	private final Queue<ByteBuffer>[] stripes;
+
+	/**
+	 * The number of buffers in each stripe, because the size of the stripes' queues is not a constant time
+	 * operation.
+	 */
+	private final AtomicInteger[] stripeSizes;
+
+	private final int stripeMask;
 
 	/**
 	 * Returns the singleton instance of the global buffer pool. If the instance does not already exist, it is also
@@ -61,18 +87,26 @@ public final class GlobalBufferPool {
 	 * 
 	 * @return the singleton instance of the global buffer pool
 	 */
-	public static synchronized GlobalBufferPool getInstance() {
-
-		if (instance == null) {
-			instance = new GlobalBufferPool();
+	public static GlobalBufferPool getInstance() {
+
+		GlobalBufferPool pool = instance;
+		if (pool == null) {
+			synchronized (GlobalBufferPool.class) {
+				pool = instance;
+				if (pool == null) {
+					pool = new GlobalBufferPool();
+					instance = pool;
+				}
+			}
 		}
 
-		return instance;
+		return pool;
 	}
 
 	/**
 	 * Constructs the global buffer pool.
 	 */
+	@SuppressWarnings("unchecked")
 	private GlobalBufferPool() {
 
 		this.numberOfBuffers = GlobalConfiguration.getInteger("channel.network.numberOfBuffers",
@@ -80,16 +114,31 @@ public final class GlobalBufferPool {
 		this.bufferSizeInBytes = GlobalConfiguration.getInteger("channel.network.bufferSizeInBytes",
 			DEFAULT_BUFFER_SIZE_IN_BYTES);
 
-		this.buffers = new ArrayBlockingQueue<ByteBuffer>(this.numberOfBuffers);
+		int numberOfStripes = GlobalConfiguration.getInteger("channel.network.numberOfBufferPoolStripes",
+			DEFAULT_NUMBER_OF_STRIPES);
+		if (numberOfStripes <= 0) {
+			numberOfStripes = Runtime.getRuntime().availableProcessors();
+		}
+		// round up to a power of two, so that the stripe of a thread is found with a mask
+		numberOfStripes = Integer.highestOneBit(Math.max(1, Math.min(numberOfStripes, this.numberOfBuffers)) * 2 - 1);
+
+		this.stripes = new Queue[numberOfStripes];
+		this.stripeSizes = new AtomicInteger[numberOfStripes];
+		for (int i = 0; i < numberOfStripes; i++) {
+			this.stripes[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+			this.stripeSizes[i] = new AtomicInteger();
+		}
+		this.stripeMask = numberOfStripes - 1;
 
-		// Initialize buffers
+		// Initialize buffers, spread evenly across the stripes
 		for (int i = 0; i < this.numberOfBuffers; i++) {
 			final ByteBuffer readBuffer = ByteBuffer.allocateDirect(this.bufferSizeInBytes);
-			this.buffers.add(readBuffer);
+			this.stripes[i & this.stripeMask].add(readBuffer);
+			this.stripeSizes[i & this.stripeMask].incrementAndGet();
 		}
 
 		LOG.info("Initialized global buffer pool with " + this.numberOfBuffers + " buffers with a size "
-			+ this.bufferSizeInBytes + " bytes each");
+			+ this.bufferSizeInBytes + " bytes each in " + numberOfStripes + " stripes");
 	}
 
 	/**
@@ -109,7 +158,21 @@ public final class GlobalBufferPool {
 	 */
 	public ByteBuffer lockGlobalBuffer() {
 
-		return this.buffers.poll();
+		final int home = getHomeStripe();
+
+		// try the own stripe first, then steal from the others
+		for (int i = 0; i <= this.stripeMask; i++) {
+			final int stripe = (home + i) & this.stripeMask;
+			if (this.stripeSizes[stripe].get() > 0) {
+				final ByteBuffer buffer = this.stripes[stripe].poll();
+				if (buffer != null) {
+					this.stripeSizes[stripe].decrementAndGet();
+					return buffer;
+				}
+			}
+		}
+
+		return null;
 	}
 
 	/**
@@ -121,7 +184,11 @@ public final class GlobalBufferPool {
 	public void releaseGlobalBuffer(final ByteBuffer releasedBuffer) {
 
 		releasedBuffer.clear();
-		this.buffers.add(releasedBuffer);
+
+		final int stripe = getHomeStripe();
+		// count the buffer before it becomes visible, so that a stealing thread never finds an uncounted buffer
+		this.stripeSizes[stripe].incrementAndGet();
+		this.stripes[stripe].add(releasedBuffer);
 	}
 
 	/**
@@ -135,12 +202,39 @@ public final class GlobalBufferPool {
 	}
 
 	/**
-	 * Returns the number of buffers which are currently available at this pool.
+	 * Returns the number of buffers which are currently available at this pool. The number is exact only if no
+	 * buffers are locked or released concurrently.
 	 * 
 	 * @return the number of buffers which are currently available at this pool
 	 */
 	public int getCurrentNumberOfBuffers() {
 
-		return this.buffers.size();
+		int num = 0;
+		for (int i = 0; i < this.stripeSizes.length; i++) {
+			num += this.stripeSizes[i].get();
+		}
+
+		return num;
+	}
+
+	/**
+	 * Returns the number of stripes across which the buffers of this pool are spread.
+	 * 
+	 * @return the number of stripes of this pool
+	 */
+	public int getNumberOfStripes() {
+
+		return this.stripes.length;
+	}
+
+	/**
+	 * Returns the stripe the calling thread locks its buffers from first and releases its buffers to.
+	 * 
+	 * @return the stripe of the calling thread
+	 */
+	private int getHomeStripe() {
+
+		final long id = Thread.currentThread().getId();
+		return ((int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16) & this.stripeMask;
 	}
 }
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,6 +28,15 @@ import eu.stratosphere.nephele.io.channels.Buffer;
 import eu.stratosphere.nephele.io.channels.BufferFactory;
 import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
 
+/**
+ * A local buffer pool caches a designated number of buffers from the {@link GlobalBufferPool} for one task or
+ * gate.
+ * <p>
+ * The cached buffers are kept in a lock-free queue, so that requesting a cached buffer and recycling a buffer do
+ * not synchronize on the pool. The pool's lock is only taken to exchange buffers with the global pool, to change
+ * the designated number of buffers, and to wait for or notify about available buffers. A recycling thread takes
+ * the lock only if a requester is waiting or a buffer availability listener is registered.
+ */
 public final class LocalBufferPool implements BufferProvider {
 
 	private static final class LocalBufferPoolConnector implements MemoryBufferPoolConnector {
@@ -54,24 +64,46 @@ public final class LocalBufferPool implements BufferProvider {
 
 	private final int maximumBufferSize;
 
-	private int designatedNumberOfBuffers;
+	/**
+	 * The designated number of buffers, only modified while holding the lock on {@link #buffers}.
+	 */
+	private volatile int designatedNumberOfBuffers;
 
-	private int requestedNumberOfBuffers = 0;
+	/**
+	 * The number of buffers locked from the global pool, only modified while holding the lock on {@link #buffers}.
+	 */
+	private volatile int requestedNumberOfBuffers = 0;
 
 	private final boolean isShared;
 
 	private boolean asynchronousEventOccurred = false;
 
-	private boolean isDestroyed = false;
+	private volatile boolean isDestroyed = false;
 
 	private final AsynchronousEventListener eventListener;
 
-	private final Queue<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+	/**
+	 * The cached buffers. The queue also serves as the lock of this pool.
+	 */
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
 
 	private final LocalBufferPoolConnector bufferPoolConnector;
 
 	private final Queue<BufferAvailabilityListener> bufferAvailabilityListenerQueue = new ArrayDeque<BufferAvailabilityListener>();
 
+	/**
+	 * The number of requesters waiting for a buffer plus the number of registered buffer availability listeners.
+	 * A recycling thread must notify them, all other recycling threads can bypass the lock. Only modified while
+	 * holding the lock on {@link #buffers}.
+	 */
+	private volatile int numberOfBufferWaiters = 0;
+
+	/**
+	 * The total time in nanoseconds that requesters have been blocked waiting for a buffer, only modified while
+	 * holding the lock on {@link #buffers}.
+	 */
+	private volatile long accumulatedWaitTime = 0L;
+
 	public LocalBufferPool(final int designatedNumberOfBuffers, final boolean isShared,
 			final AsynchronousEventListener eventListener) {
 
@@ -119,63 +151,86 @@ public final class LocalBufferPool implements BufferProvider {
 				+ " bytes is requested, but maximum buffer size is " + this.maximumBufferSize);
 		}
 
-		while (true) {
+		// Fast path: take a cached buffer without locking, unless excess buffers must be returned
+		if (this.requestedNumberOfBuffers <= this.designatedNumberOfBuffers) {
+			final ByteBuffer byteBuffer = this.buffers.poll();
+			if (byteBuffer != null) {
+				return BufferFactory.createFromMemory(minimumSizeOfBuffer, byteBuffer, this.bufferPoolConnector);
+			}
+		}
 
-			boolean async = false;
+		while (true) {
 
 			synchronized (this.buffers) {
 
 				// Make sure we return excess buffers immediately
-				while (this.requestedNumberOfBuffers > this.designatedNumberOfBuffers) {
-
-					final ByteBuffer buffer = this.buffers.poll();
-					if (buffer == null) {
-						break;
-					}
-
-					this.globalBufferPool.releaseGlobalBuffer(buffer);
-					this.requestedNumberOfBuffers--;
-				}
+				returnExcessBuffers();
 
-				while (this.buffers.isEmpty()) {
+				// Announce the waiter before checking the cache, so that a concurrent recycler notifies us
+				this.numberOfBufferWaiters++;
+				try {
+					while (true) {
 
-					// Check if the number of cached buffers matches the number of designated buffers
-					if (this.requestedNumberOfBuffers < this.designatedNumberOfBuffers) {
+						final ByteBuffer byteBuffer = this.buffers.poll();
+						if (byteBuffer != null) {
+							return BufferFactory.createFromMemory(minimumSizeOfBuffer, byteBuffer,
+								this.bufferPoolConnector);
+						}
 
-						final ByteBuffer buffer = this.globalBufferPool.lockGlobalBuffer();
-						if (buffer != null) {
+						// Check if the number of cached buffers matches the number of designated buffers
+						if (this.requestedNumberOfBuffers < this.designatedNumberOfBuffers) {
 
-							this.buffers.add(buffer);
-							this.requestedNumberOfBuffers++;
-							continue;
+							final ByteBuffer buffer = this.globalBufferPool.lockGlobalBuffer();
+							if (buffer != null) {
+								this.requestedNumberOfBuffers++;
+								return BufferFactory.createFromMemory(minimumSizeOfBuffer, buffer,
+									this.bufferPoolConnector);
+							}
 						}
-					}
 
-					if (this.asynchronousEventOccurred && block) {
-						this.asynchronousEventOccurred = false;
-						async = true;
-						break;
-					}
+						if (this.asynchronousEventOccurred && block) {
+							this.asynchronousEventOccurred = false;
+							break;
+						}
 
-					if (block) {
-						this.buffers.wait(100);
-					} else {
-						return null;
+						if (block) {
+							final long waitStart = System.nanoTime();
+							this.buffers.wait(100);
+							this.accumulatedWaitTime += System.nanoTime() - waitStart;
+						} else {
+							return null;
+						}
 					}
-				}
-
-				if (!async) {
-					final ByteBuffer byteBuffer = this.buffers.poll();
-					return BufferFactory.createFromMemory(minimumSizeOfBuffer, byteBuffer, this.bufferPoolConnector);
+				} finally {
+					this.numberOfBufferWaiters--;
 				}
 			}
 
+			// An asynchronous event occurred, the buffer is requested again after it has been handled
 			if (this.eventListener != null) {
 				this.eventListener.asynchronousEventOccurred();
 			}
 		}
 	}
 
+	/**
+	 * Returns cached buffers to the global buffer pool while more buffers are requested than designated. The
+	 * caller must hold the lock on {@link #buffers}.
+	 */
+	private void returnExcessBuffers() {
+
+		while (this.requestedNumberOfBuffers > this.designatedNumberOfBuffers) {
+
+			final ByteBuffer buffer = this.buffers.poll();
+			if (buffer == null) {
+				break;
+			}
+
+			this.globalBufferPool.releaseGlobalBuffer(buffer);
+			this.requestedNumberOfBuffers--;
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -198,15 +253,7 @@ public final class LocalBufferPool implements BufferProvider {
 			this.designatedNumberOfBuffers = designatedNumberOfBuffers;
 
 			// Make sure we return excess buffers immediately
-			while (this.requestedNumberOfBuffers > this.designatedNumberOfBuffers) {
-
-				if (this.buffers.isEmpty()) {
-					break;
-				}
-
-				this.globalBufferPool.releaseGlobalBuffer(this.buffers.poll());
-				this.requestedNumberOfBuffers--;
-			}
+			returnExcessBuffers();
 
 			this.buffers.notify();
 		}
@@ -223,8 +270,9 @@ public final class LocalBufferPool implements BufferProvider {
 
 			this.isDestroyed = true;
 
-			while (!this.buffers.isEmpty()) {
-				this.globalBufferPool.releaseGlobalBuffer(this.buffers.poll());
+			ByteBuffer buffer;
+			while ((buffer = this.buffers.poll()) != null) {
+				this.globalBufferPool.releaseGlobalBuffer(buffer);
 			}
 
 			this.requestedNumberOfBuffers = 0;
@@ -242,39 +290,74 @@ public final class LocalBufferPool implements BufferProvider {
 
 	public int getNumberOfAvailableBuffers() {
 
-		synchronized (this.buffers) {
-			return this.buffers.size();
-		}
+		return this.buffers.size();
 	}
 
 	public int getDesignatedNumberOfBuffers() {
 
-		synchronized (this.buffers) {
-			return this.designatedNumberOfBuffers;
-		}
+		return this.designatedNumberOfBuffers;
 	}
 
 	public int getRequestedNumberOfBuffers() {
 
-		synchronized (this.buffers) {
-			return this.requestedNumberOfBuffers;
-		}
+		return this.requestedNumberOfBuffers;
 	}
 
-	private void recycleBuffer(final ByteBuffer byteBuffer) {
+	/**
+	 * Returns the number of requesters currently blocked waiting for a buffer plus the number of registered buffer
+	 * availability listeners.
+	 * 
+	 * @return the number of parties waiting for a buffer of this pool
+	 */
+	public int getNumberOfBufferWaiters() {
 
-		synchronized (this.buffers) {
+		return this.numberOfBufferWaiters;
+	}
 
-			if (this.isDestroyed) {
+	/**
+	 * Returns the total time that requesters of this pool have been blocked waiting for a buffer since the pool
+	 * was created.
+	 * 
+	 * @return the accumulated wait time in nanoseconds
+	 */
+	public long getAccumulatedWaitTime() {
+
+		return this.accumulatedWaitTime;
+	}
+
+	private void recycleBuffer(final ByteBuffer byteBuffer) {
+
+		if (this.isDestroyed) {
+			synchronized (this.buffers) {
 				this.globalBufferPool.releaseGlobalBuffer(byteBuffer);
 				this.requestedNumberOfBuffers--;
-			} else {
-				this.buffers.add(byteBuffer);
-				this.buffers.notify();
 			}
+			return;
+		}
 
-			while (!this.bufferAvailabilityListenerQueue.isEmpty()) {
-				this.bufferAvailabilityListenerQueue.poll().bufferAvailable();
+		this.buffers.add(byteBuffer);
+
+		// The pool may have been destroyed while the buffer was added, hand it back to the global pool then
+		if (this.isDestroyed) {
+			synchronized (this.buffers) {
+				if (this.buffers.remove(byteBuffer)) {
+					this.globalBufferPool.releaseGlobalBuffer(byteBuffer);
+					this.requestedNumberOfBuffers--;
+				}
+			}
+			return;
+		}
+
+		// Only take the lock if someone must be told about the buffer
+		if (this.numberOfBufferWaiters > 0) {
+			synchronized (this.buffers) {
+
+				this.buffers.notify();
+
+				while (!this.bufferAvailabilityListenerQueue.isEmpty()) {
+					this.bufferAvailabilityListenerQueue.poll().bufferAvailable();
+					this.numberOfBufferWaiters--;
+				}
 			}
 		}
 	}
@@ -298,11 +381,16 @@ public final class LocalBufferPool implements BufferProvider {
 	public boolean registerBufferAvailabilityListener(final BufferAvailabilityListener bufferAvailabilityListener) {
 
 		synchronized (this.buffers) {
-			if (!this.buffers.isEmpty()) {
+
+			if (this.isDestroyed) {
 				return false;
 			}
 
-			if (this.isDestroyed) {
+			// Announce the listener before checking the cache, so that a concurrent recycler notifies it
+			this.numberOfBufferWaiters++;
+
+			if (!this.buffers.isEmpty()) {
+				this.numberOfBufferWaiters--;
 				return false;
 			}
 
@@ -39,6 +39,13 @@ public interface LocalBufferPoolOwner {
 	 */
 	void setDesignatedNumberOfBuffers(int numberOfBuffers);
 
+	/**
+	 * Returns the local buffer pool managed by this local buffer pool owner.
+	 * 
+	 * @return the local buffer pool managed by this local buffer pool owner
+	 */
+	LocalBufferPool getLocalBufferPool();
+
 	/**
 	 * Clears the local buffer pool and returns all buffers to the global buffer pool.
 	 */
@@ -0,0 +1,194 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A batching writable byte channel coalesces the many small writes which are issued while serializing a sequence of
+ * transfer envelopes into a single batch buffer. When a write does not fit into the remaining space of the batch
+ * buffer anymore, the staged data and the data to be written are handed to the underlying channel with one gathering
+ * write, so large buffers are never copied.
+ * <p>
+ * Data which has been accepted by this channel may still be staged in the batch buffer, so {@link #flush()} must be
+ * called until it reports that no more data is pending.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class BatchingWritableByteChannel implements WritableByteChannel {
+
+	/**
+	 * The buffer in which the written data is staged. The buffer is always kept in write mode.
+	 */
+	private final ByteBuffer batchBuffer;
+
+	/**
+	 * Array used for the gathering writes to the underlying channel.
+	 */
+	private final ByteBuffer[] gatheringBuffers = new ByteBuffer[2];
+
+	/**
+	 * The underlying channel the data is eventually written to.
+	 */
+	private GatheringByteChannel target = null;
+
+	/**
+	 * Stores whether the underlying channel has refused to accept all of the data during the last write or flush.
+	 */
+	private boolean congested = false;
+
+	/**
+	 * Constructs a new batching writable byte channel.
+	 * 
+	 * @param batchBuffer
+	 *        the buffer to stage the written data in
+	 */
+	BatchingWritableByteChannel(final ByteBuffer batchBuffer) {
+
+		this.batchBuffer = batchBuffer;
+		this.batchBuffer.clear();
+	}
+
+	/**
+	 * Sets the underlying channel the data is eventually written to.
+	 * 
+	 * @param target
+	 *        the underlying channel
+	 */
+	void setTarget(final GatheringByteChannel target) {
+
+		this.target = target;
+		this.congested = false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int write(final ByteBuffer src) throws IOException {
+
+		final int length = src.remaining();
+
+		if (length <= this.batchBuffer.remaining()) {
+			this.batchBuffer.put(src);
+			return length;
+		}
+
+		// The data does not fit into the batch buffer, so write the staged data and the source in one go
+		this.batchBuffer.flip();
+		this.gatheringBuffers[0] = this.batchBuffer;
+		this.gatheringBuffers[1] = src;
+		try {
+			this.target.write(this.gatheringBuffers);
+		} finally {
+			this.gatheringBuffers[1] = null;
+			this.batchBuffer.compact();
+		}
+
+		if (this.batchBuffer.position() > 0 || src.hasRemaining()) {
+			this.congested = true;
+		}
+
+		// Stage the rest of the source if there is room for it
+		if (src.remaining() <= this.batchBuffer.remaining()) {
+			this.batchBuffer.put(src);
+		}
+
+		return length - src.remaining();
+	}
+
+	/**
+	 * Tries to write all staged data to the underlying channel.
+	 * 
+	 * @return <code>true</code> if there is still staged data left which could not be written, <code>false</code>
+	 *         otherwise
+	 * @throws IOException
+	 *         thrown if an error occurs while writing to the underlying channel
+	 */
+	boolean flush() throws IOException {
+
+		if (this.batchBuffer.position() == 0) {
+			return false;
+		}
+
+		this.batchBuffer.flip();
+		try {
+			this.target.write(this.batchBuffer);
+		} finally {
+			this.batchBuffer.compact();
+		}
+
+		if (this.batchBuffer.position() > 0) {
+			this.congested = true;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether the underlying channel has refused to accept data since the target has last been set.
+	 * 
+	 * @return <code>true</code> if the underlying channel has refused to accept data, <code>false</code> otherwise
+	 */
+	boolean isCongested() {
+
+		return this.congested;
+	}
+
+	/**
+	 * Checks whether data is staged which has not yet been written to the underlying channel.
+	 * 
+	 * @return <code>true</code> if staged data is pending, <code>false</code> otherwise
+	 */
+	boolean hasPendingData() {
+
+		return (this.batchBuffer.position() > 0);
+	}
+
+	/**
+	 * Discards all staged data.
+	 */
+	void clear() {
+
+		this.batchBuffer.clear();
+		this.congested = false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isOpen() {
+
+		return (this.target != null && this.target.isOpen());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+
+		clear();
+		if (this.target != null) {
+			this.target.close();
+		}
+	}
+}
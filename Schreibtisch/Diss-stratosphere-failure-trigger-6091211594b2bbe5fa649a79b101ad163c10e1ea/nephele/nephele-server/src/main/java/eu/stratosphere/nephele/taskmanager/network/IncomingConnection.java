@@ -16,8 +16,11 @@
 package eu.stratosphere.nephele.taskmanager.network;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.SelectionKey;
+import java.util.Queue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -58,10 +61,49 @@ final class IncomingConnection {
 	 */
 	private final DefaultRoutingService routingService;
 
+	/**
+	 * The channel which reads ahead from the underlying connection or <code>null</code> if no data is read ahead.
+	 */
+	private final ReadAheadByteChannel readAheadChannel;
+
+	/**
+	 * The pool the read-ahead buffer is returned to once the connection is closed.
+	 */
+	private final Queue<ByteBuffer> readAheadBufferPool;
+
+	/**
+	 * Stores whether the read-ahead buffer has already been returned to its pool.
+	 */
+	private boolean readAheadBufferReleased = false;
+
 	IncomingConnection(final DefaultRoutingService routingService, final ReadableByteChannel readableByteChannel) {
 		this.routingService = routingService;
 		this.deserializer = new DefaultDeserializer(routingService);
 		this.readableByteChannel = readableByteChannel;
+		this.readAheadChannel = null;
+		this.readAheadBufferPool = null;
+	}
+
+	/**
+	 * Constructs a new incoming connection which reads ahead from the given channel, so that several transfer
+	 * envelopes can be deserialized from the data of one read call.
+	 * 
+	 * @param routingService
+	 *        the routing service which dispatches the received transfer envelopes
+	 * @param scatteringByteChannel
+	 *        the channel to read the data from
+	 * @param readAheadBuffer
+	 *        the buffer to hold the data read ahead
+	 * @param readAheadBufferPool
+	 *        the pool the read-ahead buffer is returned to once the connection is closed
+	 */
+	IncomingConnection(final DefaultRoutingService routingService, final ScatteringByteChannel scatteringByteChannel,
+			final ByteBuffer readAheadBuffer, final Queue<ByteBuffer> readAheadBufferPool) {
+		this.routingService = routingService;
+		this.deserializer = new DefaultDeserializer(routingService);
+		this.readAheadChannel = new ReadAheadByteChannel(scatteringByteChannel, readAheadBuffer);
+		this.readableByteChannel = this.readAheadChannel;
+		this.readAheadBufferPool = readAheadBufferPool;
 	}
 
 	void reportTransmissionProblem(SelectionKey key, IOException ioe) {
@@ -85,22 +127,78 @@ final class IncomingConnection {
 		}
 
 		this.deserializer.reset();
+
+		releaseReadAheadBuffer();
 	}
 
 	void read() throws IOException, InterruptedException, NoBufferAvailableException {
 
+		if (this.readAheadChannel == null) {
+			readEnvelope();
+			return;
+		}
+
+		// The selector does not report data which has already been read ahead, so consume all of it now
+		int roundsWithoutProgress = 0;
+		while (true) {
+
+			final int bufferedBytes = this.readAheadChannel.getNumberOfBufferedBytes();
+			final boolean envelopeRead = readEnvelope();
+
+			if (!this.readAheadChannel.hasBufferedData()) {
+				return;
+			}
+
+			if (envelopeRead || this.readAheadChannel.getNumberOfBufferedBytes() != bufferedBytes) {
+				roundsWithoutProgress = 0;
+			} else if (++roundsWithoutProgress > 1) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Continues deserializing the current transfer envelope and dispatches it if it is complete.
+	 * 
+	 * @return <code>true</code> if a transfer envelope has been dispatched, <code>false</code> otherwise
+	 * @throws IOException
+	 *         thrown if an error occurs while reading from the channel
+	 * @throws InterruptedException
+	 *         thrown if the thread is interrupted while dispatching the envelope
+	 * @throws NoBufferAvailableException
+	 *         thrown if no buffer is available to deserialize the envelope's data into
+	 */
+	private boolean readEnvelope() throws IOException, InterruptedException, NoBufferAvailableException {
+
 		this.deserializer.read(this.readableByteChannel);
 
 		final TransferEnvelope transferEnvelope = this.deserializer.getFullyDeserializedTransferEnvelope();
-		if (transferEnvelope != null) {
+		if (transferEnvelope == null) {
+			return false;
+		}
 
-			final BufferProvider bufferProvider = this.deserializer.getBufferProvider();
-			if (bufferProvider == null) {
-				this.routingService.routeEnvelopeFromNetwork(transferEnvelope, false);
-			} else {
-				this.routingService.routeEnvelopeFromNetwork(transferEnvelope, bufferProvider.isShared());
-			}
+		final BufferProvider bufferProvider = this.deserializer.getBufferProvider();
+		if (bufferProvider == null) {
+			this.routingService.routeEnvelopeFromNetwork(transferEnvelope, false);
+		} else {
+			this.routingService.routeEnvelopeFromNetwork(transferEnvelope, bufferProvider.isShared());
 		}
+
+		return true;
+	}
+
+	/**
+	 * Checks whether data has been read ahead which the selector will not report as readable anymore.
+	 * 
+	 * @return <code>true</code> if data has been read ahead and not been consumed yet, <code>false</code> otherwise
+	 */
+	boolean hasBufferedData() {
+
+		if (this.readAheadChannel == null) {
+			return false;
+		}
+
+		return this.readAheadChannel.hasBufferedData();
 	}
 
 	boolean isCloseUnexpected() {
@@ -124,5 +222,20 @@ final class IncomingConnection {
 		if (key != null) {
 			key.cancel();
 		}
+
+		releaseReadAheadBuffer();
+	}
+
+	/**
+	 * Returns the read-ahead buffer to its pool, so it can be used by the next connection.
+	 */
+	private void releaseReadAheadBuffer() {
+
+		if (this.readAheadChannel == null || this.readAheadBufferReleased) {
+			return;
+		}
+
+		this.readAheadBufferReleased = true;
+		this.readAheadBufferPool.add(this.readAheadChannel.getReadAheadBuffer());
 	}
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ package eu.stratosphere.nephele.taskmanager.network;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -47,17 +48,45 @@ final class IncomingConnectionThread extends Thread {
 
 	private final ServerSocketChannel listeningSocket;
 
+	/**
+	 * The other threads among which the accepted connections are distributed, in addition to this thread.
+	 */
+	private final IncomingConnectionThread[] readerThreads;
+
+	/**
+	 * Connections which have been accepted by the listening thread and shall be read by this thread.
+	 */
+	private final Queue<SocketChannel> pendingIncomingConnections = new ArrayDeque<SocketChannel>();
+
+	/**
+	 * The size of the buffers to read ahead into in bytes or <code>0</code> to read without read-ahead.
+	 */
+	private final int readAheadBufferSize;
+
+	/**
+	 * The read-ahead buffers of closed connections which can be reused by new connections.
+	 */
+	private final Queue<ByteBuffer> readAheadBufferPool = new ArrayDeque<ByteBuffer>();
+
+	/**
+	 * The index of the thread the next accepted connection is handed to.
+	 */
+	private int nextReaderThread = 0;
+
 	private static final class IncomingConnectionBufferAvailListener implements BufferAvailabilityListener {
 
 		private final Queue<SelectionKey> pendingReadEventSubscribeRequests;
 
 		private final SelectionKey key;
 
+		private final Selector selector;
+
 		private IncomingConnectionBufferAvailListener(final Queue<SelectionKey> pendingReadEventSubscribeRequests,
-				final SelectionKey key) {
+				final SelectionKey key, final Selector selector) {
 
 			this.pendingReadEventSubscribeRequests = pendingReadEventSubscribeRequests;
 			this.key = key;
+			this.selector = selector;
 		}
 
 		/**
@@ -69,15 +98,39 @@ final class IncomingConnectionThread extends Thread {
 			synchronized (this.pendingReadEventSubscribeRequests) {
 				this.pendingReadEventSubscribeRequests.add(this.key);
 			}
+
+			// Do not let the request wait for the selector's timeout
+			this.selector.wakeup();
 		}
 	}
 
+	/**
+	 * Constructs a new incoming connection thread.
+	 * 
+	 * @param routingService
+	 *        the routing service which dispatches the received transfer envelopes
+	 * @param isListeningThread
+	 *        <code>true</code> if this thread shall accept the incoming connections, <code>false</code> if it only
+	 *        reads from connections handed to it by the listening thread
+	 * @param listeningAddress
+	 *        the address to listen on, only used by the listening thread
+	 * @param readerThreads
+	 *        the other threads among which the listening thread distributes the accepted connections, may be
+	 *        empty
+	 * @param readAheadBufferSize
+	 *        the size of the buffers to read ahead into in bytes or <code>0</code> to read without read-ahead
+	 * @throws IOException
+	 *         thrown if the selector cannot be opened or the listening socket cannot be bound
+	 */
 	IncomingConnectionThread(final DefaultRoutingService routingService, final boolean isListeningThread,
-			final InetSocketAddress listeningAddress) throws IOException {
+			final InetSocketAddress listeningAddress, final IncomingConnectionThread[] readerThreads,
+			final int readAheadBufferSize) throws IOException {
 		super("Incoming Connection Thread");
 
 		this.selector = Selector.open();
 		this.routingService = routingService;
+		this.readerThreads = readerThreads;
+		this.readAheadBufferSize = readAheadBufferSize;
 
 		if (isListeningThread) {
 			this.listeningSocket = ServerSocketChannel.open();
@@ -95,6 +148,13 @@ final class IncomingConnectionThread extends Thread {
 
 		while (!this.isInterrupted()) {
 
+			synchronized (this.pendingIncomingConnections) {
+				while (!this.pendingIncomingConnections.isEmpty()) {
+					registerIncomingConnection(this.pendingIncomingConnections.poll());
+				}
+			}
+
+			final Queue<SelectionKey> keysWithBufferedData = new ArrayDeque<SelectionKey>();
 			synchronized (this.pendingReadEventSubscribeRequests) {
 				while (!this.pendingReadEventSubscribeRequests.isEmpty()) {
 					final SelectionKey key = this.pendingReadEventSubscribeRequests.poll();
@@ -104,12 +164,20 @@ final class IncomingConnectionThread extends Thread {
 					try {
 						final SelectionKey newKey = socketChannel.register(this.selector, SelectionKey.OP_READ);
 						newKey.attach(incomingConnection);
+						if (incomingConnection.hasBufferedData()) {
+							keysWithBufferedData.add(newKey);
+						}
 					} catch (ClosedChannelException e) {
 						incomingConnection.reportTransmissionProblem(key, e);
 					}
 				}
 			}
 
+			// The selector will not report data which has already been read ahead, so continue reading it here
+			while (!keysWithBufferedData.isEmpty()) {
+				doRead(keysWithBufferedData.poll());
+			}
+
 			try {
 				this.selector.select(500);
 			} catch (IOException e) {
@@ -169,7 +237,46 @@ final class IncomingConnectionThread extends Thread {
 			return;
 		}
 
-		final IncomingConnection incomingConnection = new IncomingConnection(this.routingService, clientSocket);
+		// Distribute the connections among this thread and the other reader threads
+		final int readerThread = this.nextReaderThread;
+		this.nextReaderThread = (this.nextReaderThread + 1) % (this.readerThreads.length + 1);
+		if (readerThread > 0) {
+			this.readerThreads[readerThread - 1].handOverIncomingConnection(clientSocket);
+			return;
+		}
+
+		registerIncomingConnection(clientSocket);
+	}
+
+	/**
+	 * Hands a connection accepted by the listening thread over to this thread, which reads from it from then on.
+	 * 
+	 * @param clientSocket
+	 *        the accepted connection
+	 */
+	private void handOverIncomingConnection(final SocketChannel clientSocket) {
+
+		synchronized (this.pendingIncomingConnections) {
+			this.pendingIncomingConnections.add(clientSocket);
+		}
+
+		this.selector.wakeup();
+	}
+
+	private void registerIncomingConnection(final SocketChannel clientSocket) {
+
+		final IncomingConnection incomingConnection;
+		if (this.readAheadBufferSize > 0) {
+			ByteBuffer readAheadBuffer = this.readAheadBufferPool.poll();
+			if (readAheadBuffer == null) {
+				readAheadBuffer = ByteBuffer.allocateDirect(this.readAheadBufferSize);
+			}
+			incomingConnection = new IncomingConnection(this.routingService, clientSocket, readAheadBuffer,
+				this.readAheadBufferPool);
+		} else {
+			incomingConnection = new IncomingConnection(this.routingService, clientSocket);
+		}
+
 		SelectionKey clientKey = null;
 		try {
 			clientSocket.configureBlocking(false);
@@ -209,13 +316,19 @@ final class IncomingConnectionThread extends Thread {
 			}
 
 			final BufferAvailabilityListener bal = new IncomingConnectionBufferAvailListener(
-				this.pendingReadEventSubscribeRequests, key);
+				this.pendingReadEventSubscribeRequests, key, this.selector);
 			if (!e.getBufferProvider().registerBufferAvailabilityListener(bal)) {
 				// In the meantime, a buffer has become available again, subscribe to read event again
 
 				try {
 					final SelectionKey newKey = socketChannel.register(this.selector, SelectionKey.OP_READ);
 					newKey.attach(incomingConnection);
+					if (incomingConnection.hasBufferedData()) {
+						// Data read ahead is not reported by the selector, so process it in the next round
+						synchronized (this.pendingReadEventSubscribeRequests) {
+							this.pendingReadEventSubscribeRequests.add(newKey);
+						}
+					}
 				} catch (ClosedChannelException e1) {
 					incomingConnection.reportTransmissionProblem(key, e1);
 				}
@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.nephele.configuration.GlobalConfiguration;
@@ -45,20 +46,37 @@ public final class NetworkService {
 	 */
 	private static final int DEFAULT_NUMBER_OF_OUTGOING_CONNECTION_THREADS = 1;
 
+	/**
+	 * The default number of threads dealing with incoming connections.
+	 */
+	private static final int DEFAULT_NUMBER_OF_INCOMING_CONNECTION_THREADS = 1;
+
 	/**
 	 * The default number of connection retries before giving up.
 	 */
 	private static final int DEFAULT_NUMBER_OF_CONNECTION_RETRIES = 10;
 
+	/**
+	 * The default size in bytes of the buffers in which envelopes are coalesced before they are written and into which
+	 * incoming data is read ahead. The default of <code>0</code> transfers every envelope on its own.
+	 */
+	private static final int DEFAULT_TRANSFER_BATCH_SIZE = 0;
+
 	/**
 	 * List of active threads dealing with outgoing connections.
 	 */
 	private final List<OutgoingConnectionThread> outgoingConnectionThreads = new CopyOnWriteArrayList<OutgoingConnectionThread>();
 
 	/**
-	 * Thread dealing with incoming connections.
+	 * The index of the thread the next outgoing connection is assigned to.
+	 */
+	private final AtomicInteger nextOutgoingConnectionThread = new AtomicInteger(0);
+
+	/**
+	 * Threads dealing with incoming connections. The first thread accepts the connections and distributes them among
+	 * all threads.
 	 */
-	private final IncomingConnectionThread incomingConnectionThread;
+	private final IncomingConnectionThread[] incomingConnectionThreads;
 
 	/**
 	 * Map containing currently active outgoing connections.
@@ -70,6 +88,11 @@ public final class NetworkService {
 	 */
 	private final int numberOfConnectionRetries;
 
+	/**
+	 * The size in bytes of the buffers in which envelopes are coalesced before they are written.
+	 */
+	private final int transferBatchSize;
+
 	/**
 	 * A buffer provider for read buffers
 	 */
@@ -92,22 +115,42 @@ public final class NetworkService {
 			this.outgoingConnectionThreads.add(outgoingConnectionThread);
 		}
 
-		this.incomingConnectionThread = new IncomingConnectionThread(
-			this.routingService, true, new InetSocketAddress(bindAddress, dataPort));
-		this.incomingConnectionThread.start();
+		this.transferBatchSize = configuration.getInteger("channel.network.transferBatchSize",
+			DEFAULT_TRANSFER_BATCH_SIZE);
+
+		final int numberOfIncomingConnectionThreads = Math.max(1, configuration.getInteger(
+			"channel.network.numberOfIncomingConnectionThreads", DEFAULT_NUMBER_OF_INCOMING_CONNECTION_THREADS));
+
+		final IncomingConnectionThread[] readerThreads =
+			new IncomingConnectionThread[numberOfIncomingConnectionThreads - 1];
+		for (int i = 0; i < readerThreads.length; i++) {
+			readerThreads[i] = new IncomingConnectionThread(this.routingService, false, null,
+				new IncomingConnectionThread[0], this.transferBatchSize);
+			readerThreads[i].start();
+		}
+
+		this.incomingConnectionThreads = new IncomingConnectionThread[numberOfIncomingConnectionThreads];
+		this.incomingConnectionThreads[0] = new IncomingConnectionThread(this.routingService, true,
+			new InetSocketAddress(bindAddress, dataPort), readerThreads, this.transferBatchSize);
+		this.incomingConnectionThreads[0].start();
+		System.arraycopy(readerThreads, 0, this.incomingConnectionThreads, 1, readerThreads.length);
 
 		this.numberOfConnectionRetries = configuration.getInteger("channel.network.numberOfConnectionRetries",
 			DEFAULT_NUMBER_OF_CONNECTION_RETRIES);
 	}
 
 	/**
-	 * Randomly selects one of the active threads dealing with outgoing connections.
+	 * Selects one of the active threads dealing with outgoing connections. The threads are selected in turn, so the
+	 * connections are spread evenly across them.
 	 * 
 	 * @return one of the active threads dealing with outgoing connections
 	 */
 	private OutgoingConnectionThread getOutgoingConnectionThread() {
 
-		return this.outgoingConnectionThreads.get((int) (this.outgoingConnectionThreads.size() * Math.random()));
+		final int index = (this.nextOutgoingConnectionThread.getAndIncrement() & Integer.MAX_VALUE)
+			% this.outgoingConnectionThreads.size();
+
+		return this.outgoingConnectionThreads.get(index);
 	}
 
 	/**
@@ -137,7 +180,7 @@ public final class NetworkService {
 		if (outgoingConnection == null) {
 
 			outgoingConnection = new OutgoingConnection(remoteReceiver, getOutgoingConnectionThread(),
-				this.numberOfConnectionRetries);
+				this.numberOfConnectionRetries, this.transferBatchSize);
 
 			final OutgoingConnection oldEntry = this.outgoingConnections
 				.putIfAbsent(remoteReceiver, outgoingConnection);
@@ -154,7 +197,9 @@ public final class NetworkService {
 	public void shutDown() {
 
 		// Interrupt the threads we started
-		this.incomingConnectionThread.interrupt();
+		for (int i = 0; i < this.incomingConnectionThreads.length; i++) {
+			this.incomingConnectionThreads[i].interrupt();
+		}
 
 		final Iterator<OutgoingConnectionThread> it = this.outgoingConnectionThreads.iterator();
 		while (it.hasNext()) {
@@ -17,6 +17,7 @@ package eu.stratosphere.nephele.taskmanager.network;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
@@ -27,6 +28,7 @@ import java.util.Queue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import eu.stratosphere.nephele.io.channels.Buffer;
 import eu.stratosphere.nephele.io.channels.ChannelID;
 import eu.stratosphere.nephele.taskmanager.routing.DefaultRoutingService;
 import eu.stratosphere.nephele.taskmanager.routing.RemoteReceiver;
@@ -106,6 +108,24 @@ final class OutgoingConnection {
 	 */
 	private static long RETRYINTERVAL = 1000L; // 1 second
 
+	/**
+	 * The maximum number of envelopes which are written in one write event, so that the other connections served by
+	 * the same connection thread are not starved.
+	 */
+	private static final int MAXIMUM_NUMBER_OF_ENVELOPES_PER_WRITE = 64;
+
+	/**
+	 * The channel which coalesces the written envelopes into batches or <code>null</code> if every envelope is
+	 * written to the TCP connection on its own.
+	 */
+	private final BatchingWritableByteChannel batchingChannel;
+
+	/**
+	 * Stores whether the current envelope bypasses the batching channel. This variable may only be accessed by the
+	 * outgoing connection thread.
+	 */
+	private boolean writeCurrentEnvelopeDirectly = false;
+
 	/**
 	 * Constructs a new outgoing connection object.
 	 * 
@@ -115,13 +135,22 @@ final class OutgoingConnection {
 	 *        the connection thread which actually handles the network transfer
 	 * @param numberOfConnectionRetries
 	 *        the number of connection retries allowed before an I/O error is reported
+	 * @param batchSize
+	 *        the size of the buffer in bytes in which small envelopes are coalesced before they are written, or
+	 *        <code>0</code> to write every envelope on its own
 	 */
 	OutgoingConnection(RemoteReceiver remoteReceiver, OutgoingConnectionThread connectionThread,
-			int numberOfConnectionRetries) {
+			int numberOfConnectionRetries, int batchSize) {
 
 		this.remoteReceiver = remoteReceiver;
 		this.connectionThread = connectionThread;
 		this.numberOfConnectionRetries = numberOfConnectionRetries;
+
+		if (batchSize > 0) {
+			this.batchingChannel = new BatchingWritableByteChannel(ByteBuffer.allocateDirect(batchSize));
+		} else {
+			this.batchingChannel = null;
+		}
 	}
 
 	/**
@@ -212,6 +241,8 @@ final class OutgoingConnection {
 				this.isSubscribedToWriteEvent = false;
 			}
 
+			discardBatch();
+
 			if (hasRetriesLeft()) {
 				this.connectionThread.triggerConnect(this, System.currentTimeMillis() + RETRYINTERVAL);
 				this.isConnected = true;
@@ -282,6 +313,9 @@ final class OutgoingConnection {
 
 			this.selectionKey.cancel();
 
+			// Data staged for the broken connection must not be sent over the next one
+			discardBatch();
+
 			// Error is fatal
 			LOG.error(ioe);
 
@@ -321,7 +355,9 @@ final class OutgoingConnection {
 	}
 
 	/**
-	 * Writes the content of the current {@link TransferEnvelope} object to the underlying TCP connection.
+	 * Writes the content of the current {@link TransferEnvelope} object to the underlying TCP connection. If envelopes
+	 * are coalesced into batches, the subsequent queued envelopes are written as well until the TCP connection does
+	 * not accept any more data.
 	 * <p>
 	 * This method should only be called by the {@link OutgoingConnectionThread} object.
 	 * 
@@ -331,6 +367,10 @@ final class OutgoingConnection {
 	 */
 	boolean write() throws IOException {
 
+		if (this.batchingChannel != null) {
+			return writeBatch();
+		}
+
 		final WritableByteChannel writableByteChannel = (WritableByteChannel) this.selectionKey.channel();
 
 		if (this.currentEnvelope == null) {
@@ -345,19 +385,113 @@ final class OutgoingConnection {
 		}
 
 		if (!this.serializer.write(writableByteChannel)) {
+			finishCurrentEnvelope();
+		}
+
+		return true;
+	}
 
-			// Make sure we recycle the attached memory or file buffers correctly
-			if (this.currentEnvelope.getBuffer() != null) {
-				this.currentEnvelope.getBuffer().recycleBuffer();
+	/**
+	 * Writes the queued envelopes through the batching channel, so that the headers and small buffers of several
+	 * envelopes are transmitted with a single gathering write. Envelopes with file buffers bypass the batching
+	 * channel, so their data can still be transfered directly from the file.
+	 * 
+	 * @return <code>true</code> if there is more data from this/other queued envelopes to be written to this channel
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the data to the channel
+	 */
+	private boolean writeBatch() throws IOException {
+
+		final SocketChannel socketChannel = (SocketChannel) this.selectionKey.channel();
+		this.batchingChannel.setTarget(socketChannel);
+
+		int numberOfEnvelopes = 0;
+
+		while (!this.batchingChannel.isCongested() && numberOfEnvelopes < MAXIMUM_NUMBER_OF_ENVELOPES_PER_WRITE) {
+
+			if (this.currentEnvelope == null) {
+				synchronized (this.queuedEnvelopes) {
+					if (this.queuedEnvelopes.isEmpty()) {
+						break;
+					}
+					this.currentEnvelope = this.queuedEnvelopes.peek();
+					this.serializer.setTransferEnvelope(this.currentEnvelope);
+				}
+
+				final Buffer buffer = this.currentEnvelope.getBuffer();
+				this.writeCurrentEnvelopeDirectly = (buffer != null && !buffer.isBackedByMemory());
 			}
 
-			synchronized (this.queuedEnvelopes) {
-				this.queuedEnvelopes.poll();
-				this.currentEnvelope = null;
+			if (this.writeCurrentEnvelopeDirectly) {
+				// The staged data must be on the wire before the envelope is written directly
+				if (this.batchingChannel.flush()) {
+					return true;
+				}
+				if (this.serializer.write(socketChannel)) {
+					return true;
+				}
+			} else if (this.serializer.write(this.batchingChannel)) {
+				continue;
 			}
+
+			finishCurrentEnvelope();
+			++numberOfEnvelopes;
 		}
 
-		return true;
+		if (this.batchingChannel.flush()) {
+			return true;
+		}
+
+		if (this.currentEnvelope != null) {
+			return true;
+		}
+
+		synchronized (this.queuedEnvelopes) {
+			return !this.queuedEnvelopes.isEmpty();
+		}
+	}
+
+	/**
+	 * Recycles the buffer of the current envelope, which has been entirely written, and removes the envelope from the
+	 * queue.
+	 */
+	private void finishCurrentEnvelope() {
+
+		// Make sure we recycle the attached memory or file buffers correctly
+		if (this.currentEnvelope.getBuffer() != null) {
+			this.currentEnvelope.getBuffer().recycleBuffer();
+		}
+
+		synchronized (this.queuedEnvelopes) {
+			this.queuedEnvelopes.poll();
+			this.currentEnvelope = null;
+		}
+	}
+
+	/**
+	 * Discards the data staged in the batching channel, for example because the TCP connection it was meant for has
+	 * been closed.
+	 */
+	private void discardBatch() {
+
+		if (this.batchingChannel != null) {
+			this.batchingChannel.clear();
+		}
+	}
+
+	/**
+	 * Checks whether data has been staged in the batching channel which has not yet been written to the TCP
+	 * connection.
+	 * 
+	 * @return <code>true</code> if staged data is pending, <code>false</code> otherwise
+	 */
+	private boolean hasStagedData() {
+
+		if (this.batchingChannel == null) {
+			return false;
+		}
+
+		return this.batchingChannel.hasPendingData();
 	}
 
 	/**
@@ -373,7 +507,7 @@ final class OutgoingConnection {
 
 		synchronized (this.queuedEnvelopes) {
 
-			if (this.queuedEnvelopes.isEmpty()) {
+			if (this.queuedEnvelopes.isEmpty() && !hasStagedData()) {
 
 				if (this.isSubscribedToWriteEvent) {
 
@@ -395,7 +529,7 @@ final class OutgoingConnection {
 
 		synchronized (this.queuedEnvelopes) {
 
-			if (!this.queuedEnvelopes.isEmpty()) {
+			if (!this.queuedEnvelopes.isEmpty() || hasStagedData()) {
 				return;
 			}
 
@@ -482,6 +616,10 @@ final class OutgoingConnection {
 				return false;
 			}
 
+			if (hasStagedData()) {
+				return false;
+			}
+
 			return this.queuedEnvelopes.isEmpty();
 		}
 	}
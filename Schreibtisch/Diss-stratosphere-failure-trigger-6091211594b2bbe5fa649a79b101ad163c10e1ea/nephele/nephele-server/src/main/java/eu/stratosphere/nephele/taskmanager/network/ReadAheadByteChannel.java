@@ -0,0 +1,162 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+/**
+ * A read-ahead byte channel serves the many small reads which are issued while deserializing a sequence of transfer
+ * envelopes from a read-ahead buffer. When the read-ahead buffer is exhausted, the next read is served by one
+ * scattering read from the underlying channel which fills the destination first and the read-ahead buffer with the
+ * data that follows.
+ * <p>
+ * As data may be buffered which the underlying channel no longer reports as readable, callers must keep on reading
+ * while {@link #hasBufferedData()} returns <code>true</code>.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class ReadAheadByteChannel implements ReadableByteChannel {
+
+	/**
+	 * The buffer holding the data read ahead. The buffer is always kept in read mode.
+	 */
+	private final ByteBuffer readAheadBuffer;
+
+	/**
+	 * Array used for the scattering reads from the underlying channel.
+	 */
+	private final ByteBuffer[] scatteringBuffers = new ByteBuffer[2];
+
+	/**
+	 * The underlying channel the data is read from.
+	 */
+	private final ScatteringByteChannel source;
+
+	/**
+	 * Constructs a new read-ahead byte channel.
+	 * 
+	 * @param source
+	 *        the underlying channel the data is read from
+	 * @param readAheadBuffer
+	 *        the buffer to hold the data read ahead
+	 */
+	ReadAheadByteChannel(final ScatteringByteChannel source, final ByteBuffer readAheadBuffer) {
+
+		this.source = source;
+		this.readAheadBuffer = readAheadBuffer;
+		this.readAheadBuffer.clear();
+		this.readAheadBuffer.limit(0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(final ByteBuffer dst) throws IOException {
+
+		if (!dst.hasRemaining()) {
+			return 0;
+		}
+
+		final int buffered = this.readAheadBuffer.remaining();
+		if (buffered > 0) {
+
+			final int length = dst.remaining();
+			if (length >= buffered) {
+				dst.put(this.readAheadBuffer);
+				return buffered;
+			}
+
+			final int limit = this.readAheadBuffer.limit();
+			this.readAheadBuffer.limit(this.readAheadBuffer.position() + length);
+			dst.put(this.readAheadBuffer);
+			this.readAheadBuffer.limit(limit);
+
+			return length;
+		}
+
+		// Fill the destination and read ahead with a single call
+		this.readAheadBuffer.clear();
+		this.scatteringBuffers[0] = dst;
+		this.scatteringBuffers[1] = this.readAheadBuffer;
+		final long bytesRead;
+		try {
+			bytesRead = this.source.read(this.scatteringBuffers);
+		} finally {
+			this.scatteringBuffers[0] = null;
+			this.readAheadBuffer.flip();
+		}
+
+		if (bytesRead < 0) {
+			return -1;
+		}
+
+		return (int) (bytesRead - this.readAheadBuffer.remaining());
+	}
+
+	/**
+	 * Checks whether data has been read ahead which has not been consumed yet.
+	 * 
+	 * @return <code>true</code> if data has been read ahead, <code>false</code> otherwise
+	 */
+	boolean hasBufferedData() {
+
+		return this.readAheadBuffer.hasRemaining();
+	}
+
+	/**
+	 * Returns the number of bytes which have been read ahead and not been consumed yet.
+	 * 
+	 * @return the number of bytes which have been read ahead and not been consumed yet
+	 */
+	int getNumberOfBufferedBytes() {
+
+		return this.readAheadBuffer.remaining();
+	}
+
+	/**
+	 * Returns the buffer holding the data read ahead, so it can be reused once this channel has been closed.
+	 * 
+	 * @return the buffer holding the data read ahead
+	 */
+	ByteBuffer getReadAheadBuffer() {
+
+		return this.readAheadBuffer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isOpen() {
+
+		return this.source.isOpen();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+
+		this.readAheadBuffer.clear();
+		this.readAheadBuffer.limit(0);
+		this.source.close();
+	}
+}
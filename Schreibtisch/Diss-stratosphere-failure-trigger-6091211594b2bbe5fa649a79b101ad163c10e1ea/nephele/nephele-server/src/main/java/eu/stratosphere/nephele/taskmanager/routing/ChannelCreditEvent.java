@@ -0,0 +1,100 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.nephele.taskmanager.routing;
+
+import eu.stratosphere.nephele.event.task.AbstractEvent;
+
+/**
+ * This event is sent by an {@link InputChannelContext} of a network channel to announce that it has consumed (or
+ * discarded) a number of buffer-carrying transfer envelopes. Each consumed envelope returns one credit to the sender,
+ * which may only have as many buffer-carrying envelopes in flight as it holds credits. This way, a slow receiver only
+ * stalls its own channel instead of occupying the buffers and the TCP connection shared with other channels.
+ * <p>
+ * When the input channel is activated, it sends a window event instead. A window event replaces the sender's credits
+ * rather than adding to them, so a sender whose previous receiver has vanished with unreturned credits can resume.
+ */
+public final class ChannelCreditEvent extends AbstractEvent {
+
+	/**
+	 * The number of credits returned to the sender.
+	 */
+	private final int credits;
+
+	/**
+	 * Stores whether the credits replace the sender's credits instead of adding to them.
+	 */
+	private final boolean window;
+
+	/**
+	 * Constructs a new channel credit event which returns credits to the sender.
+	 * 
+	 * @param credits
+	 *        the number of credits returned to the sender
+	 */
+	public ChannelCreditEvent(final int credits) {
+
+		if (credits <= 0) {
+			throw new IllegalArgumentException("Argument credits must be positive.");
+		}
+
+		this.credits = credits;
+		this.window = false;
+	}
+
+	/**
+	 * Constructs a new channel credit event.
+	 * 
+	 * @param credits
+	 *        the number of credits
+	 * @param window
+	 *        <code>true</code> if the credits replace the sender's credits, <code>false</code> if they are returned
+	 */
+	public ChannelCreditEvent(final int credits, final boolean window) {
+
+		if (credits < 0 || (credits == 0 && !window)) {
+			throw new IllegalArgumentException("Argument credits must be positive.");
+		}
+
+		this.credits = credits;
+		this.window = window;
+	}
+
+	/**
+	 * Default constructor required by kryo.
+	 */
+	@SuppressWarnings("unused")
+	private ChannelCreditEvent() {
+		this.credits = 0;
+		this.window = false;
+	}
+
+	/**
+	 * Returns the number of credits returned to the sender.
+	 * 
+	 * @return the number of credits returned to the sender
+	 */
+	public int getCredits() {
+		return this.credits;
+	}
+
+	/**
+	 * Checks whether the credits replace the sender's credits instead of adding to them.
+	 * 
+	 * @return <code>true</code> if the credits replace the sender's credits, <code>false</code> otherwise
+	 */
+	public boolean isWindow() {
+		return this.window;
+	}
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +43,7 @@ import eu.stratosphere.nephele.protocols.ChannelLookupProtocol;
 import eu.stratosphere.nephele.taskmanager.Task;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProvider;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProviderBroker;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferRedistributionController;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.GlobalBufferPool;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.LocalBufferPool;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.LocalBufferPoolOwner;
@@ -60,6 +62,14 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 
 	private static final boolean DEFAULT_MERGE_SPILLED_BUFFERS = true;
 
+	/**
+	 * The default interval of the buffer redistribution controller in milliseconds, a non-positive value disables
+	 * the controller.
+	 */
+	private static final long DEFAULT_BUFFER_REDISTRIBUTION_INTERVAL = -1L;
+
+	private static final boolean DEFAULT_ZERO_COPY_LOCAL_HANDOVER = true;
+
 	// TODO: Make this configurable
 	private static final int NUMBER_OF_CHANNELS_FOR_MULTICAST = 10;
 
@@ -81,6 +91,26 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 
 	private final boolean multicastEnabled = true;
 
+	/**
+	 * Stores whether memory buffers are handed over to a single co-located receiver instead of being copied.
+	 */
+	private final boolean zeroCopyLocalHandover;
+
+	/**
+	 * The number of bytes handed over from output channels to co-located input channels without copying.
+	 */
+	private final AtomicLong numberOfBytesHandedOver = new AtomicLong(0L);
+
+	/**
+	 * The number of bytes copied from output channels to co-located input channels.
+	 */
+	private final AtomicLong numberOfBytesCopied = new AtomicLong(0L);
+
+	/**
+	 * The controller shifting designated buffers between the local buffer pools, <code>null</code> if disabled.
+	 */
+	private final BufferRedistributionController bufferRedistributionController;
+
 	/**
 	 * This map caches transfer envelope receiver lists.
 	 */
@@ -111,9 +141,23 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 		this.mergeSpilledBuffers = GlobalConfiguration.getBoolean("channel.network.mergeSpilledBuffers",
 			DEFAULT_MERGE_SPILLED_BUFFERS);
 
+		this.zeroCopyLocalHandover = GlobalConfiguration.getBoolean("channel.network.zeroCopyLocalHandover",
+			DEFAULT_ZERO_COPY_LOCAL_HANDOVER);
+
+		final long redistributionInterval = GlobalConfiguration.getLong("channel.network.bufferRedistributionInterval",
+			DEFAULT_BUFFER_REDISTRIBUTION_INTERVAL);
+		if (redistributionInterval > 0L) {
+			this.bufferRedistributionController = new BufferRedistributionController(this.localBufferPoolOwner,
+				redistributionInterval);
+			this.bufferRedistributionController.start();
+		} else {
+			this.bufferRedistributionController = null;
+		}
+
 		LOG.info("Initialized default routing service with sender-side spilling "
 			+ (this.allowSenderSideSpilling ? "enabled" : "disabled")
-			+ (this.mergeSpilledBuffers ? " and spilled buffer merging enabled" : ""));
+			+ (this.mergeSpilledBuffers ? " and spilled buffer merging enabled" : "")
+			+ (this.zeroCopyLocalHandover ? ", zero-copy local handover enabled" : ""));
 	}
 
 	/**
@@ -270,6 +314,10 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 	 */
 	public void shutdown() {
 
+		if (this.bufferRedistributionController != null) {
+			this.bufferRedistributionController.shutdown();
+		}
+
 		this.networkService.shutDown();
 	}
 
@@ -293,7 +341,7 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 		final JobID jobID = envelope.getJobID();
 
 		final TransferEnvelope transferEnvelope = ReceiverNotFoundEvent.createEnvelopeWithEvent(jobID, receiver,
-			envelope.getSequenceNumber());
+			envelope.getSequenceNumber(), envelope.getBuffer() != null);
 
 		final ReceiverList receiverList = getReceiverList(jobID, receiver);
 		if (receiverList == null) {
@@ -303,8 +351,8 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 		processEnvelopeEnvelopeWithoutBuffer(transferEnvelope, receiverList);
 	}
 
-	private void processEnvelope(final TransferEnvelope transferEnvelope, final boolean freeSourceBuffer)
-			throws IOException, InterruptedException {
+	private void processEnvelope(final TransferEnvelope transferEnvelope, final boolean freeSourceBuffer,
+			final boolean allowHandOver) throws IOException, InterruptedException {
 
 		ReceiverList receiverList = null;
 		try {
@@ -327,16 +375,20 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 		if (transferEnvelope.getBuffer() == null) {
 			processEnvelopeEnvelopeWithoutBuffer(transferEnvelope, receiverList);
 		} else {
-			processEnvelopeWithBuffer(transferEnvelope, receiverList, freeSourceBuffer);
+			processEnvelopeWithBuffer(transferEnvelope, receiverList, freeSourceBuffer, allowHandOver);
 		}
 	}
 
 	private void processEnvelopeWithBuffer(final TransferEnvelope transferEnvelope,
-			final ReceiverList receiverList, final boolean freeSourceBuffer)
+			final ReceiverList receiverList, final boolean freeSourceBuffer, final boolean allowHandOver)
 			throws IOException, InterruptedException {
 
-		// Handle the most common (unicast) case first
-		if (!freeSourceBuffer) {
+		// Handle the most common (unicast) case first. A memory buffer from a local output channel is handed over to
+		// a single local receiver without copying, the receiver then recycles it into the sender's buffer pool.
+		// Buffers from the network are never handed over, they belong to the shared pool of the incoming connection.
+		final boolean handOver = freeSourceBuffer && allowHandOver
+			&& isHandOverPossible(transferEnvelope, receiverList);
+		if (!freeSourceBuffer || handOver) {
 
 			final List<ChannelID> localReceivers = receiverList.getLocalReceivers();
 			if (localReceivers.size() != 1) {
@@ -361,6 +413,10 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 					+ " is not an input channel, but is supposed to accept a buffer");
 			}
 
+			if (handOver) {
+				this.numberOfBytesHandedOver.addAndGet(transferEnvelope.getBuffer().size());
+			}
+
 			cc.queueTransferEnvelope(transferEnvelope);
 
 			return;
@@ -399,6 +455,7 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 						destBuffer.recycleBuffer();
 						throw e;
 					}
+					this.numberOfBytesCopied.addAndGet(srcBuffer.size());
 					// TODO: See if we can save one duplicate step here
 					final TransferEnvelope dup = transferEnvelope.duplicateWithoutBuffer();
 					dup.setBuffer(destBuffer);
@@ -422,6 +479,51 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 		}
 	}
 
+	/**
+	 * Checks whether the buffer of the given transfer envelope can be handed over to its receiver without copying. This
+	 * is the case if the envelope has exactly one receiver, this receiver runs on the local task manager and the buffer
+	 * is backed by memory.
+	 * 
+	 * @param transferEnvelope
+	 *        the transfer envelope to be routed
+	 * @param receiverList
+	 *        the list of receivers of the transfer envelope
+	 * @return <code>true</code> if the buffer can be handed over, <code>false</code> if it must be copied
+	 */
+	private boolean isHandOverPossible(final TransferEnvelope transferEnvelope, final ReceiverList receiverList) {
+
+		if (!this.zeroCopyLocalHandover) {
+			return false;
+		}
+
+		if (receiverList.hasRemoteReceivers() || receiverList.getLocalReceivers().size() != 1) {
+			return false;
+		}
+
+		return transferEnvelope.getBuffer().isBackedByMemory();
+	}
+
+	/**
+	 * Returns the number of bytes which have been handed over from output channels to co-located input channels
+	 * without copying.
+	 * 
+	 * @return the number of bytes handed over without copying
+	 */
+	public long getNumberOfBytesHandedOver() {
+
+		return this.numberOfBytesHandedOver.get();
+	}
+
+	/**
+	 * Returns the number of bytes which have been copied from output channels to co-located input channels.
+	 * 
+	 * @return the number of bytes copied
+	 */
+	public long getNumberOfBytesCopied() {
+
+		return this.numberOfBytesCopied.get();
+	}
+
 	private void processEnvelopeEnvelopeWithoutBuffer(final TransferEnvelope transferEnvelope,
 			final ReceiverList receiverList) throws IOException, InterruptedException {
 
@@ -554,7 +656,7 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 	public void routeEnvelopeFromOutputChannel(final TransferEnvelope transferEnvelope) throws IOException,
 			InterruptedException {
 
-		processEnvelope(transferEnvelope, true);
+		processEnvelope(transferEnvelope, true, true);
 	}
 
 	/**
@@ -564,7 +666,7 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 	public void routeEnvelopeFromInputChannel(final TransferEnvelope transferEnvelope) throws IOException,
 			InterruptedException {
 
-		processEnvelope(transferEnvelope, false);
+		processEnvelope(transferEnvelope, false, false);
 	}
 
 	/**
@@ -574,7 +676,7 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 	public void routeEnvelopeFromNetwork(final TransferEnvelope transferEnvelope, boolean freeSourceBuffer)
 			throws IOException, InterruptedException {
 
-		processEnvelope(transferEnvelope, freeSourceBuffer);
+		processEnvelope(transferEnvelope, freeSourceBuffer, false);
 	}
 
 	/**
@@ -594,8 +696,15 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 			it.next().logBufferUtilization();
 		}
 
+		if (this.bufferRedistributionController != null) {
+			this.bufferRedistributionController.logBufferUtilization();
+		}
+
 		this.networkService.logBufferUtilization();
 
+		System.out.println("\tLocal transfers: " + this.numberOfBytesHandedOver.get() + " bytes handed over, "
+			+ this.numberOfBytesCopied.get() + " bytes copied");
+
 		System.out.println("\tIncoming connections:");
 
 		final Iterator<Map.Entry<ChannelID, ChannelContext>> it2 = this.registeredChannels.entrySet()
@@ -717,11 +826,24 @@ public final class DefaultRoutingService implements RoutingService, BufferProvid
 			return;
 		}
 
-		final Iterator<LocalBufferPoolOwner> it = this.localBufferPoolOwner.values().iterator();
-		while (it.hasNext()) {
-			final LocalBufferPoolOwner lbpo = it.next();
-			lbpo.setDesignatedNumberOfBuffers((int) Math.ceil(buffersPerChannel
-				* lbpo.getMinimumNumberOfRequiredBuffers()));
+		// Do not interfere with a round of the buffer redistribution controller, but keep the buffers it has shifted
+		synchronized (this.localBufferPoolOwner) {
+
+			if (this.bufferRedistributionController != null) {
+				this.bufferRedistributionController.rebalanceAdjustments();
+			}
+
+			final Iterator<LocalBufferPoolOwner> it = this.localBufferPoolOwner.values().iterator();
+			while (it.hasNext()) {
+				final LocalBufferPoolOwner lbpo = it.next();
+				int designatedNumberOfBuffers = (int) Math.ceil(buffersPerChannel
+					* lbpo.getMinimumNumberOfRequiredBuffers());
+				if (this.bufferRedistributionController != null) {
+					designatedNumberOfBuffers = this.bufferRedistributionController.getAdjustedNumberOfBuffers(lbpo,
+						designatedNumberOfBuffers);
+				}
+				lbpo.setDesignatedNumberOfBuffers(designatedNumberOfBuffers);
+			}
 		}
 
 		if (this.multicastEnabled) {
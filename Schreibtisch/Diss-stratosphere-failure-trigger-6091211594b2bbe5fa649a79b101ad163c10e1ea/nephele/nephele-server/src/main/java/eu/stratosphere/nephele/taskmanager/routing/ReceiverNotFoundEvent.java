@@ -47,6 +47,11 @@ public final class ReceiverNotFoundEvent extends AbstractEvent {
 	 */
 	private final int sequenceNumber;
 
+	/**
+	 * Stores whether the envelope this event refers to carried a buffer
+	 */
+	private final boolean carriedBuffer;
+
 	/**
 	 * Constructs a new unknown receiver event.
 	 * 
@@ -54,8 +59,10 @@ public final class ReceiverNotFoundEvent extends AbstractEvent {
 	 *        the ID of the receiver which could not be found
 	 * @param sequenceNumber
 	 *        the sequence number of the envelope this event refers to
+	 * @param carriedBuffer
+	 *        <code>true</code> if the envelope this event refers to carried a buffer, <code>false</code> otherwise
 	 */
-	public ReceiverNotFoundEvent(final ChannelID receiverID, final int sequenceNumber) {
+	public ReceiverNotFoundEvent(final ChannelID receiverID, final int sequenceNumber, final boolean carriedBuffer) {
 
 		if (receiverID == null) {
 			throw new IllegalArgumentException("Argument unknownReceiverID must not be null");
@@ -67,6 +74,7 @@ public final class ReceiverNotFoundEvent extends AbstractEvent {
 
 		this.receiverID = receiverID;
 		this.sequenceNumber = sequenceNumber;
+		this.carriedBuffer = carriedBuffer;
 	}
 
 	/**
@@ -77,6 +85,7 @@ public final class ReceiverNotFoundEvent extends AbstractEvent {
 
 		this.receiverID = null;
 		this.sequenceNumber = 0;
+		this.carriedBuffer = false;
 	}
 
 	/**
@@ -99,6 +108,16 @@ public final class ReceiverNotFoundEvent extends AbstractEvent {
 		return this.sequenceNumber;
 	}
 
+	/**
+	 * Checks whether the envelope this event refers to carried a buffer.
+	 * 
+	 * @return <code>true</code> if the envelope this event refers to carried a buffer, <code>false</code> otherwise
+	 */
+	public boolean hasCarriedBuffer() {
+
+		return this.carriedBuffer;
+	}
+
 	/**
 	 * Creates a transfer envelope which only contains a ReceiverNotFoundEvent.
 	 * 
@@ -108,15 +127,18 @@ public final class ReceiverNotFoundEvent extends AbstractEvent {
 	 *        the channel ID of the receiver that could not be found
 	 * @param sequenceNumber
 	 *        the sequence number of the transfer envelope which caused the creation of this event
+	 * @param carriedBuffer
+	 *        <code>true</code> if the transfer envelope which caused the creation of this event carried a buffer
 	 * @return a transfer envelope which only contains a ReceiverNotFoundEvent
 	 */
 	public static TransferEnvelope createEnvelopeWithEvent(final JobID jobID, final ChannelID receiver,
-			final int sequenceNumber) {
+			final int sequenceNumber, final boolean carriedBuffer) {
 
 		final TransferEnvelope transferEnvelope = new TransferEnvelope(RECEIVER_NOT_FOUND_SEQUENCE_NUMBER, jobID,
 			receiver);
 
-		final ReceiverNotFoundEvent unknownReceiverEvent = new ReceiverNotFoundEvent(receiver, sequenceNumber);
+		final ReceiverNotFoundEvent unknownReceiverEvent = new ReceiverNotFoundEvent(receiver, sequenceNumber,
+			carriedBuffer);
 		transferEnvelope.addEvent(unknownReceiverEvent);
 
 		return transferEnvelope;
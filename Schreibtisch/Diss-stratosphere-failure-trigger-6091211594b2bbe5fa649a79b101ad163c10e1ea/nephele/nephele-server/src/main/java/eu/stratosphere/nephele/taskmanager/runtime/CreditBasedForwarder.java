@@ -0,0 +1,193 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.nephele.taskmanager.runtime;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.taskmanager.routing.AbstractOutputChannelForwarder;
+import eu.stratosphere.nephele.taskmanager.routing.ChannelCreditEvent;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+
+/**
+ * The credit based forwarder limits the number of buffer-carrying transfer envelopes a network output channel may have
+ * in flight. Every such envelope consumes one credit; the receiving input channel returns credits through
+ * {@link ChannelCreditEvent}s once it has consumed the envelopes. If no credit is left, the task thread blocks in
+ * {@link #push(TransferEnvelope)} until the receiver grants new credits. Envelopes which only carry events are
+ * forwarded without consuming credit.
+ * <p>
+ * Both sides derive the initial number of credits from the configuration key {@link #CREDITS_PER_CHANNEL_KEY}. Credit
+ * based flow control is disabled unless this key is set to a positive value. The initial number of credits is also the
+ * size of the window: when the receiver is (re)activated, it replaces the available credits with a fresh window, and
+ * credits granted beyond the window are dropped. Credits of envelopes which were in flight during an activation are
+ * thereby not counted twice.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class CreditBasedForwarder extends AbstractOutputChannelForwarder {
+
+	/**
+	 * The configuration key for the number of credits each network channel starts with.
+	 */
+	public static final String CREDITS_PER_CHANNEL_KEY = "channel.network.creditsPerChannel";
+
+	/**
+	 * The default number of credits per channel, <code>0</code> disables credit based flow control.
+	 */
+	public static final int DEFAULT_CREDITS_PER_CHANNEL = 0;
+
+	private static final Log LOG = LogFactory.getLog(CreditBasedForwarder.class);
+
+	private final ChannelID outputChannelID;
+
+	/**
+	 * The maximum number of credits the output channel may hold.
+	 */
+	private final int windowSize;
+
+	/**
+	 * The number of buffer-carrying envelopes which may still be forwarded, protected by the object's monitor.
+	 */
+	private int availableCredits;
+
+	/**
+	 * Stores whether the forwarder has been destroyed, protected by the object's monitor.
+	 */
+	private boolean isDestroyed = false;
+
+	public CreditBasedForwarder(final ChannelID outputChannelID, final int initialCredits,
+			final AbstractOutputChannelForwarder next) {
+		super(next);
+
+		if (next == null) {
+			throw new IllegalArgumentException("Argument next must not be null");
+		}
+
+		if (initialCredits <= 0) {
+			throw new IllegalArgumentException("Argument initialCredits must be positive");
+		}
+
+		this.outputChannelID = outputChannelID;
+		this.windowSize = initialCredits;
+		this.availableCredits = initialCredits;
+	}
+
+	/**
+	 * Returns the number of credits each network channel starts with according to the global configuration.
+	 * 
+	 * @return the number of credits per channel or <code>0</code> if credit based flow control is disabled
+	 */
+	public static int getConfiguredCreditsPerChannel() {
+
+		return Math.max(0, GlobalConfiguration.getInteger(CREDITS_PER_CHANNEL_KEY, DEFAULT_CREDITS_PER_CHANNEL));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void push(final TransferEnvelope transferEnvelope) throws IOException, InterruptedException {
+
+		if (transferEnvelope.getBuffer() != null) {
+
+			synchronized (this) {
+
+				while (this.availableCredits == 0) {
+
+					if (this.isDestroyed) {
+						recycleTransferEnvelope(transferEnvelope);
+						return;
+					}
+
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Output channel " + this.outputChannelID + " is waiting for credits");
+					}
+
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						recycleTransferEnvelope(transferEnvelope);
+						throw e;
+					}
+				}
+
+				--this.availableCredits;
+			}
+		}
+
+		getNext().push(transferEnvelope);
+	}
+
+	/**
+	 * Grants the given number of credits to the output channel and wakes up a task thread waiting for credits. This
+	 * method is called by the thread which delivers the {@link ChannelCreditEvent}, since the task thread itself may
+	 * be blocked until the credits arrive.
+	 * 
+	 * @param credits
+	 *        the number of credits to grant
+	 */
+	public void grantCredits(final int credits) {
+
+		synchronized (this) {
+			this.availableCredits = Math.min(this.availableCredits + credits, this.windowSize);
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Replaces the credits of the output channel with a fresh window announced by a (re)activated receiver and wakes up
+	 * a task thread waiting for credits.
+	 * 
+	 * @param credits
+	 *        the number of credits of the new window
+	 */
+	public void openWindow(final int credits) {
+
+		synchronized (this) {
+			this.availableCredits = Math.min(credits, this.windowSize);
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of credits currently available to the output channel.
+	 * 
+	 * @return the number of credits currently available to the output channel
+	 */
+	public int getAvailableCredits() {
+
+		synchronized (this) {
+			return this.availableCredits;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void destroy() {
+
+		synchronized (this) {
+			this.isDestroyed = true;
+			this.notifyAll();
+		}
+
+		super.destroy();
+	}
+}
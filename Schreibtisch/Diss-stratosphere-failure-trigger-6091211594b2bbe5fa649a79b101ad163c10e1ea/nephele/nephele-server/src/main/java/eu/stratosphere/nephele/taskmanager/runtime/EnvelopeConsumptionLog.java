@@ -22,6 +22,15 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +46,16 @@ import eu.stratosphere.nephele.util.AtomicEnumerator;
 import eu.stratosphere.nephele.util.FileUtils;
 import eu.stratosphere.nephele.util.StringUtils;
 
+/**
+ * The envelope consumption log records the order in which the envelopes of a task's input channels became available,
+ * so a re-executed task can consume its input in exactly the same order.
+ * <p>
+ * When a log from a previous execution exists, it is memory-mapped and envelopes are announced in the logged order.
+ * Each input channel keeps a queue of the log positions it still has to deliver, so an arriving envelope is matched
+ * to its log entry in constant time. New log entries are collected in memory and appended to the log file by a
+ * background writer which is shared by all logs of the task manager and forces the file to disk once per group of
+ * writes.
+ */
 public final class EnvelopeConsumptionLog {
 
 	private static final String ENVELOPE_CONSUMPTION_LOG_PREFIX = "cl_";
@@ -47,29 +66,80 @@ public final class EnvelopeConsumptionLog {
 
 	private static final int SIZE_OF_INTEGER = 4;
 
+	/**
+	 * The number of buffers each log uses to collect new entries, so the input path can continue while a full buffer
+	 * is written to disk.
+	 */
+	private static final int NUMBER_OF_WRITE_BUFFERS = 2;
+
 	private static final AtomicEnumerator<String> TEMP_PATHS = AtomicEnumerator.get(
 		GlobalConfiguration.getString(ConfigConstants.TASK_MANAGER_TMP_DIR_KEY,
 			System.getProperty("java.io.tmpdir")).split(File.pathSeparator));
 
+	/**
+	 * The thread which writes the entries of all consumption logs of this task manager to disk.
+	 */
+	private static final ExecutorService LOG_WRITER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "Envelope consumption log writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
 	private final File logFile;
 
 	private final long numberOfInitialLogEntries;
 
-	private final ByteBuffer outstandingEnvelopesAsByteBuffer;
+	/**
+	 * The memory-mapped log from the previous execution, <code>null</code> if no such log exists. Its position marks
+	 * the next entry to be announced.
+	 */
+	private final IntBuffer loggedEnvelopes;
+
+	/**
+	 * The positions of the logged envelopes which have already arrived but could not be announced yet.
+	 */
+	private final BitSet availableEnvelopes;
+
+	/**
+	 * The positions of the logged envelopes that each input channel still has to deliver, indexed by gate and channel.
+	 */
+	private PositionQueue[][] outstandingEnvelopes = new PositionQueue[0][];
 
-	private final IntBuffer outstandingEnvelopesAsIntBuffer;
+	/**
+	 * The position up to which the logged envelopes have been added to the queues of their input channels.
+	 */
+	private int numberOfIndexedEnvelopes = 0;
 
-	private final ByteBuffer announcedEnvelopesAsByteBuffer;
+	/**
+	 * The envelopes which arrived after their input channel's logged envelopes, in the order of their arrival.
+	 */
+	private final PositionQueue unloggedEnvelopes = new PositionQueue();
 
-	private final IntBuffer announcedEnvelopesAsIntBuffer;
+	private final BlockingQueue<ByteBuffer> emptyWriteBuffers = new ArrayBlockingQueue<ByteBuffer>(
+		NUMBER_OF_WRITE_BUFFERS);
+
+	private final AtomicInteger numberOfPendingWrites = new AtomicInteger(0);
 
 	private final ExecutionVertexID vertexID;
 
 	private final RuntimeEnvironment environment;
 
-	private long numberOfAnnouncedEnvelopes = 0L;
+	private ByteBuffer announcedEnvelopes = null;
+
+	private int numberOfAllocatedWriteBuffers = 0;
+
+	private boolean writesSubmitted = false;
+
+	/**
+	 * The channel to append to the log file, only accessed by the log writer thread.
+	 */
+	private FileChannel logFileChannel = null;
 
-	private long numberOfEntriesReadFromLog = 0L;
+	private long numberOfAnnouncedEnvelopes = 0L;
 
 	EnvelopeConsumptionLog(final ExecutionVertexID vertexID, final RuntimeEnvironment environment) {
 
@@ -81,46 +151,82 @@ public final class EnvelopeConsumptionLog {
 
 		this.logFile = new File(fileName);
 		System.out.println("writting Consumption log to " + this.logFile.getAbsolutePath());
+
+		IntBuffer loggedEnvelopes = null;
 		if (this.logFile.exists()) {
 
 			final long length = this.logFile.length();
 			if (length % SIZE_OF_INTEGER != 0) {
 				LOG.error("Channel consumption log " + fileName + " appears to be corrupt, discarding it...");
 				FileUtils.deleteSilently(this.logFile);
-				this.numberOfInitialLogEntries = 0L;
-			} else {
-				this.numberOfInitialLogEntries = length / SIZE_OF_INTEGER;
+			} else if (length > Integer.MAX_VALUE) {
+				LOG.error("Channel consumption log " + fileName + " is too large to be mapped, discarding it...");
+				FileUtils.deleteSilently(this.logFile);
+			} else if (length > 0L) {
+				loggedEnvelopes = mapLog(this.logFile, length);
 			}
 
 			LOG.info("Found existing consumption log for task " + this.vertexID + " with a size of " + length
 				+ " bytes");
+		}
 
+		if (loggedEnvelopes != null) {
+			this.loggedEnvelopes = loggedEnvelopes;
+			this.numberOfInitialLogEntries = loggedEnvelopes.limit();
+			this.availableEnvelopes = new BitSet(loggedEnvelopes.limit());
 		} else {
+			this.loggedEnvelopes = null;
 			this.numberOfInitialLogEntries = 0L;
+			this.availableEnvelopes = null;
 		}
+	}
 
-		this.outstandingEnvelopesAsByteBuffer = ByteBuffer.allocate(LOG_WINDOW_SIZE);
-		this.outstandingEnvelopesAsIntBuffer = this.outstandingEnvelopesAsByteBuffer.asIntBuffer();
+	private static String constructFileName(final ExecutionVertexID vertexID) {
+		return TEMP_PATHS.getNext() + File.separator + ENVELOPE_CONSUMPTION_LOG_PREFIX + vertexID;
+	}
 
-		this.announcedEnvelopesAsByteBuffer = ByteBuffer.allocate(LOG_WINDOW_SIZE);
-		this.announcedEnvelopesAsIntBuffer = this.announcedEnvelopesAsByteBuffer.asIntBuffer();
+	/**
+	 * Maps the given log file into memory.
+	 * 
+	 * @param logFile
+	 *        the log file to map
+	 * @param length
+	 *        the length of the log file in bytes
+	 * @return the mapped log file or <code>null</code> if the file could not be mapped
+	 */
+	private static IntBuffer mapLog(final File logFile, final long length) {
 
-		this.outstandingEnvelopesAsIntBuffer.limit(0);
+		FileChannel fc = null;
 
-		if (this.numberOfInitialLogEntries > 0) {
-			loadNextOutstandingEnvelopes();
+		try {
+
+			fc = new FileInputStream(logFile).getChannel();
+
+			// The mapping remains valid after the channel is closed
+			return fc.map(FileChannel.MapMode.READ_ONLY, 0L, length).asIntBuffer();
+
+		} catch (IOException ioe) {
+			LOG.error("Cannot map channel consumption log " + logFile.getAbsolutePath() + ", discarding it...");
+			LOG.error(StringUtils.stringifyException(ioe));
+			FileUtils.deleteSilently(logFile);
+		} finally {
+
+			if (fc != null) {
+				try {
+					fc.close();
+				} catch (IOException ioe) {
+				}
+			}
 		}
-	}
 
-	private static String constructFileName(final ExecutionVertexID vertexID) {
-		return TEMP_PATHS.getNext() + File.separator + ENVELOPE_CONSUMPTION_LOG_PREFIX + vertexID;
+		return null;
 	}
 
 	void reportEnvelopeAvailability(final AbstractInputChannel<? extends Record> inputChannel) {
 
 		synchronized (this) {
 
-			if (this.outstandingEnvelopesAsIntBuffer.hasRemaining()) {
+			if (this.loggedEnvelopes != null && this.loggedEnvelopes.hasRemaining()) {
 				addOutstandingEnvelope(inputChannel);
 			} else {
 				announce(inputChannel);
@@ -130,42 +236,36 @@ public final class EnvelopeConsumptionLog {
 
 	void finish() {
 
+		final Future<?> future;
+
 		synchronized (this) {
 
-			if (this.announcedEnvelopesAsIntBuffer.position() == 0) {
+			if (!this.writesSubmitted && (this.announcedEnvelopes == null || this.announcedEnvelopes.position() == 0)) {
 				return;
 			}
-		}
-
-		final EnvelopeConsumptionLog lock = this;
-
-		// Run this in a separate thread, so we will be distributed by the thread trying to interrupt this
-		// thread. However, wait for the thread to finish.
-
-		final Thread finisherThread = new Thread("Log finisher for " + this.environment.getTaskNameWithIndex()) {
-
-			/**
-			 * {@inheritDoc}
-			 */
-			@Override
-			public void run() {
-
-				synchronized (lock) {
-					writeAnnouncedEnvelopesBufferToDisk();
-				}
-			}
-		};
 
-		finisherThread.start();
+			future = submitAnnouncedEnvelopes(true);
+			this.writesSubmitted = false;
+		}
 
-		boolean regularExit = false;
-		while (!regularExit) {
+		// Wait for the log writer, even if the thread finishing the task is interrupted
+		boolean interrupted = false;
+		while (true) {
 			try {
-				finisherThread.join();
-				regularExit = true;
+				future.get();
+				break;
 			} catch (InterruptedException ie) {
+				interrupted = true;
+			} catch (ExecutionException ee) {
+				LOG.error(StringUtils.stringifyException(ee));
+				break;
 			}
 		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
 		System.out.println("Log finisher for " + this.environment.getTaskNameWithIndex() + " Filesize " + this.logFile.length());
 	}
 
@@ -176,7 +276,7 @@ public final class EnvelopeConsumptionLog {
 		}
 
 		synchronized (this) {
-			return this.outstandingEnvelopesAsIntBuffer.hasRemaining();
+			return this.loggedEnvelopes.hasRemaining();
 		}
 	}
 
@@ -187,104 +287,130 @@ public final class EnvelopeConsumptionLog {
 
 	private void addOutstandingEnvelope(final AbstractInputChannel<? extends Record> inputChannel) {
 
-		final int entryToTest = toEntry(inputChannel.getInputGate().getIndex(), inputChannel.getChannelIndex(), false);
-
-		boolean found = false;
+		final int gateIndex = inputChannel.getInputGate().getIndex();
+		final int channelIndex = inputChannel.getChannelIndex();
+		final PositionQueue queue = getOutstandingEnvelopes(gateIndex, channelIndex);
 
-		while (true) {
-
-			for (int i = this.outstandingEnvelopesAsIntBuffer.position(); i < this.outstandingEnvelopesAsIntBuffer
-				.limit(); ++i) {
-
-				if (this.outstandingEnvelopesAsIntBuffer.get(i) == entryToTest) {
-					// Mark data as available
-					this.outstandingEnvelopesAsIntBuffer.put(i, setDataAvailability(entryToTest, true));
-					found = true;
-					break;
-				}
-			}
+		// Index the log up to the next envelope of this channel
+		final int limit = this.loggedEnvelopes.limit();
+		while (queue.isEmpty() && this.numberOfIndexedEnvelopes < limit) {
 
-			if (!found) {
-
-				if (this.outstandingEnvelopesAsIntBuffer.limit() == this.outstandingEnvelopesAsIntBuffer.capacity()) {
-					loadNextOutstandingEnvelopes();
-					continue;
-				}
-
-				final int newEntry = setDataAvailability(entryToTest, true);
-				final int limit = this.outstandingEnvelopesAsIntBuffer.limit();
-				this.outstandingEnvelopesAsIntBuffer.limit(limit + 1);
-				this.outstandingEnvelopesAsIntBuffer.put(limit, newEntry);
-			}
-
-			break;
+			final int entry = this.loggedEnvelopes.get(this.numberOfIndexedEnvelopes);
+			getOutstandingEnvelopes(getInputGate(entry), getInputChannel(entry)).add(this.numberOfIndexedEnvelopes);
+			++this.numberOfIndexedEnvelopes;
 		}
 
-		int newPosition = this.outstandingEnvelopesAsIntBuffer.position();
-		int count = 0;
-		for (int i = this.outstandingEnvelopesAsIntBuffer.position(); i < this.outstandingEnvelopesAsIntBuffer.limit(); ++i) {
+		if (queue.isEmpty()) {
+			// The log does not contain any more envelopes of this channel
+			this.unloggedEnvelopes.add(toEntry(gateIndex, channelIndex, false));
+		} else {
+			// Mark data as available
+			this.availableEnvelopes.set(queue.remove());
+		}
 
-			final int entry = this.outstandingEnvelopesAsIntBuffer.get(i);
-			if (getDataAvailability(entry)) {
-				announce(toInputChannel(getInputGate(entry), getInputChannel(entry)));
-				newPosition = i + 1;
-				++count;
-			} else {
-				break;
-			}
+		// Announce all envelopes up to the first one which has not arrived yet
+		final int position = this.loggedEnvelopes.position();
+		final int newPosition = Math.min(this.availableEnvelopes.nextClearBit(position), limit);
+		for (int i = position; i < newPosition; ++i) {
+			final int entry = this.loggedEnvelopes.get(i);
+			announce(toInputChannel(getInputGate(entry), getInputChannel(entry)));
 		}
 
-		this.outstandingEnvelopesAsIntBuffer.position(Math.min(this.outstandingEnvelopesAsIntBuffer.limit(),
-			newPosition));
+		this.loggedEnvelopes.position(newPosition);
 
+		final int count = newPosition - position;
 		if (count > 0 && LOG.isDebugEnabled()) {
 			LOG.debug("Announced " + count + " buffers from log");
 			LOG.debug("Initial log entries: " + this.numberOfInitialLogEntries + ", announced "
 				+ this.numberOfAnnouncedEnvelopes);
-			LOG.debug("Outstanding buffer: " + this.outstandingEnvelopesAsIntBuffer.remaining());
+			LOG.debug("Outstanding buffer: " + this.loggedEnvelopes.remaining());
 			// TODO: Re-enable the following debug method when the log4j configuration is fixed
 			// showOustandingEnvelopeLog();
 		}
 
-		if (!this.outstandingEnvelopesAsIntBuffer.hasRemaining()) {
-			loadNextOutstandingEnvelopes();
+		if (!this.loggedEnvelopes.hasRemaining()) {
+
+			// Announce the envelopes which arrived beyond the log in the order of their arrival
+			while (!this.unloggedEnvelopes.isEmpty()) {
+				final int entry = this.unloggedEnvelopes.remove();
+				announce(toInputChannel(getInputGate(entry), getInputChannel(entry)));
+			}
+
+			// The queues are no longer needed
+			this.outstandingEnvelopes = new PositionQueue[0][];
 		}
 	}
 
-	void showOustandingEnvelopeLog() {
+	/**
+	 * Returns (and if necessary previously creates) the queue of the logged envelopes the given input channel still
+	 * has to deliver.
+	 * 
+	 * @param gateIndex
+	 *        the index of the input channel's gate
+	 * @param channelIndex
+	 *        the index of the input channel
+	 * @return the queue of the logged envelopes the given input channel still has to deliver
+	 */
+	private PositionQueue getOutstandingEnvelopes(final int gateIndex, final int channelIndex) {
+
+		if (gateIndex >= this.outstandingEnvelopes.length) {
+			final PositionQueue[][] outstandingEnvelopes = new PositionQueue[gateIndex + 1][];
+			System.arraycopy(this.outstandingEnvelopes, 0, outstandingEnvelopes, 0, this.outstandingEnvelopes.length);
+			this.outstandingEnvelopes = outstandingEnvelopes;
+		}
 
-		final int pos = this.outstandingEnvelopesAsIntBuffer.position();
-		final int limit = this.outstandingEnvelopesAsIntBuffer.limit();
+		PositionQueue[] queuesOfGate = this.outstandingEnvelopes[gateIndex];
+		if (queuesOfGate == null || channelIndex >= queuesOfGate.length) {
+			final int numberOfChannels = Math.max(channelIndex + 1,
+				this.environment.getInputGate(gateIndex).getNumberOfInputChannels());
+			final PositionQueue[] newQueuesOfGate = new PositionQueue[numberOfChannels];
+			if (queuesOfGate != null) {
+				System.arraycopy(queuesOfGate, 0, newQueuesOfGate, 0, queuesOfGate.length);
+			}
+			queuesOfGate = newQueuesOfGate;
+			this.outstandingEnvelopes[gateIndex] = queuesOfGate;
+		}
+
+		PositionQueue queue = queuesOfGate[channelIndex];
+		if (queue == null) {
+			queue = new PositionQueue();
+			queuesOfGate[channelIndex] = queue;
+		}
+
+		return queue;
+	}
+
+	void showOustandingEnvelopeLog() {
 
 		final StringBuilder sb = new StringBuilder();
 
-		for (int i = 0; i < this.outstandingEnvelopesAsIntBuffer.capacity(); ++i) {
+		synchronized (this) {
 
-			if (i < pos) {
-				sb.append('_');
-				continue;
-			}
+			final int pos = this.loggedEnvelopes.position();
+			final int limit = this.loggedEnvelopes.limit();
 
-			if (i >= limit) {
-				sb.append('_');
-				continue;
-			}
+			for (int i = pos; i < pos + (LOG_WINDOW_SIZE / SIZE_OF_INTEGER); ++i) {
 
-			final int entry = this.outstandingEnvelopesAsIntBuffer.get(i);
+				if (i >= limit) {
+					sb.append('_');
+					continue;
+				}
 
-			final int channelIndex = getInputChannel(entry);
-			final boolean dataAvailable = getDataAvailability(entry);
+				final int entry = this.loggedEnvelopes.get(i);
 
-			char ch = (char) (((int) 'A') + channelIndex + (dataAvailable ? 0 : 32));
+				final int channelIndex = getInputChannel(entry);
+				final boolean dataAvailable = this.availableEnvelopes.get(i);
 
-			sb.append(ch);
+				char ch = (char) (((int) 'A') + channelIndex + (dataAvailable ? 0 : 32));
 
-		}
+				sb.append(ch);
+			}
 
-		System.out.println(sb.toString());
-		System.out.println("Initial log entries: " + this.numberOfInitialLogEntries + ", announced "
-			+ this.numberOfAnnouncedEnvelopes);
-		System.out.println("Outstanding buffer: " + this.outstandingEnvelopesAsIntBuffer.remaining());
+			System.out.println(sb.toString());
+			System.out.println("Initial log entries: " + this.numberOfInitialLogEntries + ", announced "
+				+ this.numberOfAnnouncedEnvelopes);
+			System.out.println("Outstanding buffer: " + this.loggedEnvelopes.remaining());
+		}
 	}
 
 	long getNumberOfInitialLogEntries() {
@@ -292,108 +418,118 @@ public final class EnvelopeConsumptionLog {
 		return this.numberOfInitialLogEntries;
 	}
 
-	private void loadNextOutstandingEnvelopes() {
+	/**
+	 * Hands the buffer of announced envelopes to the log writer.
+	 * 
+	 * @param close
+	 *        <code>true</code> to close the log file after the buffer has been written
+	 * @return the future of the write
+	 */
+	private Future<?> submitAnnouncedEnvelopes(final boolean close) {
+
+		final ByteBuffer buffer;
+		if (this.announcedEnvelopes == null) {
+			buffer = ByteBuffer.allocate(0);
+		} else {
+			buffer = this.announcedEnvelopes;
+			buffer.flip();
+		}
 
-		final int pos = this.outstandingEnvelopesAsIntBuffer.position();
+		this.announcedEnvelopes = null;
+		this.writesSubmitted = true;
+		this.numberOfPendingWrites.incrementAndGet();
 
-		if (pos > 0) {
+		return LOG_WRITER.submit(new Runnable() {
 
-			final int rem = this.outstandingEnvelopesAsIntBuffer.remaining();
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void run() {
 
-			for (int i = 0; i < rem; ++i) {
-				this.outstandingEnvelopesAsIntBuffer.put(i, this.outstandingEnvelopesAsIntBuffer.get(i + pos));
+				writeToDisk(buffer, close);
 			}
+		});
+	}
 
-			this.outstandingEnvelopesAsIntBuffer.position(0);
-			this.outstandingEnvelopesAsIntBuffer.limit(rem);
-		}
-
-		if (this.numberOfEntriesReadFromLog == this.numberOfInitialLogEntries) {
-			return;
-		}
+	/**
+	 * Appends the given buffer to the log file. This method is only called by the log writer thread.
+	 * 
+	 * @param buffer
+	 *        the buffer to write
+	 * @param close
+	 *        <code>true</code> to close the log file after the buffer has been written
+	 */
+	private void writeToDisk(final ByteBuffer buffer, final boolean close) {
 
-		FileChannel fc = null;
+		// Force the log to disk only once for all writes which have queued up in the meantime
+		final boolean force = (this.numberOfPendingWrites.decrementAndGet() == 0 || close);
 
 		try {
 
-			this.outstandingEnvelopesAsByteBuffer.position(this.outstandingEnvelopesAsIntBuffer.limit()
-				* SIZE_OF_INTEGER);
-			this.outstandingEnvelopesAsByteBuffer.limit(this.outstandingEnvelopesAsByteBuffer.capacity());
-
-			fc = new FileInputStream(this.logFile).getChannel();
-			fc.position(this.numberOfEntriesReadFromLog * SIZE_OF_INTEGER);
-
-			int totalBytesRead = 0;
-
-			while (this.outstandingEnvelopesAsByteBuffer.hasRemaining()) {
-
-				final int bytesRead = fc.read(this.outstandingEnvelopesAsByteBuffer);
-				if (bytesRead == -1) {
-					break;
-				}
-
-				totalBytesRead += bytesRead;
+			if (this.logFileChannel == null) {
+				this.logFileChannel = new FileOutputStream(this.logFile, true).getChannel();
 			}
 
-			if (totalBytesRead % SIZE_OF_INTEGER != 0) {
-				LOG.error("Read " + totalBytesRead + " from " + this.logFile.getAbsolutePath()
-					+ ", file may be corrupt");
+			while (buffer.hasRemaining()) {
+				this.logFileChannel.write(buffer);
 			}
 
-			final int numberOfNewEntries = totalBytesRead / SIZE_OF_INTEGER;
-
-			this.outstandingEnvelopesAsIntBuffer.limit(this.outstandingEnvelopesAsIntBuffer.limit()
-				+ numberOfNewEntries);
-
-			this.numberOfEntriesReadFromLog += numberOfNewEntries;
-
-			fc.close();
+			if (force) {
+				this.logFileChannel.force(false);
+			}
 
 		} catch (IOException ioe) {
 			LOG.error(StringUtils.stringifyException(ioe));
 		} finally {
 
-			if (fc != null) {
+			if (close && this.logFileChannel != null) {
 				try {
-					fc.close();
+					this.logFileChannel.close();
 				} catch (IOException ioe) {
 				}
+				this.logFileChannel = null;
+			}
+
+			if (buffer.capacity() > 0) {
+				buffer.clear();
+				this.emptyWriteBuffers.offer(buffer);
 			}
 		}
 	}
 
-	private void writeAnnouncedEnvelopesBufferToDisk() {
-
-		FileChannel fc = null;
-
-		try {
-
-			this.announcedEnvelopesAsIntBuffer.flip();
-			this.announcedEnvelopesAsByteBuffer.position(this.announcedEnvelopesAsIntBuffer.position()
-				* SIZE_OF_INTEGER);
-			this.announcedEnvelopesAsByteBuffer.limit(this.announcedEnvelopesAsIntBuffer.limit() * SIZE_OF_INTEGER);
-
-			fc = new FileOutputStream(this.logFile, true).getChannel();
-
-			while (this.announcedEnvelopesAsByteBuffer.hasRemaining()) {
-				fc.write(this.announcedEnvelopesAsByteBuffer);
-			}
+	/**
+	 * Returns an empty buffer to collect announced envelopes in. If all buffers are waiting to be written, this method
+	 * blocks until the log writer has returned one of them.
+	 * 
+	 * @return an empty buffer to collect announced envelopes in
+	 */
+	private ByteBuffer takeEmptyWriteBuffer() {
+
+		ByteBuffer buffer = this.emptyWriteBuffers.poll();
+		if (buffer != null) {
+			return buffer;
+		}
 
-		} catch (IOException ioe) {
-			LOG.error(StringUtils.stringifyException(ioe));
-		} finally {
+		if (this.numberOfAllocatedWriteBuffers < NUMBER_OF_WRITE_BUFFERS) {
+			++this.numberOfAllocatedWriteBuffers;
+			return ByteBuffer.allocate(LOG_WINDOW_SIZE);
+		}
 
-			if (fc != null) {
-				try {
-					fc.close();
-				} catch (IOException ioe) {
-				}
+		boolean interrupted = false;
+		while (buffer == null) {
+			try {
+				buffer = this.emptyWriteBuffers.take();
+			} catch (InterruptedException ie) {
+				interrupted = true;
 			}
+		}
 
-			this.announcedEnvelopesAsIntBuffer.clear();
-			this.announcedEnvelopesAsByteBuffer.clear();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 
+		return buffer;
 	}
 
 	private AbstractInputChannel<? extends Record> toInputChannel(final int gateIndex,
@@ -412,11 +548,15 @@ public final class EnvelopeConsumptionLog {
 			return;
 		}
 
-		this.announcedEnvelopesAsIntBuffer.put(toEntry(inputChannel.getInputGate().getIndex(),
+		if (this.announcedEnvelopes == null) {
+			this.announcedEnvelopes = takeEmptyWriteBuffer();
+		}
+
+		this.announcedEnvelopes.putInt(toEntry(inputChannel.getInputGate().getIndex(),
 			inputChannel.getChannelIndex(), false));
 
-		if (!this.announcedEnvelopesAsIntBuffer.hasRemaining()) {
-			writeAnnouncedEnvelopesBufferToDisk();
+		if (!this.announcedEnvelopes.hasRemaining()) {
+			submitAnnouncedEnvelopes(false);
 		}
 	}
 
@@ -463,11 +603,6 @@ public final class EnvelopeConsumptionLog {
 		return ((entry & 0xfffffffe) | ((dataAvailable ? 1 : 0) & 0x01));
 	}
 
-	private static boolean getDataAvailability(final int entry) {
-
-		return ((entry & 0x01) > 0);
-	}
-
 	public static void removeLog(final ExecutionVertexID vertexID) {
 
 		if (vertexID == null) {
@@ -476,4 +611,45 @@ public final class EnvelopeConsumptionLog {
 
 		FileUtils.deleteSilently(new File(constructFileName(vertexID)));
 	}
+
+	/**
+	 * A growable FIFO queue of primitive integers.
+	 */
+	private static final class PositionQueue {
+
+		private int[] elements = new int[4];
+
+		private int head = 0;
+
+		private int size = 0;
+
+		boolean isEmpty() {
+
+			return (this.size == 0);
+		}
+
+		void add(final int element) {
+
+			if (this.size == this.elements.length) {
+				final int[] elements = new int[this.elements.length * 2];
+				for (int i = 0; i < this.size; ++i) {
+					elements[i] = this.elements[(this.head + i) % this.elements.length];
+				}
+				this.elements = elements;
+				this.head = 0;
+			}
+
+			this.elements[(this.head + this.size) % this.elements.length] = element;
+			++this.size;
+		}
+
+		int remove() {
+
+			final int element = this.elements[this.head];
+			this.head = (this.head + 1) % this.elements.length;
+			--this.size;
+
+			return element;
+		}
+	}
 }
@@ -0,0 +1,120 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.nephele.taskmanager.runtime;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.stratosphere.nephele.configuration.ConfigConstants;
+import eu.stratosphere.nephele.io.channels.AbstractOutputChannel;
+import eu.stratosphere.nephele.util.StringUtils;
+
+/**
+ * The output flusher bounds the latency of records written to the output channels of a task. Output channels only
+ * hand over a write buffer once it is full, so records of low-rate streams can otherwise sit in a partially filled
+ * buffer for a long time. The flusher periodically hands over every write buffer which has been held for longer than
+ * the maximum latency configured for the job (see {@link ConfigConstants#JOB_OUTPUT_MAX_LATENCY_KEY}).
+ * <p>
+ * The flusher writes to the channels from its own thread, locking one channel at a time. It skips channels which the
+ * task thread is currently writing to, so a channel that waits for a write buffer does not keep the flusher from
+ * handing over the buffers of the other channels.
+ */
+final class OutputFlusher extends Thread {
+
+	private static final Log LOG = LogFactory.getLog(OutputFlusher.class);
+
+	/**
+	 * The output channels whose write buffers are flushed.
+	 */
+	private final List<AbstractOutputChannel<?>> outputChannels = new CopyOnWriteArrayList<AbstractOutputChannel<?>>();
+
+	/**
+	 * The maximum time in milliseconds a record may wait in a partially filled write buffer.
+	 */
+	private final long maxLatency;
+
+	/**
+	 * The time in milliseconds between two checks of the output channels.
+	 */
+	private final long interval;
+
+	private volatile boolean isShutDown = false;
+
+	OutputFlusher(final String taskName, final long maxLatency) {
+		super("Output flusher for " + taskName);
+
+		if (maxLatency <= 0L) {
+			throw new IllegalArgumentException("Argument maxLatency must be positive");
+		}
+
+		this.maxLatency = maxLatency;
+		// Checking twice per latency bound keeps the actual latency below one and a half times the bound
+		this.interval = Math.max(1L, maxLatency / 2L);
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Registers an output channel with the flusher and marks the channel as latency bounded.
+	 * 
+	 * @param outputChannel
+	 *        the output channel to register
+	 */
+	void registerOutputChannel(final AbstractOutputChannel<?> outputChannel) {
+
+		outputChannel.enableLatencyBound();
+		this.outputChannels.add(outputChannel);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void run() {
+
+		while (!this.isShutDown) {
+
+			try {
+				Thread.sleep(this.interval);
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			for (final AbstractOutputChannel<?> outputChannel : this.outputChannels) {
+
+				try {
+					outputChannel.flushIfOlderThan(this.maxLatency);
+				} catch (IOException ioe) {
+					LOG.error(StringUtils.stringifyException(ioe));
+				} catch (InterruptedException ie) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the flusher. Write buffers which are still held by the output channels are no longer flushed.
+	 */
+	void shutdown() {
+
+		this.isShutDown = true;
+		interrupt();
+	}
+}
@@ -27,6 +27,7 @@ import org.apache.commons.logging.LogFactory;
 import eu.stratosphere.nephele.event.task.AbstractEvent;
 import eu.stratosphere.nephele.io.channels.AbstractInputChannel;
 import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.ChannelActivateEvent;
 import eu.stratosphere.nephele.io.channels.ChannelCloseEvent;
 import eu.stratosphere.nephele.io.channels.ByteBufferedInputChannelBroker;
 import eu.stratosphere.nephele.io.channels.ChannelID;
@@ -35,6 +36,7 @@ import eu.stratosphere.nephele.io.compression.CompressionException;
 import eu.stratosphere.nephele.io.compression.Decompressor;
 import eu.stratosphere.nephele.jobgraph.JobID;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferAvailabilityListener;
+import eu.stratosphere.nephele.taskmanager.routing.ChannelCreditEvent;
 import eu.stratosphere.nephele.taskmanager.routing.InputChannelContext;
 import eu.stratosphere.nephele.taskmanager.routing.ReceiverNotFoundEvent;
 import eu.stratosphere.nephele.taskmanager.routing.RoutingService;
@@ -62,8 +64,26 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 
 	private boolean destroyCalled = false;
 
+	/**
+	 * The number of credits the sender may hold, <code>0</code> if the channel does not use credit based flow control.
+	 */
+	private final int creditsPerChannel;
+
+	/**
+	 * The number of returned credits which triggers a {@link ChannelCreditEvent}, <code>0</code> if the channel does
+	 * not use credit based flow control.
+	 */
+	private final int creditAnnouncementThreshold;
+
+	/**
+	 * The number of credits which have been returned but not yet announced to the sender, protected by the monitor of
+	 * the queued envelopes.
+	 */
+	private int creditsToAnnounce = 0;
+
 	RuntimeInputChannelContext(final RuntimeInputGateContext inputGateContext, final RoutingService routingService,
-			final AbstractInputChannel<?> inputChannel, final EnvelopeConsumptionLog envelopeConsumptionLog) {
+			final AbstractInputChannel<?> inputChannel, final EnvelopeConsumptionLog envelopeConsumptionLog,
+			final int creditsPerChannel) {
 
 		this.inputGateContext = inputGateContext;
 		this.routingService = routingService;
@@ -71,6 +91,9 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 		this.inputChannel.setInputChannelBroker(this);
 		this.envelopeConsumptionLog = envelopeConsumptionLog;
 		this.isReexecuted = (envelopeConsumptionLog.getNumberOfInitialLogEntries() > 0L);
+		this.creditsPerChannel = creditsPerChannel;
+		// Announce credits in batches, but early enough so the sender never runs dry while the window is half full
+		this.creditAnnouncementThreshold = (creditsPerChannel > 0) ? Math.max(1, creditsPerChannel / 2) : 0;
 	}
 
 	/**
@@ -127,6 +150,7 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 	public void releaseConsumedReadBuffer(final Buffer buffer) {
 
 		TransferEnvelope transferEnvelope = null;
+		int creditsToSend = 0;
 		synchronized (this.queuedEnvelopes) {
 
 			if (this.queuedEnvelopes.isEmpty()) {
@@ -135,6 +159,7 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 			}
 
 			transferEnvelope = this.queuedEnvelopes.poll();
+			creditsToSend = returnCredit();
 		}
 
 		// Process events
@@ -157,6 +182,71 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 
 		// Recycle consumed read buffer
 		buffer.recycleBuffer();
+
+		if (creditsToSend > 0) {
+			announceCredits(creditsToSend);
+		}
+	}
+
+	/**
+	 * Returns the credit of a buffer-carrying envelope which has been consumed or discarded. The credits are announced
+	 * in batches, but all pending credits are announced once the queue has run empty, so the sender is never left
+	 * waiting for credits the receiver holds back. This method must be called while holding the monitor of the queued
+	 * envelopes.
+	 * 
+	 * @return the number of credits to announce to the sender or <code>0</code> if no announcement is due yet
+	 */
+	private int returnCredit() {
+
+		if (this.creditAnnouncementThreshold == 0) {
+			return 0;
+		}
+
+		if (++this.creditsToAnnounce < this.creditAnnouncementThreshold && !this.queuedEnvelopes.isEmpty()) {
+			return 0;
+		}
+
+		final int credits = this.creditsToAnnounce;
+		this.creditsToAnnounce = 0;
+
+		return credits;
+	}
+
+	/**
+	 * Sends a {@link ChannelCreditEvent} with the given number of credits to the connected output channel.
+	 * 
+	 * @param credits
+	 *        the number of credits to announce
+	 */
+	private void announceCredits(final int credits) {
+
+		try {
+			transferEventToOutputChannel(new ChannelCreditEvent(credits));
+		} catch (Exception e) {
+			LOG.error(StringUtils.stringifyException(e));
+		}
+	}
+
+	/**
+	 * Returns the number of credits the sender may hold when the channel is activated. Envelopes the receiver has
+	 * queued or consumed without announcing their credits yet are deducted, since their credits are returned later.
+	 * 
+	 * @return the number of credits the sender may hold when the channel is activated
+	 */
+	private int getCreditWindow() {
+
+		synchronized (this.queuedEnvelopes) {
+
+			int creditsHeld = this.creditsToAnnounce;
+			final Iterator<TransferEnvelope> it = this.queuedEnvelopes.iterator();
+			while (it.hasNext()) {
+				if (it.next().getBuffer() != null) {
+					++creditsHeld;
+				}
+			}
+
+			return Math.max(0, this.creditsPerChannel - creditsHeld);
+		}
 	}
 
 	/**
@@ -165,6 +255,16 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 	@Override
 	public void transferEventToOutputChannel(AbstractEvent event) throws IOException, InterruptedException {
 
+		if (event instanceof ChannelActivateEvent) {
+
+			// Only credit based channels need to be activated, their activation opens the sender's window
+			if (this.creditsPerChannel == 0) {
+				return;
+			}
+
+			event = new ChannelCreditEvent(getCreditWindow(), true);
+		}
+
 		final TransferEnvelope ephemeralTransferEnvelope = new TransferEnvelope(0, getJobID(), getChannelID());
 
 		ephemeralTransferEnvelope.addEvent(event);
@@ -181,6 +281,7 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 		final int sequenceNumber = transferEnvelope.getSequenceNumber();
 
 		AbstractEvent eventToSend = null;
+		int creditsToSend = 0;
 
 		if (ReceiverNotFoundEvent.isReceiverNotFoundEvent(transferEnvelope)) {
 			return;
@@ -188,16 +289,16 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 
 		synchronized (this.queuedEnvelopes) {
 
+			final int expectedSequenceNumber = this.lastReceivedEnvelope + 1;
 			if (this.destroyCalled) {
+
 				final Buffer buffer = transferEnvelope.getBuffer();
 				if (buffer != null) {
 					buffer.recycleBuffer();
+					// The sender may still be waiting for the credit of the discarded envelope
+					creditsToSend = returnCredit();
 				}
-				return;
-			}
-
-			final int expectedSequenceNumber = this.lastReceivedEnvelope + 1;
-			if (sequenceNumber != expectedSequenceNumber) {
+			} else if (sequenceNumber != expectedSequenceNumber) {
 
 				// We received an envelope with higher sequence number than expected
 				if (sequenceNumber > expectedSequenceNumber) {
@@ -236,6 +337,8 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 				final Buffer buffer = transferEnvelope.getBuffer();
 				if (buffer != null) {
 					buffer.recycleBuffer();
+					// The sender has spent a credit on the discarded envelope
+					creditsToSend = returnCredit();
 				}
 			} else {
 
@@ -254,6 +357,10 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 				LOG.error(StringUtils.stringifyException(e));
 			}
 		}
+
+		if (creditsToSend > 0) {
+			announceCredits(creditsToSend);
+		}
 	}
 
 	/**
@@ -315,6 +422,7 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 	public void destroy() {
 
 		final Queue<Buffer> buffersToRecycle = new ArrayDeque<Buffer>();
+		int creditsToSend = 0;
 
 		synchronized (this.queuedEnvelopes) {
 
@@ -326,11 +434,21 @@ final class RuntimeInputChannelContext implements InputChannelContext, ByteBuffe
 					buffersToRecycle.add(envelope.getBuffer());
 				}
 			}
+
+			// The sender may still be running, so return the credits of the discarded and unannounced envelopes
+			if (this.creditAnnouncementThreshold > 0) {
+				creditsToSend = this.creditsToAnnounce + buffersToRecycle.size();
+				this.creditsToAnnounce = 0;
+			}
 		}
 
 		while (!buffersToRecycle.isEmpty()) {
 			buffersToRecycle.poll().recycleBuffer();
 		}
+
+		if (creditsToSend > 0) {
+			announceCredits(creditsToSend);
+		}
 	}
 
 	/**
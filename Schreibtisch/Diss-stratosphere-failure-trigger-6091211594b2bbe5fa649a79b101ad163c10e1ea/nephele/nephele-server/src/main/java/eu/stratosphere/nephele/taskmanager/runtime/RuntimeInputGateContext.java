@@ -23,6 +23,7 @@ import eu.stratosphere.nephele.io.channels.AbstractInputChannel;
 import eu.stratosphere.nephele.io.channels.Buffer;
 import eu.stratosphere.nephele.io.channels.BufferFactory;
 import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.ChannelType;
 import eu.stratosphere.nephele.io.channels.FileBufferManager;
 import eu.stratosphere.nephele.io.compression.CompressionBufferProvider;
 import eu.stratosphere.nephele.io.compression.CompressionException;
@@ -53,6 +54,12 @@ final class RuntimeInputGateContext implements BufferProvider, InputGateContext,
 
 	private Decompressor decompressor = null;
 
+	/**
+	 * The number of credits each network input channel grants to its sender, <code>0</code> if credit based flow
+	 * control is disabled.
+	 */
+	private final int creditsPerChannel;
+
 	RuntimeInputGateContext(final String taskName, final RoutingService routingService,
 			final RuntimeInputGate<? extends Record> inputGate, final EnvelopeConsumptionLog envelopeConsumptionLog) {
 
@@ -64,6 +71,7 @@ final class RuntimeInputGateContext implements BufferProvider, InputGateContext,
 		this.envelopeConsumptionLog = envelopeConsumptionLog;
 
 		this.fileBufferManager = FileBufferManager.getInstance();
+		this.creditsPerChannel = CreditBasedForwarder.getConfiguredCreditsPerChannel();
 	}
 
 	/**
@@ -127,7 +135,22 @@ final class RuntimeInputGateContext implements BufferProvider, InputGateContext,
 	@Override
 	public int getMinimumNumberOfRequiredBuffers() {
 
-		return this.inputGate.getNumberOfInputChannels();
+		final int numberOfInputChannels = this.inputGate.getNumberOfInputChannels();
+		if (this.creditsPerChannel <= 1) {
+			return numberOfInputChannels;
+		}
+
+		// Each credit based channel may have as many buffers in flight as it has granted credits
+		int minimumNumberOfRequiredBuffers = 0;
+		for (int i = 0; i < numberOfInputChannels; ++i) {
+			if (this.inputGate.getInputChannel(i).getType() == ChannelType.NETWORK) {
+				minimumNumberOfRequiredBuffers += this.creditsPerChannel;
+			} else {
+				++minimumNumberOfRequiredBuffers;
+			}
+		}
+
+		return minimumNumberOfRequiredBuffers;
 	}
 
 	/**
@@ -139,6 +162,15 @@ final class RuntimeInputGateContext implements BufferProvider, InputGateContext,
 		this.localBufferPool.setDesignatedNumberOfBuffers(numberOfBuffers);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LocalBufferPool getLocalBufferPool() {
+
+		return this.localBufferPool;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -197,8 +229,10 @@ final class RuntimeInputGateContext implements BufferProvider, InputGateContext,
 				+ " is not of type AbstractByteBufferedInputChannel");
 		}
 
+		final int credits = (channel.getType() == ChannelType.NETWORK) ? this.creditsPerChannel : 0;
+
 		return new RuntimeInputChannelContext(this, this.routingService,
-			(AbstractInputChannel<? extends Record>) channel, this.envelopeConsumptionLog);
+			(AbstractInputChannel<? extends Record>) channel, this.envelopeConsumptionLog, credits);
 	}
 
 	/**
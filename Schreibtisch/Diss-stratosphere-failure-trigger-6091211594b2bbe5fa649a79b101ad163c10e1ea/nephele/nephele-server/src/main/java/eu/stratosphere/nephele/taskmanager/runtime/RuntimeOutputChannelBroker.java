@@ -26,6 +26,7 @@ import eu.stratosphere.nephele.io.channels.ByteBufferedOutputChannelBroker;
 import eu.stratosphere.nephele.io.channels.ChannelType;
 import eu.stratosphere.nephele.io.compression.CompressionException;
 import eu.stratosphere.nephele.io.compression.Compressor;
+import eu.stratosphere.nephele.io.compression.DecompressionCostEvent;
 import eu.stratosphere.nephele.taskmanager.routing.AbstractOutputChannelForwarder;
 import eu.stratosphere.nephele.taskmanager.routing.OutputChannelForwardingChain;
 import eu.stratosphere.nephele.taskmanager.routing.ReceiverNotFoundEvent;
@@ -120,6 +121,8 @@ final class RuntimeOutputChannelBroker extends AbstractOutputChannelForwarder im
 			this.closeAcknowledgmentReceived = true;
 		} else if (event instanceof ReceiverNotFoundEvent) {
 			this.lastSequenceNumberWithReceiverNotFound = ((ReceiverNotFoundEvent) event).getSequenceNumber();
+		} else if (event instanceof DecompressionCostEvent) {
+			this.outputChannel.processEvent(event);
 		} else if (event instanceof AbstractTaskEvent) {
 			throw new IllegalStateException("Received synchronous task event " + event);
 		}
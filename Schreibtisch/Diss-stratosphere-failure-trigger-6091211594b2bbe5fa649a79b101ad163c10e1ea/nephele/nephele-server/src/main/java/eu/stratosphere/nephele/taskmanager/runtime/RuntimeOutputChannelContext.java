@@ -21,17 +21,25 @@ import eu.stratosphere.nephele.io.channels.ChannelID;
 import eu.stratosphere.nephele.io.channels.ChannelType;
 import eu.stratosphere.nephele.jobgraph.JobID;
 import eu.stratosphere.nephele.taskmanager.routing.AbstractOutputChannelContext;
+import eu.stratosphere.nephele.taskmanager.routing.ChannelCreditEvent;
 import eu.stratosphere.nephele.taskmanager.routing.OutputChannelForwardingChain;
+import eu.stratosphere.nephele.taskmanager.routing.ReceiverNotFoundEvent;
 
 public final class RuntimeOutputChannelContext extends AbstractOutputChannelContext {
 
 	private final AbstractOutputChannel<?> byteBufferedOutputChannel;
 
+	/**
+	 * The forwarder enforcing credit based flow control or <code>null</code> if the channel is not credit based.
+	 */
+	private final CreditBasedForwarder creditBasedForwarder;
+
 	RuntimeOutputChannelContext(final AbstractOutputChannel<?> byteBufferedOutputChannel,
-			final OutputChannelForwardingChain forwardingChain) {
+			final OutputChannelForwardingChain forwardingChain, final CreditBasedForwarder creditBasedForwarder) {
 		super(forwardingChain);
 
 		this.byteBufferedOutputChannel = byteBufferedOutputChannel;
+		this.creditBasedForwarder = creditBasedForwarder;
 	}
 
 	/**
@@ -87,4 +95,32 @@ public final class RuntimeOutputChannelContext extends AbstractOutputChannelCont
 
 		this.byteBufferedOutputChannel.processEvent(event);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void processEventSynchronously(final AbstractEvent event) {
+
+		if (this.creditBasedForwarder != null) {
+
+			if (event instanceof ChannelCreditEvent) {
+				// The task thread may be blocked waiting for these credits, so they must be granted right away
+				final ChannelCreditEvent creditEvent = (ChannelCreditEvent) event;
+				if (creditEvent.isWindow()) {
+					this.creditBasedForwarder.openWindow(creditEvent.getCredits());
+				} else {
+					this.creditBasedForwarder.grantCredits(creditEvent.getCredits());
+				}
+				return;
+			}
+
+			if (event instanceof ReceiverNotFoundEvent && ((ReceiverNotFoundEvent) event).hasCarriedBuffer()) {
+				// The envelope has been dropped, so the receiver will never return its credit
+				this.creditBasedForwarder.grantCredits(1);
+			}
+		}
+
+		super.processEventSynchronously(event);
+	}
 }
@@ -45,10 +45,17 @@ final class RuntimeOutputGateContext implements BufferProvider, OutputGateContex
 
 	private Compressor compressor = null;
 
+	/**
+	 * The number of credits each network output channel starts with, <code>0</code> if credit based flow control is
+	 * disabled.
+	 */
+	private final int creditsPerChannel;
+
 	RuntimeOutputGateContext(final RuntimeTaskContext taskContext, final RuntimeOutputGate<? extends Record> outputGate) {
 
 		this.taskContext = taskContext;
 		this.outputGate = outputGate;
+		this.creditsPerChannel = CreditBasedForwarder.getConfiguredCreditsPerChannel();
 	}
 
 	AbstractID getFileOwnerID() {
@@ -157,6 +164,7 @@ final class RuntimeOutputGateContext implements BufferProvider, OutputGateContex
 		// Construct the forwarding chain
 		RuntimeOutputChannelBroker outputChannelBroker;
 		AbstractOutputChannelForwarder last;
+		CreditBasedForwarder creditBasedForwarder = null;
 		if (outputChannel.getType() == ChannelType.FILE) {
 
 			// Special case for file channels
@@ -179,7 +187,12 @@ final class RuntimeOutputGateContext implements BufferProvider, OutputGateContex
 			 * runtimeDispatcher);
 			 * final ForwardingBarrier forwardingBarrier = new ForwardingBarrier(channelID, spillingBarrier);
 			 */
-			final ForwardingBarrier forwardingBarrier = new ForwardingBarrier(channelID, runtimeDispatcher);
+			AbstractOutputChannelForwarder dispatcherPredecessor = runtimeDispatcher;
+			if (outputChannel.getType() == ChannelType.NETWORK && this.creditsPerChannel > 0) {
+				creditBasedForwarder = new CreditBasedForwarder(channelID, this.creditsPerChannel, runtimeDispatcher);
+				dispatcherPredecessor = creditBasedForwarder;
+			}
+			final ForwardingBarrier forwardingBarrier = new ForwardingBarrier(channelID, dispatcherPredecessor);
 			final EphemeralCheckpoint checkpoint = this.taskContext.getEphemeralCheckpoint();
 			if (checkpoint != null) {
 				final EphemeralCheckpointForwarder checkpointForwarder = new EphemeralCheckpointForwarder(checkpoint,
@@ -196,7 +209,13 @@ final class RuntimeOutputGateContext implements BufferProvider, OutputGateContex
 		// Set forwarding chain for broker
 		outputChannelBroker.setForwardingChain(forwardingChain);
 
-		return new RuntimeOutputChannelContext(outputChannel, forwardingChain);
+		// Bound the time records may wait in partially filled write buffers
+		final OutputFlusher outputFlusher = this.taskContext.getOutputFlusher();
+		if (outputFlusher != null) {
+			outputFlusher.registerOutputChannel(outputChannel);
+		}
+
+		return new RuntimeOutputChannelContext(outputChannel, forwardingChain, creditBasedForwarder);
 	}
 
 	/**
@@ -37,6 +37,7 @@ import eu.stratosphere.nephele.jobgraph.JobID;
 import eu.stratosphere.nephele.profiling.TaskManagerProfiler;
 import eu.stratosphere.nephele.services.memorymanager.MemoryManager;
 import eu.stratosphere.nephele.taskmanager.Task;
+import eu.stratosphere.nephele.taskmanager.TaskCheckpointStatistics;
 import eu.stratosphere.nephele.taskmanager.TaskManager;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.LocalBufferPoolOwner;
 import eu.stratosphere.nephele.taskmanager.routing.RoutingService;
@@ -304,6 +305,28 @@ public final class RuntimeTask implements Task, ExecutionObserver {
 		this.taskManager.checkpointStateChanged(this.environment.getJobID(), this.vertexID, newCheckpointState);
 	}
 
+	/**
+	 * Requests a cost-based checkpoint decision for this task from the job manager.
+	 * 
+	 * @param runtime
+	 *        the CPU time the task has consumed so far in milliseconds
+	 * @param amountOfDataReceived
+	 *        the number of bytes the task has received so far
+	 * @param amountOfDataTransmitted
+	 *        the number of bytes the task has transmitted so far
+	 * @return <code>true</code> if the task shall write its checkpoint, <code>false</code> otherwise
+	 * @throws IOException
+	 *         thrown if an error occurs while communicating with the job manager
+	 * @throws InterruptedException
+	 *         thrown if the caller is interrupted while waiting for the job manager's decision
+	 */
+	public boolean requestCostBasedCheckpointDecision(final long runtime, final long amountOfDataReceived,
+			final long amountOfDataTransmitted) throws IOException, InterruptedException {
+
+		return this.taskManager.requestCheckpointDecision(new TaskCheckpointStatistics(this.environment.getJobID(),
+			this.vertexID, runtime, amountOfDataReceived, amountOfDataTransmitted));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
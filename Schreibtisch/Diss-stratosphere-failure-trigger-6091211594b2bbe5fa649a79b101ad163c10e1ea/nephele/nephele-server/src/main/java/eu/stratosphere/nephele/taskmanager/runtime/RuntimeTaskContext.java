@@ -22,6 +22,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import eu.stratosphere.nephele.checkpointing.EphemeralCheckpoint;
+import eu.stratosphere.nephele.configuration.ConfigConstants;
 import eu.stratosphere.nephele.execution.RuntimeEnvironment;
 import eu.stratosphere.nephele.executiongraph.CheckpointState;
 import eu.stratosphere.nephele.io.AbstractID;
@@ -59,6 +60,12 @@ public final class RuntimeTaskContext implements BufferProvider, AsynchronousEve
 
 	private CompressionBufferProvider compressionBufferProvider = null;
 
+	/**
+	 * The flusher bounding the latency of the task's output channels or <code>null</code> if no latency bound is
+	 * configured for the job.
+	 */
+	private final OutputFlusher outputFlusher;
+
 	RuntimeTaskContext(final RuntimeTask task, final CheckpointState initialCheckpointState,
 			final RoutingService routingService) {
 
@@ -92,6 +99,15 @@ public final class RuntimeTaskContext implements BufferProvider, AsynchronousEve
 
 		this.routingService = routingService;
 		this.envelopeConsumptionLog = new EnvelopeConsumptionLog(task.getVertexID(), environment);
+
+		final long maxOutputLatency = environment.getJobConfiguration().getLong(
+			ConfigConstants.JOB_OUTPUT_MAX_LATENCY_KEY, ConfigConstants.DEFAULT_JOB_OUTPUT_MAX_LATENCY);
+		if (maxOutputLatency > 0L && this.numberOfOutputChannels > 0) {
+			this.outputFlusher = new OutputFlusher(environment.getTaskNameWithIndex(), maxOutputLatency);
+			this.outputFlusher.start();
+		} else {
+			this.outputFlusher = null;
+		}
 	}
 
 	RoutingService getRoutingService() {
@@ -104,6 +120,16 @@ public final class RuntimeTaskContext implements BufferProvider, AsynchronousEve
 		return this.ephemeralCheckpoint;
 	}
 
+	/**
+	 * Returns the flusher bounding the latency of the task's output channels.
+	 * 
+	 * @return the output flusher or <code>null</code> if no latency bound is configured for the job
+	 */
+	OutputFlusher getOutputFlusher() {
+
+		return this.outputFlusher;
+	}
+
 	/**
 	 * Returns (and if necessary previously creates) a compression buffer provider for output gate contexts. This method
 	 * must not be called from input gate contexts since input gate contexts are supposed to have their own compression
@@ -156,6 +182,11 @@ public final class RuntimeTaskContext implements BufferProvider, AsynchronousEve
 	@Override
 	public void clearLocalBufferPool() {
 
+		// Stop flushing the output channels
+		if (this.outputFlusher != null) {
+			this.outputFlusher.shutdown();
+		}
+
 		// Clear the buffer cache
 		this.localBufferPool.destroy();
 
@@ -204,7 +235,8 @@ public final class RuntimeTaskContext implements BufferProvider, AsynchronousEve
 		if (!this.ephemeralCheckpoint.isUndecided()) {
 			return;
 		}
-		
+
+		// In cost-based mode, the decision is obtained from the job manager's cost model
 
 		// TODO: Remove this and implement decision logic for ephemeral checkpoint
 		LOG.info("Checkpoint state of " + this.task.getRuntimeEnvironment().getTaskNameWithIndex() + " is UNDECIDED and requests decision");
@@ -310,6 +342,10 @@ public final class RuntimeTaskContext implements BufferProvider, AsynchronousEve
 			this.envelopeConsumptionLog);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
 	public LocalBufferPool getLocalBufferPool() {
 
 		return this.localBufferPool;
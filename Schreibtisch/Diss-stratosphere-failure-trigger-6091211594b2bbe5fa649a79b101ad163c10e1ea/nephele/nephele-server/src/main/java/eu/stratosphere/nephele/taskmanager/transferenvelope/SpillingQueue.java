@@ -16,19 +16,54 @@
 package eu.stratosphere.nephele.taskmanager.transferenvelope;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
 import eu.stratosphere.nephele.io.AbstractID;
 
 import eu.stratosphere.nephele.io.channels.Buffer;
 import eu.stratosphere.nephele.io.channels.FileBufferManager;
 import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProvider;
-
+import eu.stratosphere.nephele.util.StringUtils;
+
+/**
+ * A queue of transfer envelopes which moves the buffers of its envelopes to hard disk when they occupy too much main
+ * memory. Once the memory buffers in the queue exceed the memory watermark, the {@link SpillingQueueThread} spills
+ * the most recently added envelopes until the queue is back at half the watermark. The envelopes at the head, which
+ * are being consumed, and at the tail, which are still being added to, are never spilled asynchronously. The buffers
+ * of contiguous envelopes are written to one region of the queue's file. When the consumer approaches spilled
+ * envelopes, the thread reads them back ahead of the consumer as long as the queue stays below its watermark.
+ * Neither the producer nor the consumer wait for this I/O.
+ */
 public final class SpillingQueue implements Queue<TransferEnvelope> {
 
+	/**
+	 * The configuration key for the number of bytes of main memory a queue may hold before it starts spilling.
+	 */
+	public static final String MEMORY_WATERMARK_KEY = "channel.spillingQueue.memoryWatermark";
+
+	/**
+	 * The default memory watermark in bytes.
+	 */
+	public static final long DEFAULT_MEMORY_WATERMARK = 8L * 1024L * 1024L;
+
+	/**
+	 * The maximum number of bytes read back ahead of the consumer if the queue has no memory watermark.
+	 */
+	private static final long READ_AHEAD_LIMIT = 4L * 1024L * 1024L;
+
+	private static final Log LOG = LogFactory.getLog(SpillingQueue.class);
+
 	private final FileBufferManager fileBufferManager;
 
 	private final AbstractID ownerID;
@@ -43,7 +78,32 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 
 	private final AtomicInteger sizeOfMemoryBuffers = new AtomicInteger(0);
 
-	private boolean allowAsynchronousUnspilling = true;
+	private volatile boolean allowAsynchronousUnspilling = true;
+
+	/**
+	 * The number of bytes of main memory above which the queue starts spilling, <code>0</code> to never spill
+	 * asynchronously.
+	 */
+	private final long memoryWatermark;
+
+	private final AtomicBoolean spillRequested = new AtomicBoolean(false);
+
+	private final AtomicBoolean readAheadRequested = new AtomicBoolean(false);
+
+	/**
+	 * The number of bytes of the queued envelopes which currently reside on hard disk.
+	 */
+	private final AtomicLong sizeOfFileBuffers = new AtomicLong(0L);
+
+	private final AtomicLong numberOfSpilledBytes = new AtomicLong(0L);
+
+	private final AtomicLong numberOfReadAheadBytes = new AtomicLong(0L);
+
+	private long numberOfPolledEnvelopes = 0L;
+
+	private long totalResidencyTime = 0L;
+
+	private long maximumResidencyTime = 0L;
 
 	private static final class SpillingQueueID extends AbstractID {
 
@@ -65,10 +125,26 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 	}
 
 	public SpillingQueue(final AbstractID ownerID, final BufferProvider bufferProvider) {
+		this(ownerID, bufferProvider, GlobalConfiguration.getLong(MEMORY_WATERMARK_KEY, DEFAULT_MEMORY_WATERMARK));
+	}
+
+	/**
+	 * Constructs a new spilling queue.
+	 * 
+	 * @param ownerID
+	 *        the ID of the owner of the file the queue spills to
+	 * @param bufferProvider
+	 *        the buffer provider to read spilled buffers back into, possibly <code>null</code>
+	 * @param memoryWatermark
+	 *        the number of bytes of main memory above which the queue starts spilling, <code>0</code> to never spill
+	 *        asynchronously
+	 */
+	public SpillingQueue(final AbstractID ownerID, final BufferProvider bufferProvider, final long memoryWatermark) {
 
 		this.ownerID = ownerID;
 		this.fileBufferManager = FileBufferManager.getInstance();
 		this.bufferProvider = bufferProvider;
+		this.memoryWatermark = memoryWatermark;
 	}
 
 	/**
@@ -96,6 +172,7 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 		this.head = null;
 		this.tail = null;
 		this.sizeOfMemoryBuffers.set(0);
+		this.sizeOfFileBuffers.set(0L);
 		this.size.set(0);
 	}
 
@@ -219,7 +296,12 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 		final Buffer buffer = transferEnvelope.getBuffer();
 		if (buffer != null) {
 			if (buffer.isBackedByMemory()) {
-				this.sizeOfMemoryBuffers.addAndGet(buffer.size());
+				if (this.sizeOfMemoryBuffers.addAndGet(buffer.size()) > this.memoryWatermark
+					&& this.memoryWatermark > 0) {
+					request(this.spillRequested);
+				}
+			} else {
+				this.sizeOfFileBuffers.addAndGet(buffer.size());
 			}
 		}
 
@@ -264,19 +346,11 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 		}
 
 		TransferEnvelope te;
-		SpillingQueueThread unspillThread = null;
-		SpillingQueueElement lockedElement = null;
+		long arrivalTime;
 		synchronized (this.head) {
 
+			arrivalTime = this.head.getArrivalTimeOfHead();
 			te = this.head.poll();
-			final Buffer buffer = te.getBuffer();
-			if (buffer != null) {
-				if (!buffer.isBackedByMemory() && this.allowAsynchronousUnspilling) {
-					unspillThread = new SpillingQueueThread(this.bufferProvider, this.head, this);
-					unspillThread.start();
-					lockedElement = this.head;
-				}
-			}
 
 			if (this.head.size() == 0) {
 				this.head = this.head.getNextElement();
@@ -287,25 +361,32 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 			}
 		}
 
-		// We have triggered the spilling queue thread
-		if (unspillThread != null) {
-			unspillThread.waitUntilFirstLockIsAcquired();
-			// Wait until the spilling queue thread has finished processing this element
-			synchronized (lockedElement) {
-			}
-		}
-
 		// Keep track of how much main memory is stuck inside this queue
 		final Buffer buffer = te.getBuffer();
 		if (buffer != null) {
 			if (buffer.isBackedByMemory()) {
 				this.sizeOfMemoryBuffers.addAndGet(-buffer.size());
+			} else {
+				this.sizeOfFileBuffers.addAndGet(-buffer.size());
 			}
 		}
 
+		if (arrivalTime >= 0L) {
+			final long residencyTime = System.currentTimeMillis() - arrivalTime;
+			this.totalResidencyTime += residencyTime;
+			this.maximumResidencyTime = Math.max(this.maximumResidencyTime, residencyTime);
+			++this.numberOfPolledEnvelopes;
+		}
+
 		// Decrease element counter
 		this.size.decrementAndGet();
 
+		// Read spilled envelopes back before the consumer reaches them
+		if (this.allowAsynchronousUnspilling && this.bufferProvider != null && this.sizeOfFileBuffers.get() > 0L
+			&& this.sizeOfMemoryBuffers.get() < getReadAheadLimit()) {
+			request(this.readAheadRequested);
+		}
+
 		return te;
 	}
 
@@ -330,19 +411,161 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 			elem = elem.getNextElement();
 		}
 
-		int reclaimedMemory = 0;
+		long reclaimedMemory = 0L;
 
 		while (elem != null) {
 
-			reclaimedMemory += elem.spill(this.ownerID, this.fileBufferManager);
+			synchronized (elem) {
+				reclaimedMemory += spillElement(elem);
+			}
 			elem = elem.getNextElement();
 		}
 
-		this.sizeOfMemoryBuffers.addAndGet(-reclaimedMemory);
+		return reclaimedMemory;
+	}
+
+	/**
+	 * Spills the given element and updates the statistics. The caller must hold the element's monitor.
+	 * 
+	 * @param elem
+	 *        the element to spill
+	 * @return the number of bytes of main memory reclaimed
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the buffers to the file
+	 */
+	private int spillElement(final SpillingQueueElement elem) throws IOException {
+
+		final int reclaimedMemory = elem.spill(this.ownerID, this.fileBufferManager);
+		if (reclaimedMemory > 0) {
+			this.sizeOfMemoryBuffers.addAndGet(-reclaimedMemory);
+			this.sizeOfFileBuffers.addAndGet(reclaimedMemory);
+			this.numberOfSpilledBytes.addAndGet(reclaimedMemory);
+		}
 
 		return reclaimedMemory;
 	}
 
+	/**
+	 * Sets the given request flag and schedules this queue with the spilling queue thread, unless the request is
+	 * already pending.
+	 * 
+	 * @param requestFlag
+	 *        the flag of the request
+	 */
+	private void request(final AtomicBoolean requestFlag) {
+
+		if (requestFlag.compareAndSet(false, true)) {
+			SpillingQueueThread.getInstance().schedule(this);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of main memory up to which the queue reads spilled envelopes back.
+	 * 
+	 * @return the number of bytes up to which the queue reads spilled envelopes back
+	 */
+	private long getReadAheadLimit() {
+
+		if (this.memoryWatermark > 0) {
+			return this.memoryWatermark;
+		}
+
+		return READ_AHEAD_LIMIT;
+	}
+
+	/**
+	 * Processes the pending spill and read-ahead requests of this queue. This method is called by the
+	 * {@link SpillingQueueThread}.
+	 */
+	void processPendingRequests() {
+
+		if (this.spillRequested.getAndSet(false)) {
+			try {
+				spillAsynchronously();
+			} catch (IOException ioe) {
+				LOG.error(StringUtils.stringifyException(ioe));
+			}
+		}
+
+		if (this.readAheadRequested.getAndSet(false)) {
+			readAhead();
+		}
+	}
+
+	/**
+	 * Spills the most recently added elements until the queue is back at half its memory watermark. The head element,
+	 * which is being consumed, and the tail element, which is being filled, are not spilled. Only the monitors of the
+	 * individual elements are held while writing, so producer and consumer can continue.
+	 * 
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the buffers to the file
+	 */
+	private void spillAsynchronously() throws IOException {
+
+		SpillingQueueElement elem;
+		synchronized (this) {
+			elem = this.head;
+		}
+
+		final List<SpillingQueueElement> candidates = new ArrayList<SpillingQueueElement>();
+		while (elem != null) {
+			synchronized (elem) {
+				elem = elem.getNextElement();
+			}
+			if (elem != null) {
+				candidates.add(elem);
+			}
+		}
+
+		final long target = this.memoryWatermark / 2;
+		for (int i = candidates.size() - 2; i >= 0; --i) {
+
+			if (this.sizeOfMemoryBuffers.get() <= target) {
+				break;
+			}
+
+			final SpillingQueueElement candidate = candidates.get(i);
+			synchronized (candidate) {
+				spillElement(candidate);
+			}
+		}
+	}
+
+	/**
+	 * Reads spilled elements back into main memory, starting at the head of the queue, until the queue reaches its
+	 * read-ahead limit or the buffer provider runs out of buffers.
+	 */
+	private void readAhead() {
+
+		if (this.bufferProvider == null || !this.allowAsynchronousUnspilling) {
+			return;
+		}
+
+		SpillingQueueElement elem;
+		synchronized (this) {
+			elem = this.head;
+		}
+
+		final long limit = getReadAheadLimit();
+		while (elem != null && this.sizeOfFileBuffers.get() > 0L && this.sizeOfMemoryBuffers.get() < limit) {
+
+			synchronized (elem) {
+				try {
+					final int usedMemory = elem.unspill(this.bufferProvider);
+					if (usedMemory > 0) {
+						this.sizeOfMemoryBuffers.addAndGet(usedMemory);
+						this.sizeOfFileBuffers.addAndGet(-usedMemory);
+						this.numberOfReadAheadBytes.addAndGet(usedMemory);
+					}
+				} catch (IOException ioe) {
+					LOG.error(StringUtils.stringifyException(ioe));
+					return;
+				}
+				elem = elem.getNextElement();
+			}
+		}
+	}
+
 	public synchronized long spillSynchronouslyIncludingHead() throws IOException {
 
 		return spill(true);
@@ -385,6 +608,14 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 		}
 
 		str.append('\n');
+		str.append(this.numberOfSpilledBytes.get());
+		str.append(" bytes spilled, ");
+		str.append(this.numberOfReadAheadBytes.get());
+		str.append(" bytes read ahead, average residency time ");
+		str.append(getAverageResidencyTime());
+		str.append(" ms, maximum residency time ");
+		str.append(getMaximumResidencyTime());
+		str.append(" ms\n");
 
 		System.out.println(str.toString());
 	}
@@ -394,12 +625,56 @@ public final class SpillingQueue implements Queue<TransferEnvelope> {
 		return this.sizeOfMemoryBuffers.get();
 	}
 
+	/**
+	 * Returns the total number of bytes this queue has spilled to hard disk.
+	 * 
+	 * @return the total number of bytes spilled
+	 */
+	public long getNumberOfSpilledBytes() {
+
+		return this.numberOfSpilledBytes.get();
+	}
+
+	/**
+	 * Returns the total number of bytes this queue has read back from hard disk ahead of its consumer.
+	 * 
+	 * @return the total number of bytes read ahead
+	 */
+	public long getNumberOfReadAheadBytes() {
+
+		return this.numberOfReadAheadBytes.get();
+	}
+
+	/**
+	 * Returns the average time the envelopes polled from this queue have spent in the queue.
+	 * 
+	 * @return the average residency time in milliseconds
+	 */
+	public synchronized long getAverageResidencyTime() {
+
+		if (this.numberOfPolledEnvelopes == 0L) {
+			return 0L;
+		}
+
+		return this.totalResidencyTime / this.numberOfPolledEnvelopes;
+	}
+
+	/**
+	 * Returns the maximum time an envelope polled from this queue has spent in the queue.
+	 * 
+	 * @return the maximum residency time in milliseconds
+	 */
+	public synchronized long getMaximumResidencyTime() {
+
+		return this.maximumResidencyTime;
+	}
+
 	public void increaseAmountOfMainMemoryInQueue(int amount) {
 
 		this.sizeOfMemoryBuffers.addAndGet(amount);
 	}
 
-	public synchronized void disableAsynchronousUnspilling() {
+	public void disableAsynchronousUnspilling() {
 		this.allowAsynchronousUnspilling = false;
 	}
 }
@@ -17,6 +17,7 @@ package eu.stratosphere.nephele.taskmanager.transferenvelope;
 
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
@@ -50,6 +51,11 @@ final class SpillingQueueElement {
 
 	private SpillingQueueElement nextElement = null;
 
+	/**
+	 * The times at which the envelopes were added, indexed by their sequence numbers modulo the size limit.
+	 */
+	private final long[] arrivalTimes = new long[SIZE_LIMIT];
+
 	private final class SpillingQueueElementIterator implements Iterator<TransferEnvelope> {
 
 		private int headSequenceNumber;
@@ -154,6 +160,8 @@ final class SpillingQueueElement {
 			throw new IllegalStateException("Cannot add transfer envelope to this spilling queue element");
 		}
 
+		this.arrivalTimes[transferEnvelope.getSequenceNumber() % SIZE_LIMIT] = System.currentTimeMillis();
+
 		if (this.tailSequenceNumber == -1) {
 			this.tailSequenceNumber = transferEnvelope.getSequenceNumber();
 			this.headSequenceNumber = this.tailSequenceNumber;
@@ -213,6 +221,20 @@ final class SpillingQueueElement {
 		return transferEnvelope;
 	}
 
+	/**
+	 * Returns the time at which the envelope at the head of this element was added.
+	 * 
+	 * @return the time at which the head envelope was added or <code>-1</code> if the element is empty
+	 */
+	long getArrivalTimeOfHead() {
+
+		if (this.headSequenceNumber == -1) {
+			return -1L;
+		}
+
+		return this.arrivalTimes[this.headSequenceNumber % SIZE_LIMIT];
+	}
+
 	TransferEnvelope poll() {
 
 		if (this.headSequenceNumber == -1) {
@@ -343,6 +365,18 @@ final class SpillingQueueElement {
 		return this.nextElement;
 	}
 
+	/**
+	 * Moves the memory buffers of this element to the owner's file. The buffers are written into one contiguous region
+	 * of the file, so that they can be read back sequentially.
+	 * 
+	 * @param ownerID
+	 *        the ID of the file's owner
+	 * @param fileBufferManager
+	 *        the file buffer manager which manages the owner's file
+	 * @return the number of bytes of main memory reclaimed
+	 * @throws IOException
+	 *         thrown if an error occurs while writing the buffers to the file
+	 */
 	int spill(final AbstractID ownerID, final FileBufferManager fileBufferManager) throws IOException {
 
 		if (this.headSequenceNumber == -1) {
@@ -361,9 +395,8 @@ final class SpillingQueueElement {
 			}
 
 			final int size = buffer.size();
-			final Buffer fileBuffer = BufferFactory.createFromFile(size, ownerID, fileBufferManager, false, true);
-			buffer.copyToBuffer(fileBuffer);
-			this.bufferRef = fileBuffer;
+			this.bufferRef = BufferFactory.createFromMemoryBuffers(new Buffer[] { buffer }, ownerID,
+				fileBufferManager)[0];
 			buffer.recycleBuffer();
 
 			return size;
@@ -371,30 +404,37 @@ final class SpillingQueueElement {
 
 		@SuppressWarnings("unchecked")
 		final Queue<Object> bufferQueue = (Queue<Object>) this.bufferRef;
+		final List<Buffer> memoryBuffers = new ArrayList<Buffer>(bufferQueue.size());
+		for (final Object obj : bufferQueue) {
+			if (obj != NULL_OBJECT && ((Buffer) obj).isBackedByMemory()) {
+				memoryBuffers.add((Buffer) obj);
+			}
+		}
+
+		if (memoryBuffers.isEmpty()) {
+			return 0;
+		}
+
+		final Buffer[] spilledBuffers = memoryBuffers.toArray(new Buffer[memoryBuffers.size()]);
+		final Buffer[] fileBuffers = BufferFactory.createFromMemoryBuffers(spilledBuffers, ownerID,
+			fileBufferManager);
+
+		// Replace the memory buffers by the file buffers, keeping the order of the queue
 		final int queueSize = bufferQueue.size();
 		int reclaimedMemory = 0;
 		int count = 0;
+		int spilled = 0;
 
 		while (count++ < queueSize) {
 
 			final Object obj = bufferQueue.poll();
-			if (obj == NULL_OBJECT) {
+			if (spilled < spilledBuffers.length && obj == spilledBuffers[spilled]) {
+				bufferQueue.offer(fileBuffers[spilled]);
+				reclaimedMemory += spilledBuffers[spilled].size();
+				spilledBuffers[spilled++].recycleBuffer();
+			} else {
 				bufferQueue.offer(obj);
-				continue;
 			}
-
-			final Buffer buffer = (Buffer) obj;
-			if (!buffer.isBackedByMemory()) {
-				bufferQueue.offer(buffer);
-				continue;
-			}
-
-			final int size = buffer.size();
-			final Buffer fileBuffer = BufferFactory.createFromFile(size, ownerID, fileBufferManager, false, true);
-			buffer.copyToBuffer(fileBuffer);
-			bufferQueue.offer(fileBuffer);
-			buffer.recycleBuffer();
-			reclaimedMemory += size;
 		}
 
 		return reclaimedMemory;
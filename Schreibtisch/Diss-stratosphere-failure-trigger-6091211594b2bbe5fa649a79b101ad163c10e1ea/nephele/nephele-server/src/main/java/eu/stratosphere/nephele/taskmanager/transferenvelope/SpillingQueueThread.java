@@ -15,38 +15,62 @@
 
 package eu.stratosphere.nephele.taskmanager.transferenvelope;
 
-import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProvider;
 import eu.stratosphere.nephele.util.StringUtils;
 
+/**
+ * The spilling queue thread moves the buffers of {@link SpillingQueue} objects between main memory and hard disk in
+ * the background, so neither the producers nor the consumers of a queue wait for the I/O. Queues schedule themselves
+ * with the thread whenever they exceed their memory watermark or are drained towards spilled data. The thread is a
+ * daemon thread shared by all queues of the task manager.
+ */
 public final class SpillingQueueThread extends Thread {
 
 	private static final Log LOG = LogFactory.getLog(SpillingQueueThread.class);
 
-	private final Object monitorObject = new Object();
+	/**
+	 * The singleton instance, created when it is first requested.
+	 */
+	private static SpillingQueueThread instance = null;
 
-	private boolean firstLockAcquired = false;
+	/**
+	 * The queues with pending spill or read-ahead requests.
+	 */
+	private final LinkedBlockingQueue<SpillingQueue> scheduledQueues = new LinkedBlockingQueue<SpillingQueue>();
 
-	private final BufferProvider bufferProvider;
+	private SpillingQueueThread() {
+		super("SpillingQueueThread");
+		setDaemon(true);
+	}
 
-	private final SpillingQueueElement startElem;
+	/**
+	 * Returns the spilling queue thread, starting it if necessary.
+	 * 
+	 * @return the spilling queue thread
+	 */
+	static synchronized SpillingQueueThread getInstance() {
 
-	private final SpillingQueue spillingQueue;
+		if (instance == null) {
+			instance = new SpillingQueueThread();
+			instance.start();
+		}
 
-	private final int unspillLimit;
+		return instance;
+	}
 
-	SpillingQueueThread(final BufferProvider bufferProvider, final SpillingQueueElement startElem,
-			final SpillingQueue spillingQueue) {
+	/**
+	 * Schedules the given queue to have its pending requests processed.
+	 * 
+	 * @param spillingQueue
+	 *        the queue with pending requests
+	 */
+	void schedule(final SpillingQueue spillingQueue) {
 
-		this.setName("SpillinQueueThreas");
-		this.bufferProvider = bufferProvider;
-		this.startElem = startElem;
-		this.spillingQueue = spillingQueue;
-		this.unspillLimit = 4 * 1024 * 1024; // 4MB
+		this.scheduledQueues.add(spillingQueue);
 	}
 
 	/**
@@ -55,56 +79,20 @@ public final class SpillingQueueThread extends Thread {
 	@Override
 	public void run() {
 
-		SpillingQueueElement elem = this.startElem;
-		if (elem == null) {
-			LOG.error("SpillingQueueThread has been started with startElem == null");
-			return;
-		}
-
-		int usedMemory = 0;
+		while (true) {
 
-		while (elem != null) {
-
-			synchronized (elem) {
-
-				synchronized (this.monitorObject) {
-					if (!this.firstLockAcquired) {
-						this.firstLockAcquired = true;
-						this.monitorObject.notify();
-					}
-				}
-
-				try {
-					usedMemory += elem.unspill(this.bufferProvider);
-				} catch (IOException ioe) {
-					LOG.error(StringUtils.stringifyException(ioe));
-				}
-
-				if (usedMemory >= this.unspillLimit) {
-					this.spillingQueue.increaseAmountOfMainMemoryInQueue(usedMemory);
-					return;
-				}
+			final SpillingQueue spillingQueue;
+			try {
+				spillingQueue = this.scheduledQueues.take();
+			} catch (InterruptedException e) {
+				return;
 			}
 
-			elem = elem.getNextElement();
-		}
-
-		this.spillingQueue.increaseAmountOfMainMemoryInQueue(usedMemory);
-	}
-
-	void waitUntilFirstLockIsAcquired() {
-
-		try {
-
-			synchronized (this.monitorObject) {
-
-				while (!this.firstLockAcquired) {
-
-					this.monitorObject.wait();
-				}
+			try {
+				spillingQueue.processPendingRequests();
+			} catch (Throwable t) {
+				LOG.error(StringUtils.stringifyException(t));
 			}
-		} catch (InterruptedException e) {
-			LOG.error(StringUtils.stringifyException(e));
 		}
 	}
 }
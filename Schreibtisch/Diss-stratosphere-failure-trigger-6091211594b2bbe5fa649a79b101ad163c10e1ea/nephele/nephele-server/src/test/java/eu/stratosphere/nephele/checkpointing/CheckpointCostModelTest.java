@@ -0,0 +1,259 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
+import eu.stratosphere.nephele.execution.ExecutionState;
+import eu.stratosphere.nephele.execution.librarycache.LibraryCacheManager;
+import eu.stratosphere.nephele.executiongraph.CheckpointState;
+import eu.stratosphere.nephele.executiongraph.ExecutionGraph;
+import eu.stratosphere.nephele.executiongraph.ExecutionGroupVertex;
+import eu.stratosphere.nephele.executiongraph.ExecutionStage;
+import eu.stratosphere.nephele.executiongraph.ExecutionVertex;
+import eu.stratosphere.nephele.executiongraph.ForwardTask1Input1Output;
+import eu.stratosphere.nephele.fs.Path;
+import eu.stratosphere.nephele.instance.InstanceManager;
+import eu.stratosphere.nephele.instance.InstanceType;
+import eu.stratosphere.nephele.instance.InstanceTypeFactory;
+import eu.stratosphere.nephele.io.library.FileLineReader;
+import eu.stratosphere.nephele.io.library.FileLineWriter;
+import eu.stratosphere.nephele.jobgraph.JobFileInputVertex;
+import eu.stratosphere.nephele.jobgraph.JobFileOutputVertex;
+import eu.stratosphere.nephele.jobgraph.JobGraph;
+import eu.stratosphere.nephele.jobgraph.JobTaskVertex;
+import eu.stratosphere.nephele.taskmanager.TaskCheckpointStatistics;
+
+/**
+ * Tests the decision rule of the {@link CheckpointCostModel} and the walks over the execution graph it is based on.
+ * The graph used is <code>input -> task 1 -> task 2 -> output</code>.
+ */
+public class CheckpointCostModelTest {
+
+	private static final long MTBF = 3600L * 1000L;
+
+	/**
+	 * The time the output vertex is kept running in the tests which depend on the running time of a successor.
+	 */
+	private static final long OUTPUT_RUNNING_TIME = 200L;
+
+	/**
+	 * The disk bandwidth configured for the tests in MB/s.
+	 */
+	private static final int DISK_BANDWIDTH = 1;
+
+	private File inputFile;
+
+	private ExecutionGraph executionGraph;
+
+	private ExecutionVertex input;
+
+	private ExecutionVertex task1;
+
+	private ExecutionVertex task2;
+
+	private ExecutionVertex output;
+
+	@Before
+	public void setUp() throws Exception {
+
+		this.inputFile = File.createTempFile("costmodel", ".tmp");
+
+		final JobGraph jobGraph = new JobGraph("Cost Model Job");
+
+		final JobFileInputVertex i = new JobFileInputVertex("Input", jobGraph);
+		i.setFileInputClass(FileLineReader.class);
+		i.setFilePath(new Path(this.inputFile.toURI()));
+
+		final JobTaskVertex t1 = new JobTaskVertex("Task 1", jobGraph);
+		t1.setTaskClass(ForwardTask1Input1Output.class);
+
+		final JobTaskVertex t2 = new JobTaskVertex("Task 2", jobGraph);
+		t2.setTaskClass(ForwardTask1Input1Output.class);
+
+		final JobFileOutputVertex o = new JobFileOutputVertex("Output", jobGraph);
+		o.setFileOutputClass(FileLineWriter.class);
+		o.setFilePath(new Path(new File(this.inputFile.getPath() + ".out").toURI()));
+
+		i.connectTo(t1);
+		t1.connectTo(t2);
+		t2.connectTo(o);
+
+		LibraryCacheManager.register(jobGraph.getJobID(), new String[0]);
+
+		final InstanceType instanceType = InstanceTypeFactory.construct("test", 4, 4, 1024, 50, 10);
+		final InstanceManager instanceManager = mock(InstanceManager.class);
+		when(instanceManager.getDefaultInstanceType()).thenReturn(instanceType);
+
+		this.executionGraph = new ExecutionGraph(jobGraph, instanceManager);
+		this.input = getVertex("Input");
+		this.task1 = getVertex("Task 1");
+		this.task2 = getVertex("Task 2");
+		this.output = getVertex("Output");
+
+		final Configuration configuration = new Configuration();
+		configuration.setInteger(CheckpointUtils.DISK_BANDWIDTH_KEY, DISK_BANDWIDTH);
+		configuration.setInteger(CheckpointUtils.MEAN_TIME_BETWEEN_FAILURES_KEY, 1);
+		GlobalConfiguration.includeConfiguration(configuration);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+
+		final Configuration configuration = new Configuration();
+		configuration.setInteger(CheckpointUtils.DISK_BANDWIDTH_KEY, CheckpointUtils.DEFAULT_DISK_BANDWIDTH);
+		configuration.setInteger(CheckpointUtils.MEAN_TIME_BETWEEN_FAILURES_KEY,
+			CheckpointUtils.DEFAULT_MEAN_TIME_BETWEEN_FAILURES);
+		GlobalConfiguration.includeConfiguration(configuration);
+
+		if (this.executionGraph != null) {
+			LibraryCacheManager.unregister(this.executionGraph.getJobID());
+		}
+
+		if (this.inputFile != null) {
+			this.inputFile.delete();
+		}
+	}
+
+	@Test
+	public void testFailureProbability() {
+
+		assertEquals(0.0, CheckpointCostModel.getFailureProbability(0.0, MTBF), 0.0);
+		assertEquals(1.0 - Math.exp(-1.0), CheckpointCostModel.getFailureProbability(MTBF, MTBF), 1e-9);
+		assertTrue(CheckpointCostModel.getFailureProbability(10.0 * MTBF, MTBF) > 0.99);
+	}
+
+	@Test
+	public void testExpensiveTaskIsCheckpointed() {
+
+		// Ten minutes of recomputation, ten seconds to write and to replay, ten minutes of downstream work
+		final double probability = CheckpointCostModel.getFailureProbability(600000.0, MTBF);
+		assertTrue(CheckpointCostModel.isCheckpointBeneficial(600000.0, 10000.0, 10000.0, probability));
+	}
+
+	@Test
+	public void testCheapTaskIsNotCheckpointed() {
+
+		// Recomputing the task is faster than replaying its checkpoint
+		assertFalse(CheckpointCostModel.isCheckpointBeneficial(5000.0, 10000.0, 10000.0, 1.0));
+
+		// The recomputation would pay off, but a failure is too unlikely to outweigh the write costs
+		final double probability = CheckpointCostModel.getFailureProbability(1000.0, MTBF);
+		assertFalse(CheckpointCostModel.isCheckpointBeneficial(60000.0, 10000.0, 10000.0, probability));
+	}
+
+	@Test
+	public void testRecomputationTime() {
+
+		attachStatistics(this.input, 4000L, 0L);
+		attachStatistics(this.task1, 2000L, 0L);
+		attachStatistics(this.task2, 1000L, 1024L * 1024L);
+
+		final double diskBandwidth = CheckpointUtils.getDiskBandwidth();
+
+		// Without checkpoints, the whole pipeline up to the input must be recomputed
+		assertEquals(7000.0, CheckpointCostModel.getRecomputationTime(this.task2, diskBandwidth), 1e-9);
+
+		// A checkpoint of the predecessor replaces its recomputation by reading the input from disk
+		this.task1.updateCheckpointState(CheckpointState.PARTIAL);
+		assertEquals(1000.0 + 1000.0, CheckpointCostModel.getRecomputationTime(this.task2, diskBandwidth), 1e-9);
+
+		// Checkpoints further upstream stop the walk as well
+		this.task1.updateCheckpointState(CheckpointState.NONE);
+		this.input.updateCheckpointState(CheckpointState.COMPLETE);
+		assertEquals(3000.0, CheckpointCostModel.getRecomputationTime(this.task2, diskBandwidth), 1e-9);
+	}
+
+	@Test
+	public void testExposureTime() throws InterruptedException {
+
+		runOutput();
+
+		// A failure of the output would be recovered from task 1's checkpoint
+		assertTrue(CheckpointCostModel.getExposureTime(this.task1) >= OUTPUT_RUNNING_TIME);
+
+		// With a checkpoint of task 2, failures of the output no longer concern task 1
+		this.task2.updateCheckpointState(CheckpointState.COMPLETE);
+		assertEquals(0.0, CheckpointCostModel.getExposureTime(this.task1), 0.0);
+		assertTrue(CheckpointCostModel.getExposureTime(this.task2) >= OUTPUT_RUNNING_TIME);
+	}
+
+	@Test
+	public void testDecide() throws InterruptedException {
+
+		// A long-running task with little output and a successor which fails with considerable probability
+		attachStatistics(this.input, 0L, 0L);
+		attachStatistics(this.task1, 60000L, 0L);
+		attachStatistics(this.task2, 0L, 0L);
+		runOutput();
+
+		assertTrue(CheckpointCostModel.decide(this.task1));
+
+		// Behind task 2's checkpoint, no failure has to be recovered from task 1's checkpoint
+		this.task2.updateCheckpointState(CheckpointState.COMPLETE);
+		assertFalse(CheckpointCostModel.decide(this.task1));
+
+		// A task without reported measurements and without running time is never worth a checkpoint
+		this.task2.updateCheckpointState(CheckpointState.NONE);
+		assertFalse(CheckpointCostModel.decide(this.input));
+	}
+
+	private ExecutionVertex getVertex(final String name) {
+
+		final ExecutionStage stage = this.executionGraph.getStage(0);
+		for (int i = 0; i < stage.getNumberOfStageMembers(); ++i) {
+			final ExecutionGroupVertex groupVertex = stage.getStageMember(i);
+			if (name.equals(groupVertex.getName())) {
+				return groupVertex.getGroupMember(0);
+			}
+		}
+
+		throw new IllegalStateException("Cannot find vertex " + name);
+	}
+
+	private void attachStatistics(final ExecutionVertex vertex, final long runtime, final long amountOfDataReceived) {
+
+		vertex.setCheckpointStatistics(new TaskCheckpointStatistics(this.executionGraph.getJobID(), vertex.getID(),
+			runtime, amountOfDataReceived, 0L));
+	}
+
+	/**
+	 * Moves the output vertex through its life cycle so that the job manager observes it running for at least
+	 * {@link #OUTPUT_RUNNING_TIME} milliseconds.
+	 */
+	private void runOutput() throws InterruptedException {
+
+		this.output.updateExecutionState(ExecutionState.SCHEDULED);
+		this.output.updateExecutionState(ExecutionState.ASSIGNED);
+		this.output.updateExecutionState(ExecutionState.READY);
+		this.output.updateExecutionState(ExecutionState.STARTING);
+		this.output.updateExecutionState(ExecutionState.RUNNING);
+		Thread.sleep(OUTPUT_RUNNING_TIME);
+		this.output.updateExecutionState(ExecutionState.FINISHING);
+	}
+}
@@ -0,0 +1,129 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
+
+/**
+ * Tests writing and reading the {@link CheckpointIndex} of a meta data file.
+ */
+public class CheckpointIndexTest {
+
+	private static final int NUMBER_OF_BLOCKS = 100;
+
+	private static final int ENVELOPES_PER_BLOCK = 10;
+
+	@Test
+	public void testIndexRoundTrip() throws Exception {
+
+		final File file = File.createTempFile("checkpointindex", ".tmp");
+		file.deleteOnExit();
+
+		// Write blocks of varying size, each filled with its own index, followed by the index
+		final CheckpointIndex writtenIndex = new CheckpointIndex(CompressionLevel.NO_COMPRESSION);
+		final FileOutputStream fos = new FileOutputStream(file);
+		try {
+			final FileChannel channel = fos.getChannel();
+			long offset = 0L;
+			for (int i = 0; i < NUMBER_OF_BLOCKS; ++i) {
+				final ByteBuffer block = createBlock(i);
+				final int length = block.remaining();
+				while (block.hasRemaining()) {
+					channel.write(block);
+				}
+				writtenIndex.addBlock(i * ENVELOPES_PER_BLOCK, (i + 1) * ENVELOPES_PER_BLOCK - 1, offset, length,
+					false);
+				offset += length;
+			}
+			writtenIndex.write(channel, offset);
+		} finally {
+			fos.close();
+		}
+
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			final FileChannel channel = fis.getChannel();
+			final CheckpointIndex index = CheckpointIndex.read(channel);
+
+			assertEquals(NUMBER_OF_BLOCKS, index.getNumberOfBlocks());
+			assertEquals(NUMBER_OF_BLOCKS * ENVELOPES_PER_BLOCK - 1, index.getLastSequenceNumber());
+			assertEquals(CompressionLevel.NO_COMPRESSION, index.getCompressionLevel());
+
+			assertEquals(0, index.getFirstBlockToReplay(0));
+			assertEquals(0, index.getFirstBlockToReplay(ENVELOPES_PER_BLOCK - 1));
+			assertEquals(1, index.getFirstBlockToReplay(ENVELOPES_PER_BLOCK));
+			assertEquals(42, index.getFirstBlockToReplay(42 * ENVELOPES_PER_BLOCK + 5));
+			assertEquals(NUMBER_OF_BLOCKS - 1, index.getFirstBlockToReplay(Integer.MAX_VALUE));
+
+			ByteBuffer block = null;
+			for (int i = 0; i < NUMBER_OF_BLOCKS; ++i) {
+				assertFalse(index.isCompressed(i));
+				block = index.readBlock(channel, i, block);
+				assertEquals(createBlock(i), block);
+			}
+		} finally {
+			fis.close();
+		}
+	}
+
+	@Test
+	public void testFileWithoutIndexIsRejected() throws Exception {
+
+		final File file = File.createTempFile("checkpointindex", ".tmp");
+		file.deleteOnExit();
+
+		final FileOutputStream fos = new FileOutputStream(file);
+		try {
+			fos.write(new byte[CheckpointIndex.FOOTER_SIZE * 2]);
+		} finally {
+			fos.close();
+		}
+
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			CheckpointIndex.read(fis.getChannel());
+			fail("Expected the file to be rejected");
+		} catch (IOException ioe) {
+			// Expected
+		} finally {
+			fis.close();
+		}
+	}
+
+	private static ByteBuffer createBlock(final int index) {
+
+		final ByteBuffer block = ByteBuffer.allocate(index % 7 + 1);
+		while (block.hasRemaining()) {
+			block.put((byte) index);
+		}
+		block.flip();
+
+		return block;
+	}
+}
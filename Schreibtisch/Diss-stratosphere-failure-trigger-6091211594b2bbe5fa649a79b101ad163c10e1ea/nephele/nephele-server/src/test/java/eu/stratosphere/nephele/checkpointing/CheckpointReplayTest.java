@@ -0,0 +1,636 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
+import eu.stratosphere.nephele.event.task.AbstractEvent;
+import eu.stratosphere.nephele.event.task.StringTaskEvent;
+import eu.stratosphere.nephele.execution.ExecutionObserver;
+import eu.stratosphere.nephele.execution.ExecutionState;
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ChannelCloseEvent;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.FileBufferManager;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
+import eu.stratosphere.nephele.io.compression.DeflaterCompressionLibrary;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferAvailabilityListener;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProvider;
+import eu.stratosphere.nephele.taskmanager.routing.AbstractOutputChannelForwarder;
+import eu.stratosphere.nephele.taskmanager.routing.OutputChannelForwardingChain;
+import eu.stratosphere.nephele.taskmanager.routing.UnexpectedEnvelopeEvent;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+
+/**
+ * Writes checkpoints through the {@link WriteChannelThread} and replays them through the {@link ReplayThread}, with
+ * uncompressed, compressed and partly compressed meta data blocks.
+ */
+public class CheckpointReplayTest {
+
+	/**
+	 * The number of envelopes written to each checkpoint, resulting in three full batches and a partial one.
+	 */
+	private static final int NUMBER_OF_ENVELOPES = 200;
+
+	/**
+	 * The number of envelopes the write thread writes at most in one batch.
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	/**
+	 * The length of the events attached to the envelopes of the first batch if large events are requested. It makes
+	 * the first meta data block exceed the size up to which blocks are compressed.
+	 */
+	private static final int LARGE_EVENT_LENGTH = 2 * CheckpointBlockCodec.MAXIMUM_COMPRESSIBLE_BLOCK_SIZE / BATCH_SIZE;
+
+	/**
+	 * The maximum time in milliseconds to wait for a replay of a partial checkpoint to finish.
+	 */
+	private static final long REPLAY_TIMEOUT = 30000L;
+
+	/**
+	 * Receives the memory buffers of the envelopes, which are simply garbage collected.
+	 */
+	private static final MemoryBufferPoolConnector BUFFER_POOL_CONNECTOR = new MemoryBufferPoolConnector() {
+
+		@Override
+		public void recycle(final ByteBuffer byteBuffer) {
+			// The test buffers are garbage collected
+		}
+	};
+
+	private final JobID jobID = JobID.generate();
+
+	private final ChannelID channelID = ChannelID.generate();
+
+	private ExecutionVertexID vertexID;
+
+	@Before
+	public void setUp() {
+
+		this.vertexID = ExecutionVertexID.generate();
+	}
+
+	@After
+	public void tearDown() {
+
+		configureCompression("none", null);
+		configureReplayThreads(Runtime.getRuntime().availableProcessors());
+		CheckpointTestUtils.removeCheckpoint(this.vertexID);
+	}
+
+	/**
+	 * Replays an uncompressed checkpoint entirely and starting in the middle of a block.
+	 */
+	@Test
+	public void testReplayUncompressed() throws Exception {
+
+		writeCheckpoint(false);
+
+		final CheckpointIndex index = readIndex();
+		assertEquals(CompressionLevel.NO_COMPRESSION, index.getCompressionLevel());
+		for (int i = 0; i < index.getNumberOfBlocks(); ++i) {
+			assertFalse(index.isCompressed(i));
+		}
+
+		checkReplay(0, false);
+		checkReplay(BATCH_SIZE + 10, false);
+	}
+
+	/**
+	 * Replays a checkpoint whose meta data blocks are all compressed, with and without skipping entire blocks.
+	 */
+	@Test
+	public void testReplayCompressedBlocks() throws Exception {
+
+		configureCompression("light", DeflaterCompressionLibrary.class.getName());
+		writeCheckpoint(false);
+
+		final CheckpointIndex index = readIndex();
+		assertEquals(CompressionLevel.LIGHT_COMPRESSION, index.getCompressionLevel());
+		assertEquals((NUMBER_OF_ENVELOPES + BATCH_SIZE - 1) / BATCH_SIZE, index.getNumberOfBlocks());
+		for (int i = 0; i < index.getNumberOfBlocks(); ++i) {
+			assertTrue(index.isCompressed(i));
+		}
+
+		checkReplay(0, false);
+		checkReplay(2 * BATCH_SIZE + 5, false);
+		checkReplay(NUMBER_OF_ENVELOPES - 1, false);
+	}
+
+	/**
+	 * Replays a checkpoint whose first meta data block is too large to be compressed and has therefore been written
+	 * raw, while the following blocks are compressed.
+	 */
+	@Test
+	public void testReplayRawFallbackBlocks() throws Exception {
+
+		configureCompression("light", DeflaterCompressionLibrary.class.getName());
+		writeCheckpoint(true);
+
+		final CheckpointIndex index = readIndex();
+		assertEquals(CompressionLevel.LIGHT_COMPRESSION, index.getCompressionLevel());
+		assertFalse(index.isCompressed(0));
+		assertTrue(index.getLength(0) > CheckpointBlockCodec.MAXIMUM_COMPRESSIBLE_BLOCK_SIZE);
+		for (int i = 1; i < index.getNumberOfBlocks(); ++i) {
+			assertTrue(index.isCompressed(i));
+		}
+
+		checkReplay(0, true);
+		checkReplay(BATCH_SIZE / 2, true);
+		checkReplay(BATCH_SIZE + 1, true);
+	}
+
+	/**
+	 * Configures a compression library which cannot be loaded and checks that the checkpoint is written with
+	 * uncompressed blocks instead.
+	 */
+	@Test
+	public void testMissingCompressionLibrary() throws Exception {
+
+		configureCompression("medium", "eu.stratosphere.nephele.io.compression.library.MissingLibrary");
+		writeCheckpoint(false);
+
+		final CheckpointIndex index = readIndex();
+		assertEquals(CompressionLevel.NO_COMPRESSION, index.getCompressionLevel());
+		for (int i = 0; i < index.getNumberOfBlocks(); ++i) {
+			assertFalse(index.isCompressed(i));
+		}
+
+		checkReplay(0, false);
+	}
+
+	/**
+	 * Replays a checkpoint which is still being written. The worker has to wait for the segments to appear and is
+	 * resumed by the announcement of the write thread, long before it would check for the segment itself.
+	 */
+	@Test
+	public void testResumptionOnAnnouncement() throws Exception {
+
+		writeCheckpoint(false);
+		final PartialCheckpoint partialCheckpoint = new PartialCheckpoint(this.channelID);
+
+		final RecordingForwarder recorder = new RecordingForwarder(false);
+		final ReplayThread replayThread = startPartialReplay(Collections.singletonMap(this.channelID,
+			createOutputBroker(recorder)));
+
+		// Give the worker the chance to start waiting for the first segment
+		Thread.sleep(100L);
+		partialCheckpoint.completeSegment(0);
+		partialCheckpoint.finish();
+		CheckpointSegmentNotifier.announce(this.channelID);
+
+		replayThread.join(ReplayChannelWorker.SEGMENT_POLL_INTERVAL / 2L);
+		assertFalse(replayThread.isAlive());
+		checkRecordedEnvelopes(recorder, 0);
+	}
+
+	/**
+	 * Replays a checkpoint whose segments appear without being announced, as it happens when the checkpoint is written
+	 * by another process. The worker has to find the segments after its poll interval. The second segment repeats the
+	 * envelopes of the first one and must therefore be skipped.
+	 */
+	@Test
+	public void testResumptionOnPollTimeout() throws Exception {
+
+		writeCheckpoint(false);
+		final PartialCheckpoint partialCheckpoint = new PartialCheckpoint(this.channelID);
+
+		final RecordingForwarder recorder = new RecordingForwarder(false);
+		final ReplayThread replayThread = startPartialReplay(Collections.singletonMap(this.channelID,
+			createOutputBroker(recorder)));
+
+		Thread.sleep(100L);
+		partialCheckpoint.completeSegment(0);
+		partialCheckpoint.completeSegment(1);
+		partialCheckpoint.finish();
+
+		replayThread.join(REPLAY_TIMEOUT);
+		assertFalse(replayThread.isAlive());
+		checkRecordedEnvelopes(recorder, 0);
+	}
+
+	/**
+	 * Replays the partial checkpoints of two channels on two threads while their segments are announced continuously,
+	 * so announcements race with the workers' own checks and poll timeouts. Each worker must nevertheless never run on
+	 * two threads at once and replay each envelope exactly once.
+	 */
+	@Test
+	public void testConcurrentAnnouncements() throws Exception {
+
+		configureReplayThreads(2);
+
+		final ChannelID[] channelIDs = { this.channelID, ChannelID.generate() };
+		final PartialCheckpoint[] partialCheckpoints = new PartialCheckpoint[channelIDs.length];
+		final RecordingForwarder[] recorders = new RecordingForwarder[channelIDs.length];
+		final Map<ChannelID, ReplayOutputChannelBroker> outputBrokerMap = new HashMap<ChannelID, ReplayOutputChannelBroker>();
+		for (int i = 0; i < channelIDs.length; ++i) {
+			writeCheckpoint(channelIDs[i], false);
+			partialCheckpoints[i] = new PartialCheckpoint(channelIDs[i]);
+			recorders[i] = new RecordingForwarder(false);
+			outputBrokerMap.put(channelIDs[i], createOutputBroker(recorders[i]));
+		}
+
+		final AtomicBoolean announcing = new AtomicBoolean(true);
+		final Thread announcer = new Thread("Announcer") {
+
+			@Override
+			public void run() {
+
+				while (announcing.get()) {
+					for (int i = 0; i < channelIDs.length; ++i) {
+						CheckpointSegmentNotifier.announce(channelIDs[i]);
+					}
+					Thread.yield();
+				}
+			}
+		};
+		announcer.start();
+
+		try {
+			final ReplayThread replayThread = startPartialReplay(outputBrokerMap);
+
+			for (int segment = 0; segment < 3; ++segment) {
+				Thread.sleep(20L);
+				for (int i = 0; i < channelIDs.length; ++i) {
+					partialCheckpoints[i].completeSegment(segment);
+				}
+			}
+			for (int i = 0; i < channelIDs.length; ++i) {
+				partialCheckpoints[i].finish();
+			}
+
+			replayThread.join(REPLAY_TIMEOUT);
+			assertFalse(replayThread.isAlive());
+
+		} finally {
+			announcing.set(false);
+			announcer.join();
+		}
+
+		for (int i = 0; i < channelIDs.length; ++i) {
+			checkRecordedEnvelopes(recorders[i], 0);
+		}
+	}
+
+	/**
+	 * Starts the replay of checkpoints which are not complete yet on a separate thread.
+	 */
+	private ReplayThread startPartialReplay(final Map<ChannelID, ReplayOutputChannelBroker> outputBrokerMap) {
+
+		final ReplayThread replayThread = new ReplayThread(this.vertexID, mock(ExecutionObserver.class), "Test task",
+			true, false, outputBrokerMap);
+		replayThread.start();
+
+		return replayThread;
+	}
+
+	private static void configureCompression(final String compression, final String libraryClass) {
+
+		final Configuration configuration = new Configuration();
+		configuration.setString(CheckpointUtils.COMPRESSION_KEY, compression);
+		if (libraryClass != null) {
+			configuration.setString("channel.compression." + compression + "Class", libraryClass);
+		}
+		GlobalConfiguration.includeConfiguration(configuration);
+	}
+
+	private static void configureReplayThreads(final int numberOfThreads) {
+
+		final Configuration configuration = new Configuration();
+		configuration.setInteger(CheckpointUtils.REPLAY_THREADS_KEY, numberOfThreads);
+		GlobalConfiguration.includeConfiguration(configuration);
+	}
+
+	/**
+	 * Writes the checkpoint of the test channel. The last envelope closes the channel.
+	 * 
+	 * @param largeEvents
+	 *        <code>true</code> to attach a large event to each envelope of the first batch
+	 */
+	private void writeCheckpoint(final boolean largeEvents) throws Exception {
+
+		writeCheckpoint(this.channelID, largeEvents);
+	}
+
+	/**
+	 * Writes the checkpoint of the given channel. The last envelope closes the channel.
+	 * 
+	 * @param channel
+	 *        the ID of the channel to write the checkpoint for
+	 * @param largeEvents
+	 *        <code>true</code> to attach a large event to each envelope of the first batch
+	 */
+	private void writeCheckpoint(final ChannelID channel, final boolean largeEvents) throws Exception {
+
+		final WriteChannelThread writeThread = new WriteChannelThread(FileBufferManager.getInstance(), this.vertexID,
+			channel, 1);
+
+		// Queue all envelopes before the thread starts so the batches are filled up to the maximum size
+		for (int i = 0; i < NUMBER_OF_ENVELOPES; ++i) {
+
+			final TransferEnvelope transferEnvelope = CheckpointTestUtils.createTransferEnvelope(i, this.jobID,
+				channel, BUFFER_POOL_CONNECTOR);
+			if (largeEvents && i < BATCH_SIZE) {
+				transferEnvelope.addEvent(new StringTaskEvent(createLargeEventMessage(i)));
+			}
+			if (i == NUMBER_OF_ENVELOPES - 1) {
+				transferEnvelope.addEvent(new ChannelCloseEvent());
+			}
+			writeThread.write(transferEnvelope);
+		}
+
+		writeThread.start();
+		writeThread.join();
+
+		assertFalse(writeThread.hasDataLeft());
+		assertTrue(getMetaDataFile(channel, CheckpointUtils.COMPLETED_CHECKPOINT_SUFFIX).exists());
+	}
+
+	private static String createLargeEventMessage(final int sequenceNumber) {
+
+		final StringBuilder sb = new StringBuilder(LARGE_EVENT_LENGTH);
+		while (sb.length() < LARGE_EVENT_LENGTH) {
+			sb.append(sequenceNumber);
+		}
+		sb.setLength(LARGE_EVENT_LENGTH);
+
+		return sb.toString();
+	}
+
+	/**
+	 * Replays the checkpoint to a recording forwarder, after the consumer has announced the given sequence number as
+	 * the next one it expects, and checks that exactly the envelopes from that sequence number on arrive in order.
+	 */
+	private void checkReplay(final int nextEnvelopeToSend, final boolean largeEvents) throws Exception {
+
+		final RecordingForwarder recorder = new RecordingForwarder(largeEvents);
+		final ReplayOutputChannelBroker outputBroker = createOutputBroker(recorder);
+		if (nextEnvelopeToSend > 0) {
+			outputBroker.processEvent(new UnexpectedEnvelopeEvent(nextEnvelopeToSend));
+		}
+
+		final Map<ChannelID, ReplayOutputChannelBroker> outputBrokerMap = new HashMap<ChannelID, ReplayOutputChannelBroker>();
+		outputBrokerMap.put(this.channelID, outputBroker);
+
+		final ExecutionObserver executionObserver = mock(ExecutionObserver.class);
+		final ReplayThread replayThread = new ReplayThread(this.vertexID, executionObserver, "Test task", true, true,
+			outputBrokerMap);
+		replayThread.run();
+
+		verify(executionObserver).executionStateChanged(ExecutionState.FINISHED, null);
+		checkRecordedEnvelopes(recorder, nextEnvelopeToSend);
+	}
+
+	private static ReplayOutputChannelBroker createOutputBroker(final RecordingForwarder recorder) {
+
+		final ReplayOutputChannelBroker outputBroker = new ReplayOutputChannelBroker(new TestBufferProvider(),
+			recorder);
+		outputBroker.setForwardingChain(new OutputChannelForwardingChain(outputBroker, recorder));
+
+		return outputBroker;
+	}
+
+	/**
+	 * Checks that the given recorder has received each envelope from the given sequence number on exactly once and
+	 * in order, and that the replay has released all of its file buffers.
+	 */
+	private void checkRecordedEnvelopes(final RecordingForwarder recorder, final int nextEnvelopeToSend) {
+
+		assertFalse(recorder.hasOverlappingPushes());
+
+		final List<Integer> sequenceNumbers = recorder.getSequenceNumbers();
+		assertEquals(NUMBER_OF_ENVELOPES - nextEnvelopeToSend, sequenceNumbers.size());
+		for (int i = 0; i < sequenceNumbers.size(); ++i) {
+			assertEquals(nextEnvelopeToSend + i, sequenceNumbers.get(i).intValue());
+		}
+
+		try {
+			FileBufferManager.getInstance().incrementReferences(this.vertexID);
+			throw new AssertionError("File buffers of the checkpoint have not been released");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	private CheckpointIndex readIndex() throws IOException {
+
+		return CheckpointTestUtils.readIndex(getMetaDataFile("_0"));
+	}
+
+	private File getMetaDataFile(final String suffix) {
+
+		return getMetaDataFile(this.channelID, suffix);
+	}
+
+	private File getMetaDataFile(final ChannelID channel, final String suffix) {
+
+		return CheckpointTestUtils.getMetaDataFile(this.vertexID, channel, suffix);
+	}
+
+	/**
+	 * The last forwarder of the replay's forwarding chain, which checks and records the replayed envelopes.
+	 */
+	private static final class RecordingForwarder extends AbstractOutputChannelForwarder {
+
+		private final boolean largeEvents;
+
+		private final List<Integer> sequenceNumbers = new ArrayList<Integer>();
+
+		/**
+		 * The number of threads currently pushing an envelope.
+		 */
+		private final AtomicInteger activePushes = new AtomicInteger(0);
+
+		private volatile boolean overlappingPushes = false;
+
+		private RecordingForwarder(final boolean largeEvents) {
+			super(null);
+
+			this.largeEvents = largeEvents;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void push(final TransferEnvelope transferEnvelope) throws IOException, InterruptedException {
+
+			if (this.activePushes.incrementAndGet() != 1) {
+				this.overlappingPushes = true;
+			}
+
+			final int sequenceNumber = transferEnvelope.getSequenceNumber();
+			try {
+				CheckpointTestUtils.checkBuffer(transferEnvelope, CheckpointTestUtils.hasBuffer(sequenceNumber));
+
+				if (this.largeEvents && sequenceNumber < BATCH_SIZE) {
+					final List<AbstractEvent> eventList = transferEnvelope.getEventList();
+					assertNotNull(eventList);
+					assertEquals(createLargeEventMessage(sequenceNumber),
+						((StringTaskEvent) eventList.get(0)).getString());
+				}
+
+			} finally {
+				recycleTransferEnvelope(transferEnvelope);
+			}
+
+			this.sequenceNumbers.add(Integer.valueOf(sequenceNumber));
+			this.activePushes.decrementAndGet();
+		}
+
+		private List<Integer> getSequenceNumbers() {
+
+			return this.sequenceNumbers;
+		}
+
+		private boolean hasOverlappingPushes() {
+
+			return this.overlappingPushes;
+		}
+	}
+
+	/**
+	 * Turns a written checkpoint back into a partial one by hiding its meta data files, which can then be made
+	 * visible segment by segment. All segments consist of the checkpoint's only meta data file.
+	 */
+	private final class PartialCheckpoint {
+
+		private final ChannelID channel;
+
+		private final File hiddenSegment;
+
+		private PartialCheckpoint(final ChannelID channel) throws IOException {
+
+			this.channel = channel;
+			this.hiddenSegment = getMetaDataFile(channel, "_hidden");
+			assertTrue(getMetaDataFile(channel, "_0").renameTo(this.hiddenSegment));
+			assertTrue(getMetaDataFile(channel, CheckpointUtils.COMPLETED_CHECKPOINT_SUFFIX).delete());
+		}
+
+		private void completeSegment(final int segment) throws IOException {
+
+			// Write to a temporary file first, so the replay never sees an incomplete segment
+			final File part = getMetaDataFile(this.channel, "_part");
+			final FileInputStream fis = new FileInputStream(this.hiddenSegment);
+			try {
+				final FileOutputStream fos = new FileOutputStream(part);
+				try {
+					final FileChannel source = fis.getChannel();
+					source.transferTo(0L, source.size(), fos.getChannel());
+				} finally {
+					fos.close();
+				}
+			} finally {
+				fis.close();
+			}
+
+			assertTrue(part.renameTo(getMetaDataFile(this.channel, "_" + segment)));
+		}
+
+		private void finish() throws IOException {
+
+			assertTrue(getMetaDataFile(this.channel, CheckpointUtils.COMPLETED_CHECKPOINT_SUFFIX).createNewFile());
+		}
+	}
+
+	/**
+	 * Provides the replay with memory buffers of the requested size.
+	 */
+	private static final class TestBufferProvider implements BufferProvider {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Buffer requestEmptyBuffer(final int minimumSizeOfBuffer) throws IOException {
+
+			return BufferFactory.createFromMemory(minimumSizeOfBuffer, ByteBuffer.allocate(minimumSizeOfBuffer),
+				BUFFER_POOL_CONNECTOR);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Buffer requestEmptyBufferBlocking(final int minimumSizeOfBuffer) throws IOException {
+
+			return requestEmptyBuffer(minimumSizeOfBuffer);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getMaximumBufferSize() {
+
+			return Integer.MAX_VALUE;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean isShared() {
+
+			return false;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void reportAsynchronousEvent() {
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean registerBufferAvailabilityListener(final BufferAvailabilityListener bufferAvailabilityListener) {
+
+			return false;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.channels.ChannelID;
+
+/**
+ * Tests the hand-over of waiting replays between announcements and the replays' own checks in the
+ * {@link CheckpointSegmentNotifier}.
+ */
+public class CheckpointSegmentNotifierTest {
+
+	/**
+	 * The number of rounds in which an announcement races with a poll timeout.
+	 */
+	private static final int NUMBER_OF_RACES = 10000;
+
+	/**
+	 * A callback which counts how often it has been run.
+	 */
+	private static final class CountingCallback implements Runnable {
+
+		private final AtomicInteger runs = new AtomicInteger(0);
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+
+			this.runs.incrementAndGet();
+		}
+
+		private int getRuns() {
+
+			return this.runs.get();
+		}
+	}
+
+	@Test
+	public void testAnnouncementRunsCallbackOnce() {
+
+		final ChannelID channelID = ChannelID.generate();
+		final CountingCallback callback = new CountingCallback();
+
+		CheckpointSegmentNotifier.register(channelID, callback);
+		CheckpointSegmentNotifier.announce(channelID);
+		assertEquals(1, callback.getRuns());
+
+		// The announcement has consumed the registration
+		CheckpointSegmentNotifier.announce(channelID);
+		assertEquals(1, callback.getRuns());
+		assertFalse(CheckpointSegmentNotifier.unregister(channelID, callback));
+	}
+
+	@Test
+	public void testUnregisterPreventsRun() {
+
+		final ChannelID channelID = ChannelID.generate();
+		final CountingCallback callback = new CountingCallback();
+
+		CheckpointSegmentNotifier.register(channelID, callback);
+		assertTrue(CheckpointSegmentNotifier.unregister(channelID, callback));
+		CheckpointSegmentNotifier.announce(channelID);
+		assertEquals(0, callback.getRuns());
+
+		// The channel can be waited for again
+		CheckpointSegmentNotifier.register(channelID, callback);
+		CheckpointSegmentNotifier.announce(channelID);
+		assertEquals(1, callback.getRuns());
+	}
+
+	@Test
+	public void testUnregisterOfOtherCallback() {
+
+		final ChannelID channelID = ChannelID.generate();
+		final CountingCallback callback = new CountingCallback();
+
+		CheckpointSegmentNotifier.register(channelID, callback);
+		assertFalse(CheckpointSegmentNotifier.unregister(channelID, new CountingCallback()));
+		CheckpointSegmentNotifier.announce(channelID);
+		assertEquals(1, callback.getRuns());
+	}
+
+	@Test
+	public void testDoubleRegistration() {
+
+		final ChannelID channelID = ChannelID.generate();
+		final CountingCallback callback = new CountingCallback();
+
+		CheckpointSegmentNotifier.register(channelID, callback);
+		try {
+			CheckpointSegmentNotifier.register(channelID, new CountingCallback());
+			fail("Expected the second registration for the channel to be rejected");
+		} catch (IllegalStateException e) {
+		}
+
+		assertTrue(CheckpointSegmentNotifier.unregister(channelID, callback));
+	}
+
+	/**
+	 * Lets an announcement race with a poll timeout, which runs the callback itself if it can still unregister it.
+	 * Exactly one of both must run the callback in every round.
+	 */
+	@Test
+	public void testAnnouncementRacesWithPollTimeout() throws Exception {
+
+		final ChannelID channelID = ChannelID.generate();
+
+		for (int i = 0; i < NUMBER_OF_RACES; ++i) {
+
+			final CountingCallback callback = new CountingCallback();
+			CheckpointSegmentNotifier.register(channelID, callback);
+
+			final CountDownLatch start = new CountDownLatch(1);
+			final Thread announcer = new Thread() {
+
+				@Override
+				public void run() {
+
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					CheckpointSegmentNotifier.announce(channelID);
+				}
+			};
+			announcer.start();
+
+			start.countDown();
+			if (CheckpointSegmentNotifier.unregister(channelID, callback)) {
+				callback.run();
+			}
+			announcer.join();
+
+			assertEquals(1, callback.getRuns());
+		}
+	}
+}
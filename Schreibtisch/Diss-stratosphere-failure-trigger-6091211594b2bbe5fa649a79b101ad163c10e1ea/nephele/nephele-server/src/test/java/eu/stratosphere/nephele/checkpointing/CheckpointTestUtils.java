@@ -0,0 +1,208 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.FileBufferManager;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+
+/**
+ * Creates the transfer envelopes written to checkpoints by the checkpointing tests and checks their content after
+ * they have been read back.
+ */
+final class CheckpointTestUtils {
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private CheckpointTestUtils() {
+	}
+
+	/**
+	 * Creates the envelope with the given sequence number. Every fifth envelope carries no buffer, the others carry a
+	 * memory buffer of varying size filled with the sequence number.
+	 * 
+	 * @param sequenceNumber
+	 *        the sequence number of the envelope
+	 * @param jobID
+	 *        the ID of the job the envelope belongs to
+	 * @param channelID
+	 *        the ID of the channel the envelope belongs to
+	 * @param bufferPoolConnector
+	 *        the connector the memory buffer is recycled to
+	 * @return the envelope
+	 * @throws IOException
+	 *         thrown if the buffer cannot be filled
+	 */
+	static TransferEnvelope createTransferEnvelope(final int sequenceNumber, final JobID jobID,
+			final ChannelID channelID, final MemoryBufferPoolConnector bufferPoolConnector) throws IOException {
+
+		final TransferEnvelope transferEnvelope = new TransferEnvelope(sequenceNumber, jobID, channelID);
+		if (!hasBuffer(sequenceNumber)) {
+			return transferEnvelope;
+		}
+
+		final int size = getBufferSize(sequenceNumber);
+		final Buffer buffer = BufferFactory.createFromMemory(size, ByteBuffer.allocate(size), bufferPoolConnector);
+		final ByteBuffer data = ByteBuffer.allocate(size);
+		while (data.hasRemaining()) {
+			data.put((byte) sequenceNumber);
+		}
+		data.flip();
+		buffer.write(data);
+		buffer.finishWritePhase();
+		transferEnvelope.setBuffer(buffer);
+
+		return transferEnvelope;
+	}
+
+	/**
+	 * Checks whether the envelope with the given sequence number carries a buffer.
+	 * 
+	 * @param sequenceNumber
+	 *        the sequence number of the envelope
+	 * @return <code>true</code> if the envelope carries a buffer, <code>false</code> otherwise
+	 */
+	static boolean hasBuffer(final int sequenceNumber) {
+
+		return (sequenceNumber % 5 != 4);
+	}
+
+	/**
+	 * Returns the size of the buffer of the envelope with the given sequence number.
+	 * 
+	 * @param sequenceNumber
+	 *        the sequence number of the envelope
+	 * @return the size of the buffer in bytes
+	 */
+	static int getBufferSize(final int sequenceNumber) {
+
+		return 100 * (sequenceNumber % 7 + 1);
+	}
+
+	/**
+	 * Checks the buffer of an envelope which has been read back against the one which has been written. The buffer
+	 * is not recycled.
+	 * 
+	 * @param transferEnvelope
+	 *        the envelope whose buffer shall be checked
+	 * @param expectBuffer
+	 *        <code>true</code> if the envelope is expected to carry a buffer, <code>false</code> otherwise
+	 * @throws IOException
+	 *         thrown if the buffer cannot be read
+	 */
+	static void checkBuffer(final TransferEnvelope transferEnvelope, final boolean expectBuffer) throws IOException {
+
+		final int sequenceNumber = transferEnvelope.getSequenceNumber();
+		final Buffer buffer = transferEnvelope.getBuffer();
+		if (!expectBuffer) {
+			assertNull(buffer);
+			return;
+		}
+
+		assertNotNull(buffer);
+		final int size = getBufferSize(sequenceNumber);
+		assertEquals(size, buffer.size());
+
+		final ByteBuffer data = ByteBuffer.allocate(size);
+		while (data.hasRemaining()) {
+			if (buffer.read(data) < 0) {
+				fail("Unexpected end of buffer " + sequenceNumber);
+			}
+		}
+		data.flip();
+		while (data.hasRemaining()) {
+			assertEquals((byte) sequenceNumber, data.get());
+		}
+	}
+
+	/**
+	 * Reads the index of the given meta data file.
+	 * 
+	 * @param metaDataFile
+	 *        the meta data file
+	 * @return the index of the meta data file
+	 * @throws IOException
+	 *         thrown if the index cannot be read
+	 */
+	static CheckpointIndex readIndex(final File metaDataFile) throws IOException {
+
+		final FileInputStream fis = new FileInputStream(metaDataFile);
+		try {
+			return CheckpointIndex.read(fis.getChannel());
+		} finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Returns the local meta data file of the given channel's checkpoint with the given suffix.
+	 * 
+	 * @param vertexID
+	 *        the ID of the vertex the checkpoint belongs to
+	 * @param channelID
+	 *        the ID of the checkpointed channel
+	 * @param suffix
+	 *        the suffix of the meta data file
+	 * @return the meta data file
+	 */
+	static File getMetaDataFile(final ExecutionVertexID vertexID, final ChannelID channelID, final String suffix) {
+
+		return new File(getCheckpointDirectory(), CheckpointUtils.METADATA_PREFIX + "_" + vertexID + "_" + channelID
+			+ suffix);
+	}
+
+	/**
+	 * Removes the meta data files and the data file of the given vertex's local checkpoint.
+	 * 
+	 * @param vertexID
+	 *        the ID of the vertex the checkpoint belongs to
+	 */
+	static void removeCheckpoint(final ExecutionVertexID vertexID) {
+
+		final File[] files = getCheckpointDirectory().listFiles();
+		if (files != null) {
+			final String prefix = CheckpointUtils.METADATA_PREFIX + "_" + vertexID;
+			for (final File file : files) {
+				if (file.getName().startsWith(prefix)) {
+					file.delete();
+				}
+			}
+		}
+
+		FileBufferManager.deleteFile(vertexID);
+	}
+
+	private static File getCheckpointDirectory() {
+
+		return new File(CheckpointUtils.getLocalCheckpointPath().toUri().getPath());
+	}
+}
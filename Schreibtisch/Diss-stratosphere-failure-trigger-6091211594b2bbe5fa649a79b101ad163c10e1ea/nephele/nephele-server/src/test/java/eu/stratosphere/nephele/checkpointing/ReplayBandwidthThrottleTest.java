@@ -0,0 +1,51 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the reservations of the {@link ReplayBandwidthThrottle}.
+ */
+public class ReplayBandwidthThrottleTest {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+	@Test
+	public void testReservations() {
+
+		// 1000 bytes per second, so each byte takes one millisecond
+		final ReplayBandwidthThrottle throttle = new ReplayBandwidthThrottle(1000L);
+		final long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(1L);
+
+		// After being idle, the bandwidth of the maximum burst is available immediately
+		assertEquals(-100L * MILLIS, throttle.reserve(0, now));
+		assertEquals(0L, throttle.reserve(100, now));
+
+		// Further reads have to wait until their reservation is due
+		assertEquals(100L * MILLIS, throttle.reserve(100, now));
+		assertEquals(50L * MILLIS, throttle.reserve(50, now + 100L * MILLIS));
+
+		// Unused bandwidth is not saved up beyond the maximum burst
+		final long later = now + TimeUnit.SECONDS.toNanos(10L);
+		assertEquals(-50L * MILLIS, throttle.reserve(50, later));
+		assertEquals(10L * MILLIS, throttle.reserve(60, later));
+	}
+}
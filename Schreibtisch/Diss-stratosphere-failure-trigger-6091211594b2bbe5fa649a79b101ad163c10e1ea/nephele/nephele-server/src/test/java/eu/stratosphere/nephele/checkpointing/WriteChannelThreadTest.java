@@ -0,0 +1,332 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.checkpointing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.io.channels.ChannelCloseEvent;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.FileBuffer;
+import eu.stratosphere.nephele.io.channels.FileBufferManager;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.CheckpointDeserializer;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.SpillingQueue;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+import eu.stratosphere.nephele.util.BufferPoolConnector;
+
+/**
+ * Tests the batched writing of checkpoint data and meta data by the {@link WriteChannelThread}.
+ */
+public class WriteChannelThreadTest {
+
+	/**
+	 * The number of envelopes written to the checkpoint, resulting in two full batches and a partial one.
+	 */
+	private static final int NUMBER_OF_ENVELOPES = 150;
+
+	/**
+	 * The number of envelopes the write thread writes at most in one batch.
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	private final JobID jobID = JobID.generate();
+
+	private final ChannelID channelID = ChannelID.generate();
+
+	private ExecutionVertexID vertexID;
+
+	private Queue<ByteBuffer> recycledBuffers;
+
+	private BufferPoolConnector bufferPoolConnector;
+
+	@Before
+	public void setUp() {
+
+		this.vertexID = ExecutionVertexID.generate();
+		this.recycledBuffers = new ArrayDeque<ByteBuffer>();
+		this.bufferPoolConnector = new BufferPoolConnector(this.recycledBuffers);
+	}
+
+	@After
+	public void tearDown() {
+
+		CheckpointTestUtils.removeCheckpoint(this.vertexID);
+	}
+
+	/**
+	 * Writes several batches of envelopes and checks that the meta data blocks are indexed in sequence number order,
+	 * that the buffers have been written to consecutive regions of the checkpoint file and that all memory buffers
+	 * have been recycled.
+	 */
+	@Test
+	public void testBatchedWrite() throws Exception {
+
+		final WriteChannelThread writeThread = new WriteChannelThread(FileBufferManager.getInstance(), this.vertexID,
+			this.channelID, 1);
+
+		// Queue all envelopes before the thread starts so the batches are filled up to the maximum size
+		final int numberOfMemoryBuffers = queueEnvelopes(writeThread);
+
+		writeThread.start();
+		writeThread.join();
+
+		assertFalse(writeThread.hasDataLeft());
+		assertEquals(numberOfMemoryBuffers, this.recycledBuffers.size());
+
+		checkCheckpoint();
+	}
+
+	/**
+	 * Writes envelopes whose buffers have been spilled to another file while the checkpoint was undecided and checks
+	 * that their data is copied to the checkpoint file.
+	 */
+	@Test
+	public void testSpilledBuffersAreCopied() throws Exception {
+
+		final ChannelID spillingQueueOwner = ChannelID.generate();
+		final SpillingQueue spillingQueue = new SpillingQueue(spillingQueueOwner, null, 0L);
+
+		final WriteChannelThread writeThread = new WriteChannelThread(FileBufferManager.getInstance(), this.vertexID,
+			this.channelID, 1);
+
+		final int numberOfMemoryBuffers = queueEnvelopes(spillingQueue);
+		assertTrue(spillingQueue.spillSynchronouslyIncludingHead() > 0L);
+		assertEquals(numberOfMemoryBuffers, this.recycledBuffers.size());
+
+		while (!spillingQueue.isEmpty()) {
+			writeThread.write(spillingQueue.poll());
+		}
+
+		writeThread.start();
+		writeThread.join();
+
+		assertFalse(writeThread.hasDataLeft());
+		checkCheckpoint();
+
+		// The spilled buffers must have been released after the copy
+		try {
+			FileBufferManager.getInstance().incrementReferences(spillingQueueOwner);
+			fail("Spilled file buffers have not been released");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	/**
+	 * Checks that the checkpoint is complete, that the meta data blocks are indexed in sequence number order, and
+	 * that the buffers have been written to consecutive regions of the checkpoint file with their original content.
+	 */
+	private void checkCheckpoint() throws Exception {
+
+		assertTrue(getMetaDataFile(CheckpointUtils.COMPLETED_CHECKPOINT_SUFFIX).exists());
+		assertFalse(getMetaDataFile("_part").exists());
+
+		// All file buffers must have been released by the write thread
+		assertNoReferences();
+
+		final FileInputStream fis = new FileInputStream(getMetaDataFile("_0"));
+		try {
+			final FileChannel fileChannel = fis.getChannel();
+			final CheckpointIndex index = CheckpointIndex.read(fileChannel);
+
+			final int expectedNumberOfBlocks = (NUMBER_OF_ENVELOPES + BATCH_SIZE - 1) / BATCH_SIZE;
+			assertEquals(expectedNumberOfBlocks, index.getNumberOfBlocks());
+			assertEquals(NUMBER_OF_ENVELOPES - 1, index.getLastSequenceNumber());
+
+			final CheckpointDeserializer deserializer = new CheckpointDeserializer(this.vertexID, false);
+			int expectedSequenceNumber = 0;
+			long expectedOffset = 0L;
+			long expectedBlockOffset = 0L;
+
+			for (int i = 0; i < index.getNumberOfBlocks(); ++i) {
+
+				assertEquals(i, index.getFirstBlockToReplay(i * BATCH_SIZE));
+				assertEquals(expectedBlockOffset, index.getOffset(i));
+				assertFalse(index.isCompressed(i));
+				expectedBlockOffset += index.getLength(i);
+
+				final ByteBuffer block = ByteBuffer.allocate(index.getLength(i));
+				while (block.hasRemaining()) {
+					if (fileChannel.read(block, index.getOffset(i) + block.position()) < 0) {
+						fail("Unexpected end of meta data file");
+					}
+				}
+
+				final ReadableByteChannel blockChannel = Channels.newChannel(new ByteArrayInputStream(block.array()));
+				int envelopesInBlock = 0;
+				while (true) {
+					try {
+						deserializer.read(blockChannel);
+					} catch (EOFException eof) {
+						// The end of the block has been reached
+						break;
+					}
+					final TransferEnvelope transferEnvelope = deserializer.getFullyDeserializedTransferEnvelope();
+					if (transferEnvelope == null) {
+						continue;
+					}
+
+					assertEquals(expectedSequenceNumber, transferEnvelope.getSequenceNumber());
+					expectedOffset = checkBuffer(transferEnvelope, expectedOffset);
+					++expectedSequenceNumber;
+					++envelopesInBlock;
+				}
+
+				assertEquals(Math.min(BATCH_SIZE, NUMBER_OF_ENVELOPES - i * BATCH_SIZE), envelopesInBlock);
+			}
+
+			assertEquals(NUMBER_OF_ENVELOPES, expectedSequenceNumber);
+
+		} finally {
+			fis.close();
+		}
+
+		assertNoReferences();
+	}
+
+	/**
+	 * Lets the meta data file of the checkpoint fail to open and checks that the write thread recycles all buffers
+	 * and reports the error on the next write.
+	 */
+	@Test
+	public void testRecyclingOnIOException() throws Exception {
+
+		// A directory with the name of the meta data file cannot be opened for writing
+		final File blockingDirectory = getMetaDataFile("_part");
+		assertTrue(blockingDirectory.mkdir());
+
+		final WriteChannelThread writeThread = new WriteChannelThread(FileBufferManager.getInstance(), this.vertexID,
+			this.channelID, 1);
+
+		final int numberOfMemoryBuffers = queueEnvelopes(writeThread);
+
+		writeThread.start();
+		writeThread.join();
+
+		assertFalse(writeThread.hasDataLeft());
+		assertEquals(numberOfMemoryBuffers, this.recycledBuffers.size());
+		assertNoReferences();
+
+		try {
+			writeThread.write(CheckpointTestUtils.createTransferEnvelope(NUMBER_OF_ENVELOPES, this.jobID,
+				this.channelID, this.bufferPoolConnector));
+			fail("Expected the write thread to report the I/O error");
+		} catch (IOException ioe) {
+		}
+	}
+
+	/**
+	 * Queues the envelopes of the checkpoint at the given write thread. The last envelope closes the channel.
+	 * 
+	 * @return the number of memory buffers which have been queued
+	 */
+	private int queueEnvelopes(final WriteChannelThread writeThread) throws IOException, InterruptedException {
+
+		final Queue<TransferEnvelope> envelopes = new ArrayDeque<TransferEnvelope>();
+		final int numberOfMemoryBuffers = queueEnvelopes(envelopes);
+		while (!envelopes.isEmpty()) {
+			writeThread.write(envelopes.poll());
+		}
+
+		return numberOfMemoryBuffers;
+	}
+
+	/**
+	 * Adds the envelopes of the checkpoint to the given queue. The last envelope closes the channel.
+	 * 
+	 * @return the number of memory buffers which have been queued
+	 */
+	private int queueEnvelopes(final Queue<TransferEnvelope> envelopes) throws IOException {
+
+		int numberOfMemoryBuffers = 0;
+		for (int i = 0; i < NUMBER_OF_ENVELOPES; ++i) {
+
+			final TransferEnvelope transferEnvelope;
+			if (i == NUMBER_OF_ENVELOPES - 1) {
+				transferEnvelope = new TransferEnvelope(i, this.jobID, this.channelID);
+				transferEnvelope.addEvent(new ChannelCloseEvent());
+			} else {
+				transferEnvelope = CheckpointTestUtils.createTransferEnvelope(i, this.jobID, this.channelID,
+					this.bufferPoolConnector);
+			}
+
+			if (transferEnvelope.getBuffer() != null) {
+				++numberOfMemoryBuffers;
+			}
+			envelopes.add(transferEnvelope);
+		}
+
+		return numberOfMemoryBuffers;
+	}
+
+	/**
+	 * Checks the buffer of a deserialized envelope against the one which has been written and recycles it.
+	 * 
+	 * @return the offset in the checkpoint file at which the next buffer is expected
+	 */
+	private long checkBuffer(final TransferEnvelope transferEnvelope, final long expectedOffset) throws IOException {
+
+		final int sequenceNumber = transferEnvelope.getSequenceNumber();
+		final boolean expectBuffer = sequenceNumber < NUMBER_OF_ENVELOPES - 1
+			&& CheckpointTestUtils.hasBuffer(sequenceNumber);
+
+		CheckpointTestUtils.checkBuffer(transferEnvelope, expectBuffer);
+		if (!expectBuffer) {
+			return expectedOffset;
+		}
+
+		final FileBuffer fileBuffer = (FileBuffer) transferEnvelope.getBuffer();
+		try {
+			assertEquals(expectedOffset, fileBuffer.getOffset());
+			return expectedOffset + fileBuffer.size();
+		} finally {
+			fileBuffer.recycleBuffer();
+		}
+	}
+
+	private void assertNoReferences() {
+
+		try {
+			FileBufferManager.getInstance().incrementReferences(this.vertexID);
+			fail("File buffers of the checkpoint have not been released");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	private File getMetaDataFile(final String suffix) {
+
+		return CheckpointTestUtils.getMetaDataFile(this.vertexID, this.channelID, suffix);
+	}
+}
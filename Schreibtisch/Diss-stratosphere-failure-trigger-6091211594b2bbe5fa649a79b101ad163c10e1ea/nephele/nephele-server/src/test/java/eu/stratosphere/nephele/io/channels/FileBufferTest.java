@@ -0,0 +1,114 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.channels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * This class contains tests for reading the data of {@link FileBuffer} objects.
+ */
+public class FileBufferTest {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * The size of the chunks in which the buffers are read, chosen to not divide the buffer size.
+	 */
+	private static final int CHUNK_SIZE = 100;
+
+	/**
+	 * Tests reading back a file buffer in small chunks after its write phase has been finished.
+	 */
+	@Test
+	public void testReadAfterWritePhase() throws Exception {
+
+		final FileBufferManager fbm = FileBufferManager.getInstance();
+		final ChannelID ownerID = ChannelID.generate();
+
+		final FileBuffer fileBuffer = BufferFactory.createFromFile(BUFFER_SIZE, ownerID, fbm, false, true);
+		fileBuffer.write(createData(0));
+		fileBuffer.finishWritePhase();
+
+		assertData(fileBuffer, 0);
+		fileBuffer.recycleBuffer();
+	}
+
+	/**
+	 * Tests reading buffers whose data is already in a file, as done when consuming checkpoints, including a
+	 * duplicate buffer which is read after the original has been consumed and recycled.
+	 */
+	@Test
+	public void testReadFromCheckpoint() throws Exception {
+
+		final FileBufferManager fbm = FileBufferManager.getInstance();
+		final ChannelID ownerID = ChannelID.generate();
+
+		final FileBuffer first = BufferFactory.createFromFile(BUFFER_SIZE, ownerID, fbm, false, true);
+		final FileBuffer second = BufferFactory.createFromFile(BUFFER_SIZE, ownerID, fbm, false, true);
+		first.write(createData(0));
+		second.write(createData(1));
+		first.finishWritePhase();
+		second.finishWritePhase();
+
+		final FileBuffer firstFromCheckpoint = BufferFactory.createFromCheckpoint(BUFFER_SIZE, first.getOffset(),
+			ownerID, fbm, false);
+		final FileBuffer secondFromCheckpoint = BufferFactory.createFromCheckpoint(BUFFER_SIZE, second.getOffset(),
+			ownerID, fbm, false);
+		final FileBuffer duplicate = secondFromCheckpoint.duplicate();
+
+		assertData(firstFromCheckpoint, 0);
+		assertData(secondFromCheckpoint, 1);
+		firstFromCheckpoint.recycleBuffer();
+		secondFromCheckpoint.recycleBuffer();
+		assertData(duplicate, 1);
+		duplicate.recycleBuffer();
+
+		first.recycleBuffer();
+		second.recycleBuffer();
+	}
+
+	private static ByteBuffer createData(final int seed) {
+
+		final ByteBuffer data = ByteBuffer.allocate(BUFFER_SIZE);
+		for (int i = 0; i < BUFFER_SIZE; ++i) {
+			data.put((byte) (i * 31 + seed));
+		}
+		data.flip();
+
+		return data;
+	}
+
+	private static void assertData(final FileBuffer fileBuffer, final int seed) throws Exception {
+
+		final ByteBuffer expected = createData(seed);
+		final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+		while (fileBuffer.read(chunk) >= 0) {
+			chunk.flip();
+			while (chunk.hasRemaining()) {
+				assertEquals(expected.get(), chunk.get());
+			}
+			chunk.clear();
+		}
+
+		assertFalse(expected.hasRemaining());
+	}
+}
@@ -0,0 +1,135 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.channels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class contains tests for the {@link MappedChunkPool}.
+ */
+public class MappedChunkPoolTest {
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final int NUMBER_OF_CHUNKS = 8;
+
+	private static final int MAX_PREFETCHED_CHUNKS = 2;
+
+	private File file;
+
+	private RandomAccessFile randomAccessFile;
+
+	private FileChannel channel;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+
+		this.file = File.createTempFile("mappedChunkPoolTest", ".tmp");
+		this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+
+		final byte[] data = new byte[CHUNK_SIZE * NUMBER_OF_CHUNKS];
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = (byte) (i * 31);
+		}
+		this.randomAccessFile.write(data);
+		this.channel = this.randomAccessFile.getChannel();
+
+		this.executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+
+		this.executor.shutdownNow();
+		this.executor.awaitTermination(10, TimeUnit.SECONDS);
+		this.randomAccessFile.close();
+		this.file.delete();
+	}
+
+	/**
+	 * Checks that regions within the same chunk share the chunk, that regions crossing a chunk boundary are rejected,
+	 * and that the regions contain the file's data.
+	 */
+	@Test
+	public void testSharedChunks() throws Exception {
+
+		final MappedChunkPool pool = new MappedChunkPool(CHUNK_SIZE, MAX_PREFETCHED_CHUNKS, this.executor);
+
+		final MappedChunkPool.Chunk first = pool.retain(this.channel, CHUNK_SIZE, 100, false);
+		final MappedChunkPool.Chunk second = pool.retain(this.channel, CHUNK_SIZE + 1000, 100, false);
+		assertNotNull(first);
+		assertSame(first, second);
+		assertNull(pool.retain(this.channel, 2 * CHUNK_SIZE - 50, 100, false));
+
+		assertRegion(first.getRegion(CHUNK_SIZE + 1000, 100), CHUNK_SIZE + 1000, 100);
+
+		// the chunk stays in use as long as one of its buffers holds it
+		pool.release(first);
+		assertSame(first, pool.retain(this.channel, CHUNK_SIZE + 2000, 100, false));
+		pool.release(second);
+		pool.release(first);
+		assertEquals(0, pool.getNumberOfPrefetchedChunks());
+	}
+
+	/**
+	 * Checks that at most the maximum number of chunks is prefetched at a time, and that queued chunks are prefetched
+	 * as the prefetched chunks are released.
+	 */
+	@Test
+	public void testPrefetchIsBounded() throws Exception {
+
+		final MappedChunkPool pool = new MappedChunkPool(CHUNK_SIZE, MAX_PREFETCHED_CHUNKS, this.executor);
+
+		final MappedChunkPool.Chunk[] chunks = new MappedChunkPool.Chunk[NUMBER_OF_CHUNKS];
+		for (int i = 0; i < NUMBER_OF_CHUNKS; ++i) {
+			chunks[i] = pool.retain(this.channel, i * CHUNK_SIZE, CHUNK_SIZE, true);
+			assertEquals(Math.min(i + 1, MAX_PREFETCHED_CHUNKS), pool.getNumberOfPrefetchedChunks());
+		}
+
+		for (int i = 0; i < NUMBER_OF_CHUNKS; ++i) {
+			assertRegion(chunks[i].getRegion(i * CHUNK_SIZE, CHUNK_SIZE), i * CHUNK_SIZE, CHUNK_SIZE);
+			pool.release(chunks[i]);
+			assertEquals(Math.min(NUMBER_OF_CHUNKS - i - 1, MAX_PREFETCHED_CHUNKS), pool.getNumberOfPrefetchedChunks());
+		}
+	}
+
+	private static void assertRegion(final ByteBuffer region, final int offset, final int size) {
+
+		assertNotNull(region);
+		assertEquals(0, region.position());
+		assertEquals(size, region.remaining());
+		for (int i = 0; i < size; ++i) {
+			assertEquals((byte) ((offset + i) * 31), region.get(i));
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.channels;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.types.IntegerRecord;
+import eu.stratosphere.nephele.types.Record;
+import eu.stratosphere.nephele.types.StringRecord;
+
+/**
+ * Compares the throughput of the {@link SpanningRecordSerializer} and {@link SpanningRecordDeserializer} when they
+ * write and read records directly to and from memory buffers with the throughput of the copying path, which is
+ * taken for records that span several buffers. The copying path is forced by hiding the memory buffers behind plain
+ * byte channels.
+ */
+public class RecordSerializationBenchmark {
+
+	private static final Log LOG = LogFactory.getLog(RecordSerializationBenchmark.class);
+
+	private static final int NUM_RECORDS = 1000000;
+
+	private static final int NUM_REPETITIONS = 3;
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private static final long SEED = 4686541236541354L;
+
+	@Test
+	public void testIntegerRecords() throws Exception {
+
+		final Random rnd = new Random(SEED);
+		final IntegerRecord[] records = new IntegerRecord[NUM_RECORDS];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = new IntegerRecord(rnd.nextInt());
+		}
+
+		runBenchmark("IntegerRecord", records, new IntegerRecord());
+	}
+
+	@Test
+	public void testStringRecords() throws Exception {
+
+		final Random rnd = new Random(SEED);
+		final StringRecord[] records = new StringRecord[NUM_RECORDS];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = new StringRecord(randomString(rnd));
+		}
+
+		runBenchmark("StringRecord", records, new StringRecord());
+	}
+
+	@Test
+	public void testCompositeRecords() throws Exception {
+
+		final Random rnd = new Random(SEED);
+		final CompositeRecord[] records = new CompositeRecord[NUM_RECORDS];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = new CompositeRecord(rnd.nextInt(), rnd.nextLong(), randomString(rnd));
+		}
+
+		runBenchmark("CompositeRecord", records, new CompositeRecord());
+	}
+
+	private static String randomString(final Random rnd) {
+
+		final char[] chars = new char[10 + rnd.nextInt(90)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) ('a' + rnd.nextInt(26));
+		}
+
+		return new String(chars);
+	}
+
+	private <T extends Record> void runBenchmark(final String name, final T[] records, final T target)
+			throws IOException {
+
+		for (final boolean direct : new boolean[] { false, true }) {
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < NUM_REPETITIONS; i++) {
+				final long start = System.currentTimeMillis();
+				assertEquals(records.length, roundTrip(records, target, direct));
+				best = Math.min(best, System.currentTimeMillis() - start);
+			}
+			LOG.info(name + (direct ? ", direct: " : ", copying: ") + best + " msecs for " + records.length
+				+ " records.");
+		}
+	}
+
+	private <T extends Record> int roundTrip(final T[] records, final T target, final boolean direct)
+			throws IOException {
+
+		final SpanningRecordSerializer<T> serializer = new SpanningRecordSerializer<T>();
+		final SpanningRecordDeserializer<T> deserializer = new SpanningRecordDeserializer<T>(null);
+		final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		final MemoryBufferPoolConnector bufferPoolConnector = new AbstractDeSerializerTest.TestBufferPoolConnector();
+		final ChannelWrapper channel = new ChannelWrapper();
+
+		Buffer buffer = BufferFactory.createFromMemory(BUFFER_SIZE, byteBuffer, bufferPoolConnector);
+		int numberOfRecords = 0;
+
+		for (int i = 0; i < records.length; i++) {
+
+			serializer.serialize(records[i]);
+			while (true) {
+				channel.buffer = buffer;
+				serializer.read(direct ? buffer : channel);
+				if (!serializer.dataLeftFromPreviousSerialization()) {
+					break;
+				}
+
+				buffer.finishWritePhase();
+				numberOfRecords += drain(deserializer, target, buffer, channel, direct);
+				byteBuffer.clear();
+				buffer = BufferFactory.createFromMemory(BUFFER_SIZE, byteBuffer, bufferPoolConnector);
+			}
+		}
+
+		buffer.finishWritePhase();
+		numberOfRecords += drain(deserializer, target, buffer, channel, direct);
+
+		return numberOfRecords;
+	}
+
+	private <T extends Record> int drain(final SpanningRecordDeserializer<T> deserializer, final T target,
+			final Buffer buffer, final ChannelWrapper channel, final boolean direct) throws IOException {
+
+		channel.buffer = buffer;
+
+		int numberOfRecords = 0;
+		while (deserializer.readData(target, direct ? buffer : channel) != null) {
+			++numberOfRecords;
+		}
+
+		return numberOfRecords;
+	}
+
+	/**
+	 * Hides a buffer behind the plain channel interfaces.
+	 */
+	private static final class ChannelWrapper implements ReadableByteChannel, WritableByteChannel {
+
+		private Buffer buffer;
+
+		@Override
+		public int read(final ByteBuffer dst) throws IOException {
+			return this.buffer.read(dst);
+		}
+
+		@Override
+		public int write(final ByteBuffer src) throws IOException {
+			return this.buffer.write(src);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A record with several fields of different types, laid out like a small PACT record: the number of fields,
+	 * followed by the fields.
+	 */
+	private static final class CompositeRecord implements Record {
+
+		private int key;
+
+		private long value;
+
+		private String text;
+
+		CompositeRecord() {
+		}
+
+		CompositeRecord(final int key, final long value, final String text) {
+			this.key = key;
+			this.value = value;
+			this.text = text;
+		}
+
+		@Override
+		public void write(final DataOutput out) throws IOException {
+			out.writeByte(3);
+			out.writeInt(this.key);
+			out.writeLong(this.value);
+			out.writeUTF(this.text);
+		}
+
+		@Override
+		public void read(final DataInput in) throws IOException {
+			in.readByte();
+			this.key = in.readInt();
+			this.value = in.readLong();
+			this.text = in.readUTF();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compression library based on the {@link Deflater} and {@link Inflater} classes of the JDK. It writes the same
+ * format as the native libraries, so tests can exercise compressed code paths without the native code being
+ * available.
+ * <p>
+ * This class is thread-safe.
+ */
+public class DeflaterCompressionLibrary implements CompressionLibrary {
+
+	/**
+	 * Constructs the library. The constructor signature is required by the {@link CompressionLoader}.
+	 * 
+	 * @param nativeLibraryPath
+	 *        the path to the native libraries, ignored by this library
+	 */
+	public DeflaterCompressionLibrary(final String nativeLibraryPath) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Compressor createNewCompressor(final CompressionBufferProvider bufferProvider) {
+
+		return new DeflaterCompressor(bufferProvider);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Decompressor createNewDecompressor(final CompressionBufferProvider bufferProvider) {
+
+		return new InflaterDecompressor(bufferProvider);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getUncompressedBufferSize(final int compressedBufferSize) {
+
+		return compressedBufferSize - AbstractCompressor.SIZE_LENGTH;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getLibraryName() {
+
+		return "DEFLATER";
+	}
+
+	private static final class DeflaterCompressor extends AbstractCompressor {
+
+		private final Deflater deflater = new Deflater();
+
+		private DeflaterCompressor(final CompressionBufferProvider bufferProvider) {
+			super(bufferProvider);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected int compressBytesDirect(final int offset) {
+
+			final byte[] input = new byte[this.uncompressedDataBufferLength];
+			final ByteBuffer src = this.uncompressedDataBuffer.duplicate();
+			src.clear();
+			src.get(input);
+
+			final byte[] output = new byte[this.compressedDataBufferLength - offset - SIZE_LENGTH];
+			this.deflater.reset();
+			this.deflater.setInput(input);
+			this.deflater.finish();
+			final int numberOfCompressedBytes = this.deflater.deflate(output);
+			if (!this.deflater.finished()) {
+				throw new IllegalStateException("Compressed data exceeds the size of the compression buffer");
+			}
+
+			// Same header as written by the native libraries: compressed length followed by uncompressed length
+			final ByteBuffer dest = this.compressedDataBuffer.duplicate();
+			dest.clear();
+			dest.position(offset);
+			dest.putInt(numberOfCompressedBytes);
+			dest.putInt(input.length);
+			dest.put(output, 0, numberOfCompressedBytes);
+
+			return numberOfCompressedBytes;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void freeInternalResources() {
+
+			this.deflater.end();
+		}
+	}
+
+	private static final class InflaterDecompressor extends AbstractDecompressor {
+
+		private final Inflater inflater = new Inflater();
+
+		private InflaterDecompressor(final CompressionBufferProvider bufferProvider) {
+			super(bufferProvider);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected int decompressBytesDirect(final int offset) {
+
+			final ByteBuffer src = this.compressedDataBuffer.duplicate();
+			src.clear();
+			src.position(offset);
+			src.limit(this.compressedDataBufferLength);
+			final byte[] input = new byte[src.remaining()];
+			src.get(input);
+
+			final byte[] output = new byte[this.uncompressedDataBufferLength];
+			this.inflater.reset();
+			this.inflater.setInput(input);
+			final int numberOfUncompressedBytes;
+			try {
+				numberOfUncompressedBytes = this.inflater.inflate(output);
+			} catch (DataFormatException e) {
+				return -1;
+			}
+
+			final ByteBuffer dest = this.uncompressedDataBuffer.duplicate();
+			dest.clear();
+			dest.put(output, 0, numberOfUncompressedBytes);
+
+			return numberOfUncompressedBytes;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void freeInternalResources() {
+
+			this.inflater.end();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.compression.library.dynamic;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * This class contains tests for the {@link BanditDecisionModel}. The transfer of the buffers is simulated with two
+ * libraries: The stub library at index 0 forwards the data unchanged, the library at index 1 compresses the data to
+ * an eighth of its size.
+ */
+public class BanditDecisionModelTest {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int[] COMPRESSED_SIZE = { BUFFER_SIZE, BUFFER_SIZE / 8 };
+
+	/**
+	 * The compression time of each library in nanoseconds.
+	 */
+	private static final long[] COMPRESSION_TIME = { 0L, 10000L };
+
+	/**
+	 * The simulated link rate in bytes per nanosecond, i.e. 1 GB/s.
+	 */
+	private static final double LINK_RATE = 1.0;
+
+	private static final int NUMBER_OF_BUFFERS = 400;
+
+	/**
+	 * Checks that the model learns the link rate from transfers which take less than a millisecond and picks the
+	 * library with the higher throughput.
+	 */
+	@Test
+	public void testSubMillisecondTransfers() {
+
+		final int[] selections = replay(new BanditDecisionModel(2));
+
+		assertTrue("Compressing library selected " + selections[1] + " times",
+			selections[1] > 0.9 * NUMBER_OF_BUFFERS / 2);
+	}
+
+	/**
+	 * Checks that the model avoids a library whose decompression is expensive at the receiver.
+	 */
+	@Test
+	public void testReceiverDecompressionCosts() {
+
+		final BanditDecisionModel decisionModel = new BanditDecisionModel(2);
+		decisionModel.reportDecompressionCosts(new double[] { -1.0, 10.0 });
+
+		final int[] selections = replay(decisionModel);
+
+		assertTrue("Stub library selected " + selections[0] + " times", selections[0] > 0.9 * NUMBER_OF_BUFFERS / 2);
+	}
+
+	/**
+	 * Replays the simulated buffers through the given decision model.
+	 * 
+	 * @param decisionModel
+	 *        the decision model to replay
+	 * @return the number of times each library has been selected during the second half of the replay
+	 */
+	private static int[] replay(final DecisionModel decisionModel) {
+
+		final int[] selections = new int[2];
+		int selection = 0;
+		for (int i = 0; i < NUMBER_OF_BUFFERS; ++i) {
+
+			decisionModel.reportCompressionResult(selection, BUFFER_SIZE, COMPRESSED_SIZE[selection],
+				COMPRESSION_TIME[selection]);
+
+			final long duration = COMPRESSION_TIME[selection] + Math.round(COMPRESSED_SIZE[selection] / LINK_RATE);
+			selection = decisionModel.getCompressionLevelForNextBuffer(BUFFER_SIZE, duration);
+
+			if (i >= NUMBER_OF_BUFFERS / 2) {
+				++selections[selection];
+			}
+		}
+
+		return selections;
+	}
+}
@@ -0,0 +1,322 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.io.compression.library.dynamic;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+/**
+ * Replays a sequence of buffers through the decision models of the {@link DynamicCompressor} and compares the
+ * resulting transfer time with the transfer time of each static compression library. The transfer is simulated: The
+ * compressed sizes, compression and decompression times are measured once per buffer and library, and the link is
+ * modeled with a fixed rate. The benchmark is therefore independent of the native compression libraries and uses
+ * the deflate levels of <code>java.util.zip</code> instead.
+ * <p>
+ * By default, the buffers consist of well compressible text followed by random data. To replay recorded data, e.g.
+ * the input files of the compression example job around <code>CompressionTestTask</code>, set the system property
+ * <code>compression.benchmark.input</code> to a file or directory.
+ */
+public class DecisionModelBenchmark {
+
+	private static final Log LOG = LogFactory.getLog(DecisionModelBenchmark.class);
+
+	private static final String INPUT_PROPERTY = "compression.benchmark.input";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int NUM_SYNTHETIC_BUFFERS = 200;
+
+	private static final int NUM_ROUNDS = 5;
+
+	/**
+	 * The simulated link rate in bytes per nanosecond, i.e. 20 MB/s.
+	 */
+	private static final double LINK_RATE = 0.02;
+
+	/**
+	 * The compression levels that are simulated, with the stub library at index 0.
+	 */
+	private static final int[] LEVELS = { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION,
+		Deflater.BEST_COMPRESSION };
+
+	private static final long SEED = 4686541236541354L;
+
+	@Test
+	public void testDecisionModels() throws IOException, DataFormatException {
+
+		final List<byte[]> buffers = loadBuffers();
+		final Measurement[][] measurements = measure(buffers);
+
+		// Static selections
+		double bestStaticTime = Double.MAX_VALUE;
+		for (int i = 0; i < LEVELS.length; ++i) {
+			final double time = replay(measurements, new StaticDecisionModel(i));
+			LOG.info("Static library " + i + ": " + toMillis(time) + " msecs");
+			bestStaticTime = Math.min(bestStaticTime, time);
+		}
+
+		final double dataRateTime = replay(measurements, new DataRateDecisionModel(LEVELS.length));
+		LOG.info("Data rate model: " + toMillis(dataRateTime) + " msecs");
+
+		final double banditTime = replay(measurements, new BanditDecisionModel(LEVELS.length));
+		LOG.info("Bandit model: " + toMillis(banditTime) + " msecs");
+
+		assertTrue("Bandit model took " + toMillis(banditTime) + " msecs, best static library "
+			+ toMillis(bestStaticTime) + " msecs", banditTime < 1.5 * bestStaticTime);
+	}
+
+	private static long toMillis(final double nanos) {
+
+		return Math.round(nanos / 1000000.0);
+	}
+
+	/**
+	 * Replays the measured buffers through the given decision model.
+	 * 
+	 * @param measurements
+	 *        the measurements indexed by buffer and compression library
+	 * @param decisionModel
+	 *        the decision model to replay
+	 * @return the simulated total transfer time in nanoseconds
+	 */
+	private static double replay(final Measurement[][] measurements, final DecisionModel decisionModel) {
+
+		final DecompressionStatistics statistics = new DecompressionStatistics(LEVELS.length);
+
+		double totalTime = 0.0;
+		int numberOfBuffers = 0;
+		int selection = 0;
+		for (int round = 0; round < NUM_ROUNDS; ++round) {
+			for (int i = 0; i < measurements.length; ++i) {
+
+				final Measurement measurement = measurements[i][selection];
+				decisionModel.reportCompressionResult(selection, measurement.uncompressedSize,
+					measurement.compressedSize, measurement.compressionTime);
+				if (selection > 0) {
+					statistics.reportDecompressionTime(selection, measurement.uncompressedSize,
+						measurement.decompressionTime);
+				}
+
+				// The receiver periodically reports its decompression costs to the sender
+				if (++numberOfBuffers % 16 == 0) {
+					decisionModel.reportDecompressionCosts(statistics.getNanosPerByte());
+				}
+
+				final double time = measurement.compressionTime + measurement.compressedSize / LINK_RATE
+					+ measurement.decompressionTime;
+				totalTime += time;
+
+				selection = decisionModel.getCompressionLevelForNextBuffer(measurement.uncompressedSize,
+					Math.round(time));
+			}
+		}
+
+		return totalTime;
+	}
+
+	private static Measurement[][] measure(final List<byte[]> buffers) throws DataFormatException {
+
+		final Measurement[][] measurements = new Measurement[buffers.size()][LEVELS.length];
+		final byte[] compressed = new byte[BUFFER_SIZE * 2];
+		final byte[] uncompressed = new byte[BUFFER_SIZE];
+
+		for (int j = 0; j < LEVELS.length; ++j) {
+
+			final Deflater deflater = new Deflater(LEVELS[j]);
+			final Inflater inflater = new Inflater();
+
+			for (int i = 0; i < buffers.size(); ++i) {
+
+				final byte[] buffer = buffers.get(i);
+				final Measurement measurement = new Measurement();
+				measurement.uncompressedSize = buffer.length;
+
+				// The stub library forwards the data unchanged
+				if (j == 0) {
+					measurement.compressedSize = buffer.length;
+					measurements[i][j] = measurement;
+					continue;
+				}
+
+				long start = System.nanoTime();
+				deflater.reset();
+				deflater.setInput(buffer);
+				deflater.finish();
+				final int compressedSize = deflater.deflate(compressed);
+				measurement.compressionTime = System.nanoTime() - start;
+				measurement.compressedSize = compressedSize;
+
+				start = System.nanoTime();
+				inflater.reset();
+				inflater.setInput(compressed, 0, compressedSize);
+				final int uncompressedSize = inflater.inflate(uncompressed);
+				measurement.decompressionTime = System.nanoTime() - start;
+
+				assertTrue(uncompressedSize == buffer.length);
+				measurements[i][j] = measurement;
+			}
+
+			deflater.end();
+			inflater.end();
+		}
+
+		return measurements;
+	}
+
+	private static List<byte[]> loadBuffers() throws IOException {
+
+		final String input = System.getProperty(INPUT_PROPERTY);
+		if (input != null) {
+			final List<byte[]> buffers = new ArrayList<byte[]>();
+			loadBuffers(new File(input), buffers);
+			if (!buffers.isEmpty()) {
+				return buffers;
+			}
+			LOG.warn("No data found at " + input + ", using synthetic buffers");
+		}
+
+		final Random rnd = new Random(SEED);
+		final List<byte[]> buffers = new ArrayList<byte[]>();
+
+		// Well compressible text
+		final String[] words = { "stratosphere", "nephele", "pact", "record", "buffer", "channel", "task", "job",
+			"compression", "checkpoint", "the", "a", "of", "and" };
+		for (int i = 0; i < NUM_SYNTHETIC_BUFFERS / 2; ++i) {
+			final StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+			while (sb.length() < BUFFER_SIZE) {
+				sb.append(words[rnd.nextInt(words.length)]).append(' ');
+				if (rnd.nextInt(12) == 0) {
+					sb.append(rnd.nextInt(100000)).append('\n');
+				}
+			}
+			buffers.add(Arrays.copyOf(sb.toString().getBytes("US-ASCII"), BUFFER_SIZE));
+		}
+
+		// Incompressible data
+		for (int i = NUM_SYNTHETIC_BUFFERS / 2; i < NUM_SYNTHETIC_BUFFERS; ++i) {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			rnd.nextBytes(buffer);
+			buffers.add(buffer);
+		}
+
+		return buffers;
+	}
+
+	private static void loadBuffers(final File file, final List<byte[]> buffers) throws IOException {
+
+		if (file.isDirectory()) {
+			final File[] files = file.listFiles();
+			if (files != null) {
+				Arrays.sort(files);
+				for (final File f : files) {
+					loadBuffers(f, buffers);
+				}
+			}
+			return;
+		}
+
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			while (true) {
+				final byte[] buffer = new byte[BUFFER_SIZE];
+				int read = 0;
+				while (read < BUFFER_SIZE) {
+					final int r = fis.read(buffer, read, BUFFER_SIZE - read);
+					if (r < 0) {
+						break;
+					}
+					read += r;
+				}
+				if (read == 0) {
+					break;
+				}
+				buffers.add(read == BUFFER_SIZE ? buffer : Arrays.copyOf(buffer, read));
+				if (read < BUFFER_SIZE) {
+					break;
+				}
+			}
+		} finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * The costs of transferring a single buffer with a particular compression library.
+	 */
+	private static final class Measurement {
+
+		private int uncompressedSize;
+
+		private int compressedSize;
+
+		private long compressionTime;
+
+		private long decompressionTime;
+	}
+
+	/**
+	 * A decision model that always selects the same compression library.
+	 */
+	private static final class StaticDecisionModel implements DecisionModel {
+
+		private final int compressionLevel;
+
+		private StaticDecisionModel(final int compressionLevel) {
+			this.compressionLevel = compressionLevel;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void reportCompressionResult(final int compressionLevel, final int uncompressedSize,
+				final int compressedSize, final long compressionTime) {
+			// Nothing to do here
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void reportDecompressionCosts(final double[] nanosPerByte) {
+			// Nothing to do here
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getCompressionLevelForNextBuffer(final int sizeOfLastUncompressedBuffer,
+				final long durationOfLastBufferTransfer) {
+
+			return this.compressionLevel;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.iomanager;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.services.memorymanager.DefaultMemoryManagerTest.DummyInvokable;
+import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
+import eu.stratosphere.nephele.services.memorymanager.spi.DefaultMemoryManager;
+
+public class BlockCompressionCodecTest
+{
+	private static final long SEED = 649180756312423613L;
+	
+	private static final int PAGE_SIZE = 32 * 1024;
+	
+	private static final int NUM_RECORDS = 200000;
+	
+	// ------------------------------------------------------------------------
+	//                        Cross Test Fields
+	// ------------------------------------------------------------------------
+	
+	private IOManager ioManager;
+
+	private DefaultMemoryManager memoryManager;
+	
+	// ------------------------------------------------------------------------
+	//                           Setup & Shutdown
+	// ------------------------------------------------------------------------
+	
+	@Before
+	public void beforeTest()
+	{
+		this.memoryManager = new DefaultMemoryManager(4 * 1024 * 1024, PAGE_SIZE);
+		this.ioManager = new IOManager();
+	}
+
+	@After
+	public void afterTest()
+	{
+		this.ioManager.shutdown();
+		Assert.assertTrue("IO Manager has not properly shut down.", ioManager.isProperlyShutDown());
+		
+		Assert.assertTrue("Not all memory was returned to the memory manager in the test.", this.memoryManager.verifyEmpty());
+		this.memoryManager.shutdown();
+		this.memoryManager = null;
+	}
+
+	// ------------------------------------------------------------------------
+	//                           Test Methods
+	// ------------------------------------------------------------------------
+	
+	@Test
+	public void lzCodecRoundTrip() throws IOException
+	{
+		testCodecRoundTrip(new LZBlockCompressionCodec());
+	}
+	
+	@Test
+	public void deflateCodecRoundTrip() throws IOException
+	{
+		testCodecRoundTrip(new DeflateBlockCompressionCodec());
+	}
+	
+	@Test
+	public void createCodecByName()
+	{
+		Assert.assertNull(BlockCompressionCodecs.createCodec(null));
+		Assert.assertNull(BlockCompressionCodecs.createCodec(BlockCompressionCodecs.NONE));
+		Assert.assertTrue(BlockCompressionCodecs.createCodec("LZ") instanceof LZBlockCompressionCodec);
+		Assert.assertTrue(BlockCompressionCodecs.createCodec(BlockCompressionCodecs.DEFLATE) instanceof DeflateBlockCompressionCodec);
+		Assert.assertTrue(BlockCompressionCodecs.createCodec(LZBlockCompressionCodec.class.getName()) instanceof LZBlockCompressionCodec);
+		
+		try {
+			BlockCompressionCodecs.createCodec("snappy-unknown");
+			Assert.fail("Unknown codec name was accepted.");
+		}
+		catch (IllegalArgumentException iaex) {
+			// expected
+		}
+		try {
+			BlockCompressionCodecs.createCodec(String.class.getName());
+			Assert.fail("Class that is no codec was accepted.");
+		}
+		catch (IllegalArgumentException iaex) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void compressedViewsReadWrite() throws Exception
+	{
+		final int uncompressedBlocks = writeAndReadRecords(null, false, 4);
+		final int lzBlocks = writeAndReadRecords(new LZBlockCompressionCodec(), false, 4);
+		final int deflateBlocks = writeAndReadRecords(new DeflateBlockCompressionCodec(), false, 4);
+		
+		Assert.assertTrue("LZ compression did not reduce the number of blocks.", lzBlocks < uncompressedBlocks);
+		Assert.assertTrue("Deflate compression did not reduce the number of blocks.", deflateBlocks < uncompressedBlocks);
+	}
+	
+	@Test
+	public void compressedViewsIncompressibleData() throws Exception
+	{
+		writeAndReadRecords(new LZBlockCompressionCodec(), true, 4);
+		writeAndReadRecords(new DeflateBlockCompressionCodec(), true, 4);
+	}
+	
+	@Test
+	public void compressedViewsMinimalMemory() throws Exception
+	{
+		// one segment holds the uncompressed page, the other one the blocks
+		writeAndReadRecords(new LZBlockCompressionCodec(), false, 2);
+		writeAndReadRecords(new LZBlockCompressionCodec(), true, 2);
+		
+		// the page is allocated on the heap
+		writeAndReadRecords(new DeflateBlockCompressionCodec(), false, 1);
+	}
+	
+	@Test
+	public void compressedViewsEmptyChannel() throws Exception
+	{
+		final List<MemorySegment> memory = this.memoryManager.allocatePages(new DummyInvokable(), 4);
+		
+		final Channel.ID channel = this.ioManager.createChannel();
+		final ChannelWriterOutputView out = new ChannelWriterOutputView(
+			this.ioManager.createBlockChannelWriter(channel), memory, PAGE_SIZE, new LZBlockCompressionCodec());
+		memory.clear();
+		memory.addAll(out.close());
+		
+		final ChannelReaderInputView in = new ChannelReaderInputView(this.ioManager.createBlockChannelReader(channel),
+			memory, out.getBlockCount(), new LZBlockCompressionCodec(), false);
+		try {
+			in.readInt();
+			Assert.fail("Read data from an empty channel.");
+		}
+		catch (EOFException eofex) {
+			// expected
+		}
+		
+		this.memoryManager.release(in.close());
+		this.ioManager.deleteChannel(channel);
+	}
+	
+	// ------------------------------------------------------------------------
+	
+	private void testCodecRoundTrip(BlockCompressionCodec codec) throws IOException
+	{
+		final Random rnd = new Random(SEED);
+		
+		final int[] lengths = {1, 3, 17, 255, 4096, PAGE_SIZE};
+		for (int l = 0; l < lengths.length; l++) {
+			final int len = lengths[l];
+			
+			// repetitive, random and mixed data
+			for (int kind = 0; kind < 3; kind++) {
+				final byte[] data = new byte[len];
+				for (int i = 0; i < len; i++) {
+					data[i] = kind == 0 ? (byte) (i % 7) : kind == 1 ? (byte) rnd.nextInt() : 
+						(rnd.nextInt(4) == 0 ? (byte) rnd.nextInt() : (byte) 'a');
+				}
+				
+				final byte[] compressed = new byte[codec.getMaxCompressedLength(len) + 5];
+				final int clen = codec.compress(data, 0, len, compressed, 5);
+				Assert.assertTrue(clen > 0 && clen <= codec.getMaxCompressedLength(len));
+				
+				final byte[] restored = new byte[len + 3];
+				codec.decompress(compressed, 5, clen, restored, 3, len);
+				for (int i = 0; i < len; i++) {
+					Assert.assertEquals("Decompressed data differs from the original data.", data[i], restored[i + 3]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes records through a view with the given codec and validates them when reading them back.
+	 * 
+	 * @return The number of blocks written.
+	 */
+	private int writeAndReadRecords(BlockCompressionCodec codec, boolean random, int numSegments) throws Exception
+	{
+		final List<MemorySegment> memory = this.memoryManager.allocatePages(new DummyInvokable(), numSegments);
+		final byte[] payload = new byte[13];
+		
+		final Channel.ID channel = this.ioManager.createChannel();
+		final ChannelWriterOutputView out = new ChannelWriterOutputView(
+			this.ioManager.createBlockChannelWriter(channel), memory, PAGE_SIZE, codec);
+		
+		Random rnd = new Random(SEED);
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			fillPayload(rnd, payload, random);
+			out.writeInt(i);
+			out.write(payload);
+		}
+		memory.clear();
+		memory.addAll(out.close());
+		Assert.assertEquals(numSegments, memory.size());
+		Assert.assertEquals(NUM_RECORDS * 17L, out.getBytesWritten());
+		
+		final ChannelReaderInputView in = new ChannelReaderInputView(this.ioManager.createBlockChannelReader(channel),
+			memory, out.getBlockCount(), codec, false);
+		final byte[] expected = new byte[payload.length];
+		
+		rnd = new Random(SEED);
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			fillPayload(rnd, expected, random);
+			Assert.assertEquals("Read record number differs from the written one.", i, in.readInt());
+			in.readFully(payload);
+			for (int k = 0; k < payload.length; k++) {
+				Assert.assertEquals("Read payload differs from the written one.", expected[k], payload[k]);
+			}
+		}
+		try {
+			in.readByte();
+			Assert.fail("Read more data than was written.");
+		}
+		catch (EOFException eofex) {
+			// expected
+		}
+		
+		memory.clear();
+		memory.addAll(in.close());
+		Assert.assertEquals(numSegments, memory.size());
+		this.memoryManager.release(memory);
+		this.ioManager.deleteChannel(channel);
+		return out.getBlockCount();
+	}
+	
+	private static void fillPayload(Random rnd, byte[] payload, boolean random)
+	{
+		if (random) {
+			rnd.nextBytes(payload);
+		} else {
+			final int v = rnd.nextInt(16);
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] = (byte) ('a' + v);
+			}
+		}
+	}
+}
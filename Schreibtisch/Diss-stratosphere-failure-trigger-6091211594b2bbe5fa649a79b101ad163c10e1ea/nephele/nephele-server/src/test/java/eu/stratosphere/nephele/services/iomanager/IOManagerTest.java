@@ -17,7 +17,11 @@ package eu.stratosphere.nephele.services.iomanager;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
@@ -190,8 +194,394 @@ public class IOManagerTest
 		}
 	}
 
+	@Test
+	public void channelReadWriteBundledRequests()
+	{
+		final int NUM_IOS = 1111;
+		final int NUM_SEGS = 16;
+		
+		try {
+			final List<MemorySegment> memSegs = this.memoryManager.allocatePages(new DummyInvokable(), NUM_SEGS);
+			final Channel.ID channelID = this.ioManager.createChannel();
+			final BlockChannelWriter writer = this.ioManager.createBlockChannelWriter(channelID, 3);
+			
+			for (int i = 0; i < NUM_IOS; i++) {
+				final MemorySegment memSeg = memSegs.isEmpty() ? writer.getNextReturnedSegment() : memSegs.remove(0);
+				
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					memSeg.putInt(pos, i);
+				}
+				
+				writer.writeBlock(memSeg);
+			}
+			writer.close();
+			
+			// get back the memory
+			while (memSegs.size() < NUM_SEGS) {
+				memSegs.add(writer.getNextReturnedSegment());
+			}
+			
+			final BlockChannelReader reader = this.ioManager.createBlockChannelReader(channelID, 5);
+			while(!memSegs.isEmpty()) {
+				reader.readBlock(memSegs.remove(0));
+			}
+			
+			for (int i = 0; i < NUM_IOS; i++) {
+				final MemorySegment memSeg = reader.getNextReturnedSegment();
+				
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					if (memSeg.getInt(pos) != i) {
+						Assert.fail("Read memory segment contains invalid data.");
+					}
+				}
+				reader.readBlock(memSeg);
+			}
+			
+			reader.closeAndDelete();
+			
+			// get back the memory
+			while (memSegs.size() < NUM_SEGS) {
+				memSegs.add(reader.getNextReturnedSegment());
+			}
+			
+			this.memoryManager.release(memSegs);
+			
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			Assert.fail("Test encountered an exception: " + ex.getMessage());
+		}
+	}
+	
+	@Test
+	public void bulkReadMemoryMapped()
+	{
+		final int NUM_SEGS = 16;
+		
+		try {
+			final List<MemorySegment> memSegs = this.memoryManager.allocatePages(new DummyInvokable(), NUM_SEGS);
+			final Channel.ID channelID = this.ioManager.createChannel();
+			final BlockChannelWriter writer = this.ioManager.createBlockChannelWriter(channelID);
+			
+			for (int i = 0; i < NUM_SEGS; i++) {
+				final MemorySegment memSeg = memSegs.get(i);
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					memSeg.putInt(pos, i);
+				}
+				writer.writeBlock(memSeg);
+			}
+			writer.close();
+			memSegs.clear();
+			while (memSegs.size() < NUM_SEGS) {
+				memSegs.add(writer.getNextReturnedSegment());
+			}
+			
+			final BulkBlockChannelReader reader = this.ioManager.createBulkBlockChannelReader(channelID, memSegs, NUM_SEGS, true);
+			reader.closeAndDelete();
+			
+			final List<MemorySegment> fullSegs = reader.getFullSegments();
+			Assert.assertEquals(NUM_SEGS, fullSegs.size());
+			for (int i = 0; i < NUM_SEGS; i++) {
+				final MemorySegment memSeg = fullSegs.get(i);
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					if (memSeg.getInt(pos) != i) {
+						Assert.fail("Read memory segment contains invalid data.");
+					}
+				}
+			}
+			
+			this.memoryManager.release(fullSegs);
+			
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			Assert.fail("Test encountered an exception: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Tests that partially filled bundles are issued after a bounded delay, so that segments also return to
+	 * callers which take them from an external return queue, rather than waiting through the channel.
+	 */
+	@Test
+	public void bundledRequestsWithExternalReturnQueue()
+	{
+		try {
+			final List<MemorySegment> memSegs = this.memoryManager.allocatePages(new DummyInvokable(), 2);
+			final Channel.ID channelID = this.ioManager.createChannel();
+			final LinkedBlockingQueue<MemorySegment> returnQueue = new LinkedBlockingQueue<MemorySegment>();
+			
+			final BlockChannelWriter writer = this.ioManager.createBlockChannelWriter(channelID, returnQueue, 4);
+			for (int i = 0; i < 2; i++) {
+				final MemorySegment memSeg = memSegs.get(i);
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					memSeg.putInt(pos, i);
+				}
+				writer.writeBlock(memSeg);
+			}
+			memSegs.clear();
+			for (int i = 0; i < 2; i++) {
+				final MemorySegment memSeg = returnQueue.poll(10, TimeUnit.SECONDS);
+				Assert.assertNotNull("The partially filled bundle was not written.", memSeg);
+				memSegs.add(memSeg);
+			}
+			writer.close();
+			
+			final BlockChannelReader reader = this.ioManager.createBlockChannelReader(channelID, returnQueue, 4);
+			reader.readBlock(memSegs.remove(0));
+			reader.readBlock(memSegs.remove(0));
+			for (int i = 0; i < 2; i++) {
+				final MemorySegment memSeg = returnQueue.poll(10, TimeUnit.SECONDS);
+				Assert.assertNotNull("The partially filled bundle was not read.", memSeg);
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					if (memSeg.getInt(pos) != i) {
+						Assert.fail("Read memory segment contains invalid data.");
+					}
+				}
+				memSegs.add(memSeg);
+			}
+			reader.closeAndDelete();
+			
+			this.memoryManager.release(memSegs);
+			
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			Assert.fail("Test encountered an exception: " + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Tests that memory mapped reads work beyond the first 2 GB of a file and map the requested blocks in
+	 * several bounded regions. The test uses a sparse file, so it does not need the disk space.
+	 */
+	@Test
+	public void mappedReadBeyondTwoGigabytes()
+	{
+		final int NUM_SEGS = 8;
+		final long OFFSET = 3L * 1024 * 1024 * 1024;
+		
+		try {
+			final List<MemorySegment> memSegs = this.memoryManager.allocatePages(new DummyInvokable(), NUM_SEGS);
+			final int pageSize = memSegs.get(0).size();
+			final Channel.ID channelID = this.ioManager.createChannel();
+			
+			final RandomAccessFile file = new RandomAccessFile(channelID.getPath(), "rw");
+			try {
+				final byte[] block = new byte[pageSize];
+				for (int i = 0; i < NUM_SEGS; i++) {
+					for (int pos = 0; pos < pageSize; pos++) {
+						block[pos] = (byte) (i + 1);
+					}
+					file.seek(OFFSET + ((long) i) * pageSize);
+					file.write(block);
+				}
+			} finally {
+				file.close();
+			}
+			
+			final BlockChannelReader reader = this.ioManager.createBlockChannelReader(channelID);
+			reader.fileChannel.position(OFFSET);
+			reader.requestsNotReturned.addAndGet(NUM_SEGS);
+			reader.requestQueue.add(new MappedSegmentsReadRequest(reader, memSegs, 3 * pageSize));
+			
+			final List<MemorySegment> fullSegs = new ArrayList<MemorySegment>(NUM_SEGS);
+			for (int i = 0; i < NUM_SEGS; i++) {
+				final MemorySegment memSeg = reader.getNextReturnedSegment();
+				for (int pos = 0; pos < pageSize; pos++) {
+					if (memSeg.get(pos) != (byte) (i + 1)) {
+						Assert.fail("Read memory segment contains invalid data.");
+					}
+				}
+				fullSegs.add(memSeg);
+			}
+			Assert.assertEquals("The channel was not advanced past the read blocks.",
+				OFFSET + ((long) NUM_SEGS) * pageSize, reader.fileChannel.position());
+			reader.closeAndDelete();
+			
+			this.memoryManager.release(fullSegs);
+			
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			Assert.fail("Test encountered an exception: " + ex.getMessage());
+		}
+	}
+
+	@Test
+	public void stripedChannelReadWrite()
+	{
+		final int NUM_IOS = 1111;
+		final int NUM_SEGS = 16;
+		
+		final File[] tempDirs = createTempDirs(2);
+		final IOManager stripingIOManager = new IOManager(new String[] {tempDirs[0].getPath(), tempDirs[1].getPath()});
+		
+		try {
+			final List<MemorySegment> memSegs = this.memoryManager.allocatePages(new DummyInvokable(), NUM_SEGS);
+			final Channel.ID channelID = stripingIOManager.createStripedChannel(2);
+			Assert.assertTrue("The channel is not striped.", channelID instanceof Channel.StripedID);
+			
+			final BlockChannelWriter writer = stripingIOManager.createBlockChannelWriter(channelID, 3);
+			for (int i = 0; i < NUM_IOS; i++) {
+				final MemorySegment memSeg = memSegs.isEmpty() ? writer.getNextReturnedSegment() : memSegs.remove(0);
+				
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					memSeg.putInt(pos, i);
+				}
+				
+				writer.writeBlock(memSeg);
+			}
+			writer.close();
+			
+			// get back the memory
+			while (memSegs.size() < NUM_SEGS) {
+				memSegs.add(writer.getNextReturnedSegment());
+			}
+			
+			// every directory holds a part of the channel
+			final Channel.StripedID striped = (Channel.StripedID) channelID;
+			final long pageSize = memSegs.get(0).size();
+			long totalLength = 0;
+			for (int i = 0; i < striped.getNumStripes(); i++) {
+				final File stripeFile = new File(striped.getStripe(i).getPath());
+				Assert.assertTrue("Stripe file is missing.", stripeFile.exists());
+				Assert.assertTrue("Stripe file is empty.", stripeFile.length() > 0);
+				totalLength += stripeFile.length();
+			}
+			Assert.assertEquals("Wrong total length of the stripes.", NUM_IOS * pageSize, totalLength);
+			
+			final BlockChannelReader reader = stripingIOManager.createBlockChannelReader(channelID, 5);
+			while(!memSegs.isEmpty()) {
+				reader.readBlock(memSegs.remove(0));
+			}
+			
+			for (int i = 0; i < NUM_IOS; i++) {
+				final MemorySegment memSeg = reader.getNextReturnedSegment();
+				
+				for (int pos = 0; pos < memSeg.size(); pos += 4) {
+					if (memSeg.getInt(pos) != i) {
+						Assert.fail("Read memory segment contains invalid data.");
+					}
+				}
+				reader.readBlock(memSeg);
+			}
+			
+			reader.closeAndDelete();
+			
+			// get back the memory. the reader collects the segments of all stripes in its queue
+			while (memSegs.size() < NUM_SEGS) {
+				memSegs.add(reader.getNextReturnedSegment());
+			}
+			
+			for (int i = 0; i < striped.getNumStripes(); i++) {
+				Assert.assertFalse("Stripe file was not deleted.", new File(striped.getStripe(i).getPath()).exists());
+			}
+			
+			// both directories did their share of the work
+			final IOStatistics[] stats = stripingIOManager.getStatistics();
+			Assert.assertEquals(2, stats.length);
+			long bytesWritten = 0;
+			for (int i = 0; i < stats.length; i++) {
+				Assert.assertTrue("Directory did not write.", stats[i].getNumBytesWritten() > 0);
+				Assert.assertTrue("Directory did not read.", stats[i].getNumBytesRead() > 0);
+				Assert.assertTrue("No write time was recorded.", stats[i].getWriteTimeNanos() > 0);
+				bytesWritten += stats[i].getNumBytesWritten();
+			}
+			Assert.assertEquals("Wrong number of bytes written.", NUM_IOS * pageSize, bytesWritten);
+			
+			this.memoryManager.release(memSegs);
+			
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			Assert.fail("Test encountered an exception: " + ex.getMessage());
+		} finally {
+			stripingIOManager.shutdown();
+			deleteTempDirs(tempDirs);
+		}
+	}
+	
+	/**
+	 * Tests that new channels are spread across idle directories and avoid busy ones.
+	 */
+	@Test
+	public void channelsBalancedAcrossDirectories() throws IOException
+	{
+		final File[] tempDirs = createTempDirs(2);
+		final IOManager balancingIOManager = new IOManager(new String[] {tempDirs[0].getPath(), tempDirs[1].getPath()});
+		
+		try {
+			// the directories are idle, so the channels alternate between them
+			final Channel.Enumerator enumerator = balancingIOManager.createChannelEnumerator();
+			final int[] counts = new int[2];
+			for (int i = 0; i < 10; i++) {
+				final File parent = new File(enumerator.next().getPath()).getParentFile();
+				counts[parent.equals(tempDirs[0]) ? 0 : 1]++;
+			}
+			Assert.assertEquals(5, counts[0]);
+			Assert.assertEquals(5, counts[1]);
+			
+			// block the first directory's writer with requests that wait
+			final Object lock = new Object();
+			final boolean[] released = new boolean[1];
+			final BlockChannelWriter writer = balancingIOManager.createBlockChannelWriter(
+				new Channel.ID(tempDirs[0].getPath() + File.separator + "blocking.channel", 0));
+			for (int i = 0; i < 3; i++) {
+				writer.requestQueue.add(new WriteRequest() {
+					@Override
+					public void write() {
+						synchronized (lock) {
+							while (!released[0]) {
+								try {
+									lock.wait();
+								} catch (InterruptedException iex) {
+									return;
+								}
+							}
+						}
+					}
+					@Override
+					public void requestDone(IOException ioex) {}
+				});
+			}
+			
+			for (int i = 0; i < 10; i++) {
+				final File parent = new File(balancingIOManager.createChannel().getPath()).getParentFile();
+				Assert.assertEquals("Channel was placed in the busy directory.", tempDirs[1], parent);
+			}
+			
+			synchronized (lock) {
+				released[0] = true;
+				lock.notifyAll();
+			}
+			writer.closeAndDelete();
+		} finally {
+			balancingIOManager.shutdown();
+			deleteTempDirs(tempDirs);
+		}
+	}
+
 	// ============================================================================================
 	
+	private static File[] createTempDirs(int num)
+	{
+		final File[] dirs = new File[num];
+		for (int i = 0; i < num; i++) {
+			dirs[i] = new File(System.getProperty("java.io.tmpdir"), "iomanager-test-" + System.nanoTime() + "-" + i);
+			Assert.assertTrue("Could not create temp directory.", dirs[i].mkdirs());
+		}
+		return dirs;
+	}
+	
+	private static void deleteTempDirs(File[] dirs)
+	{
+		for (int i = 0; i < dirs.length; i++) {
+			final File[] files = dirs[i].listFiles();
+			if (files != null) {
+				for (int k = 0; k < files.length; k++) {
+					files[k].delete();
+				}
+			}
+			dirs[i].delete();
+		}
+	}
+	
 	final class FailingSegmentReadRequest implements ReadRequest
 	{
 		private final BlockChannelAccess<ReadRequest, ?> channel;
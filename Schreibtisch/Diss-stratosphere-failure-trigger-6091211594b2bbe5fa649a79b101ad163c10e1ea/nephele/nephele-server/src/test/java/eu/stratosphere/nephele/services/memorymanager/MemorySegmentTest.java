@@ -48,7 +48,7 @@ public class MemorySegmentTest {
 	@Before
 	public void setUp() throws Exception{
 		try {
-			this.manager = new DefaultMemoryManager(MANAGED_MEMORY_SIZE, PAGE_SIZE);
+			this.manager = createMemoryManager(MANAGED_MEMORY_SIZE, PAGE_SIZE);
 			this.segment = manager.allocatePages(new DefaultMemoryManagerTest.DummyInvokable(), 1).get(0);
 			this.random = new Random(RANDOM_SEED);
 		} catch (Exception e) {
@@ -57,6 +57,13 @@ public class MemorySegmentTest {
 		}
 	}
 
+	/**
+	 * Creates the memory manager that provides the segment under test.
+	 */
+	protected DefaultMemoryManager createMemoryManager(long memorySize, int pageSize) {
+		return new DefaultMemoryManager(memorySize, pageSize);
+	}
+
 	@After
 	public void tearDown()
 	{
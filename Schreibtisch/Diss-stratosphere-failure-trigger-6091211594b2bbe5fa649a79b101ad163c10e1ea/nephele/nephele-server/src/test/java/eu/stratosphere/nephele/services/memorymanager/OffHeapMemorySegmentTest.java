@@ -0,0 +1,124 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.services.memorymanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.services.memorymanager.spi.DefaultMemoryManager;
+
+/**
+ * Runs the memory segment tests against segments backed by off-heap memory.
+ */
+public class OffHeapMemorySegmentTest extends MemorySegmentTest {
+
+	@Override
+	protected DefaultMemoryManager createMemoryManager(long memorySize, int pageSize) {
+		return new DefaultMemoryManager(memorySize, pageSize, true);
+	}
+
+	@Test
+	public void mixedSegmentAccess() throws Exception {
+		final DefaultMemoryManager offHeapManager = createMemoryManager(MANAGED_MEMORY_SIZE, PAGE_SIZE);
+		final List<MemorySegment> segs = offHeapManager.allocatePages(new DefaultMemoryManagerTest.DummyInvokable(), 1);
+		final MemorySegment offHeap = segs.get(0);
+		final MemorySegment heap = new MemorySegment(new byte[PAGE_SIZE], 0, PAGE_SIZE);
+
+		assertTrue(offHeap.isOffHeap());
+		assertNull(offHeap.getBackingArray());
+
+		offHeap.putLong(0, 0x0102030405060708L);
+		heap.putLong(0, 0x0102030405060709L);
+		assertTrue(offHeap.compare(heap, 0, 0, 8) < 0);
+		assertTrue(heap.compare(offHeap, 0, 0, 8) > 0);
+		assertEquals(0, heap.compare(offHeap, 0, 0, 7));
+
+		offHeap.swapBytes(new byte[8], heap, 0, 0, 8);
+		assertEquals(0x0102030405060709L, offHeap.getLong(0));
+		assertEquals(0x0102030405060708L, heap.getLong(0));
+
+		offHeapManager.release(segs);
+		assertTrue(offHeap.isFreed());
+		assertTrue(offHeapManager.verifyEmpty());
+		offHeapManager.shutdown();
+	}
+
+	/**
+	 * Checks that concurrent bulk transfers and wrapped buffers on different regions of the same off-heap segment
+	 * do not interfere with each other.
+	 */
+	@Test
+	public void concurrentRegionAccess() throws Exception {
+		final DefaultMemoryManager offHeapManager = createMemoryManager(MANAGED_MEMORY_SIZE, PAGE_SIZE);
+		final List<MemorySegment> segs = offHeapManager.allocatePages(new DefaultMemoryManagerTest.DummyInvokable(), 1);
+		final MemorySegment segment = segs.get(0);
+
+		final int numberOfThreads = 4;
+		final int regionSize = PAGE_SIZE / numberOfThreads;
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		final Thread[] threads = new Thread[numberOfThreads];
+		for (int i = 0; i < numberOfThreads; ++i) {
+			final int region = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					final byte[] expected = new byte[regionSize];
+					final byte[] actual = new byte[regionSize];
+					try {
+						for (int round = 0; round < 2000; ++round) {
+							Arrays.fill(expected, (byte) (region * 31 + round));
+							final int index = region * regionSize;
+							if (round % 2 == 0) {
+								segment.put(index, expected, 0, regionSize);
+								segment.get(index, actual, 0, regionSize);
+							} else {
+								final ByteBuffer wrapped = segment.wrap(index, regionSize);
+								wrapped.put(expected);
+								segment.wrap(index, regionSize).get(actual);
+							}
+							if (!Arrays.equals(expected, actual)) {
+								throw new AssertionError("Region " + region + " corrupted in round " + round);
+							}
+						}
+					} catch (Throwable t) {
+						error.compareAndSet(null, t);
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for (int i = 0; i < numberOfThreads; ++i) {
+			threads[i].join();
+		}
+
+		if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+
+		offHeapManager.release(segs);
+		offHeapManager.shutdown();
+	}
+}
@@ -0,0 +1,147 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.bufferprovider;
+
+import java.nio.ByteBuffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.channels.Buffer;
+
+/**
+ * Measures how the throughput of locking and releasing buffers scales with the number of concurrent threads,
+ * both directly at the {@link GlobalBufferPool} and through {@link LocalBufferPool}s that share their buffers
+ * across threads, as the channels of a high fan-out shuffle do.
+ */
+public class BufferPoolContentionBenchmark {
+
+	private static final Log LOG = LogFactory.getLog(BufferPoolContentionBenchmark.class);
+
+	private static final int[] NUMBER_OF_THREADS = { 1, 2, 4, 8, 16 };
+
+	private static final int OPERATIONS_PER_THREAD = 1000000;
+
+	private static final int NUMBER_OF_LOCAL_POOLS = 4;
+
+	@Test
+	public void testGlobalBufferPoolContention() throws Exception {
+
+		final GlobalBufferPool pool = GlobalBufferPool.getInstance();
+
+		LOG.info("Starting contention test on global buffer pool with " + pool.getNumberOfStripes() + " stripes...");
+
+		for (final int numberOfThreads : NUMBER_OF_THREADS) {
+
+			final long elapsed = runThreads(numberOfThreads, new Worker() {
+
+				@Override
+				public void run(final int threadIndex) {
+					for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+						final ByteBuffer buffer = pool.lockGlobalBuffer();
+						if (buffer != null) {
+							pool.releaseGlobalBuffer(buffer);
+						}
+					}
+				}
+			});
+
+			LOG.info("Global buffer pool with " + numberOfThreads + " threads: " + elapsed + " msecs, "
+				+ throughput(numberOfThreads, elapsed) + " ops/msec");
+		}
+	}
+
+	@Test
+	public void testLocalBufferPoolContention() throws Exception {
+
+		LOG.info("Starting contention test on " + NUMBER_OF_LOCAL_POOLS + " local buffer pools...");
+
+		for (final int numberOfThreads : NUMBER_OF_THREADS) {
+
+			final LocalBufferPool[] pools = new LocalBufferPool[NUMBER_OF_LOCAL_POOLS];
+			for (int i = 0; i < pools.length; i++) {
+				pools[i] = new LocalBufferPool(numberOfThreads, true);
+			}
+
+			final long elapsed = runThreads(numberOfThreads, new Worker() {
+
+				@Override
+				public void run(final int threadIndex) throws Exception {
+					for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+						final LocalBufferPool pool = pools[(threadIndex + i) % pools.length];
+						final Buffer buffer = pool.requestEmptyBufferBlocking(pool.getMaximumBufferSize());
+						buffer.recycleBuffer();
+					}
+				}
+			});
+
+			for (int i = 0; i < pools.length; i++) {
+				pools[i].destroy();
+			}
+
+			LOG.info("Local buffer pools with " + numberOfThreads + " threads: " + elapsed + " msecs, "
+				+ throughput(numberOfThreads, elapsed) + " ops/msec");
+		}
+	}
+
+	private static long throughput(final int numberOfThreads, final long elapsed) {
+
+		return ((long) numberOfThreads) * OPERATIONS_PER_THREAD / Math.max(1, elapsed);
+	}
+
+	private static long runThreads(final int numberOfThreads, final Worker worker) throws Exception {
+
+		final Throwable[] errors = new Throwable[numberOfThreads];
+		final Thread[] threads = new Thread[numberOfThreads];
+		for (int i = 0; i < numberOfThreads; i++) {
+			final int threadIndex = i;
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						worker.run(threadIndex);
+					} catch (Throwable t) {
+						errors[threadIndex] = t;
+					}
+				}
+			};
+		}
+
+		final long start = System.currentTimeMillis();
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		final long elapsed = System.currentTimeMillis() - start;
+
+		for (final Throwable error : errors) {
+			if (error != null) {
+				throw new Exception("Benchmark thread failed", error);
+			}
+		}
+
+		return elapsed;
+	}
+
+	private static interface Worker {
+
+		void run(int threadIndex) throws Exception;
+	}
+}
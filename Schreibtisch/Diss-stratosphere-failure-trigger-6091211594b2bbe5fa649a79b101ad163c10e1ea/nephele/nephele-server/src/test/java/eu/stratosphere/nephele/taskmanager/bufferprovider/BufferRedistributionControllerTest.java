@@ -0,0 +1,254 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.bufferprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.AbstractID;
+import eu.stratosphere.nephele.io.GateID;
+import eu.stratosphere.nephele.io.channels.Buffer;
+
+/**
+ * This class contains tests for the {@link BufferRedistributionController}.
+ */
+public class BufferRedistributionControllerTest {
+
+	private static final int DESIGNATED_NUMBER_OF_BUFFERS = 8;
+
+	/**
+	 * Checks that the controller shifts designated buffers from a pool with idle buffers to a pool whose requester
+	 * is blocked, and that the blocked requester obtains a buffer afterwards.
+	 */
+	@Test
+	public void testShiftBuffersToStarvingPool() throws Exception {
+
+		final TestOwner starving = new TestOwner(DESIGNATED_NUMBER_OF_BUFFERS);
+		final TestOwner idle = new TestOwner(DESIGNATED_NUMBER_OF_BUFFERS);
+
+		final Map<AbstractID, LocalBufferPoolOwner> owners = new ConcurrentHashMap<AbstractID, LocalBufferPoolOwner>();
+		owners.put(GateID.generate(), starving);
+		owners.put(GateID.generate(), idle);
+
+		// the idle pool caches all of its buffers
+		final List<Buffer> buffers = new ArrayList<Buffer>();
+		for (int i = 0; i < DESIGNATED_NUMBER_OF_BUFFERS; i++) {
+			buffers.add(idle.pool.requestEmptyBuffer(idle.pool.getMaximumBufferSize()));
+		}
+		for (final Buffer buffer : buffers) {
+			buffer.recycleBuffer();
+		}
+		buffers.clear();
+
+		// the starving pool has all of its buffers in use and a requester waiting for another one
+		for (int i = 0; i < DESIGNATED_NUMBER_OF_BUFFERS; i++) {
+			buffers.add(starving.pool.requestEmptyBuffer(starving.pool.getMaximumBufferSize()));
+		}
+
+		final Buffer[] requested = new Buffer[1];
+		final Thread requester = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					requested[0] = starving.pool.requestEmptyBufferBlocking(starving.pool.getMaximumBufferSize());
+				} catch (Exception e) {
+					// the check below fails
+				}
+			}
+		};
+		requester.start();
+
+		while (starving.pool.getNumberOfBufferWaiters() == 0) {
+			Thread.sleep(10);
+		}
+
+		final BufferRedistributionController controller = new BufferRedistributionController(owners, 100);
+		controller.redistribute();
+
+		requester.join(5000);
+		assertNotNull("Blocked requester did not obtain a buffer", requested[0]);
+
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS / 2, idle.pool.getDesignatedNumberOfBuffers());
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS / 2, idle.pool.getRequestedNumberOfBuffers());
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS + DESIGNATED_NUMBER_OF_BUFFERS / 2,
+			starving.pool.getDesignatedNumberOfBuffers());
+
+		requested[0].recycleBuffer();
+		for (final Buffer buffer : buffers) {
+			buffer.recycleBuffer();
+		}
+
+		// the next round still accounts for the stall which ended after the first round
+		controller.redistribute();
+		final int idleDesignated = idle.pool.getDesignatedNumberOfBuffers();
+		final int starvingDesignated = starving.pool.getDesignatedNumberOfBuffers();
+		assertEquals(2 * DESIGNATED_NUMBER_OF_BUFFERS, idleDesignated + starvingDesignated);
+
+		// without any waiting, nothing is shifted
+		controller.redistribute();
+		assertEquals(idleDesignated, idle.pool.getDesignatedNumberOfBuffers());
+		assertEquals(starvingDesignated, starving.pool.getDesignatedNumberOfBuffers());
+		assertTrue(idleDesignated >= 1);
+
+		starving.clearLocalBufferPool();
+		idle.clearLocalBufferPool();
+	}
+
+	/**
+	 * Checks that the controller never takes an owner below its minimum number of required buffers.
+	 */
+	@Test
+	public void testMinimumNumberOfBuffers() throws Exception {
+
+		final TestOwner starving = new TestOwner(1);
+		final TestOwner idle = new TestOwner(DESIGNATED_NUMBER_OF_BUFFERS);
+		idle.minimumNumberOfBuffers = DESIGNATED_NUMBER_OF_BUFFERS;
+
+		final Map<AbstractID, LocalBufferPoolOwner> owners = new ConcurrentHashMap<AbstractID, LocalBufferPoolOwner>();
+		owners.put(GateID.generate(), starving);
+		owners.put(GateID.generate(), idle);
+
+		final Buffer idleBuffer = idle.pool.requestEmptyBuffer(idle.pool.getMaximumBufferSize());
+		idleBuffer.recycleBuffer();
+		final Buffer starvingBuffer = starving.pool.requestEmptyBuffer(starving.pool.getMaximumBufferSize());
+
+		// register a listener, which counts as a waiter
+		starving.pool.registerBufferAvailabilityListener(new BufferAvailabilityListener() {
+
+			@Override
+			public void bufferAvailable() {
+			}
+		});
+
+		new BufferRedistributionController(owners, 100).redistribute();
+
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS, idle.pool.getDesignatedNumberOfBuffers());
+		assertEquals(1, starving.pool.getDesignatedNumberOfBuffers());
+
+		starvingBuffer.recycleBuffer();
+		starving.clearLocalBufferPool();
+		idle.clearLocalBufferPool();
+	}
+
+	/**
+	 * Checks that the buffers shifted by the controller are kept when the static distribution is recomputed, and
+	 * that the shifts are rebalanced once an owner is unregistered.
+	 */
+	@Test
+	public void testShiftsSurviveStaticDistribution() throws Exception {
+
+		final TestOwner starving = new TestOwner(DESIGNATED_NUMBER_OF_BUFFERS);
+		final TestOwner idle = new TestOwner(DESIGNATED_NUMBER_OF_BUFFERS);
+		final TestOwner other = new TestOwner(DESIGNATED_NUMBER_OF_BUFFERS);
+
+		final GateID starvingID = GateID.generate();
+		final Map<AbstractID, LocalBufferPoolOwner> owners = new ConcurrentHashMap<AbstractID, LocalBufferPoolOwner>();
+		owners.put(starvingID, starving);
+		owners.put(GateID.generate(), idle);
+
+		// the idle pool caches all of its buffers, the starving pool has a waiting listener
+		final List<Buffer> buffers = new ArrayList<Buffer>();
+		for (int i = 0; i < DESIGNATED_NUMBER_OF_BUFFERS; i++) {
+			buffers.add(idle.pool.requestEmptyBuffer(idle.pool.getMaximumBufferSize()));
+		}
+		for (final Buffer buffer : buffers) {
+			buffer.recycleBuffer();
+		}
+		starving.pool.registerBufferAvailabilityListener(new BufferAvailabilityListener() {
+
+			@Override
+			public void bufferAvailable() {
+			}
+		});
+
+		final BufferRedistributionController controller = new BufferRedistributionController(owners, 100);
+		controller.redistribute();
+		final int shift = DESIGNATED_NUMBER_OF_BUFFERS / 2;
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS + shift, starving.pool.getDesignatedNumberOfBuffers());
+
+		// a new owner halves the static share, the shifts are kept on top of it
+		owners.put(GateID.generate(), other);
+		controller.rebalanceAdjustments();
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS + shift, controller.getAdjustedNumberOfBuffers(starving,
+			DESIGNATED_NUMBER_OF_BUFFERS));
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS - shift, controller.getAdjustedNumberOfBuffers(idle,
+			DESIGNATED_NUMBER_OF_BUFFERS));
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS, controller.getAdjustedNumberOfBuffers(other,
+			DESIGNATED_NUMBER_OF_BUFFERS));
+
+		// the donor never drops below its minimum
+		assertEquals(1, controller.getAdjustedNumberOfBuffers(idle, 2));
+
+		// once the receiver is unregistered, the donor gets its static share again
+		owners.remove(starvingID);
+		controller.rebalanceAdjustments();
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS, controller.getAdjustedNumberOfBuffers(idle,
+			DESIGNATED_NUMBER_OF_BUFFERS));
+
+		starving.clearLocalBufferPool();
+		idle.clearLocalBufferPool();
+		other.clearLocalBufferPool();
+	}
+
+	private static final class TestOwner implements LocalBufferPoolOwner {
+
+		private final LocalBufferPool pool;
+
+		private int minimumNumberOfBuffers = 1;
+
+		private TestOwner(final int designatedNumberOfBuffers) {
+			this.pool = new LocalBufferPool(designatedNumberOfBuffers, false);
+		}
+
+		@Override
+		public int getMinimumNumberOfRequiredBuffers() {
+			return this.minimumNumberOfBuffers;
+		}
+
+		@Override
+		public void setDesignatedNumberOfBuffers(final int numberOfBuffers) {
+			this.pool.setDesignatedNumberOfBuffers(numberOfBuffers);
+		}
+
+		@Override
+		public LocalBufferPool getLocalBufferPool() {
+			return this.pool;
+		}
+
+		@Override
+		public void clearLocalBufferPool() {
+			this.pool.destroy();
+		}
+
+		@Override
+		public void logBufferUtilization() {
+		}
+
+		@Override
+		public void reportAsynchronousEvent() {
+			this.pool.reportAsynchronousEvent();
+		}
+	}
+}
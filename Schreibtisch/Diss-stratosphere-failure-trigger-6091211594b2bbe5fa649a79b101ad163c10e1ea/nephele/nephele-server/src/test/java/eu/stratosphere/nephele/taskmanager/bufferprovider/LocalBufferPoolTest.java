@@ -0,0 +1,178 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.bufferprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.channels.Buffer;
+
+/**
+ * This class contains tests for the {@link LocalBufferPool} and its interaction with the {@link GlobalBufferPool}.
+ */
+public class LocalBufferPoolTest {
+
+	private static final int DESIGNATED_NUMBER_OF_BUFFERS = 8;
+
+	private final GlobalBufferPool globalBufferPool = GlobalBufferPool.getInstance();
+
+	/**
+	 * Checks that a local buffer pool hands out no more than its designated number of buffers and caches the
+	 * recycled buffers.
+	 */
+	@Test
+	public void testDesignatedNumberOfBuffers() throws Exception {
+
+		final int globalBuffers = this.globalBufferPool.getCurrentNumberOfBuffers();
+		final LocalBufferPool pool = new LocalBufferPool(DESIGNATED_NUMBER_OF_BUFFERS, false);
+
+		final List<Buffer> buffers = new ArrayList<Buffer>();
+		for (int i = 0; i < DESIGNATED_NUMBER_OF_BUFFERS; i++) {
+			final Buffer buffer = pool.requestEmptyBuffer(pool.getMaximumBufferSize());
+			assertNotNull(buffer);
+			buffers.add(buffer);
+		}
+		assertNull(pool.requestEmptyBuffer(pool.getMaximumBufferSize()));
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS, pool.getRequestedNumberOfBuffers());
+		assertEquals(globalBuffers - DESIGNATED_NUMBER_OF_BUFFERS, this.globalBufferPool.getCurrentNumberOfBuffers());
+
+		for (final Buffer buffer : buffers) {
+			buffer.recycleBuffer();
+		}
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS, pool.getNumberOfAvailableBuffers());
+
+		// lowering the designated number returns the excess buffers to the global pool right away
+		pool.setDesignatedNumberOfBuffers(DESIGNATED_NUMBER_OF_BUFFERS / 2);
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS / 2, pool.getRequestedNumberOfBuffers());
+		assertEquals(DESIGNATED_NUMBER_OF_BUFFERS / 2, pool.getNumberOfAvailableBuffers());
+
+		pool.destroy();
+		assertEquals(0, pool.getRequestedNumberOfBuffers());
+		assertEquals(globalBuffers, this.globalBufferPool.getCurrentNumberOfBuffers());
+	}
+
+	/**
+	 * Checks that buffers which are still in use when the pool is destroyed are returned to the global pool when
+	 * they are recycled.
+	 */
+	@Test
+	public void testRecycleAfterDestroy() throws Exception {
+
+		final int globalBuffers = this.globalBufferPool.getCurrentNumberOfBuffers();
+		final LocalBufferPool pool = new LocalBufferPool(DESIGNATED_NUMBER_OF_BUFFERS, false);
+
+		final Buffer buffer = pool.requestEmptyBuffer(pool.getMaximumBufferSize());
+		assertNotNull(buffer);
+
+		pool.destroy();
+		assertEquals(globalBuffers - 1, this.globalBufferPool.getCurrentNumberOfBuffers());
+
+		buffer.recycleBuffer();
+		assertEquals(globalBuffers, this.globalBufferPool.getCurrentNumberOfBuffers());
+	}
+
+	/**
+	 * Checks that a registered buffer availability listener is notified when a buffer is recycled.
+	 */
+	@Test
+	public void testBufferAvailabilityListener() throws Exception {
+
+		final LocalBufferPool pool = new LocalBufferPool(1, false);
+
+		final Buffer buffer = pool.requestEmptyBuffer(pool.getMaximumBufferSize());
+		assertNotNull(buffer);
+
+		final boolean[] notified = new boolean[1];
+		assertTrue(pool.registerBufferAvailabilityListener(new BufferAvailabilityListener() {
+
+			@Override
+			public void bufferAvailable() {
+				notified[0] = true;
+			}
+		}));
+
+		buffer.recycleBuffer();
+		assertTrue(notified[0]);
+
+		// with a cached buffer, no listener is registered
+		assertFalse(pool.registerBufferAvailabilityListener(new BufferAvailabilityListener() {
+
+			@Override
+			public void bufferAvailable() {
+				fail("Listener must not be registered while buffers are available");
+			}
+		}));
+
+		pool.destroy();
+	}
+
+	/**
+	 * Checks that blocking requesters are woken up by buffers recycled from other threads, and that no buffer is
+	 * lost when many threads request and recycle buffers concurrently.
+	 */
+	@Test
+	public void testConcurrentRequestAndRecycle() throws Exception {
+
+		final int numberOfThreads = 8;
+		final int numberOfRequests = 20000;
+
+		final int globalBuffers = this.globalBufferPool.getCurrentNumberOfBuffers();
+		final LocalBufferPool pool = new LocalBufferPool(2, false);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		final Thread[] threads = new Thread[numberOfThreads];
+		for (int i = 0; i < numberOfThreads; i++) {
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < numberOfRequests; j++) {
+							pool.requestEmptyBufferBlocking(pool.getMaximumBufferSize()).recycleBuffer();
+						}
+					} catch (Throwable t) {
+						error.set(t);
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		if (error.get() != null) {
+			throw new Exception("Requesting or recycling a buffer failed", error.get());
+		}
+
+		assertEquals(2, pool.getRequestedNumberOfBuffers());
+		assertEquals(2, pool.getNumberOfAvailableBuffers());
+
+		pool.destroy();
+		assertEquals(globalBuffers, this.globalBufferPool.getCurrentNumberOfBuffers());
+	}
+}
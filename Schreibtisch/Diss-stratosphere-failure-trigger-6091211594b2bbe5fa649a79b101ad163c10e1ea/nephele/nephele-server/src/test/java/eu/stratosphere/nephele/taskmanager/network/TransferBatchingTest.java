@@ -0,0 +1,359 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ChannelCloseEvent;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferAvailabilityListener;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProvider;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProviderBroker;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.DefaultDeserializer;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.DefaultSerializer;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+import eu.stratosphere.nephele.util.BufferPoolConnector;
+
+/**
+ * This class contains tests for the {@link BatchingWritableByteChannel} and the {@link ReadAheadByteChannel}.
+ */
+public class TransferBatchingTest {
+
+	/**
+	 * The number of envelopes to transfer in each test.
+	 */
+	private static final int NUMBER_OF_ENVELOPES = 200;
+
+	/**
+	 * The size of the batch buffer in bytes.
+	 */
+	private static final int BATCH_SIZE = 1024;
+
+	/**
+	 * The size of the read-ahead buffer in bytes.
+	 */
+	private static final int READ_AHEAD_SIZE = 512;
+
+	private static final JobID JOB_ID = JobID.generate();
+
+	private static final ChannelID CHANNEL_ID = ChannelID.generate();
+
+	/**
+	 * An in-memory channel which accepts or returns at most a given number of bytes per call and counts the calls.
+	 * <p>
+	 * This class is not thread-safe.
+	 */
+	private static final class ThrottledByteChannel implements GatheringByteChannel, ScatteringByteChannel {
+
+		private final ByteBuffer data = ByteBuffer.allocate(1024 * 1024);
+
+		private final int maximumBytesPerCall;
+
+		private int numberOfCalls = 0;
+
+		private ThrottledByteChannel(final int maximumBytesPerCall) {
+			this.maximumBytesPerCall = maximumBytesPerCall;
+		}
+
+		private void switchToReadPhase() {
+			this.data.flip();
+			this.numberOfCalls = 0;
+		}
+
+		@Override
+		public long write(final ByteBuffer[] srcs, final int offset, final int length) {
+
+			++this.numberOfCalls;
+			int bytesWritten = 0;
+			for (int i = offset; i < offset + length; ++i) {
+				while (srcs[i].hasRemaining() && bytesWritten < this.maximumBytesPerCall) {
+					this.data.put(srcs[i].get());
+					++bytesWritten;
+				}
+			}
+
+			return bytesWritten;
+		}
+
+		@Override
+		public long write(final ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public int write(final ByteBuffer src) {
+			return (int) write(new ByteBuffer[] { src });
+		}
+
+		@Override
+		public long read(final ByteBuffer[] dsts, final int offset, final int length) {
+
+			++this.numberOfCalls;
+			if (!this.data.hasRemaining()) {
+				return -1;
+			}
+
+			int bytesRead = 0;
+			for (int i = offset; i < offset + length; ++i) {
+				while (dsts[i].hasRemaining() && this.data.hasRemaining() && bytesRead < this.maximumBytesPerCall) {
+					dsts[i].put(this.data.get());
+					++bytesRead;
+				}
+			}
+
+			return bytesRead;
+		}
+
+		@Override
+		public long read(final ByteBuffer[] dsts) {
+			return read(dsts, 0, dsts.length);
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) {
+			return (int) read(new ByteBuffer[] { dst });
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A buffer provider which creates a new memory buffer for every request.
+	 */
+	private static final class TestBufferProvider implements BufferProvider, BufferProviderBroker {
+
+		@Override
+		public Buffer requestEmptyBuffer(final int minimumSizeOfBuffer) {
+
+			return BufferFactory.createFromMemory(minimumSizeOfBuffer, ByteBuffer.allocate(minimumSizeOfBuffer),
+				new BufferPoolConnector(new ArrayDeque<ByteBuffer>()));
+		}
+
+		@Override
+		public Buffer requestEmptyBufferBlocking(final int minimumSizeOfBuffer) {
+			return requestEmptyBuffer(minimumSizeOfBuffer);
+		}
+
+		@Override
+		public int getMaximumBufferSize() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public boolean isShared() {
+			return false;
+		}
+
+		@Override
+		public void reportAsynchronousEvent() {
+		}
+
+		@Override
+		public boolean registerBufferAvailabilityListener(final BufferAvailabilityListener bufferAvailabilityListener) {
+			return false;
+		}
+
+		@Override
+		public BufferProvider getBufferProvider(final JobID jobID, final ChannelID sourceChannelID) {
+			return this;
+		}
+	}
+
+	/**
+	 * Returns the size of the buffer attached to the envelope with the given index, or <code>-1</code> if the
+	 * envelope carries an event instead.
+	 */
+	private static int getBufferSize(final int index) {
+
+		if (index % 7 == 3) {
+			return -1;
+		}
+
+		// Mostly small buffers, every tenth buffer is larger than the batch buffer
+		return (index % 10 == 0) ? 3 * BATCH_SIZE + index : 1 + index;
+	}
+
+	private static TransferEnvelope createEnvelope(final int index) throws IOException {
+
+		final TransferEnvelope te = new TransferEnvelope(index, JOB_ID, CHANNEL_ID);
+
+		final int bufferSize = getBufferSize(index);
+		if (bufferSize < 0) {
+			te.addEvent(new ChannelCloseEvent());
+			return te;
+		}
+
+		final Buffer buffer = BufferFactory.createFromMemory(bufferSize, ByteBuffer.allocate(bufferSize),
+			new BufferPoolConnector(new ArrayDeque<ByteBuffer>()));
+		final ByteBuffer src = ByteBuffer.allocate(bufferSize);
+		for (int i = 0; i < bufferSize; ++i) {
+			src.put((byte) (index + i));
+		}
+		src.flip();
+		buffer.write(src);
+		buffer.finishWritePhase();
+		te.setBuffer(buffer);
+
+		return te;
+	}
+
+	/**
+	 * Serializes the test envelopes to the given channel, driving the batching channel the same way the outgoing
+	 * connection does.
+	 */
+	private static void serializeEnvelopes(final ThrottledByteChannel target, final boolean batching)
+			throws IOException {
+
+		final DefaultSerializer serializer = new DefaultSerializer();
+		final BatchingWritableByteChannel batchingChannel = new BatchingWritableByteChannel(
+			ByteBuffer.allocate(BATCH_SIZE));
+		batchingChannel.setTarget(target);
+
+		final WritableByteChannel channel = batching ? batchingChannel : target;
+
+		for (int i = 0; i < NUMBER_OF_ENVELOPES; ++i) {
+			serializer.setTransferEnvelope(createEnvelope(i));
+			while (serializer.write(channel)) {
+				if (batchingChannel.isCongested()) {
+					// Simulate the next write event
+					batchingChannel.setTarget(target);
+				}
+			}
+		}
+
+		while (batchingChannel.flush()) {
+			batchingChannel.setTarget(target);
+		}
+
+		assertFalse(batchingChannel.hasPendingData());
+	}
+
+	/**
+	 * Deserializes the test envelopes from the given channel and checks their content.
+	 */
+	private static void deserializeAndCheckEnvelopes(final ScatteringByteChannel source) throws Exception {
+
+		final DefaultDeserializer deserializer = new DefaultDeserializer(new TestBufferProvider());
+		final ReadAheadByteChannel readAheadChannel = new ReadAheadByteChannel(source,
+			ByteBuffer.allocate(READ_AHEAD_SIZE));
+
+		for (int i = 0; i < NUMBER_OF_ENVELOPES; ++i) {
+
+			TransferEnvelope te = null;
+			while (te == null) {
+				deserializer.read(readAheadChannel);
+				te = deserializer.getFullyDeserializedTransferEnvelope();
+			}
+
+			assertEquals(i, te.getSequenceNumber());
+			assertEquals(JOB_ID, te.getJobID());
+			assertEquals(CHANNEL_ID, te.getSource());
+
+			final int bufferSize = getBufferSize(i);
+			if (bufferSize < 0) {
+				assertNull(te.getBuffer());
+				assertNotNull(te.getEventList());
+				assertEquals(1, te.getEventList().size());
+				assertTrue(te.getEventList().get(0) instanceof ChannelCloseEvent);
+				continue;
+			}
+
+			final Buffer buffer = te.getBuffer();
+			assertNotNull(buffer);
+			assertEquals(bufferSize, buffer.size());
+			final ByteBuffer content = ByteBuffer.allocate(bufferSize);
+			buffer.read(content);
+			for (int j = 0; j < bufferSize; ++j) {
+				assertEquals((byte) (i + j), content.get(j));
+			}
+		}
+
+		assertFalse(readAheadChannel.hasBufferedData());
+		assertEquals(-1, readAheadChannel.read(ByteBuffer.allocate(1)));
+	}
+
+	/**
+	 * Checks that envelopes written through a congested batching channel and read back through a read-ahead channel
+	 * arrive intact and in order.
+	 */
+	@Test
+	public void testBatchedTransfer() throws Exception {
+
+		final ThrottledByteChannel channel = new ThrottledByteChannel(333);
+		serializeEnvelopes(channel, true);
+		channel.switchToReadPhase();
+		deserializeAndCheckEnvelopes(channel);
+	}
+
+	/**
+	 * Checks that the read-ahead channel can read the byte stream written without batching.
+	 */
+	@Test
+	public void testReadAheadOfUnbatchedStream() throws Exception {
+
+		final ThrottledByteChannel channel = new ThrottledByteChannel(97);
+		serializeEnvelopes(channel, false);
+		channel.switchToReadPhase();
+		deserializeAndCheckEnvelopes(channel);
+	}
+
+	/**
+	 * Checks that batching and reading ahead reduce the number of calls to the underlying channel.
+	 */
+	@Test
+	public void testNumberOfCalls() throws Exception {
+
+		final ThrottledByteChannel unbatched = new ThrottledByteChannel(Integer.MAX_VALUE);
+		serializeEnvelopes(unbatched, false);
+		final int unbatchedWrites = unbatched.numberOfCalls;
+
+		final ThrottledByteChannel batched = new ThrottledByteChannel(Integer.MAX_VALUE);
+		serializeEnvelopes(batched, true);
+		final int batchedWrites = batched.numberOfCalls;
+
+		assertTrue("Batching did not reduce the number of writes: " + batchedWrites + " vs. " + unbatchedWrites,
+			batchedWrites * 4 < unbatchedWrites);
+
+		batched.switchToReadPhase();
+		deserializeAndCheckEnvelopes(batched);
+		assertTrue("Reading ahead did not reduce the number of reads: " + batched.numberOfCalls + " vs. "
+			+ unbatchedWrites, batched.numberOfCalls * 4 < unbatchedWrites);
+	}
+}
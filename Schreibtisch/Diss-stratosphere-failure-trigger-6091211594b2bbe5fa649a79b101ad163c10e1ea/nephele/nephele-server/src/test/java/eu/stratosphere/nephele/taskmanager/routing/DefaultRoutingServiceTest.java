@@ -0,0 +1,225 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
+import eu.stratosphere.nephele.execution.Environment;
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.instance.InstanceConnectionInfo;
+import eu.stratosphere.nephele.io.GateID;
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.ChannelType;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.protocols.ChannelLookupProtocol;
+import eu.stratosphere.nephele.taskmanager.Task;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.LocalBufferPoolOwner;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+
+/**
+ * This class contains tests for the local routing of envelopes in the {@link DefaultRoutingService}.
+ */
+public class DefaultRoutingServiceTest {
+
+	private static final int BUFFER_SIZE = 128;
+
+	private final JobID jobID = JobID.generate();
+
+	private final ChannelID sourceID = ChannelID.generate();
+
+	private final ChannelID receiverID = ChannelID.generate();
+
+	private final AtomicInteger recycledBuffers = new AtomicInteger(0);
+
+	private final MemoryBufferPoolConnector connector = new MemoryBufferPoolConnector() {
+
+		@Override
+		public void recycle(final ByteBuffer byteBuffer) {
+			recycledBuffers.incrementAndGet();
+		}
+	};
+
+	private final List<TransferEnvelope> receivedEnvelopes = new ArrayList<TransferEnvelope>();
+
+	private DefaultRoutingService routingService;
+
+	@Before
+	public void setUp() throws Exception {
+
+		final Configuration config = new Configuration();
+		config.setInteger("channel.network.numberOfBuffers", 64);
+		config.setInteger("channel.network.numberOfIncomingConnectionThreads", 1);
+		config.setInteger("channel.network.numberOfOutgoingConnectionThreads", 1);
+		GlobalConfiguration.includeConfiguration(config);
+
+		final ServerSocket socket = new ServerSocket(0);
+		final int dataPort = socket.getLocalPort();
+		socket.close();
+
+		final ChannelLookupProtocol lookupService = mock(ChannelLookupProtocol.class);
+		when(lookupService.lookupConnectionInfo(any(InstanceConnectionInfo.class), eq(this.jobID), eq(this.sourceID)))
+			.thenReturn(ConnectionInfoLookupResponse.createReceiverFoundAndReady(this.receiverID));
+
+		this.routingService = new DefaultRoutingService(lookupService, new InstanceConnectionInfo(
+			InetAddress.getByName("localhost"), dataPort + 1, dataPort));
+
+		this.routingService.register(createReceivingTask(), Collections.<ChannelID> emptySet(), false);
+	}
+
+	@After
+	public void tearDown() {
+
+		this.routingService.shutdown();
+	}
+
+	/**
+	 * Checks that a buffer from a local output channel is handed over to its single local receiver without copying.
+	 */
+	@Test
+	public void testHandOverFromOutputChannel() throws Exception {
+
+		final TransferEnvelope envelope = createEnvelope(0);
+		this.routingService.routeEnvelopeFromOutputChannel(envelope);
+
+		assertEquals(1, this.receivedEnvelopes.size());
+		assertSame(envelope, this.receivedEnvelopes.get(0));
+		assertEquals(0, this.recycledBuffers.get());
+
+		assertEquals(BUFFER_SIZE, this.routingService.getNumberOfBytesHandedOver());
+		assertEquals(0L, this.routingService.getNumberOfBytesCopied());
+	}
+
+	/**
+	 * Checks that a buffer from the network is copied into a buffer of the receiver, so that the buffer of the incoming
+	 * connection is returned to its pool immediately.
+	 */
+	@Test
+	public void testCopyFromNetwork() throws Exception {
+
+		final TransferEnvelope envelope = createEnvelope(0);
+		final Buffer sourceBuffer = envelope.getBuffer();
+		this.routingService.routeEnvelopeFromNetwork(envelope, true);
+
+		assertEquals(1, this.receivedEnvelopes.size());
+		final TransferEnvelope received = this.receivedEnvelopes.get(0);
+		assertNotSame(envelope, received);
+		assertNotSame(sourceBuffer, received.getBuffer());
+		assertEquals(BUFFER_SIZE, received.getBuffer().size());
+		assertEquals(1, this.recycledBuffers.get());
+
+		assertEquals(0L, this.routingService.getNumberOfBytesHandedOver());
+		assertEquals(BUFFER_SIZE, this.routingService.getNumberOfBytesCopied());
+	}
+
+	private Task createReceivingTask() {
+
+		final GateID gateID = GateID.generate();
+
+		final Environment environment = mock(Environment.class);
+		when(environment.getNumberOfInputChannels()).thenReturn(1);
+		when(environment.getInputGateIDs()).thenReturn(Collections.singleton(gateID));
+		when(environment.getInputChannelIDsOfGate(gateID)).thenReturn(Collections.singleton(this.receiverID));
+
+		final InputChannelContext channelContext = mock(InputChannelContext.class);
+		when(channelContext.isInputChannel()).thenReturn(true);
+		when(channelContext.getType()).thenReturn(ChannelType.NETWORK);
+		when(channelContext.getChannelID()).thenReturn(this.receiverID);
+		when(channelContext.getJobID()).thenReturn(this.jobID);
+		try {
+			when(channelContext.requestEmptyBufferBlocking(anyInt())).thenAnswer(new Answer<Buffer>() {
+
+				@Override
+				public Buffer answer(final InvocationOnMock invocation) {
+					final int size = ((Integer) invocation.getArguments()[0]).intValue();
+					return BufferFactory.createFromMemory(size, ByteBuffer.allocate(size),
+						new MemoryBufferPoolConnector() {
+
+							@Override
+							public void recycle(final ByteBuffer byteBuffer) {
+							}
+						});
+				}
+			});
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		doAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(final InvocationOnMock invocation) {
+				receivedEnvelopes.add((TransferEnvelope) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(channelContext).queueTransferEnvelope(any(TransferEnvelope.class));
+
+		final InputGateContext gateContext = mock(InputGateContext.class);
+		when(gateContext.getGateID()).thenReturn(gateID);
+		when(gateContext.createInputChannelContext(this.receiverID, null)).thenReturn(channelContext);
+
+		final TaskContext taskContext = mock(TaskContext.class);
+		when(taskContext.createInputGateContext(gateID)).thenReturn(gateContext);
+
+		final Task task = mock(Task.class);
+		when(task.getJobID()).thenReturn(this.jobID);
+		when(task.getVertexID()).thenReturn(ExecutionVertexID.generate());
+		when(task.getEnvironment()).thenReturn(environment);
+		when(task.createTaskContext(any(DefaultRoutingService.class), any(LocalBufferPoolOwner.class)))
+			.thenReturn(taskContext);
+
+		return task;
+	}
+
+	private TransferEnvelope createEnvelope(final int sequenceNumber) throws IOException {
+
+		final Buffer buffer = BufferFactory.createFromMemory(BUFFER_SIZE, ByteBuffer.allocate(BUFFER_SIZE),
+			this.connector);
+		buffer.write(ByteBuffer.allocate(BUFFER_SIZE));
+		buffer.finishWritePhase();
+
+		final TransferEnvelope envelope = new TransferEnvelope(sequenceNumber, this.jobID, this.sourceID);
+		envelope.setBuffer(buffer);
+
+		return envelope;
+	}
+}
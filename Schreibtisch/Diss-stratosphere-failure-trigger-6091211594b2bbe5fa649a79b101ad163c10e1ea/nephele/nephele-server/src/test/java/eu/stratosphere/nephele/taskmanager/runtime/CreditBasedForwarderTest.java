@@ -0,0 +1,201 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.nephele.taskmanager.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.taskmanager.routing.AbstractOutputChannelForwarder;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+
+/**
+ * This class contains tests for the {@link CreditBasedForwarder}.
+ */
+public class CreditBasedForwarderTest {
+
+	private static final int BUFFER_SIZE = 128;
+
+	private static final int INITIAL_CREDITS = 2;
+
+	private final JobID jobID = JobID.generate();
+
+	private final ChannelID channelID = ChannelID.generate();
+
+	private final AtomicInteger recycledBuffers = new AtomicInteger(0);
+
+	private final MemoryBufferPoolConnector connector = new MemoryBufferPoolConnector() {
+
+		@Override
+		public void recycle(final ByteBuffer byteBuffer) {
+			recycledBuffers.incrementAndGet();
+		}
+	};
+
+	/**
+	 * Checks that the forwarder blocks once the credits are used up, lets event-only envelopes pass, and resumes
+	 * forwarding when new credits are granted.
+	 */
+	@Test
+	public void testBlockUntilCreditsAreGranted() throws Exception {
+
+		final RecordingForwarder recorder = new RecordingForwarder();
+		final CreditBasedForwarder forwarder = new CreditBasedForwarder(this.channelID, INITIAL_CREDITS, recorder);
+
+		for (int i = 0; i < INITIAL_CREDITS; ++i) {
+			forwarder.push(createEnvelope(i, true));
+		}
+		assertEquals(0, forwarder.getAvailableCredits());
+
+		// Envelopes without a buffer must not consume credit
+		forwarder.push(createEnvelope(INITIAL_CREDITS, false));
+		assertEquals(INITIAL_CREDITS + 1, recorder.getNumberOfPushedEnvelopes());
+
+		final Thread pusher = startPusher(forwarder, createEnvelope(INITIAL_CREDITS + 1, true));
+		pusher.join(200L);
+		assertTrue(pusher.isAlive());
+		assertEquals(INITIAL_CREDITS + 1, recorder.getNumberOfPushedEnvelopes());
+
+		forwarder.grantCredits(1);
+		pusher.join(5000L);
+		assertFalse(pusher.isAlive());
+		assertEquals(INITIAL_CREDITS + 2, recorder.getNumberOfPushedEnvelopes());
+		assertEquals(0, forwarder.getAvailableCredits());
+	}
+
+	/**
+	 * Checks that destroying the forwarder releases a blocked task thread and recycles the buffer it tried to push.
+	 */
+	@Test
+	public void testDestroyReleasesBlockedPush() throws Exception {
+
+		final RecordingForwarder recorder = new RecordingForwarder();
+		final CreditBasedForwarder forwarder = new CreditBasedForwarder(this.channelID, 1, recorder);
+
+		forwarder.push(createEnvelope(0, true));
+
+		final Thread pusher = startPusher(forwarder, createEnvelope(1, true));
+		pusher.join(200L);
+		assertTrue(pusher.isAlive());
+
+		forwarder.destroy();
+		pusher.join(5000L);
+		assertFalse(pusher.isAlive());
+		assertEquals(1, recorder.getNumberOfPushedEnvelopes());
+		assertEquals(1, this.recycledBuffers.get());
+	}
+
+	/**
+	 * Checks that granted credits never exceed the window and that a window announced by a (re)activated receiver
+	 * replaces the available credits.
+	 */
+	@Test
+	public void testWindow() throws Exception {
+
+		final RecordingForwarder recorder = new RecordingForwarder();
+		final CreditBasedForwarder forwarder = new CreditBasedForwarder(this.channelID, INITIAL_CREDITS, recorder);
+
+		forwarder.grantCredits(5);
+		assertEquals(INITIAL_CREDITS, forwarder.getAvailableCredits());
+
+		for (int i = 0; i < INITIAL_CREDITS; ++i) {
+			forwarder.push(createEnvelope(i, true));
+		}
+		assertEquals(0, forwarder.getAvailableCredits());
+
+		// A restarted receiver opens a fresh window and releases the blocked task thread
+		final Thread pusher = startPusher(forwarder, createEnvelope(INITIAL_CREDITS, true));
+		pusher.join(200L);
+		assertTrue(pusher.isAlive());
+
+		forwarder.openWindow(INITIAL_CREDITS);
+		pusher.join(5000L);
+		assertFalse(pusher.isAlive());
+		assertEquals(INITIAL_CREDITS - 1, forwarder.getAvailableCredits());
+
+		forwarder.openWindow(0);
+		assertEquals(0, forwarder.getAvailableCredits());
+
+		forwarder.openWindow(10 * INITIAL_CREDITS);
+		assertEquals(INITIAL_CREDITS, forwarder.getAvailableCredits());
+	}
+
+	private TransferEnvelope createEnvelope(final int sequenceNumber, final boolean withBuffer) {
+
+		final TransferEnvelope envelope = new TransferEnvelope(sequenceNumber, this.jobID, this.channelID);
+		if (withBuffer) {
+			envelope.setBuffer(BufferFactory.createFromMemory(BUFFER_SIZE, ByteBuffer.allocate(BUFFER_SIZE),
+				this.connector));
+		}
+
+		return envelope;
+	}
+
+	private static Thread startPusher(final CreditBasedForwarder forwarder, final TransferEnvelope envelope) {
+
+		final Thread pusher = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					forwarder.push(envelope);
+				} catch (Exception e) {
+					// The checks in the test fail
+				}
+			}
+		};
+		pusher.start();
+
+		return pusher;
+	}
+
+	/**
+	 * Forwarder at the end of the chain which records the envelopes pushed to it.
+	 */
+	private static final class RecordingForwarder extends AbstractOutputChannelForwarder {
+
+		private final List<TransferEnvelope> pushedEnvelopes = new ArrayList<TransferEnvelope>();
+
+		private RecordingForwarder() {
+			super(null);
+		}
+
+		@Override
+		public void push(final TransferEnvelope transferEnvelope) {
+
+			synchronized (this.pushedEnvelopes) {
+				this.pushedEnvelopes.add(transferEnvelope);
+			}
+		}
+
+		private int getNumberOfPushedEnvelopes() {
+
+			synchronized (this.pushedEnvelopes) {
+				return this.pushedEnvelopes.size();
+			}
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import eu.stratosphere.nephele.configuration.ConfigConstants;
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
+import eu.stratosphere.nephele.execution.RuntimeEnvironment;
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.io.InputGate;
+import eu.stratosphere.nephele.io.RuntimeInputGate;
+import eu.stratosphere.nephele.io.channels.AbstractInputChannel;
+import eu.stratosphere.nephele.types.Record;
+
+/**
+ * Tests the recording and the replay of the {@link EnvelopeConsumptionLog}.
+ */
+public class EnvelopeConsumptionLogTest {
+
+	private static final int NUMBER_OF_CHANNELS = 3;
+
+	private ExecutionVertexID vertexID;
+
+	private RuntimeEnvironment environment;
+
+	private AbstractInputChannel<Record>[] channels;
+
+	@Before
+	public void setUp() {
+
+		this.vertexID = ExecutionVertexID.generate();
+		createEnvironment();
+	}
+
+	/**
+	 * Creates a mocked environment with a single input gate, whose channels record their announcements.
+	 */
+	@SuppressWarnings("unchecked")
+	private void createEnvironment() {
+
+		this.environment = mock(RuntimeEnvironment.class);
+		when(this.environment.getTaskNameWithIndex()).thenReturn("Test task (1/1)");
+
+		final InputGate<Record> inputGate = mock(InputGate.class);
+		when(inputGate.getIndex()).thenReturn(0);
+
+		final RuntimeInputGate<Record> runtimeInputGate = mock(RuntimeInputGate.class);
+		when(runtimeInputGate.getNumberOfInputChannels()).thenReturn(NUMBER_OF_CHANNELS);
+		doReturn(runtimeInputGate).when(this.environment).getInputGate(0);
+
+		this.channels = new AbstractInputChannel[NUMBER_OF_CHANNELS];
+		for (int i = 0; i < NUMBER_OF_CHANNELS; ++i) {
+			final AbstractInputChannel<Record> channel = mock(AbstractInputChannel.class);
+			doReturn(inputGate).when(channel).getInputGate();
+			when(channel.getChannelIndex()).thenReturn(i);
+			doReturn(channel).when(runtimeInputGate).getInputChannel(i);
+			this.channels[i] = channel;
+		}
+	}
+
+	@After
+	public void tearDown() {
+
+		EnvelopeConsumptionLog.removeLog(this.vertexID);
+	}
+
+	/**
+	 * Checks that a re-executed task announces its envelopes in the recorded order, no matter in which order they
+	 * arrive.
+	 */
+	@Test
+	public void testReplayInLoggedOrder() throws IOException {
+
+		record(0, 1, 0, 2);
+		assertEquals(16L, getLogFile().length());
+
+		final EnvelopeConsumptionLog log = createLog();
+		assertEquals(4L, log.getNumberOfInitialLogEntries());
+		assertTrue(log.followsLog());
+
+		log.reportEnvelopeAvailability(this.channels[2]);
+		log.reportEnvelopeAvailability(this.channels[1]);
+		verify(this.channels[1], never()).checkForNetworkEvents();
+		verify(this.channels[2], never()).checkForNetworkEvents();
+
+		log.reportEnvelopeAvailability(this.channels[0]);
+		log.reportEnvelopeAvailability(this.channels[0]);
+		assertFalse(log.followsLog());
+
+		final InOrder inOrder = inOrder((Object[]) this.channels);
+		inOrder.verify(this.channels[0]).checkForNetworkEvents();
+		inOrder.verify(this.channels[1]).checkForNetworkEvents();
+		inOrder.verify(this.channels[0]).checkForNetworkEvents();
+		inOrder.verify(this.channels[2]).checkForNetworkEvents();
+	}
+
+	/**
+	 * Checks that envelopes which arrive after their channel's logged envelopes are announced in the order of their
+	 * arrival once the log is exhausted.
+	 */
+	@Test
+	public void testArrivalsPastEndOfLog() throws IOException {
+
+		record(0, 1);
+
+		final EnvelopeConsumptionLog log = createLog();
+
+		log.reportEnvelopeAvailability(this.channels[1]);
+		log.reportEnvelopeAvailability(this.channels[1]);
+		log.reportEnvelopeAvailability(this.channels[2]);
+		verify(this.channels[1], never()).checkForNetworkEvents();
+		verify(this.channels[2], never()).checkForNetworkEvents();
+		assertTrue(log.followsLog());
+
+		log.reportEnvelopeAvailability(this.channels[0]);
+		assertFalse(log.followsLog());
+
+		// Envelopes arriving after the replay are announced immediately
+		log.reportEnvelopeAvailability(this.channels[0]);
+
+		final InOrder inOrder = inOrder((Object[]) this.channels);
+		inOrder.verify(this.channels[0]).checkForNetworkEvents();
+		inOrder.verify(this.channels[1]).checkForNetworkEvents();
+		inOrder.verify(this.channels[1]).checkForNetworkEvents();
+		inOrder.verify(this.channels[2]).checkForNetworkEvents();
+		inOrder.verify(this.channels[0]).checkForNetworkEvents();
+	}
+
+	/**
+	 * Checks that {@link EnvelopeConsumptionLog#finish()} writes all announced envelopes, including those of several
+	 * full write buffers, and closes the log file.
+	 */
+	@Test
+	public void testFinishFlushesAndClosesLog() throws IOException {
+
+		// More entries than fit into a single write buffer
+		final int numberOfEntries = 150000;
+		final int[] channelIndexes = new int[numberOfEntries];
+		for (int i = 0; i < numberOfEntries; ++i) {
+			channelIndexes[i] = (i * 7) % NUMBER_OF_CHANNELS;
+		}
+
+		record(channelIndexes);
+
+		final File logFile = getLogFile();
+		assertEquals(numberOfEntries * 4L, logFile.length());
+		assertFalse(isOpen(logFile));
+
+		final DataInputStream dis = new DataInputStream(new FileInputStream(logFile));
+		try {
+			for (int i = 0; i < numberOfEntries; ++i) {
+				// Gate index 0, channel index in bits 8 to 31, no data availability flag
+				assertEquals(channelIndexes[i] << 8, dis.readInt());
+			}
+		} finally {
+			dis.close();
+		}
+
+		// A finished log can be finished again without any new entries
+		createLog().finish();
+		assertEquals(numberOfEntries * 4L, logFile.length());
+	}
+
+	private EnvelopeConsumptionLog createLog() {
+
+		return new EnvelopeConsumptionLog(this.vertexID, this.environment);
+	}
+
+	private void record(final int... channelIndexes) {
+
+		final EnvelopeConsumptionLog log = createLog();
+		assertEquals(0L, log.getNumberOfInitialLogEntries());
+		assertFalse(log.followsLog());
+
+		for (int i = 0; i < channelIndexes.length; ++i) {
+			log.reportEnvelopeAvailability(this.channels[channelIndexes[i]]);
+		}
+
+		log.finish();
+
+		// Let the re-execution announce its envelopes to fresh channels
+		createEnvironment();
+	}
+
+	private File getLogFile() {
+
+		final String tmpDir = GlobalConfiguration.getString(ConfigConstants.TASK_MANAGER_TMP_DIR_KEY,
+			System.getProperty("java.io.tmpdir"));
+
+		return new File(tmpDir, "cl_" + this.vertexID);
+	}
+
+	/**
+	 * Checks if the given file is still opened by this process. The check is only possible on systems which expose
+	 * the file descriptors of a process through <code>/proc</code>.
+	 */
+	private static boolean isOpen(final File file) throws IOException {
+
+		final File[] descriptors = new File("/proc/self/fd").listFiles();
+		if (descriptors == null) {
+			return false;
+		}
+
+		final String path = file.getCanonicalPath();
+		for (final File descriptor : descriptors) {
+			if (path.equals(descriptor.getCanonicalPath())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,302 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.nephele.taskmanager.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.event.task.AbstractEvent;
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ByteBufferedOutputChannelBroker;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.DefaultRecordSerializerFactory;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.io.channels.NetworkOutputChannel;
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
+import eu.stratosphere.nephele.io.compression.Compressor;
+import eu.stratosphere.nephele.types.IntegerRecord;
+
+/**
+ * This class contains tests for the {@link OutputFlusher} and the latency bound of the output channels.
+ */
+public class OutputFlusherTest {
+
+	/**
+	 * The latency bound in milliseconds.
+	 */
+	private static final long MAX_LATENCY = 20L;
+
+	/**
+	 * The additional time in milliseconds a record may wait to account for the scheduling of the threads.
+	 */
+	private static final long TOLERANCE = 100L;
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	/**
+	 * Checks that records of a low-rate stream are shipped within the latency bound, although the write buffer never
+	 * fills up.
+	 */
+	@Test
+	public void testMaxLatencyIsBounded() throws Exception {
+
+		final RecordingBroker broker = new RecordingBroker(0L);
+		final NetworkOutputChannel<IntegerRecord> channel = createChannel(broker);
+		final IntegerRecord record = new IntegerRecord();
+
+		// Determine the number of bytes per record
+		channel.writeRecord(record);
+		channel.flush();
+		broker.bytesPerRecord = broker.numberOfBytes;
+		broker.reset();
+
+		final OutputFlusher flusher = new OutputFlusher("Output flusher test", MAX_LATENCY);
+		flusher.registerOutputChannel(channel);
+		flusher.start();
+
+		try {
+			for (int i = 0; i < 150; ++i) {
+				record.setValue(i);
+				broker.recordWritten();
+				channel.writeRecord(record);
+				Thread.sleep(2L);
+			}
+		} finally {
+			flusher.shutdown();
+			flusher.join();
+		}
+
+		assertTrue("Partially filled buffers have not been shipped", broker.numberOfBuffers >= 5);
+		channel.flush();
+		assertEquals(150L, broker.numberOfRecords);
+		assertTrue("Record waited " + broker.maxLatency + " ms", broker.maxLatency <= MAX_LATENCY + TOLERANCE);
+	}
+
+	/**
+	 * Checks that the age of a write buffer is measured from the first record written to it rather than from the time
+	 * the buffer has been requested.
+	 */
+	@Test
+	public void testAgeStartsWithFirstRecord() throws Exception {
+
+		// The broker takes 50 ms to provide a write buffer
+		final RecordingBroker broker = new RecordingBroker(50L);
+		final NetworkOutputChannel<IntegerRecord> channel = createChannel(broker);
+		channel.enableLatencyBound();
+
+		assertFalse(channel.flushIfOlderThan(0L));
+
+		channel.writeRecord(new IntegerRecord(1));
+		assertFalse(channel.flushIfOlderThan(10000L));
+		assertTrue(channel.flushIfOlderThan(40L));
+		assertEquals(1, broker.numberOfBuffers);
+
+		// The channel does not hold a write buffer anymore
+		assertFalse(channel.flushIfOlderThan(0L));
+	}
+
+	/**
+	 * Checks that the write buffers of a channel which is not latency bounded carry no age and are therefore never
+	 * shipped early.
+	 */
+	@Test
+	public void testUnboundedChannelIsNotFlushed() throws Exception {
+
+		final RecordingBroker broker = new RecordingBroker(0L);
+		final NetworkOutputChannel<IntegerRecord> channel = createChannel(broker);
+
+		channel.writeRecord(new IntegerRecord(1));
+		Thread.sleep(10L);
+		assertFalse(channel.flushIfOlderThan(0L));
+		assertEquals(0, broker.numberOfBuffers);
+
+		channel.flush();
+		assertEquals(1, broker.numberOfBuffers);
+	}
+
+	/**
+	 * Checks that a channel which waits for a write buffer does not keep the flusher from shipping the buffers of the
+	 * other channels.
+	 */
+	@Test
+	public void testBlockedChannelDoesNotStallFlusher() throws Exception {
+
+		final CountDownLatch bufferAvailable = new CountDownLatch(1);
+		final RecordingBroker blockingBroker = new RecordingBroker(0L) {
+
+			@Override
+			public Buffer requestEmptyWriteBuffer() throws InterruptedException {
+
+				bufferAvailable.await();
+				return super.requestEmptyWriteBuffer();
+			}
+		};
+		final NetworkOutputChannel<IntegerRecord> blockedChannel = createChannel(blockingBroker);
+
+		final RecordingBroker broker = new RecordingBroker(0L);
+		final NetworkOutputChannel<IntegerRecord> channel = createChannel(broker);
+
+		final OutputFlusher flusher = new OutputFlusher("Output flusher test", MAX_LATENCY);
+		flusher.registerOutputChannel(blockedChannel);
+		flusher.registerOutputChannel(channel);
+
+		final Thread writer = new Thread() {
+
+			@Override
+			public void run() {
+
+				try {
+					blockedChannel.writeRecord(new IntegerRecord(1));
+				} catch (Exception e) {
+					// the test fails below, because the record is not shipped
+				}
+			}
+		};
+		writer.start();
+		flusher.start();
+
+		try {
+			channel.writeRecord(new IntegerRecord(2));
+
+			final long deadline = System.currentTimeMillis() + MAX_LATENCY + TOLERANCE;
+			while (broker.getNumberOfBuffers() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1L);
+			}
+			assertEquals(1, broker.getNumberOfBuffers());
+		} finally {
+			bufferAvailable.countDown();
+			writer.join();
+			flusher.shutdown();
+			flusher.join();
+		}
+
+		blockedChannel.flush();
+		assertEquals(1, blockingBroker.getNumberOfBuffers());
+	}
+
+	private static NetworkOutputChannel<IntegerRecord> createChannel(final ByteBufferedOutputChannelBroker broker) {
+
+		final NetworkOutputChannel<IntegerRecord> channel = new NetworkOutputChannel<IntegerRecord>(null, 0,
+			ChannelID.generate(), ChannelID.generate(), CompressionLevel.NO_COMPRESSION,
+			new DefaultRecordSerializerFactory<IntegerRecord>().createSerializer());
+		channel.setByteBufferedOutputChannelBroker(broker);
+
+		return channel;
+	}
+
+	/**
+	 * Broker which records how long the records written to the channel waited until they were shipped.
+	 */
+	private static class RecordingBroker implements ByteBufferedOutputChannelBroker, MemoryBufferPoolConnector {
+
+		private final long requestDelay;
+
+		private final Queue<Long> writeTimes = new ArrayDeque<Long>();
+
+		private int numberOfBuffers = 0;
+
+		private long numberOfBytes = 0L;
+
+		private long bytesPerRecord = 0L;
+
+		private long numberOfRecords = 0L;
+
+		private long maxLatency = 0L;
+
+		private RecordingBroker(final long requestDelay) {
+			this.requestDelay = requestDelay;
+		}
+
+		synchronized void recordWritten() {
+
+			this.writeTimes.add(Long.valueOf(System.currentTimeMillis()));
+		}
+
+		synchronized int getNumberOfBuffers() {
+
+			return this.numberOfBuffers;
+		}
+
+		synchronized void reset() {
+
+			this.writeTimes.clear();
+			this.numberOfBuffers = 0;
+			this.numberOfBytes = 0L;
+			this.numberOfRecords = 0L;
+			this.maxLatency = 0L;
+		}
+
+		@Override
+		public Buffer requestEmptyWriteBuffer() throws InterruptedException {
+
+			if (this.requestDelay > 0L) {
+				Thread.sleep(this.requestDelay);
+			}
+
+			return BufferFactory.createFromMemory(BUFFER_SIZE, ByteBuffer.allocate(BUFFER_SIZE), this);
+		}
+
+		@Override
+		public synchronized void releaseWriteBuffer(final Buffer buffer) throws IOException {
+
+			final long now = System.currentTimeMillis();
+
+			buffer.finishWritePhase();
+			++this.numberOfBuffers;
+			this.numberOfBytes += buffer.size();
+
+			// The oldest record in the buffer waited the longest
+			if (this.bytesPerRecord > 0L && !this.writeTimes.isEmpty()) {
+				this.maxLatency = Math.max(this.maxLatency, now - this.writeTimes.peek().longValue());
+				for (long i = buffer.size() / this.bytesPerRecord; i > 0 && !this.writeTimes.isEmpty(); --i) {
+					this.writeTimes.poll();
+					++this.numberOfRecords;
+				}
+			}
+
+			buffer.recycleBuffer();
+		}
+
+		@Override
+		public boolean hasDataLeftToTransmit() {
+
+			return false;
+		}
+
+		@Override
+		public void transferEventToInputChannel(final AbstractEvent event) {
+		}
+
+		@Override
+		public Compressor getCompressor() {
+
+			return null;
+		}
+
+		@Override
+		public void recycle(final ByteBuffer byteBuffer) {
+		}
+	}
+}
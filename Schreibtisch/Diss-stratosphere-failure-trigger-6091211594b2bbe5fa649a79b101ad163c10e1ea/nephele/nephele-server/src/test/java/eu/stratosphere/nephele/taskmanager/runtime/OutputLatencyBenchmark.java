@@ -0,0 +1,241 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+package eu.stratosphere.nephele.taskmanager.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.event.task.AbstractEvent;
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ByteBufferedOutputChannelBroker;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.DefaultRecordSerializerFactory;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.io.channels.NetworkOutputChannel;
+import eu.stratosphere.nephele.io.compression.CompressionLevel;
+import eu.stratosphere.nephele.io.compression.Compressor;
+import eu.stratosphere.nephele.types.IntegerRecord;
+
+/**
+ * Measures the trade-off between throughput and latency of an output channel whose partially filled write buffers
+ * are shipped by an {@link OutputFlusher}. For several record rates, the benchmark sweeps the latency bound and
+ * reports the throughput, the number of shipped buffers and the median and 99th percentile of the time records
+ * waited until their buffer was shipped.
+ */
+public class OutputLatencyBenchmark {
+
+	private static final Log LOG = LogFactory.getLog(OutputLatencyBenchmark.class);
+
+	/**
+	 * The record rates, <code>0</code> writes records as fast as possible.
+	 */
+	private static final int[] RECORDS_PER_SECOND = { 10000, 100000, 0 };
+
+	/**
+	 * The latency bounds in milliseconds, <code>0</code> ships buffers only when they are full.
+	 */
+	private static final long[] MAX_LATENCIES = { 0L, 1L, 2L, 5L, 20L, 100L };
+
+	private static final long DURATION = 500L;
+
+	private static final int UNTHROTTLED_RECORDS = 2000000;
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	@Test
+	public void testThroughputLatencyTradeOff() throws Exception {
+
+		final long bytesPerRecord = measureBytesPerRecord();
+
+		for (final int recordsPerSecond : RECORDS_PER_SECOND) {
+			for (final long maxLatency : MAX_LATENCIES) {
+				run(recordsPerSecond, maxLatency, bytesPerRecord);
+			}
+		}
+	}
+
+	private static void run(final int recordsPerSecond, final long maxLatency, final long bytesPerRecord)
+			throws IOException, InterruptedException {
+
+		final int numberOfRecords = (recordsPerSecond == 0) ? UNTHROTTLED_RECORDS
+			: (int) (recordsPerSecond * DURATION / 1000L);
+		final RecordingBroker broker = new RecordingBroker(numberOfRecords, bytesPerRecord);
+		final NetworkOutputChannel<IntegerRecord> channel = createChannel(broker);
+
+		OutputFlusher flusher = null;
+		if (maxLatency > 0L) {
+			flusher = new OutputFlusher("Output latency benchmark", maxLatency);
+			flusher.registerOutputChannel(channel);
+			flusher.start();
+		}
+
+		final IntegerRecord record = new IntegerRecord();
+		final int recordsPerMillisecond = (recordsPerSecond == 0) ? numberOfRecords
+			: Math.max(1, recordsPerSecond / 1000);
+		final long start = System.nanoTime();
+		long now = System.currentTimeMillis();
+		int written = 0;
+
+		while (written < numberOfRecords) {
+
+			final int end = Math.min(numberOfRecords, written + recordsPerMillisecond);
+			while (written < end) {
+				record.setValue(written);
+				broker.writeTimes[written++] = System.nanoTime();
+				channel.writeRecord(record);
+			}
+
+			if (written < numberOfRecords) {
+				final long next = now + 1L;
+				while ((now = System.currentTimeMillis()) < next) {
+					Thread.sleep(0L, 100000);
+				}
+			}
+		}
+
+		if (flusher != null) {
+			flusher.shutdown();
+			flusher.join();
+		}
+		channel.flush();
+
+		final long elapsed = Math.max(1L, (System.nanoTime() - start) / 1000000L);
+		final long[] latencies = broker.getLatencies();
+		Arrays.sort(latencies);
+
+		LOG.info((recordsPerSecond == 0 ? "Unthrottled" : recordsPerSecond + " records/s") + ", "
+			+ (maxLatency == 0L ? "no latency bound" : maxLatency + " ms bound") + ": "
+			+ (numberOfRecords / elapsed) + " records/msec, " + broker.getNumberOfBuffers() + " buffers, "
+			+ (percentile(latencies, 50) / 1000L) + " usecs p50 latency, " + (percentile(latencies, 99) / 1000L)
+			+ " usecs p99 latency");
+	}
+
+	private static long percentile(final long[] sortedValues, final int percentile) {
+
+		if (sortedValues.length == 0) {
+			return 0L;
+		}
+
+		return sortedValues[(int) (((long) sortedValues.length - 1L) * percentile / 100L)];
+	}
+
+	private static long measureBytesPerRecord() throws IOException, InterruptedException {
+
+		final RecordingBroker broker = new RecordingBroker(0, 0L);
+		final NetworkOutputChannel<IntegerRecord> channel = createChannel(broker);
+		channel.writeRecord(new IntegerRecord());
+		channel.flush();
+
+		return broker.numberOfBytes;
+	}
+
+	private static NetworkOutputChannel<IntegerRecord> createChannel(final ByteBufferedOutputChannelBroker broker) {
+
+		final NetworkOutputChannel<IntegerRecord> channel = new NetworkOutputChannel<IntegerRecord>(null, 0,
+			ChannelID.generate(), ChannelID.generate(), CompressionLevel.NO_COMPRESSION,
+			new DefaultRecordSerializerFactory<IntegerRecord>().createSerializer());
+		channel.setByteBufferedOutputChannelBroker(broker);
+
+		return channel;
+	}
+
+	/**
+	 * Broker which records how long the records written to the channel waited until their buffer was shipped. A
+	 * record counts as shipped once the buffer holding its last byte has been released.
+	 */
+	private static final class RecordingBroker implements ByteBufferedOutputChannelBroker, MemoryBufferPoolConnector {
+
+		private final long[] writeTimes;
+
+		private final long[] latencies;
+
+		private final long bytesPerRecord;
+
+		private int numberOfBuffers = 0;
+
+		private long numberOfBytes = 0L;
+
+		private int numberOfRecords = 0;
+
+		private RecordingBroker(final int numberOfRecords, final long bytesPerRecord) {
+			this.writeTimes = new long[numberOfRecords];
+			this.latencies = new long[numberOfRecords];
+			this.bytesPerRecord = bytesPerRecord;
+		}
+
+		synchronized int getNumberOfBuffers() {
+
+			return this.numberOfBuffers;
+		}
+
+		synchronized long[] getLatencies() {
+
+			return Arrays.copyOf(this.latencies, this.numberOfRecords);
+		}
+
+		@Override
+		public Buffer requestEmptyWriteBuffer() {
+
+			return BufferFactory.createFromMemory(BUFFER_SIZE, ByteBuffer.allocate(BUFFER_SIZE), this);
+		}
+
+		@Override
+		public synchronized void releaseWriteBuffer(final Buffer buffer) throws IOException {
+
+			final long now = System.nanoTime();
+
+			buffer.finishWritePhase();
+			++this.numberOfBuffers;
+			this.numberOfBytes += buffer.size();
+			buffer.recycleBuffer();
+
+			if (this.bytesPerRecord == 0L) {
+				return;
+			}
+
+			final int shippedRecords = (int) Math.min(this.writeTimes.length, this.numberOfBytes / this.bytesPerRecord);
+			while (this.numberOfRecords < shippedRecords) {
+				this.latencies[this.numberOfRecords] = now - this.writeTimes[this.numberOfRecords];
+				++this.numberOfRecords;
+			}
+		}
+
+		@Override
+		public boolean hasDataLeftToTransmit() {
+
+			return false;
+		}
+
+		@Override
+		public void transferEventToInputChannel(final AbstractEvent event) {
+		}
+
+		@Override
+		public Compressor getCompressor() {
+
+			return null;
+		}
+
+		@Override
+		public void recycle(final ByteBuffer byteBuffer) {
+		}
+	}
+}
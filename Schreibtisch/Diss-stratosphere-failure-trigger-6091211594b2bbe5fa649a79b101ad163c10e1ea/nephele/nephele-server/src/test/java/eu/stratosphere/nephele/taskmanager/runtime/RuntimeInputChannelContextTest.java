@@ -0,0 +1,306 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.nephele.taskmanager.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import eu.stratosphere.nephele.event.task.AbstractEvent;
+import eu.stratosphere.nephele.execution.RuntimeEnvironment;
+import eu.stratosphere.nephele.executiongraph.ExecutionVertexID;
+import eu.stratosphere.nephele.io.InputGate;
+import eu.stratosphere.nephele.io.RuntimeInputGate;
+import eu.stratosphere.nephele.io.channels.AbstractInputChannel;
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ChannelActivateEvent;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.io.channels.MemoryBufferPoolConnector;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.taskmanager.routing.ChannelCreditEvent;
+import eu.stratosphere.nephele.taskmanager.routing.RoutingService;
+import eu.stratosphere.nephele.taskmanager.routing.UnexpectedEnvelopeEvent;
+import eu.stratosphere.nephele.taskmanager.transferenvelope.TransferEnvelope;
+import eu.stratosphere.nephele.types.Record;
+
+/**
+ * This class contains tests for the receiver side of credit based flow control in the
+ * {@link RuntimeInputChannelContext}.
+ */
+public class RuntimeInputChannelContextTest {
+
+	private static final int BUFFER_SIZE = 128;
+
+	private static final int CREDITS_PER_CHANNEL = 8;
+
+	private final JobID jobID = JobID.generate();
+
+	private final ChannelID channelID = ChannelID.generate();
+
+	private final AtomicInteger recycledBuffers = new AtomicInteger(0);
+
+	private final MemoryBufferPoolConnector connector = new MemoryBufferPoolConnector() {
+
+		@Override
+		public void recycle(final ByteBuffer byteBuffer) {
+			recycledBuffers.incrementAndGet();
+		}
+	};
+
+	private final List<AbstractEvent> sentEvents = new ArrayList<AbstractEvent>();
+
+	private ExecutionVertexID vertexID;
+
+	private AbstractInputChannel<Record> inputChannel;
+
+	private RuntimeInputGate<Record> inputGate;
+
+	private RoutingService routingService;
+
+	private EnvelopeConsumptionLog envelopeConsumptionLog;
+
+	private int nextSequenceNumber = 0;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+
+		this.vertexID = ExecutionVertexID.generate();
+
+		final InputGate<Record> gate = mock(InputGate.class);
+		when(gate.getIndex()).thenReturn(0);
+
+		this.inputChannel = mock(AbstractInputChannel.class);
+		doReturn(gate).when(this.inputChannel).getInputGate();
+		when(this.inputChannel.getChannelIndex()).thenReturn(0);
+		when(this.inputChannel.getID()).thenReturn(this.channelID);
+		when(this.inputChannel.getJobID()).thenReturn(this.jobID);
+
+		this.inputGate = mock(RuntimeInputGate.class);
+		when(this.inputGate.getNumberOfInputChannels()).thenReturn(1);
+		doReturn(this.inputChannel).when(this.inputGate).getInputChannel(0);
+
+		final RuntimeEnvironment environment = mock(RuntimeEnvironment.class);
+		when(environment.getTaskNameWithIndex()).thenReturn("Test task (1/1)");
+		doReturn(this.inputGate).when(environment).getInputGate(0);
+
+		this.envelopeConsumptionLog = new EnvelopeConsumptionLog(this.vertexID, environment);
+
+		this.routingService = mock(RoutingService.class, new Answer<Object>() {
+
+			@Override
+			public Object answer(final InvocationOnMock invocation) {
+
+				if ("routeEnvelopeFromInputChannel".equals(invocation.getMethod().getName())) {
+					final TransferEnvelope envelope = (TransferEnvelope) invocation.getArguments()[0];
+					synchronized (sentEvents) {
+						sentEvents.addAll(envelope.getEventList());
+					}
+				}
+
+				return null;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+
+		EnvelopeConsumptionLog.removeLog(this.vertexID);
+	}
+
+	/**
+	 * Checks that credits are announced in batches of half the window while envelopes are queued, and that the
+	 * remaining credits are announced as soon as the queue runs empty.
+	 */
+	@Test
+	public void testCreditAnnouncement() {
+
+		final RuntimeInputChannelContext context = createContext(CREDITS_PER_CHANNEL);
+
+		for (int i = 0; i < 6; ++i) {
+			context.queueTransferEnvelope(createEnvelope(true));
+		}
+
+		consume(context, 3);
+		assertTrue(getSentEvents().isEmpty());
+
+		consume(context, 1);
+		checkCredits(false, 4);
+
+		// Below the threshold, but the queue has run empty
+		consume(context, 2);
+		checkCredits(false, 4, 2);
+		assertEquals(6, this.recycledBuffers.get());
+	}
+
+	/**
+	 * Checks that envelopes which only carry events do not return credits.
+	 */
+	@Test
+	public void testEventOnlyEnvelopesReturnNoCredits() {
+
+		final RuntimeInputChannelContext context = createContext(CREDITS_PER_CHANNEL);
+
+		context.queueTransferEnvelope(createEnvelope(false));
+		context.queueTransferEnvelope(createEnvelope(false));
+
+		assertNull(context.getReadBufferToConsume());
+		assertNull(context.getReadBufferToConsume());
+		assertTrue(getSentEvents().isEmpty());
+	}
+
+	/**
+	 * Checks that a destroyed channel returns the credits of its pending and discarded envelopes, including those which
+	 * arrive after the destruction.
+	 */
+	@Test
+	public void testCreditsReturnedOnDestroy() {
+
+		final RuntimeInputChannelContext context = createContext(CREDITS_PER_CHANNEL);
+
+		for (int i = 0; i < 3; ++i) {
+			context.queueTransferEnvelope(createEnvelope(true));
+		}
+
+		consume(context, 1);
+		assertTrue(getSentEvents().isEmpty());
+
+		context.destroy();
+		checkCredits(false, 3);
+		assertEquals(3, this.recycledBuffers.get());
+
+		context.queueTransferEnvelope(createEnvelope(true));
+		checkCredits(false, 3, 1);
+		assertEquals(4, this.recycledBuffers.get());
+	}
+
+	/**
+	 * Checks that discarded envelopes return their credits, since the sender has spent them.
+	 */
+	@Test
+	public void testCreditsReturnedForDiscardedEnvelopes() {
+
+		final RuntimeInputChannelContext context = createContext(CREDITS_PER_CHANNEL);
+
+		context.queueTransferEnvelope(createEnvelope(true));
+		context.queueTransferEnvelope(createEnvelope(true));
+
+		// A restarted sender starts over with the first sequence number
+		this.nextSequenceNumber = 0;
+		context.queueTransferEnvelope(createEnvelope(true));
+		assertEquals(1, this.recycledBuffers.get());
+
+		consume(context, 2);
+		final List<AbstractEvent> events = getSentEvents();
+		assertEquals(2, events.size());
+		assertTrue(events.get(0) instanceof UnexpectedEnvelopeEvent);
+		assertEquals(3, ((ChannelCreditEvent) events.get(1)).getCredits());
+	}
+
+	/**
+	 * Checks that the activation of a (re)started channel opens a fresh window, reduced by the envelopes which are
+	 * already queued, and that channels without credit based flow control are not activated.
+	 */
+	@Test
+	public void testActivationOpensWindow() throws Exception {
+
+		final RuntimeInputChannelContext context = createContext(CREDITS_PER_CHANNEL);
+
+		context.transferEventToOutputChannel(new ChannelActivateEvent());
+		checkCredits(true, CREDITS_PER_CHANNEL);
+
+		context.queueTransferEnvelope(createEnvelope(true));
+		context.queueTransferEnvelope(createEnvelope(false));
+		context.transferEventToOutputChannel(new ChannelActivateEvent());
+		checkCredits(true, CREDITS_PER_CHANNEL, CREDITS_PER_CHANNEL - 1);
+
+		final RuntimeInputChannelContext uncredited = createContext(0);
+		uncredited.transferEventToOutputChannel(new ChannelActivateEvent());
+		uncredited.queueTransferEnvelope(createEnvelope(true));
+		consume(uncredited, 1);
+		assertEquals(2, getSentEvents().size());
+	}
+
+	private RuntimeInputChannelContext createContext(final int creditsPerChannel) {
+
+		this.nextSequenceNumber = 0;
+
+		final RuntimeInputGateContext gateContext = new RuntimeInputGateContext("Test task (1/1)",
+			this.routingService, this.inputGate, this.envelopeConsumptionLog);
+
+		return new RuntimeInputChannelContext(gateContext, this.routingService, this.inputChannel,
+			this.envelopeConsumptionLog, creditsPerChannel);
+	}
+
+	private TransferEnvelope createEnvelope(final boolean withBuffer) {
+
+		final TransferEnvelope envelope = new TransferEnvelope(this.nextSequenceNumber++, this.jobID, this.channelID);
+		if (withBuffer) {
+			envelope.setBuffer(BufferFactory.createFromMemory(BUFFER_SIZE, ByteBuffer.allocate(BUFFER_SIZE),
+				this.connector));
+		}
+
+		return envelope;
+	}
+
+	private static void consume(final RuntimeInputChannelContext context, final int numberOfBuffers) {
+
+		for (int i = 0; i < numberOfBuffers; ++i) {
+			final Buffer buffer = context.getReadBufferToConsume();
+			assertNotNull(buffer);
+			context.releaseConsumedReadBuffer(buffer);
+		}
+	}
+
+	private List<AbstractEvent> getSentEvents() {
+
+		synchronized (this.sentEvents) {
+			return new ArrayList<AbstractEvent>(this.sentEvents);
+		}
+	}
+
+	/**
+	 * Checks that exactly the given credit events have been sent to the output channel.
+	 */
+	private void checkCredits(final boolean window, final int... credits) {
+
+		final List<AbstractEvent> events = getSentEvents();
+		assertEquals(credits.length, events.size());
+
+		for (int i = 0; i < credits.length; ++i) {
+			final ChannelCreditEvent creditEvent = (ChannelCreditEvent) events.get(i);
+			assertEquals(credits[i], creditEvent.getCredits());
+			assertEquals(window, creditEvent.isWindow());
+		}
+	}
+}
@@ -15,6 +15,173 @@
 
 package eu.stratosphere.nephele.taskmanager.transferenvelope;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import eu.stratosphere.nephele.io.channels.Buffer;
+import eu.stratosphere.nephele.io.channels.BufferFactory;
+import eu.stratosphere.nephele.io.channels.ChannelID;
+import eu.stratosphere.nephele.jobgraph.JobID;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferAvailabilityListener;
+import eu.stratosphere.nephele.taskmanager.bufferprovider.BufferProvider;
+import eu.stratosphere.nephele.util.BufferPoolConnector;
+
+/**
+ * This class contains tests for the {@link SpillingQueue}.
+ */
 public class SpillingQueueTest {
 
+	private static final int BUFFER_SIZE = 1024;
+
+	private static final int NUMBER_OF_ENVELOPES = 200;
+
+	/**
+	 * The memory watermark of the queue, which is exceeded by the envelopes many times over.
+	 */
+	private static final long MEMORY_WATERMARK = 16 * BUFFER_SIZE;
+
+	/**
+	 * The maximum number of envelopes in the head and tail elements, which are not spilled asynchronously.
+	 */
+	private static final int UNSPILLED_ENVELOPES = 2 * 16;
+
+	private static final long TIMEOUT = 10000L;
+
+	/**
+	 * Tests that the queue spills in the background once it exceeds its memory watermark and that the envelopes are
+	 * returned in order and with their original content, no matter where their buffers resided.
+	 */
+	@Test
+	public void testAsynchronousSpilling() throws Exception {
+
+		final Queue<ByteBuffer> readAheadPool = new ArrayDeque<ByteBuffer>();
+		for (int i = 0; i < 16; ++i) {
+			readAheadPool.add(ByteBuffer.allocate(BUFFER_SIZE));
+		}
+
+		final SpillingQueue spillingQueue = new SpillingQueue(ChannelID.generate(), new TestBufferProvider(
+			readAheadPool), MEMORY_WATERMARK);
+
+		final JobID jobID = JobID.generate();
+		final ChannelID source = ChannelID.generate();
+		final Queue<ByteBuffer> dataPool = new ArrayDeque<ByteBuffer>();
+
+		for (int i = 0; i < NUMBER_OF_ENVELOPES; ++i) {
+
+			final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+			final Buffer buffer = BufferFactory.createFromMemory(BUFFER_SIZE, byteBuffer, new BufferPoolConnector(
+				dataPool));
+			buffer.write(createData(i));
+			buffer.finishWritePhase();
+
+			final TransferEnvelope transferEnvelope = new TransferEnvelope(i, jobID, source);
+			transferEnvelope.setBuffer(buffer);
+			spillingQueue.add(transferEnvelope);
+		}
+
+		// Wait for the spilling queue thread to bring the queue back below its watermark
+		final long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (spillingQueue.getAmountOfMainMemoryInQueue() > MEMORY_WATERMARK + UNSPILLED_ENVELOPES * BUFFER_SIZE) {
+			assertTrue("Queue was not spilled in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+
+		assertTrue(spillingQueue.getNumberOfSpilledBytes() > 0L);
+		assertEquals(NUMBER_OF_ENVELOPES, spillingQueue.size());
+
+		for (int i = 0; i < NUMBER_OF_ENVELOPES; ++i) {
+
+			final TransferEnvelope transferEnvelope = spillingQueue.poll();
+			assertNotNull(transferEnvelope);
+			assertEquals(i, transferEnvelope.getSequenceNumber());
+
+			final Buffer buffer = transferEnvelope.getBuffer();
+			final ByteBuffer data = ByteBuffer.allocate(BUFFER_SIZE);
+			while (buffer.read(data) > 0) {
+			}
+			data.flip();
+			assertEquals(createData(i), data);
+			buffer.recycleBuffer();
+		}
+
+		assertTrue(spillingQueue.isEmpty());
+		assertTrue(spillingQueue.getMaximumResidencyTime() >= spillingQueue.getAverageResidencyTime());
+	}
+
+	private static ByteBuffer createData(final int seed) {
+
+		final ByteBuffer data = ByteBuffer.allocate(BUFFER_SIZE);
+		for (int i = 0; i < BUFFER_SIZE; ++i) {
+			data.put((byte) (seed + i));
+		}
+		data.flip();
+
+		return data;
+	}
+
+	/**
+	 * A buffer provider which hands out buffers from a fixed pool without blocking.
+	 */
+	private static final class TestBufferProvider implements BufferProvider {
+
+		private final Queue<ByteBuffer> bufferPool;
+
+		private TestBufferProvider(final Queue<ByteBuffer> bufferPool) {
+			this.bufferPool = bufferPool;
+		}
+
+		@Override
+		public Buffer requestEmptyBuffer(final int minimumSizeOfBuffer) throws IOException {
+
+			final ByteBuffer byteBuffer;
+			synchronized (this.bufferPool) {
+				byteBuffer = this.bufferPool.poll();
+			}
+
+			if (byteBuffer == null) {
+				return null;
+			}
+
+			byteBuffer.clear();
+			return BufferFactory.createFromMemory(minimumSizeOfBuffer, byteBuffer, new BufferPoolConnector(
+				this.bufferPool));
+		}
+
+		@Override
+		public Buffer requestEmptyBufferBlocking(final int minimumSizeOfBuffer) throws IOException,
+				InterruptedException {
+
+			throw new IllegalStateException("requestEmptyBufferBlocking called");
+		}
+
+		@Override
+		public int getMaximumBufferSize() {
+
+			return BUFFER_SIZE;
+		}
+
+		@Override
+		public boolean isShared() {
+
+			return false;
+		}
+
+		@Override
+		public void reportAsynchronousEvent() {
+		}
+
+		@Override
+		public boolean registerBufferAvailabilityListener(final BufferAvailabilityListener bufferAvailabilityListener) {
+
+			return false;
+		}
+	}
 }
@@ -0,0 +1,41 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.common.generic;
+
+import eu.stratosphere.pact.common.stubs.Collector;
+
+/**
+ * A mapper that can additionally process whole batches of records in one call. When a mapper implementing this
+ * interface runs as a chained task whose batch size is set, the runtime gathers the incoming records in batches and
+ * calls {@link #mapBatch(Object[], int, Collector)} once per batch instead of calling
+ * {@link #map(Object, Collector)} once per record. Otherwise, the records are passed one at a time as usual.
+ *
+ * @param <T> The type of the input records.
+ * @param <O> The type of the output records.
+ */
+public interface GenericBatchMapper<T, O> extends GenericMapper<T, O>
+{
+	/**
+	 * Maps a batch of records. The record instances are owned by the runtime and are reused for the next batch once
+	 * this method returns, so implementations must not keep references to them.
+	 * 
+	 * @param records The array holding the records of the batch.
+	 * @param numRecords The number of valid records, starting at position <code>0</code> of the array.
+	 * @param out A collector that collects all output records.
+	 * @throws Exception Implementations may forward exceptions, which are caught by the runtime.
+	 */
+	void mapBatch(T[] records, int numRecords, Collector<O> out) throws Exception;
+}
@@ -49,6 +49,15 @@ public final class PactConfigConstants {
 	 */
 	public static final String DEFAULT_INSTANCE_TYPE_KEY = "pact.parallelization.default-instance-type";
 	
+	// ------------------------------- Compiler -------------------------------
+	
+	/**
+	 * The key for the config parameter defining the fraction of an instance's memory that the optimizer assumes
+	 * a hash aggregation to get. The memory is divided among the tasks only after the plan has been chosen, so
+	 * the optimizer has to guess the share of a single task.
+	 */
+	public static final String HASH_AGGREGATION_MEMORY_FRACTION_KEY = "pact.compiler.hash-aggregation.memory-fraction";
+	
 	// ------------------------------- Runtime --------------------------------
 	
 	/**
@@ -63,6 +72,34 @@ public final class PactConfigConstants {
 	 */
 	public static final String USE_NEPHELE_MULTICAST_KEY = "pact.runtime.multicast";
 	
+	/**
+	 * The key for the config parameter defining the minimal number of read-ahead buffers that each sorted
+	 * run gets during the merge phase of an external sort. Together with the available memory, it determines
+	 * the merge fan-in.
+	 */
+	public static final String SORT_MERGE_READ_AHEAD_KEY = "pact.runtime.sort.merge.read-ahead";
+	
+	/**
+	 * The key for the config parameter defining the maximal number of intermediate merges that an external
+	 * sort runs in parallel. A value of -1 runs one merge per temp directory of the I/O manager.
+	 */
+	public static final String SORT_MERGE_MAX_PARALLEL_KEY = "pact.runtime.sort.merge.max-parallel";
+	
+	/**
+	 * The key for the config parameter defining the codec with which an external sort compresses its spilled
+	 * runs. Valid values are "none", "lz", "deflate", or the name of a class implementing the I/O manager's
+	 * block compression codec interface.
+	 */
+	public static final String SORT_SPILL_COMPRESSION_KEY = "pact.runtime.sort.spill.compression";
+	
+	/**
+	 * The key for the config parameter defining the number of records that a task hands at once to a chained
+	 * task. A value of 0 hands the records over one at a time. Tasks may override the value in their own
+	 * configuration. Only chained tasks whose stub processes whole batches receive batches, all others receive
+	 * the records one at a time.
+	 */
+	public static final String CHAINING_BATCH_SIZE_KEY = "pact.runtime.chaining.batch-size";
+	
 	// ----------------------------- Web Frontend -----------------------------
 
 	/**
@@ -127,6 +164,13 @@ public final class PactConfigConstants {
 	 */
 	public static final String DEFAULT_INSTANCE_TYPE_DESCRIPTION = "standard,2,1,300,10,0";
 
+	// ------------------------------- Compiler -------------------------------
+	
+	/**
+	 * The default fraction of an instance's memory assumed for a hash aggregation: a quarter.
+	 */
+	public static final float DEFAULT_HASH_AGGREGATION_MEMORY_FRACTION = 0.25f;
+
 	// ------------------------------- Runtime --------------------------------
 	
 	/**
@@ -139,6 +183,26 @@ public final class PactConfigConstants {
 	 */
 	public static final boolean  DEFAULT_USE_NEPHELE_MULTICAST = false;
 	
+	/**
+	 * The default minimal number of read-ahead buffers per sorted run during merging: double buffering.
+	 */
+	public static final int DEFAULT_SORT_MERGE_READ_AHEAD = 2;
+	
+	/**
+	 * The default maximal number of parallel intermediate merges: one per temp directory.
+	 */
+	public static final int DEFAULT_SORT_MERGE_MAX_PARALLEL = -1;
+	
+	/**
+	 * The default codec for spilled sort runs: no compression.
+	 */
+	public static final String DEFAULT_SORT_SPILL_COMPRESSION = "none";
+	
+	/**
+	 * The default number of records handed at once to a chained task: no batching.
+	 */
+	public static final int DEFAULT_CHAINING_BATCH_SIZE = 0;
+	
 	// ----------------------------- Web Frontend -----------------------------
 
 	/**
@@ -164,6 +164,16 @@ public class PactCompiler {
 	 */
 	public static final String HINT_LOCAL_STRATEGY_COMBINING_SORT = "LOCAL_STRATEGY_COMBINING_SORT";
 	
+	/**
+	 * Value for the local strategy compiler hint that enforces a <b>hash based</b> local strategy.
+	 * The data is grouped in a hash table that keeps one aggregate per key, which is updated with the
+	 * combine method. If the aggregates exceed the memory, the strategy falls back to a combining sort.
+	 * For example, a <i>Reduce</i> contract with a combinable stub will aggregate the data in a hash table.
+	 * 
+	 * @see #HINT_LOCAL_STRATEGY
+	 */
+	public static final String HINT_LOCAL_STRATEGY_COMBINING_HASH = "LOCAL_STRATEGY_COMBINING_HASH";
+	
 	/**
 	 * Value for the local strategy compiler hint that enforces a <b>sort merge based</b> local strategy on both
 	 * inputs with subsequent merging of inputs. 
@@ -674,6 +684,7 @@ public class PactCompiler {
 		rootNode.accept(propsVisitor);
 
 		// the final step is now to generate the actual plan alternatives
+		this.costEstimator.setMemoryPerInstance(memoryPerInstance);
 		List<? extends OptimizerNode> bestPlan = rootNode.getAlternativePlans(this.costEstimator);
 
 		if (bestPlan.size() != 1) {
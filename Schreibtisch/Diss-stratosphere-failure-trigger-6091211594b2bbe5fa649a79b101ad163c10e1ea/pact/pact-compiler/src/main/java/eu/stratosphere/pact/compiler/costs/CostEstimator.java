@@ -28,6 +28,33 @@ import eu.stratosphere.pact.runtime.resettable.BlockResettableMutableObjectItera
  */
 public abstract class CostEstimator {
 
+	/**
+	 * The memory in bytes that is available to the tasks on an instance, or -1, if unknown.
+	 */
+	private long memoryPerInstance = -1;
+
+	/**
+	 * Gets the memory in bytes that is available to the tasks on an instance.
+	 * 
+	 * @return The memory per instance, or -1, if unknown.
+	 */
+	public long getMemoryPerInstance() {
+		return this.memoryPerInstance;
+	}
+
+	/**
+	 * Sets the memory in bytes that is available to the tasks on an instance. The compiler sets it before
+	 * it enumerates the plans, so that memory bound strategies can be costed.
+	 * 
+	 * @param memoryPerInstance
+	 *        The memory per instance, or -1, if unknown.
+	 */
+	public void setMemoryPerInstance(long memoryPerInstance) {
+		this.memoryPerInstance = memoryPerInstance;
+	}
+
+	// ------------------------------------------------------------------------
+
 	public abstract void getRangePartitionCost(PactConnection conn, Costs costs);
 
 	public abstract void getHashPartitioningCost(PactConnection conn, Costs costs);
@@ -38,6 +65,8 @@ public abstract class CostEstimator {
 
 	public abstract void getLocalSortCost(OptimizerNode node, PactConnection input, Costs costs);
 
+	public abstract void getLocalHashAggregationCost(OptimizerNode node, PactConnection input, Costs costs);
+
 	public abstract void getLocalDoubleSortMergeCost(OptimizerNode node, PactConnection input1, PactConnection input2,
 			Costs costs);
 
@@ -144,6 +173,9 @@ public abstract class CostEstimator {
 		case SORT:
 			getLocalSortCost(n, primConn, locCost);
 			break;
+		case COMBININGHASH:
+			getLocalHashAggregationCost(n, primConn, locCost);
+			break;
 		case SORT_BOTH_MERGE:
 			getLocalDoubleSortMergeCost(n, primConn, secConn, locCost);
 			break;
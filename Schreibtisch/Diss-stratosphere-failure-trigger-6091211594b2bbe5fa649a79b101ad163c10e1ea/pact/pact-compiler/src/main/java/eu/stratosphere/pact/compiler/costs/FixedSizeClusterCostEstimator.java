@@ -15,7 +15,11 @@
 
 package eu.stratosphere.pact.compiler.costs;
 
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
+import eu.stratosphere.pact.common.contract.AbstractPact;
 import eu.stratosphere.pact.common.contract.DataDistribution;
+import eu.stratosphere.pact.common.util.FieldSet;
+import eu.stratosphere.pact.common.util.PactConfigConstants;
 import eu.stratosphere.pact.compiler.Costs;
 import eu.stratosphere.pact.compiler.plan.OptimizerNode;
 import eu.stratosphere.pact.compiler.plan.PactConnection;
@@ -32,6 +36,12 @@ import eu.stratosphere.pact.compiler.plan.PactConnection;
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
 public class FixedSizeClusterCostEstimator extends CostEstimator {
+	
+	/**
+	 * The fraction of an instance's memory that a hash aggregation is assumed to get. The memory is distributed
+	 * among the tasks only after the plan has been chosen, so this is a guess.
+	 */
+	private final float hashAggregationMemoryFraction;
 
 	/**
 	 * Creates a new cost estimator that assumes four nodes, unless
@@ -39,6 +49,13 @@ public class FixedSizeClusterCostEstimator extends CostEstimator {
 	 * 
 	 */
 	public FixedSizeClusterCostEstimator() {
+		float fraction = GlobalConfiguration.getConfiguration().getFloat(
+			PactConfigConstants.HASH_AGGREGATION_MEMORY_FRACTION_KEY,
+			PactConfigConstants.DEFAULT_HASH_AGGREGATION_MEMORY_FRACTION);
+		if (fraction <= 0.0f || fraction > 1.0f) {
+			fraction = PactConfigConstants.DEFAULT_HASH_AGGREGATION_MEMORY_FRACTION;
+		}
+		this.hashAggregationMemoryFraction = fraction;
 	}
 
 	/*
@@ -142,6 +159,47 @@ public class FixedSizeClusterCostEstimator extends CostEstimator {
 		costs.setSecondaryStorageCost(s < 0 ? -1 : 2 * s);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see eu.stratosphere.pact.compiler.costs.CostEstimator#getLocalHashAggregationCost(
+	 * 	eu.stratosphere.pact.compiler.plan.OptimizerNode, 
+	 * 	eu.stratosphere.pact.compiler.plan.PactConnection, 
+	 * 	eu.stratosphere.pact.compiler.Costs)
+	 */
+	@Override
+	public void getLocalHashAggregationCost(OptimizerNode node, PactConnection input, Costs costs) {
+		costs.setNetworkCost(0);
+
+		final OptimizerNode source = input.getSourcePact();
+		final long s = source.getEstimatedOutputSize() * input.getReplicationFactor();
+		final long n = source.getEstimatedNumRecords();
+		final int[] keyColumns = ((AbstractPact<?>) node.getPactContract()).getKeyColumnNumbers(0);
+		final long k = source.getEstimatedCardinality(new FieldSet(keyColumns));
+		
+		// without an estimate of the number of keys or the memory, we cannot tell whether the aggregates fit
+		if (s < 0 || n < 1 || k < 1 || getMemoryPerInstance() < 0) {
+			costs.setSecondaryStorageCost(-1);
+			return;
+		}
+		
+		// we assume that an aggregate is as wide as an input record, and, to be safe, that every instance
+		// may see every key
+		final int dop = node.getDegreeOfParallelism() < 1 ? 1 : node.getDegreeOfParallelism();
+		final long aggregatesPerInstance = (long) (Math.min(k, n / dop) * (s / (double) n));
+		
+		// the parallel instances on the same machine share its memory
+		final int instancesPerMachine = node.getInstancesPerMachine() < 1 ? 1 : node.getInstancesPerMachine();
+		final long memory = (long) (getMemoryPerInstance() * this.hashAggregationMemoryFraction) / instancesPerMachine;
+		
+		if (aggregatesPerInstance <= memory) {
+			// the aggregates stay in memory, no I/O at all
+			costs.setSecondaryStorageCost(0);
+		} else {
+			// the aggregates are spilled once and sorted together with the remaining input
+			costs.setSecondaryStorageCost(2 * s + 2 * aggregatesPerInstance * dop);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see eu.stratosphere.pact.compiler.costs.CostEstimator#getLocalDoubleSortMergeCost(
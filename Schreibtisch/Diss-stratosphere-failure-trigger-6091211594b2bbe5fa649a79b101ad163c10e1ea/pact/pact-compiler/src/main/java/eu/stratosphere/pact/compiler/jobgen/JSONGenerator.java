@@ -320,6 +320,9 @@ public class JSONGenerator implements Visitor<OptimizerNode> {
 			case COMBININGSORT:
 				locString = "Sort with Combiner";
 				break;
+			case COMBININGHASH:
+				locString = "Hash Aggregation with Combiner";
+				break;
 			case SORT_SELF_NESTEDLOOP:
 				locString = "Sort Self-Nested-Loops";
 				break;
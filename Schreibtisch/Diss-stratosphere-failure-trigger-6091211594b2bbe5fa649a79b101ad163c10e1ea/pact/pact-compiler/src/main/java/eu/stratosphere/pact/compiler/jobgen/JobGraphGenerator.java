@@ -479,8 +479,18 @@ public class JobGraphGenerator implements Visitor<OptimizerNode> {
 		
 		combineConfig.setStubClass(combineNode.getPactContract().getUserCodeClass());
 
-		// we have currently only one strategy for combiners
-		combineConfig.setLocalStrategy(LocalStrategy.COMBININGSORT);
+		// set local strategy
+		switch (combineNode.getLocalStrategy()) {
+		case COMBININGSORT:
+			combineConfig.setLocalStrategy(LocalStrategy.COMBININGSORT);
+			break;
+		case COMBININGHASH:
+			combineConfig.setLocalStrategy(LocalStrategy.COMBININGHASH);
+			break;
+		default:
+			throw new CompilerException("Invalid local strategy for 'Combine' (" + combineNode.getName() + "): "
+				+ combineNode.getLocalStrategy());
+		}
 		
 		final Ordering secondaryOrder = combineNode.getPactContract().getGroupOrder();
 		if (secondaryOrder == null) {
@@ -543,6 +553,9 @@ public class JobGraphGenerator implements Visitor<OptimizerNode> {
 		case COMBININGSORT:
 			reduceConfig.setLocalStrategy(LocalStrategy.COMBININGSORT);
 			break;
+		case COMBININGHASH:
+			reduceConfig.setLocalStrategy(LocalStrategy.COMBININGHASH);
+			break;
 		case NONE:
 			reduceConfig.setLocalStrategy(LocalStrategy.NONE);
 			break;
@@ -23,6 +23,7 @@ import eu.stratosphere.pact.common.contract.Contract;
 import eu.stratosphere.pact.common.contract.ReduceContract;
 import eu.stratosphere.pact.common.plan.Visitor;
 import eu.stratosphere.pact.common.util.FieldSet;
+import eu.stratosphere.pact.compiler.CompilerException;
 import eu.stratosphere.pact.compiler.DataStatistics;
 import eu.stratosphere.pact.compiler.costs.CostEstimator;
 import eu.stratosphere.pact.runtime.shipping.ShipStrategy.ForwardSS;
@@ -37,10 +38,19 @@ public class CombinerNode extends OptimizerNode {
 	private PactConnection input;
 
 	public CombinerNode(ReduceContract reducer, OptimizerNode predecessor, float reducingFactor) {
+		this(reducer, predecessor, reducingFactor, LocalStrategy.COMBININGSORT);
+	}
+
+	public CombinerNode(ReduceContract reducer, OptimizerNode predecessor, float reducingFactor,
+			LocalStrategy localStrategy) {
 		super(reducer);
 
+		if (localStrategy != LocalStrategy.COMBININGSORT && localStrategy != LocalStrategy.COMBININGHASH) {
+			throw new CompilerException("Invalid local strategy for combiner: " + localStrategy);
+		}
+
 		this.input = new PactConnection(predecessor, this, new ForwardSS());
-		this.setLocalStrategy(LocalStrategy.COMBININGSORT);
+		this.setLocalStrategy(localStrategy);
 
 		this.globalProps = predecessor.globalProps;
 		this.localProps = predecessor.localProps;
@@ -87,6 +97,7 @@ public class CombinerNode extends OptimizerNode {
 	public int getMemoryConsumerCount() {
 		switch(this.localStrategy) {
 			case COMBININGSORT: return 1;
+			case COMBININGHASH: return 1;
 			default:	        return 0;
 		}
 	}
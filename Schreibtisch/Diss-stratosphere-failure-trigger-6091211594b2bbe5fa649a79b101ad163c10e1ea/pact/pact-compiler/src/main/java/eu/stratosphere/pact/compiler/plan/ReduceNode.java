@@ -69,6 +69,12 @@ public class ReduceNode extends SingleInputNode {
 				setLocalStrategy(LocalStrategy.SORT);
 			} else if (PactCompiler.HINT_LOCAL_STRATEGY_COMBINING_SORT.equals(localStrategy)) {
 				setLocalStrategy(LocalStrategy.COMBININGSORT);
+			} else if (PactCompiler.HINT_LOCAL_STRATEGY_COMBINING_HASH.equals(localStrategy)) {
+				if (!isCombineable() || getPactContract().getGroupOrder() != null) {
+					throw new CompilerException("Local strategy hint for hash aggregation requires a combinable " +
+						"reduce contract without a group order.");
+				}
+				setLocalStrategy(LocalStrategy.COMBININGHASH);
 			} else {
 				throw new CompilerException("Invalid local strategy hint for match contract: " + localStrategy);
 			}
@@ -162,6 +168,7 @@ public class ReduceNode extends SingleInputNode {
 		switch(this.localStrategy) {
 			case SORT:          return 1;
 			case COMBININGSORT: return 1;
+			case COMBININGHASH: return 1;
 			case NONE:          return getPactContract().getGroupOrder() == null ? 0 : 1;
 			default:	        return 0;
 		}
@@ -286,59 +293,80 @@ public class ReduceNode extends SingleInputNode {
 			
 
 			LocalStrategy ls = getLocalStrategy();
+			final LocalStrategy[] strategies;
 
 			// see, whether we need a local strategy
 			if (localStrategyNeeded) {
 			
 				// we need one
 				if (ls != LocalStrategy.NONE) {
-					if (ls != LocalStrategy.COMBININGSORT && ls != LocalStrategy.SORT) {
+					if (ls != LocalStrategy.COMBININGSORT && ls != LocalStrategy.SORT && ls != LocalStrategy.COMBININGHASH) {
 						// no valid plan possible
 						continue;
 					}
+					strategies = new LocalStrategy[] { ls };
 				}
-				// local strategy free to choose
-				else {
-					ls = isCombineable() ? LocalStrategy.COMBININGSORT : LocalStrategy.SORT;
+				// local strategy free to choose. a combinable reducer may aggregate in a hash table instead of
+				// sorting, unless the values of a group must be ordered. the costs decide between both
+				else if (isCombineable()) {
+					strategies = getPactContract().getGroupOrder() == null ?
+						new LocalStrategy[] { LocalStrategy.COMBININGSORT, LocalStrategy.COMBININGHASH } :
+						new LocalStrategy[] { LocalStrategy.COMBININGSORT };
+				} else {
+					strategies = new LocalStrategy[] { LocalStrategy.SORT };
 				}
+			} else {
+				strategies = new LocalStrategy[] { ls };
 			}
 
-			// adapt the local properties
-			if (ls == LocalStrategy.COMBININGSORT || ls == LocalStrategy.SORT) {
-				Ordering ordering = new Ordering();
-				for (Integer index :keySet) {
-					ordering.appendOrdering(index, null, Order.ASCENDING);
+			for (int i = 0; i < strategies.length; i++) {
+				ls = strategies[i];
+				final GlobalProperties gpForStrategy = i == strategies.length - 1 ? gp : gp.createCopy();
+				final LocalProperties lpForStrategy = i == strategies.length - 1 ? lp : lp.createCopy();
+				
+				// adapt the local properties
+				if (ls == LocalStrategy.COMBININGSORT || ls == LocalStrategy.SORT) {
+					Ordering ordering = new Ordering();
+					for (Integer index :keySet) {
+						ordering.appendOrdering(index, null, Order.ASCENDING);
+					}
+					lpForStrategy.setOrdering(ordering);
+					lpForStrategy.setGrouped(true, keySet);
+				} else if (ls == LocalStrategy.COMBININGHASH) {
+					// the hash table groups the records, but returns them in no particular order
+					lpForStrategy.setOrdering(null);
+					lpForStrategy.setGrouped(true, keySet);
 				}
-				lp.setOrdering(ordering);
-				lp.setGrouped(true, keySet);
-			}
-
-			// ----------------------------------------------------------------
-			// see, if we have a combiner before shipping
-			
-			OptimizerNode reducePred = subPlan;
-			
-			if (isCombineable() && ss.type() != ShipStrategyType.FORWARD) {
-				// this node contains the estimates for the costs of the combiner,
-				// as well as the updated size and cardinality estimates
-
-				OptimizerNode combiner = new CombinerNode(getPactContract(), subPlan, this.combinerReducingFactor);
-				combiner.setDegreeOfParallelism(subPlan.getDegreeOfParallelism());
-				estimator.costOperator(combiner);
-				reducePred = combiner;
+	
+				// ----------------------------------------------------------------
+				// see, if we have a combiner before shipping
+				
+				OptimizerNode reducePred = subPlan;
+				
+				if (isCombineable() && ss.type() != ShipStrategyType.FORWARD) {
+					// this node contains the estimates for the costs of the combiner,
+					// as well as the updated size and cardinality estimates. the combiner aggregates
+					// in a hash table, if the reducer does
+	
+					OptimizerNode combiner = new CombinerNode(getPactContract(), subPlan, this.combinerReducingFactor,
+						ls == LocalStrategy.COMBININGHASH ? LocalStrategy.COMBININGHASH : LocalStrategy.COMBININGSORT);
+					combiner.setDegreeOfParallelism(subPlan.getDegreeOfParallelism());
+					estimator.costOperator(combiner);
+					reducePred = combiner;
+				}
+				
+				ReduceNode n = new ReduceNode(this, reducePred, this.inConn, gpForStrategy, lpForStrategy);
+				n.inConn.setShipStrategy(ss);
+				n.setLocalStrategy(ls);
+	
+				// compute, which of the properties survive, depending on the output contract
+				n.getGlobalProperties().filterByNodesConstantSet(this, 0);
+				n.getLocalProperties().filterByNodesConstantSet(this, 0);
+	
+				estimator.costOperator(n);
+	
+				outputPlans.add(n);
 			}
-			
-			ReduceNode n = new ReduceNode(this, reducePred, this.inConn, gp, lp);
-			n.inConn.setShipStrategy(ss);
-			n.setLocalStrategy(ls);
-
-			// compute, which of the properties survive, depending on the output contract
-			n.getGlobalProperties().filterByNodesConstantSet(this, 0);
-			n.getLocalProperties().filterByNodesConstantSet(this, 0);
-
-			estimator.costOperator(n);
-
-			outputPlans.add(n);		
 		}
 	}
 	
@@ -0,0 +1,256 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.compiler;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.instance.HardwareDescription;
+import eu.stratosphere.nephele.instance.HardwareDescriptionFactory;
+import eu.stratosphere.nephele.instance.InstanceType;
+import eu.stratosphere.nephele.instance.InstanceTypeDescription;
+import eu.stratosphere.nephele.instance.InstanceTypeDescriptionFactory;
+import eu.stratosphere.nephele.instance.InstanceTypeFactory;
+import eu.stratosphere.pact.common.contract.FileDataSink;
+import eu.stratosphere.pact.common.contract.FileDataSource;
+import eu.stratosphere.pact.common.contract.ReduceContract;
+import eu.stratosphere.pact.common.contract.ReduceContract.Combinable;
+import eu.stratosphere.pact.common.plan.Plan;
+import eu.stratosphere.pact.common.plan.Visitor;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+import eu.stratosphere.pact.common.util.FieldSet;
+import eu.stratosphere.pact.compiler.costs.FixedSizeClusterCostEstimator;
+import eu.stratosphere.pact.compiler.jobgen.JobGraphGenerator;
+import eu.stratosphere.pact.compiler.plan.CombinerNode;
+import eu.stratosphere.pact.compiler.plan.OptimizedPlan;
+import eu.stratosphere.pact.compiler.plan.OptimizerNode;
+import eu.stratosphere.pact.compiler.plan.PactConnection;
+import eu.stratosphere.pact.compiler.plan.ReduceNode;
+import eu.stratosphere.pact.compiler.util.DummyInputFormat;
+import eu.stratosphere.pact.compiler.util.DummyOutputFormat;
+import eu.stratosphere.pact.runtime.task.util.TaskConfig.LocalStrategy;
+
+/**
+ * Tests that the optimizer chooses between the sort based and the hash based aggregation of combinable reducers,
+ * and that the hash aggregation can be requested by a hint.
+ */
+public class CombiningHashCompilerTest {
+	
+	private static final String IN_FILE = "file:///test/file";
+	
+	private static final String OUT_FILE = "file:///test/output";
+	
+	private static final int defaultParallelism = 8;
+	
+	// ------------------------------------------------------------------------
+	
+	private PactCompiler compiler;
+	
+	private InstanceTypeDescription instanceType;
+	
+	// ------------------------------------------------------------------------
+	
+	@Before
+	public void setup()
+	{
+		try {
+			InetSocketAddress dummyAddress = new InetSocketAddress(InetAddress.getLocalHost(), 12345);
+			this.compiler = new PactCompiler(new DataStatistics(), new FixedSizeClusterCostEstimator(), dummyAddress);
+		}
+		catch (Exception ex) {
+			ex.printStackTrace();
+			Assert.fail("Test setup failed.");
+		}
+		
+		// create the instance type description
+		InstanceType iType = InstanceTypeFactory.construct("standard", 6, 2, 4096, 100, 0);
+		HardwareDescription hDesc = HardwareDescriptionFactory.construct(2, 4096 * 1024 * 1024, 2000 * 1024 * 1024);
+		this.instanceType = InstanceTypeDescriptionFactory.construct(iType, hDesc, defaultParallelism * 2);
+	}
+	
+	/**
+	 * With few distinct keys, the aggregates fit into memory, so reducer and combiner aggregate in a hash table.
+	 */
+	@Test
+	public void testHashAggregationForFewKeys()
+	{
+		ReduceContract reduce = createPlanAndReduce(10);
+		checkLocalStrategies(compile(reduce), LocalStrategy.COMBININGHASH);
+	}
+	
+	/**
+	 * Without an estimate of the number of keys, the optimizer cannot tell whether the aggregates fit into memory
+	 * and stays with the sort.
+	 */
+	@Test
+	public void testSortWithoutKeyEstimate()
+	{
+		ReduceContract reduce = createPlanAndReduce(-1);
+		checkLocalStrategies(compile(reduce), LocalStrategy.COMBININGSORT);
+	}
+	
+	/**
+	 * The hint requests the hash aggregation, even if the costs would not.
+	 */
+	@Test
+	public void testHashAggregationHint()
+	{
+		ReduceContract reduce = createPlanAndReduce(-1);
+		reduce.getParameters().setString(PactCompiler.HINT_LOCAL_STRATEGY,
+			PactCompiler.HINT_LOCAL_STRATEGY_COMBINING_HASH);
+		
+		OptimizedPlan oPlan = compile(reduce);
+		checkLocalStrategies(oPlan, LocalStrategy.COMBININGHASH);
+		
+		// compile the job graph to verify that no error is thrown
+		new JobGraphGenerator().compileJobGraph(oPlan);
+	}
+	
+	/**
+	 * Checks that the aggregation memory is derived from the memory of the instances, which is shared by the
+	 * parallel instances on the same machine.
+	 */
+	@Test
+	public void testAggregationMemoryFromInstance()
+	{
+		final ReduceContract reduce = new ReduceContract.Builder(CombinableReduce.class, PactInteger.class, 0).build();
+		
+		// 1000 keys of 1000 records of 1KB each give 1MB of aggregates per instance
+		final OptimizerNode source = mock(OptimizerNode.class);
+		when(source.getEstimatedOutputSize()).thenReturn(1000L * 1000L * 1024L);
+		when(source.getEstimatedNumRecords()).thenReturn(1000L * 1000L);
+		when(source.getEstimatedCardinality(new FieldSet(new int[] { 0 }))).thenReturn(1000L);
+		
+		final PactConnection input = mock(PactConnection.class);
+		when(input.getSourcePact()).thenReturn(source);
+		when(input.getReplicationFactor()).thenReturn(1);
+		
+		final OptimizerNode node = mock(OptimizerNode.class);
+		when(node.getPactContract()).thenReturn(reduce);
+		when(node.getDegreeOfParallelism()).thenReturn(1);
+		when(node.getInstancesPerMachine()).thenReturn(1);
+		
+		final FixedSizeClusterCostEstimator estimator = new FixedSizeClusterCostEstimator();
+		final Costs costs = new Costs(0, 0);
+		
+		// unknown memory
+		estimator.getLocalHashAggregationCost(node, input, costs);
+		Assert.assertEquals(-1, costs.getSecondaryStorageCost());
+		
+		// a quarter of 8MB holds the aggregates
+		estimator.setMemoryPerInstance(8 * 1024 * 1024);
+		estimator.getLocalHashAggregationCost(node, input, costs);
+		Assert.assertEquals(0, costs.getSecondaryStorageCost());
+		
+		// but not, if four parallel instances share the machine
+		when(node.getInstancesPerMachine()).thenReturn(4);
+		estimator.getLocalHashAggregationCost(node, input, costs);
+		Assert.assertTrue(costs.getSecondaryStorageCost() > 0);
+		
+		// nor on a smaller instance
+		when(node.getInstancesPerMachine()).thenReturn(1);
+		estimator.setMemoryPerInstance(2 * 1024 * 1024);
+		estimator.getLocalHashAggregationCost(node, input, costs);
+		Assert.assertTrue(costs.getSecondaryStorageCost() > 0);
+	}
+	
+	// ------------------------------------------------------------------------
+	
+	private ReduceContract createPlanAndReduce(long numKeys)
+	{
+		FileDataSource source = new FileDataSource(DummyInputFormat.class, IN_FILE, "Source");
+		if (numKeys > 0) {
+			source.getCompilerHints().setDistinctCount(new FieldSet(new int[] { 0 }), numKeys);
+		}
+		
+		ReduceContract reduce = new ReduceContract.Builder(CombinableReduce.class, PactInteger.class, 0)
+			.input(source)
+			.name("Reduce")
+			.build();
+		
+		return reduce;
+	}
+	
+	private OptimizedPlan compile(ReduceContract reduce)
+	{
+		FileDataSink sink = new FileDataSink(DummyOutputFormat.class, OUT_FILE, reduce, "Sink");
+		return this.compiler.compile(new Plan(sink, "Combining Hash Test"), this.instanceType);
+	}
+	
+	private static void checkLocalStrategies(OptimizedPlan oPlan, final LocalStrategy expected)
+	{
+		final int[] numChecked = new int[1];
+		
+		oPlan.accept(new Visitor<OptimizerNode>() {
+			
+			@Override
+			public boolean preVisit(OptimizerNode visitable) {
+				if (visitable instanceof ReduceNode || visitable instanceof CombinerNode) {
+					Assert.assertEquals(visitable.getName(), expected, visitable.getLocalStrategy());
+					numChecked[0]++;
+				}
+				return true;
+			}
+			
+			@Override
+			public void postVisit(OptimizerNode visitable) {
+				// DO NOTHING
+			}
+		});
+		
+		Assert.assertEquals("Reducer and combiner must both be part of the plan", 2, numChecked[0]);
+	}
+	
+	// ------------------------------------------------------------------------
+	
+	/**
+	 * A combinable reducer that sums up the second field.
+	 */
+	@Combinable
+	public static final class CombinableReduce extends ReduceStub
+	{
+		private final PactInteger sum = new PactInteger();
+		
+		@Override
+		public void reduce(Iterator<PactRecord> records, Collector<PactRecord> out) throws Exception {
+			PactRecord record = records.next();
+			int s = record.getField(1, PactInteger.class).getValue();
+			while (records.hasNext()) {
+				s += records.next().getField(1, PactInteger.class).getValue();
+			}
+			this.sum.setValue(s);
+			record.setField(1, this.sum);
+			out.collect(record);
+		}
+		
+		@Override
+		public void combine(Iterator<PactRecord> records, Collector<PactRecord> out) throws Exception {
+			reduce(records, out);
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.hash;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import eu.stratosphere.nephele.services.iomanager.BlockChannelReader;
+import eu.stratosphere.nephele.services.iomanager.BlockChannelWriter;
+import eu.stratosphere.nephele.services.iomanager.Channel;
+import eu.stratosphere.nephele.services.iomanager.ChannelReaderInputView;
+import eu.stratosphere.nephele.services.iomanager.ChannelWriterOutputView;
+import eu.stratosphere.nephele.services.iomanager.IOManager;
+import eu.stratosphere.nephele.services.memorymanager.MemoryAllocationException;
+import eu.stratosphere.nephele.services.memorymanager.MemoryManager;
+import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
+import eu.stratosphere.nephele.template.AbstractInvokable;
+import eu.stratosphere.pact.common.generic.GenericReducer;
+import eu.stratosphere.pact.common.generic.types.TypeComparator;
+import eu.stratosphere.pact.common.generic.types.TypeSerializer;
+import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.runtime.io.ChannelReaderInputViewIterator;
+import eu.stratosphere.pact.runtime.sort.CombiningUnilateralSortMerger;
+import eu.stratosphere.pact.runtime.task.util.CloseableInputProvider;
+
+/**
+ * An input provider that groups its input with a {@link CombiningHashTable}. If the aggregates of all keys fit
+ * into memory, the iterator returns one aggregate per key, and the input is never sorted or written to disk.
+ * <p>
+ * Otherwise, the provider falls back to a combining sort: It spills the aggregates collected so far into a
+ * channel, releases the table's memory and hands the spilled aggregates, followed by the remaining input, to a
+ * {@link CombiningUnilateralSortMerger} that works with the same amount of memory. The two pages for writing and
+ * re-reading the spilled aggregates are reserved up front, so that the fallback never needs more memory than the
+ * provider was given.
+ *
+ * @param <T> The type of the records that are grouped.
+ */
+public class CombiningHashInputProvider<T> implements CloseableInputProvider<T>
+{
+	private static final Log LOG = LogFactory.getLog(CombiningHashInputProvider.class);
+
+	/**
+	 * The number of pages reserved for spilling the aggregates when the table runs full.
+	 */
+	private static final int NUM_SPILL_SEGMENTS = 2;
+
+	/**
+	 * The minimal number of pages the provider needs.
+	 */
+	public static final int MIN_NUM_SEGMENTS = CombiningHashTable.MIN_NUM_MEMORY_SEGMENTS + NUM_SPILL_SEGMENTS;
+
+	// ------------------------------------------------------------------------
+
+	private final GenericReducer<T, ?> combiner;
+
+	private final MemoryManager memoryManager;
+
+	private final IOManager ioManager;
+
+	private final MutableObjectIterator<T> input;
+
+	private final AbstractInvokable parentTask;
+
+	private final TypeSerializer<T> serializer;
+
+	private final TypeComparator<T> sortComparator;
+
+	private final List<MemorySegment> spillMemory;
+
+	private final long sortMemory;
+
+	private final int maxNumFileHandles;
+
+	private final float startSpillingFraction;
+
+	private final int numSortThreads;
+
+	private CombiningHashTable<T> table;
+
+	private Channel.ID spillChannel;
+
+	private ChannelReaderInputView spillReader;
+
+	private CombiningUnilateralSortMerger<T> sortMerger;
+
+	private MutableObjectIterator<T> iterator;
+
+	private boolean closed;
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Creates a new input provider that groups the given input with a combining hash table.
+	 *
+	 * @param combiner The stub whose <code>combine()</code> method merges records with the same key.
+	 * @param memoryManager The memory manager from which to allocate the memory.
+	 * @param ioManager The I/O manager used for spilling, if the aggregates do not fit into memory.
+	 * @param input The input to group.
+	 * @param parentTask The parent task, which owns all resources used by the provider.
+	 * @param serializer The serializer for the records.
+	 * @param comparator The comparator that establishes the grouping.
+	 * @param sortComparator The comparator for the fallback sort, which may additionally order the records of a group.
+	 * @param totalMemory The amount of memory for the provider, in bytes.
+	 * @param maxNumFileHandles The maximum number of files that the fallback sort opens at once.
+	 * @param startSpillingFraction The fraction of the sort memory at which the fallback sort starts spilling.
+	 * @param numSortThreads The number of threads with which the fallback sort sorts its buffers.
+	 * @throws MemoryAllocationException Thrown, if not enough memory can be obtained from the memory manager.
+	 */
+	public CombiningHashInputProvider(GenericReducer<T, ?> combiner, MemoryManager memoryManager, IOManager ioManager,
+			MutableObjectIterator<T> input, AbstractInvokable parentTask, TypeSerializer<T> serializer,
+			TypeComparator<T> comparator, TypeComparator<T> sortComparator, long totalMemory,
+			int maxNumFileHandles, float startSpillingFraction, int numSortThreads)
+	throws MemoryAllocationException
+	{
+		this.combiner = combiner;
+		this.memoryManager = memoryManager;
+		this.ioManager = ioManager;
+		this.input = input;
+		this.parentTask = parentTask;
+		this.serializer = serializer;
+		this.sortComparator = sortComparator;
+		this.maxNumFileHandles = maxNumFileHandles;
+		this.startSpillingFraction = startSpillingFraction;
+		this.numSortThreads = numSortThreads;
+
+		final int numPages = memoryManager.computeNumberOfPages(totalMemory);
+		if (numPages < MIN_NUM_SEGMENTS) {
+			throw new IllegalArgumentException("Too little memory provided to the hash aggregation. Required are at least " +
+				MIN_NUM_SEGMENTS + " pages. Current page size is " + memoryManager.getPageSize() + " bytes.");
+		}
+
+		this.spillMemory = memoryManager.allocatePages(parentTask, NUM_SPILL_SEGMENTS);
+		final List<MemorySegment> tableMemory;
+		try {
+			tableMemory = memoryManager.allocatePages(parentTask, numPages - NUM_SPILL_SEGMENTS);
+		}
+		catch (MemoryAllocationException maex) {
+			memoryManager.release(this.spillMemory);
+			throw maex;
+		}
+		this.sortMemory = ((long) tableMemory.size()) * memoryManager.getPageSize();
+		this.table = new CombiningHashTable<T>(serializer, comparator, combiner, tableMemory);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.task.util.CloseableInputProvider#getIterator()
+	 */
+	@Override
+	public MutableObjectIterator<T> getIterator() throws InterruptedException
+	{
+		if (this.iterator == null) {
+			if (this.closed) {
+				throw new IllegalStateException("The input provider has been closed.");
+			}
+			try {
+				this.iterator = aggregate();
+			}
+			catch (IOException ioex) {
+				throw new RuntimeException("Error obtaining the grouped input: " + ioex.getMessage(), ioex);
+			}
+			catch (MemoryAllocationException maex) {
+				throw new RuntimeException("Error obtaining the memory for the fallback sort: " + maex.getMessage(), maex);
+			}
+		}
+		return this.iterator;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+
+		try {
+			if (this.table != null) {
+				this.memoryManager.release(this.table.close());
+				this.table = null;
+			}
+			if (this.spillReader != null && !this.spillReader.isClosed()) {
+				this.spillReader.close();
+			}
+			if (this.sortMerger != null) {
+				this.sortMerger.close();
+			}
+		}
+		finally {
+			if (this.spillChannel != null) {
+				this.ioManager.deleteChannel(this.spillChannel);
+			}
+			this.memoryManager.release(this.spillMemory);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private MutableObjectIterator<T> aggregate() throws IOException, MemoryAllocationException, InterruptedException
+	{
+		final T record = this.serializer.createInstance();
+		while (this.input.next(record)) {
+			if (!this.table.insert(record)) {
+				return spillAndSort();
+			}
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Hash aggregation completed in memory with " + this.table.size() + " aggregates.");
+		}
+		return this.table.getEntryIterator();
+	}
+
+	private MutableObjectIterator<T> spillAndSort() throws IOException, MemoryAllocationException, InterruptedException
+	{
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Hash aggregation ran out of memory after " + this.table.size() +
+				" aggregates. Spilling the aggregates and falling back to a combining sort.");
+		}
+
+		// write out the aggregates collected so far
+		this.spillChannel = this.ioManager.createChannel();
+		final BlockChannelWriter writer = this.ioManager.createBlockChannelWriter(this.spillChannel);
+		final ChannelWriterOutputView out = new ChannelWriterOutputView(writer, this.spillMemory,
+																		this.memoryManager.getPageSize());
+		final MutableObjectIterator<T> aggregates = this.table.getEntryIterator();
+		final T record = this.serializer.createInstance();
+		while (aggregates.next(record)) {
+			this.serializer.serialize(record, out);
+		}
+		out.close();
+
+		this.memoryManager.release(this.table.close());
+		this.table = null;
+
+		// sort the spilled aggregates together with the remaining input
+		final BlockChannelReader reader = this.ioManager.createBlockChannelReader(this.spillChannel);
+		this.spillReader = new ChannelReaderInputView(reader, this.spillMemory, out.getBlockCount(), false);
+		final MutableObjectIterator<T> sortInput = new ConcatenatingIterator<T>(
+			new ChannelReaderInputViewIterator<T>(this.spillReader, null, this.serializer), this.input);
+
+		this.sortMerger = new CombiningUnilateralSortMerger<T>(this.combiner, this.memoryManager, this.ioManager,
+			sortInput, this.parentTask, this.serializer, this.sortComparator, this.sortMemory, -1,
+			this.maxNumFileHandles, this.startSpillingFraction, false, this.numSortThreads);
+		return this.sortMerger.getIterator();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Returns the records of the first iterator, followed by the records of the second iterator.
+	 */
+	private static final class ConcatenatingIterator<T> implements MutableObjectIterator<T>
+	{
+		private MutableObjectIterator<T> first;
+
+		private final MutableObjectIterator<T> second;
+
+		ConcatenatingIterator(MutableObjectIterator<T> first, MutableObjectIterator<T> second)
+		{
+			this.first = first;
+			this.second = second;
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.common.util.MutableObjectIterator#next(java.lang.Object)
+		 */
+		@Override
+		public boolean next(T target) throws IOException
+		{
+			if (this.first != null) {
+				if (this.first.next(target)) {
+					return true;
+				}
+				this.first = null;
+			}
+			return this.second.next(target);
+		}
+	}
+}
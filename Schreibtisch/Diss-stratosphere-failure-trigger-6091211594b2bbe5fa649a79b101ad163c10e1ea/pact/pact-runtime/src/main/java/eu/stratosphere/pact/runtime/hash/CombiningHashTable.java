@@ -0,0 +1,565 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.hash;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
+import eu.stratosphere.pact.common.generic.GenericReducer;
+import eu.stratosphere.pact.common.generic.types.TypeComparator;
+import eu.stratosphere.pact.common.generic.types.TypeSerializer;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.runtime.io.RandomAccessInputView;
+import eu.stratosphere.pact.runtime.io.RandomAccessOutputView;
+
+/**
+ * A hash table that groups records by key and keeps one aggregate per key, which it updates with the
+ * <code>combine()</code> method of a {@link GenericReducer} whenever a record with the same key is inserted.
+ * When the number of distinct keys is small compared to the number of records, this aggregates the input in a
+ * single pass, without sorting it.
+ * <p>
+ * The table divides its memory into bucket segments and record segments. The bucket segments hold one pointer
+ * per bucket to the first entry of the bucket's chain. The record segments form a linear address space to which
+ * the entries are appended. Each entry has the layout
+ * <pre>
+ * +------------------------+-----------+-------------+---------------------+
+ * | next entry (long)      | hash (int)| length (int)| serialized record   |
+ * +------------------------+-----------+-------------+---------------------+
+ * </pre>
+ * If the combined record is not longer than the aggregate it replaces, it is written over the old one. Otherwise
+ * it is appended and takes the old entry's place in the chain, leaving the old entry as garbage.
+ * <p>
+ * The table is full, once a record does not fit into the remaining record memory. The record is nevertheless
+ * accepted and kept outside the managed memory, and the caller is expected to emit or spill the table's
+ * contents before it inserts the next record.
+ * <p>
+ * The iterator returns all records with the same key consecutively, as long as the table did not run full.
+ *
+ * @param <T> The type of the records in the table.
+ */
+public class CombiningHashTable<T>
+{
+	/**
+	 * The minimal number of memory segments the table needs: one for the buckets and one for the records.
+	 */
+	public static final int MIN_NUM_MEMORY_SEGMENTS = 2;
+
+	/**
+	 * The fraction of the memory that is used for the bucket pointers.
+	 */
+	private static final int BUCKET_MEMORY_FRACTION = 8;
+
+	private static final int POINTER_LEN = 8;
+
+	private static final int ENTRY_HEADER_LEN = 16;
+
+	private static final int ENTRY_LENGTH_OFFSET = 12;
+
+	private static final long NO_ENTRY = -1L;
+
+	// ------------------------------------------------------------------------
+	//                               Members
+	// ------------------------------------------------------------------------
+
+	private final TypeSerializer<T> serializer;
+
+	private final TypeComparator<T> comparator;
+
+	private final GenericReducer<T, ?> combiner;
+
+	private final List<MemorySegment> memory;
+
+	private final MemorySegment[] buckets;
+
+	private final RandomAccessOutputView writeView;
+
+	private final RandomAccessInputView readView;
+
+	private final EntryCollector entryCollector;
+
+	private final PairIterator pair;
+
+	private final ArrayList<T> overflowRecords;
+
+	private final T reuse;
+
+	private final int numBuckets;
+
+	private final int bucketsPerSegmentBits;
+
+	private final int bucketsPerSegmentMask;
+
+	private final long recordCapacity;
+
+	private byte[] copyBuffer;
+
+	private long appendPosition;
+
+	private int numEntries;
+
+	private boolean full;
+
+	// ------------------------------------------------------------------------
+	//                         Constructors / Destructors
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Creates a new combining hash table that works with the given memory.
+	 *
+	 * @param serializer The serializer for the records.
+	 * @param comparator The comparator that hashes the records and compares their keys.
+	 * @param combiner The stub whose <code>combine()</code> method merges records with the same key.
+	 * @param memory The memory for the table. All segments must be of the same size, which must be a power of two.
+	 */
+	public CombiningHashTable(TypeSerializer<T> serializer, TypeComparator<T> comparator,
+			GenericReducer<T, ?> combiner, List<MemorySegment> memory)
+	{
+		if (serializer == null || comparator == null || combiner == null || memory == null) {
+			throw new NullPointerException();
+		}
+		if (memory.size() < MIN_NUM_MEMORY_SEGMENTS) {
+			throw new IllegalArgumentException("The combining hash table requires at least " +
+				MIN_NUM_MEMORY_SEGMENTS + " memory segments.");
+		}
+
+		this.serializer = serializer;
+		this.comparator = comparator;
+		this.combiner = combiner;
+		this.memory = memory;
+
+		final int segmentSize = memory.get(0).size();
+		if ((segmentSize & (segmentSize - 1)) != 0) {
+			throw new IllegalArgumentException("The memory segment size must be a power of two.");
+		}
+
+		// split the memory into bucket and record segments
+		final int numBucketSegments = Math.max(1, memory.size() / BUCKET_MEMORY_FRACTION);
+		this.buckets = new MemorySegment[numBucketSegments];
+		for (int i = 0; i < numBucketSegments; i++) {
+			this.buckets[i] = memory.get(i);
+		}
+		final int bucketsPerSegment = segmentSize / POINTER_LEN;
+		this.bucketsPerSegmentBits = Integer.numberOfTrailingZeros(bucketsPerSegment);
+		this.bucketsPerSegmentMask = bucketsPerSegment - 1;
+		this.numBuckets = numBucketSegments * bucketsPerSegment;
+
+		final ArrayList<MemorySegment> recordSegments = new ArrayList<MemorySegment>(memory.size() - numBucketSegments);
+		for (int i = numBucketSegments; i < memory.size(); i++) {
+			recordSegments.add(memory.get(i));
+		}
+		this.recordCapacity = ((long) recordSegments.size()) * segmentSize;
+		this.writeView = new RandomAccessOutputView(recordSegments.toArray(new MemorySegment[recordSegments.size()]), segmentSize);
+		this.readView = new RandomAccessInputView(recordSegments, segmentSize);
+
+		this.entryCollector = new EntryCollector();
+		this.pair = new PairIterator();
+		this.overflowRecords = new ArrayList<T>();
+		this.reuse = serializer.createInstance();
+		this.copyBuffer = new byte[64];
+
+		reset();
+	}
+
+	/**
+	 * Removes all records from the table. The table keeps its memory.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < this.buckets.length; i++) {
+			final MemorySegment seg = this.buckets[i];
+			for (int offset = 0; offset < seg.size(); offset += POINTER_LEN) {
+				seg.putLong(offset, NO_ENTRY);
+			}
+		}
+		this.appendPosition = 0;
+		this.numEntries = 0;
+		this.overflowRecords.clear();
+		this.full = false;
+	}
+
+	/**
+	 * Releases the table's memory. The table must not be used afterwards.
+	 *
+	 * @return The memory segments that were given to the table.
+	 */
+	public List<MemorySegment> close()
+	{
+		this.overflowRecords.clear();
+		return this.memory;
+	}
+
+	// ------------------------------------------------------------------------
+	//                                Accessors
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Checks whether the table ran out of memory. A full table must be emptied before records are inserted again.
+	 *
+	 * @return True, if the table is full, false otherwise.
+	 */
+	public boolean isFull()
+	{
+		return this.full;
+	}
+
+	/**
+	 * Checks whether the table contains no records.
+	 *
+	 * @return True, if the table is empty, false otherwise.
+	 */
+	public boolean isEmpty()
+	{
+		return this.numEntries == 0 && this.overflowRecords.isEmpty();
+	}
+
+	/**
+	 * Gets the number of records in the table, which is the number of distinct keys, unless the combiner emitted
+	 * more than one record for a key.
+	 *
+	 * @return The number of records in the table.
+	 */
+	public int size()
+	{
+		return this.numEntries + this.overflowRecords.size();
+	}
+
+	/**
+	 * Gets the number of bytes of record memory that the table has occupied, including the space that records
+	 * occupy which have been replaced by longer ones.
+	 *
+	 * @return The number of occupied record bytes.
+	 */
+	public long getOccupancy()
+	{
+		return this.appendPosition;
+	}
+
+	// ------------------------------------------------------------------------
+	//                          Inserting and Retrieving
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Inserts a record into the table. If the table holds a record with the same key, both records are combined
+	 * and the result replaces the held record. The record is always accepted, but the table may run full while
+	 * it is inserted.
+	 *
+	 * @param record The record to insert. The combiner may modify it.
+	 * @return True, if the table can accept more records, false if it is full and must be emptied before the next
+	 *         insertion.
+	 * @throws IOException Thrown, if the record could not be serialized, or if the combiner failed.
+	 */
+	public boolean insert(T record) throws IOException
+	{
+		if (this.full) {
+			throw new IllegalStateException("The table is full and must be emptied before inserting further records.");
+		}
+
+		final int hash = MutableHashTable.hash(this.comparator.hash(record), 0);
+		final int bucket = hash % this.numBuckets;
+		final MemorySegment bucketSegment = this.buckets[bucket >>> this.bucketsPerSegmentBits];
+		final int bucketOffset = (bucket & this.bucketsPerSegmentMask) * POINTER_LEN;
+
+		// search the bucket's chain for an entry with the same key
+		this.comparator.setReference(record);
+		long predecessor = NO_ENTRY;
+		long pointer = bucketSegment.getLong(bucketOffset);
+		while (pointer != NO_ENTRY) {
+			this.readView.setReadPosition(pointer);
+			final long next = this.readView.readLong();
+			final int entryHash = this.readView.readInt();
+			final int entryLength = this.readView.readInt();
+
+			if (entryHash == hash) {
+				this.serializer.deserialize(this.reuse, this.readView);
+				if (this.comparator.equalToReference(this.reuse)) {
+					combine(record, hash, pointer, entryLength, next, predecessor, bucketSegment, bucketOffset);
+					return !this.full;
+				}
+			}
+			predecessor = pointer;
+			pointer = next;
+		}
+
+		// new key, the entry goes to the front of the chain
+		final EntryCollector collector = this.entryCollector;
+		collector.start(hash);
+		collector.collect(record);
+		if (collector.count > 0) {
+			setNext(collector.first, bucketSegment.getLong(bucketOffset));
+			bucketSegment.putLong(bucketOffset, collector.first);
+			this.numEntries++;
+		}
+		return !this.full;
+	}
+
+	/**
+	 * Gets an iterator over all records in the table. The table must not be modified while the iterator is used.
+	 *
+	 * @return An iterator over the table's records.
+	 */
+	public MutableObjectIterator<T> getEntryIterator()
+	{
+		return new EntryIterator();
+	}
+
+	/**
+	 * Emits all records in the table to the given collector and empties the table afterwards.
+	 *
+	 * @param output The collector to emit the records to.
+	 * @throws IOException Thrown, if a record could not be deserialized.
+	 */
+	public void flush(Collector<T> output) throws IOException
+	{
+		final MutableObjectIterator<T> entries = getEntryIterator();
+		final T record = this.serializer.createInstance();
+		while (entries.next(record)) {
+			output.collect(record);
+		}
+		reset();
+	}
+
+	// ------------------------------------------------------------------------
+	//                                 Internals
+	// ------------------------------------------------------------------------
+
+	private void combine(T record, int hash, long pointer, int entryLength, long next, long predecessor,
+			MemorySegment bucketSegment, int bucketOffset)
+	throws IOException
+	{
+		final EntryCollector collector = this.entryCollector;
+		collector.start(hash);
+		this.pair.set(this.reuse, record);
+		try {
+			this.combiner.combine(this.pair, collector);
+		}
+		catch (Exception ex) {
+			throw new IOException("An error occurred in the combiner user code.", ex);
+		}
+
+		if (collector.count == 1 && collector.lastLength <= entryLength && !this.full) {
+			// the aggregate did not grow, overwrite the old one and give the appended space back
+			copyRecord(collector.first + ENTRY_HEADER_LEN, pointer + ENTRY_HEADER_LEN, collector.lastLength);
+			this.writeView.setWritePosition(pointer + ENTRY_LENGTH_OFFSET);
+			this.writeView.writeInt(collector.lastLength);
+			this.appendPosition = collector.first;
+			return;
+		}
+
+		// replace the old entry in the chain by the combiner's results
+		final long successor;
+		if (collector.count > 0) {
+			setNext(collector.last, next);
+			successor = collector.first;
+		} else {
+			successor = next;
+		}
+		if (predecessor == NO_ENTRY) {
+			bucketSegment.putLong(bucketOffset, successor);
+		} else {
+			setNext(predecessor, successor);
+		}
+		this.numEntries += collector.count - 1;
+	}
+
+	private void setNext(long entry, long next) throws IOException
+	{
+		this.writeView.setWritePosition(entry);
+		this.writeView.writeLong(next);
+	}
+
+	private void copyRecord(long from, long to, int length) throws IOException
+	{
+		if (this.copyBuffer.length < length) {
+			this.copyBuffer = new byte[Math.max(length, 2 * this.copyBuffer.length)];
+		}
+		this.readView.setReadPosition(from);
+		this.readView.readFully(this.copyBuffer, 0, length);
+		this.writeView.setWritePosition(to);
+		this.writeView.write(this.copyBuffer, 0, length);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Appends the records it collects as a chain of entries. Once the record memory is exhausted, the table is
+	 * marked as full and the collected records are kept on the heap.
+	 */
+	private final class EntryCollector implements Collector<T>
+	{
+		private int hash;
+
+		private long first;
+
+		private long last;
+
+		private int lastLength;
+
+		private int count;
+
+		void start(int hash)
+		{
+			this.hash = hash;
+			this.first = NO_ENTRY;
+			this.last = NO_ENTRY;
+			this.count = 0;
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.common.stubs.Collector#collect(java.lang.Object)
+		 */
+		@Override
+		public void collect(T record)
+		{
+			if (!full) {
+				final long position = appendPosition;
+				try {
+					if (position + ENTRY_HEADER_LEN < recordCapacity) {
+						writeView.setWritePosition(position + ENTRY_HEADER_LEN);
+						final int length = (int) serializer.serialize(record, writeView);
+
+						writeView.setWritePosition(position);
+						writeView.writeLong(NO_ENTRY);
+						writeView.writeInt(this.hash);
+						writeView.writeInt(length);
+
+						if (this.last == NO_ENTRY) {
+							this.first = position;
+						} else {
+							setNext(this.last, position);
+						}
+						this.last = position;
+						this.lastLength = length;
+						this.count++;
+						appendPosition = position + ENTRY_HEADER_LEN + length;
+						return;
+					}
+				}
+				catch (EOFException eofex) {
+					// the record did not fit into the remaining memory
+				}
+				catch (IOException ioex) {
+					throw new RuntimeException("The record could not be written to the hash table: " + ioex.getMessage(), ioex);
+				}
+				full = true;
+			}
+			overflowRecords.add(serializer.createCopy(record));
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.common.stubs.Collector#close()
+		 */
+		@Override
+		public void close()
+		{}
+	}
+
+	/**
+	 * Iterates over the held aggregate and the inserted record.
+	 */
+	private final class PairIterator implements Iterator<T>
+	{
+		private T first;
+
+		private T second;
+
+		private int position;
+
+		void set(T first, T second)
+		{
+			this.first = first;
+			this.second = second;
+			this.position = 0;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext()
+		{
+			return this.position < 2;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public T next()
+		{
+			switch (this.position++) {
+			case 0:
+				return this.first;
+			case 1:
+				return this.second;
+			default:
+				this.position = 2;
+				throw new NoSuchElementException();
+			}
+		}
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#remove()
+		 */
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Iterates over the chains of all buckets and then over the records that were kept on the heap.
+	 */
+	private final class EntryIterator implements MutableObjectIterator<T>
+	{
+		private int bucket;
+
+		private long pointer = NO_ENTRY;
+
+		private int overflowIndex;
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.common.util.MutableObjectIterator#next(java.lang.Object)
+		 */
+		@Override
+		public boolean next(T target) throws IOException
+		{
+			while (this.pointer == NO_ENTRY) {
+				if (this.bucket < numBuckets) {
+					final int b = this.bucket++;
+					this.pointer = buckets[b >>> bucketsPerSegmentBits].getLong((b & bucketsPerSegmentMask) * POINTER_LEN);
+				} else if (this.overflowIndex < overflowRecords.size()) {
+					serializer.copyTo(overflowRecords.get(this.overflowIndex++), target);
+					return true;
+				} else {
+					return false;
+				}
+			}
+
+			readView.setReadPosition(this.pointer);
+			this.pointer = readView.readLong();
+			readView.skipBytesToRead(ENTRY_HEADER_LEN - POINTER_LEN);
+			serializer.deserialize(target, readView);
+			return true;
+		}
+	}
+}
@@ -51,6 +51,11 @@ import eu.stratosphere.pact.runtime.util.MathUtils;
  * "Hash joins and hash teams in Microsoft SQL Server", by Goetz Graefe et al. In its current state, the
  * implementation lacks features like dynamic role reversal, partition tuning, or histogram guided partitioning. 
  *<p>
+ * When a partition is spilled, its buckets no longer need to reference records. Each of them is turned into a
+ * small bloom filter over the hash codes of the build side records that fall into the bucket. Probe side records
+ * that hash to a spilled bucket are only written to the partition's probe side file if the filter may contain
+ * their hash code. All other probe records cannot have a join partner and are dropped right away.
+ *<p>
  *
  *
  * <hr>
@@ -82,6 +87,16 @@ import eu.stratosphere.pact.runtime.util.MathUtils;
  * |
  * </pre>
  * 
+ * The buckets of a spilled partition have the following layout:
+ * 
+ * <pre>
+ * +----------------------------- Bucket x ----------------------------
+ * |Partition (1 byte) | Status (1 byte) | unused (14 bytes) |
+ * |
+ * |bloom filter bits (112 bytes)
+ * +-------------------------------------------------------------------
+ * </pre>
+ * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  * 
  * @param <BT> The type of records from the build side that are stored in the hash table.
@@ -186,13 +201,29 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 	 */
 	private static final long BUCKET_FORWARD_POINTER_NOT_SET = ~0x0L;
 	
-//	private static final byte BUCKET_STATUS_SPILLED = 1;
+	/**
+	 * Constant for the bucket status, indicating that the bucket's partition is spilled and that the
+	 * bucket holds a bloom filter.
+	 */
+	private static final byte BUCKET_STATUS_SPILLED = 1;
 	
 	/**
 	 * Constant for the bucket status, indicating that the bucket is in memory.
 	 */
 	private static final byte BUCKET_STATUS_IN_MEMORY = 0;
 	
+	// ------------------------------ Bloom Filters in Spilled Buckets ------------------------------
+	
+	/**
+	 * The number of bits in the bloom filter of a spilled bucket.
+	 */
+	private static final int BLOOM_FILTER_BITS = (HASH_BUCKET_SIZE - BUCKET_HEADER_LENGTH) * 8;
+	
+	/**
+	 * The number of bits that are set in the bloom filter for each hash code.
+	 */
+	private static final int BLOOM_FILTER_NUM_PROBES = 4;
+	
 	// ------------------------------------------------------------------------
 	//                              Members
 	// ------------------------------------------------------------------------
@@ -332,6 +363,17 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 	 */
 	private int currentRecursionDepth;
 	
+	/**
+	 * The number of probe side records that were not spilled, because the bloom filter of their bucket showed
+	 * that they have no join partner.
+	 */
+	private long numProbeRecordsFiltered;
+	
+	/**
+	 * Scratch space for the hash codes of a bucket that is turned into a bloom filter.
+	 */
+	private int[] bloomFilterHashCodes = new int[NUM_ENTRIES_PER_BUCKET];
+	
 	/**
 	 * Flag indicating that the closing logic has been invoked.
 	 */
@@ -429,6 +471,7 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 		
 		// open builds the initial table by consuming the build-side input
 		this.currentRecursionDepth = 0;
+		this.numProbeRecordsFiltered = 0;
 		buildInitialTable(buildSide);
 		
 		// the first prober is the probe-side input
@@ -469,9 +512,12 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 				this.bucketIterator.set(bucket, p.overflowSegments, p, hash, bucketInSegmentOffset);
 				return true;
 			}
-			else {
+			else if (bloomFilterMayContain(bucket, bucketInSegmentOffset, hash)) {
 				p.insertIntoProbeBuffer(next);
 			}
+			else {
+				this.numProbeRecordsFiltered++;
+			}
 		}
 		
 		// -------------- partition done ---------------
@@ -635,6 +681,11 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 			p.clearAllMemory(this.availableMemory);
 		}
 		
+		if (LOG.isDebugEnabled() && this.numProbeRecordsFiltered > 0) {
+			LOG.debug("Bloom filters kept " + this.numProbeRecordsFiltered + 
+				" probe side records without join partners from being spilled.");
+		}
+		
 		// return the write-behind buffers
 		for (int i = 0; i < this.numWriteBehindBuffers + this.writeBehindBuffersAvailable; i++) {
 			try {
@@ -837,6 +888,9 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 		if (pointer != -1) {
 			// record was inserted into an in-memory partition. a pointer must be inserted into the buckets
 			insertBucketEntry(p, bucket, bucketInSegmentPos, hashCode, pointer);
+		} else {
+			// the partition is spilled, the bucket only needs to know the hash code for its bloom filter
+			addToBloomFilter(bucket, bucketInSegmentPos, hashCode);
 		}
 	}
 	
@@ -908,7 +962,9 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 					// no memory available to create overflow bucket. we need to spill a partition
 					final int spilledPart = spillPartition();
 					if (spilledPart == p.getPartitionNumber()) {
-						// this bucket is no longer in-memory
+						// this bucket is no longer in-memory. the record went to disk with the partition, 
+						// but its hash code is not yet part of the bucket's bloom filter
+						addToBloomFilter(bucket, bucketInSegmentPos, hashCode);
 						return;
 					}
 					overflowSeg = getNextBuffer();
@@ -1078,6 +1134,9 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 		}
 		final HashPartition<BT, PT> p = partitions.get(largestPartNum);
 		
+		// turn the partition's buckets into bloom filters, while the overflow buckets are still intact
+		buildBloomFiltersForPartition(p, (byte) partitions.size());
+		
 		// spill the partition
 		int numBuffersFreed = p.spillPartition(this.availableMemory, this.ioManager, 
 										this.currentEnumerator.next(), this.writeBehindBuffers);
@@ -1093,6 +1152,120 @@ public class MutableHashTable<BT, PT> implements MemorySegmentSource
 		return largestPartNum;
 	}
 	
+	// --------------------------------------------------------------------------------------------
+	//                                 Bloom Filters for Spilled Buckets
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Turns all buckets of the given partition into bloom filters over the hash codes that the buckets
+	 * and their overflow buckets contain. Must be called before the partition releases its overflow segments.
+	 * 
+	 * @param p The partition that is about to be spilled.
+	 * @param numPartitions The number of partitions in the current table.
+	 */
+	private final void buildBloomFiltersForPartition(final HashPartition<BT, PT> p, final byte numPartitions)
+	{
+		// the buckets are assigned to the partitions round robin
+		for (int bucketNum = p.getPartitionNumber(); bucketNum < this.numBuckets; bucketNum += numPartitions) {
+			final MemorySegment bucket = this.buckets[bucketNum >> this.bucketsPerSegmentBits];
+			final int bucketInSegmentPos = (bucketNum & this.bucketsPerSegmentMask) << NUM_INTRA_BUCKET_BITS;
+			
+			// collect the hash codes from the bucket and its overflow chain
+			int numHashCodes = collectHashCodes(bucket, bucketInSegmentPos, 0);
+			long forwardPointer = bucket.getLong(bucketInSegmentPos + HEADER_FORWARD_OFFSET);
+			while (forwardPointer != BUCKET_FORWARD_POINTER_NOT_SET) {
+				final MemorySegment overflowSeg = p.overflowSegments[(int) (forwardPointer >>> 32)];
+				final int overflowPos = (int) (forwardPointer & 0xffffffff);
+				numHashCodes = collectHashCodes(overflowSeg, overflowPos, numHashCodes);
+				forwardPointer = overflowSeg.getLong(overflowPos + HEADER_FORWARD_OFFSET);
+			}
+			
+			// clear the bucket contents and set the filter bits
+			bucket.put(bucketInSegmentPos + HEADER_STATUS_OFFSET, BUCKET_STATUS_SPILLED);
+			for (int pos = HEADER_COUNT_OFFSET; pos < HASH_BUCKET_SIZE; pos += 2) {
+				bucket.putShort(bucketInSegmentPos + pos, (short) 0);
+			}
+			
+			final int[] hashCodes = this.bloomFilterHashCodes;
+			for (int i = 0; i < numHashCodes; i++) {
+				addToBloomFilter(bucket, bucketInSegmentPos, hashCodes[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Copies the hash codes of a single bucket into the scratch array, starting at the given position.
+	 * 
+	 * @return The number of hash codes in the scratch array.
+	 */
+	private final int collectHashCodes(final MemorySegment seg, final int bucketPos, int num)
+	{
+		final int count = seg.getShort(bucketPos + HEADER_COUNT_OFFSET);
+		if (num + count > this.bloomFilterHashCodes.length) {
+			final int[] larger = new int[Math.max(num + count, this.bloomFilterHashCodes.length * 2)];
+			System.arraycopy(this.bloomFilterHashCodes, 0, larger, 0, num);
+			this.bloomFilterHashCodes = larger;
+		}
+		
+		final int[] hashCodes = this.bloomFilterHashCodes;
+		for (int i = 0; i < count; i++) {
+			hashCodes[num++] = seg.getInt(bucketPos + BUCKET_HEADER_LENGTH + (i * HASH_CODE_LEN));
+		}
+		return num;
+	}
+	
+	/**
+	 * Adds the given hash code to the bloom filter of a spilled bucket.
+	 */
+	private static final void addToBloomFilter(final MemorySegment bucket, final int bucketInSegmentPos, 
+			final int hashCode)
+	{
+		final int filterStart = bucketInSegmentPos + BUCKET_HEADER_LENGTH;
+		final int h = bloomFilterHash(hashCode);
+		final int h1 = h & 0xffff;
+		final int h2 = (h >>> 16) | 1;
+		
+		for (int i = 0; i < BLOOM_FILTER_NUM_PROBES; i++) {
+			final int bit = (h1 + i * h2) % BLOOM_FILTER_BITS;
+			final int pos = filterStart + (bit >>> 3);
+			bucket.put(pos, (byte) (bucket.get(pos) | (1 << (bit & 7))));
+		}
+	}
+	
+	/**
+	 * Checks whether the bloom filter of a spilled bucket may contain the given hash code.
+	 * 
+	 * @return False, if the hash code was definitely not added to the bucket, true otherwise.
+	 */
+	private static final boolean bloomFilterMayContain(final MemorySegment bucket, final int bucketInSegmentPos, 
+			final int hashCode)
+	{
+		final int filterStart = bucketInSegmentPos + BUCKET_HEADER_LENGTH;
+		final int h = bloomFilterHash(hashCode);
+		final int h1 = h & 0xffff;
+		final int h2 = (h >>> 16) | 1;
+		
+		for (int i = 0; i < BLOOM_FILTER_NUM_PROBES; i++) {
+			final int bit = (h1 + i * h2) % BLOOM_FILTER_BITS;
+			if ((bucket.get(filterStart + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Scrambles the bucket hash code once more. All hash codes in a bucket share their remainder modulo the
+	 * number of buckets, so the filter bits are derived from a differently mixed value.
+	 */
+	private static final int bloomFilterHash(int code)
+	{
+		code *= 0xcc9e2d51;
+		code = (code << 15) | (code >>> 17);
+		code *= 0x1b873593;
+		return code ^ (code >>> 16);
+	}
+	
 	/**
 	 * This method makes sure that at least a certain number of memory segments is in the list of free segments.
 	 * Free memory can be in the list of free segments, or in the return-queue where segments used to write behind are
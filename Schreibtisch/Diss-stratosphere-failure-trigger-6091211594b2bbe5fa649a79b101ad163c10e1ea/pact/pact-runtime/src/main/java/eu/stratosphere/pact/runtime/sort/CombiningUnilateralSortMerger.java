@@ -146,9 +146,44 @@ public class CombiningUnilateralSortMerger<E> extends UnilateralSortMerger<E>
 			long totalMemory, int numSortBuffers, int maxNumFileHandles, 
 			float startSpillingFraction, boolean combineLastMerge)
 	throws IOException, MemoryAllocationException
+	{
+		this(combineStub, memoryManager, ioManager, input, parentTask, serializer, comparator,
+			totalMemory, numSortBuffers, maxNumFileHandles, startSpillingFraction, combineLastMerge, 1);
+	}
+	
+	/**
+	 * Creates a new sorter that reads the data from a given reader and provides an iterator returning that
+	 * data in a sorted manner. The memory is divided among sort buffers, write buffers and read buffers
+	 * automatically. The buffers are sorted by the given number of sort threads.
+	 * 
+	 * @param combineStub The stub used to combine values with the same key.
+	 * @param memoryManager The memory manager from which to allocate the memory.
+	 * @param ioManager The I/O manager, which is used to write temporary files to disk.
+	 * @param input The input that is sorted by this sorter.
+	 * @param parentTask The parent task, which owns all resources used by this sorter.
+	 * @param serializer The type serializer.
+	 * @param comparator The type comparator establishing the order relation.
+	 * @param totalMemory The total amount of memory dedicated to sorting, merging and I/O.
+	 * @param numSortBuffers The number of distinct buffers to use creation of the initial runs.
+	 * @param maxNumFileHandles The maximum number of files to be merged at once.
+	 * @param startSpillingFraction The faction of the buffers that have to be filled before the spilling thread
+	 *                              actually begins spilling data to disk.
+	 * @param combineLastMerge A flag indicating whether the last merge step applies the combiner as well.
+	 * @param numSortThreads The number of threads that sort the buffers.
+	 * 
+	 * @throws IOException Thrown, if an error occurs initializing the resources for external sorting.
+	 * @throws MemoryAllocationException Thrown, if not enough memory can be obtained from the memory manager to
+	 *                                   perform the sort.
+	 */
+	public CombiningUnilateralSortMerger(GenericReducer<E, ?> combineStub, MemoryManager memoryManager, IOManager ioManager,
+			MutableObjectIterator<E> input, AbstractInvokable parentTask, 
+			TypeSerializer<E> serializer, TypeComparator<E> comparator,
+			long totalMemory, int numSortBuffers, int maxNumFileHandles, 
+			float startSpillingFraction, boolean combineLastMerge, int numSortThreads)
+	throws IOException, MemoryAllocationException
 	{
 		super(memoryManager, ioManager, input, parentTask, serializer, comparator,
-			totalMemory, numSortBuffers, maxNumFileHandles, startSpillingFraction, false);
+			totalMemory, numSortBuffers, maxNumFileHandles, startSpillingFraction, false, numSortThreads);
 		
 		this.combineStub = combineStub;
 		this.combineLastMerge = combineLastMerge;
@@ -308,7 +343,7 @@ public class CombiningUnilateralSortMerger<E> extends UnilateralSortMerger<E>
 																channel, this.numWriteBuffersToCluster);
 				registerOpenChannelToBeRemovedAtShudown(writer);
 				final ChannelWriterOutputView output = new ChannelWriterOutputView(writer, this.writeMemory,
-																			this.memManager.getPageSize());
+																			this.memManager.getPageSize(), createCompressionCodec());
 
 				// write sort-buffer to channel
 				if (LOG.isDebugEnabled())
@@ -377,8 +412,8 @@ public class CombiningUnilateralSortMerger<E> extends UnilateralSortMerger<E>
 
 			// ------------------- Merging Phase ------------------------
 
-			// merge channels until sufficient file handles are available
-			while (isRunning() && channelIDs.size() > this.maxNumFileHandles) {
+			// merge channels until the final merge can read all remaining channels at once
+			while (isRunning() && channelIDs.size() > getMergeFanIn(this.sortReadMemory.size())) {
 				channelIDs = mergeChannelList(channelIDs, this.sortReadMemory, this.writeMemory);
 			}
 			
@@ -422,6 +457,16 @@ public class CombiningUnilateralSortMerger<E> extends UnilateralSortMerger<E>
 		
 		// ------------------ Combining & Merging Methods -----------------
 
+		/**
+		 * Always merges sequentially, because the combiner stub is not required to be thread-safe.
+		 * 
+		 * @see eu.stratosphere.pact.runtime.sort.UnilateralSortMerger.SpillingThread#getNumParallelMerges(int, int, int)
+		 */
+		@Override
+		protected int getNumParallelMerges(int numRuns, int numReadBuffers, int numWriteBuffers) {
+			return 1;
+		}
+
 		/**
 		 * Merges the sorted runs described by the given Channel IDs into a single sorted run. The merging process
 		 * uses the given read and write buffers. During the merging process, the combiner is used to reduce the
@@ -444,14 +489,14 @@ public class CombiningUnilateralSortMerger<E> extends UnilateralSortMerger<E>
 			final MergeIterator<E> mergeIterator = getMergingIterator(channelIDs, readBuffers, channelAccesses);
 			final KeyGroupedIterator<E> groupedIter = new KeyGroupedIterator<E>(mergeIterator, this.serializer, this.comparator2);
 
-			// create a new channel writer
-			final Channel.ID mergedChannelID = this.ioManager.createChannel();
+			// create a new channel writer. merged runs are large, so they are striped across the temp directories
+			final Channel.ID mergedChannelID = this.ioManager.createStripedChannel();
 			registerChannelToBeRemovedAtShudown(mergedChannelID);
 			final BlockChannelWriter writer = this.ioManager.createBlockChannelWriter(
 															mergedChannelID, this.numWriteBuffersToCluster);
 			registerOpenChannelToBeRemovedAtShudown(writer);
 			final ChannelWriterOutputView output = new ChannelWriterOutputView(writer, writeBuffers, 
-																			this.memManager.getPageSize());
+																			this.memManager.getPageSize(), createCompressionCodec());
 			
 			final WriterCollector<E> collector = new WriterCollector<E>(output, this.serializer);
 			final GenericReducer<E, ?> combineStub = CombiningUnilateralSortMerger.this.combineStub;
@@ -0,0 +1,49 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.sort;
+
+/**
+ * An {@link IndexedSortable} whose elements carry a fixed-length normalized key, which gives access to the
+ * individual key bytes. This allows distribution based sort algorithms like the {@link RadixSort}.
+ */
+public interface NormalizedKeySortable extends IndexedSortable {
+
+	/**
+	 * Checks whether the normalized key fully determines the order of the elements. If that is the case,
+	 * two elements compare equal exactly if all their normalized key bytes are equal.
+	 * 
+	 * @return True, if the normalized key fully determines the order, false otherwise.
+	 */
+	boolean isNormalizedKeyFullyDetermining();
+
+	/**
+	 * Gets the number of bytes in the normalized key of each element.
+	 * 
+	 * @return The length of the normalized key.
+	 */
+	int getNormalizedKeyLength();
+
+	/**
+	 * Gets a byte of the normalized key of the element at the given address, as an unsigned value in the
+	 * range <code>[0, 255]</code>. A smaller value always sorts before a larger value, i.e. if the key is
+	 * ordered descending, the value is already inverted.
+	 * 
+	 * @param i The address of the element.
+	 * @param keyByte The position of the byte in the normalized key.
+	 * @return The unsigned key byte, in sort order.
+	 */
+	int getNormalizedKeyByte(int i, int keyByte);
+}
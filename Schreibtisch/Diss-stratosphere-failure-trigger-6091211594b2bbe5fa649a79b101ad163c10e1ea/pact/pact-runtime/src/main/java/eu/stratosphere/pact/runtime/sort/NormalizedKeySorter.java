@@ -33,7 +33,7 @@ import eu.stratosphere.pact.runtime.io.SimpleCollectingOutputView;
  * 
  * @author Stephan Ewen
  */
-public final class NormalizedKeySorter<T> implements IndexedSortable
+public final class NormalizedKeySorter<T> implements NormalizedKeySortable
 {
 	
 	private static final int OFFSET_LEN = 8;
@@ -264,7 +264,12 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 		
 		// add the pointer and the normalized key
 		this.currentSortIndexSegment.putLong(this.currentSortIndexOffset, this.currentDataBufferOffset);
-		this.comparator.putNormalizedKey(record, this.currentSortIndexSegment.getBackingArray(), this.currentSortIndexSegment.translateOffset(this.currentSortIndexOffset + OFFSET_LEN), this.numKeyBytes);
+		if (this.currentSortIndexSegment.isOffHeap()) {
+			this.comparator.putNormalizedKey(record, this.swapBuffer, 0, this.numKeyBytes);
+			this.currentSortIndexSegment.put(this.currentSortIndexOffset + OFFSET_LEN, this.swapBuffer, 0, this.numKeyBytes);
+		} else {
+			this.comparator.putNormalizedKey(record, this.currentSortIndexSegment.getBackingArray(), this.currentSortIndexSegment.translateOffset(this.currentSortIndexOffset + OFFSET_LEN), this.numKeyBytes);
+		}
 		
 		// serialize the record into the data buffers
 		try {
@@ -300,13 +305,14 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 		this.serializer.deserialize(target, this.recordBuffer);
 	}
 	
-	private final int compareRecords(long pointer1, long pointer2)
+	private final int compareRecords(long pointer1, long pointer2, TypeComparator<T> comparator,
+			RandomAccessInputView buffer1, RandomAccessInputView buffer2)
 	{
-		this.recordBuffer.setReadPosition(pointer1);
-		this.recordBufferForComparison.setReadPosition(pointer2);
+		buffer1.setReadPosition(pointer1);
+		buffer2.setReadPosition(pointer2);
 		
 		try {
-			return this.comparator.compare(this.recordBuffer, this.recordBufferForComparison);
+			return comparator.compare(buffer1, buffer2);
 		} catch (IOException ioex) {
 			throw new RuntimeException("Error comparing two records.", ioex);
 		}
@@ -328,6 +334,12 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 	 * @see eu.stratosphere.pact.runtime.sort.IndexedSortable#compare(int, int)
 	 */
 	public int compare(int i, int j)
+	{
+		return compareIndexEntries(i, j, this.comparator, this.recordBuffer, this.recordBufferForComparison);
+	}
+	
+	private final int compareIndexEntries(int i, int j, TypeComparator<T> comparator,
+			RandomAccessInputView buffer1, RandomAccessInputView buffer2)
 	{
 		final int bufferNumI = i / this.indexEntriesPerSegment;
 		final int segmentOffsetI = (i % this.indexEntriesPerSegment) * this.indexEntrySize;
@@ -337,12 +349,8 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 		
 		final MemorySegment segI = this.sortIndex.get(bufferNumI);
 		final MemorySegment segJ = this.sortIndex.get(bufferNumJ);
-		final byte[] bI = segI.getBackingArray();
-		final byte[] bJ = segJ.getBackingArray();
 		
-		int val = 0;
-		for (int pos = 0, posI = segI.translateOffset(segmentOffsetI + OFFSET_LEN), posJ = segJ.translateOffset(segmentOffsetJ + OFFSET_LEN);
-			pos < this.numKeyBytes && (val = (bI[posI] & 0xff) - (bJ[posJ] & 0xff)) == 0; pos++, posI++, posJ++);
+		final int val = segI.compare(segJ, segmentOffsetI + OFFSET_LEN, segmentOffsetJ + OFFSET_LEN, this.numKeyBytes);
 		
 		if (val != 0 || this.normalizedKeyFullyDetermines) {
 			return this.useNormKeyUninverted ? val : -val;
@@ -351,7 +359,7 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 		final long pointerI = segI.getLong(segmentOffsetI);
 		final long pointerJ = segJ.getLong(segmentOffsetJ);
 		
-		return compareRecords(pointerI, pointerJ);
+		return compareRecords(pointerI, pointerJ, comparator, buffer1, buffer2);
 	}
 
 	/* (non-Javadoc)
@@ -359,6 +367,11 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 	 */
 	@Override
 	public void swap(int i, int j)
+	{
+		swapIndexEntries(i, j, this.swapBuffer);
+	}
+	
+	private final void swapIndexEntries(int i, int j, byte[] swapBuffer)
 	{
 		final int bufferNumI = i / this.indexEntriesPerSegment;
 		final int segmentOffsetI = (i % this.indexEntriesPerSegment) * this.indexEntrySize;
@@ -369,9 +382,7 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 		final MemorySegment segI = this.sortIndex.get(bufferNumI);
 		final MemorySegment segJ = this.sortIndex.get(bufferNumJ);
 		
-		segI.get(segmentOffsetI, this.swapBuffer, 0, this.indexEntrySize);
-		System.arraycopy(segJ.getBackingArray(), segJ.translateOffset(segmentOffsetJ), segI.getBackingArray(), segI.translateOffset(segmentOffsetI), this.indexEntrySize);
-		segJ.put(segmentOffsetJ, this.swapBuffer, 0, this.indexEntrySize);
+		segI.swapBytes(swapBuffer, segJ, segmentOffsetI, segmentOffsetJ, this.indexEntrySize);
 	}
 
 	/* (non-Javadoc)
@@ -382,6 +393,113 @@ public final class NormalizedKeySorter<T> implements IndexedSortable
 	{
 		return this.numRecords;
 	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.sort.NormalizedKeySortable#isNormalizedKeyFullyDetermining()
+	 */
+	@Override
+	public boolean isNormalizedKeyFullyDetermining()
+	{
+		return this.normalizedKeyFullyDetermines && this.numKeyBytes > 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.sort.NormalizedKeySortable#getNormalizedKeyLength()
+	 */
+	@Override
+	public int getNormalizedKeyLength()
+	{
+		return this.numKeyBytes;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.sort.NormalizedKeySortable#getNormalizedKeyByte(int, int)
+	 */
+	@Override
+	public int getNormalizedKeyByte(int i, int keyByte)
+	{
+		final int bufferNum = i / this.indexEntriesPerSegment;
+		final int segmentOffset = (i % this.indexEntriesPerSegment) * this.indexEntrySize;
+		
+		final int val = this.sortIndex.get(bufferNum).get(segmentOffset + OFFSET_LEN + keyByte) & 0xff;
+		return this.useNormKeyUninverted ? val : 255 - val;
+	}
+	
+	/**
+	 * Creates a view on the index of this buffer that can be sorted concurrently with other views, as long
+	 * as the ranges of logical positions that the views touch are disjoint. Each view uses its own comparator
+	 * instance, its own record views and its own swap space, while sharing the sort index and the record data.
+	 * <p>
+	 * The buffer must not be written to while views on it are in use.
+	 * 
+	 * @return A sortable view on this buffer, to be used by a single thread.
+	 */
+	public NormalizedKeySortable createConcurrentSortView()
+	{
+		return new ConcurrentSortView();
+	}
+	
+	/**
+	 * A sortable view on the index of the enclosing buffer, with its own comparison state.
+	 */
+	private final class ConcurrentSortView implements NormalizedKeySortable
+	{
+		private final TypeComparator<T> viewComparator = comparator.duplicate();
+		
+		private final RandomAccessInputView viewBuffer1 = new RandomAccessInputView(recordBufferSegments, segmentSize);
+		
+		private final RandomAccessInputView viewBuffer2 = new RandomAccessInputView(recordBufferSegments, segmentSize);
+		
+		private final byte[] viewSwapBuffer = new byte[indexEntrySize];
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.runtime.sort.IndexedSortable#compare(int, int)
+		 */
+		@Override
+		public int compare(int i, int j) {
+			return compareIndexEntries(i, j, this.viewComparator, this.viewBuffer1, this.viewBuffer2);
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.runtime.sort.IndexedSortable#swap(int, int)
+		 */
+		@Override
+		public void swap(int i, int j) {
+			swapIndexEntries(i, j, this.viewSwapBuffer);
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.runtime.sort.IndexedSortable#size()
+		 */
+		@Override
+		public int size() {
+			return numRecords;
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.runtime.sort.NormalizedKeySortable#isNormalizedKeyFullyDetermining()
+		 */
+		@Override
+		public boolean isNormalizedKeyFullyDetermining() {
+			return NormalizedKeySorter.this.isNormalizedKeyFullyDetermining();
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.runtime.sort.NormalizedKeySortable#getNormalizedKeyLength()
+		 */
+		@Override
+		public int getNormalizedKeyLength() {
+			return numKeyBytes;
+		}
+
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.runtime.sort.NormalizedKeySortable#getNormalizedKeyByte(int, int)
+		 */
+		@Override
+		public int getNormalizedKeyByte(int i, int keyByte) {
+			return NormalizedKeySorter.this.getNormalizedKeyByte(i, keyByte);
+		}
+	}
 
 	// -------------------------------------------------------------------------
 	
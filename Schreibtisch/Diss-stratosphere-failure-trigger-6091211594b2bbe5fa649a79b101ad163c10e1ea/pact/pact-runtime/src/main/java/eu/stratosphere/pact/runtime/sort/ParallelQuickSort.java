@@ -0,0 +1,325 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.sort;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A quicksort that sorts the index of a {@link NormalizedKeySorter} with several threads. The top levels of the
+ * recursion partition the index in place, handing one side of each partition to the executor. Once a range is
+ * small enough, or the range has been split often enough to occupy all threads, it is sorted sequentially with
+ * a {@link RadixSort}, if the normalized keys fully determine the order, or a {@link QuickSort}. Because the ranges
+ * are disjoint and every task works on its own {@link NormalizedKeySorter#createConcurrentSortView() view} of the
+ * buffer, no additional memory is needed.
+ * <p>
+ * The tasks never block on each other, so the executor may be a bounded thread pool that is shared between the
+ * sorts of several buffers.
+ */
+public final class ParallelQuickSort implements IndexedSorter
+{
+	/**
+	 * The default minimal number of entries in a range that is split further.
+	 */
+	public static final int DEFAULT_MIN_SPLIT_SIZE = 16 * 1024;
+
+	private final QuickSort sequentialSorter = new QuickSort();
+	
+	private final RadixSort radixSorter = new RadixSort();
+
+	private final Executor executor;
+
+	private final int maxSplitDepth;
+
+	private final int minSplitSize;
+
+	/**
+	 * Creates a new parallel quicksort that runs its tasks in the given executor.
+	 *
+	 * @param executor The executor that runs the sort tasks.
+	 * @param parallelism The number of threads of the executor.
+	 */
+	public ParallelQuickSort(Executor executor, int parallelism)
+	{
+		this(executor, parallelism, DEFAULT_MIN_SPLIT_SIZE);
+	}
+
+	/**
+	 * Creates a new parallel quicksort that runs its tasks in the given executor.
+	 *
+	 * @param executor The executor that runs the sort tasks.
+	 * @param parallelism The number of threads of the executor.
+	 * @param minSplitSize The minimal number of entries in a range that is split further.
+	 */
+	public ParallelQuickSort(Executor executor, int parallelism, int minSplitSize)
+	{
+		if (executor == null) {
+			throw new NullPointerException();
+		}
+		if (parallelism < 1 || minSplitSize < 2) {
+			throw new IllegalArgumentException();
+		}
+
+		this.executor = executor;
+		this.minSplitSize = minSplitSize;
+		// split until there are about twice as many ranges as threads, to balance uneven partitions
+		this.maxSplitDepth = 33 - Integer.numberOfLeadingZeros(parallelism - 1);
+	}
+
+	// --------------------------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.sort.IndexedSorter#sort(IndexedSortable, int, int)
+	 */
+	@Override
+	public void sort(IndexedSortable s, int l, int r)
+	{
+		if (!(s instanceof NormalizedKeySorter<?>) || r - l < this.minSplitSize) {
+			this.sequentialSorter.sort(s, l, r);
+			return;
+		}
+
+		final Object lock = new Object();
+		final Throwable[] result = new Throwable[1];
+		final boolean[] done = new boolean[1];
+
+		sort((NormalizedKeySorter<?>) s, l, r, new CompletionHandler() {
+			@Override
+			public void sortCompleted(Throwable error) {
+				synchronized (lock) {
+					result[0] = error;
+					done[0] = true;
+					lock.notifyAll();
+				}
+			}
+		});
+
+		synchronized (lock) {
+			while (!done[0]) {
+				try {
+					lock.wait();
+				}
+				catch (InterruptedException iex) {
+					throw new RuntimeException("Interrupted while waiting for the parallel sort to complete.", iex);
+				}
+			}
+		}
+
+		if (result[0] != null) {
+			throw new RuntimeException("Parallel sort failed: " + result[0].getMessage(), result[0]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.sort.IndexedSorter#sort(eu.stratosphere.pact.runtime.sort.IndexedSortable)
+	 */
+	@Override
+	public void sort(IndexedSortable s)
+	{
+		sort(s, 0, s.size());
+	}
+
+	/**
+	 * Sorts the buffer asynchronously. The method returns immediately, the given handler is notified from one
+	 * of the executor's threads when the buffer is sorted or the sort failed.
+	 *
+	 * @param buffer The buffer to sort.
+	 * @param handler The handler to notify upon completion.
+	 */
+	public void sort(NormalizedKeySorter<?> buffer, CompletionHandler handler)
+	{
+		sort(buffer, 0, buffer.size(), handler);
+	}
+
+	private void sort(NormalizedKeySorter<?> buffer, int l, int r, CompletionHandler handler)
+	{
+		final SortJob job = new SortJob(buffer, handler);
+		submit(new RangeTask(job, l, r, this.maxSplitDepth));
+	}
+
+	private void submit(RangeTask task)
+	{
+		task.job.pendingTasks.incrementAndGet();
+		try {
+			this.executor.execute(task);
+		}
+		catch (RejectedExecutionException reex) {
+			task.job.fail(reex);
+			task.job.taskFinished();
+		}
+	}
+
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Partitions the range around the median of its first, middle and last entry.
+	 *
+	 * @return The position of the pivot. All entries left of it are smaller or equal, all entries right of it are
+	 *         larger or equal.
+	 */
+	private static int partition(IndexedSortable s, int p, int r)
+	{
+		final int last = r - 1;
+		final int mid = (p + r) >>> 1;
+
+		// order first, middle and last entry and move the median to the front
+		if (s.compare(p, mid) > 0) {
+			s.swap(p, mid);
+		}
+		if (s.compare(p, last) > 0) {
+			s.swap(p, last);
+		}
+		if (s.compare(mid, last) > 0) {
+			s.swap(mid, last);
+		}
+		s.swap(p, mid);
+
+		int i = p + 1;
+		int j = last;
+		while (true) {
+			while (i <= j && s.compare(i, p) < 0) {
+				i++;
+			}
+			while (j >= i && s.compare(j, p) > 0) {
+				j--;
+			}
+			if (i >= j) {
+				break;
+			}
+			s.swap(i++, j--);
+		}
+		s.swap(p, j);
+		return j;
+	}
+
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Callback notified when an asynchronous sort completed.
+	 */
+	public static interface CompletionHandler
+	{
+		/**
+		 * Called exactly once, when the sort is complete.
+		 *
+		 * @param error The error that occurred during the sort, or <code>null</code>, if the sort succeeded.
+		 */
+		void sortCompleted(Throwable error);
+	}
+
+	/**
+	 * The state of one asynchronous sort, shared by all tasks that work on ranges of the buffer.
+	 */
+	private static final class SortJob
+	{
+		private final NormalizedKeySorter<?> buffer;
+
+		private final CompletionHandler handler;
+
+		private final AtomicInteger pendingTasks = new AtomicInteger();
+
+		private volatile Throwable error;
+
+		SortJob(NormalizedKeySorter<?> buffer, CompletionHandler handler)
+		{
+			this.buffer = buffer;
+			this.handler = handler;
+		}
+
+		void fail(Throwable t)
+		{
+			if (this.error == null) {
+				this.error = t;
+			}
+		}
+
+		void taskFinished()
+		{
+			if (this.pendingTasks.decrementAndGet() == 0) {
+				this.handler.sortCompleted(this.error);
+			}
+		}
+	}
+
+	/**
+	 * A task that sorts a range of the buffer, splitting off parts of it as new tasks while the range is large.
+	 */
+	private final class RangeTask implements Runnable
+	{
+		private final SortJob job;
+
+		private final int start;
+
+		private final int end;
+
+		private final int splitDepth;
+
+		RangeTask(SortJob job, int start, int end, int splitDepth)
+		{
+			this.job = job;
+			this.start = start;
+			this.end = end;
+			this.splitDepth = splitDepth;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run()
+		{
+			try {
+				if (this.job.error != null) {
+					return;
+				}
+
+				final NormalizedKeySortable view = this.job.buffer.createConcurrentSortView();
+				int p = this.start;
+				int r = this.end;
+				int depth = this.splitDepth;
+
+				while (depth > 0 && r - p >= minSplitSize) {
+					final int pivot = partition(view, p, r);
+					depth--;
+
+					// hand off the smaller side and continue with the larger one
+					if (pivot - p < r - pivot - 1) {
+						submit(new RangeTask(this.job, p, pivot, depth));
+						p = pivot + 1;
+					} else {
+						submit(new RangeTask(this.job, pivot + 1, r, depth));
+						r = pivot;
+					}
+				}
+
+				if (r - p > 1) {
+					if (RadixSort.isApplicable(view)) {
+						radixSorter.sort(view, p, r);
+					} else {
+						sequentialSorter.sort(view, p, r);
+					}
+				}
+			}
+			catch (Throwable t) {
+				this.job.fail(t);
+			}
+			finally {
+				this.job.taskFinished();
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.sort;
+
+/**
+ * An in-place most-significant-digit radix sort (American flag sort) over the bytes of the normalized keys. It
+ * distributes the elements into 256 buckets by the current key byte, using only swaps, and recurses into each
+ * bucket with the next key byte. Small buckets are finished with a {@link QuickSort}.
+ * <p>
+ * The radix sort is only correct, if the normalized key fully determines the order of the elements. For all
+ * other sortables, this sorter falls back to a {@link QuickSort}. Use {@link #isApplicable(IndexedSortable)} to
+ * check up front which algorithm will be used.
+ * <p>
+ * The sorter holds no state, so a single instance may be used by several threads at the same time.
+ */
+public final class RadixSort implements IndexedSorter
+{
+	/**
+	 * Buckets with fewer elements than this are sorted with the comparison based sort.
+	 */
+	private static final int SMALL_BUCKET_SIZE = 48;
+	
+	private static final int NUM_BUCKETS = 256;
+	
+	private final QuickSort fallbackSorter = new QuickSort();
+	
+	/**
+	 * Checks whether the radix sort can sort the given sortable. That is the case if the sortable exposes
+	 * a normalized key that fully determines the order of its elements.
+	 * 
+	 * @param s The sortable to check.
+	 * @return True, if the radix sort is applicable, false otherwise.
+	 */
+	public static boolean isApplicable(IndexedSortable s)
+	{
+		return s instanceof NormalizedKeySortable && ((NormalizedKeySortable) s).isNormalizedKeyFullyDetermining();
+	}
+	
+	// --------------------------------------------------------------------------------------------
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.sort.IndexedSorter#sort(IndexedSortable, int, int)
+	 */
+	@Override
+	public void sort(IndexedSortable s, int l, int r)
+	{
+		if (r - l < 2) {
+			return;
+		}
+		if (!isApplicable(s)) {
+			this.fallbackSorter.sort(s, l, r);
+			return;
+		}
+		
+		final NormalizedKeySortable ns = (NormalizedKeySortable) s;
+		final int keyLength = ns.getNormalizedKeyLength();
+		
+		// one set of bucket boundaries for each level of the recursion
+		final int[][] bucketEnds = new int[keyLength][NUM_BUCKETS];
+		final int[] nextInBucket = new int[NUM_BUCKETS];
+		
+		sortInternal(ns, l, r, 0, keyLength, bucketEnds, nextInBucket);
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.sort.IndexedSorter#sort(eu.stratosphere.pact.runtime.sort.IndexedSortable)
+	 */
+	@Override
+	public void sort(IndexedSortable s)
+	{
+		sort(s, 0, s.size());
+	}
+	
+	// --------------------------------------------------------------------------------------------
+	
+	private void sortInternal(NormalizedKeySortable s, int l, int r, int keyByte, int keyLength,
+			int[][] bucketEnds, int[] nextInBucket)
+	{
+		if (r - l < SMALL_BUCKET_SIZE) {
+			// the comparison of the full normalized keys is cheap compared to another distribution pass
+			this.fallbackSorter.sort(s, l, r);
+			return;
+		}
+		
+		final int[] ends = bucketEnds[keyByte];
+		
+		// histogram of the current key byte
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			ends[b] = 0;
+		}
+		for (int i = l; i < r; i++) {
+			ends[s.getNormalizedKeyByte(i, keyByte)]++;
+		}
+		
+		// turn the counts into bucket boundaries
+		int pos = l;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			nextInBucket[b] = pos;
+			pos += ends[b];
+			ends[b] = pos;
+		}
+		
+		// move every element into its bucket. each swap puts at least one element into its final bucket.
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			final int end = ends[b];
+			int next = nextInBucket[b];
+			while (next < end) {
+				final int target = s.getNormalizedKeyByte(next, keyByte);
+				if (target == b) {
+					next++;
+				} else {
+					s.swap(next, nextInBucket[target]++);
+				}
+			}
+			nextInBucket[b] = next;
+		}
+		
+		// recurse into the buckets with the next key byte
+		final int nextKeyByte = keyByte + 1;
+		if (nextKeyByte < keyLength) {
+			int start = l;
+			for (int b = 0; b < NUM_BUCKETS; b++) {
+				final int end = ends[b];
+				if (end - start > 1) {
+					sortInternal(s, start, end, nextKeyByte, keyLength, bucketEnds, nextInBucket);
+				}
+				start = end;
+			}
+		}
+	}
+}
@@ -15,22 +15,33 @@
 
 package eu.stratosphere.pact.runtime.sort;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
 import eu.stratosphere.nephele.services.iomanager.BlockChannelAccess;
+import eu.stratosphere.nephele.services.iomanager.BlockCompressionCodec;
+import eu.stratosphere.nephele.services.iomanager.BlockCompressionCodecs;
 import eu.stratosphere.nephele.services.iomanager.BlockChannelReader;
 import eu.stratosphere.nephele.services.iomanager.BlockChannelWriter;
 import eu.stratosphere.nephele.services.iomanager.Channel;
@@ -46,6 +57,7 @@ import eu.stratosphere.pact.common.generic.types.TypeComparator;
 import eu.stratosphere.pact.common.generic.types.TypeSerializer;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.common.util.PactConfigConstants;
 import eu.stratosphere.pact.runtime.io.ChannelReaderInputViewIterator;
 import eu.stratosphere.pact.runtime.util.EmptyMutableObjectIterator;
 import eu.stratosphere.pact.runtime.util.MathUtils;
@@ -124,6 +136,32 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 	 */
 	protected final MemoryManager memoryManager;
 	
+	/**
+	 * The I/O manager through which the temporary files are created and deleted.
+	 */
+	protected final IOManager ioManager;
+	
+	/**
+	 * The number of threads that sort the filled buffers.
+	 */
+	protected final int numSortThreads;
+	
+	/**
+	 * The minimal number of read-ahead buffers that each sorted run gets during merging.
+	 */
+	protected final int mergeReadAheadSegments;
+	
+	/**
+	 * The maximal number of intermediate merges to run in parallel, or a value smaller than one
+	 * to run one merge per temp directory of the I/O manager.
+	 */
+	protected final int maxNumParallelMerges;
+	
+	/**
+	 * The name of the codec that compresses the spilled runs, or null, if the runs are not compressed.
+	 */
+	protected final String spillCompressionCodec;
+	
 	// ------------------------------------------------------------------------
 	//                            Miscellaneous Fields
 	// ------------------------------------------------------------------------
@@ -222,7 +260,42 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 	throws IOException, MemoryAllocationException
 	{
 		this(memoryManager, ioManager, input, parentTask, serializer, comparator,
-			totalMemory, numSortBuffers, maxNumFileHandles, startSpillingFraction, false);
+			totalMemory, numSortBuffers, maxNumFileHandles, startSpillingFraction, false, 1);
+	}
+	
+	/**
+	 * Creates a new sorter that reads the data from a given reader and provides an iterator returning that
+	 * data in a sorted manner. The memory is divided among sort buffers, write buffers and read buffers
+	 * automatically. If more than one sort thread is given, the filled sort buffers are sorted concurrently
+	 * by a pool of that many threads, and large buffers are split for a parallel quicksort. The memory used
+	 * by the sorter is the same in both cases.
+	 * 
+	 * @param memoryManager The memory manager from which to allocate the memory.
+	 * @param ioManager The I/O manager, which is used to write temporary files to disk.
+	 * @param input The input that is sorted by this sorter.
+	 * @param parentTask The parent task, which owns all resources used by this sorter.
+	 * @param serializer The type serializer.
+	 * @param comparator The type comparator establishing the order relation.
+	 * @param totalMemory The total amount of memory dedicated to sorting, merging and I/O.
+	 * @param numSortBuffers The number of distinct buffers to use creation of the initial runs.
+	 * @param maxNumFileHandles The maximum number of files to be merged at once.
+	 * @param startSpillingFraction The faction of the buffers that have to be filled before the spilling thread
+	 *                              actually begins spilling data to disk.
+	 * @param numSortThreads The number of threads that sort the buffers.
+	 * 
+	 * @throws IOException Thrown, if an error occurs initializing the resources for external sorting.
+	 * @throws MemoryAllocationException Thrown, if not enough memory can be obtained from the memory manager to
+	 *                                   perform the sort.
+	 */
+	public UnilateralSortMerger(MemoryManager memoryManager, IOManager ioManager,
+			MutableObjectIterator<E> input, AbstractInvokable parentTask, 
+			TypeSerializer<E> serializer, TypeComparator<E> comparator,
+			long totalMemory, int numSortBuffers, int maxNumFileHandles, 
+			float startSpillingFraction, int numSortThreads)
+	throws IOException, MemoryAllocationException
+	{
+		this(memoryManager, ioManager, input, parentTask, serializer, comparator,
+			totalMemory, numSortBuffers, maxNumFileHandles, startSpillingFraction, false, numSortThreads);
 	}
 	
 	/**
@@ -252,6 +325,39 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 			long totalMemory, int numSortBuffers, int maxNumFileHandles, 
 			float startSpillingFraction, boolean noSpillingMemory)
 	throws IOException, MemoryAllocationException
+	{
+		this(memoryManager, ioManager, input, parentTask, serializer, comparator,
+			totalMemory, numSortBuffers, maxNumFileHandles, startSpillingFraction, noSpillingMemory, 1);
+	}
+	
+	/**
+	 * Internal constructor and constructor for subclasses that want to circumvent the spilling.
+	 * 
+	 * @param memoryManager The memory manager from which to allocate the memory.
+	 * @param ioManager The I/O manager, which is used to write temporary files to disk.
+	 * @param input The input that is sorted by this sorter.
+	 * @param parentTask The parent task, which owns all resources used by this sorter.
+	 * @param serializer The type serializer.
+	 * @param comparator The type comparator establishing the order relation.
+	 * @param totalMemory The total amount of memory dedicated to sorting, merging and I/O.
+	 * @param numSortBuffers The number of distinct buffers to use creation of the initial runs.
+	 * @param maxNumFileHandles The maximum number of files to be merged at once.
+	 * @param startSpillingFraction The faction of the buffers that have to be filled before the spilling thread
+	 *                              actually begins spilling data to disk.
+	 * @param noSpilling When set to true, no memory will be allocated for writing and no spilling thread
+	 *                   will be spawned.
+	 * @param numSortThreads The number of threads that sort the buffers.
+	 * 
+	 * @throws IOException Thrown, if an error occurs initializing the resources for external sorting.
+	 * @throws MemoryAllocationException Thrown, if not enough memory can be obtained from the memory manager to
+	 *                                   perform the sort.
+	 */
+	protected UnilateralSortMerger(MemoryManager memoryManager, IOManager ioManager,
+			MutableObjectIterator<E> input, AbstractInvokable parentTask, 
+			TypeSerializer<E> serializer, TypeComparator<E> comparator,
+			long totalMemory, int numSortBuffers, int maxNumFileHandles, 
+			float startSpillingFraction, boolean noSpillingMemory, int numSortThreads)
+	throws IOException, MemoryAllocationException
 	{
 		// sanity checks
 		if (memoryManager == null | (ioManager == null && !noSpillingMemory) | serializer == null | comparator == null) {
@@ -263,8 +369,21 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 		if (maxNumFileHandles < 2) {
 			throw new IllegalArgumentException("Merger cannot work with less than two file handles.");
 		}
+		if (numSortThreads < 1) {
+			throw new IllegalArgumentException("Merger cannot work with less than one sort thread.");
+		}
 		
 		this.memoryManager = memoryManager;
+		this.ioManager = ioManager;
+		this.numSortThreads = numSortThreads;
+		this.mergeReadAheadSegments = Math.max(1, GlobalConfiguration.getInteger(
+			PactConfigConstants.SORT_MERGE_READ_AHEAD_KEY, PactConfigConstants.DEFAULT_SORT_MERGE_READ_AHEAD));
+		this.maxNumParallelMerges = GlobalConfiguration.getInteger(
+			PactConfigConstants.SORT_MERGE_MAX_PARALLEL_KEY, PactConfigConstants.DEFAULT_SORT_MERGE_MAX_PARALLEL);
+		final String codecName = GlobalConfiguration.getString(
+			PactConfigConstants.SORT_SPILL_COMPRESSION_KEY, PactConfigConstants.DEFAULT_SORT_SPILL_COMPRESSION);
+		// create a codec once, to fail early on invalid configurations
+		this.spillCompressionCodec = BlockCompressionCodecs.createCodec(codecName) == null ? null : codecName;
 		
 		// adjust the memory quotas to the page size
 		totalMemory = memoryManager.roundDownToPageSizeMultiple(totalMemory);
@@ -519,12 +638,7 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 					for (Iterator<Channel.ID> channels = this.channelsToDeleteAtShutdown.iterator(); channels.hasNext(); ) {
 						final Channel.ID channel = channels.next();
 						channels.remove();
-						try {
-							final File f = new File(channel.getPath());
-							if (f.exists()) {
-								f.delete();
-							}
-						} catch (Throwable t) {}
+						this.ioManager.deleteChannel(channel);
 					}
 				}
 				catch (Throwable t) {}
@@ -569,7 +683,8 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 
 	/**
 	 * Creates the sorting thread. This thread takes the buffers from the sort queue, sorts them and
-	 * puts them into the spill queue.
+	 * puts them into the spill queue. If the sorter uses more than one sort thread, the returned thread
+	 * dispatches the buffers to a pool of sort threads.
 	 * <p>
 	 * The returned thread is not yet started.
 	 * 
@@ -584,7 +699,11 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 	protected ThreadBase<E> getSortingThread(ExceptionHandler<IOException> exceptionHandler, CircularQueues<E> queues,
 			AbstractInvokable parentTask)
 	{
-		return new SortingThread<E>(exceptionHandler, queues, parentTask);
+		if (this.numSortThreads > 1) {
+			return new ParallelSortingThread<E>(exceptionHandler, queues, parentTask, this.numSortThreads);
+		} else {
+			return new SortingThread<E>(exceptionHandler, queues, parentTask);
+		}
 	}
 
 	/**
@@ -668,6 +787,27 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 		}
 	}
 
+	/**
+	 * Creates a factory for the daemon threads of the pools that help the sorting and merging threads.
+	 * 
+	 * @param namePrefix The prefix of the names of the created threads.
+	 * @return The thread factory.
+	 */
+	protected static ThreadFactory createDaemonThreadFactory(final String namePrefix)
+	{
+		return new ThreadFactory() {
+			
+			private int threadNum;
+			
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, namePrefix + " " + (++this.threadNum));
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
 	// ------------------------------------------------------------------------
 	// Inter-Thread Communication
 	// ------------------------------------------------------------------------
@@ -1095,6 +1235,8 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 	protected static class SortingThread<E> extends ThreadBase<E>
 	{		
 		private final IndexedSorter sorter;
+		
+		private final IndexedSorter radixSorter;
 
 		/**
 		 * Creates a new sorting thread.
@@ -1109,6 +1251,7 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 
 			// members
 			this.sorter = new QuickSort();
+			this.radixSorter = new RadixSort();
 		}
 
 		/**
@@ -1141,7 +1284,12 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 					if (LOG.isDebugEnabled())
 						LOG.debug("Sorting buffer " + element.id + ".");
 					
-					this.sorter.sort(element.buffer);
+					// the radix sort is used whenever the normalized keys alone determine the order
+					if (RadixSort.isApplicable(element.buffer)) {
+						this.radixSorter.sort(element.buffer);
+					} else {
+						this.sorter.sort(element.buffer);
+					}
 					
 					if (LOG.isDebugEnabled())
 						LOG.debug("Sorted buffer " + element.id + ".");
@@ -1155,6 +1303,201 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 			}
 		}
 	}
+	
+	/**
+	 * The thread that sorts filled buffers with a pool of sort threads. Several buffers are sorted concurrently
+	 * and large buffers are split across the threads. Buffers whose normalized keys fully determine the order are
+	 * instead radix sorted as a whole by one thread of the pool. Sorted buffers are put into the spill queue as
+	 * soon as they are done, so they may overtake each other. Markers are forwarded only after all buffers that
+	 * were received before them have been sorted.
+	 */
+	protected static class ParallelSortingThread<E> extends ThreadBase<E>
+	{
+		private final ExecutorService sortPool;
+		
+		private final ParallelQuickSort sorter;
+		
+		private final RadixSort radixSorter;
+		
+		private final Object inFlightLock = new Object();
+		
+		private int numBuffersInFlight;
+		
+		/**
+		 * Creates a new parallel sorting thread.
+		 * 
+		 * @param exceptionHandler The exception handler to call for all exceptions.
+		 * @param queues The queues used to pass buffers between the threads.
+		 * @param parentTask The task that started this thread. If non-null, it is used to register this thread.
+		 * @param numSortThreads The number of threads in the pool that sorts the buffers.
+		 */
+		public ParallelSortingThread(ExceptionHandler<IOException> exceptionHandler, CircularQueues<E> queues,
+				AbstractInvokable parentTask, int numSortThreads)
+		{
+			super(exceptionHandler, "SortMerger sorting thread", queues, parentTask);
+			
+			// members
+			this.sortPool = Executors.newFixedThreadPool(numSortThreads,
+				createDaemonThreadFactory("SortMerger sort worker"));
+			this.sorter = new ParallelQuickSort(this.sortPool, numSortThreads);
+			this.radixSorter = new RadixSort();
+		}
+
+		/**
+		 * Entry point of the thread.
+		 */
+		public void go() throws IOException
+		{
+			try {
+				boolean alive = true;
+				
+				// loop as long as the thread is marked alive
+				while (isRunning() && alive) {
+					CircularElement<E> element = null;
+					try {
+						element = this.queues.sort.take();
+					}
+					catch (InterruptedException iex) {
+						if (isRunning()) {
+							if (LOG.isErrorEnabled())
+								LOG.error(
+									"Sorting thread was interrupted (without being shut down) while grabbing a buffer. " +
+									"Retrying to grab buffer...");
+							continue;
+						}
+						else {
+							return;
+						}
+					}
+					
+					if (element != EOF_MARKER && element != SPILLING_MARKER) {
+						if (LOG.isDebugEnabled())
+							LOG.debug("Sorting buffer " + element.id + ".");
+						
+						synchronized (this.inFlightLock) {
+							this.numBuffersInFlight++;
+						}
+						
+						// the radix sort is used whenever the normalized keys alone determine the order
+						final SortedBufferHandler handler = new SortedBufferHandler(element);
+						if (RadixSort.isApplicable(element.buffer)) {
+							radixSort(element.buffer, handler);
+						} else {
+							this.sorter.sort(element.buffer, handler);
+						}
+					}
+					else {
+						// markers must not overtake the buffers received before them
+						if (!waitForBuffersInFlight()) {
+							return;
+						}
+						if (element == EOF_MARKER) {
+							if (LOG.isDebugEnabled())
+								LOG.debug("Sorting thread done.");
+							alive = false;
+						}
+						this.queues.spill.add(element);
+					}
+				}
+			}
+			finally {
+				this.sortPool.shutdownNow();
+			}
+		}
+		
+		/* (non-Javadoc)
+		 * @see eu.stratosphere.pact.runtime.sort.UnilateralSortMerger.ThreadBase#shutdown()
+		 */
+		@Override
+		public void shutdown() {
+			super.shutdown();
+			this.sortPool.shutdownNow();
+		}
+		
+		/**
+		 * Radix sorts the buffer asynchronously with one thread of the sort pool. Buffers are sorted concurrently
+		 * with each other, but a single buffer is not split, since the radix sort is linear in its size.
+		 * 
+		 * @param buffer The buffer to sort.
+		 * @param handler The handler to notify when the buffer is sorted.
+		 */
+		private void radixSort(final NormalizedKeySorter<E> buffer, final SortedBufferHandler handler)
+		{
+			try {
+				this.sortPool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							radixSorter.sort(buffer);
+						}
+						catch (Throwable t) {
+							handler.sortCompleted(t);
+							return;
+						}
+						handler.sortCompleted(null);
+					}
+				});
+			}
+			catch (RejectedExecutionException reex) {
+				handler.sortCompleted(reex);
+			}
+		}
+		
+		/**
+		 * Waits until all buffers that were handed to the sort pool are sorted.
+		 * 
+		 * @return True, if all buffers are sorted, false if the thread was shut down while waiting.
+		 */
+		private boolean waitForBuffersInFlight()
+		{
+			synchronized (this.inFlightLock) {
+				while (this.numBuffersInFlight > 0) {
+					try {
+						this.inFlightLock.wait();
+					}
+					catch (InterruptedException iex) {
+						if (!isRunning()) {
+							return false;
+						}
+					}
+				}
+			}
+			return isRunning();
+		}
+		
+		/**
+		 * Forwards a buffer to the spill queue once the sort pool has sorted it.
+		 */
+		private final class SortedBufferHandler implements ParallelQuickSort.CompletionHandler
+		{
+			private final CircularElement<E> element;
+			
+			private SortedBufferHandler(CircularElement<E> element) {
+				this.element = element;
+			}
+
+			/* (non-Javadoc)
+			 * @see eu.stratosphere.pact.runtime.sort.ParallelQuickSort.CompletionHandler#sortCompleted(java.lang.Throwable)
+			 */
+			@Override
+			public void sortCompleted(Throwable error)
+			{
+				if (error == null) {
+					if (LOG.isDebugEnabled())
+						LOG.debug("Sorted buffer " + this.element.id + ".");
+					queues.spill.add(this.element);
+				} else {
+					internalHandleException(new IOException("Sorting buffer " + this.element.id + 
+						" failed: " + error.getMessage(), error));
+				}
+				
+				synchronized (inFlightLock) {
+					numBuffersInFlight--;
+					inFlightLock.notifyAll();
+				}
+			}
+		}
+	}
 
 	/**
 	 * The thread that handles the spilling of intermediate results and sets up the merging. It also merges the 
@@ -1314,7 +1657,7 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 																channel, this.numWriteBuffersToCluster);
 				registerOpenChannelToBeRemovedAtShudown(writer);
 				final ChannelWriterOutputView output = new ChannelWriterOutputView(writer, this.writeMemory,
-																			this.memManager.getPageSize());
+																			this.memManager.getPageSize(), createCompressionCodec());
 
 				// write sort-buffer to channel
 				if (LOG.isDebugEnabled())
@@ -1344,8 +1687,8 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 
 			// ------------------- Merging Phase ------------------------
 			
-			// merge channels until sufficient file handles are available
-			while (isRunning() && channelIDs.size() > this.maxNumFileHandles) {
+			// merge channels until the final merge can read all remaining channels at once
+			while (isRunning() && channelIDs.size() > getMergeFanIn(this.sortReadMemory.size())) {
 				channelIDs = mergeChannelList(channelIDs, this.sortReadMemory, this.writeMemory);
 			}
 			
@@ -1446,59 +1789,222 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 				
 				// wrap channel reader as a view, to get block spanning record deserialization
 				final ChannelReaderInputView inView = new ChannelReaderInputView(reader, segsForChannel, 
-																			channel.getBlockCount(), false);
+																			channel.getBlockCount(), createCompressionCodec(), false);
 				iterators.add(new ChannelReaderInputViewIterator<E>(inView, null, this.serializer));
 			}
 
-			return new MergeIterator<E>(iterators, this.serializer, this.comparator);
+			// every merge gets its own comparator, because intermediate merges may run concurrently
+			return new MergeIterator<E>(iterators, this.serializer, this.comparator.duplicate());
 		}
 
 		/**
-		 * Merges the given sorted runs to a smaller number of sorted runs. 
+		 * Performs one round of intermediate merges, bringing the given sorted runs closer to a number that
+		 * can be merged at once in the final merge. The round merges the smallest runs first. Its first merge
+		 * has just the fan-in that lets all later merges use the full fan-in and end up at exactly the final
+		 * merge's fan-in, which minimizes the amount of data that is merged repeatedly. If the memory suffices
+		 * without increasing the number of merge rounds, several merges run in parallel, each with its own
+		 * share of the read and write buffers.
 		 * 
 		 * @param channelIDs The IDs of the sorted runs that need to be merged.
+		 * @param allReadBuffers The buffers to be used by the readers.
 		 * @param writeBuffers The buffers to be used by the writers.
-		 * @param writeBufferSize The size of the write buffers.
-		 * @param  readMemorySize The amount of memory dedicated to the readers.
-		 * @return A list of the IDs of the merged channels.
+		 * @return A list of the IDs of the runs after this round of merges.
 		 * @throws IOException Thrown, if the readers or writers encountered an I/O problem.
-		 * @throws MemoryAllocationException Thrown, if the specified memory is insufficient to merge the channels
-		 *                                   or if the memory manager could not provide the requested memory.
 		 */
 		protected final List<ChannelWithBlockCount> mergeChannelList(final List<ChannelWithBlockCount> channelIDs,
 					final List<MemorySegment> allReadBuffers, final List<MemorySegment> writeBuffers)
 		throws IOException
 		{
-			final double numMerges = Math.ceil(channelIDs.size() / ((double) this.maxNumFileHandles));
-			final int channelsToMergePerStep = (int) Math.ceil(channelIDs.size() / numMerges);
+			final int numRuns = channelIDs.size();
+			final int finalFanIn = getMergeFanIn(allReadBuffers.size());
 			
-			// allocate the memory for the merging step
-			final List<List<MemorySegment>> readBuffers = new ArrayList<List<MemorySegment>>(channelsToMergePerStep);
-			getSegmentsForReaders(readBuffers, allReadBuffers, channelsToMergePerStep);
+			final int numParallel = getNumParallelMerges(numRuns, allReadBuffers.size(), writeBuffers.size());
+			final int readBuffersPerMerge = allReadBuffers.size() / numParallel;
+			final int writeBuffersPerMerge = writeBuffers.size() / numParallel;
+			final int fanIn = getMergeFanIn(readBuffersPerMerge);
 			
-			// the list containing the IDs of the merged channels
-			final ArrayList<ChannelWithBlockCount> mergedChannelIDs = new ArrayList<ChannelWithBlockCount>((int) (numMerges + 1));
-
-			final ArrayList<ChannelWithBlockCount> channelsToMergeThisStep = new ArrayList<ChannelWithBlockCount>(channelsToMergePerStep);
-			int channelNum = 0;
-			while (isRunning() && channelNum < channelIDs.size()) {
-				channelsToMergeThisStep.clear();
-
-				for (int i = 0; i < channelsToMergePerStep && channelNum < channelIDs.size(); i++, channelNum++) {
-					channelsToMergeThisStep.add(channelIDs.get(channelNum));
+			// the number of merges needed if all but the first one use the full fan-in
+			final int reduction = numRuns - finalFanIn;
+			final int numMergesRemaining = (reduction + fanIn - 2) / (fanIn - 1);
+			final int firstFanIn = reduction - (numMergesRemaining - 1) * (fanIn - 1) + 1;
+			
+			// merge the smallest runs first
+			final List<ChannelWithBlockCount> runs = new ArrayList<ChannelWithBlockCount>(channelIDs);
+			Collections.sort(runs, ChannelWithBlockCount.BY_BLOCK_COUNT);
+			
+			final int maxMerges = Math.min(numParallel, numMergesRemaining);
+			final List<List<ChannelWithBlockCount>> groups = new ArrayList<List<ChannelWithBlockCount>>(maxMerges);
+			int runNum = 0;
+			for (int groupSize = firstFanIn; groups.size() < maxMerges && runNum + groupSize <= numRuns; groupSize = fanIn) {
+				groups.add(new ArrayList<ChannelWithBlockCount>(runs.subList(runNum, runNum + groupSize)));
+				runNum += groupSize;
+			}
+			final int numMerges = groups.size();
+			
+			if (LOG.isDebugEnabled())
+				LOG.debug("Merging " + numRuns + " sorted runs: " + numMerges + " merge(s) in this round, fan-in " + 
+					firstFanIn + " for the first merge and " + fanIn + " for the others.");
+			
+			// the runs that are not merged in this round
+			final List<ChannelWithBlockCount> mergedChannelIDs = new ArrayList<ChannelWithBlockCount>(numRuns - runNum + numMerges);
+			mergedChannelIDs.addAll(runs.subList(runNum, numRuns));
+			
+			if (numMerges == 1) {
+				final List<List<MemorySegment>> readBuffers = new ArrayList<List<MemorySegment>>(firstFanIn);
+				getSegmentsForReaders(readBuffers, allReadBuffers, firstFanIn);
+				mergedChannelIDs.add(mergeChannels(groups.get(0), readBuffers, writeBuffers));
+				return mergedChannelIDs;
+			}
+			
+			// give every merge its share of the memory. the first merge is run by this thread.
+			final List<Callable<ChannelWithBlockCount>> merges = new ArrayList<Callable<ChannelWithBlockCount>>(numMerges);
+			for (int i = 0; i < numMerges; i++) {
+				final List<ChannelWithBlockCount> group = groups.get(i);
+				final List<List<MemorySegment>> readBuffers = new ArrayList<List<MemorySegment>>(group.size());
+				getSegmentsForReaders(readBuffers, 
+					allReadBuffers.subList(i * readBuffersPerMerge, (i + 1) * readBuffersPerMerge), group.size());
+				final List<MemorySegment> mergeWriteBuffers = new ArrayList<MemorySegment>(
+					writeBuffers.subList(i * writeBuffersPerMerge, (i + 1) * writeBuffersPerMerge));
+				
+				merges.add(new Callable<ChannelWithBlockCount>() {
+					@Override
+					public ChannelWithBlockCount call() throws IOException {
+						return mergeChannels(group, readBuffers, mergeWriteBuffers);
+					}
+				});
+			}
+			
+			final ExecutorService mergePool = Executors.newFixedThreadPool(numMerges - 1,
+				createDaemonThreadFactory("SortMerger merging thread"));
+			try {
+				final List<Future<ChannelWithBlockCount>> results = new ArrayList<Future<ChannelWithBlockCount>>(numMerges - 1);
+				for (int i = 1; i < numMerges; i++) {
+					results.add(mergePool.submit(merges.get(i)));
 				}
 				
-				// merge only, if there is more than one channel
-				if (channelsToMergeThisStep.size() < 2)  {
-					mergedChannelIDs.addAll(channelsToMergeThisStep);
+				try {
+					mergedChannelIDs.add(merges.get(0).call());
 				}
-				else {
-					mergedChannelIDs.add(mergeChannels(channelsToMergeThisStep, readBuffers, writeBuffers));
+				catch (IOException ioex) {
+					throw ioex;
+				}
+				catch (Exception ex) {
+					throw new IOException("Intermediate merge failed: " + ex.getMessage(), ex);
 				}
+				
+				for (Future<ChannelWithBlockCount> result : results) {
+					mergedChannelIDs.add(getMergeResult(result));
+				}
+			}
+			finally {
+				mergePool.shutdownNow();
 			}
 			
 			return mergedChannelIDs;
 		}
+		
+		/**
+		 * Waits for the result of a merge that runs in the merge pool.
+		 * 
+		 * @param result The future result of the merge.
+		 * @return The ID and number of blocks of the merged run.
+		 * @throws IOException Thrown, if the merge failed or waiting for it was interrupted.
+		 */
+		private final ChannelWithBlockCount getMergeResult(Future<ChannelWithBlockCount> result)
+		throws IOException
+		{
+			while (true) {
+				try {
+					return result.get();
+				}
+				catch (ExecutionException eex) {
+					final Throwable cause = eex.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IOException("Intermediate merge failed: " + cause.getMessage(), cause);
+				}
+				catch (InterruptedException iex) {
+					if (!isRunning()) {
+						throw new IOException("Spilling thread was interrupted while waiting for an intermediate merge.");
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Gets the maximal number of sorted runs that are merged at once, given the number of buffers available
+		 * for reading. Each run gets at least the configured number of read-ahead buffers, so that the reader can
+		 * fetch the next blocks while the current one is merged.
+		 * 
+		 * @param numReadBuffers The number of buffers available for reading the runs.
+		 * @return The merge fan-in, at least two.
+		 */
+		protected final int getMergeFanIn(int numReadBuffers)
+		{
+			final int memoryFanIn = numReadBuffers / getMinBuffersPerRun();
+			return Math.max(2, Math.min(this.maxNumFileHandles, memoryFanIn));
+		}
+		
+		/**
+		 * Gets the minimal number of buffers that each sorted run gets during merging. Compressed runs need
+		 * one buffer more than the read-ahead buffers, which holds the decompressed data.
+		 * 
+		 * @return The minimal number of buffers per run.
+		 */
+		private final int getMinBuffersPerRun()
+		{
+			return UnilateralSortMerger.this.mergeReadAheadSegments + 
+				(UnilateralSortMerger.this.spillCompressionCodec == null ? 0 : 1);
+		}
+		
+		/**
+		 * Gets the number of intermediate merges to run in parallel. The memory is divided evenly between
+		 * parallel merges, so their fan-in is lower. Merges only run in parallel as long as that does not
+		 * increase the number of merge rounds.
+		 * 
+		 * @param numRuns The number of sorted runs that still need to be merged.
+		 * @param numReadBuffers The number of buffers available for reading.
+		 * @param numWriteBuffers The number of buffers available for writing.
+		 * @return The number of merges to run in parallel, at least one.
+		 */
+		protected int getNumParallelMerges(int numRuns, int numReadBuffers, int numWriteBuffers)
+		{
+			int maxParallel = UnilateralSortMerger.this.maxNumParallelMerges;
+			if (maxParallel < 1) {
+				maxParallel = this.ioManager.getNumberOfTempDirectories();
+			}
+			maxParallel = Math.min(maxParallel, numWriteBuffers / MIN_NUM_WRITE_BUFFERS);
+			
+			final int finalFanIn = getMergeFanIn(numReadBuffers);
+			final int sequentialRounds = getNumMergeRounds(numRuns, getMergeFanIn(numReadBuffers), finalFanIn);
+			
+			for (int p = maxParallel; p > 1; p--) {
+				final int readBuffersPerMerge = numReadBuffers / p;
+				if (readBuffersPerMerge < 2 * getMinBuffersPerRun()) {
+					continue;
+				}
+				final int fanIn = getMergeFanIn(readBuffersPerMerge);
+				if (getNumMergeRounds(numRuns, fanIn, finalFanIn) <= sequentialRounds) {
+					return p;
+				}
+			}
+			return 1;
+		}
+		
+		/**
+		 * Estimates how often each record is merged before the final merge, if all runs are merged with the given
+		 * fan-in in every round.
+		 */
+		private final int getNumMergeRounds(int numRuns, int fanIn, int finalFanIn)
+		{
+			int rounds = 0;
+			while (numRuns > finalFanIn) {
+				numRuns = (numRuns + fanIn - 1) / fanIn;
+				rounds++;
+			}
+			return rounds;
+		}
 
 		/**
 		 * Merges the sorted runs described by the given Channel IDs into a single sorted run. The merging process
@@ -1519,14 +2025,14 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 			// the list with the target iterators
 			final MergeIterator<E> mergeIterator = getMergingIterator(channelIDs, readBuffers, channelAccesses);
 
-			// create a new channel writer
-			final Channel.ID mergedChannelID = this.ioManager.createChannel();
+			// create a new channel writer. merged runs are large, so they are striped across the temp directories
+			final Channel.ID mergedChannelID = this.ioManager.createStripedChannel();
 			registerChannelToBeRemovedAtShudown(mergedChannelID);
 			final BlockChannelWriter writer = this.ioManager.createBlockChannelWriter(
-															mergedChannelID, this.numWriteBuffersToCluster);
+															mergedChannelID, writeBuffers.size() >= 4 ? writeBuffers.size() / 2 : 1);
 			registerOpenChannelToBeRemovedAtShudown(writer);
 			final ChannelWriterOutputView output = new ChannelWriterOutputView(writer, writeBuffers, 
-																			this.memManager.getPageSize());
+																			this.memManager.getPageSize(), createCompressionCodec());
 
 			// read the merged stream and write the data back
 			final TypeSerializer<E> serializer = this.serializer;
@@ -1587,7 +2093,17 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 				}
 			}
 		}
-		
+
+		/**
+		 * Creates a new codec to compress or decompress a spilled run. Every view gets its own codec, because
+		 * codecs are not thread-safe and intermediate merges may run concurrently.
+		 *
+		 * @return A new codec, or null, if the spilled runs are not compressed.
+		 */
+		protected BlockCompressionCodec createCompressionCodec() {
+			return BlockCompressionCodecs.createCodec(UnilateralSortMerger.this.spillCompressionCodec);
+		}
+
 		// ------------------------------------------------------------------------
 		//              Cleanup of Temp Files and Allocated Memory
 		// ------------------------------------------------------------------------
@@ -1598,7 +2114,9 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 		 * @param s The channel id.
 		 */
 		protected void registerChannelToBeRemovedAtShudown(Channel.ID channel) {
-			UnilateralSortMerger.this.channelsToDeleteAtShutdown.add(channel);
+			synchronized (UnilateralSortMerger.this.channelsToDeleteAtShutdown) {
+				UnilateralSortMerger.this.channelsToDeleteAtShutdown.add(channel);
+			}
 		}
 
 		/**
@@ -1607,7 +2125,9 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 		 * @param s The channel id.
 		 */
 		protected void unregisterChannelToBeRemovedAtShudown(Channel.ID channel) {
-			UnilateralSortMerger.this.channelsToDeleteAtShutdown.remove(channel);
+			synchronized (UnilateralSortMerger.this.channelsToDeleteAtShutdown) {
+				UnilateralSortMerger.this.channelsToDeleteAtShutdown.remove(channel);
+			}
 		}
 		
 		/**
@@ -1616,7 +2136,9 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 		 * @param s The channel reader/writer.
 		 */
 		protected void registerOpenChannelToBeRemovedAtShudown(BlockChannelAccess<?, ?> channel) {
-			UnilateralSortMerger.this.openChannels.add(channel);
+			synchronized (UnilateralSortMerger.this.openChannels) {
+				UnilateralSortMerger.this.openChannels.add(channel);
+			}
 		}
 
 		/**
@@ -1625,7 +2147,9 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 		 * @param s The channel reader/writer.
 		 */
 		protected void unregisterOpenChannelToBeRemovedAtShudown(BlockChannelAccess<?, ?> channel) {
-			UnilateralSortMerger.this.openChannels.remove(channel);
+			synchronized (UnilateralSortMerger.this.openChannels) {
+				UnilateralSortMerger.this.openChannels.remove(channel);
+			}
 		}
 	}
 	
@@ -1791,6 +2315,16 @@ public class UnilateralSortMerger<E> implements Sorter<E>
 	
 	protected static final class ChannelWithBlockCount
 	{
+		/**
+		 * Orders channels by ascending number of blocks.
+		 */
+		static final Comparator<ChannelWithBlockCount> BY_BLOCK_COUNT = new Comparator<ChannelWithBlockCount>() {
+			@Override
+			public int compare(ChannelWithBlockCount o1, ChannelWithBlockCount o2) {
+				return o1.blockCount < o2.blockCount ? -1 : o1.blockCount > o2.blockCount ? 1 : 0;
+			}
+		};
+		
 		private final Channel.ID channel;
 		private final int blockCount;
 		
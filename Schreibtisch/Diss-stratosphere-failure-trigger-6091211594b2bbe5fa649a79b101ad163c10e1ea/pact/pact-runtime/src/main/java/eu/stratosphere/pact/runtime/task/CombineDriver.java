@@ -25,6 +25,7 @@ import eu.stratosphere.pact.common.generic.types.TypeSerializer;
 import eu.stratosphere.pact.common.stubs.Collector;
 
 import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.runtime.hash.CombiningHashTable;
 import eu.stratosphere.pact.runtime.sort.AsynchronousPartialSorter;
 import eu.stratosphere.pact.runtime.task.util.CloseableInputProvider;
 import eu.stratosphere.pact.runtime.task.util.TaskConfig;
@@ -58,6 +59,8 @@ public class CombineDriver<T> implements PactDriver<GenericReducer<T, ?>, T>
 	private PactTaskContext<GenericReducer<T, ?>, T> taskContext;
 	
 	private CloseableInputProvider<T> input;
+	
+	private CombiningHashTable<T> table;
 
 	private TypeSerializer<T> serializer;
 
@@ -128,6 +131,7 @@ public class CombineDriver<T> implements PactDriver<GenericReducer<T, ?>, T>
 
 		switch (ls) {
 		case COMBININGSORT:
+		case COMBININGHASH:
 			strategyMinMem = MIN_REQUIRED_MEMORY;
 			break;
 		}
@@ -155,6 +159,14 @@ public class CombineDriver<T> implements PactDriver<GenericReducer<T, ?>, T>
 			input = new AsynchronousPartialSorter<T>(memoryManager, in, this.taskContext.getOwningNepheleTask(),
 						this.serializer, this.comparator.duplicate(), availableMemory);
 			break;
+		// local strategy is COMBININGHASH
+		// The input is combined in a hash table that holds one aggregate per key. Whenever the table is full,
+		// the aggregates are emitted and the table starts over.
+		case COMBININGHASH:
+			this.table = new CombiningHashTable<T>(this.serializer, this.comparator.duplicate(),
+						this.taskContext.getStub(), memoryManager.allocatePages(this.taskContext.getOwningNepheleTask(),
+						availableMemory));
+			break;
 		// obtain and return a grouped iterator from the combining sort-merger
 		default:
 			throw new RuntimeException("Invalid local strategy provided for CombineTask.");
@@ -168,6 +180,11 @@ public class CombineDriver<T> implements PactDriver<GenericReducer<T, ?>, T>
 	 */
 	@Override
 	public void run() throws Exception {
+		if (this.table != null) {
+			runHashCombiner();
+			return;
+		}
+		
 		if (LOG.isDebugEnabled())
 			LOG.debug(this.taskContext.formatLogString("Preprocessing done, iterator obtained."));
 
@@ -183,6 +200,24 @@ public class CombineDriver<T> implements PactDriver<GenericReducer<T, ?>, T>
 			stub.combine(iter.getValues(), output);
 		}
 	}
+	
+	private void runHashCombiner() throws Exception
+	{
+		final MutableObjectIterator<T> in = this.taskContext.getInput(0);
+		final CombiningHashTable<T> table = this.table;
+		final Collector<T> output = this.taskContext.getOutputCollector();
+		final T record = this.serializer.createInstance();
+		
+		while (this.running && in.next(record)) {
+			if (!table.insert(record)) {
+				table.flush(output);
+			}
+		}
+		
+		if (this.running) {
+			table.flush(output);
+		}
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -195,6 +230,10 @@ public class CombineDriver<T> implements PactDriver<GenericReducer<T, ?>, T>
 			this.input.close();
 			this.input = null;
 		}
+		if (this.table != null) {
+			this.taskContext.getMemoryManager().release(this.table.close());
+			this.table = null;
+		}
 	}
 
 	/* (non-Javadoc)
@@ -26,6 +26,7 @@ import eu.stratosphere.pact.common.generic.types.TypeSerializer;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.ReduceStub;
 import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.runtime.hash.CombiningHashInputProvider;
 import eu.stratosphere.pact.runtime.sort.CombiningUnilateralSortMerger;
 import eu.stratosphere.pact.runtime.sort.UnilateralSortMerger;
 import eu.stratosphere.pact.runtime.task.util.CloseableInputProvider;
@@ -121,10 +122,13 @@ public class ReduceDriver<IT, OT> implements PactDriver<GenericReducer<IT, OT>,
 		final long availableMemory = config.getMemorySize();
 		final int maxFileHandles = config.getNumFilehandles();
 		final float spillThreshold = config.getSortSpillingTreshold();
+		final int numSortThreads = config.getNumSortThreads();
 
 		// test minimum memory requirements
 		final LocalStrategy ls = config.getLocalStrategy();
-		if ((ls == LocalStrategy.SORT || ls == LocalStrategy.COMBININGSORT) && availableMemory < MIN_REQUIRED_MEMORY) {
+		if ((ls == LocalStrategy.SORT || ls == LocalStrategy.COMBININGSORT || ls == LocalStrategy.COMBININGHASH)
+				&& availableMemory < MIN_REQUIRED_MEMORY)
+		{
 			throw new Exception("The Reduce task was initialized with too little memory for local strategy " +
 					config.getLocalStrategy() + " : " + availableMemory + " bytes." +
 					"Required is at least " + MIN_REQUIRED_MEMORY + " bytes.");
@@ -156,15 +160,23 @@ public class ReduceDriver<IT, OT> implements PactDriver<GenericReducer<IT, OT>,
 			// instantiate a sort-merger
 			this.input = new UnilateralSortMerger<IT>(memoryManager, ioManager, in,
 						this.taskContext.getOwningNepheleTask(), this.serializer, sortComparator,
-						availableMemory, maxFileHandles,
-				spillThreshold);
+						availableMemory, -1, maxFileHandles, spillThreshold, numSortThreads);
 			break;
 
 		case COMBININGSORT:
 			// instantiate a combining sort-merger
 			this.input = new CombiningUnilateralSortMerger<IT>(this.taskContext.getStub(), memoryManager,
 						ioManager, in, this.taskContext.getOwningNepheleTask(), this.serializer,
-						sortComparator, availableMemory, maxFileHandles, spillThreshold, false);
+						sortComparator, availableMemory, -1, maxFileHandles, spillThreshold, false, numSortThreads);
+			break;
+
+		// local strategy is COMBININGHASH
+		// The input is combined into one aggregate per key in a hash table. If the aggregates exceed the memory,
+		// they are spilled and sorted together with the remaining input.
+		case COMBININGHASH:
+			this.input = new CombiningHashInputProvider<IT>(this.taskContext.getStub(), memoryManager, ioManager, in,
+						this.taskContext.getOwningNepheleTask(), this.serializer, this.comparator.duplicate(),
+						sortComparator, availableMemory, maxFileHandles, spillThreshold, numSortThreads);
 			break;
 		default:
 			throw new Exception("Invalid local strategy provided for ReduceTask: " + ls.name());
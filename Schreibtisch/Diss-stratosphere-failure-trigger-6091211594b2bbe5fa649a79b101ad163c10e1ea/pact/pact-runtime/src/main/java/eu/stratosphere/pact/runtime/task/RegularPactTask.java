@@ -25,6 +25,7 @@ import org.apache.commons.logging.LogFactory;
 import com.google.common.base.Preconditions;
 
 import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
 import eu.stratosphere.nephele.execution.librarycache.LibraryCacheManager;
 import eu.stratosphere.nephele.io.AbstractRecordWriter;
 import eu.stratosphere.nephele.io.BroadcastRecordWriter;
@@ -60,6 +61,8 @@ import eu.stratosphere.pact.runtime.shipping.OutputEmitter;
 import eu.stratosphere.pact.runtime.shipping.PactRecordOutputCollector;
 import eu.stratosphere.pact.runtime.shipping.PactRecordOutputEmitter;
 import eu.stratosphere.pact.runtime.shipping.ShipStrategy.ShipStrategyType;
+import eu.stratosphere.pact.runtime.task.chaining.BatchCollector;
+import eu.stratosphere.pact.runtime.task.chaining.BatchingCollector;
 import eu.stratosphere.pact.runtime.task.chaining.ChainedDriver;
 import eu.stratosphere.pact.runtime.task.chaining.ExceptionInChainedStubException;
 import eu.stratosphere.pact.runtime.task.util.NepheleReaderIterator;
@@ -882,7 +885,30 @@ public class RegularPactTask<S extends Stub, OT> extends AbstractTask implements
 				ct.setup(chainedStubConf, taskName, nepheleTask, cl, previous);
 				chainedTasksTarget.add(0, ct);
 
-				previous = ct;
+				// if configured, hand the records in batches to chained tasks that process them as a whole
+				int batchSize = chainedStubConf.getChainingBatchSize();
+				if (batchSize < 0) {
+					batchSize = GlobalConfiguration.getInteger(PactConfigConstants.CHAINING_BATCH_SIZE_KEY,
+						PactConfigConstants.DEFAULT_CHAINING_BATCH_SIZE);
+				}
+				if (batchSize > 1 && ct instanceof BatchCollector && ((BatchCollector<?>) ct).acceptsBatches()) {
+					final Class<? extends TypeSerializerFactory<?>> serializerFactoryClass;
+					try {
+						serializerFactoryClass = chainedStubConf.getSerializerFactoryForInput(0, cl);
+					} catch (ClassNotFoundException cnfex) {
+						throw new Exception("The class registered as input serializer factory of chained task '" +
+							taskName + "' could not be loaded.", cnfex);
+					}
+					final TypeSerializerFactory<?> serializerFactory = serializerFactoryClass == null ?
+						PactRecordSerializerFactory.get() :
+						InstantiationUtil.instantiate(serializerFactoryClass, TypeSerializerFactory.class);
+					@SuppressWarnings({ "unchecked", "rawtypes" })
+					final Collector batching = new BatchingCollector((BatchCollector) ct,
+						serializerFactory.getSerializer(), batchSize);
+					previous = batching;
+				} else {
+					previous = ct;
+				}
 			}
 			// the collector of the first in the chain is the collector for the nephele task
 			return (Collector<T>) previous;
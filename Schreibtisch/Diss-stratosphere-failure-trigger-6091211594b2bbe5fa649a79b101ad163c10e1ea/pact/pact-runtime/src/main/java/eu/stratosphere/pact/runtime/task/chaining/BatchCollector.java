@@ -0,0 +1,45 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.task.chaining;
+
+import eu.stratosphere.pact.common.stubs.Collector;
+
+/**
+ * A collector that can additionally accept whole batches of records. Chained drivers implement this interface
+ * to hand the records of a batch to their user code in a single call, instead of being invoked through
+ * {@link Collector#collect(Object)} once per record. Since filling a batch copies every record, a driver only
+ * accepts batches if its user code processes them as a whole.
+ *
+ * @see BatchingCollector
+ */
+public interface BatchCollector<T> extends Collector<T>
+{
+	/**
+	 * Processes all records of the given batch. The batch is cleared and refilled by the caller after this
+	 * method returns, so implementations must not keep references to its records.
+	 * 
+	 * @param batch The batch of records.
+	 */
+	public void collectBatch(RecordBatch<T> batch);
+	
+	/**
+	 * Checks whether this collector processes batches as a whole and should therefore be fed through a
+	 * {@link BatchingCollector}. The method is called after the driver has been set up.
+	 * 
+	 * @return True, if records should be handed to this collector in batches, false otherwise.
+	 */
+	public boolean acceptsBatches();
+}
@@ -0,0 +1,81 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.task.chaining;
+
+import eu.stratosphere.pact.common.generic.types.TypeSerializer;
+import eu.stratosphere.pact.common.stubs.Collector;
+
+/**
+ * A collector that gathers records into a {@link RecordBatch} and hands the batch to a {@link BatchCollector}
+ * whenever it is full. It sits in front of a chained driver, so that the driver is invoked once per batch
+ * rather than once per record. When the collector is closed, it hands over the remaining records before it
+ * closes the target.
+ */
+public class BatchingCollector<T> implements Collector<T>
+{
+	private final BatchCollector<T> target;
+	
+	private final RecordBatch<T> batch;
+	
+	/**
+	 * Creates a new batching collector.
+	 * 
+	 * @param target The collector to which the batches are handed.
+	 * @param serializer The serializer used to copy the records into the batch.
+	 * @param batchSize The number of records per batch.
+	 */
+	public BatchingCollector(BatchCollector<T> target, TypeSerializer<T> serializer, int batchSize)
+	{
+		this.target = target;
+		this.batch = new RecordBatch<T>(serializer, batchSize);
+	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.common.stubs.Collector#collect(java.lang.Object)
+	 */
+	@Override
+	public void collect(T record)
+	{
+		if (this.batch.add(record)) {
+			flush();
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.common.stubs.Collector#close()
+	 */
+	@Override
+	public void close()
+	{
+		flush();
+		this.target.close();
+	}
+	
+	/**
+	 * Hands the records collected so far to the target.
+	 */
+	public void flush()
+	{
+		if (!this.batch.isEmpty()) {
+			try {
+				this.target.collectBatch(this.batch);
+			}
+			finally {
+				this.batch.clear();
+			}
+		}
+	}
+}
@@ -27,6 +27,7 @@ import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.Stub;
 import eu.stratosphere.pact.common.util.InstantiationUtil;
 import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.runtime.hash.CombiningHashTable;
 import eu.stratosphere.pact.runtime.plugable.PactRecordComparatorFactory;
 import eu.stratosphere.pact.runtime.plugable.PactRecordSerializerFactory;
 import eu.stratosphere.pact.runtime.sort.AsynchronousPartialSorterCollector;
@@ -55,6 +56,8 @@ public class ChainedCombineDriver<T> implements ChainedDriver<T, T>
 	
 	private AsynchronousPartialSorterCollector<T> sorter;
 	
+	private CombiningHashTable<T> table;
+	
 	private CombinerThread combinerThread;
 	
 	private AbstractInvokable parent;
@@ -111,6 +114,7 @@ public class ChainedCombineDriver<T> implements ChainedDriver<T, T>
 		long strategyMinMem = 0;
 		switch (ls) {
 			case COMBININGSORT:
+			case COMBININGHASH:
 				strategyMinMem = MIN_REQUIRED_MEMORY;
 				break;
 		}
@@ -170,6 +174,14 @@ public class ChainedCombineDriver<T> implements ChainedDriver<T, T>
 						serializer, comparator.duplicate(), availableMemory);
 				this.inputCollector = this.sorter.getInputCollector();
 				break;
+			
+			// local strategy is COMBININGHASH
+			// The input is combined in a hash table that holds one aggregate per key. Whenever the table is full,
+			// the aggregates are emitted and the table starts over. No combiner thread is needed.
+			case COMBININGHASH:
+				this.table = new CombiningHashTable<T>(serializer, comparator, this.combiner,
+						memoryManager.allocatePages(this.parent, availableMemory));
+				return;
 			default:
 				throw new RuntimeException("Invalid local strategy provided for CombineTask.");
 		}
@@ -189,6 +201,16 @@ public class ChainedCombineDriver<T> implements ChainedDriver<T, T>
 	@Override
 	public void closeTask() throws Exception
 	{
+		if (this.table != null) {
+			this.parent.getEnvironment().getMemoryManager().release(this.table.close());
+			this.table = null;
+			
+			if (!this.canceled) {
+				RegularPactTask.closeUserCode(this.combiner);
+			}
+			return;
+		}
+		
 		// wait for the thread that runs the combiner to finish
 		while (!this.canceled && this.combinerThread.isAlive()) {
 			try {
@@ -225,6 +247,11 @@ public class ChainedCombineDriver<T> implements ChainedDriver<T, T>
 		this.canceled = true;
 		this.exception = new Exception("Task has been canceled");
 		
+		// the hash table is used by the task's thread, its memory is released when the task is closed
+		if (this.table != null) {
+			return;
+		}
+		
 		this.combinerThread.cancel();
 		this.inputCollector.close();
 		this.sorter.close();
@@ -264,6 +291,18 @@ public class ChainedCombineDriver<T> implements ChainedDriver<T, T>
 	@Override
 	public void collect(T record)
 	{
+		if (this.table != null) {
+			try {
+				if (!this.table.insert(record)) {
+					this.table.flush(this.outputCollector);
+				}
+			}
+			catch (Exception ex) {
+				throw new ExceptionInChainedStubException(this.taskName, ex);
+			}
+			return;
+		}
+		
 		if (this.exception != null)
 			throw new RuntimeException("The combiner failed due to an exception.", 
 				this.exception.getCause() == null ? this.exception : this.exception.getCause());
@@ -277,6 +316,17 @@ public class ChainedCombineDriver<T> implements ChainedDriver<T, T>
 	@Override
 	public void close()
 	{
+		if (this.table != null) {
+			// the input is complete, emit the remaining aggregates
+			try {
+				this.table.flush(this.outputCollector);
+			}
+			catch (Exception ex) {
+				throw new ExceptionInChainedStubException(this.taskName, ex);
+			}
+			return;
+		}
+		
 		this.inputCollector.close();
 		
 		if (this.exception != null)
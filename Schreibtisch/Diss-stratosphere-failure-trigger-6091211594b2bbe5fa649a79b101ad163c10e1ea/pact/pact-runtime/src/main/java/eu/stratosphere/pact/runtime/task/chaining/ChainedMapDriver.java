@@ -17,6 +17,7 @@ package eu.stratosphere.pact.runtime.task.chaining;
 
 import eu.stratosphere.nephele.configuration.Configuration;
 import eu.stratosphere.nephele.template.AbstractInvokable;
+import eu.stratosphere.pact.common.generic.GenericBatchMapper;
 import eu.stratosphere.pact.common.generic.GenericMapper;
 import eu.stratosphere.pact.common.stubs.Collector;
 import eu.stratosphere.pact.common.stubs.Stub;
@@ -27,10 +28,12 @@ import eu.stratosphere.pact.runtime.task.util.TaskConfig;
 /**
  * @author Stephan Ewen
  */
-public class ChainedMapDriver<IT, OT> implements ChainedDriver<IT, OT>
+public class ChainedMapDriver<IT, OT> implements ChainedDriver<IT, OT>, BatchCollector<IT>
 {
 	private GenericMapper<IT, OT> mapper;
 	
+	private GenericBatchMapper<IT, OT> batchMapper;
+	
 	private Collector<OT> collector;
 	
 	private TaskConfig config;
@@ -56,6 +59,10 @@ public class ChainedMapDriver<IT, OT> implements ChainedDriver<IT, OT>
 		@SuppressWarnings("unchecked")
 		final GenericMapper<IT, OT> mapper = RegularPactTask.instantiateUserCode(config, userCodeClassLoader, GenericMapper.class);
 		this.mapper = mapper;
+		
+		if (mapper instanceof GenericBatchMapper) {
+			this.batchMapper = (GenericBatchMapper<IT, OT>) mapper;
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -125,6 +132,40 @@ public class ChainedMapDriver<IT, OT> implements ChainedDriver<IT, OT>
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.task.chaining.BatchCollector#collectBatch(eu.stratosphere.pact.runtime.task.chaining.RecordBatch)
+	 */
+	@Override
+	public void collectBatch(RecordBatch<IT> batch)
+	{
+		try {
+			if (this.batchMapper != null) {
+				this.batchMapper.mapBatch(batch.getRecords(), batch.size(), this.collector);
+			} else {
+				// cache references on the stack
+				final GenericMapper<IT, OT> mapper = this.mapper;
+				final Collector<OT> collector = this.collector;
+				final int size = batch.size();
+				
+				for (int i = 0; i < size; i++) {
+					mapper.map(batch.get(i), collector);
+				}
+			}
+		}
+		catch (Exception ex) {
+			throw new ExceptionInChainedStubException(this.taskName, ex);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see eu.stratosphere.pact.runtime.task.chaining.BatchCollector#acceptsBatches()
+	 */
+	@Override
+	public boolean acceptsBatches()
+	{
+		return this.batchMapper != null;
+	}
+
 	/* (non-Javadoc)
 	 * @see eu.stratosphere.pact.common.stubs.Collector#close()
 	 */
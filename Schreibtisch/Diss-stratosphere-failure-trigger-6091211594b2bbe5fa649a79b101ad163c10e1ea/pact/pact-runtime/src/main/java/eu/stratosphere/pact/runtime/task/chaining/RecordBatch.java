@@ -0,0 +1,143 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.task.chaining;
+
+import java.lang.reflect.Array;
+
+import eu.stratosphere.pact.common.generic.types.TypeSerializer;
+
+/**
+ * A batch of records that is handed at once from one chained driver to the next. The batch owns a fixed number
+ * of record instances that are reused for every batch: adding a record copies its contents into the next free
+ * instance, so that filling the batch does not allocate once the instances' internal buffers have grown to the
+ * size of the records. The copy cannot be avoided, because the producer of a record may reuse and modify it as
+ * soon as it has been collected.
+ * <p>
+ * The records of a batch are valid until the batch is cleared. A receiver may modify them.
+ *
+ * @param <T> The type of the records in the batch.
+ */
+public final class RecordBatch<T>
+{
+	private final TypeSerializer<T> serializer;
+	
+	private final T[] records;
+	
+	private int size;
+	
+	/**
+	 * Creates a new batch that holds up to the given number of records.
+	 * 
+	 * @param serializer The serializer used to create the record instances and to copy records into them.
+	 * @param capacity The maximal number of records in the batch.
+	 */
+	public RecordBatch(TypeSerializer<T> serializer, int capacity)
+	{
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of a record batch must be at least one.");
+		}
+		
+		this.serializer = serializer;
+		
+		// the array has the runtime type of the records, so that it can be passed to typed user code
+		final T first = serializer.createInstance();
+		@SuppressWarnings("unchecked")
+		final T[] records = (T[]) Array.newInstance(first.getClass(), capacity);
+		records[0] = first;
+		for (int i = 1; i < capacity; i++) {
+			records[i] = serializer.createInstance();
+		}
+		this.records = records;
+	}
+	
+	/**
+	 * Copies the given record into the batch.
+	 * 
+	 * @param record The record to add. It is not modified and may be reused by the caller.
+	 * @return True, if the batch is full after adding the record.
+	 * @throws IllegalStateException Thrown, if the batch is already full.
+	 */
+	public boolean add(T record)
+	{
+		if (this.size == this.records.length) {
+			throw new IllegalStateException("The record batch is full.");
+		}
+		this.serializer.copyTo(record, this.records[this.size++]);
+		return this.size == this.records.length;
+	}
+	
+	/**
+	 * Gets the record at the given position in the batch.
+	 * 
+	 * @param index The position of the record, between <code>0</code> and {@link #size()} exclusively.
+	 * @return The record at the given position.
+	 */
+	public T get(int index)
+	{
+		if (index >= this.size) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return this.records[index];
+	}
+	
+	/**
+	 * Gets the array holding the records of the batch. Only the first {@link #size()} entries are valid.
+	 * 
+	 * @return The array holding the records of the batch.
+	 */
+	public T[] getRecords()
+	{
+		return this.records;
+	}
+	
+	/**
+	 * Gets the number of records in the batch.
+	 * 
+	 * @return The number of records in the batch.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+	
+	/**
+	 * Gets the maximal number of records in the batch.
+	 * 
+	 * @return The capacity of the batch.
+	 */
+	public int capacity()
+	{
+		return this.records.length;
+	}
+	
+	/**
+	 * Checks whether the batch holds no records.
+	 * 
+	 * @return True, if the batch is empty, false otherwise.
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+	
+	/**
+	 * Empties the batch. The record instances are kept and reused for the next records.
+	 */
+	public void clear()
+	{
+		this.size = 0;
+	}
+}
@@ -63,6 +63,8 @@ public class TaskConfig
 		SORT,
 		// the input is sorted, during sorting a combiner is applied
 		COMBININGSORT,
+		// the input is grouped and combined in a hash table, which falls back to a combining sort if it exceeds memory
+		COMBININGHASH,
 		// the first input is build side, the second side is probe side of a hybrid hash table
 		HYBRIDHASH_FIRST,
 		// the second input is build side, the first side is probe side of a hybrid hash table
@@ -138,11 +140,15 @@ public class TaskConfig
 	
 	private static final String CHAINING_TASKNAME_PREFIX = "pact.chaining.taskname.";
 	
+	private static final String CHAINING_BATCH_SIZE = "pact.chaining.batchsize";
+	
 	private static final String SIZE_MEMORY = "pact.memory.size";
 
 	private static final String NUM_FILEHANDLES = "pact.filehandles.num";
 	
 	private static final String SORT_SPILLING_THRESHOLD = "pact.sort.spillthreshold";
+	
+	private static final String NUM_SORT_THREADS = "pact.sort.numthreads";
 
 	// --------------------------------------------------------------------------------------------
 	
@@ -529,6 +535,20 @@ public class TaskConfig
 		this.config.setFloat(SORT_SPILLING_THRESHOLD, threshold);
 	}
 	
+	/**
+	 * Sets the number of threads that sort the buffers of the task's sorter. With more than one thread, several
+	 * sort buffers are sorted concurrently and large buffers are split across the threads.
+	 * 
+	 * @param numSortThreads The number of sort threads.
+	 */
+	public void setNumSortThreads(int numSortThreads) {
+		if (numSortThreads < 1) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.config.setInteger(NUM_SORT_THREADS, numSortThreads);
+	}
+	
 	// --------------------------------------------------------------------------------------------
 
 	/**
@@ -562,6 +582,16 @@ public class TaskConfig
 		return this.config.getFloat(SORT_SPILLING_THRESHOLD, 0.7f);
 	}
 	
+	/**
+	 * Gets the number of threads that sort the buffers of the task's sorter. If the value is not set, this
+	 * method returns <code>1</code>.
+	 * 
+	 * @return The number of sort threads.
+	 */
+	public int getNumSortThreads() {
+		return this.config.getInteger(NUM_SORT_THREADS, 1);
+	}
+	
 	// --------------------------------------------------------------------------------------------
 	//                                    Parameters for Stub Chaining
 	// --------------------------------------------------------------------------------------------
@@ -603,6 +633,30 @@ public class TaskConfig
 		return this.config.getString(CHAINING_TASKNAME_PREFIX + chainPos, null);
 	}
 	
+	/**
+	 * Sets the number of records that are handed at once to this chained task. A value of <code>0</code>
+	 * hands over the records one at a time.
+	 * 
+	 * @param batchSize The number of records per batch.
+	 */
+	public void setChainingBatchSize(int batchSize) {
+		if (batchSize < 0) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.config.setInteger(CHAINING_BATCH_SIZE, batchSize);
+	}
+	
+	/**
+	 * Gets the number of records that are handed at once to this chained task. Returns <tt>-1</tt>, if the
+	 * value has not been set.
+	 * 
+	 * @return The number of records per batch.
+	 */
+	public int getChainingBatchSize() {
+		return this.config.getInteger(CHAINING_BATCH_SIZE, -1);
+	}
+	
 	// --------------------------------------------------------------------------------------------
 	//                              Utility class for nested Configurations
 	// --------------------------------------------------------------------------------------------
@@ -0,0 +1,260 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.hash;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.services.memorymanager.MemoryManager;
+import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
+import eu.stratosphere.nephele.services.memorymanager.spi.DefaultMemoryManager;
+import eu.stratosphere.nephele.template.AbstractInvokable;
+import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.ReduceStub;
+import eu.stratosphere.pact.common.type.Key;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+import eu.stratosphere.pact.common.type.base.PactString;
+import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.runtime.plugable.PactRecordComparator;
+import eu.stratosphere.pact.runtime.plugable.PactRecordSerializer;
+import eu.stratosphere.pact.runtime.test.util.DummyInvokable;
+import eu.stratosphere.pact.runtime.test.util.UniformPactRecordGenerator;
+
+/**
+ * Tests for the {@link CombiningHashTable}.
+ */
+public class CombiningHashTableTest
+{
+	private static final AbstractInvokable MEM_OWNER = new DummyInvokable();
+
+	private static final int PAGE_SIZE = 8 * 1024;
+
+	private MemoryManager memManager;
+
+	private PactRecordComparator comparator;
+
+	@Before
+	public void setup()
+	{
+		final int[] keyPos = new int[] {0};
+		@SuppressWarnings("unchecked")
+		final Class<? extends Key>[] keyType = (Class<? extends Key>[]) new Class[] { PactInteger.class };
+		this.comparator = new PactRecordComparator(keyPos, keyType);
+		this.memManager = new DefaultMemoryManager(1024 * 1024, PAGE_SIZE);
+	}
+
+	@After
+	public void tearDown()
+	{
+		if (!this.memManager.verifyEmpty()) {
+			Assert.fail("Not all memory was properly released to the memory manager --> Memory Leak.");
+		}
+		this.memManager.shutdown();
+	}
+
+	@Test
+	public void testAggregateInMemory() throws Exception
+	{
+		final int keyCnt = 100;
+		final int valCnt = 20;
+
+		final List<MemorySegment> memory = this.memManager.allocatePages(MEM_OWNER, 64);
+		final CombiningHashTable<PactRecord> table = new CombiningHashTable<PactRecord>(PactRecordSerializer.get(),
+			this.comparator, new SummingStub(), memory);
+
+		final MutableObjectIterator<PactRecord> input = new UniformPactRecordGenerator(keyCnt, valCnt, false);
+		final PactRecord record = new PactRecord();
+		while (input.next(record)) {
+			Assert.assertTrue("Table ran full unexpectedly.", table.insert(record));
+		}
+		Assert.assertEquals(keyCnt, table.size());
+
+		int expSum = 0;
+		for (int i = 1; i < valCnt; i++) {
+			expSum += i;
+		}
+
+		final ListCollector output = new ListCollector();
+		table.flush(output);
+		Assert.assertTrue(table.isEmpty());
+		Assert.assertEquals(keyCnt, output.records.size());
+
+		final boolean[] seen = new boolean[keyCnt];
+		for (PactRecord aggregate : output.records) {
+			final int key = aggregate.getField(0, PactInteger.class).getValue();
+			Assert.assertFalse("Key " + key + " was emitted twice.", seen[key]);
+			seen[key] = true;
+			Assert.assertEquals(expSum, aggregate.getField(1, PactInteger.class).getValue());
+		}
+
+		this.memManager.release(table.close());
+	}
+
+	@Test
+	public void testFlushWhenFull() throws Exception
+	{
+		final int keyCnt = 5000;
+		final int valCnt = 4;
+
+		final List<MemorySegment> memory = this.memManager.allocatePages(MEM_OWNER, 4);
+		final CombiningHashTable<PactRecord> table = new CombiningHashTable<PactRecord>(PactRecordSerializer.get(),
+			this.comparator, new SummingStub(), memory);
+
+		final ListCollector output = new ListCollector();
+		final MutableObjectIterator<PactRecord> input = new UniformPactRecordGenerator(keyCnt, valCnt, false);
+		final PactRecord record = new PactRecord();
+		int numFlushes = 0;
+		while (input.next(record)) {
+			if (!table.insert(record)) {
+				table.flush(output);
+				numFlushes++;
+			}
+		}
+		table.flush(output);
+		Assert.assertTrue("The table never ran full.", numFlushes > 0);
+
+		// the partial aggregates must add up to the full sums
+		final Map<Integer, Integer> sums = new HashMap<Integer, Integer>();
+		for (PactRecord aggregate : output.records) {
+			final int key = aggregate.getField(0, PactInteger.class).getValue();
+			final int value = aggregate.getField(1, PactInteger.class).getValue();
+			final Integer sum = sums.get(key);
+			sums.put(key, sum == null ? value : sum + value);
+		}
+
+		int expSum = 0;
+		for (int i = 1; i < valCnt; i++) {
+			expSum += i;
+		}
+		Assert.assertEquals(keyCnt, sums.size());
+		for (Integer sum : sums.values()) {
+			Assert.assertEquals(expSum, sum.intValue());
+		}
+
+		this.memManager.release(table.close());
+	}
+
+	@Test
+	public void testGrowingAggregates() throws Exception
+	{
+		final int keyCnt = 50;
+		final int valCnt = 30;
+
+		final List<MemorySegment> memory = this.memManager.allocatePages(MEM_OWNER, 64);
+		final CombiningHashTable<PactRecord> table = new CombiningHashTable<PactRecord>(PactRecordSerializer.get(),
+			this.comparator, new ConcatenatingStub(), memory);
+
+		final MutableObjectIterator<PactRecord> input = new UniformPactRecordGenerator(keyCnt, valCnt, false);
+		final PactRecord record = new PactRecord();
+		final PactString value = new PactString();
+		while (input.next(record)) {
+			value.setValue(String.valueOf(record.getField(1, PactInteger.class).getValue()));
+			record.setField(1, value);
+			Assert.assertTrue("Table ran full unexpectedly.", table.insert(record));
+		}
+		Assert.assertEquals(keyCnt, table.size());
+
+		final ListCollector output = new ListCollector();
+		table.flush(output);
+		Assert.assertEquals(keyCnt, output.records.size());
+		for (PactRecord aggregate : output.records) {
+			// every value must have been appended exactly once
+			final String[] parts = aggregate.getField(1, PactString.class).getValue().split(",");
+			Assert.assertEquals(valCnt, parts.length);
+			final boolean[] seen = new boolean[valCnt];
+			for (String part : parts) {
+				final int v = Integer.parseInt(part);
+				Assert.assertFalse(seen[v]);
+				seen[v] = true;
+			}
+		}
+
+		this.memManager.release(table.close());
+	}
+
+	// --------------------------------------------------------------------------------------------
+
+	private static final class ListCollector implements Collector<PactRecord>
+	{
+		private final List<PactRecord> records = new ArrayList<PactRecord>();
+
+		@Override
+		public void collect(PactRecord record) {
+			this.records.add(record.createCopy());
+		}
+
+		@Override
+		public void close() {}
+	}
+
+	public static final class SummingStub extends ReduceStub
+	{
+		private final PactInteger value = new PactInteger();
+
+		@Override
+		public void reduce(Iterator<PactRecord> records, Collector<PactRecord> out) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void combine(Iterator<PactRecord> records, Collector<PactRecord> out) {
+			PactRecord element = null;
+			int sum = 0;
+			while (records.hasNext()) {
+				element = records.next();
+				sum += element.getField(1, this.value).getValue();
+			}
+			this.value.setValue(sum);
+			element.setField(1, this.value);
+			out.collect(element);
+		}
+	}
+
+	public static final class ConcatenatingStub extends ReduceStub
+	{
+		private final PactString value = new PactString();
+
+		@Override
+		public void reduce(Iterator<PactRecord> records, Collector<PactRecord> out) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void combine(Iterator<PactRecord> records, Collector<PactRecord> out) {
+			PactRecord element = null;
+			final StringBuilder bld = new StringBuilder();
+			while (records.hasNext()) {
+				element = records.next();
+				if (bld.length() > 0) {
+					bld.append(',');
+				}
+				bld.append(element.getField(1, this.value).getValue());
+			}
+			this.value.setValue(bld.toString());
+			element.setField(1, this.value);
+			out.collect(element);
+		}
+	}
+}
@@ -27,6 +27,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import eu.stratosphere.nephele.services.iomanager.IOManager;
+import eu.stratosphere.nephele.services.iomanager.IOStatistics;
 import eu.stratosphere.nephele.services.memorymanager.MemoryAllocationException;
 import eu.stratosphere.nephele.services.memorymanager.MemoryManager;
 import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
@@ -1325,6 +1326,77 @@ public class HashTableITCase
 		this.memManager.release(join.getFreedMemory());
 	}
 	
+	/*
+	 * This test validates that probe side records which have no join partner in a spilled partition are
+	 * filtered out by the bucket's bloom filters, rather than being spilled.
+	 */
+	@Test
+	public void testSpilledPartitionsFilterNonMatchingProbeRecordsIntPair() throws IOException
+	{
+		final int NUM_KEYS = 1000000;
+		
+		// probe with keys that all match and with keys that all do not match
+		final long matchingProbeBytes = runSpillingJoinAndGetProbeBytesWritten(0, NUM_KEYS, NUM_KEYS);
+		final long nonMatchingProbeBytes = runSpillingJoinAndGetProbeBytesWritten(NUM_KEYS, NUM_KEYS, 0);
+		
+		Assert.assertTrue("The join did not spill any probe side records.", matchingProbeBytes > 0);
+		Assert.assertTrue("Bloom filters did not prevent spilling the non-matching probe side records: " + 
+			nonMatchingProbeBytes + " bytes spilled, compared to " + matchingProbeBytes + " for matching records.",
+			nonMatchingProbeBytes < matchingProbeBytes / 10);
+	}
+	
+	private long runSpillingJoinAndGetProbeBytesWritten(int firstProbeKey, int numProbeKeys, int expectedNumResults)
+	throws IOException
+	{
+		final int NUM_BUILD_KEYS = 1000000;
+		
+		MutableObjectIterator<IntPair> buildInput = new UniformIntPairGenerator(NUM_BUILD_KEYS, 1, false);
+
+		// allocate the memory for the HashTable
+		List<MemorySegment> memSegments;
+		try {
+			memSegments = this.memManager.allocatePages(MEM_OWNER, 128);
+		}
+		catch (MemoryAllocationException maex) {
+			fail("Memory for the Join could not be provided.");
+			return -1;
+		}
+
+		final MutableHashTable<IntPair, IntPair> join = new MutableHashTable<IntPair, IntPair>(
+				this.pairBuildSideAccesssor, this.pairProbeSideAccesssor, 
+				this.pairBuildSideComparator, this.pairProbeSideComparator, this.pairComparator,
+				memSegments, ioManager);
+		join.open(buildInput, new KeyRangeIntPairsIterator(firstProbeKey, numProbeKeys));
+		
+		// everything written from here on comes from the probe side
+		final long buildBytesWritten = getBytesWritten();
+
+		final IntPair record = new IntPair();
+		int numRecordsInJoinResult = 0;
+		
+		while (join.nextRecord()) {
+			HashBucketIterator<IntPair, IntPair> buildSide = join.getBuildSideIterator();
+			while (buildSide.next(record)) {
+				numRecordsInJoinResult++;
+			}
+		}
+		Assert.assertEquals("Wrong number of records in join result.", expectedNumResults, numRecordsInJoinResult);
+
+		join.close();
+		this.memManager.release(join.getFreedMemory());
+		
+		return getBytesWritten() - buildBytesWritten;
+	}
+	
+	private long getBytesWritten()
+	{
+		long bytes = 0;
+		for (IOStatistics stats : this.ioManager.getStatistics()) {
+			bytes += stats.getNumBytesWritten();
+		}
+		return bytes;
+	}
+	
 	@Test
 	public void testInMemoryReOpen() throws IOException
 	{
@@ -1464,6 +1536,35 @@ public class HashTableITCase
 		}
 	}
 	
+	/**
+	 * An iterator that returns one Key/Value pair for each key in a range of keys.
+	 */
+	private static final class KeyRangeIntPairsIterator implements MutableObjectIterator<IntPair>
+	{
+		private int nextKey;
+		
+		private int numLeft;
+		
+		public KeyRangeIntPairsIterator(int firstKey, int count)
+		{
+			this.nextKey = firstKey;
+			this.numLeft = count;
+		}
+
+		@Override
+		public boolean next(IntPair target) {
+			if (this.numLeft > 0) {
+				this.numLeft--;
+				target.setKey(this.nextKey);
+				target.setValue(this.nextKey++);
+				return true;
+			}
+			else {
+				return false;
+			}
+		}
+	}
+	
 	// ============================================================================================
 	
 	private static final class PactRecordPairComparatorFirstInt implements TypePairComparator<PactRecord, PactRecord>
@@ -17,6 +17,8 @@ package eu.stratosphere.pact.runtime.sort;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -359,6 +361,55 @@ public class NormalizedKeySorterTest
 		this.memoryManager.release(sorter.dispose());
 	}
 	
+	@Test
+	public void testRadixSort() throws Exception
+	{
+		final int numSegments = MEMORY_SIZE / MEMORY_PAGE_SIZE;
+		final List<MemorySegment> memory = this.memoryManager.allocatePages(new DummyInvokable(), numSegments);
+		
+		NormalizedKeySorter<PactRecord> sorter = newSortBuffer(memory);
+		TestData.Generator generator = new TestData.Generator(SEED, KEY_MAX, VALUE_LENGTH, KeyMode.RANDOM,
+			ValueMode.RANDOM_LENGTH);
+		final int num = fillSortBuffer(sorter, generator);
+		
+		Assert.assertTrue("Radix sort must be applicable to integer keys.", RadixSort.isApplicable(sorter));
+		
+		RadixSort rs = new RadixSort();
+		rs.sort(sorter);
+		
+		checkSortOrder(sorter, 0, new Key(), new Key(), true, num);
+		
+		// release the memory occupied by the buffers
+		this.memoryManager.release(sorter.dispose());
+	}
+	
+	@Test
+	public void testRadixSortDescendingWithDuplicates() throws Exception
+	{
+		final int numSegments = MEMORY_SIZE / MEMORY_PAGE_SIZE;
+		final List<MemorySegment> memory = this.memoryManager.allocatePages(new DummyInvokable(), numSegments);
+		
+		@SuppressWarnings("unchecked")
+		PactRecordComparator accessors = new PactRecordComparator(new int[] {0}, new Class[]{Key.class},
+			new boolean[] {false});
+		NormalizedKeySorter<PactRecord> sorter = new NormalizedKeySorter<PactRecord>(PactRecordSerializer.get(),
+			accessors, memory);
+		
+		TestData.Generator generator = new TestData.Generator(SEED, 1000, VALUE_LENGTH, KeyMode.RANDOM,
+			ValueMode.RANDOM_LENGTH);
+		final int num = fillSortBuffer(sorter, generator);
+		
+		Assert.assertTrue("Radix sort must be applicable to integer keys.", RadixSort.isApplicable(sorter));
+		
+		RadixSort rs = new RadixSort();
+		rs.sort(sorter);
+		
+		checkSortOrder(sorter, 0, new Key(), new Key(), false, num);
+		
+		// release the memory occupied by the buffers
+		this.memoryManager.release(sorter.dispose());
+	}
+	
 	@Test
 	public void testSortShortStringKeys() throws Exception
 	{
@@ -454,4 +505,86 @@ public class NormalizedKeySorterTest
 		// release the memory occupied by the buffers
 		this.memoryManager.release(sorter.dispose());
 	}
+	
+	@Test
+	public void testParallelSortLongStringKeys() throws Exception
+	{
+		final int numSegments = MEMORY_SIZE / MEMORY_PAGE_SIZE;
+		final List<MemorySegment> memory = this.memoryManager.allocatePages(new DummyInvokable(), numSegments);
+		
+		@SuppressWarnings("unchecked")
+		PactRecordComparator accessors = new PactRecordComparator(new int[] {1}, new Class[]{Value.class});
+		NormalizedKeySorter<PactRecord> sorter = new NormalizedKeySorter<PactRecord>(PactRecordSerializer.get(),
+			accessors, memory);
+		
+		TestData.Generator generator = new TestData.Generator(SEED, KEY_MAX, VALUE_LENGTH, KeyMode.RANDOM,
+			ValueMode.RANDOM_LENGTH);
+		final int num = fillSortBuffer(sorter, generator);
+		
+		// split down to small ranges, so that many ranges are sorted concurrently
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			ParallelQuickSort qs = new ParallelQuickSort(executor, 4, 1024);
+			qs.sort(sorter);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		
+		checkSortOrder(sorter, 1, new Value(), new Value(), true, num);
+		
+		// release the memory occupied by the buffers
+		this.memoryManager.release(sorter.dispose());
+	}
+	
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Writes records from the given generator into the sort buffer until it is full.
+	 * 
+	 * @return The number of records in the buffer.
+	 */
+	private int fillSortBuffer(NormalizedKeySorter<PactRecord> sorter, TestData.Generator generator)
+	throws Exception
+	{
+		PactRecord record = new PactRecord();
+		int num = -1;
+		do {
+			generator.next(record);
+			num++;
+		}
+		while (sorter.write(record));
+		return num;
+	}
+	
+	/**
+	 * Reads the sorted buffer and checks that the given field is in ascending or descending order and that
+	 * no record got lost. The two key instances are used to hold the current and the previous field value.
+	 */
+	private void checkSortOrder(NormalizedKeySorter<PactRecord> sorter, int field,
+			eu.stratosphere.pact.common.type.Key current, eu.stratosphere.pact.common.type.Key last,
+			boolean ascending, int expectedCount)
+	throws Exception
+	{
+		MutableObjectIterator<PactRecord> iter = sorter.getIterator();
+		PactRecord readTarget = new PactRecord();
+		
+		iter.next(readTarget);
+		readTarget.getFieldInto(field, last);
+		int count = 1;
+		
+		while (iter.next(readTarget)) {
+			readTarget.getFieldInto(field, current);
+			count++;
+			
+			final int cmp = last.compareTo(current);
+			if (ascending ? cmp > 0 : cmp < 0)
+				Assert.fail("Next key is not in sort order with the previous key.");
+			
+			eu.stratosphere.pact.common.type.Key tmp = current;
+			current = last;
+			last = tmp;
+		}
+		Assert.assertEquals("Wrong number of records after sorting.", expectedCount, count);
+	}
 }
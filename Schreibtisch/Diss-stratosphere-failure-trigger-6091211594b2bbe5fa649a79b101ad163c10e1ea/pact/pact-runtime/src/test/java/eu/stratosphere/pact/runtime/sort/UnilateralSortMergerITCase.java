@@ -16,6 +16,7 @@
 package eu.stratosphere.pact.runtime.sort;
 
 import java.util.Comparator;
+import java.util.List;
 
 import junit.framework.Assert;
 
@@ -25,14 +26,19 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.nephele.configuration.GlobalConfiguration;
+import eu.stratosphere.nephele.services.iomanager.BlockCompressionCodecs;
 import eu.stratosphere.nephele.services.iomanager.IOManager;
 import eu.stratosphere.nephele.services.memorymanager.MemoryManager;
+import eu.stratosphere.nephele.services.memorymanager.MemorySegment;
 import eu.stratosphere.nephele.services.memorymanager.spi.DefaultMemoryManager;
 import eu.stratosphere.nephele.template.AbstractTask;
 import eu.stratosphere.pact.common.generic.types.TypeComparator;
 import eu.stratosphere.pact.common.generic.types.TypeSerializer;
 import eu.stratosphere.pact.common.type.PactRecord;
 import eu.stratosphere.pact.common.util.MutableObjectIterator;
+import eu.stratosphere.pact.common.util.PactConfigConstants;
 import eu.stratosphere.pact.runtime.plugable.PactRecordComparator;
 import eu.stratosphere.pact.runtime.plugable.PactRecordSerializer;
 import eu.stratosphere.pact.runtime.test.util.DummyInvokable;
@@ -242,6 +248,95 @@ public class UnilateralSortMergerITCase
 		merger.close();
 	}
 
+	@Test
+	public void testSpillingSortWithParallelSortThreads() throws Exception
+	{
+		// comparator
+		final Comparator<TestData.Key> keyComparator = new TestData.KeyComparator();
+		
+		final TestData.Generator generator = new TestData.Generator(SEED, KEY_MAX, VALUE_LENGTH, KeyMode.RANDOM, ValueMode.CONSTANT, VAL);
+		final MutableObjectIterator<PactRecord> source = new TestData.GeneratorIterator(generator, NUM_PAIRS);
+
+		// merge iterator
+		LOG.debug("Initializing sortmerger...");
+		
+		Sorter<PactRecord> merger = new UnilateralSortMerger<PactRecord>(this.memoryManager, this.ioManager, 
+				source, this.parentTask, this.pactRecordSerializer, this.pactRecordComparator,
+				16 * 1024 * 1024, 4, 64, 0.7f, 4);
+
+		// emit data
+		LOG.debug("Reading and sorting data...");
+
+		// check order
+		MutableObjectIterator<PactRecord> iterator = merger.getIterator();
+		
+		LOG.debug("Checking results...");
+		int pairsEmitted = 1;
+
+		PactRecord rec1 = new PactRecord();
+		PactRecord rec2 = new PactRecord();
+		
+		Assert.assertTrue(iterator.next(rec1));
+		while (iterator.next(rec2)) {
+			final Key k1 = rec1.getField(0, TestData.Key.class);
+			final Key k2 = rec2.getField(0, TestData.Key.class);
+			pairsEmitted++;
+			
+			Assert.assertTrue(keyComparator.compare(k1, k2) <= 0); 
+			
+			PactRecord tmp = rec1;
+			rec1 = rec2;
+			k1.setKey(k2.getKey());
+			
+			rec2 = tmp;
+		}
+		Assert.assertTrue(NUM_PAIRS == pairsEmitted);
+		
+		merger.close();
+	}
+
+	@Test
+	public void testSpillingSortWithParallelRadixSort() throws Exception
+	{
+		// descending integer keys with many duplicates, which the normalized key fully determines
+		@SuppressWarnings("unchecked")
+		final TypeComparator<PactRecord> comparator = new PactRecordComparator(new int[] {0},
+			new Class[] {TestData.Key.class}, new boolean[] {false});
+		
+		final List<MemorySegment> memory = this.memoryManager.allocatePages(this.parentTask, 4);
+		final NormalizedKeySorter<PactRecord> buffer = new NormalizedKeySorter<PactRecord>(
+			this.pactRecordSerializer, comparator, memory);
+		Assert.assertTrue("Radix sort must be applicable to integer keys.", RadixSort.isApplicable(buffer));
+		this.memoryManager.release(buffer.dispose());
+		
+		final TestData.Generator generator = new TestData.Generator(SEED, 1000, VALUE_LENGTH, KeyMode.RANDOM,
+			ValueMode.CONSTANT, VAL);
+		final MutableObjectIterator<PactRecord> source = new TestData.GeneratorIterator(generator, NUM_PAIRS);
+		
+		// several small buffers, so that buffers are radix sorted concurrently
+		Sorter<PactRecord> merger = new UnilateralSortMerger<PactRecord>(this.memoryManager, this.ioManager, 
+				source, this.parentTask, this.pactRecordSerializer, comparator,
+				16 * 1024 * 1024, 8, 64, 0.7f, 4);
+		
+		MutableObjectIterator<PactRecord> iterator = merger.getIterator();
+		
+		int pairsEmitted = 1;
+		PactRecord rec = new PactRecord();
+		
+		Assert.assertTrue(iterator.next(rec));
+		int last = rec.getField(0, TestData.Key.class).getKey();
+		while (iterator.next(rec)) {
+			final int current = rec.getField(0, TestData.Key.class).getKey();
+			pairsEmitted++;
+			
+			Assert.assertTrue("Keys are not in descending order.", last >= current);
+			last = current;
+		}
+		Assert.assertEquals(NUM_PAIRS, pairsEmitted);
+		
+		merger.close();
+	}
+
 	@Test
 	public void testSpillingSortWithIntermediateMerge() throws Exception
 	{
@@ -296,4 +391,113 @@ public class UnilateralSortMergerITCase
 		Assert.assertEquals("Not all pairs were read back in.", PAIRS, pairsRead);
 		merger.close();
 	}
+	
+	@Test
+	public void testSpillingSortWithParallelIntermediateMerges() throws Exception
+	{
+		// amount of pairs
+		final int PAIRS = 3000000;
+
+		// comparator
+		final Comparator<TestData.Key> keyComparator = new TestData.KeyComparator();
+
+		final TestData.Generator generator = new TestData.Generator(SEED, KEY_MAX, VALUE_LENGTH, KeyMode.RANDOM, ValueMode.FIX_LENGTH);
+		final MutableObjectIterator<PactRecord> source = new TestData.GeneratorIterator(generator, PAIRS);
+		
+		// two temp directories allow two intermediate merges at the same time
+		final String tempDir = System.getProperty("java.io.tmpdir");
+		final IOManager ioManager = new IOManager(new String[] {tempDir, tempDir});
+		
+		try {
+			// merge iterator
+			LOG.debug("Initializing sortmerger...");
+			
+			Sorter<PactRecord> merger = new UnilateralSortMerger<PactRecord>(this.memoryManager, ioManager, 
+					source, this.parentTask, this.pactRecordSerializer, this.pactRecordComparator,
+					16 * 1024 * 1024, 4, 0.7f);
+	
+			// check order
+			MutableObjectIterator<PactRecord> iterator = merger.getIterator();
+			
+			LOG.debug("Checking results...");
+			int pairsRead = 1;
+	
+			PactRecord rec1 = new PactRecord();
+			PactRecord rec2 = new PactRecord();
+			
+			Assert.assertTrue(iterator.next(rec1));
+			while (iterator.next(rec2)) {
+				final Key k1 = rec1.getField(0, TestData.Key.class);
+				final Key k2 = rec2.getField(0, TestData.Key.class);
+				pairsRead++;
+				
+				Assert.assertTrue(keyComparator.compare(k1, k2) <= 0); 
+				
+				PactRecord tmp = rec1;
+				rec1 = rec2;
+				k1.setKey(k2.getKey());
+				rec2 = tmp;
+			}
+			Assert.assertEquals("Not all pairs were read back in.", PAIRS, pairsRead);
+			merger.close();
+		}
+		finally {
+			ioManager.shutdown();
+		}
+	}
+	
+	@Test
+	public void testSpillingSortWithCompression() throws Exception
+	{
+		// amount of pairs
+		final int PAIRS = 3000000;
+
+		// comparator
+		final Comparator<TestData.Key> keyComparator = new TestData.KeyComparator();
+
+		final TestData.Generator generator = new TestData.Generator(SEED, KEY_MAX, VALUE_LENGTH, KeyMode.RANDOM, ValueMode.FIX_LENGTH);
+		final MutableObjectIterator<PactRecord> source = new TestData.GeneratorIterator(generator, PAIRS);
+		
+		final Configuration config = new Configuration();
+		config.setString(PactConfigConstants.SORT_SPILL_COMPRESSION_KEY, BlockCompressionCodecs.LZ);
+		GlobalConfiguration.includeConfiguration(config);
+		
+		try {
+			// merge iterator, with enough runs for intermediate merges
+			LOG.debug("Initializing sortmerger...");
+			
+			Sorter<PactRecord> merger = new UnilateralSortMerger<PactRecord>(this.memoryManager, this.ioManager, 
+					source, this.parentTask, this.pactRecordSerializer, this.pactRecordComparator,
+					16 * 1024 * 1024, 4, 0.7f);
+	
+			// check order
+			MutableObjectIterator<PactRecord> iterator = merger.getIterator();
+			
+			LOG.debug("Checking results...");
+			int pairsRead = 1;
+	
+			PactRecord rec1 = new PactRecord();
+			PactRecord rec2 = new PactRecord();
+			
+			Assert.assertTrue(iterator.next(rec1));
+			while (iterator.next(rec2)) {
+				final Key k1 = rec1.getField(0, TestData.Key.class);
+				final Key k2 = rec2.getField(0, TestData.Key.class);
+				pairsRead++;
+				
+				Assert.assertTrue(keyComparator.compare(k1, k2) <= 0); 
+				
+				PactRecord tmp = rec1;
+				rec1 = rec2;
+				k1.setKey(k2.getKey());
+				rec2 = tmp;
+			}
+			Assert.assertEquals("Not all pairs were read back in.", PAIRS, pairsRead);
+			merger.close();
+		}
+		finally {
+			config.setString(PactConfigConstants.SORT_SPILL_COMPRESSION_KEY, PactConfigConstants.DEFAULT_SORT_SPILL_COMPRESSION);
+			GlobalConfiguration.includeConfiguration(config);
+		}
+	}
 }
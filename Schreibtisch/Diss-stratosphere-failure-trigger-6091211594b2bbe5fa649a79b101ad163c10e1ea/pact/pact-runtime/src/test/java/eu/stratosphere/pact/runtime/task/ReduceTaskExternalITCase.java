@@ -204,6 +204,48 @@ public class ReduceTaskExternalITCase extends DriverTestBase<GenericReducer<Pact
 		
 	}
 	
+	@Test
+	public void testSpillingCombiningHashReduceTask() {
+
+		int keyCnt = 131072;
+		int valCnt = 4;
+		
+		addInput(new UniformPactRecordGenerator(keyCnt, valCnt, false));
+		addOutput(this.outList);
+		
+		// the aggregates of all keys exceed the memory, so that the hash table falls back to sorting
+		ReduceDriver<PactRecord, PactRecord> testTask = new ReduceDriver<PactRecord, PactRecord>();
+		super.getTaskConfig().setLocalStrategy(LocalStrategy.COMBININGHASH);
+		super.getTaskConfig().setMemorySize(3 * 1024 * 1024);
+		super.getTaskConfig().setNumFilehandles(2);
+		
+		final int[] keyPos = new int[]{0};
+		@SuppressWarnings("unchecked")
+		final Class<? extends Key>[] keyClasses = (Class<? extends Key>[]) new Class[]{ PactInteger.class };
+		addInputComparator(new PactRecordComparator(keyPos, keyClasses));
+		
+		try {
+			testDriver(testTask, MockCombiningReduceStub.class);
+		} catch (Exception e) {
+			LOG.debug(e);
+			Assert.fail("Invoke method caused exception.");
+		}
+		
+		int expSum = 0;
+		for(int i=1;i<valCnt;i++) {
+			expSum+=i;
+		}
+		
+		Assert.assertTrue("Resultset size was "+this.outList.size()+". Expected was "+keyCnt, this.outList.size() == keyCnt);
+		
+		for(PactRecord record : this.outList) {
+			Assert.assertTrue("Incorrect result", record.getField(1, PactInteger.class).getValue() == expSum-record.getField(0, PactInteger.class).getValue());
+		}
+		
+		this.outList.clear();
+		
+	}
+	
 	public static class MockReduceStub extends ReduceStub {
 
 		private final PactInteger key = new PactInteger();
@@ -0,0 +1,141 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.task.chaining;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+import eu.stratosphere.pact.runtime.plugable.PactRecordSerializerFactory;
+
+/**
+ * Tests for the {@link BatchingCollector} and the {@link RecordBatch}.
+ */
+public class BatchingCollectorTest
+{
+	private static final int BATCH_SIZE = 32;
+	
+	@Test
+	public void testBatchesAreHandedOverWhole()
+	{
+		final RecordingBatchCollector target = new RecordingBatchCollector();
+		final BatchingCollector<PactRecord> collector = new BatchingCollector<PactRecord>(target,
+			PactRecordSerializerFactory.get().getSerializer(), BATCH_SIZE);
+		
+		final int numRecords = 3 * BATCH_SIZE + 5;
+		
+		// the same record instance is modified after every call, as the drivers do it
+		final PactRecord record = new PactRecord();
+		final PactInteger value = new PactInteger();
+		for (int i = 0; i < numRecords; i++) {
+			value.setValue(i);
+			record.setField(0, value);
+			collector.collect(record);
+		}
+		
+		Assert.assertEquals(3, target.batchSizes.size());
+		Assert.assertEquals(0, target.numSingleRecords);
+		Assert.assertFalse(target.closed);
+		
+		collector.close();
+		
+		Assert.assertTrue(target.closed);
+		Assert.assertEquals(4, target.batchSizes.size());
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(BATCH_SIZE, target.batchSizes.get(i).intValue());
+		}
+		Assert.assertEquals(5, target.batchSizes.get(3).intValue());
+		
+		Assert.assertEquals(numRecords, target.values.size());
+		for (int i = 0; i < numRecords; i++) {
+			Assert.assertEquals(i, target.values.get(i).intValue());
+		}
+	}
+	
+	@Test
+	public void testRecordInstancesAreReused()
+	{
+		final RecordBatch<PactRecord> batch = new RecordBatch<PactRecord>(
+			PactRecordSerializerFactory.get().getSerializer(), 2);
+		
+		final PactRecord[] records = batch.getRecords();
+		Assert.assertEquals(PactRecord[].class, records.getClass());
+		
+		final PactRecord record = new PactRecord(new PactInteger(1));
+		Assert.assertFalse(batch.add(record));
+		Assert.assertTrue(batch.add(record));
+		Assert.assertNotSame(record, batch.get(0));
+		
+		try {
+			batch.add(record);
+			Assert.fail("A full batch must not accept further records.");
+		}
+		catch (IllegalStateException isex) {}
+		
+		batch.clear();
+		Assert.assertTrue(batch.isEmpty());
+		
+		batch.add(new PactRecord(new PactInteger(2)));
+		Assert.assertSame(records[0], batch.get(0));
+		Assert.assertEquals(2, batch.get(0).getField(0, PactInteger.class).getValue());
+	}
+	
+	/**
+	 * A batch collector that records the sizes and the contents of the batches it receives.
+	 */
+	private static final class RecordingBatchCollector implements BatchCollector<PactRecord>
+	{
+		private final List<Integer> batchSizes = new ArrayList<Integer>();
+		
+		private final List<Integer> values = new ArrayList<Integer>();
+		
+		private int numSingleRecords;
+		
+		private boolean closed;
+		
+		@Override
+		public void collect(PactRecord record)
+		{
+			this.numSingleRecords++;
+		}
+		
+		@Override
+		public void collectBatch(RecordBatch<PactRecord> batch)
+		{
+			this.batchSizes.add(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				this.values.add(batch.get(i).getField(0, PactInteger.class).getValue());
+			}
+		}
+		
+		@Override
+		public boolean acceptsBatches()
+		{
+			return true;
+		}
+		
+		@Override
+		public void close()
+		{
+			this.closed = true;
+		}
+	}
+}
@@ -26,14 +26,17 @@ import org.apache.commons.logging.LogFactory;
 import org.junit.Test;
 
 import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.generic.GenericBatchMapper;
 import eu.stratosphere.pact.common.generic.GenericMapper;
 import eu.stratosphere.pact.common.stubs.Collector;
+import eu.stratosphere.pact.common.stubs.MapStub;
 import eu.stratosphere.pact.common.stubs.ReduceStub;
 import eu.stratosphere.pact.common.type.PactRecord;
 import eu.stratosphere.pact.common.type.base.PactInteger;
 import eu.stratosphere.pact.runtime.plugable.PactRecordComparatorFactory;
 import eu.stratosphere.pact.runtime.task.MapDriver;
 import eu.stratosphere.pact.runtime.task.MapTaskTest.MockMapStub;
+import eu.stratosphere.pact.runtime.task.ReduceTaskTest.MockCombiningReduceStub;
 import eu.stratosphere.pact.runtime.task.ReduceTaskTest.MockReduceStub;
 import eu.stratosphere.pact.runtime.task.RegularPactTask;
 import eu.stratosphere.pact.runtime.task.util.TaskConfig;
@@ -100,6 +103,117 @@ public class ChainTaskTest extends TaskTestBase
 		
 	}
 	
+	@Test
+	public void testBatchedMapCombineTask() {
+		testBatchedMapCombineTask(LocalStrategy.COMBININGSORT);
+	}
+	
+	@Test
+	public void testBatchedMapHashCombineTask() {
+		testBatchedMapCombineTask(LocalStrategy.COMBININGHASH);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void testBatchedMapCombineTask(LocalStrategy combineStrategy) {
+		
+		int keyCnt = 100;
+		int valCnt = 20;
+		
+		MockBatchMapStub.numBatches = 0;
+		MockBatchMapStub.numBatchedRecords = 0;
+		MockBatchMapStub.numSingleRecords = 0;
+		
+		// environment
+		{
+			super.initEnvironment(3*1024*1024);
+			super.addInput(new UniformPactRecordGenerator(keyCnt, valCnt, false), 1);
+			super.addOutput(this.outList);
+		}
+		
+		// chained map config, records are handed over in batches that do not divide the input evenly
+		{
+			Configuration config = new Configuration();
+			config.addAll(super.getConfiguration(), "");
+			TaskConfig mapConfig = new TaskConfig(config);
+			
+			mapConfig.setStubClass(MockBatchMapStub.class);
+			mapConfig.setChainingBatchSize(64);
+			
+			super.getTaskConfig().addChainedTask(ChainedMapDriver.class, mapConfig, "map");
+		}
+		
+		// chained combine config
+		{
+			Configuration config = new Configuration();
+			config.addAll(super.getConfiguration(), "");
+			TaskConfig combineConfig = new TaskConfig(config);
+			
+			combineConfig.setStubClass(MockCombiningReduceStub.class);
+			combineConfig.setLocalStrategy(combineStrategy);
+			combineConfig.setMemorySize(3 * 1024 * 1024);
+			combineConfig.setNumFilehandles(2);
+			combineConfig.setChainingBatchSize(64);
+			
+			PactRecordComparatorFactory.writeComparatorSetupToConfig(combineConfig.getConfigForInputParameters(0), new int[]{0}, new Class[]{PactInteger.class}, new boolean[] {true});
+			
+			super.getTaskConfig().addChainedTask(ChainedCombineDriver.class, combineConfig, "combine");
+		}
+		
+		// map + chained map + chained combine
+		{
+			final RegularPactTask<GenericMapper<PactRecord, PactRecord>, PactRecord> testTask = 
+										new RegularPactTask<GenericMapper<PactRecord, PactRecord>, PactRecord>();
+			
+			super.registerTask(testTask, MapDriver.class, MockMapStub.class);
+			
+			try {
+				testTask.invoke();
+			} catch (Exception e) {
+				LOG.debug(e);
+				Assert.fail("Invoke method caused exception.");
+			}
+		}
+		
+		int expSum = 0;
+		for (int i = 1; i < valCnt; i++) {
+			expSum += i;
+		}
+		
+		Assert.assertEquals(keyCnt, this.outList.size());
+		for (PactRecord record : this.outList) {
+			Assert.assertEquals(expSum, record.getField(1, PactInteger.class).getValue());
+		}
+		
+		// the chained mapper got all records in full batches and one partial batch, none of them individually
+		Assert.assertEquals((keyCnt * valCnt + 63) / 64, MockBatchMapStub.numBatches);
+		Assert.assertEquals(keyCnt * valCnt, MockBatchMapStub.numBatchedRecords);
+		Assert.assertEquals(0, MockBatchMapStub.numSingleRecords);
+	}
+	
+	public static class MockBatchMapStub extends MapStub implements GenericBatchMapper<PactRecord, PactRecord>
+	{
+		private static int numBatches;
+		
+		private static int numBatchedRecords;
+		
+		private static int numSingleRecords;
+		
+		@Override
+		public void map(PactRecord record, Collector<PactRecord> out) throws Exception {
+			numSingleRecords++;
+			out.collect(record);
+		}
+		
+		@Override
+		public void mapBatch(PactRecord[] records, int numRecords, Collector<PactRecord> out) throws Exception {
+			numBatches++;
+			numBatchedRecords += numRecords;
+			for (int i = 0; i < numRecords; i++) {
+				out.collect(records[i]);
+			}
+		}
+	}
+	
 	/**
 	 * TODO: enable and fix bug
 	 * 1. ChainedCombineTask.collect gets called
@@ -0,0 +1,142 @@
+/***********************************************************************************************************************
+ *
+ * Copyright (C) 2010-2013 by the Stratosphere project (http://stratosphere.eu)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ **********************************************************************************************************************/
+
+package eu.stratosphere.pact.runtime.task.chaining;
+
+import junit.framework.Assert;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import eu.stratosphere.nephele.configuration.Configuration;
+import eu.stratosphere.pact.common.generic.GenericMapper;
+import eu.stratosphere.pact.common.stubs.MapStub;
+import eu.stratosphere.pact.common.type.PactRecord;
+import eu.stratosphere.pact.common.type.base.PactInteger;
+import eu.stratosphere.pact.runtime.plugable.PactRecordComparatorFactory;
+import eu.stratosphere.pact.runtime.task.MapDriver;
+import eu.stratosphere.pact.runtime.task.MapTaskTest.MockMapStub;
+import eu.stratosphere.pact.runtime.task.ReduceTaskTest.MockCombiningReduceStub;
+import eu.stratosphere.pact.runtime.task.RegularPactTask;
+import eu.stratosphere.pact.runtime.task.chaining.ChainTaskTest.MockBatchMapStub;
+import eu.stratosphere.pact.runtime.task.util.TaskConfig;
+import eu.stratosphere.pact.runtime.task.util.TaskConfig.LocalStrategy;
+import eu.stratosphere.pact.runtime.test.util.NirvanaOutputList;
+import eu.stratosphere.pact.runtime.test.util.TaskTestBase;
+import eu.stratosphere.pact.runtime.test.util.UniformPactRecordGenerator;
+
+/**
+ * Compares the throughput of a Map -> chained Map -> chained Combine pipeline when the records are handed to the
+ * chained mapper one at a time, when batching is switched on for a plain mapper and when batching is switched on for
+ * a mapper that processes whole batches.
+ */
+public class ChainedDriverBatchingBenchmark extends TaskTestBase
+{
+	private static final Log LOG = LogFactory.getLog(ChainedDriverBatchingBenchmark.class);
+	
+	private static final int KEY_CNT = 1000;
+	
+	private static final int VAL_CNT = 5000;
+	
+	private static final int[] BATCH_SIZES = { 16, 128, 1024 };
+	
+	private static final int NUM_REPETITIONS = 3;
+	
+	@Test
+	public void testSortCombinePipeline() throws Exception
+	{
+		runPipelines(LocalStrategy.COMBININGSORT);
+	}
+	
+	@Test
+	public void testHashCombinePipeline() throws Exception
+	{
+		runPipelines(LocalStrategy.COMBININGHASH);
+	}
+	
+	private void runPipelines(LocalStrategy combineStrategy) throws Exception
+	{
+		LOG.info("Starting chaining benchmark for " + combineStrategy + " with " + (KEY_CNT * VAL_CNT) + " records...");
+		
+		LOG.info("No batching: " + timePipeline(combineStrategy, MockMapStub.class, 0) + " msecs.");
+		
+		for (int batchSize : BATCH_SIZES) {
+			LOG.info("Batch size " + batchSize + ", plain mapper: "
+				+ timePipeline(combineStrategy, MockMapStub.class, batchSize) + " msecs.");
+			LOG.info("Batch size " + batchSize + ", batch mapper: "
+				+ timePipeline(combineStrategy, MockBatchMapStub.class, batchSize) + " msecs.");
+		}
+	}
+	
+	/**
+	 * Runs the pipeline several times and returns the time of the fastest run in milliseconds.
+	 */
+	private long timePipeline(LocalStrategy combineStrategy, Class<? extends MapStub> chainedMapStub, int batchSize)
+	throws Exception
+	{
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < NUM_REPETITIONS; i++) {
+			final long start = System.currentTimeMillis();
+			runPipeline(combineStrategy, chainedMapStub, batchSize);
+			best = Math.min(best, System.currentTimeMillis() - start);
+		}
+		return best;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void runPipeline(LocalStrategy combineStrategy, Class<? extends MapStub> chainedMapStub, int batchSize)
+	throws Exception
+	{
+		// the environment of the last run is shut down and checked after the test
+		if (this.mockEnv != null) {
+			shutdownIOManager();
+			shutdownMemoryManager();
+		}
+		
+		super.initEnvironment(3 * 1024 * 1024);
+		super.addInput(new UniformPactRecordGenerator(KEY_CNT, VAL_CNT, false), 1);
+		super.addOutput(new NirvanaOutputList());
+		
+		Configuration config = new Configuration();
+		config.addAll(super.getConfiguration(), "");
+		TaskConfig mapConfig = new TaskConfig(config);
+		mapConfig.setStubClass(chainedMapStub);
+		mapConfig.setChainingBatchSize(batchSize);
+		super.getTaskConfig().addChainedTask(ChainedMapDriver.class, mapConfig, "map");
+		
+		config = new Configuration();
+		config.addAll(super.getConfiguration(), "");
+		TaskConfig combineConfig = new TaskConfig(config);
+		combineConfig.setStubClass(MockCombiningReduceStub.class);
+		combineConfig.setLocalStrategy(combineStrategy);
+		combineConfig.setMemorySize(3 * 1024 * 1024);
+		combineConfig.setNumFilehandles(2);
+		PactRecordComparatorFactory.writeComparatorSetupToConfig(combineConfig.getConfigForInputParameters(0),
+			new int[]{0}, new Class[]{PactInteger.class}, new boolean[] {true});
+		super.getTaskConfig().addChainedTask(ChainedCombineDriver.class, combineConfig, "combine");
+		
+		final RegularPactTask<GenericMapper<PactRecord, PactRecord>, PactRecord> task = 
+									new RegularPactTask<GenericMapper<PactRecord, PactRecord>, PactRecord>();
+		super.registerTask(task, MapDriver.class, MockMapStub.class);
+		
+		try {
+			task.invoke();
+		} catch (Exception e) {
+			LOG.debug(e);
+			Assert.fail("Invoke method caused exception.");
+		}
+	}
+}